@@ -30,6 +30,8 @@ android {
             "REQUIRE_CASH_SESSION_FOR_CASH_PAYMENTS",
             "true"
         )
+        // false = el checkout vuelve al commitear en Room y la subida a Firestore va por OutboxPushPipeline
+        buildConfigField("boolean", "CHECKOUT_BLOCKING_SYNC", "false")
         buildConfigField("String", "GLOBAL_PUBLIC_CUSTOMER_TENANT_ID", "\"\"")
         buildConfigField("String", "MERGED_PRS", "\"${mergedPrs.replace("\"", "\\\"")}\"")
         testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
@@ -0,0 +1,134 @@
+package com.example.selliaapp.data.dao
+
+import androidx.room.Room
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.example.selliaapp.data.AppDatabase
+import com.example.selliaapp.data.local.entity.CashMovementEntity
+import com.example.selliaapp.data.local.entity.CashMovementType
+import com.example.selliaapp.data.local.entity.CashSessionEntity
+import com.example.selliaapp.data.local.entity.CashSessionStatus
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.time.Instant
+
+/**
+ * `cash_session_totals` contra la fuente de verdad: lo que mantiene [CashMovementDao.insert]
+ * (incluido el descuento al reemplazar un movimiento), [CashMovementDao.rebuildTotals] y el
+ * backfill de MIGRATION_51_52 tienen que dar lo mismo que SUM/COUNT sobre `cash_movements`.
+ */
+@RunWith(AndroidJUnit4::class)
+class CashMovementDaoTest {
+
+    private lateinit var db: AppDatabase
+    private lateinit var dao: CashMovementDao
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java).build()
+        dao = db.cashMovementDao()
+        runBlocking {
+            listOf("S1", "S2").forEach { id ->
+                db.cashSessionDao().insert(
+                    CashSessionEntity(id = id, openedAt = Instant.EPOCH, openingAmount = 0.0, status = CashSessionStatus.OPEN)
+                )
+            }
+        }
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    @Test
+    fun totalsFollowInsertsAndReplacements() = runBlocking {
+        insertMovements()
+        // Reemplazo: el mismo id cambia de monto, de tipo y de sesión.
+        dao.insert(movement(id = "m-3", sessionId = "S1", type = CashMovementType.INCOME, amount = 75.0))
+        dao.insert(movement(id = "m-10", sessionId = "S1", type = CashMovementType.SALE_CASH, amount = 999.5))
+
+        assertEquals(totalsFromMovements("S1"), totalsOf("S1"))
+        assertEquals(totalsFromMovements("S2"), totalsOf("S2"))
+        // Los reemplazos no suman movimientos.
+        assertEquals(40, (totalsOf("S1").values + totalsOf("S2").values).sumOf { it.first })
+    }
+
+    @Test
+    fun rebuildTotalsMatchesMovements() = runBlocking {
+        insertMovements()
+        dao.addToTotal("S1", CashMovementType.INCOME, movements = 5, amount = 12345.0)
+
+        dao.rebuildTotals()
+
+        assertEquals(totalsFromMovements("S1"), totalsOf("S1"))
+        assertEquals(totalsFromMovements("S2"), totalsOf("S2"))
+    }
+
+    @Test
+    fun ensureTotalRowKeepsAnExistingRow() = runBlocking {
+        dao.addToTotal("S1", CashMovementType.SALE_CASH, movements = 2, amount = 300.0)
+
+        dao.ensureTotalRow("S1", CashMovementType.SALE_CASH)
+        dao.incrementTotal("S1", CashMovementType.SALE_CASH, movements = 1, amount = 50.0)
+
+        assertEquals(mapOf(CashMovementType.SALE_CASH to (3 to 350.0)), totalsOf("S1"))
+    }
+
+    @Test
+    fun migration51To52BackfillsTotals() = runBlocking {
+        insertMovements()
+        val sqlite = db.openHelper.writableDatabase
+        // Estado de una base en la versión 51: movimientos sin tabla de totales.
+        sqlite.execSQL("DROP TABLE cash_session_totals")
+
+        AppDatabase.MIGRATION_51_52.migrate(sqlite)
+
+        assertEquals(totalsFromMovements("S1"), totalsOf("S1"))
+        assertEquals(totalsFromMovements("S2"), totalsOf("S2"))
+    }
+
+    private suspend fun insertMovements() {
+        val types = listOf(CashMovementType.SALE_CASH, CashMovementType.EXPENSE, CashMovementType.INCOME, CashMovementType.ADJUSTMENT)
+        repeat(40) { index ->
+            val type = types[index % types.size]
+            dao.insert(
+                movement(
+                    id = "m-$index",
+                    sessionId = if (index % 3 == 0) "S2" else "S1",
+                    type = type,
+                    amount = if (type == CashMovementType.EXPENSE) -(index % 7 + 1) * 10.0 else (index % 11) * 12.5
+                )
+            )
+        }
+    }
+
+    private fun movement(id: String, sessionId: String, type: String, amount: Double) = CashMovementEntity(
+        id = id,
+        sessionId = sessionId,
+        type = type,
+        amount = amount,
+        createdAt = Instant.ofEpochMilli(id.hashCode().toLong())
+    )
+
+    private suspend fun totalsOf(sessionId: String): Map<String, Pair<Int, Double>> =
+        dao.getTotals(sessionId).associate { it.type to (it.movements to it.total) }
+
+    private fun totalsFromMovements(sessionId: String): Map<String, Pair<Int, Double>> {
+        val result = mutableMapOf<String, Pair<Int, Double>>()
+        db.openHelper.readableDatabase.query(
+            "SELECT type, COUNT(*), SUM(amount) FROM cash_movements WHERE sessionId = ? GROUP BY type",
+            arrayOf(sessionId)
+        ).use { cursor ->
+            while (cursor.moveToNext()) {
+                result[cursor.getString(0)] = cursor.getInt(1) to cursor.getDouble(2)
+            }
+        }
+        return result
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.selliaapp.data.dao
+
+import androidx.room.Room
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.example.selliaapp.data.AppDatabase
+import com.example.selliaapp.data.model.Invoice
+import com.example.selliaapp.data.model.InvoiceItem
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Keyset del historial de ventas: recorrer todas las páginas devuelve cada factura una
+ * sola vez y en el orden (dateMillis DESC, id DESC), aun con fechas repetidas, y la
+ * búsqueda por cliente sale de `invoices_fts`.
+ */
+@RunWith(AndroidJUnit4::class)
+class InvoiceSummaryPagingTest {
+
+    private lateinit var db: AppDatabase
+    private lateinit var invoiceDao: InvoiceDao
+
+    @Before
+    fun setUp() = runBlocking {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java).build()
+        invoiceDao = db.invoiceDao()
+        (1..INVOICES).forEach { i ->
+            invoiceDao.insertInvoiceWithItems(
+                invoice(dateMillis = BASE_MILLIS + (i / 3) * 60_000L, customer = if (i % 10 == 0) "Juan Pérez" else "Cliente $i"),
+                List(i % 4 + 1) { line -> InvoiceItem(invoiceId = 0, productId = line + 1, productName = "P$line", quantity = 1, unitPrice = 10.0, lineTotal = 10.0) }
+            )
+        }
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    @Test
+    fun keysetPagesCoverHistoryInOrder() = runBlocking {
+        val expected = invoiceDao.getAllInvoicesOnce().map { it.invoice.id }
+
+        val seen = mutableListOf<InvoiceSummaryRow>()
+        var page = invoiceDao.summariesFrom(Long.MAX_VALUE, Long.MAX_VALUE, PAGE)
+        while (page.isNotEmpty()) {
+            seen += page
+            val last = page.last()
+            page = invoiceDao.summariesBefore(last.dateMillis, last.id, PAGE)
+        }
+
+        assertEquals(expected, seen.map { it.id })
+        seen.forEach { row -> assertEquals(row.id.toInt() % 4 + 1, row.itemCount) }
+
+        // Volver hacia arriba desde el medio devuelve las facturas anteriores en orden inverso.
+        val middle = seen[INVOICES / 2]
+        val newer = invoiceDao.summariesAfter(middle.dateMillis, middle.id, PAGE)
+        assertEquals(seen.subList(INVOICES / 2 - PAGE, INVOICES / 2).map { it.id }.reversed(), newer.map { it.id })
+    }
+
+    @Test
+    fun customerSearchUsesFtsAndFollowsUpdates() = runBlocking {
+        val match = requireNotNull(ftsPrefixMatchQuery("per"))
+        val rows = invoiceDao.summariesMatchingFrom(match, Long.MAX_VALUE, Long.MAX_VALUE, INVOICES)
+        assertEquals(INVOICES / 10, rows.size)
+
+        val renamed = requireNotNull(invoiceDao.getById(rows.first().id)).copy(customerName = "Ana Gómez")
+        invoiceDao.insertInvoice(renamed)
+
+        assertEquals(INVOICES / 10 - 1, invoiceDao.summariesMatchingFrom(match, Long.MAX_VALUE, Long.MAX_VALUE, INVOICES).size)
+        val ana = invoiceDao.summariesMatchingFrom(requireNotNull(ftsPrefixMatchQuery("gomez")), Long.MAX_VALUE, Long.MAX_VALUE, INVOICES)
+        assertEquals(listOf(renamed.id), ana.map { it.id })
+    }
+
+    private fun invoice(dateMillis: Long, customer: String) = Invoice(
+        dateMillis = dateMillis,
+        customerId = null,
+        customerName = customer,
+        subtotal = 10.0,
+        taxes = 0.0,
+        discountPercent = 0,
+        discountAmount = 0.0,
+        surchargePercent = 0,
+        surchargeAmount = 0.0,
+        total = 10.0,
+        paymentMethod = "EFECTIVO",
+        paymentNotes = null
+    )
+
+    private companion object {
+        const val INVOICES = 2_000
+        const val PAGE = 50
+        const val BASE_MILLIS = 1_767_225_600_000L
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.selliaapp.data.dao
+
+import androidx.room.Room
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.example.selliaapp.data.AppDatabase
+import com.example.selliaapp.data.local.entity.ProductEntity
+import com.example.selliaapp.repository.ProductCodeAllocator
+import com.example.selliaapp.repository.ProductCodeSource
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.Collections
+import java.util.concurrent.Executor
+
+/**
+ * [ProductCodeAllocator] sobre las consultas reales de [ProductCodeSequenceDao]: cuántas
+ * sentencias llegan a SQLite (contadas con el query callback de Room) y cuántas recorren
+ * `products` con el `LIKE` del prefijo.
+ */
+@RunWith(AndroidJUnit4::class)
+class ProductCodeSequenceDaoTest {
+
+    private lateinit var db: AppDatabase
+    private val statements: MutableList<String> = Collections.synchronizedList(ArrayList())
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java)
+            .setQueryCallback({ sql, _ -> statements += sql }, Executor { it.run() })
+            .build()
+        runBlocking {
+            db.productDao().insertAll(
+                (1L..5_000L).map { ProductEntity(code = ProductCodeSource.format("VLK", it), name = "Producto $it") }
+            )
+        }
+        statements.clear()
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    @Test
+    fun blockOf10kCodesRunsAHandfulOfStatements() {
+        val block = ProductCodeAllocator(db.productCodeSequenceDao()).block("VLK", expected = 10_000)
+        val codes = List(10_000) { block.next() }
+        block.releaseUnused()
+
+        assertEquals((5_001L..15_000L).map { ProductCodeSource.format("VLK", it) }, codes)
+        // nextValue + seed + advance + nextValue; sin sobrante no hay release.
+        assertEquals(4, sequenceStatements().size)
+        assertEquals(1, productScans())
+    }
+
+    @Test
+    fun allocate10kCodesProbesInChunks() {
+        val codes = ProductCodeAllocator(db.productCodeSequenceDao()).allocate("VLK", 10_000)
+
+        assertEquals((5_001L..15_000L).map { ProductCodeSource.format("VLK", it) }, codes)
+        // La reserva y un IN por cada tramo de SQL_IN_CHUNK candidatos.
+        assertEquals(4 + 10_000 / SQL_IN_CHUNK, sequenceStatements().size)
+        assertEquals(1, productScans())
+    }
+
+    @Test
+    fun laterReservationsDoNotScanProducts() {
+        val allocator = ProductCodeAllocator(db.productCodeSequenceDao())
+        allocator.allocate("VLK")
+        statements.clear()
+
+        repeat(100) { allocator.allocate("VLK") }
+
+        // nextValue + advance + nextValue + un IN por alta.
+        assertEquals(400, sequenceStatements().size)
+        assertEquals(0, productScans())
+    }
+
+    @Test
+    fun codesInsertedBySyncAreSkipped() = runBlocking {
+        val allocator = ProductCodeAllocator(db.productCodeSequenceDao())
+        assertEquals(listOf("VLK005001"), allocator.allocate("VLK"))
+        db.productDao().insertAll(
+            listOf("VLK005002", "VLK005003", "VLK005400").map { ProductEntity(code = it, name = it) }
+        )
+
+        assertEquals(listOf("VLK005401", "VLK005402"), allocator.allocate("VLK", 2))
+        assertTrue(statements.any { it.contains("MAX(nextValue") })
+    }
+
+    /** Sentencias del DAO, sin el BEGIN/END de las transacciones ni el invalidation tracker. */
+    private fun sequenceStatements(): List<String> = synchronized(statements) {
+        statements.filter { it.contains("product_code_sequences") || it.contains("FROM products") }
+    }
+
+    private fun productScans(): Int = synchronized(statements) {
+        statements.count { it.contains("code LIKE") }
+    }
+}
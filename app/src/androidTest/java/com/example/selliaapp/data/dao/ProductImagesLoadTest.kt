@@ -0,0 +1,105 @@
+package com.example.selliaapp.data.dao
+
+import androidx.room.Room
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.example.selliaapp.data.AppDatabase
+import com.example.selliaapp.data.local.entity.ProductEntity
+import com.example.selliaapp.data.local.entity.ProductImageEntity
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.Collections
+import java.util.concurrent.Executor
+
+/**
+ * Carga de productos con imágenes (10k productos x 3 imágenes): una consulta por producto
+ * (N+1), IN por lotes + agrupado en Kotlin, y la relación [ProductWithImages] que usa el
+ * repositorio. Las tres dan lo mismo; se comparan las consultas a `product_images` que
+ * llegan a SQLite (query callback de Room), no el tiempo.
+ */
+@RunWith(AndroidJUnit4::class)
+class ProductImagesLoadTest {
+
+    private lateinit var db: AppDatabase
+    private lateinit var productDao: ProductDao
+    private lateinit var imageDao: ProductImageDao
+    private val statements: MutableList<String> = Collections.synchronizedList(ArrayList())
+
+    @Before
+    fun setUp() = runBlocking {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java)
+            .setQueryCallback({ sql, _ -> statements += sql }, Executor { it.run() })
+            .build()
+        productDao = db.productDao()
+        imageDao = db.productImageDao()
+
+        val ids = productDao.insertAll(
+            (1..PRODUCTS).map { i -> ProductEntity(name = "Producto $i", code = "SKU$i", barcode = "779$i") }
+        )
+        ids.chunked(500).forEach { chunk ->
+            imageDao.insertAll(
+                chunk.flatMap { id ->
+                    // Posiciones insertadas al revés para verificar el orden del resultado.
+                    (IMAGES_PER_PRODUCT - 1 downTo 0).map { position ->
+                        ProductImageEntity(productId = id.toInt(), url = "https://img/$id/$position.jpg", position = position)
+                    }
+                }
+            )
+        }
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    @Test
+    fun relationLoadsImagesInAHandfulOfQueries() = runBlocking {
+        val perProduct = countImageQueries {
+            productDao.getAllOnce().map { product ->
+                product.copy(imageUrls = imageDao.getByProductId(product.id).map { it.url })
+            }
+        }
+        val chunkedIn = countImageQueries {
+            val products = productDao.getAllOnce()
+            val byId = products.map { it.id }.chunked(SQL_IN_CHUNK)
+                .flatMap { imageDao.getByProductIds(it) }
+                .groupBy({ it.productId }, { it.url })
+            products.map { it.copy(imageUrls = byId[it.id].orEmpty()) }
+        }
+        val relation = countImageQueries {
+            productDao.getAllWithImagesOnce().map { it.toEntity() }
+        }
+
+        assertEquals(PRODUCTS, relation.second.size)
+        assertEquals(perProduct.second, relation.second)
+        assertEquals(chunkedIn.second, relation.second)
+        relation.second.first().let { product ->
+            assertEquals((0 until IMAGES_PER_PRODUCT).map { "https://img/${product.id}/$it.jpg" }, product.imageUrls)
+        }
+        assertEquals(PRODUCTS, perProduct.first)
+        assertEquals(PRODUCTS / SQL_IN_CHUNK, chunkedIn.first)
+        // Room trae la relación con IN de hasta 999 ids: un puñado de consultas, no una por producto.
+        assertEquals((PRODUCTS + ROOM_RELATION_CHUNK - 1) / ROOM_RELATION_CHUNK, relation.first)
+    }
+
+    /** Consultas a `product_images` que corre [block], junto con su resultado. */
+    private inline fun <T> countImageQueries(block: () -> T): Pair<Int, T> {
+        statements.clear()
+        val result = block()
+        val queries = synchronized(statements) { statements.count { it.contains("product_images") } }
+        return queries to result
+    }
+
+    private companion object {
+        const val PRODUCTS = 10_000
+        const val IMAGES_PER_PRODUCT = 3
+        /** Tope de parámetros por consulta de relación en Room (`MAX_BIND_PARAMETER_CNT`). */
+        const val ROOM_RELATION_CHUNK = 999
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.selliaapp.data.dao
+
+import androidx.room.Room
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.example.selliaapp.data.AppDatabase
+import com.example.selliaapp.data.model.Invoice
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.time.Instant
+import java.time.LocalDate
+import java.time.ZoneId
+import java.time.ZoneOffset
+
+/**
+ * `sales_rollup` guarda la zona de sus buckets: una escritura o lectura en otra zona
+ * reconstruye todo en vez de mezclar días de dos zonas.
+ */
+@RunWith(AndroidJUnit4::class)
+class SalesRollupDaoTest {
+
+    private lateinit var db: AppDatabase
+    private lateinit var dao: SalesRollupDao
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java).build()
+        dao = db.salesRollupDao()
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    @Test
+    fun addInvoicesInAnotherZoneRebuildsTheBuckets() = runBlocking {
+        // 01:00 UTC del 11 son las 22:00 del 10 en Buenos Aires.
+        insertInvoice("2024-03-11T01:00:00Z")
+        insertInvoice("2024-03-11T10:00:00Z")
+        dao.rebuild(ZoneOffset.UTC)
+        assertEquals(mapOf(MARCH_11 to 2), ticketsByDay())
+
+        val third = insertInvoice("2024-03-11T12:00:00Z")
+        dao.addInvoices(listOf(third), BUENOS_AIRES)
+
+        assertEquals(BUENOS_AIRES.id, dao.bucketZoneId())
+        assertEquals(mapOf(MARCH_10 to 1, MARCH_11 to 2), ticketsByDay())
+        assertEquals(listOf(22), dao.hourly(MARCH_10, MARCH_10).map { it.hour })
+
+        // La baja también reconstruye, y después resta el aporte de la factura.
+        dao.removeInvoices(listOf(third), ZoneOffset.UTC)
+        assertEquals(mapOf(MARCH_11 to 2), ticketsByDay())
+    }
+
+    @Test
+    fun rebuildIfZoneChangedOnlyRunsOnAMismatch() = runBlocking {
+        insertInvoice("2024-03-11T01:00:00Z")
+
+        // Base recién migrada: sin zona guardada.
+        assertTrue(dao.rebuildIfZoneChanged(ZoneOffset.UTC))
+        assertFalse(dao.rebuildIfZoneChanged(ZoneOffset.UTC))
+        assertEquals(mapOf(MARCH_11 to 1), ticketsByDay())
+
+        assertTrue(dao.rebuildIfZoneChanged(BUENOS_AIRES))
+        assertEquals(mapOf(MARCH_10 to 1), ticketsByDay())
+    }
+
+    private suspend fun insertInvoice(instant: String): Long = db.invoiceDao().insertInvoice(
+        Invoice(
+            dateMillis = Instant.parse(instant).toEpochMilli(),
+            customerId = null,
+            customerName = null,
+            subtotal = 100.0,
+            taxes = 0.0,
+            discountPercent = 0,
+            discountAmount = 0.0,
+            surchargePercent = 0,
+            surchargeAmount = 0.0,
+            total = 100.0,
+            paymentMethod = "EFECTIVO",
+            paymentNotes = null
+        )
+    )
+
+    private suspend fun ticketsByDay(): Map<Long, Int> =
+        dao.daily(MARCH_10 - 1, MARCH_11 + 1).associate { it.epochDay to it.tickets }
+
+    private companion object {
+        val BUENOS_AIRES: ZoneId = ZoneId.of("America/Argentina/Buenos_Aires")
+        val MARCH_10 = LocalDate.of(2024, 3, 10).toEpochDay()
+        val MARCH_11 = LocalDate.of(2024, 3, 11).toEpochDay()
+    }
+}
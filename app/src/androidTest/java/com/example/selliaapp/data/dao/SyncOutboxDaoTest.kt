@@ -0,0 +1,54 @@
+package com.example.selliaapp.data.dao
+
+import androidx.room.Room
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.example.selliaapp.data.AppDatabase
+import com.example.selliaapp.data.local.entity.SyncEntityType
+import com.example.selliaapp.data.local.entity.SyncOutboxEntity
+import com.example.selliaapp.sync.OutboxSnapshot
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * El upsert REPLACE del outbox deja una fila con id nuevo: confirmar un push por id de
+ * fila no borra la entidad si se volvió a encolar mientras se subía.
+ */
+@RunWith(AndroidJUnit4::class)
+class SyncOutboxDaoTest {
+
+    private lateinit var db: AppDatabase
+    private lateinit var dao: SyncOutboxDao
+    private val product = SyncEntityType.PRODUCT.storageKey
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java).build()
+        dao = db.syncOutboxDao()
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    @Test
+    fun reenqueuedRowSurvivesAcknowledge() = runBlocking {
+        dao.upsertAll(listOf(SyncOutboxEntity(entityType = product, entityId = 1), SyncOutboxEntity(entityType = product, entityId = 2)))
+        val pending = OutboxSnapshot.take(dao, product)
+        val firstRowId = dao.getByTypeAndId(product, 1)!!.id
+
+        dao.upsert(SyncOutboxEntity(entityType = product, entityId = 1))
+        pending.acknowledgeAll()
+
+        val remaining = dao.getByType(product)
+        assertEquals(listOf(1L), remaining.map { it.entityId })
+        assertNotEquals(firstRowId, remaining.single().id)
+    }
+}
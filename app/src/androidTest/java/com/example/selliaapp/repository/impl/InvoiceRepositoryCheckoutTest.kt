@@ -0,0 +1,156 @@
+package com.example.selliaapp.repository.impl
+
+import androidx.room.Room
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.example.selliaapp.auth.TenantProvider
+import com.example.selliaapp.data.AppDatabase
+import com.example.selliaapp.data.local.entity.ProductEntity
+import com.example.selliaapp.data.local.entity.SyncEntityType
+import com.example.selliaapp.data.model.sales.CartItem
+import com.example.selliaapp.data.model.sales.InvoiceDraft
+import com.example.selliaapp.repository.ProductCatalogCache
+import com.example.selliaapp.sync.OutboxPushPipeline
+import com.example.selliaapp.sync.ProductWriteStamps
+import com.google.firebase.FirebaseApp
+import com.google.firebase.FirebaseOptions
+import com.google.firebase.firestore.FirebaseFirestore
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.Executor
+
+/**
+ * El checkout confirma contra Room y solo agenda la subida: con un remoto lento (y sin
+ * correr el scope del pipeline) la venta vuelve sin haberlo llamado y deja en el outbox
+ * una fila por entidad tocada.
+ */
+@RunWith(AndroidJUnit4::class)
+class InvoiceRepositoryCheckoutTest {
+
+    /** Remoto que tarda como un 4G malo; cuenta las subidas que llegaron a empezar. */
+    private class SlowRemote {
+        var calls = 0
+
+        suspend fun push() {
+            calls++
+            delay(5_000)
+        }
+    }
+
+    private lateinit var db: AppDatabase
+    private lateinit var firebaseApp: FirebaseApp
+    private val remote = SlowRemote()
+    /** Dispatcher del pipeline que descarta las tareas: el drenado nunca corre durante el test. */
+    private val pipelineExecutor = Executor { }
+    private lateinit var pipeline: OutboxPushPipeline
+    private lateinit var repository: InvoiceRepositoryImpl
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java).build()
+        // Firestore no se toca con CHECKOUT_BLOCKING_SYNC = false; la instancia es solo para el constructor.
+        firebaseApp = FirebaseApp.initializeApp(
+            context,
+            FirebaseOptions.Builder()
+                .setApplicationId("1:000000000000:android:0000000000000000")
+                .setProjectId("checkout-test")
+                .setApiKey("test")
+                .build(),
+            "checkout-test"
+        )
+        pipeline = OutboxPushPipeline(
+            pushPending = remote::push,
+            scope = CoroutineScope(SupervisorJob() + pipelineExecutor.asCoroutineDispatcher())
+        )
+        repository = InvoiceRepositoryImpl(
+            db = db,
+            invoiceDao = db.invoiceDao(),
+            productDao = db.productDao(),
+            productImageDao = db.productImageDao(),
+            customerDao = db.customerDao(),
+            firestore = FirebaseFirestore.getInstance(firebaseApp),
+            tenantProvider = object : TenantProvider {
+                override fun currentTenantId() = "tenant-1"
+                override suspend fun requireTenantId() = "tenant-1"
+            },
+            pushPipeline = pipeline,
+            catalogCache = ProductCatalogCache(),
+            writeStamps = ProductWriteStamps(db.productPushMarkDao(), writerId = "checkout-test"),
+            io = Dispatchers.IO
+        )
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+        firebaseApp.delete()
+    }
+
+    @Test
+    fun confirmInvoiceReturnsWithoutCallingTheRemote() = runBlocking {
+        val productDao = db.productDao()
+        productDao.insertAll(
+            listOf(
+                ProductEntity(id = 1, code = "A1", name = "Yerba", quantity = 10),
+                ProductEntity(id = 2, code = "A2", name = "Azúcar", quantity = 10)
+            )
+        )
+        val draft = InvoiceDraft(
+            items = listOf(
+                CartItem(productId = 1, name = "Yerba", quantity = 2, unitPrice = 100.0),
+                CartItem(productId = 2, name = "Azúcar", quantity = 1, unitPrice = 50.0),
+                CartItem(productId = 1, name = "Yerba", quantity = 1, unitPrice = 100.0)
+            ),
+            subtotal = 350.0,
+            taxes = 0.0,
+            total = 350.0
+        )
+
+        val result = repository.confirmInvoice(draft)
+
+        assertEquals(0, remote.calls)
+        assertEquals(1L, pipeline.stats.value.requested)
+        val outbox = db.syncOutboxDao().getAll()
+        assertEquals(
+            listOf(SyncEntityType.INVOICE.storageKey to result.invoiceId),
+            outbox.filter { it.entityType == SyncEntityType.INVOICE.storageKey }.map { it.entityType to it.entityId }
+        )
+        assertEquals(
+            listOf(1L, 2L),
+            outbox.filter { it.entityType == SyncEntityType.PRODUCT.storageKey }.map { it.entityId }.sorted()
+        )
+        assertEquals(3, outbox.size)
+        assertEquals(7, productDao.getById(1)?.quantity)
+        assertEquals(9, productDao.getById(2)?.quantity)
+    }
+
+    @Test
+    fun consecutiveCheckoutsOnlyQueueWorkForThePipeline() = runBlocking {
+        db.productDao().insertAll(listOf(ProductEntity(id = 1, code = "A1", name = "Yerba", quantity = 100)))
+        val draft = InvoiceDraft(
+            items = listOf(CartItem(productId = 1, name = "Yerba", quantity = 1, unitPrice = 100.0)),
+            subtotal = 100.0,
+            taxes = 0.0,
+            total = 100.0
+        )
+
+        repeat(20) { repository.confirmInvoice(draft) }
+
+        assertEquals(0, remote.calls)
+        assertEquals(20L, pipeline.stats.value.requested)
+        // Veinte ventas: veinte facturas y una sola fila para el producto que todas tocaron.
+        val outbox = db.syncOutboxDao().getAll()
+        assertEquals(20, outbox.count { it.entityType == SyncEntityType.INVOICE.storageKey })
+        assertEquals(1, outbox.count { it.entityType == SyncEntityType.PRODUCT.storageKey })
+    }
+}
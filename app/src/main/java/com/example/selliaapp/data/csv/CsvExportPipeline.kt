@@ -0,0 +1,119 @@
+package com.example.selliaapp.data.csv
+
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import java.io.BufferedWriter
+import java.io.FilterOutputStream
+import java.io.OutputStream
+import java.io.OutputStreamWriter
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Una tabla a exportar, leída por páginas con keyset: [nextPage] recibe el último elemento
+ * de la página anterior (null en la primera) y devuelve hasta `limit` elementos.
+ *
+ * [marker] es la cabecera de sección de [TotalCsvBundle]; null en exportaciones sueltas.
+ * [writeRow] devuelve cuántas líneas CSV escribió (una factura puede ocupar varias).
+ */
+class CsvExportSection<T : Any>(
+    val name: String,
+    val marker: String?,
+    private val writeHeader: (Appendable) -> Unit,
+    private val nextPage: suspend (last: T?, limit: Int) -> List<T>,
+    private val writeRow: (Appendable, T) -> Int
+) {
+    internal suspend fun writeTo(out: Appendable, pageSize: Int, onPage: (rows: Long) -> Unit): Long {
+        writeHeader(out)
+        var rows = 0L
+        var last: T? = null
+        while (true) {
+            currentCoroutineContext().ensureActive()
+            val page = nextPage(last, pageSize)
+            page.forEach { rows += writeRow(out, it) }
+            onPage(rows)
+            if (page.size < pageSize) return rows
+            last = page.last()
+        }
+    }
+}
+
+/**
+ * Exportación CSV en streaming: cada sección se lee de a [pageSize] filas y se escribe
+ * directo al [OutputStream] destino a través de un writer con buffer (opcionalmente
+ * gzip). En memoria solo vive una página, así que el heap no crece con el historial.
+ *
+ * El formato con varias secciones es el mismo que arma [TotalCsvBundle.bundle].
+ */
+class CsvExportPipeline(
+    private val pageSize: Int = DEFAULT_PAGE_SIZE,
+    private val bufferSize: Int = DEFAULT_BUFFER_SIZE
+) {
+
+    data class Progress(
+        val section: String,
+        val sectionRows: Long,
+        val totalRows: Long,
+        /** Bytes ya entregados al destino (comprimidos si corresponde). */
+        val bytesWritten: Long,
+        val done: Boolean = false
+    )
+
+    /**
+     * Escribe [sections] en [output] sin cerrarlo (lo abre y cierra quien llama).
+     * [onProgress] se invoca después de cada página, en el hilo que ejecuta la exportación.
+     */
+    suspend fun export(
+        output: OutputStream,
+        sections: List<CsvExportSection<*>>,
+        gzip: Boolean = false,
+        onProgress: (Progress) -> Unit = {}
+    ): Progress {
+        val counting = CountingOutputStream(output)
+        val compressed = if (gzip) GZIPOutputStream(counting, bufferSize) else null
+        val writer = BufferedWriter(OutputStreamWriter(compressed ?: counting, Charsets.UTF_8), bufferSize)
+        var totalRows = 0L
+        var progress = Progress(section = "", sectionRows = 0, totalRows = 0, bytesWritten = 0)
+
+        sections.forEachIndexed { index, section ->
+            if (index > 0) writer.append('\n')
+            section.marker?.let { writer.append(it).append('\n') }
+            val sectionRows = section.writeTo(writer, pageSize) { rows ->
+                progress = Progress(section.name, rows, totalRows + rows, counting.count)
+                onProgress(progress)
+            }
+            totalRows += sectionRows
+        }
+
+        writer.flush()
+        compressed?.finish()
+        output.flush()
+        progress = progress.copy(totalRows = totalRows, bytesWritten = counting.count, done = true)
+        onProgress(progress)
+        return progress
+    }
+
+    private class CountingOutputStream(out: OutputStream) : FilterOutputStream(out) {
+        var count = 0L
+            private set
+
+        override fun write(b: Int) {
+            out.write(b)
+            count++
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            out.write(b, off, len)
+            count += len
+        }
+
+        // El destino lo cierra quien abrió el stream.
+        override fun close() = flush()
+    }
+
+    companion object {
+        const val DEFAULT_PAGE_SIZE = 500
+        const val DEFAULT_BUFFER_SIZE = 64 * 1024
+        const val GZIP_EXTENSION = ".gz"
+        const val GZIP_MIME_TYPE = "application/gzip"
+    }
+}
@@ -12,4 +12,13 @@ object CsvExportUtils {
             escape(value ?: "")
         }
     }
+
+    /** Igual que [line] + salto de línea, escribiendo directo sobre [out] sin armar el String. */
+    fun appendLine(out: Appendable, values: List<String?>) {
+        values.forEachIndexed { index, value ->
+            if (index > 0) out.append(',')
+            out.append(escape(value ?: ""))
+        }
+        out.append('\n')
+    }
 }
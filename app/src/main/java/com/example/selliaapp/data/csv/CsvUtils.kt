@@ -2,7 +2,6 @@
 package com.example.selliaapp.data.csv
 
 
-import java.io.BufferedReader
 import java.io.InputStream
 import java.io.InputStreamReader
 import java.nio.charset.Charset
@@ -22,61 +21,90 @@ object CsvUtils {
         val skipEmptyLines: Boolean = true,
     )
 
-    fun readAll(input: InputStream, config: ParseConfig = ParseConfig()): List<List<String>> {
-        val reader = BufferedReader(InputStreamReader(input, config.charset))
-        val out = mutableListOf<List<String>>()
+    private const val BUFFER_SIZE = 8 * 1024
 
-        var line = reader.readLine()?.removeBom()
+    fun readAll(input: InputStream, config: ParseConfig = ParseConfig()): List<List<String>> =
+        rows(input, config).toList()
+
+    /**
+     * Lectura en streaming: parsea con un buffer de chars reutilizable y entrega una fila
+     * por vez, sin cargar el archivo completo. La secuencia consume [input] una sola vez;
+     * el caller es responsable de cerrarlo.
+     * A diferencia del parseo por línea, respeta saltos de línea dentro de campos con comillas.
+     */
+    fun rows(input: InputStream, config: ParseConfig = ParseConfig()): Sequence<List<String>> = sequence {
+        val reader = InputStreamReader(input, config.charset)
+        val buffer = CharArray(BUFFER_SIZE)
         val sep = config.separator
+        val cell = StringBuilder()
+        var row = ArrayList<String>()
+        var inQuotes = false
+        var quotePending = false
+        var skipLf = false
+        var lineHasContent = false
+        var atStart = true
 
-        while (line != null) {
-            if (config.skipEmptyLines && line.isBlank()) {
-                line = reader.readLine()
-                continue
-            }
-            val row = parseLine(line, sep)
-            out += if (config.trimCells) row.map { it.trim() } else row
-            line = reader.readLine()
+        fun endCell() {
+            val value = cell.toString()
+            row.add(if (config.trimCells) value.trim() else value)
+            cell.setLength(0)
         }
-        return out
-    }
-
-    private fun parseLine(line: String, sep: Char): List<String> {
-        val cells = mutableListOf<String>()
-        val sb = StringBuilder()
-        var inQuotes = false
-        var i = 0
 
-        while (i < line.length) {
-            val c = line[i]
-            when {
-                c == '"' -> {
-                    if (inQuotes && i + 1 < line.length && line[i + 1] == '"') {
+        while (true) {
+            val read = reader.read(buffer)
+            if (read < 0) break
+            for (i in 0 until read) {
+                val c = buffer[i]
+                if (atStart) {
+                    atStart = false
+                    if (c == '\uFEFF') continue
+                }
+                if (skipLf) {
+                    skipLf = false
+                    if (c == '\n') continue
+                }
+                if (quotePending) {
+                    quotePending = false
+                    if (c == '"') {
                         // comillas escapadas -> "
-                        sb.append('"'); i++
-                    } else {
-                        inQuotes = !inQuotes
+                        cell.append('"')
+                        continue
                     }
+                    inQuotes = false
                 }
-                c == sep && !inQuotes -> {
-                    cells += sb.toString()
-                    sb.setLength(0)
+                when {
+                    c == '"' -> {
+                        lineHasContent = true
+                        if (inQuotes) quotePending = true else inQuotes = true
+                    }
+                    c == sep && !inQuotes -> {
+                        lineHasContent = true
+                        endCell()
+                    }
+                    (c == '\n' || c == '\r') && !inQuotes -> {
+                        if (c == '\r') skipLf = true
+                        endCell()
+                        if (lineHasContent || !config.skipEmptyLines) {
+                            yield(row)
+                            row = ArrayList(row.size)
+                        } else {
+                            row.clear()
+                        }
+                        lineHasContent = false
+                    }
+                    else -> {
+                        if (!c.isWhitespace()) lineHasContent = true
+                        cell.append(c)
+                    }
                 }
-                else -> sb.append(c)
             }
-            i++
         }
-        cells += sb.toString()
-        return cells
-    }
-
-    private fun String.removeBom(): String {
-        // BOM UTF-8: 0xEF,0xBB,0xBF
-        return if (isNotEmpty() && this[0] == '\uFEFF') substring(1) else this
+        if (cell.isNotEmpty() || row.isNotEmpty() || lineHasContent) {
+            endCell()
+            if (lineHasContent || !config.skipEmptyLines) yield(row)
+        }
     }
 
-
-
     /**
      * Devuelve filas de datos (sin encabezado) hasta la primera fila completamente vacía.
      * Se usa para cortar importaciones cuando el usuario deja líneas en blanco al final.
@@ -91,14 +119,46 @@ object CsvUtils {
         return rows
     }
 
+    /**
+     * Recorre [source] tomando la primera fila como encabezado y entrega las filas de datos
+     * hasta la primera fila completamente vacía, sin materializar la tabla.
+     * Devuelve false si la fuente no tenía encabezado.
+     */
+    fun forEachDataRow(
+        source: RowSource,
+        onRow: (header: HeaderIndex, row: List<String>) -> Unit
+    ): Boolean {
+        var header: HeaderIndex? = null
+        source.forEach { row ->
+            val idx = header
+            when {
+                idx == null -> {
+                    header = HeaderIndex(row)
+                    true
+                }
+                row.isEmpty() || row.all { it.isBlank() } -> false
+                else -> {
+                    onRow(idx, row)
+                    true
+                }
+            }
+        }
+        return header != null
+    }
+
     /** Utilidad para resolver encabezados con alias. */
-    class HeaderIndex(private val header: List<String>) {
+    class HeaderIndex(header: List<String>) {
+        private val lowered = header.map { it.lowercase() }
+        private val resolved = HashMap<String, Int>()
+
         private fun idxOf(name: String, aliases: List<String>): Int? {
-            val all = (listOf(name) + aliases).map { it.lowercase() }
-            header.forEachIndexed { i, h ->
-                if (all.contains(h.lowercase())) return i
+            // Se resuelve una vez por columna pedida y no por celda.
+            val key = if (aliases.isEmpty()) name else "$name|${aliases.joinToString("|")}"
+            val found = resolved.getOrPut(key) {
+                val all = (listOf(name) + aliases).map { it.lowercase() }
+                lowered.indexOfFirst { all.contains(it) }
             }
-            return null
+            return found.takeIf { it >= 0 }
         }
         fun get(row: List<String>, name: String, aliases: List<String> = emptyList()): String? {
             val i = idxOf(name, aliases) ?: return null
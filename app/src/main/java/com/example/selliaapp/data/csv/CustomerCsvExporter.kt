@@ -17,27 +17,32 @@ object CustomerCsvExporter {
 
     fun export(customers: List<CustomerEntity>): String {
         return buildString {
-            appendLine(CsvExportUtils.line(header))
-            customers.forEach { customer ->
-                appendLine(
-                    CsvExportUtils.line(
-                        listOf(
-                            customer.name,
-                            customer.phone,
-                            customer.email,
-                            customer.address,
-                            customer.nickname,
-                            customer.rubrosCsv,
-                            customer.paymentTerm,
-                            customer.paymentMethod,
-                            customer.createdAt.toString()
-                        )
-                    )
-                )
-            }
+            writeHeader(this)
+            customers.forEach { writeRow(this, it) }
         }
     }
 
+    fun writeHeader(out: Appendable) {
+        CsvExportUtils.appendLine(out, header)
+    }
+
+    fun writeRow(out: Appendable, customer: CustomerEntity) {
+        CsvExportUtils.appendLine(
+            out,
+            listOf(
+                customer.name,
+                customer.phone,
+                customer.email,
+                customer.address,
+                customer.nickname,
+                customer.rubrosCsv,
+                customer.paymentTerm,
+                customer.paymentMethod,
+                customer.createdAt.toString()
+            )
+        )
+    }
+
     fun exportFileName(timestamp: String): String = "clientes_$timestamp.csv"
 
     fun mimeType(): String = "text/csv"
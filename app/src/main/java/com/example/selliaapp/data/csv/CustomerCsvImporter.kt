@@ -1,7 +1,5 @@
 package com.example.selliaapp.data.csv
 
-import android.content.ContentResolver
-import android.net.Uri
 import java.time.LocalDateTime
 
 /**
@@ -22,32 +20,37 @@ object CustomerCsvImporter {
         val createdAt: LocalDateTime?
     )
 
-    fun parseFile(resolver: ContentResolver, uri: Uri): List<Row> =
-        parseTable(TabularFileReader.readAll(resolver, uri))
-
-    fun parseTable(table: List<List<String>>): List<Row> {
-        if (table.isEmpty()) return emptyList()
-        val header = table.first()
-        val idx = CsvUtils.HeaderIndex(header)
-        return CsvUtils.dataRowsUntilFirstBlank(table)
-            .mapNotNull { row ->
-                val name = idx.get(row, "name", listOf("nombre", "cliente", "customer"))
-                    ?.trim()
-                    ?.takeIf { it.isNotBlank() }
-                    ?: return@mapNotNull null
-
-                Row(
-                    name = name,
-                    phone = idx.get(row, "phone", listOf("telefono", "teléfono", "celular", "whatsapp"))?.ifBlank { null },
-                    email = idx.get(row, "email", listOf("mail", "correo"))?.ifBlank { null },
-                    address = idx.get(row, "address", listOf("direccion", "dirección", "domicilio"))?.ifBlank { null },
-                    nickname = idx.get(row, "nickname", listOf("alias", "apodo"))?.ifBlank { null },
-                    rubrosCsv = idx.get(row, "rubros", listOf("rubro", "rubros_csv", "categorias", "categorías"))?.ifBlank { null },
-                    paymentTerm = idx.get(row, "payment_term", listOf("plazo_pago", "termino_pago"))?.ifBlank { null },
-                    paymentMethod = idx.get(row, "payment_method", listOf("metodo_pago", "método_pago"))?.ifBlank { null },
-                    createdAt = null
-                )
-            }
+    fun parseTable(table: List<List<String>>): List<Row> = parseRows(table.asRowSource())
+
+    fun parseRows(source: RowSource): List<Row> {
+        val rows = mutableListOf<Row>()
+        forEachRow(source) { rows += it }
+        return rows
+    }
+
+    fun forEachRow(source: RowSource, onRow: (Row) -> Unit) {
+        CsvUtils.forEachDataRow(source) { idx, row ->
+            toRow(idx, row)?.let(onRow)
+        }
+    }
+
+    private fun toRow(idx: CsvUtils.HeaderIndex, row: List<String>): Row? {
+        val name = idx.get(row, "name", listOf("nombre", "cliente", "customer"))
+            ?.trim()
+            ?.takeIf { it.isNotBlank() }
+            ?: return null
+
+        return Row(
+            name = name,
+            phone = idx.get(row, "phone", listOf("telefono", "teléfono", "celular", "whatsapp"))?.ifBlank { null },
+            email = idx.get(row, "email", listOf("mail", "correo"))?.ifBlank { null },
+            address = idx.get(row, "address", listOf("direccion", "dirección", "domicilio"))?.ifBlank { null },
+            nickname = idx.get(row, "nickname", listOf("alias", "apodo"))?.ifBlank { null },
+            rubrosCsv = idx.get(row, "rubros", listOf("rubro", "rubros_csv", "categorias", "categorías"))?.ifBlank { null },
+            paymentTerm = idx.get(row, "payment_term", listOf("plazo_pago", "termino_pago"))?.ifBlank { null },
+            paymentMethod = idx.get(row, "payment_method", listOf("metodo_pago", "método_pago"))?.ifBlank { null },
+            createdAt = null
+        )
     }
 
     fun templateCsv(): String {
@@ -17,28 +17,33 @@ object ExpenseCsvExporter {
 
     fun export(records: List<ExpenseRecord>): String {
         return buildString {
-            appendLine(CsvExportUtils.line(header))
-            records.forEach { record ->
-                val receipts = record.receiptUris.joinToString("|").ifBlank { "" }
-                appendLine(
-                    CsvExportUtils.line(
-                        listOf(
-                            record.id.toString(),
-                            record.templateId.toString(),
-                            record.nameSnapshot,
-                            record.categorySnapshot,
-                            record.amount.toString(),
-                            record.month.toString(),
-                            record.year.toString(),
-                            record.status.name,
-                            receipts
-                        )
-                    )
-                )
-            }
+            writeHeader(this)
+            records.forEach { writeRow(this, it) }
         }
     }
 
+    fun writeHeader(out: Appendable) {
+        CsvExportUtils.appendLine(out, header)
+    }
+
+    fun writeRow(out: Appendable, record: ExpenseRecord) {
+        val receipts = record.receiptUris.joinToString("|").ifBlank { "" }
+        CsvExportUtils.appendLine(
+            out,
+            listOf(
+                record.id.toString(),
+                record.templateId.toString(),
+                record.nameSnapshot,
+                record.categorySnapshot,
+                record.amount.toString(),
+                record.month.toString(),
+                record.year.toString(),
+                record.status.name,
+                receipts
+            )
+        )
+    }
+
     fun exportFileName(timestamp: String): String = "gastos_$timestamp.csv"
 
     fun mimeType(): String = "text/csv"
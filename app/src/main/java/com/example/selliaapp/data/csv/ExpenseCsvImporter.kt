@@ -16,44 +16,52 @@ object ExpenseCsvImporter {
         val receiptUris: List<String>
     )
 
-    fun parseTable(table: List<List<String>>): List<Row> {
-        if (table.isEmpty()) return emptyList()
-        val header = table.first()
-        val idx = CsvUtils.HeaderIndex(header)
-        return CsvUtils.dataRowsUntilFirstBlank(table)
-            .mapNotNull { row ->
-                val id = idx.get(row, "id")?.toIntOrNull() ?: 0
-                val templateId = idx.get(row, "template_id", listOf("templateId"))?.toIntOrNull() ?: 0
-                val name = idx.get(row, "name", listOf("nombre"))
-                    ?.trim()
-                    ?.takeIf { it.isNotBlank() }
-                    ?: return@mapNotNull null
-                val category = idx.get(row, "category", listOf("categoria", "categoría"))?.ifBlank { null } ?: "General"
-                val amount = idx.get(row, "amount", listOf("monto", "importe"))
-                    ?.replace(',', '.')
-                    ?.toDoubleOrNull()
-                    ?: return@mapNotNull null
-                val month = idx.get(row, "month", listOf("mes"))?.toIntOrNull() ?: 1
-                val year = idx.get(row, "year", listOf("anio", "año"))?.toIntOrNull() ?: 1970
-                val statusText = idx.get(row, "status", listOf("estado"))?.ifBlank { null } ?: ExpenseStatus.IMPAGO.name
-                val status = runCatching { ExpenseStatus.valueOf(statusText.uppercase()) }.getOrDefault(ExpenseStatus.IMPAGO)
-                val receipts = idx.get(row, "receipt_uris", listOf("receipts", "comprobantes"))
-                    ?.split("|")
-                    ?.map { it.trim() }
-                    ?.filter { it.isNotBlank() }
-                    ?: emptyList()
-                Row(
-                    id = id,
-                    templateId = templateId,
-                    name = name,
-                    category = category,
-                    amount = amount,
-                    month = month,
-                    year = year,
-                    status = status,
-                    receiptUris = receipts
-                )
-            }
+    fun parseTable(table: List<List<String>>): List<Row> = parseRows(table.asRowSource())
+
+    fun parseRows(source: RowSource): List<Row> {
+        val rows = mutableListOf<Row>()
+        forEachRow(source) { rows += it }
+        return rows
+    }
+
+    fun forEachRow(source: RowSource, onRow: (Row) -> Unit) {
+        CsvUtils.forEachDataRow(source) { idx, row ->
+            toRow(idx, row)?.let(onRow)
+        }
+    }
+
+    private fun toRow(idx: CsvUtils.HeaderIndex, row: List<String>): Row? {
+        val id = idx.get(row, "id")?.toIntOrNull() ?: 0
+        val templateId = idx.get(row, "template_id", listOf("templateId"))?.toIntOrNull() ?: 0
+        val name = idx.get(row, "name", listOf("nombre"))
+            ?.trim()
+            ?.takeIf { it.isNotBlank() }
+            ?: return null
+        val category = idx.get(row, "category", listOf("categoria", "categoría"))?.ifBlank { null } ?: "General"
+        val amount = idx.get(row, "amount", listOf("monto", "importe"))
+            ?.replace(',', '.')
+            ?.toDoubleOrNull()
+            ?: return null
+        val month = idx.get(row, "month", listOf("mes"))?.toIntOrNull() ?: 1
+        val year = idx.get(row, "year", listOf("anio", "año"))?.toIntOrNull() ?: 1970
+        val statusText = idx.get(row, "status", listOf("estado"))?.ifBlank { null } ?: ExpenseStatus.IMPAGO.name
+        val status = runCatching { ExpenseStatus.valueOf(statusText.uppercase()) }.getOrDefault(ExpenseStatus.IMPAGO)
+        val receipts = idx.get(row, "receipt_uris", listOf("receipts", "comprobantes"))
+            ?.split("|")
+            ?.map { it.trim() }
+            ?.filter { it.isNotBlank() }
+            ?: emptyList()
+        return Row(
+            id = id,
+            templateId = templateId,
+            name = name,
+            category = category,
+            amount = amount,
+            month = month,
+            year = year,
+            status = status,
+            receiptUris = receipts
+        )
     }
 
     fun toRecords(rows: List<Row>): List<ExpenseRecord> {
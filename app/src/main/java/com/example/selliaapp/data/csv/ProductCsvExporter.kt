@@ -32,43 +32,48 @@ object ProductCsvExporter {
 
     fun export(products: List<ProductEntity>): String {
         return buildString {
-            appendLine(CsvExportUtils.line(header))
-            products.forEach { product ->
-                val imageUrls = product.imageUrls.joinToString("|").ifBlank { "" }
-                appendLine(
-                    CsvExportUtils.line(
-                        listOf(
-                            product.code,
-                            product.barcode,
-                            product.name,
-                            product.quantity.toString(),
-                            product.purchasePrice?.toString(),
-                            product.listPrice?.toString(),
-                            product.cashPrice?.toString(),
-                            product.transferPrice?.toString(),
-                            product.transferNetPrice?.toString(),
-                            product.mlPrice?.toString(),
-                            product.ml3cPrice?.toString(),
-                            product.ml6cPrice?.toString(),
-                            product.parentCategory,
-                            product.category,
-                            product.providerName,
-                            product.brand,
-                            product.color,
-                            product.sizes.joinToString("|"),
-                            product.providerSku,
-                            product.minStock?.toString(),
-                            product.description,
-                            product.imageUrl,
-                            imageUrls,
-                            product.updatedAt.toString()
-                        )
-                    )
-                )
-            }
+            writeHeader(this)
+            products.forEach { writeRow(this, it) }
         }
     }
 
+    fun writeHeader(out: Appendable) {
+        CsvExportUtils.appendLine(out, header)
+    }
+
+    fun writeRow(out: Appendable, product: ProductEntity) {
+        val imageUrls = product.imageUrls.joinToString("|").ifBlank { "" }
+        CsvExportUtils.appendLine(
+            out,
+            listOf(
+                product.code,
+                product.barcode,
+                product.name,
+                product.quantity.toString(),
+                product.purchasePrice?.toString(),
+                product.listPrice?.toString(),
+                product.cashPrice?.toString(),
+                product.transferPrice?.toString(),
+                product.transferNetPrice?.toString(),
+                product.mlPrice?.toString(),
+                product.ml3cPrice?.toString(),
+                product.ml6cPrice?.toString(),
+                product.parentCategory,
+                product.category,
+                product.providerName,
+                product.brand,
+                product.color,
+                product.sizes.joinToString("|"),
+                product.providerSku,
+                product.minStock?.toString(),
+                product.description,
+                product.imageUrl,
+                imageUrls,
+                product.updatedAt.toString()
+            )
+        )
+    }
+
     fun exportFileName(timestamp: String): String = "productos_$timestamp.csv"
 
     fun mimeType(): String = "text/csv"
@@ -9,6 +9,7 @@ import com.example.selliaapp.data.local.entity.ProductEntity
 import com.example.selliaapp.data.model.ImportResult
 import java.io.InputStream
 import java.time.LocalDate
+import kotlinx.coroutines.CancellationException
 
 /**
  * Importador de productos desde CSV con soporte de:
@@ -62,16 +63,10 @@ class ProductCsvImporter(
      * (si querés upsert, usá importUpsertByBarcode).
      */
     suspend fun importAppend(resolver: ContentResolver, uri: Uri): ImportResult {
-        val rows = openAndParse(resolver, uri) ?: return ImportResult(
-            inserted = 0,
-            updated = 0,
-            errors = listOf("No se pudo abrir el archivo")
-        )
-
         var inserted = 0
         val errors = mutableListOf<String>()
 
-        rows.forEachIndexed { idx, r ->
+        val opened = forEachFileRow(resolver, uri) { idx, r ->
             try {
                 val entity = ProductEntity(
                     id = 0,
@@ -108,6 +103,7 @@ class ProductCsvImporter(
                 errors += "L${idx + 2}: ${t.message ?: t::class.java.simpleName}"
             }
         }
+        if (!opened) return cannotOpen()
 
         return ImportResult(inserted = inserted, updated = 0, errors = errors)
     }
@@ -118,17 +114,11 @@ class ProductCsvImporter(
      * - Si no existe, inserta.
      */
     suspend fun importUpsertByBarcode(resolver: ContentResolver, uri: Uri): ImportResult {
-        val rows = openAndParse(resolver, uri) ?: return ImportResult(
-            inserted = 0,
-            updated = 0,
-            errors = listOf("No se pudo abrir el archivo")
-        )
-
         var inserted = 0
         var updated = 0
         val errors = mutableListOf<String>()
 
-        rows.forEachIndexed { idx, r ->
+        val opened = forEachFileRow(resolver, uri) { idx, r ->
             try {
                 if (!r.barcode.isNullOrBlank()) {
                     val existing = productDao.getByBarcode(r.barcode!!)
@@ -234,16 +224,35 @@ class ProductCsvImporter(
                 errors += "L${idx + 2}: ${t.message ?: t::class.java.simpleName}"
             }
         }
+        if (!opened) return cannotOpen()
 
         return ImportResult(inserted = inserted, updated = updated, errors = errors)
     }
 
     // -------------------- Helpers internos --------------------
 
-    private fun openAndParse(resolver: ContentResolver, uri: Uri): List<Row>? = try {
-        parseFile(resolver, uri)
+    /**
+     * Recorre el archivo de a [FILE_CHUNK_SIZE] filas sin armarlo entero; [onRow] recibe el
+     * índice de la fila de datos. Devuelve false si el archivo no existe.
+     */
+    private suspend fun forEachFileRow(
+        resolver: ContentResolver,
+        uri: Uri,
+        onRow: suspend (index: Int, row: Row) -> Unit
+    ): Boolean = try {
+        var index = 0
+        forEachChunk<Row>(
+            chunkSize = FILE_CHUNK_SIZE,
+            read = { emit -> forEachRow(TabularFileReader.rowSource(resolver, uri), emit) }
+        ) { rows ->
+            rows.forEach { onRow(index++, it) }
+            true
+        }
+        true
+    } catch (cancelled: CancellationException) {
+        throw cancelled
     } catch (notFound: java.io.FileNotFoundException) {
-        null
+        false
     } catch (illegal: IllegalArgumentException) {
         throw illegal
     } catch (state: IllegalStateException) {
@@ -252,159 +261,169 @@ class ProductCsvImporter(
         throw IllegalArgumentException(t.message ?: "Error al procesar el archivo", t)
     }
 
+    private fun cannotOpen() = ImportResult(
+        inserted = 0,
+        updated = 0,
+        errors = listOf("No se pudo abrir el archivo")
+    )
+
     companion object {
+        private val WHITESPACE = "\\s".toRegex()
+        private val NON_INTEGER_CHARS = "[^0-9-]".toRegex()
+        private const val FILE_CHUNK_SIZE = 500
+
         /**
-         * Parser robusto que usa CsvUtils para leer todo el CSV.
+         * Parser robusto que usa CsvUtils para leer el CSV en streaming.
          * Devuelve una lista de Row (normalizada y saneada).
          */
-        fun parseCsv(input: InputStream): List<Row> = parseTable(CsvUtils.readAll(input))
-
-        fun parseFile(resolver: ContentResolver, uri: Uri): List<Row> =
-            parseTable(TabularFileReader.readAll(resolver, uri))
+        fun parseCsv(input: InputStream): List<Row> = parseRows(CsvUtils.rows(input).asRowSource())
 
-        fun parseTable(table: List<List<String>>): List<Row> {
-            require(table.isNotEmpty()) { "Archivo vacío" }
-
-            val header = table.first()
-            val idx = CsvUtils.HeaderIndex(header)
+        fun parseTable(table: List<List<String>>): List<Row> = parseRows(table.asRowSource())
 
+        fun parseRows(source: RowSource): List<Row> {
             val rows = mutableListOf<Row>()
+            forEachRow(source) { rows += it }
+            return rows
+        }
 
-            val dataRows = table.drop(1)
-            for ((lineIdx, row) in dataRows.withIndex()) {
-                if (row.isEmpty() || row.all { it.isBlank() }) {
-                    break
-                }
+        /**
+         * Convierte cada fila de datos a [Row] a medida que se lee, sin retener la tabla cruda.
+         */
+        fun forEachRow(source: RowSource, onRow: (Row) -> Unit) {
+            val hasHeader = CsvUtils.forEachDataRow(source) { idx, row ->
+                toRow(idx, row)?.let(onRow)
+            }
+            require(hasHeader) { "Archivo vacío" }
+        }
 
-                val name = idx.get(row, "name", aliases = listOf("nombre", "product", "producto"))
-                    ?.takeIf { it.isNotBlank() }
-                    ?: continue
+        private fun toRow(idx: CsvUtils.HeaderIndex, row: List<String>): Row? {
+            val name = idx.get(row, "name", aliases = listOf("nombre", "product", "producto"))
+                ?.takeIf { it.isNotBlank() }
+                ?: return null
 
-                val code = idx.get(row, "code", aliases = listOf("codigo_interno", "sku"))?.ifBlank { null }
-                val barcode = idx.get(row, "barcode", aliases = listOf("codigo", "código", "ean", "upc", "sku"))?.ifBlank { null }
+            val code = idx.get(row, "code", aliases = listOf("codigo_interno", "sku"))?.ifBlank { null }
+            val barcode = idx.get(row, "barcode", aliases = listOf("codigo", "código", "ean", "upc", "sku"))?.ifBlank { null }
 
-                val purchasePrice = idx.get(
-                    row,
-                    "purchase_price",
-                    aliases = listOf("precio_adquisicion", "cost_price", "purchase")
-                )?.let { parseDecimal(it) }
-                val listPrice = parseDecimal(
-                    idx.get(row, "list_price", aliases = listOf("precio_lista", "price_list"))
-                )
-                val cashPrice = parseDecimal(
-                    idx.get(row, "cash_price", aliases = listOf("precio_efectivo", "price_cash"))
-                )
-                val transferPrice = idx.get(
-                    row,
-                    "transfer_price",
-                    aliases = listOf("precio_transferencia", "price_transfer")
-                )?.let { parseDecimal(it) }
-                val transferNetPrice = idx.get(
-                    row,
-                    "transfer_net_price",
-                    aliases = listOf("precio_transferencia_neto", "transfer_net")
-                )?.let { parseDecimal(it) }
-                val mlPrice = parseDecimal(
-                    idx.get(row, "ml_price", aliases = listOf("precio_ml", "price_ml"))
-                )
-                val ml3cPrice = idx.get(
-                    row,
-                    "ml_3c_price",
-                    aliases = listOf("precio_ml_3c", "price_ml_3c")
-                )?.let { parseDecimal(it) }
-                val ml6cPrice = idx.get(
-                    row,
-                    "ml_6c_price",
-                    aliases = listOf("precio_ml_6c", "price_ml_6c")
-                )?.let { parseDecimal(it) }
+            val purchasePrice = idx.get(
+                row,
+                "purchase_price",
+                aliases = listOf("precio_adquisicion", "cost_price", "purchase")
+            )?.let { parseDecimal(it) }
+            val listPrice = parseDecimal(
+                idx.get(row, "list_price", aliases = listOf("precio_lista", "price_list"))
+            )
+            val cashPrice = parseDecimal(
+                idx.get(row, "cash_price", aliases = listOf("precio_efectivo", "price_cash"))
+            )
+            val transferPrice = idx.get(
+                row,
+                "transfer_price",
+                aliases = listOf("precio_transferencia", "price_transfer")
+            )?.let { parseDecimal(it) }
+            val transferNetPrice = idx.get(
+                row,
+                "transfer_net_price",
+                aliases = listOf("precio_transferencia_neto", "transfer_net")
+            )?.let { parseDecimal(it) }
+            val mlPrice = parseDecimal(
+                idx.get(row, "ml_price", aliases = listOf("precio_ml", "price_ml"))
+            )
+            val ml3cPrice = idx.get(
+                row,
+                "ml_3c_price",
+                aliases = listOf("precio_ml_3c", "price_ml_3c")
+            )?.let { parseDecimal(it) }
+            val ml6cPrice = idx.get(
+                row,
+                "ml_6c_price",
+                aliases = listOf("precio_ml_6c", "price_ml_6c")
+            )?.let { parseDecimal(it) }
 
-                val quantity = parseIntValue(
-                    idx.get(row, "quantity", aliases = listOf("qty", "stock", "cantidad"))
-                ) ?: 0
+            val quantity = parseIntValue(
+                idx.get(row, "quantity", aliases = listOf("qty", "stock", "cantidad"))
+            ) ?: 0
 
-                val description = idx.get(row, "description", aliases = listOf("descripcion", "desc"))?.ifBlank { null }
-                val imageUrl = idx.get(
-                    row,
-                    "imageUrl",
-                    aliases = listOf("image_url", "imagen", "url")
-                )?.ifBlank { null }
-                val rawImageUrls = idx.get(
-                    row,
-                    "image_urls",
-                    aliases = listOf("imagenes", "urls", "imagenes_urls", "imageUrls")
-                )
-                val imageUrls = rawImageUrls
-                    ?.split("|")
-                    ?.map { it.trim() }
-                    ?.filter { it.isNotBlank() }
-                    ?.distinct()
-                    ?: emptyList()
-                val combinedImages = (listOfNotNull(imageUrl) + imageUrls).distinct()
-                val parentCategory = idx.get(
-                    row,
-                    "parent_category",
-                    aliases = listOf("categoria_padre", "rubro", "parentCategory")
-                )?.ifBlank { null }
-                val category = idx.get(row, "category", aliases = listOf("categoria", "subcategoria", "subcategory"))?.ifBlank { null }
-                val providerName = idx.get(row, "provider", aliases = listOf("proveedor", "provider_name", "supplier"))
-                    ?.ifBlank { null }
-                val providerSku = idx.get(
-                    row,
-                    "provider_sku",
-                    aliases = listOf("sku_proveedor", "skuProveedor", "supplier_sku")
-                )?.ifBlank { null }
-                val brand = idx.get(row, "brand", aliases = listOf("marca"))?.ifBlank { null }
-                val color = idx.get(row, "color", aliases = listOf("colour"))?.ifBlank { null }
-                val sizes = idx.get(row, "sizes", aliases = listOf("talles", "talle", "size_list"))
-                    ?.split("|")
-                    ?.map { it.trim() }
-                    ?.filter { it.isNotBlank() }
-                    ?.distinct()
-                    ?: emptyList()
-                val minStock = parseIntValue(
-                    idx.get(row, "min_stock", aliases = listOf("minimo", "minstock", "stockmin"))
-                )?.let { if (it < 0) 0 else it }
+            val description = idx.get(row, "description", aliases = listOf("descripcion", "desc"))?.ifBlank { null }
+            val imageUrl = idx.get(
+                row,
+                "imageUrl",
+                aliases = listOf("image_url", "imagen", "url")
+            )?.ifBlank { null }
+            val rawImageUrls = idx.get(
+                row,
+                "image_urls",
+                aliases = listOf("imagenes", "urls", "imagenes_urls", "imageUrls")
+            )
+            val imageUrls = rawImageUrls
+                ?.split("|")
+                ?.map { it.trim() }
+                ?.filter { it.isNotBlank() }
+                ?.distinct()
+                ?: emptyList()
+            val combinedImages = (listOfNotNull(imageUrl) + imageUrls).distinct()
+            val parentCategory = idx.get(
+                row,
+                "parent_category",
+                aliases = listOf("categoria_padre", "rubro", "parentCategory")
+            )?.ifBlank { null }
+            val category = idx.get(row, "category", aliases = listOf("categoria", "subcategoria", "subcategory"))?.ifBlank { null }
+            val providerName = idx.get(row, "provider", aliases = listOf("proveedor", "provider_name", "supplier"))
+                ?.ifBlank { null }
+            val providerSku = idx.get(
+                row,
+                "provider_sku",
+                aliases = listOf("sku_proveedor", "skuProveedor", "supplier_sku")
+            )?.ifBlank { null }
+            val brand = idx.get(row, "brand", aliases = listOf("marca"))?.ifBlank { null }
+            val color = idx.get(row, "color", aliases = listOf("colour"))?.ifBlank { null }
+            val sizes = idx.get(row, "sizes", aliases = listOf("talles", "talle", "size_list"))
+                ?.split("|")
+                ?.map { it.trim() }
+                ?.filter { it.isNotBlank() }
+                ?.distinct()
+                ?: emptyList()
+            val minStock = parseIntValue(
+                idx.get(row, "min_stock", aliases = listOf("minimo", "minstock", "stockmin"))
+            )?.let { if (it < 0) 0 else it }
 
-                val markedAsUpdate = parseUpdateMarker(
-                    idx.get(
-                        row,
-                        "actualizacion",
-                        aliases = listOf("actualización", "update", "is_update", "actualizar")
-                    )
+            val markedAsUpdate = parseUpdateMarker(
+                idx.get(
+                    row,
+                    "actualizacion",
+                    aliases = listOf("actualización", "update", "is_update", "actualizar")
                 )
+            )
 
-                val updatedAt = idx.get(row, "updated_at", aliases = listOf("actualizado", "fecha"))
-                    ?.let { runCatching { LocalDate.parse(it) }.getOrNull() }
+            val updatedAt = idx.get(row, "updated_at", aliases = listOf("actualizado", "fecha"))
+                ?.let { runCatching { LocalDate.parse(it) }.getOrNull() }
 
-                rows += Row(
-                    code = code,
-                    barcode = barcode,
-                    name = name,
-                    quantity = if (quantity < 0) 0 else quantity,
-                    purchasePrice = purchasePrice,
-                    listPrice = listPrice,
-                    cashPrice = cashPrice,
-                    transferPrice = transferPrice,
-                    transferNetPrice = transferNetPrice,
-                    mlPrice = mlPrice,
-                    ml3cPrice = ml3cPrice,
-                    ml6cPrice = ml6cPrice,
-                    description = description,
-                    imageUrl = imageUrl ?: combinedImages.firstOrNull(),
-                    imageUrls = combinedImages,
-                    parentCategory = parentCategory,
-                    category = category,
-                    providerName = providerName,
-                    providerSku = providerSku,
-                    brand = brand,
-                    color = color,
-                    sizes = sizes,
-                    minStock = minStock,
-                    markedAsUpdate = markedAsUpdate,
-                    updatedAt = updatedAt
-                )
-            }
-            return rows
+            return Row(
+                code = code,
+                barcode = barcode,
+                name = name,
+                quantity = if (quantity < 0) 0 else quantity,
+                purchasePrice = purchasePrice,
+                listPrice = listPrice,
+                cashPrice = cashPrice,
+                transferPrice = transferPrice,
+                transferNetPrice = transferNetPrice,
+                mlPrice = mlPrice,
+                ml3cPrice = ml3cPrice,
+                ml6cPrice = ml6cPrice,
+                description = description,
+                imageUrl = imageUrl ?: combinedImages.firstOrNull(),
+                imageUrls = combinedImages,
+                parentCategory = parentCategory,
+                category = category,
+                providerName = providerName,
+                providerSku = providerSku,
+                brand = brand,
+                color = color,
+                sizes = sizes,
+                minStock = minStock,
+                markedAsUpdate = markedAsUpdate,
+                updatedAt = updatedAt
+            )
         }
 
         private fun parseUpdateMarker(raw: String?): Boolean {
@@ -418,7 +437,7 @@ class ProductCsvImporter(
                 .replace("AR$", "", ignoreCase = true)
                 .replace("$", "")
                 .replace("€", "")
-                .replace("\\s".toRegex(), "")
+                .replace(WHITESPACE, "")
             val hasComma = sanitized.contains(',')
             val hasDot = sanitized.contains('.')
             val normalized = when {
@@ -445,7 +464,7 @@ class ProductCsvImporter(
 
         private fun parseIntValue(raw: String?): Int? {
             val value = raw?.trim()?.takeIf { it.isNotBlank() } ?: return null
-            val normalized = value.replace("[^0-9-]".toRegex(), "")
+            val normalized = value.replace(NON_INTEGER_CHARS, "")
             return normalized.toIntOrNull()
         }
     }
@@ -0,0 +1,53 @@
+package com.example.selliaapp.data.csv
+
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.channels.trySendBlocking
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+
+/**
+ * Recorre una fuente bloqueante ([read], p. ej. `ProductCsvImporter.forEachRow` sobre un
+ * XLSX por eventos) en [dispatcher] y entrega lotes de hasta [chunkSize] elementos a
+ * [onChunk], que puede suspender (escribir en Room, llamar a Firestore).
+ *
+ * Como mucho queda un lote esperando mientras se procesa otro: la memoria depende del
+ * tamaño de lote y no del archivo. Si [onChunk] devuelve false se deja de leer.
+ * [dispatcher] tiene que poder bloquear un hilo (IO en la app).
+ */
+suspend fun <T> forEachChunk(
+    chunkSize: Int,
+    read: ((T) -> Unit) -> Unit,
+    dispatcher: CoroutineDispatcher = Dispatchers.IO,
+    onChunk: suspend (List<T>) -> Boolean
+) {
+    require(chunkSize > 0) { "chunkSize debe ser positivo" }
+    coroutineScope {
+        val chunks = Channel<List<T>>(capacity = 1)
+        launch(dispatcher) {
+            try {
+                var buffer = ArrayList<T>(chunkSize)
+                read { item ->
+                    buffer += item
+                    if (buffer.size == chunkSize) {
+                        // El lector no suspende: se bloquea acá hasta que haya lugar en el canal.
+                        // Si el consumidor cortó, el canal está cancelado y esto corta la lectura.
+                        chunks.trySendBlocking(buffer).getOrThrow()
+                        buffer = ArrayList(chunkSize)
+                    }
+                }
+                if (buffer.isNotEmpty()) chunks.send(buffer)
+            } finally {
+                chunks.close()
+            }
+        }
+        try {
+            for (chunk in chunks) {
+                if (!onChunk(chunk)) break
+            }
+        } finally {
+            chunks.cancel()
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.selliaapp.data.csv
+
+/**
+ * Fuente de filas tabulares que se recorre sin materializar la tabla completa.
+ * [forEach] entrega filas hasta agotarlas o hasta que el callback devuelva false.
+ */
+fun interface RowSource {
+    fun forEach(onRow: (List<String>) -> Boolean)
+}
+
+fun List<List<String>>.asRowSource(): RowSource = RowSource { onRow ->
+    for (row in this) {
+        if (!onRow(row)) break
+    }
+}
+
+fun Sequence<List<String>>.asRowSource(): RowSource = RowSource { onRow ->
+    for (row in this) {
+        if (!onRow(row)) break
+    }
+}
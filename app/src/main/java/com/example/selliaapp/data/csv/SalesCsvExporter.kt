@@ -30,45 +30,56 @@ object SalesCsvExporter {
 
     fun export(invoices: List<InvoiceWithItems>): String {
         return buildString {
-            appendLine(CsvExportUtils.line(header))
-            invoices.forEach { invoiceWithItems ->
-                val invoice = invoiceWithItems.invoice
-                val date = LocalDateTime.ofInstant(
-                    Instant.ofEpochMilli(invoice.dateMillis),
-                    ZoneId.systemDefault()
+            writeHeader(this)
+            invoices.forEach { writeRows(this, it) }
+        }
+    }
+
+    fun writeHeader(out: Appendable) {
+        CsvExportUtils.appendLine(out, header)
+    }
+
+    /** Una línea por ítem (o una sola, sin producto, si la factura no tiene ítems). Devuelve las líneas escritas. */
+    fun writeRows(
+        out: Appendable,
+        invoiceWithItems: InvoiceWithItems,
+        zone: ZoneId = ZoneId.systemDefault()
+    ): Int {
+        val invoice = invoiceWithItems.invoice
+        val date = LocalDateTime.ofInstant(
+            Instant.ofEpochMilli(invoice.dateMillis),
+            zone
+        )
+        val items = invoiceWithItems.items.ifEmpty {
+            listOf(null)
+        }
+        items.forEach { item ->
+            CsvExportUtils.appendLine(
+                out,
+                listOf(
+                    invoice.id.toString(),
+                    invoice.id.toString(),
+                    date.toString(),
+                    invoice.customerId?.toString(),
+                    invoice.customerName,
+                    invoice.subtotal.toString(),
+                    invoice.taxes.toString(),
+                    invoice.discountPercent.toString(),
+                    invoice.discountAmount.toString(),
+                    invoice.surchargePercent.toString(),
+                    invoice.surchargeAmount.toString(),
+                    invoice.total.toString(),
+                    invoice.paymentMethod,
+                    invoice.paymentNotes,
+                    item?.productId?.toString(),
+                    item?.productName,
+                    item?.quantity?.toString(),
+                    item?.unitPrice?.toString(),
+                    item?.lineTotal?.toString()
                 )
-                val items = invoiceWithItems.items.ifEmpty {
-                    listOf(null)
-                }
-                items.forEach { item ->
-                    appendLine(
-                        CsvExportUtils.line(
-                            listOf(
-                                invoice.id.toString(),
-                                invoice.id.toString(),
-                                date.toString(),
-                                invoice.customerId?.toString(),
-                                invoice.customerName,
-                                invoice.subtotal.toString(),
-                                invoice.taxes.toString(),
-                                invoice.discountPercent.toString(),
-                                invoice.discountAmount.toString(),
-                                invoice.surchargePercent.toString(),
-                                invoice.surchargeAmount.toString(),
-                                invoice.total.toString(),
-                                invoice.paymentMethod,
-                                invoice.paymentNotes,
-                                item?.productId?.toString(),
-                                item?.productName,
-                                item?.quantity?.toString(),
-                                item?.unitPrice?.toString(),
-                                item?.lineTotal?.toString()
-                            )
-                        )
-                    )
-                }
-            }
+            )
         }
+        return items.size
     }
 
     fun exportFileName(timestamp: String): String = "ventas_$timestamp.csv"
@@ -38,63 +38,99 @@ object SalesCsvImporter {
         val errors: List<String>
     )
 
-    fun parseTable(table: List<List<String>>): List<Row> {
-        if (table.isEmpty()) return emptyList()
-        val header = table.first()
-        val idx = CsvUtils.HeaderIndex(header)
-        return CsvUtils.dataRowsUntilFirstBlank(table)
-            .mapNotNull { row ->
-                val invoiceId = idx.get(row, "invoice_id", listOf("id"))?.toLongOrNull()
-                    ?.takeIf { it > 0L }
-                    ?: return@mapNotNull null
-                val dateText = idx.get(row, "date", listOf("fecha"))?.ifBlank { null }
-                val dateMillis = dateText?.let { parseDateMillis(it) } ?: System.currentTimeMillis()
-                val customerId = idx.get(row, "customer_id", listOf("cliente_id"))?.toIntOrNull()
-                val customerName = idx.get(row, "customer_name", listOf("cliente"))?.ifBlank { null }
-                val subtotal = idx.get(row, "subtotal")?.replace(',', '.')?.toDoubleOrNull() ?: 0.0
-                val taxes = idx.get(row, "taxes", listOf("impuestos"))?.replace(',', '.')?.toDoubleOrNull() ?: 0.0
-                val discountPercent = idx.get(row, "discount_percent", listOf("descuento_pct"))?.toIntOrNull() ?: 0
-                val discountAmount = idx.get(row, "discount_amount", listOf("descuento"))?.replace(',', '.')?.toDoubleOrNull() ?: 0.0
-                val surchargePercent = idx.get(row, "surcharge_percent", listOf("recargo_pct"))?.toIntOrNull() ?: 0
-                val surchargeAmount = idx.get(row, "surcharge_amount", listOf("recargo"))?.replace(',', '.')?.toDoubleOrNull() ?: 0.0
-                val total = idx.get(row, "total")?.replace(',', '.')?.toDoubleOrNull() ?: 0.0
-                val paymentMethod = idx.get(row, "payment_method", listOf("metodo_pago", "método_pago"))
-                    ?.ifBlank { null } ?: "EFECTIVO"
-                val paymentNotes = idx.get(row, "payment_notes", listOf("nota_pago"))?.ifBlank { null }
-                val productId = idx.get(row, "product_id", listOf("producto_id"))?.toIntOrNull()
-                    ?: return@mapNotNull null
-                val productName = idx.get(row, "product_name", listOf("producto"))
-                    ?.trim()
-                    ?.takeIf { it.isNotBlank() }
-                    ?: return@mapNotNull null
-                val quantity = idx.get(row, "quantity", listOf("cantidad"))?.toIntOrNull()
-                    ?: return@mapNotNull null
-                val unitPrice = idx.get(row, "unit_price", listOf("precio_unitario"))
-                    ?.replace(',', '.')
-                    ?.toDoubleOrNull()
-                    ?: return@mapNotNull null
-                val lineTotal = idx.get(row, "line_total", listOf("total_linea"))?.replace(',', '.')?.toDoubleOrNull()
-                Row(
-                    invoiceId = invoiceId,
-                    dateMillis = dateMillis,
-                    customerId = customerId,
-                    customerName = customerName,
-                    subtotal = subtotal,
-                    taxes = taxes,
-                    discountPercent = discountPercent,
-                    discountAmount = discountAmount,
-                    surchargePercent = surchargePercent,
-                    surchargeAmount = surchargeAmount,
-                    total = total,
-                    paymentMethod = paymentMethod,
-                    paymentNotes = paymentNotes,
-                    productId = productId,
-                    productName = productName,
-                    quantity = quantity,
-                    unitPrice = unitPrice,
-                    lineTotal = lineTotal
-                )
+    fun parseTable(table: List<List<String>>): List<Row> = parseRows(table.asRowSource())
+
+    fun parseRows(source: RowSource): List<Row> {
+        val rows = mutableListOf<Row>()
+        forEachRow(source) { rows += it }
+        return rows
+    }
+
+    fun forEachRow(source: RowSource, onRow: (Row) -> Unit) {
+        CsvUtils.forEachDataRow(source) { idx, row ->
+            toRow(idx, row)?.let(onRow)
+        }
+    }
+
+    private fun toRow(idx: CsvUtils.HeaderIndex, row: List<String>): Row? {
+        val invoiceId = idx.get(row, "invoice_id", listOf("id"))?.toLongOrNull()
+            ?.takeIf { it > 0L }
+            ?: return null
+        val dateText = idx.get(row, "date", listOf("fecha"))?.ifBlank { null }
+        val dateMillis = dateText?.let { parseDateMillis(it) } ?: System.currentTimeMillis()
+        val customerId = idx.get(row, "customer_id", listOf("cliente_id"))?.toIntOrNull()
+        val customerName = idx.get(row, "customer_name", listOf("cliente"))?.ifBlank { null }
+        val subtotal = idx.get(row, "subtotal")?.replace(',', '.')?.toDoubleOrNull() ?: 0.0
+        val taxes = idx.get(row, "taxes", listOf("impuestos"))?.replace(',', '.')?.toDoubleOrNull() ?: 0.0
+        val discountPercent = idx.get(row, "discount_percent", listOf("descuento_pct"))?.toIntOrNull() ?: 0
+        val discountAmount = idx.get(row, "discount_amount", listOf("descuento"))?.replace(',', '.')?.toDoubleOrNull() ?: 0.0
+        val surchargePercent = idx.get(row, "surcharge_percent", listOf("recargo_pct"))?.toIntOrNull() ?: 0
+        val surchargeAmount = idx.get(row, "surcharge_amount", listOf("recargo"))?.replace(',', '.')?.toDoubleOrNull() ?: 0.0
+        val total = idx.get(row, "total")?.replace(',', '.')?.toDoubleOrNull() ?: 0.0
+        val paymentMethod = idx.get(row, "payment_method", listOf("metodo_pago", "método_pago"))
+            ?.ifBlank { null } ?: "EFECTIVO"
+        val paymentNotes = idx.get(row, "payment_notes", listOf("nota_pago"))?.ifBlank { null }
+        val productId = idx.get(row, "product_id", listOf("producto_id"))?.toIntOrNull()
+            ?: return null
+        val productName = idx.get(row, "product_name", listOf("producto"))
+            ?.trim()
+            ?.takeIf { it.isNotBlank() }
+            ?: return null
+        val quantity = idx.get(row, "quantity", listOf("cantidad"))?.toIntOrNull()
+            ?: return null
+        val unitPrice = idx.get(row, "unit_price", listOf("precio_unitario"))
+            ?.replace(',', '.')
+            ?.toDoubleOrNull()
+            ?: return null
+        val lineTotal = idx.get(row, "line_total", listOf("total_linea"))?.replace(',', '.')?.toDoubleOrNull()
+        return Row(
+            invoiceId = invoiceId,
+            dateMillis = dateMillis,
+            customerId = customerId,
+            customerName = customerName,
+            subtotal = subtotal,
+            taxes = taxes,
+            discountPercent = discountPercent,
+            discountAmount = discountAmount,
+            surchargePercent = surchargePercent,
+            surchargeAmount = surchargeAmount,
+            total = total,
+            paymentMethod = paymentMethod,
+            paymentNotes = paymentNotes,
+            productId = productId,
+            productName = productName,
+            quantity = quantity,
+            unitPrice = unitPrice,
+            lineTotal = lineTotal
+        )
+    }
+
+    /**
+     * Arma las ventas en streaming: junta las líneas consecutivas de cada `invoice_id` (el
+     * orden en que las escribe [SalesCsvExporter]) y entrega cada venta apenas se completa.
+     * Líneas de una venta que reaparecen más adelante se omiten con aviso. Devuelve los errores.
+     */
+    fun forEachSale(source: RowSource, onSale: (ParsedSale) -> Unit): List<String> {
+        val errors = mutableListOf<String>()
+        val closed = HashSet<Long>()
+        val pending = mutableListOf<Row>()
+        fun flush() {
+            if (pending.isEmpty()) return
+            val (sales, groupErrors) = groupRows(pending)
+            errors += groupErrors
+            sales.forEach(onSale)
+            pending.clear()
+        }
+        forEachRow(source) { row ->
+            if (pending.isNotEmpty() && pending.first().invoiceId != row.invoiceId) flush()
+            if (pending.isEmpty() && !closed.add(row.invoiceId)) {
+                errors += "Venta ${row.invoiceId}: líneas no consecutivas en el archivo, se omiten."
+                return@forEachRow
             }
+            pending += row
+        }
+        flush()
+        return errors
     }
 
     fun groupRows(rows: List<Row>): Pair<List<ParsedSale>, List<String>> {
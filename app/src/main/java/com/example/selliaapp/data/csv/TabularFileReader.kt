@@ -6,14 +6,15 @@ import android.net.Uri
 import android.provider.OpenableColumns
 import android.webkit.MimeTypeMap
 import androidx.annotation.VisibleForTesting
+import org.apache.poi.poifs.filesystem.FileMagic
 import org.apache.poi.ss.usermodel.DataFormatter
 import org.apache.poi.ss.usermodel.WorkbookFactory
 import java.io.InputStream
 import java.util.Locale
 
 /**
- * Utilidad interna para leer archivos tabulares (CSV/Excel/Sheets) y convertirlos en una tabla
- * de strings. Normaliza filas eliminando espacios vacíos al inicio/fin para facilitar el parsing
+ * Utilidad interna para leer archivos tabulares (CSV/Excel/Sheets) fila por fila.
+ * Normaliza filas eliminando espacios vacíos al inicio/fin para facilitar el parsing
  * por encabezados.
  */
 object TabularFileReader {
@@ -28,50 +29,70 @@ object TabularFileReader {
         "application/vnd.ms-excel.sheet.macroenabled.12" to "xlsm"
     )
 
+    /**
+     * Tabla completa en memoria (solo para previews o archivos chicos); las importaciones
+     * usan [rowSource] para procesar fila por fila.
+     */
     fun readAll(resolver: ContentResolver, uri: Uri): List<List<String>> {
+        val rows = mutableListOf<List<String>>()
+        forEachRow(resolver, uri) { row ->
+            rows += row
+            true
+        }
+        return rows.dropLastWhile { row -> row.isEmpty() || row.all { it.isBlank() } }
+    }
+
+    /** Primeras [limit] filas, cortando la lectura apenas se completan. */
+    fun readPreview(resolver: ContentResolver, uri: Uri, limit: Int): List<List<String>> {
+        val rows = mutableListOf<List<String>>()
+        forEachRow(resolver, uri) { row ->
+            rows += row
+            rows.size < limit
+        }
+        return rows
+    }
+
+    fun rowSource(resolver: ContentResolver, uri: Uri): RowSource = RowSource { onRow ->
+        forEachRow(resolver, uri, onRow)
+    }
+
+    /**
+     * Recorre el archivo en streaming: CSV con buffer fijo y XLSX por eventos, sin armar la
+     * tabla completa. Omite filas vacías iniciales y quita celdas vacías al final de cada fila.
+     */
+    fun forEachRow(resolver: ContentResolver, uri: Uri, onRow: (List<String>) -> Boolean) {
         val mime = resolver.getType(uri)?.lowercase(Locale.ROOT).orEmpty()
         val displayName = queryDisplayName(resolver, uri)
         val extension = guessExtension(mime, displayName)
 
-        val table = when {
-            isCsv(extension, mime) -> resolver.openRequired(uri).use { CsvUtils.readAll(it) }
-            isSpreadsheet(extension, mime) -> resolver.openRequired(uri).use { stream ->
-                readSpreadsheet(stream)
-            }
-            else -> {
-                val sheetAttempt = runCatching {
-                    resolver.openRequired(uri).use { stream -> readSpreadsheet(stream) }
-                }.getOrNull()
-                if (!sheetAttempt.isNullOrEmpty()) {
-                    sheetAttempt
-                } else {
-                    val csvAttempt = runCatching {
-                        resolver.openRequired(uri).use { CsvUtils.readAll(it) }
-                    }.getOrNull()
-                    csvAttempt ?: sheetAttempt ?: emptyList()
-                }
+        var sawData = false
+        val normalized: (List<String>) -> Boolean = normalized@{ row ->
+            val trimmed = row.dropLastWhile { it.isBlank() }
+            if (!sawData && trimmed.isEmpty()) return@normalized true
+            sawData = true
+            onRow(trimmed)
+        }
+
+        resolver.openRequired(uri).use { raw ->
+            val stream = FileMagic.prepareToCheckMagic(raw)
+            val magic = runCatching { FileMagic.valueOf(stream) }.getOrDefault(FileMagic.UNKNOWN)
+            when {
+                isCsv(extension, mime) -> forEachCsvRow(stream, normalized)
+                isSpreadsheet(extension, mime) || magic == FileMagic.OOXML || magic == FileMagic.OLE2 ->
+                    forEachSpreadsheetRow(stream, normalized)
+                else -> forEachCsvRow(stream, normalized)
             }
         }
 
-        if (table.isEmpty()) {
+        if (!sawData) {
             throw IllegalArgumentException("Archivo vacío o sin datos")
         }
-
-        return table.normalize()
     }
 
-    private fun List<List<String>>.normalize(): List<List<String>> {
-        if (isEmpty()) return this
-
-        val trimmedStart = dropWhile { row -> row.isEmpty() || row.all { it.isBlank() } }
-        val cleaned = trimmedStart.map { row ->
-            val mutable = row.toMutableList()
-            while (mutable.isNotEmpty() && mutable.last().isBlank()) {
-                mutable.removeAt(mutable.lastIndex)
-            }
-            mutable.toList()
+    private fun forEachCsvRow(input: InputStream, onRow: (List<String>) -> Boolean) {
+        for (row in CsvUtils.rows(input)) {
+            if (!onRow(row)) break
         }
-        return cleaned.dropLastWhile { row -> row.isEmpty() || row.all { it.isBlank() } }
     }
 
     private fun guessExtension(mime: String, displayName: String?): String? {
@@ -110,21 +131,32 @@ object TabularFileReader {
 
     @VisibleForTesting
     internal fun readSpreadsheet(input: InputStream): List<List<String>> {
-        val workbook = WorkbookFactory.create(input)
-        workbook.use { wb ->
-            if (wb.numberOfSheets <= 0) return emptyList()
-            val sheet = wb.getSheetAt(0) ?: return emptyList()
+        val rows = mutableListOf<List<String>>()
+        forEachSpreadsheetRow(input) { row ->
+            rows += row
+            true
+        }
+        return rows
+    }
+
+    /**
+     * XLSX se lee por eventos con [XlsxStreamReader]. El formato binario .xls (tope de 65k
+     * filas) sigue por el modelo de POI, que no tiene un lector por eventos equivalente simple.
+     */
+    private fun forEachSpreadsheetRow(input: InputStream, onRow: (List<String>) -> Boolean) {
+        val stream = FileMagic.prepareToCheckMagic(input)
+        if (FileMagic.valueOf(stream) == FileMagic.OOXML) {
+            XlsxStreamReader.forEachRow(stream, onRow)
+            return
+        }
+        WorkbookFactory.create(stream).use { wb ->
+            if (wb.numberOfSheets <= 0) return
+            val sheet = wb.getSheetAt(0) ?: return
             val formatter = DataFormatter()
             val evaluator = wb.creationHelper.createFormulaEvaluator()
-            val rows = mutableListOf<List<String>>()
-            val lastRow = sheet.lastRowNum
-            for (rowIndex in 0..lastRow) {
+            for (rowIndex in 0..sheet.lastRowNum) {
                 val row = sheet.getRow(rowIndex) ?: continue
                 val lastCellIndex = row.lastCellNum.toInt().coerceAtLeast(0)
-                if (lastCellIndex == 0) {
-                    rows += emptyList<String>()
-                    continue
-                }
                 val values = MutableList(lastCellIndex) { cellIdx ->
                     val cell = row.getCell(cellIdx)
                     if (cell != null) formatter.formatCellValue(cell, evaluator) else ""
@@ -132,9 +164,8 @@ object TabularFileReader {
                 while (values.isNotEmpty() && values.last().isBlank()) {
                     values.removeAt(values.lastIndex)
                 }
-                rows += values
+                if (!onRow(values)) return
             }
-            return rows
         }
     }
 }
@@ -1,5 +1,12 @@
 package com.example.selliaapp.data.csv
 
+import java.io.BufferedInputStream
+import java.io.BufferedWriter
+import java.io.File
+import java.io.FileOutputStream
+import java.io.InputStream
+import java.util.zip.GZIPInputStream
+
 object TotalCsvBundle {
     private const val prefix = "#SECTION:"
     const val PRODUCTS = "${prefix}PRODUCTS"
@@ -28,23 +35,52 @@ object TotalCsvBundle {
         }
     }
 
-    fun splitSections(content: String): Map<String, String> {
-        val lines = content.split("\n")
-        val sections = linkedMapOf<String, StringBuilder>()
-        var currentKey: String? = null
-        lines.forEach { rawLine ->
-            val line = rawLine.trimEnd('\r')
-            if (line.startsWith(prefix)) {
-                currentKey = line
-                if (sections[currentKey] == null) {
-                    sections[currentKey!!] = StringBuilder()
+    /** Acepta la exportación tal cual o comprimida con gzip (detectada por los bytes mágicos). */
+    fun decodedInput(stream: InputStream): InputStream {
+        val buffered = BufferedInputStream(stream)
+        buffered.mark(2)
+        val first = buffered.read()
+        val second = buffered.read()
+        buffered.reset()
+        val isGzip = first == 0x1f && second == 0x8b
+        return if (isGzip) GZIPInputStream(buffered) else buffered
+    }
+
+    /**
+     * Separa las secciones de la exportación total sin leerla completa: copia cada sección
+     * de [input] a un archivo temporal en [directory], línea por línea. Las secciones vacías
+     * no se devuelven. El caller borra los archivos.
+     */
+    fun splitToFiles(input: InputStream, directory: File): Map<String, File> {
+        val files = linkedMapOf<String, File>()
+        var writer: BufferedWriter? = null
+        try {
+            input.bufferedReader(Charsets.UTF_8).useLines { lines ->
+                lines.forEach { rawLine ->
+                    val line = rawLine.trimEnd('\r')
+                    if (line.startsWith(prefix)) {
+                        writer?.close()
+                        val file = files.getOrPut(line) { File.createTempFile("section", ".csv", directory) }
+                        writer = FileOutputStream(file, true).bufferedWriter(Charsets.UTF_8)
+                    } else {
+                        writer?.apply {
+                            write(line)
+                            newLine()
+                        }
+                    }
                 }
-                return@forEach
-            }
-            if (currentKey != null) {
-                sections[currentKey!!]?.appendLine(line)
             }
+        } catch (e: Exception) {
+            writer?.close()
+            files.values.forEach { it.delete() }
+            throw e
+        } finally {
+            writer?.close()
+        }
+        val (withData, empty) = files.entries.partition { (_, file) ->
+            file.useLines(Charsets.UTF_8) { lines -> lines.any { it.isNotBlank() } }
         }
-        return sections.mapValues { it.value.toString().trim() }
+        empty.forEach { it.value.delete() }
+        return withData.associate { it.key to it.value }
     }
 }
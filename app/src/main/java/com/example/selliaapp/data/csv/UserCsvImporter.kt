@@ -1,8 +1,5 @@
 package com.example.selliaapp.data.csv
 
-import android.content.ContentResolver
-import android.net.Uri
-
 /**
  * Importador de usuarios desde archivos tabulares (CSV/Excel/Sheets).
  */
@@ -14,33 +11,37 @@ object UserCsvImporter {
         val role: String
     )
 
-    fun parseFile(resolver: ContentResolver, uri: Uri): List<Row> =
-        parseTable(TabularFileReader.readAll(resolver, uri))
-
     fun parseTable(table: List<List<String>>): List<Row> {
-        if (table.isEmpty()) return emptyList()
-        val header = table.first()
-        val idx = CsvUtils.HeaderIndex(header)
-        return CsvUtils.dataRowsUntilFirstBlank(table)
-            .mapNotNull { row ->
-                val name = idx.get(row, "name", listOf("nombre", "usuario"))
-                    ?.trim()
-                    ?.takeIf { it.isNotBlank() }
-                    ?: return@mapNotNull null
-                val email = idx.get(row, "email", listOf("mail", "correo"))
-                    ?.trim()
-                    ?.takeIf { it.isNotBlank() }
-                    ?: return@mapNotNull null
-                val role = idx.get(row, "role", listOf("rol", "perfil"))
-                    ?.trim()
-                    ?.takeIf { it.isNotBlank() }
-                    ?: return@mapNotNull null
-                Row(
-                    name = name,
-                    email = email,
-                    role = role
-                )
-            }
+        val rows = mutableListOf<Row>()
+        forEachRow(table.asRowSource()) { rows += it }
+        return rows
+    }
+
+    /** Convierte cada fila de datos a [Row] a medida que se lee; las incompletas se omiten. */
+    fun forEachRow(source: RowSource, onRow: (Row) -> Unit) {
+        CsvUtils.forEachDataRow(source) { idx, row ->
+            toRow(idx, row)?.let(onRow)
+        }
+    }
+
+    private fun toRow(idx: CsvUtils.HeaderIndex, row: List<String>): Row? {
+        val name = idx.get(row, "name", listOf("nombre", "usuario"))
+            ?.trim()
+            ?.takeIf { it.isNotBlank() }
+            ?: return null
+        val email = idx.get(row, "email", listOf("mail", "correo"))
+            ?.trim()
+            ?.takeIf { it.isNotBlank() }
+            ?: return null
+        val role = idx.get(row, "role", listOf("rol", "perfil"))
+            ?.trim()
+            ?.takeIf { it.isNotBlank() }
+            ?: return null
+        return Row(
+            name = name,
+            email = email,
+            role = role
+        )
     }
 
     fun templateCsv(): String {
@@ -0,0 +1,89 @@
+package com.example.selliaapp.data.csv
+
+import org.apache.poi.openxml4j.opc.OPCPackage
+import org.apache.poi.openxml4j.opc.PackageAccess
+import org.apache.poi.ss.usermodel.DataFormatter
+import org.apache.poi.ss.util.CellReference
+import org.apache.poi.util.XMLHelper
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable
+import org.apache.poi.xssf.eventusermodel.XSSFReader
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler
+import org.apache.poi.xssf.usermodel.XSSFComment
+import org.xml.sax.InputSource
+import java.io.File
+import java.io.InputStream
+
+/**
+ * Lector XLSX por eventos (SAX) de la primera hoja.
+ *
+ * A diferencia de `WorkbookFactory.create`, no arma el modelo de objetos del libro: las
+ * celdas se recorren en el XML de la hoja y cada fila se entrega apenas termina. El zip se
+ * copia a un archivo temporal para que POI lo lea por entradas y no en memoria.
+ */
+internal object XlsxStreamReader {
+
+    private object StopReading : RuntimeException() {
+        private fun readResolve(): Any = StopReading
+    }
+
+    fun forEachRow(input: InputStream, onRow: (List<String>) -> Boolean) {
+        val tmp = File.createTempFile("tabular-import", ".xlsx")
+        try {
+            tmp.outputStream().use { out -> input.copyTo(out) }
+            OPCPackage.open(tmp, PackageAccess.READ).use { pkg -> readFirstSheet(pkg, onRow) }
+        } finally {
+            tmp.delete()
+        }
+    }
+
+    private fun readFirstSheet(pkg: OPCPackage, onRow: (List<String>) -> Boolean) {
+        val reader = XSSFReader(pkg)
+        val sheets = reader.sheetsData
+        if (!sheets.hasNext()) return
+        val strings = ReadOnlySharedStringsTable(pkg)
+        val collector = RowCollector(onRow)
+        val parser = XMLHelper.newXMLReader()
+        parser.contentHandler = XSSFSheetXMLHandler(
+            reader.stylesTable,
+            null,
+            strings,
+            collector,
+            DataFormatter(),
+            false
+        )
+        sheets.next().use { sheet ->
+            try {
+                parser.parse(InputSource(sheet))
+            } catch (_: StopReading) {
+                // El consumidor no necesita más filas.
+            }
+        }
+    }
+
+    private class RowCollector(
+        private val onRow: (List<String>) -> Boolean
+    ) : XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private val cells = ArrayList<String>()
+
+        override fun startRow(rowNum: Int) {
+            cells.clear()
+        }
+
+        override fun endRow(rowNum: Int) {
+            while (cells.isNotEmpty() && cells.last().isBlank()) {
+                cells.removeAt(cells.lastIndex)
+            }
+            if (!onRow(cells.toList())) throw StopReading
+        }
+
+        override fun cell(cellReference: String?, formattedValue: String?, comment: XSSFComment?) {
+            val column = cellReference?.let { CellReference(it).col.toInt() } ?: cells.size
+            // Las celdas vacías no vienen en el XML: se completan para mantener la posición.
+            while (cells.size < column) cells += ""
+            cells += formattedValue.orEmpty()
+        }
+
+        override fun headerFooter(text: String?, isHeader: Boolean, tagName: String?) = Unit
+    }
+}
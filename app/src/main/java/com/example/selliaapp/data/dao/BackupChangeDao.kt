@@ -0,0 +1,22 @@
+package com.example.selliaapp.data.dao
+
+import androidx.room.Dao
+import androidx.room.Query
+import com.example.selliaapp.data.local.entity.BackupChangeEntity
+
+@Dao
+interface BackupChangeDao {
+
+    @Query("SELECT * FROM backup_changes WHERE seq > :afterSeq ORDER BY seq ASC LIMIT :limit")
+    suspend fun pageAfter(afterSeq: Long, limit: Int): List<BackupChangeEntity>
+
+    @Query("SELECT COUNT(*) FROM backup_changes")
+    suspend fun count(): Int
+
+    /** Solo borra las versiones subidas: si la fila cambió después, su entrada ya tiene otro seq. */
+    @Query("DELETE FROM backup_changes WHERE seq IN (:seqs)")
+    suspend fun deleteSeqs(seqs: List<Long>)
+
+    @Query("DELETE FROM backup_changes")
+    suspend fun clearAll()
+}
@@ -1,20 +1,86 @@
 package com.example.selliaapp.data.dao
 
+import androidx.paging.PagingSource
 import androidx.room.Dao
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
+import androidx.room.Transaction
 import com.example.selliaapp.data.local.entity.CashMovementEntity
+import com.example.selliaapp.data.local.entity.CashSessionTotalEntity
 import kotlinx.coroutines.flow.Flow
 
 @Dao
 interface CashMovementDao {
+
+    /**
+     * Inserta (o reemplaza) el movimiento y actualiza `cash_session_totals` en la misma
+     * transacción. Si reemplaza uno existente, primero descuenta su aporte.
+     */
+    @Transaction
+    suspend fun insert(movement: CashMovementEntity) {
+        getById(movement.id)?.let { previous ->
+            addToTotal(previous.sessionId, previous.type, movements = -1, amount = -previous.amount)
+        }
+        insertRow(movement)
+        addToTotal(movement.sessionId, movement.type, movements = 1, amount = movement.amount)
+    }
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    suspend fun insert(movement: CashMovementEntity)
+    suspend fun insertRow(movement: CashMovementEntity)
+
+    @Query("SELECT * FROM cash_movements WHERE id = :id")
+    suspend fun getById(id: String): CashMovementEntity?
+
+    /** Los últimos [limit] movimientos de la sesión, para el resumen de la pantalla de caja. */
+    @Query("SELECT * FROM cash_movements WHERE sessionId = :sessionId ORDER BY createdAt DESC, id DESC LIMIT :limit")
+    fun observeRecent(sessionId: String, limit: Int): Flow<List<CashMovementEntity>>
+
+    @Query("SELECT * FROM cash_movements WHERE sessionId = :sessionId ORDER BY createdAt DESC, id DESC")
+    fun pagingBySession(sessionId: String): PagingSource<Int, CashMovementEntity>
+
+    // --- Totales por sesión y tipo ---
+
+    @Query("SELECT * FROM cash_session_totals WHERE sessionId = :sessionId")
+    fun observeTotals(sessionId: String): Flow<List<CashSessionTotalEntity>>
+
+    @Query("SELECT * FROM cash_session_totals WHERE sessionId = :sessionId")
+    suspend fun getTotals(sessionId: String): List<CashSessionTotalEntity>
+
+    /** Sin UPSERT (SQLite 3.24+): se asegura la fila y después se suma. */
+    @Transaction
+    suspend fun addToTotal(sessionId: String, type: String, movements: Int, amount: Double) {
+        ensureTotalRow(sessionId, type)
+        incrementTotal(sessionId, type, movements, amount)
+    }
+
+    @Query("INSERT OR IGNORE INTO cash_session_totals (sessionId, type, movements, total) VALUES (:sessionId, :type, 0, 0)")
+    suspend fun ensureTotalRow(sessionId: String, type: String)
+
+    @Query(
+        """
+        UPDATE cash_session_totals
+        SET movements = movements + :movements, total = total + :amount
+        WHERE sessionId = :sessionId AND type = :type
+        """
+    )
+    suspend fun incrementTotal(sessionId: String, type: String, movements: Int, amount: Double)
+
+    @Query("DELETE FROM cash_session_totals")
+    suspend fun clearTotals()
 
-    @Query("SELECT * FROM cash_movements WHERE sessionId = :sessionId ORDER BY createdAt DESC")
-    fun observeBySession(sessionId: String): Flow<List<CashMovementEntity>>
+    @Query(
+        """
+        INSERT INTO cash_session_totals (sessionId, type, movements, total)
+        SELECT sessionId, type, COUNT(*), SUM(amount) FROM cash_movements GROUP BY sessionId, type
+        """
+    )
+    suspend fun insertTotalsFromMovements()
 
-    @Query("SELECT * FROM cash_movements WHERE sessionId = :sessionId ORDER BY createdAt DESC")
-    suspend fun listBySession(sessionId: String): List<CashMovementEntity>
+    /** Recalcula todos los totales desde `cash_movements` (por ejemplo, tras restaurar un respaldo). */
+    @Transaction
+    suspend fun rebuildTotals() {
+        clearTotals()
+        insertTotalsFromMovements()
+    }
 }
@@ -19,6 +19,9 @@ interface CashSessionDao {
     @Query("SELECT * FROM cash_sessions WHERE id = :sessionId")
     fun observeSession(sessionId: String): Flow<CashSessionEntity?>
 
+    @Query("SELECT * FROM cash_sessions WHERE id = :sessionId")
+    suspend fun getSession(sessionId: String): CashSessionEntity?
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     suspend fun insert(session: CashSessionEntity)
 
@@ -19,6 +19,16 @@ interface CustomerDao {
     @Query("SELECT * FROM customers ORDER BY name COLLATE NOCASE ASC")
     suspend fun getAllOnce(): List<CustomerEntity>
 
+    /** Página para exportar, en el mismo orden que [getAllOnce]; arrancar con ("", 0). */
+    @Query("""
+        SELECT * FROM customers
+        WHERE name > :afterName COLLATE NOCASE
+           OR (name = :afterName COLLATE NOCASE AND id > :afterId)
+        ORDER BY name COLLATE NOCASE ASC, id ASC
+        LIMIT :limit
+    """)
+    suspend fun getPageByName(afterName: String, afterId: Int, limit: Int): List<CustomerEntity>
+
     @Query("SELECT * FROM customers WHERE id = :id")
     suspend fun getById(id: Int): CustomerEntity?
 
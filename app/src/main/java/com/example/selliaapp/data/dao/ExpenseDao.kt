@@ -44,6 +44,17 @@ interface ExpenseRecordDao {
     @Query("SELECT * FROM expense_records ORDER BY year DESC, month DESC, id DESC")
     suspend fun getAllOnce(): List<ExpenseRecord>
 
+    /** Página para exportar, en el mismo orden que [getAllOnce]; arrancar con Int.MAX_VALUE. */
+    @Query("""
+        SELECT * FROM expense_records
+        WHERE year < :beforeYear
+           OR (year = :beforeYear AND month < :beforeMonth)
+           OR (year = :beforeYear AND month = :beforeMonth AND id < :beforeId)
+        ORDER BY year DESC, month DESC, id DESC
+        LIMIT :limit
+    """)
+    suspend fun getPageBefore(beforeYear: Int, beforeMonth: Int, beforeId: Int, limit: Int): List<ExpenseRecord>
+
     @Query("""
         SELECT categorySnapshot AS category,
                SUM(amount) AS total
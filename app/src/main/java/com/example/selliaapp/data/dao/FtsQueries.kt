@@ -0,0 +1,23 @@
+package com.example.selliaapp.data.dao
+
+/**
+ * Arma la expresión MATCH de FTS para un término libre: cada palabra pasa a ser un
+ * prefijo (`coca* 500*`, AND implícito). Se descartan los caracteres con significado
+ * en la sintaxis de FTS y las palabras van en minúscula para que `OR`/`NOT`/`NEAR` no
+ * se interpreten como operadores. Devuelve null si no queda nada para buscar.
+ *
+ * Sirve para cualquier tabla FTS con tokenizer `unicode61` (`products_fts`, `invoices_fts`).
+ */
+fun ftsPrefixMatchQuery(term: String?): String? {
+    if (term.isNullOrBlank()) return null
+    val tokens = term
+        .split(FTS_TOKEN_SEPARATOR)
+        .filter { it.isNotEmpty() }
+        .take(FTS_MAX_TOKENS)
+        .map { "${it.lowercase()}*" }
+    return tokens.takeIf { it.isNotEmpty() }?.joinToString(" ")
+}
+
+/** Mismo criterio que el tokenizer `unicode61`: todo lo que no sea letra o dígito separa. */
+private val FTS_TOKEN_SEPARATOR = Regex("[^\\p{L}\\p{N}]+")
+private const val FTS_MAX_TOKENS = 8
@@ -7,7 +7,9 @@ import androidx.room.OnConflictStrategy
 import androidx.room.Query
 import androidx.room.Relation
 import androidx.room.Transaction
+import androidx.room.Upsert
 import com.example.selliaapp.data.local.projections.SumByBucket
+import com.example.selliaapp.data.model.dashboard.DailyKpiTotals
 import com.example.selliaapp.data.model.Invoice
 import com.example.selliaapp.data.model.InvoiceItem
 import com.example.selliaapp.data.model.InvoiceStatus
@@ -24,6 +26,45 @@ data class InvoiceWithItems(
     )
     val items: List<InvoiceItem>
 )
+
+/**
+ * Fila liviana del historial de ventas: sin ítems (solo su cantidad) y con el estado del
+ * outbox resuelto en la misma consulta.
+ */
+data class InvoiceSummaryRow(
+    val id: Long,
+    val dateMillis: Long,
+    val customerName: String?,
+    val total: Double,
+    val status: InvoiceStatus,
+    val itemCount: Int,
+    val outboxPending: Boolean,
+    val outboxError: String?
+)
+
+/**
+ * Columnas de [InvoiceSummaryRow]. El orden (dateMillis DESC, id DESC) lo resuelve el
+ * índice de `dateMillis`, que ya incluye el rowid (= id). `'invoice'` es
+ * `SyncEntityType.INVOICE.storageKey`.
+ */
+private const val INVOICE_SUMMARY_SELECT = """
+    SELECT i.id AS id,
+           i.dateMillis AS dateMillis,
+           i.customerName AS customerName,
+           i.total AS total,
+           i.status AS status,
+           (SELECT COUNT(*) FROM invoice_items ii WHERE ii.invoiceId = i.id) AS itemCount,
+           (o.id IS NOT NULL) AS outboxPending,
+           o.lastError AS outboxError
+    FROM invoices i
+    LEFT JOIN sync_outbox o ON o.entityType = 'invoice' AND o.entityId = i.id
+"""
+
+private const val INVOICE_SUMMARY_SELECT_MATCHING = """
+    $INVOICE_SUMMARY_SELECT
+    JOIN invoices_fts ON invoices_fts.rowid = i.id
+"""
+
 data class DayRow(val day: Long, val total: Double)
 data class HourRow(val hour: Long, val total: Double)
 
@@ -38,6 +79,16 @@ interface InvoiceDao {
     @Query("SELECT * FROM invoices ORDER BY dateMillis DESC, id DESC")
     suspend fun getAllInvoicesOnce(): List<InvoiceWithItems>
 
+    /** Página para exportar, en el mismo orden que [getAllInvoicesOnce]; arrancar con Long.MAX_VALUE. */
+    @Transaction
+    @Query("""
+        SELECT * FROM invoices
+        WHERE dateMillis <= :dateMillis AND (dateMillis < :dateMillis OR id < :id)
+        ORDER BY dateMillis DESC, id DESC
+        LIMIT :limit
+    """)
+    suspend fun invoicesWithItemsBefore(dateMillis: Long, id: Long, limit: Int): List<InvoiceWithItems>
+
     @Transaction
     @Query(
         "SELECT * FROM invoices WHERE id IN (:ids) ORDER BY dateMillis DESC, id DESC"
@@ -50,6 +101,69 @@ interface InvoiceDao {
     @Query("SELECT * FROM Invoices WHERE id = :id")
     suspend fun getById(id: Long): Invoice?
 
+    // --- Historial paginado (keyset sobre dateMillis, id) ---
+
+    /** Primera página, o refresh anclado en ([dateMillis], [id]) inclusive. */
+    @Query("""
+        $INVOICE_SUMMARY_SELECT
+        WHERE i.dateMillis <= :dateMillis AND (i.dateMillis < :dateMillis OR i.id <= :id)
+        ORDER BY i.dateMillis DESC, i.id DESC
+        LIMIT :limit
+    """)
+    suspend fun summariesFrom(dateMillis: Long, id: Long, limit: Int): List<InvoiceSummaryRow>
+
+    /** Página siguiente: facturas más viejas que ([dateMillis], [id]). */
+    @Query("""
+        $INVOICE_SUMMARY_SELECT
+        WHERE i.dateMillis <= :dateMillis AND (i.dateMillis < :dateMillis OR i.id < :id)
+        ORDER BY i.dateMillis DESC, i.id DESC
+        LIMIT :limit
+    """)
+    suspend fun summariesBefore(dateMillis: Long, id: Long, limit: Int): List<InvoiceSummaryRow>
+
+    /** Página anterior: facturas más nuevas que ([dateMillis], [id]), de la más cercana hacia arriba. */
+    @Query("""
+        $INVOICE_SUMMARY_SELECT
+        WHERE i.dateMillis >= :dateMillis AND (i.dateMillis > :dateMillis OR i.id > :id)
+        ORDER BY i.dateMillis ASC, i.id ASC
+        LIMIT :limit
+    """)
+    suspend fun summariesAfter(dateMillis: Long, id: Long, limit: Int): List<InvoiceSummaryRow>
+
+    @Query("""
+        $INVOICE_SUMMARY_SELECT_MATCHING
+        WHERE invoices_fts MATCH :match
+          AND i.dateMillis <= :dateMillis AND (i.dateMillis < :dateMillis OR i.id <= :id)
+        ORDER BY i.dateMillis DESC, i.id DESC
+        LIMIT :limit
+    """)
+    suspend fun summariesMatchingFrom(match: String, dateMillis: Long, id: Long, limit: Int): List<InvoiceSummaryRow>
+
+    @Query("""
+        $INVOICE_SUMMARY_SELECT_MATCHING
+        WHERE invoices_fts MATCH :match
+          AND i.dateMillis <= :dateMillis AND (i.dateMillis < :dateMillis OR i.id < :id)
+        ORDER BY i.dateMillis DESC, i.id DESC
+        LIMIT :limit
+    """)
+    suspend fun summariesMatchingBefore(match: String, dateMillis: Long, id: Long, limit: Int): List<InvoiceSummaryRow>
+
+    @Query("""
+        $INVOICE_SUMMARY_SELECT_MATCHING
+        WHERE invoices_fts MATCH :match
+          AND i.dateMillis >= :dateMillis AND (i.dateMillis > :dateMillis OR i.id > :id)
+        ORDER BY i.dateMillis ASC, i.id ASC
+        LIMIT :limit
+    """)
+    suspend fun summariesMatchingAfter(match: String, dateMillis: Long, id: Long, limit: Int): List<InvoiceSummaryRow>
+
+    /** Listado completo sin ítems (exportaciones y pantallas no paginadas). */
+    @Query("""
+        $INVOICE_SUMMARY_SELECT
+        ORDER BY i.dateMillis DESC, i.id DESC
+    """)
+    fun observeSummaries(): Flow<List<InvoiceSummaryRow>>
+
     // --- Reportes ---
 
     // Reporte: suma total agrupado por día (yyyy-MM-dd) en rango [from,to)
@@ -91,6 +205,24 @@ interface InvoiceDao {
     suspend fun salesGroupedByHour(startMillis: Long, endMillis: Long): List<HourRow>
 
 
+    /**
+     * KPIs del tablero para [from, to): total vendido, cantidad de tickets y margen
+     * (precio de venta menos precio de compra actual, por línea). Usa el índice de dateMillis.
+     */
+    @Query("""
+        SELECT
+            (SELECT COALESCE(SUM(total), 0) FROM invoices
+              WHERE dateMillis >= :from AND dateMillis < :to) AS sales,
+            (SELECT COUNT(*) FROM invoices
+              WHERE dateMillis >= :from AND dateMillis < :to) AS tickets,
+            (SELECT COALESCE(SUM((ii.unitPrice - COALESCE(p.purchasePrice, 0)) * ii.quantity), 0)
+               FROM invoices i
+               JOIN invoice_items ii ON ii.invoiceId = i.id
+               LEFT JOIN products p ON p.id = ii.productId
+              WHERE i.dateMillis >= :from AND i.dateMillis < :to) AS margin
+    """)
+    suspend fun kpiTotalsBetween(from: Long, to: Long): DailyKpiTotals
+
     /**
      * Suma el total de facturas entre dos fechas (epoch millis) inclusive.
      * Devuelve 0 si no hay resultados.
@@ -99,9 +231,16 @@ interface InvoiceDao {
     // ----------------------------
     // Inserts básicos
     // ----------------------------
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    /**
+     * Alta o actualización por id. No usa REPLACE: el borrado implícito no dispara los
+     * triggers de `invoices_fts`.
+     */
+    @Upsert
     suspend fun insertInvoice(invoice: Invoice): Long
 
+    @Query("DELETE FROM invoice_items WHERE invoiceId = :invoiceId")
+    suspend fun deleteItemsByInvoiceId(invoiceId: Long)
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     suspend fun insertItems(items: List<InvoiceItem>)
 
@@ -109,6 +248,8 @@ interface InvoiceDao {
     suspend fun insertInvoiceWithItems(invoice: Invoice, items: List<InvoiceItem>) {
         val invoiceId = if (invoice.id != 0L) {
             insertInvoice(invoice)
+            // Con REPLACE los ítems previos caían por CASCADE; con upsert se reemplazan a mano.
+            deleteItemsByInvoiceId(invoice.id)
             invoice.id
         } else {
             insertInvoice(invoice)
@@ -138,6 +279,21 @@ interface InvoiceDao {
     """)
     fun observeInvoicesByCustomerQuery(q: String): Flow<List<InvoiceWithItems>>
 
+    @Transaction
+    @Query("""
+        SELECT i.* FROM invoices i
+        JOIN invoices_fts ON invoices_fts.rowid = i.id
+        WHERE invoices_fts MATCH :match
+        ORDER BY i.dateMillis DESC, i.id DESC
+    """)
+    fun observeInvoicesWithItemsByCustomerMatch(match: String): Flow<List<InvoiceWithItems>>
+
+    /** Búsqueda por prefijo sobre `invoices_fts` (cliente). Sin término devuelve todas. */
+    fun searchInvoicesWithItemsByCustomer(q: String?): Flow<List<InvoiceWithItems>> {
+        val match = ftsPrefixMatchQuery(q) ?: return observeInvoicesWithItems()
+        return observeInvoicesWithItemsByCustomerMatch(match)
+    }
+
     @Transaction
     @Query("""
         SELECT * FROM invoices
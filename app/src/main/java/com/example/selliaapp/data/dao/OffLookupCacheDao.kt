@@ -0,0 +1,22 @@
+package com.example.selliaapp.data.dao
+
+import androidx.room.Dao
+import androidx.room.Query
+import androidx.room.Upsert
+import com.example.selliaapp.data.local.entity.OffLookupCacheEntity
+
+@Dao
+interface OffLookupCacheDao {
+
+    @Query("SELECT * FROM off_lookup_cache WHERE barcode = :barcode")
+    suspend fun get(barcode: String): OffLookupCacheEntity?
+
+    @Upsert
+    suspend fun upsert(entry: OffLookupCacheEntity)
+
+    @Query("DELETE FROM off_lookup_cache WHERE expiresAt <= :nowMillis")
+    suspend fun deleteExpired(nowMillis: Long): Int
+
+    @Query("DELETE FROM off_lookup_cache")
+    suspend fun clearAll()
+}
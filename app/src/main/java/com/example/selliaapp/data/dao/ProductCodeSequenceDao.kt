@@ -0,0 +1,57 @@
+package com.example.selliaapp.data.dao
+
+import androidx.room.Dao
+import androidx.room.Query
+import androidx.room.Transaction
+
+/** Máximo número usado con [prefix] en `products`, más uno (1 si no hay ninguno). */
+private const val NEXT_FROM_PRODUCTS_SELECT = """
+    SELECT COALESCE(MAX(CAST(SUBSTR(code, LENGTH(:prefix) + 1) AS INTEGER)), 0) + 1
+    FROM products
+    WHERE code LIKE :prefix || '%'
+"""
+
+/**
+ * Secuencias de códigos automáticos. Los métodos son bloqueantes a propósito: se llaman
+ * desde el hilo de IO o desde el de una transacción ya abierta (el alta de un producto
+ * reserva su código en la misma transacción que lo inserta), nunca desde la UI.
+ */
+@Dao
+interface ProductCodeSequenceDao {
+
+    @Query("SELECT nextValue FROM product_code_sequences WHERE prefix = :prefix")
+    fun nextValue(prefix: String): Long?
+
+    @Query("INSERT OR IGNORE INTO product_code_sequences (prefix, nextValue) $NEXT_FROM_PRODUCTS_SELECT")
+    fun seedFromProducts(prefix: String)
+
+    @Query("UPDATE product_code_sequences SET nextValue = nextValue + :count WHERE prefix = :prefix")
+    fun advance(prefix: String, count: Int): Int
+
+    /**
+     * Devuelve `[from, to)` a la secuencia solo si nadie reservó después (compare-and-set
+     * sobre `to`); si otro ya avanzó, esos números quedan como hueco.
+     */
+    @Query("UPDATE product_code_sequences SET nextValue = :from WHERE prefix = :prefix AND nextValue = :to")
+    fun release(prefix: String, from: Long, to: Long): Int
+
+    /** Salta por encima de códigos que llegaron por otro camino (sync, carga manual). */
+    @Query("UPDATE product_code_sequences SET nextValue = MAX(nextValue, ($NEXT_FROM_PRODUCTS_SELECT)) WHERE prefix = :prefix")
+    fun skipPastExisting(prefix: String)
+
+    @Query("SELECT code FROM products WHERE code IN (:codes)")
+    fun existingCodes(codes: List<String>): List<String>
+
+    /**
+     * Reserva [count] números consecutivos y devuelve el primero. El escaneo de `products`
+     * corre solo la primera vez por prefijo; después es un único UPDATE, y como corre en
+     * transacción de escritura dos reservas concurrentes nunca se solapan.
+     */
+    @Transaction
+    fun reserve(prefix: String, count: Int): Long {
+        require(count > 0) { "count debe ser positivo" }
+        if (nextValue(prefix) == null) seedFromProducts(prefix)
+        advance(prefix, count)
+        return checkNotNull(nextValue(prefix)) - count
+    }
+}
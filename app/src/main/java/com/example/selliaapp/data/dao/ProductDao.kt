@@ -3,21 +3,49 @@ package com.example.selliaapp.data.dao
 import androidx.paging.PagingSource
 import androidx.room.Dao
 import androidx.room.Delete
+import androidx.room.Embedded
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
+import androidx.room.Relation
 import androidx.room.Transaction
 import androidx.room.Update
+import androidx.room.Upsert
 import com.example.selliaapp.data.local.entity.ProductEntity
+import com.example.selliaapp.data.local.entity.ProductImageEntity
 import com.example.selliaapp.data.model.dashboard.LowStockProduct
 import kotlinx.coroutines.flow.Flow
 import java.time.LocalDate
 
+/**
+ * Producto con sus imágenes resueltas por relación de Room: una consulta para los
+ * productos y una (partida en lotes de 999 ids por Room) para `product_images`.
+ */
+data class ProductWithImages(
+    @Embedded val product: ProductEntity,
+    @Relation(
+        parentColumn = "id",
+        entityColumn = "productId"
+    )
+    val images: List<ProductImageEntity>
+) {
+    /** Entidad con `imageUrls` tomadas de `product_images` en orden de `position`. */
+    fun toEntity(): ProductEntity =
+        product.copy(imageUrls = images.sortedBy { it.position }.map { it.url })
+}
+
 /**
  * DAO de productos.
  * - Usa exclusivamente ProductEntity (persistencia).
  * - Expone flujos reactivos + operaciones puntuales.
  */
+/** Claves de escaneo de un producto, sin cargar la fila completa. */
+data class ProductScanKey(
+    val id: Int,
+    val barcode: String?,
+    val code: String?
+)
+
 @Dao
 interface ProductDao {
 
@@ -29,12 +57,26 @@ interface ProductDao {
     @Query("SELECT * FROM products ORDER BY name COLLATE NOCASE ASC")
     suspend fun getAllOnce(): List<ProductEntity>
 
+    /** Página para exportar, en el mismo orden que [getAllOnce]; arrancar con ("", 0). */
+    @Query("""
+        SELECT * FROM products
+        WHERE name > :afterName COLLATE NOCASE
+           OR (name = :afterName COLLATE NOCASE AND id > :afterId)
+        ORDER BY name COLLATE NOCASE ASC, id ASC
+        LIMIT :limit
+    """)
+    suspend fun getPageByName(afterName: String, afterId: Int, limit: Int): List<ProductEntity>
+
     @Query("SELECT * FROM products WHERE id = :id")
     suspend fun getById(id: Int): ProductEntity?
 
     @Query("SELECT * FROM products WHERE id IN (:ids)")
     suspend fun getByIds(ids: List<Int>): List<ProductEntity>
 
+    /** Candidatos del recálculo de pricing: auto pricing activo y con precio de compra. */
+    @Query("SELECT * FROM products WHERE autoPricing = 1 AND purchasePrice IS NOT NULL")
+    suspend fun getAutoPricedOnce(): List<ProductEntity>
+
     @Query("SELECT * FROM products WHERE barcode = :barcode LIMIT 1")
     suspend fun getByBarcodeOnce(barcode: String): ProductEntity?
 
@@ -47,6 +89,36 @@ interface ProductDao {
     @Query("SELECT * FROM products WHERE barcode = :barcode LIMIT 1")
     suspend fun getByBarcode(barcode: String): ProductEntity?
 
+    // --------- Lecturas con imágenes ---------
+
+    @Transaction
+    @Query("SELECT * FROM products ORDER BY name COLLATE NOCASE ASC")
+    fun observeAllWithImages(): Flow<List<ProductWithImages>>
+
+    @Transaction
+    @Query("SELECT * FROM products ORDER BY name COLLATE NOCASE ASC")
+    suspend fun getAllWithImagesOnce(): List<ProductWithImages>
+
+    @Transaction
+    @Query("SELECT * FROM products WHERE id = :id")
+    suspend fun getByIdWithImages(id: Int): ProductWithImages?
+
+    @Transaction
+    @Query("SELECT * FROM products WHERE id IN (:ids)")
+    suspend fun getByIdsWithImages(ids: List<Int>): List<ProductWithImages>
+
+    @Transaction
+    @Query("SELECT * FROM products WHERE barcode = :barcode LIMIT 1")
+    suspend fun getByBarcodeWithImages(barcode: String): ProductWithImages?
+
+    @Transaction
+    @Query("SELECT * FROM products WHERE code = :code LIMIT 1")
+    suspend fun getByCodeWithImages(code: String): ProductWithImages?
+
+    @Transaction
+    @Query("SELECT * FROM products WHERE name = :name LIMIT 1")
+    suspend fun getByNameWithImages(name: String): ProductWithImages?
+
     @Query(
         """
         SELECT MAX(CAST(SUBSTR(code, :offset) AS INTEGER))
@@ -56,14 +128,36 @@ interface ProductDao {
     )
     suspend fun getMaxSequenceForCode(prefix: String, offset: Int): Int?
 
+    @Query("SELECT id, barcode, code FROM products")
+    suspend fun getScanKeys(): List<ProductScanKey>
+
+
+    /**
+     * Búsqueda por prefijo sobre `products_fts` (nombre, código, barcode, marca, categoría,
+     * SKU de proveedor). Sin término devuelve todo el catálogo.
+     * Para lecturas exactas por código/barcode usar [getByCodeOnce]/[getByBarcodeOnce].
+     */
+    fun search(term: String?): Flow<List<ProductEntity>> {
+        val match = ftsPrefixMatchQuery(term) ?: return observeAll()
+        return searchFts(match, term.orEmpty().trim())
+    }
 
+    /**
+     * Ranking: coincidencia exacta de código/barcode, luego nombres que empiezan con el
+     * término y después el resto, siempre por nombre.
+     */
     @Query("""
-        SELECT * FROM products 
-        WHERE (:term IS NULL OR :term = '')
-           OR (name LIKE '%' || :term || '%' OR code LIKE '%' || :term || '%' OR barcode LIKE '%' || :term || '%') 
-        ORDER BY name COLLATE NOCASE ASC
+        SELECT p.* FROM products p
+        JOIN products_fts ON products_fts.rowid = p.id
+        WHERE products_fts MATCH :match
+        ORDER BY CASE
+                     WHEN p.code = :term OR p.barcode = :term THEN 0
+                     WHEN p.name LIKE :term || '%' THEN 1
+                     ELSE 2
+                 END,
+                 p.name COLLATE NOCASE ASC
     """)
-    fun search(term: String?): Flow<List<ProductEntity>>
+    fun searchFts(match: String, term: String): Flow<List<ProductEntity>>
 
     /**
      * Devuelve los productos con stock igual o por debajo del mínimo configurado.
@@ -107,8 +201,18 @@ interface ProductDao {
         }
     }
 
-    /** Inserta/actualiza lista de productos (REPLACE). */
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    /** Alta en lote (importación); devuelve los ids en el mismo orden. */
+    @Insert(onConflict = OnConflictStrategy.ABORT)
+    suspend fun insertAll(products: List<ProductEntity>): List<Long>
+
+    @Update
+    suspend fun updateAll(products: List<ProductEntity>): Int
+
+    /**
+     * Inserta/actualiza lista de productos por id.
+     * No usa REPLACE: el borrado implícito no dispara los triggers de `products_fts`.
+     */
+    @Upsert
     suspend fun upsertAll(products: List<ProductEntity>)
 
     /** Borrado por entidad. */
@@ -142,35 +246,7 @@ interface ProductDao {
         return if (existing == null) {
             insert(incoming).toInt()
         } else {
-            val merged = existing.copy(
-                code        = incoming.code        ?: existing.code,
-                barcode     = incoming.barcode     ?: existing.barcode,
-                name        = if (incoming.name.isNotBlank()) incoming.name else existing.name,
-                purchasePrice = incoming.purchasePrice ?: existing.purchasePrice,
-                listPrice   = incoming.listPrice   ?: existing.listPrice,
-                cashPrice   = incoming.cashPrice   ?: existing.cashPrice,
-                transferPrice = incoming.transferPrice ?: existing.transferPrice,
-                transferNetPrice = incoming.transferNetPrice ?: existing.transferNetPrice,
-                mlPrice     = incoming.mlPrice     ?: existing.mlPrice,
-                ml3cPrice   = incoming.ml3cPrice   ?: existing.ml3cPrice,
-                ml6cPrice   = incoming.ml6cPrice   ?: existing.ml6cPrice,
-                autoPricing = incoming.autoPricing,
-                quantity    = if (incoming.quantity != 0) incoming.quantity else existing.quantity,
-                description = incoming.description ?: existing.description,
-                imageUrl    = incoming.imageUrl    ?: existing.imageUrl,
-                imageUrls   = if (incoming.imageUrls.isNotEmpty()) incoming.imageUrls else existing.imageUrls,
-                categoryId  = incoming.categoryId  ?: existing.categoryId,
-                providerId  = incoming.providerId  ?: existing.providerId,
-                providerName= incoming.providerName?: existing.providerName,
-                providerSku = incoming.providerSku ?: existing.providerSku,
-                brand       = incoming.brand ?: existing.brand,
-                parentCategory = incoming.parentCategory ?: existing.parentCategory,
-                category    = incoming.category    ?: existing.category,
-                color       = incoming.color ?: existing.color,
-                sizes       = if (incoming.sizes.isNotEmpty()) incoming.sizes else existing.sizes,
-                minStock    = incoming.minStock    ?: existing.minStock,
-                updatedAt   = incoming.updatedAt   // no forzamos si viene null; si querés: incoming.updatedAt ?: existing.updatedAt
-            )
+            val merged = mergeByKeys(existing, incoming)
             update(merged)
             merged.id
         }
@@ -227,14 +303,23 @@ interface ProductDao {
     @Query("SELECT * FROM products ORDER BY name COLLATE NOCASE ASC")
     fun pagingAll(): PagingSource<Int, ProductEntity>
 
+    fun pagingSearch(q: String): PagingSource<Int, ProductEntity> {
+        val match = ftsPrefixMatchQuery(q) ?: return pagingAll()
+        return pagingSearchFts(match, q.trim())
+    }
+
     @Query("""
-        SELECT * FROM products 
-        WHERE name LIKE '%' || :q || '%' OR 
-              barcode LIKE '%' || :q || '%' OR 
-              code LIKE '%' || :q || '%'
-        ORDER BY name COLLATE NOCASE ASC
+        SELECT p.* FROM products p
+        JOIN products_fts ON products_fts.rowid = p.id
+        WHERE products_fts MATCH :match
+        ORDER BY CASE
+                     WHEN p.code = :term OR p.barcode = :term THEN 0
+                     WHEN p.name LIKE :term || '%' THEN 1
+                     ELSE 2
+                 END,
+                 p.name COLLATE NOCASE ASC
     """)
-    fun pagingSearch(q: String): PagingSource<Int, ProductEntity>
+    fun pagingSearchFts(match: String, term: String): PagingSource<Int, ProductEntity>
 
     @Query("""
         SELECT * FROM products 
@@ -273,3 +358,37 @@ interface ProductDao {
 
 
 }
+
+/**
+ * Fusión usada por [ProductDao.upsertByKeys] y por la importación masiva:
+ * los campos no nulos del entrante pisan a los del existente.
+ */
+fun mergeByKeys(existing: ProductEntity, incoming: ProductEntity): ProductEntity = existing.copy(
+    code        = incoming.code        ?: existing.code,
+    barcode     = incoming.barcode     ?: existing.barcode,
+    name        = if (incoming.name.isNotBlank()) incoming.name else existing.name,
+    purchasePrice = incoming.purchasePrice ?: existing.purchasePrice,
+    listPrice   = incoming.listPrice   ?: existing.listPrice,
+    cashPrice   = incoming.cashPrice   ?: existing.cashPrice,
+    transferPrice = incoming.transferPrice ?: existing.transferPrice,
+    transferNetPrice = incoming.transferNetPrice ?: existing.transferNetPrice,
+    mlPrice     = incoming.mlPrice     ?: existing.mlPrice,
+    ml3cPrice   = incoming.ml3cPrice   ?: existing.ml3cPrice,
+    ml6cPrice   = incoming.ml6cPrice   ?: existing.ml6cPrice,
+    autoPricing = incoming.autoPricing,
+    quantity    = if (incoming.quantity != 0) incoming.quantity else existing.quantity,
+    description = incoming.description ?: existing.description,
+    imageUrl    = incoming.imageUrl    ?: existing.imageUrl,
+    imageUrls   = if (incoming.imageUrls.isNotEmpty()) incoming.imageUrls else existing.imageUrls,
+    categoryId  = incoming.categoryId  ?: existing.categoryId,
+    providerId  = incoming.providerId  ?: existing.providerId,
+    providerName= incoming.providerName?: existing.providerName,
+    providerSku = incoming.providerSku ?: existing.providerSku,
+    brand       = incoming.brand ?: existing.brand,
+    parentCategory = incoming.parentCategory ?: existing.parentCategory,
+    category    = incoming.category    ?: existing.category,
+    color       = incoming.color ?: existing.color,
+    sizes       = if (incoming.sizes.isNotEmpty()) incoming.sizes else existing.sizes,
+    minStock    = incoming.minStock    ?: existing.minStock,
+    updatedAt   = incoming.updatedAt   // no forzamos si viene null; si querés: incoming.updatedAt ?: existing.updatedAt
+)
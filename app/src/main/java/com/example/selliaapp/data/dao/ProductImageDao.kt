@@ -22,6 +22,9 @@ interface ProductImageDao {
     @Query("DELETE FROM product_images WHERE productId = :productId")
     suspend fun deleteByProductId(productId: Int): Int
 
+    @Query("DELETE FROM product_images WHERE productId IN (:productIds)")
+    suspend fun deleteByProductIds(productIds: List<Int>): Int
+
     @Update
     suspend fun updateAll(images: List<ProductImageEntity>): Int
 
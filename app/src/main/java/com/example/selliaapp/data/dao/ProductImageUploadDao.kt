@@ -0,0 +1,53 @@
+package com.example.selliaapp.data.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.Query
+import androidx.room.Update
+import com.example.selliaapp.data.local.entity.ProductImageUploadEntity
+import kotlinx.coroutines.flow.Flow
+
+@Dao
+interface ProductImageUploadDao {
+
+    @Insert
+    suspend fun insert(upload: ProductImageUploadEntity): Long
+
+    @Update
+    suspend fun update(upload: ProductImageUploadEntity)
+
+    @Query("SELECT * FROM product_image_uploads WHERE id = :id")
+    suspend fun get(id: Long): ProductImageUploadEntity?
+
+    @Query("SELECT * FROM product_image_uploads WHERE id = :id")
+    fun observe(id: Long): Flow<ProductImageUploadEntity?>
+
+    /** Subidas que agotaron los reintentos: esperan que el usuario las reintente o descarte. */
+    @Query("SELECT * FROM product_image_uploads WHERE status = 'FAILED' ORDER BY id")
+    fun observeFailed(): Flow<List<ProductImageUploadEntity>>
+
+    @Query(
+        """
+        SELECT * FROM product_image_uploads
+        WHERE status = 'PENDING' AND nextAttemptAt <= :nowMillis
+        ORDER BY id
+        LIMIT :limit
+        """
+    )
+    suspend fun due(nowMillis: Long, limit: Int): List<ProductImageUploadEntity>
+
+    /** Momento del próximo reintento pendiente, o null si no queda nada por subir. */
+    @Query("SELECT MIN(nextAttemptAt) FROM product_image_uploads WHERE status = 'PENDING'")
+    suspend fun nextAttemptAt(): Long?
+
+    /** Lo que quedó "subiendo" cuando murió el proceso vuelve a la cola. */
+    @Query("UPDATE product_image_uploads SET status = 'PENDING' WHERE status = 'UPLOADING'")
+    suspend fun requeueInterrupted(): Int
+
+    /** Las FAILED no se purgan: conservan sus archivos hasta que se reintentan o descartan. */
+    @Query("DELETE FROM product_image_uploads WHERE status = 'DONE' AND createdAt < :beforeMillis")
+    suspend fun deleteFinishedBefore(beforeMillis: Long): Int
+
+    @Query("DELETE FROM product_image_uploads WHERE id = :id")
+    suspend fun delete(id: Long): Int
+}
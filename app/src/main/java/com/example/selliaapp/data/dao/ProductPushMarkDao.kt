@@ -0,0 +1,19 @@
+package com.example.selliaapp.data.dao
+
+import androidx.room.Dao
+import androidx.room.Query
+import androidx.room.Upsert
+import com.example.selliaapp.data.local.entity.ProductPushMarkEntity
+
+@Dao
+interface ProductPushMarkDao {
+
+    @Upsert
+    suspend fun upsertAll(marks: List<ProductPushMarkEntity>)
+
+    @Query("SELECT * FROM product_push_marks WHERE productId IN (:productIds)")
+    suspend fun getByIds(productIds: List<Int>): List<ProductPushMarkEntity>
+
+    @Query("DELETE FROM product_push_marks")
+    suspend fun clearAll()
+}
@@ -0,0 +1,38 @@
+package com.example.selliaapp.data.dao
+
+import androidx.room.Dao
+import androidx.room.Query
+import androidx.room.Transaction
+import androidx.room.Upsert
+import com.example.selliaapp.data.local.entity.PublicCatalogProductEntity
+import kotlinx.coroutines.flow.Flow
+
+@Dao
+interface PublicCatalogDao {
+
+    @Query("""
+        SELECT * FROM public_catalog_products
+        WHERE storeId = :storeId AND productId IS NOT NULL AND name != ''
+        ORDER BY name COLLATE NOCASE
+    """)
+    fun observeStore(storeId: String): Flow<List<PublicCatalogProductEntity>>
+
+    @Query("SELECT docId FROM public_catalog_products WHERE storeId = :storeId")
+    suspend fun docIds(storeId: String): List<String>
+
+    @Upsert
+    suspend fun upsertAll(rows: List<PublicCatalogProductEntity>)
+
+    @Query("DELETE FROM public_catalog_products WHERE storeId = :storeId AND docId IN (:docIds)")
+    suspend fun deleteDocs(storeId: String, docIds: List<String>)
+
+    /**
+     * Aplica una página del servidor: altas y cambios en [rows], y [removedDocIds] para
+     * los documentos que ya no están en `public_products` o quedaron como lápida.
+     */
+    @Transaction
+    suspend fun applyPage(storeId: String, rows: List<PublicCatalogProductEntity>, removedDocIds: List<String>) {
+        if (rows.isNotEmpty()) upsertAll(rows)
+        removedDocIds.chunked(SQL_IN_CHUNK).forEach { deleteDocs(storeId, it) }
+    }
+}
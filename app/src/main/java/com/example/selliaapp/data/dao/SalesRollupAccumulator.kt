@@ -0,0 +1,78 @@
+package com.example.selliaapp.data.dao
+
+import com.example.selliaapp.data.local.entity.SalesRollupEntity
+import java.time.Instant
+import java.time.ZoneId
+
+/** Aporte de una factura emitida al rollup: total, unidades y costo de sus ítems. */
+data class InvoiceRollupContribution(
+    val invoiceId: Long,
+    val dateMillis: Long,
+    val total: Double,
+    val units: Int,
+    val cost: Double
+)
+
+/**
+ * Suma (o resta) aportes de facturas en buckets de día/hora local y los combina con las
+ * filas existentes de `sales_rollup`. Cada factura cuenta en su hora y en el total del día.
+ */
+internal class SalesRollupAccumulator(private val zone: ZoneId) {
+
+    data class Key(val epochDay: Long, val hour: Int)
+
+    data class Result(
+        val upserts: List<SalesRollupEntity>,
+        /** Buckets que quedaron sin tickets (por ejemplo, tras anular la única venta). */
+        val deletes: List<Key>
+    )
+
+    private class Delta {
+        var salesTotal = 0.0
+        var tickets = 0
+        var units = 0
+        var cost = 0.0
+    }
+
+    private val deltas = LinkedHashMap<Key, Delta>()
+
+    val epochDays: Set<Long> get() = deltas.keys.mapTo(LinkedHashSet()) { it.epochDay }
+
+    fun isEmpty(): Boolean = deltas.isEmpty()
+
+    fun add(contribution: InvoiceRollupContribution, sign: Int = 1) {
+        val local = Instant.ofEpochMilli(contribution.dateMillis).atZone(zone)
+        val epochDay = local.toLocalDate().toEpochDay()
+        listOf(Key(epochDay, local.hour), Key(epochDay, SalesRollupEntity.DAY_TOTAL)).forEach { key ->
+            deltas.getOrPut(key, ::Delta).apply {
+                salesTotal += sign * contribution.total
+                tickets += sign
+                units += sign * contribution.units
+                cost += sign * contribution.cost
+            }
+        }
+    }
+
+    fun mergeInto(existing: Collection<SalesRollupEntity>): Result {
+        val current = existing.associateBy { Key(it.epochDay, it.hour) }
+        val upserts = mutableListOf<SalesRollupEntity>()
+        val deletes = mutableListOf<Key>()
+        deltas.forEach { (key, delta) ->
+            val base = current[key]
+            val tickets = (base?.tickets ?: 0) + delta.tickets
+            if (tickets <= 0) {
+                if (base != null) deletes += key
+            } else {
+                upserts += SalesRollupEntity(
+                    epochDay = key.epochDay,
+                    hour = key.hour,
+                    salesTotal = (base?.salesTotal ?: 0.0) + delta.salesTotal,
+                    tickets = tickets,
+                    units = (base?.units ?: 0) + delta.units,
+                    cost = (base?.cost ?: 0.0) + delta.cost
+                )
+            }
+        }
+        return Result(upserts, deletes)
+    }
+}
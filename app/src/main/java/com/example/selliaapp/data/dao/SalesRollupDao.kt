@@ -0,0 +1,163 @@
+package com.example.selliaapp.data.dao
+
+import androidx.room.Dao
+import androidx.room.Query
+import androidx.room.Transaction
+import androidx.room.Upsert
+import com.example.selliaapp.data.local.entity.SalesRollupEntity
+import com.example.selliaapp.data.local.entity.SalesRollupMetaEntity
+import java.time.ZoneId
+
+/**
+ * Aporte por factura emitida. El costo usa el `unitCost` fijado en cada ítem (no el precio
+ * de compra actual), así sumar y restar la misma factura deja el rollup como estaba.
+ */
+internal const val INVOICE_ROLLUP_CONTRIBUTION_SELECT = """
+    SELECT i.id AS invoiceId,
+           i.dateMillis AS dateMillis,
+           i.total AS total,
+           COALESCE(SUM(ii.quantity), 0) AS units,
+           COALESCE(SUM(ii.quantity * COALESCE(ii.unitCost, 0)), 0) AS cost
+    FROM invoices i
+    LEFT JOIN invoice_items ii ON ii.invoiceId = i.id
+    WHERE i.status = 'EMITIDA'
+"""
+
+private const val ROLLUP_REBUILD_PAGE = 1_000
+
+data class SalesRollupMonthRow(
+    val year: Int,
+    val month: Int,
+    val salesTotal: Double,
+    val tickets: Int,
+    val units: Int,
+    val cost: Double
+)
+
+@Dao
+interface SalesRollupDao {
+
+    // --- Lecturas para reportes (rango de días locales inclusive) ---
+
+    @Query("""
+        SELECT * FROM sales_rollup
+        WHERE hour = ${SalesRollupEntity.DAY_TOTAL} AND epochDay BETWEEN :fromEpochDay AND :toEpochDay
+        ORDER BY epochDay
+    """)
+    suspend fun daily(fromEpochDay: Long, toEpochDay: Long): List<SalesRollupEntity>
+
+    @Query("""
+        SELECT * FROM sales_rollup
+        WHERE hour >= 0 AND epochDay BETWEEN :fromEpochDay AND :toEpochDay
+        ORDER BY epochDay, hour
+    """)
+    suspend fun hourly(fromEpochDay: Long, toEpochDay: Long): List<SalesRollupEntity>
+
+    /** `epochDay` ya es fecha local: convertirlo como UTC devuelve el mismo año/mes. */
+    @Query("""
+        SELECT CAST(strftime('%Y', epochDay * 86400, 'unixepoch') AS INTEGER) AS year,
+               CAST(strftime('%m', epochDay * 86400, 'unixepoch') AS INTEGER) AS month,
+               SUM(salesTotal) AS salesTotal,
+               SUM(tickets) AS tickets,
+               SUM(units) AS units,
+               SUM(cost) AS cost
+        FROM sales_rollup
+        WHERE hour = ${SalesRollupEntity.DAY_TOTAL} AND epochDay BETWEEN :fromEpochDay AND :toEpochDay
+        GROUP BY year, month
+        ORDER BY year, month
+    """)
+    suspend fun monthly(fromEpochDay: Long, toEpochDay: Long): List<SalesRollupMonthRow>
+
+    // --- Mantenimiento ---
+
+    @Query("$INVOICE_ROLLUP_CONTRIBUTION_SELECT AND i.id IN (:invoiceIds) GROUP BY i.id")
+    suspend fun contributionsOf(invoiceIds: List<Long>): List<InvoiceRollupContribution>
+
+    @Query("""
+        $INVOICE_ROLLUP_CONTRIBUTION_SELECT AND i.id > :afterId
+        GROUP BY i.id
+        ORDER BY i.id
+        LIMIT :limit
+    """)
+    suspend fun contributionsAfter(afterId: Long, limit: Int): List<InvoiceRollupContribution>
+
+    @Query("SELECT * FROM sales_rollup WHERE epochDay IN (:epochDays)")
+    suspend fun getDays(epochDays: List<Long>): List<SalesRollupEntity>
+
+    @Upsert
+    suspend fun upsertAll(rows: List<SalesRollupEntity>)
+
+    @Query("DELETE FROM sales_rollup WHERE epochDay = :epochDay AND hour = :hour")
+    suspend fun delete(epochDay: Long, hour: Int)
+
+    @Query("DELETE FROM sales_rollup")
+    suspend fun clearAll()
+
+    @Query("SELECT zoneId FROM sales_rollup_meta WHERE id = ${SalesRollupMetaEntity.SINGLETON_ID}")
+    suspend fun bucketZoneId(): String?
+
+    @Upsert
+    suspend fun upsertMeta(meta: SalesRollupMetaEntity)
+
+    /**
+     * Reconstruye el rollup si sus buckets no están en [zone] (cambio de zona horaria del
+     * dispositivo o base recién migrada). Llamar antes de leer; las escrituras ya lo hacen.
+     */
+    @Transaction
+    suspend fun rebuildIfZoneChanged(zone: ZoneId = ZoneId.systemDefault()): Boolean {
+        if (bucketZoneId() == zone.id) return false
+        rebuild(zone)
+        return true
+    }
+
+    /**
+     * Suma al rollup las facturas indicadas tal como están ahora en la DB. Las anuladas no
+     * aportan. Llamar dentro de la transacción que las escribió.
+     */
+    @Transaction
+    suspend fun addInvoices(invoiceIds: Collection<Long>, zone: ZoneId = ZoneId.systemDefault()) {
+        applyInvoices(invoiceIds, sign = 1, zone = zone)
+    }
+
+    /**
+     * Resta el aporte actual de las facturas indicadas. Va antes de reemplazarlas o
+     * anularlas, en la misma transacción, seguido de [addInvoices] si corresponde.
+     */
+    @Transaction
+    suspend fun removeInvoices(invoiceIds: Collection<Long>, zone: ZoneId = ZoneId.systemDefault()) {
+        applyInvoices(invoiceIds, sign = -1, zone = zone)
+    }
+
+    /** Recalcula todo desde `invoices` (por ejemplo, tras una importación o un cambio de zona). */
+    @Transaction
+    suspend fun rebuild(zone: ZoneId = ZoneId.systemDefault()) {
+        clearAll()
+        val accumulator = SalesRollupAccumulator(zone)
+        var afterId = 0L
+        while (true) {
+            val page = contributionsAfter(afterId, ROLLUP_REBUILD_PAGE)
+            page.forEach { accumulator.add(it) }
+            if (page.size < ROLLUP_REBUILD_PAGE) break
+            afterId = page.last().invoiceId
+        }
+        accumulator.mergeInto(emptyList()).upserts.chunked(SQL_IN_CHUNK).forEach { upsertAll(it) }
+        upsertMeta(SalesRollupMetaEntity(zoneId = zone.id))
+    }
+}
+
+private suspend fun SalesRollupDao.applyInvoices(invoiceIds: Collection<Long>, sign: Int, zone: ZoneId) {
+    if (invoiceIds.isEmpty()) return
+    // Sumar en otra zona mezclaría buckets: primero se reconstruye en la actual. Esa
+    // reconstrucción ya ve las facturas recién escritas (alta) y todavía ve las que se
+    // van a reemplazar o anular (baja), así que solo la baja sigue de largo.
+    if (rebuildIfZoneChanged(zone) && sign > 0) return
+    val accumulator = SalesRollupAccumulator(zone)
+    invoiceIds.distinct().chunked(SQL_IN_CHUNK).forEach { chunk ->
+        contributionsOf(chunk).forEach { accumulator.add(it, sign) }
+    }
+    if (accumulator.isEmpty()) return
+    val existing = accumulator.epochDays.toList().chunked(SQL_IN_CHUNK).flatMap { getDays(it) }
+    val result = accumulator.mergeInto(existing)
+    result.deletes.forEach { delete(it.epochDay, it.hour) }
+    if (result.upserts.isNotEmpty()) upsertAll(result.upserts)
+}
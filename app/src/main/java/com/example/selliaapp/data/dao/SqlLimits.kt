@@ -0,0 +1,4 @@
+package com.example.selliaapp.data.dao
+
+/** Límite de parámetros por `IN (...)` (SQLITE_MAX_VARIABLE_NUMBER = 999 en APIs viejas). */
+const val SQL_IN_CHUNK = 500
@@ -15,6 +15,9 @@ interface StockMovementDao {
     @Insert(onConflict = OnConflictStrategy.ABORT)
     suspend fun insert(m: StockMovementEntity): Long
 
+    @Insert(onConflict = OnConflictStrategy.ABORT)
+    suspend fun insertAll(movements: List<StockMovementEntity>)
+
     @Query("SELECT * FROM stock_movements WHERE productId = :productId ORDER BY ts DESC")
     fun observeByProduct(productId: Int): Flow<List<StockMovementEntity>>
 
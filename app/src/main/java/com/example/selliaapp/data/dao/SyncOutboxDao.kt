@@ -24,19 +24,28 @@ interface SyncOutboxDao {
     @Query("SELECT * FROM sync_outbox WHERE entityType = :entityType AND entityId = :entityId LIMIT 1")
     suspend fun getByTypeAndId(entityType: String, entityId: Long): SyncOutboxEntity?
 
+    @Query("SELECT * FROM sync_outbox WHERE entityType = :entityType AND entityId IN (:entityIds)")
+    suspend fun getByTypeAndIds(entityType: String, entityIds: List<Long>): List<SyncOutboxEntity>
+
+    /**
+     * Borra por entidad, aunque se haya vuelto a encolar. Solo para entidades que se
+     * eliminaron localmente; para confirmar un push usar `OutboxSnapshot`.
+     */
     @Query(
         "DELETE FROM sync_outbox WHERE entityType = :entityType AND entityId IN (:entityIds)"
     )
     suspend fun deleteByTypeAndIds(entityType: String, entityIds: List<Long>)
 
+    @Query("DELETE FROM sync_outbox WHERE entityType = :entityType")
+    suspend fun deleteByType(entityType: String)
+
+    /** Borra filas puntuales por id: una entidad re-encolada tiene fila nueva y no se toca. */
+    @Query("DELETE FROM sync_outbox WHERE id IN (:ids)")
+    suspend fun deleteByIds(ids: List<Long>)
+
     @Query(
         "UPDATE sync_outbox SET attempts = attempts + 1, lastAttemptAt = :timestamp, lastError = :error " +
-            "WHERE entityType = :entityType AND entityId IN (:entityIds)"
-    )
-    suspend fun markAttempt(
-        entityType: String,
-        entityIds: List<Long>,
-        timestamp: Long,
-        error: String?
+            "WHERE id IN (:ids)"
     )
+    suspend fun markAttemptByIds(ids: List<Long>, timestamp: Long, error: String?)
 }
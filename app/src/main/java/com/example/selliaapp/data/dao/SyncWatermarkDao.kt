@@ -0,0 +1,19 @@
+package com.example.selliaapp.data.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import com.example.selliaapp.data.local.entity.SyncWatermarkEntity
+
+@Dao
+interface SyncWatermarkDao {
+    @Query("SELECT * FROM sync_watermarks WHERE tenantId = :tenantId AND entityType = :entityType LIMIT 1")
+    suspend fun get(tenantId: String, entityType: String): SyncWatermarkEntity?
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun upsert(watermark: SyncWatermarkEntity)
+
+    @Query("DELETE FROM sync_watermarks WHERE tenantId = :tenantId")
+    suspend fun clearForTenant(tenantId: String)
+}
@@ -16,10 +16,13 @@ import com.example.selliaapp.data.dao.ExpenseBudgetDao
 import com.example.selliaapp.data.dao.ExpenseRecordDao
 import com.example.selliaapp.data.dao.ExpenseTemplateDao
 import com.example.selliaapp.data.dao.InvoiceDao
+import com.example.selliaapp.data.dao.INVOICE_ROLLUP_CONTRIBUTION_SELECT
 import com.example.selliaapp.data.dao.InvoiceItemDao
+import com.example.selliaapp.data.dao.InvoiceRollupContribution
 import com.example.selliaapp.data.dao.ProductDao
 import com.example.selliaapp.data.dao.ProductPriceAuditDao
 import com.example.selliaapp.data.dao.ProductImageDao
+import com.example.selliaapp.data.dao.ProductImageUploadDao
 import com.example.selliaapp.data.dao.ProviderDao
 import com.example.selliaapp.data.dao.ProviderInvoiceDao
 import com.example.selliaapp.data.dao.PricingAuditDao
@@ -28,8 +31,16 @@ import com.example.selliaapp.data.dao.PricingMlFixedCostTierDao
 import com.example.selliaapp.data.dao.PricingMlShippingTierDao
 import com.example.selliaapp.data.dao.PricingSettingsDao
 import com.example.selliaapp.data.dao.ReportDataDao
+import com.example.selliaapp.data.dao.SalesRollupAccumulator
+import com.example.selliaapp.data.dao.SalesRollupDao
+import com.example.selliaapp.data.dao.BackupChangeDao
+import com.example.selliaapp.data.dao.ProductCodeSequenceDao
+import com.example.selliaapp.data.dao.ProductPushMarkDao
+import com.example.selliaapp.data.dao.OffLookupCacheDao
+import com.example.selliaapp.data.dao.PublicCatalogDao
 import com.example.selliaapp.data.dao.StockMovementDao
 import com.example.selliaapp.data.dao.SyncOutboxDao
+import com.example.selliaapp.data.dao.SyncWatermarkDao
 import com.example.selliaapp.data.dao.TenantSkuConfigDao
 import com.example.selliaapp.data.dao.UserDao
 import com.example.selliaapp.data.dao.VariantDao
@@ -41,9 +52,12 @@ import com.example.selliaapp.data.local.entity.CashMovementEntity
 import com.example.selliaapp.data.local.entity.CashSessionEntity
 import com.example.selliaapp.data.local.entity.CustomerEntity
 import com.example.selliaapp.data.local.entity.CloudServiceConfigEntity
+import com.example.selliaapp.data.local.entity.InvoiceFtsEntity
 import com.example.selliaapp.data.local.entity.ProductEntity
+import com.example.selliaapp.data.local.entity.ProductFtsEntity
 import com.example.selliaapp.data.local.entity.ProductImageEntity
 import com.example.selliaapp.data.local.entity.ProductPriceAuditEntity
+import com.example.selliaapp.data.local.entity.ProductPushMarkEntity
 import com.example.selliaapp.data.local.entity.ProviderEntity
 import com.example.selliaapp.data.local.entity.PricingAuditEntity
 import com.example.selliaapp.data.local.entity.PricingFixedCostEntity
@@ -51,8 +65,17 @@ import com.example.selliaapp.data.local.entity.PricingMlFixedCostTierEntity
 import com.example.selliaapp.data.local.entity.PricingMlShippingTierEntity
 import com.example.selliaapp.data.local.entity.PricingSettingsEntity
 import com.example.selliaapp.data.local.entity.ReportDataEntity
+import com.example.selliaapp.data.local.entity.SalesRollupEntity
+import com.example.selliaapp.data.local.entity.SalesRollupMetaEntity
+import com.example.selliaapp.data.local.entity.BackupChangeEntity
+import com.example.selliaapp.data.local.entity.ProductCodeSequenceEntity
+import com.example.selliaapp.data.local.entity.OffLookupCacheEntity
+import com.example.selliaapp.data.local.entity.PublicCatalogProductEntity
+import com.example.selliaapp.data.local.entity.CashSessionTotalEntity
+import com.example.selliaapp.data.local.entity.ProductImageUploadEntity
 import com.example.selliaapp.data.local.entity.StockMovementEntity
 import com.example.selliaapp.data.local.entity.SyncOutboxEntity
+import com.example.selliaapp.data.local.entity.SyncWatermarkEntity
 import com.example.selliaapp.data.local.entity.TenantSkuConfigEntity
 import com.example.selliaapp.data.local.entity.VariantEntity
 import com.example.selliaapp.data.model.ExpenseCategoryBudget
@@ -64,6 +87,7 @@ import com.example.selliaapp.data.model.ProviderInvoice
 import com.example.selliaapp.data.model.ProviderInvoiceItem
 import com.example.selliaapp.data.model.User
 import com.example.selliaapp.data.local.entity.DevelopmentOptionsEntity
+import java.time.ZoneId
 
 /**
  * Base de datos Room principal.
@@ -73,15 +97,24 @@ import com.example.selliaapp.data.local.entity.DevelopmentOptionsEntity
     entities = [
         // Persistencia principal
         ProductEntity::class,
+        ProductFtsEntity::class,
         ProductImageEntity::class,
         ProductPriceAuditEntity::class,
         CustomerEntity::class,
         ProviderEntity::class,
         ReportDataEntity::class,
+        SalesRollupEntity::class,
+        SalesRollupMetaEntity::class,
+        BackupChangeEntity::class,
+        ProductCodeSequenceEntity::class,
+        ProductPushMarkEntity::class,
+        OffLookupCacheEntity::class,
+        PublicCatalogProductEntity::class,
         StockMovementEntity::class,
         CategoryEntity::class,
         VariantEntity::class,
         SyncOutboxEntity::class,
+        SyncWatermarkEntity::class,
         PricingFixedCostEntity::class,
         PricingSettingsEntity::class,
         PricingAuditEntity::class,
@@ -90,12 +123,15 @@ import com.example.selliaapp.data.local.entity.DevelopmentOptionsEntity
         CashSessionEntity::class,
         CashMovementEntity::class,
         CashAuditEntity::class,
+        CashSessionTotalEntity::class,
+        ProductImageUploadEntity::class,
         CloudServiceConfigEntity::class,
         DevelopmentOptionsEntity::class,
         TenantSkuConfigEntity::class,
 
         // Tablas de negocio basadas en modelos (ya tienen @Entity)
         Invoice::class,
+        InvoiceFtsEntity::class,
         InvoiceItem::class,
         ExpenseTemplate::class,
         ExpenseRecord::class,
@@ -104,7 +140,7 @@ import com.example.selliaapp.data.local.entity.DevelopmentOptionsEntity
         ProviderInvoiceItem::class,
         User::class
     ],
-    version = 43,
+    version = 55,
     //autoMigrations = [AutoMigration(from = 1, to = 2)],
     exportSchema = true
 )
@@ -113,11 +149,18 @@ abstract class AppDatabase : RoomDatabase() {
     abstract fun productDao(): ProductDao
     abstract fun productPriceAuditDao(): ProductPriceAuditDao
     abstract fun productImageDao(): ProductImageDao
+    abstract fun productImageUploadDao(): ProductImageUploadDao
     abstract fun userDao(): UserDao
     abstract fun customerDao(): CustomerDao
     abstract fun invoiceDao(): InvoiceDao
     abstract fun invoiceItemDao(): InvoiceItemDao
     abstract fun reportDataDao(): ReportDataDao
+    abstract fun salesRollupDao(): SalesRollupDao
+    abstract fun backupChangeDao(): BackupChangeDao
+    abstract fun productCodeSequenceDao(): ProductCodeSequenceDao
+    abstract fun productPushMarkDao(): ProductPushMarkDao
+    abstract fun offLookupCacheDao(): OffLookupCacheDao
+    abstract fun publicCatalogDao(): PublicCatalogDao
     abstract fun providerDao(): ProviderDao
     abstract fun providerInvoiceDao(): ProviderInvoiceDao
     abstract fun expenseTemplateDao(): ExpenseTemplateDao
@@ -127,6 +170,7 @@ abstract class AppDatabase : RoomDatabase() {
     abstract fun categoryDao(): CategoryDao
     abstract fun variantDao(): VariantDao
     abstract fun syncOutboxDao(): SyncOutboxDao
+    abstract fun syncWatermarkDao(): SyncWatermarkDao
     abstract fun pricingFixedCostDao(): PricingFixedCostDao
     abstract fun pricingSettingsDao(): PricingSettingsDao
     abstract fun pricingAuditDao(): PricingAuditDao
@@ -522,6 +566,300 @@ abstract class AppDatabase : RoomDatabase() {
             }
         }
 
+        val MIGRATION_43_44 = object : Migration(43, 44) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    """
+                    CREATE TABLE IF NOT EXISTS `sync_watermarks` (
+                        `tenantId` TEXT NOT NULL,
+                        `entityType` TEXT NOT NULL,
+                        `updatedAtSeconds` INTEGER NOT NULL,
+                        `updatedAtNanos` INTEGER NOT NULL,
+                        `lastDocId` TEXT NOT NULL,
+                        `pulledAtEpochMs` INTEGER NOT NULL,
+                        PRIMARY KEY(`tenantId`, `entityType`)
+                    )
+                    """.trimIndent()
+                )
+            }
+        }
+
+        val MIGRATION_44_45 = object : Migration(44, 45) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                // Mismo SQL que genera Room para ProductFtsEntity (tabla + triggers de sincronización).
+                db.execSQL(
+                    """
+                    CREATE VIRTUAL TABLE IF NOT EXISTS `products_fts` USING FTS4(
+                        `name` TEXT NOT NULL,
+                        `code` TEXT,
+                        `barcode` TEXT,
+                        `brand` TEXT,
+                        `category` TEXT,
+                        `providerSku` TEXT,
+                        tokenize=unicode61,
+                        content=`products`
+                    )
+                    """.trimIndent()
+                )
+                val columns = listOf("name", "code", "barcode", "brand", "category", "providerSku")
+                val ftsColumns = columns.joinToString(", ") { "`$it`" }
+                val newValues = columns.joinToString(", ") { "NEW.`$it`" }
+                listOf("BEFORE_UPDATE" to "BEFORE UPDATE", "BEFORE_DELETE" to "BEFORE DELETE").forEach { (suffix, event) ->
+                    db.execSQL(
+                        "CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_products_fts_$suffix $event ON `products` " +
+                            "BEGIN DELETE FROM `products_fts` WHERE `docid`=OLD.`rowid`; END"
+                    )
+                }
+                listOf("AFTER_UPDATE" to "AFTER UPDATE", "AFTER_INSERT" to "AFTER INSERT").forEach { (suffix, event) ->
+                    db.execSQL(
+                        "CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_products_fts_$suffix $event ON `products` " +
+                            "BEGIN INSERT INTO `products_fts`(`docid`, $ftsColumns) VALUES (NEW.`rowid`, $newValues); END"
+                    )
+                }
+                // Indexa el catálogo existente.
+                db.execSQL("INSERT INTO `products_fts`(`products_fts`) VALUES('rebuild')")
+            }
+        }
+
+        val MIGRATION_45_46 = object : Migration(45, 46) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                // Mismo SQL que genera Room para InvoiceFtsEntity.
+                db.execSQL(
+                    "CREATE VIRTUAL TABLE IF NOT EXISTS `invoices_fts` USING FTS4(" +
+                        "`customerName` TEXT, tokenize=unicode61, content=`invoices`)"
+                )
+                listOf("BEFORE_UPDATE" to "BEFORE UPDATE", "BEFORE_DELETE" to "BEFORE DELETE").forEach { (suffix, event) ->
+                    db.execSQL(
+                        "CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_invoices_fts_$suffix $event ON `invoices` " +
+                            "BEGIN DELETE FROM `invoices_fts` WHERE `docid`=OLD.`rowid`; END"
+                    )
+                }
+                listOf("AFTER_UPDATE" to "AFTER UPDATE", "AFTER_INSERT" to "AFTER INSERT").forEach { (suffix, event) ->
+                    db.execSQL(
+                        "CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_invoices_fts_$suffix $event ON `invoices` " +
+                            "BEGIN INSERT INTO `invoices_fts`(`docid`, `customerName`) VALUES (NEW.`rowid`, NEW.`customerName`); END"
+                    )
+                }
+                db.execSQL("INSERT INTO `invoices_fts`(`invoices_fts`) VALUES('rebuild')")
+            }
+        }
+
+        val MIGRATION_46_47 = object : Migration(46, 47) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                if (!db.hasColumn(tableName = "invoice_items", columnName = "unitCost")) {
+                    db.execSQL("ALTER TABLE `invoice_items` ADD COLUMN `unitCost` REAL")
+                }
+                // Sin historial de costos: las ventas previas toman el precio de compra vigente.
+                db.execSQL(
+                    """
+                    UPDATE `invoice_items`
+                    SET `unitCost` = (SELECT `purchasePrice` FROM `products` WHERE `products`.`id` = `invoice_items`.`productId`)
+                    WHERE `unitCost` IS NULL
+                    """.trimIndent()
+                )
+                db.execSQL(
+                    """
+                    CREATE TABLE IF NOT EXISTS `sales_rollup` (
+                        `epochDay` INTEGER NOT NULL,
+                        `hour` INTEGER NOT NULL,
+                        `salesTotal` REAL NOT NULL,
+                        `tickets` INTEGER NOT NULL,
+                        `units` INTEGER NOT NULL,
+                        `cost` REAL NOT NULL,
+                        PRIMARY KEY(`epochDay`, `hour`)
+                    )
+                    """.trimIndent()
+                )
+                // Mismo bucketing en hora local que SalesRollupDao.rebuild.
+                val accumulator = SalesRollupAccumulator(ZoneId.systemDefault())
+                db.query("$INVOICE_ROLLUP_CONTRIBUTION_SELECT GROUP BY i.id").use { cursor ->
+                    while (cursor.moveToNext()) {
+                        accumulator.add(
+                            InvoiceRollupContribution(
+                                invoiceId = cursor.getLong(0),
+                                dateMillis = cursor.getLong(1),
+                                total = cursor.getDouble(2),
+                                units = cursor.getInt(3),
+                                cost = cursor.getDouble(4)
+                            )
+                        )
+                    }
+                }
+                db.execSQL("DELETE FROM `sales_rollup`")
+                accumulator.mergeInto(emptyList()).upserts.forEach { row ->
+                    db.execSQL(
+                        "INSERT INTO `sales_rollup` (`epochDay`, `hour`, `salesTotal`, `tickets`, `units`, `cost`) " +
+                            "VALUES (?, ?, ?, ?, ?, ?)",
+                        arrayOf<Any>(row.epochDay, row.hour, row.salesTotal, row.tickets, row.units, row.cost)
+                    )
+                }
+            }
+        }
+
+        val MIGRATION_47_48 = object : Migration(47, 48) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                // Solo la tabla: los triggers los instala BackupChangeTracker al abrir la DB.
+                db.execSQL(
+                    """
+                    CREATE TABLE IF NOT EXISTS `backup_changes` (
+                        `seq` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+                        `tableName` TEXT NOT NULL,
+                        `rowKey` TEXT NOT NULL,
+                        `changedAt` INTEGER NOT NULL
+                    )
+                    """.trimIndent()
+                )
+                db.execSQL(
+                    "CREATE UNIQUE INDEX IF NOT EXISTS `index_backup_changes_tableName_rowKey` " +
+                        "ON `backup_changes` (`tableName`, `rowKey`)"
+                )
+            }
+        }
+
+        val MIGRATION_48_49 = object : Migration(48, 49) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                // Cada prefijo se inicializa en su primera reserva con el máximo de `products`.
+                db.execSQL(
+                    """
+                    CREATE TABLE IF NOT EXISTS `product_code_sequences` (
+                        `prefix` TEXT NOT NULL,
+                        `nextValue` INTEGER NOT NULL,
+                        PRIMARY KEY(`prefix`)
+                    )
+                    """.trimIndent()
+                )
+            }
+        }
+
+        val MIGRATION_49_50 = object : Migration(49, 50) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    """
+                    CREATE TABLE IF NOT EXISTS `off_lookup_cache` (
+                        `barcode` TEXT NOT NULL,
+                        `found` INTEGER NOT NULL,
+                        `productName` TEXT,
+                        `brands` TEXT,
+                        `imageUrl` TEXT,
+                        `fetchedAt` INTEGER NOT NULL,
+                        `expiresAt` INTEGER NOT NULL,
+                        PRIMARY KEY(`barcode`)
+                    )
+                    """.trimIndent()
+                )
+            }
+        }
+
+        val MIGRATION_50_51 = object : Migration(50, 51) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                // Se llena en la primera visita a cada tienda.
+                db.execSQL(
+                    """
+                    CREATE TABLE IF NOT EXISTS `public_catalog_products` (
+                        `storeId` TEXT NOT NULL,
+                        `docId` TEXT NOT NULL,
+                        `productId` INTEGER,
+                        `name` TEXT NOT NULL,
+                        `imageUrl` TEXT,
+                        `listPrice` REAL,
+                        `cashPrice` REAL,
+                        `transferPrice` REAL,
+                        `category` TEXT,
+                        `subcategory` TEXT,
+                        PRIMARY KEY(`storeId`, `docId`)
+                    )
+                    """.trimIndent()
+                )
+            }
+        }
+
+        val MIGRATION_51_52 = object : Migration(51, 52) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    """
+                    CREATE TABLE IF NOT EXISTS `cash_session_totals` (
+                        `sessionId` TEXT NOT NULL,
+                        `type` TEXT NOT NULL,
+                        `movements` INTEGER NOT NULL,
+                        `total` REAL NOT NULL,
+                        PRIMARY KEY(`sessionId`, `type`)
+                    )
+                    """.trimIndent()
+                )
+                // Misma consulta que CashMovementDao.rebuildTotals.
+                db.execSQL(
+                    """
+                    INSERT INTO `cash_session_totals` (`sessionId`, `type`, `movements`, `total`)
+                    SELECT `sessionId`, `type`, COUNT(*), SUM(`amount`) FROM `cash_movements` GROUP BY `sessionId`, `type`
+                    """.trimIndent()
+                )
+                db.execSQL(
+                    "CREATE INDEX IF NOT EXISTS `index_cash_movements_sessionId_createdAt` " +
+                        "ON `cash_movements` (`sessionId`, `createdAt`)"
+                )
+            }
+        }
+
+        val MIGRATION_52_53 = object : Migration(52, 53) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    """
+                    CREATE TABLE IF NOT EXISTS `product_image_uploads` (
+                        `id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL,
+                        `tenantId` TEXT NOT NULL,
+                        `productId` INTEGER NOT NULL,
+                        `mainPath` TEXT NOT NULL,
+                        `thumbnailPath` TEXT NOT NULL,
+                        `mimeType` TEXT NOT NULL,
+                        `originalBytes` INTEGER NOT NULL,
+                        `processedBytes` INTEGER NOT NULL,
+                        `status` TEXT NOT NULL,
+                        `attempts` INTEGER NOT NULL,
+                        `nextAttemptAt` INTEGER NOT NULL,
+                        `lastError` TEXT,
+                        `remoteUrl` TEXT,
+                        `thumbnailUrl` TEXT,
+                        `createdAt` INTEGER NOT NULL
+                    )
+                    """.trimIndent()
+                )
+                db.execSQL(
+                    "CREATE INDEX IF NOT EXISTS `index_product_image_uploads_status_nextAttemptAt` " +
+                        "ON `product_image_uploads` (`status`, `nextAttemptAt`)"
+                )
+            }
+        }
+
+        val MIGRATION_53_54 = object : Migration(53, 54) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                // Sin fila: el rollup existente se reconstruye la primera vez que se usa.
+                db.execSQL(
+                    """
+                    CREATE TABLE IF NOT EXISTS `sales_rollup_meta` (
+                        `id` INTEGER NOT NULL,
+                        `zoneId` TEXT NOT NULL,
+                        PRIMARY KEY(`id`)
+                    )
+                    """.trimIndent()
+                )
+            }
+        }
+
+        val MIGRATION_54_55 = object : Migration(54, 55) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                // Sin marcas previas: los ecos de pushes anteriores se aplican una vez más.
+                db.execSQL(
+                    """
+                    CREATE TABLE IF NOT EXISTS `product_push_marks` (
+                        `productId` INTEGER NOT NULL,
+                        `writeStamp` INTEGER NOT NULL,
+                        PRIMARY KEY(`productId`)
+                    )
+                    """.trimIndent()
+                )
+            }
+        }
+
         private fun SupportSQLiteDatabase.hasColumn(tableName: String, columnName: String): Boolean {
             query("PRAGMA table_info(`$tableName`)").use { cursor ->
                 val nameColumnIndex = cursor.getColumnIndex("name")
@@ -0,0 +1,65 @@
+package com.example.selliaapp.data.image
+
+import android.content.ContentResolver
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.ImageDecoder
+import android.net.Uri
+import android.os.Build
+import java.io.IOException
+import java.io.OutputStream
+
+/**
+ * [ImageCodec] sobre `ImageDecoder`, que ya aplica la rotación EXIF de la cámara. Las
+ * medidas se leen solo del encabezado con `BitmapFactory` (sin decodificar píxeles).
+ */
+class AndroidImageCodec(
+    private val resolver: ContentResolver
+) : ImageCodec<Uri> {
+
+    override fun readSize(source: Uri): ImageSize {
+        val options = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        resolver.openInputStream(source)?.use { BitmapFactory.decodeStream(it, null, options) }
+            ?: throw IOException("No se pudo abrir la imagen $source")
+        if (options.outWidth <= 0 || options.outHeight <= 0) throw IOException("Formato de imagen no soportado")
+        return ImageSize(options.outWidth, options.outHeight)
+    }
+
+    override fun decode(source: Uri, sampleSize: Int): DecodedImage {
+        val bitmap = ImageDecoder.decodeBitmap(ImageDecoder.createSource(resolver, source)) { decoder, _, _ ->
+            decoder.setTargetSampleSize(sampleSize)
+            // Software: se escala y se comprime desde la CPU.
+            decoder.allocator = ImageDecoder.ALLOCATOR_SOFTWARE
+        }
+        return BitmapImage(bitmap)
+    }
+
+    private class BitmapImage(private val bitmap: Bitmap) : DecodedImage {
+        override val width: Int get() = bitmap.width
+        override val height: Int get() = bitmap.height
+
+        override fun scaled(width: Int, height: Int): DecodedImage =
+            BitmapImage(Bitmap.createScaledBitmap(bitmap, width, height, true))
+
+        override fun encode(format: ImageOutputFormat, quality: Int, out: OutputStream) {
+            if (!bitmap.compress(format.compressFormat(), quality, out)) {
+                throw IOException("No se pudo codificar la imagen como ${format.extension}")
+            }
+        }
+
+        override fun release() = bitmap.recycle()
+    }
+
+    private companion object {
+        @Suppress("DEPRECATION")
+        fun ImageOutputFormat.compressFormat(): Bitmap.CompressFormat = when (this) {
+            ImageOutputFormat.JPEG -> Bitmap.CompressFormat.JPEG
+            // Antes de API 30, WEBP con calidad < 100 ya es con pérdida.
+            ImageOutputFormat.WEBP -> if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                Bitmap.CompressFormat.WEBP_LOSSY
+            } else {
+                Bitmap.CompressFormat.WEBP
+            }
+        }
+    }
+}
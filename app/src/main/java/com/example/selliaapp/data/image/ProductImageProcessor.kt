@@ -0,0 +1,130 @@
+package com.example.selliaapp.data.image
+
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+
+data class ImageSize(val width: Int, val height: Int) {
+    val longest: Int get() = maxOf(width, height)
+}
+
+enum class ImageOutputFormat(val mimeType: String, val extension: String) {
+    WEBP("image/webp", "webp"),
+    JPEG("image/jpeg", "jpg")
+}
+
+/**
+ * Cómo se preparan las fotos de producto antes de subirlas. Las medidas son del lado más
+ * largo; una imagen más chica que [maxDimension] no se agranda.
+ */
+data class ImageProcessingConfig(
+    val maxDimension: Int = 1600,
+    val thumbnailDimension: Int = 320,
+    val format: ImageOutputFormat = ImageOutputFormat.WEBP,
+    val quality: Int = 80,
+    val thumbnailQuality: Int = 70
+)
+
+/** Imagen ya decodificada (un Bitmap en la app). Hay que liberarla con [release]. */
+interface DecodedImage {
+    val width: Int
+    val height: Int
+    fun scaled(width: Int, height: Int): DecodedImage
+    fun encode(format: ImageOutputFormat, quality: Int, out: OutputStream)
+    fun release()
+}
+
+/**
+ * Lectura de imágenes desde un origen [S] (un `Uri` en la app). [decode] tiene que
+ * aplicar la orientación EXIF: lo que devuelve ya está derecho.
+ */
+interface ImageCodec<S> {
+    fun readSize(source: S): ImageSize
+    fun decode(source: S, sampleSize: Int): DecodedImage
+}
+
+class EncodedImage(
+    val bytes: ByteArray,
+    val width: Int,
+    val height: Int,
+    val format: ImageOutputFormat
+)
+
+class ProcessedImage(
+    val main: EncodedImage,
+    val thumbnail: EncodedImage,
+    val originalBytes: Long,
+    /** Factor de submuestreo usado al decodificar (1 = resolución completa). */
+    val sampleSize: Int
+) {
+    val processedBytes: Long get() = (main.bytes.size + thumbnail.bytes.size).toLong()
+    val bytesSaved: Long get() = originalBytes - processedBytes
+}
+
+object ImageSizing {
+
+    /** Medida final con el lado más largo en [maxDimension] como mucho, sin agrandar. */
+    fun targetSize(size: ImageSize, maxDimension: Int): ImageSize {
+        if (size.longest <= maxDimension) return size
+        // En enteros: el lado más largo queda exactamente en maxDimension.
+        return ImageSize(
+            width = (size.width.toLong() * maxDimension / size.longest).toInt().coerceAtLeast(1),
+            height = (size.height.toLong() * maxDimension / size.longest).toInt().coerceAtLeast(1)
+        )
+    }
+
+    /**
+     * Mayor potencia de 2 que, al decodificar, deja el lado más largo todavía en
+     * [maxDimension] o más: se decodifica lo mínimo y el ajuste fino lo hace el escalado.
+     * Usa el lado más largo para no depender de la rotación EXIF.
+     */
+    fun sampleSize(size: ImageSize, maxDimension: Int): Int {
+        var sample = 1
+        while (size.longest / (sample * 2) >= maxDimension) sample *= 2
+        return sample
+    }
+}
+
+/**
+ * Prepara una foto para el catálogo: decodifica submuestreada (una foto de 12 MP nunca se
+ * carga entera), la lleva a [ImageProcessingConfig.maxDimension], la recodifica en el
+ * formato y calidad configurados y genera la miniatura a partir de esa misma imagen.
+ */
+class ProductImageProcessor<S>(
+    private val codec: ImageCodec<S>,
+    private val config: ImageProcessingConfig = ImageProcessingConfig()
+) {
+
+    fun process(source: S, originalBytes: Long): ProcessedImage {
+        val sampleSize = ImageSizing.sampleSize(codec.readSize(source), config.maxDimension)
+        val decoded = codec.decode(source, sampleSize)
+        var main: DecodedImage? = null
+        var thumbnail: DecodedImage? = null
+        try {
+            main = resize(decoded, config.maxDimension)
+            thumbnail = resize(main, config.thumbnailDimension)
+            return ProcessedImage(
+                main = encode(main, config.quality),
+                thumbnail = encode(thumbnail, config.thumbnailQuality),
+                originalBytes = originalBytes,
+                sampleSize = sampleSize
+            )
+        } finally {
+            listOfNotNull(decoded, main, thumbnail).distinct().forEach { it.release() }
+        }
+    }
+
+    private fun resize(image: DecodedImage, maxDimension: Int): DecodedImage {
+        val target = ImageSizing.targetSize(ImageSize(image.width, image.height), maxDimension)
+        return if (target.width == image.width && target.height == image.height) {
+            image
+        } else {
+            image.scaled(target.width, target.height)
+        }
+    }
+
+    private fun encode(image: DecodedImage, quality: Int): EncodedImage {
+        val out = ByteArrayOutputStream()
+        image.encode(config.format, quality, out)
+        return EncodedImage(out.toByteArray(), image.width, image.height, config.format)
+    }
+}
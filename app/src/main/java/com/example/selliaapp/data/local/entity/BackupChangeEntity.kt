@@ -0,0 +1,25 @@
+package com.example.selliaapp.data.local.entity
+
+import androidx.room.Entity
+import androidx.room.Index
+import androidx.room.PrimaryKey
+
+/**
+ * Fila local modificada desde el último respaldo a `sync_data`.
+ *
+ * La mantienen triggers instalados por `BackupChangeTracker` en cada tabla respaldada: cada
+ * alta, cambio o baja borra la entrada previa de la fila y agrega una nueva, así [seq]
+ * siempre crece y el respaldo puede borrar solo las entradas que efectivamente subió.
+ *
+ * - `rowKey`: id del documento remoto (`id`, `uuid`, la PK compuesta o el rowid).
+ */
+@Entity(
+    tableName = "backup_changes",
+    indices = [Index(value = ["tableName", "rowKey"], unique = true)]
+)
+data class BackupChangeEntity(
+    @PrimaryKey(autoGenerate = true) val seq: Long = 0L,
+    val tableName: String,
+    val rowKey: String,
+    val changedAt: Long
+)
@@ -19,7 +19,8 @@ import java.time.Instant
     ],
     indices = [
         Index(value = ["sessionId"]),
-        Index(value = ["createdAt"])
+        Index(value = ["createdAt"]),
+        Index(value = ["sessionId", "createdAt"])
     ]
 )
 data class CashMovementEntity(
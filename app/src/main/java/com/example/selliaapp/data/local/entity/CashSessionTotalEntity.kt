@@ -0,0 +1,24 @@
+package com.example.selliaapp.data.local.entity
+
+import androidx.room.Entity
+
+/**
+ * Acumulado de movimientos de caja por sesión y tipo ([CashMovementType]).
+ *
+ * - `movements`: cantidad de movimientos del tipo en la sesión.
+ * - `total`: suma de sus montos (los egresos ya vienen negativos).
+ *
+ * Se mantiene en la misma transacción que inserta cada movimiento
+ * (`CashMovementDao.insert`) y se puede reconstruir desde `cash_movements` con
+ * `CashMovementDao.rebuildTotals`.
+ */
+@Entity(
+    tableName = "cash_session_totals",
+    primaryKeys = ["sessionId", "type"]
+)
+data class CashSessionTotalEntity(
+    val sessionId: String,
+    val type: String,
+    val movements: Int,
+    val total: Double
+)
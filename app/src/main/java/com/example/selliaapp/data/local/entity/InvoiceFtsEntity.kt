@@ -0,0 +1,21 @@
+package com.example.selliaapp.data.local.entity
+
+import androidx.room.Entity
+import androidx.room.Fts4
+import androidx.room.FtsOptions
+import com.example.selliaapp.data.model.Invoice
+
+/**
+ * Índice full-text (FTS4, external content) del nombre de cliente de `invoices`, para
+ * buscar en el historial de ventas por prefijo de palabra ("per" encuentra "Juan Pérez")
+ * sin recorrer la tabla con `LIKE '%q%'`.
+ */
+@Fts4(contentEntity = Invoice::class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = InvoiceFtsEntity.TABLE_NAME)
+data class InvoiceFtsEntity(
+    val customerName: String?
+) {
+    companion object {
+        const val TABLE_NAME = "invoices_fts"
+    }
+}
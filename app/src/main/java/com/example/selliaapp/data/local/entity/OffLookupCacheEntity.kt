@@ -0,0 +1,20 @@
+package com.example.selliaapp.data.local.entity
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * Respuesta de Open Food Facts guardada por barcode normalizado. [found] = false es un
+ * NOT_FOUND cacheado (caché negativa), con un vencimiento más corto que los encontrados.
+ * Los errores HTTP o de red no se guardan.
+ */
+@Entity(tableName = "off_lookup_cache")
+data class OffLookupCacheEntity(
+    @PrimaryKey val barcode: String,
+    val found: Boolean,
+    val productName: String? = null,
+    val brands: String? = null,
+    val imageUrl: String? = null,
+    val fetchedAt: Long,
+    val expiresAt: Long
+)
@@ -0,0 +1,17 @@
+package com.example.selliaapp.data.local.entity
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * Próximo número libre para los códigos automáticos de producto de cada prefijo
+ * (`VLK000123` -> prefijo `VLK`, número 123).
+ *
+ * Se inicializa una sola vez con el máximo ya usado en `products` y desde ahí se reserva
+ * por bloques con `ProductCodeSequenceDao.reserve`.
+ */
+@Entity(tableName = "product_code_sequences")
+data class ProductCodeSequenceEntity(
+    @PrimaryKey val prefix: String,
+    val nextValue: Long
+)
@@ -0,0 +1,26 @@
+package com.example.selliaapp.data.local.entity
+
+import androidx.room.Entity
+import androidx.room.Fts4
+import androidx.room.FtsOptions
+
+/**
+ * Índice full-text (FTS4, external content) sobre `products`.
+ * - No guarda copia de los datos: lee el contenido desde `products` por `rowid` (= id).
+ * - Room genera los triggers que lo mantienen sincronizado en altas, cambios y bajas.
+ * - `unicode61` ignora mayúsculas y acentos ("cafe" encuentra "Café").
+ */
+@Fts4(contentEntity = ProductEntity::class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = ProductFtsEntity.TABLE_NAME)
+data class ProductFtsEntity(
+    val name: String,
+    val code: String?,
+    val barcode: String?,
+    val brand: String?,
+    val category: String?,
+    val providerSku: String?
+) {
+    companion object {
+        const val TABLE_NAME = "products_fts"
+    }
+}
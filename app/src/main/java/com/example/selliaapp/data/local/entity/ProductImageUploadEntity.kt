@@ -0,0 +1,41 @@
+package com.example.selliaapp.data.local.entity
+
+import androidx.room.Entity
+import androidx.room.Index
+import androidx.room.PrimaryKey
+
+/**
+ * Foto de producto ya procesada esperando subir a Storage.
+ *
+ * Los archivos (`mainPath`, `thumbnailPath`) quedan en `filesDir` hasta que la subida
+ * termina, así la cola sobrevive a que se cierre la app aunque el `Uri` original ya no
+ * se pueda leer. `status` es uno de [ProductImageUploadStatus].
+ */
+@Entity(
+    tableName = "product_image_uploads",
+    indices = [Index(value = ["status", "nextAttemptAt"])]
+)
+data class ProductImageUploadEntity(
+    @PrimaryKey(autoGenerate = true) val id: Long = 0L,
+    val tenantId: String,
+    val productId: Int,
+    val mainPath: String,
+    val thumbnailPath: String,
+    val mimeType: String,
+    val originalBytes: Long,
+    val processedBytes: Long,
+    val status: String = ProductImageUploadStatus.PENDING,
+    val attempts: Int = 0,
+    val nextAttemptAt: Long = 0L,
+    val lastError: String? = null,
+    val remoteUrl: String? = null,
+    val thumbnailUrl: String? = null,
+    val createdAt: Long = System.currentTimeMillis()
+)
+
+object ProductImageUploadStatus {
+    const val PENDING = "PENDING"
+    const val UPLOADING = "UPLOADING"
+    const val DONE = "DONE"
+    const val FAILED = "FAILED"
+}
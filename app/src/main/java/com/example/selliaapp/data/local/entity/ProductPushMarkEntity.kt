@@ -0,0 +1,18 @@
+package com.example.selliaapp.data.local.entity
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * Último push a Firestore de cada producto hecho desde este dispositivo: el `writeStamp`
+ * que viajó en el documento junto con el `writerId` de la instalación.
+ *
+ * El pull incremental usa estas marcas para descartar el eco de los propios pushes. No
+ * se respalda: una restauración las borra y los ecos posteriores al backup se aplican.
+ */
+@Entity(tableName = "product_push_marks")
+data class ProductPushMarkEntity(
+    @PrimaryKey
+    val productId: Int,
+    val writeStamp: Long
+)
@@ -0,0 +1,27 @@
+package com.example.selliaapp.data.local.entity
+
+import androidx.room.Entity
+
+/**
+ * Copia local de `tenants/{storeId}/public_products/{docId}` para el catálogo del visor.
+ * Se completa por páginas y se mantiene al día con el watermark de `publicUpdatedAt`, así
+ * volver a una tienda ya vista se muestra al instante.
+ * Las bajas llegan como lápidas (`publicStatus: "deleted"`) y borran la fila.
+ */
+@Entity(
+    tableName = "public_catalog_products",
+    primaryKeys = ["storeId", "docId"]
+)
+data class PublicCatalogProductEntity(
+    val storeId: String,
+    val docId: String,
+    /** Null si el documento no trae un id numérico; no se muestra. */
+    val productId: Int?,
+    val name: String,
+    val imageUrl: String?,
+    val listPrice: Double?,
+    val cashPrice: Double?,
+    val transferPrice: Double?,
+    val category: String?,
+    val subcategory: String?
+)
@@ -0,0 +1,30 @@
+package com.example.selliaapp.data.local.entity
+
+import androidx.room.Entity
+
+/**
+ * Acumulado de ventas emitidas por día y hora local de la tienda.
+ *
+ * - `epochDay`: `LocalDate.toEpochDay()` en la zona guardada en [SalesRollupMetaEntity].
+ * - `hour`: 0..23, o [DAY_TOTAL] para la fila que resume el día completo.
+ * - `cost`: costo de lo vendido, con el precio de compra fijado en cada ítem.
+ *
+ * Se mantiene en la misma transacción que crea, reemplaza o anula facturas y se puede
+ * reconstruir desde `invoices` con `SalesRollupDao.rebuild`.
+ */
+@Entity(
+    tableName = "sales_rollup",
+    primaryKeys = ["epochDay", "hour"]
+)
+data class SalesRollupEntity(
+    val epochDay: Long,
+    val hour: Int,
+    val salesTotal: Double,
+    val tickets: Int,
+    val units: Int,
+    val cost: Double
+) {
+    companion object {
+        const val DAY_TOTAL = -1
+    }
+}
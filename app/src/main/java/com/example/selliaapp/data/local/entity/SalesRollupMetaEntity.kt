@@ -0,0 +1,21 @@
+package com.example.selliaapp.data.local.entity
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * Zona horaria con la que se armaron los buckets de `sales_rollup` (una sola fila).
+ *
+ * `SalesRollupDao` la compara con la zona actual antes de tocar o leer el rollup y lo
+ * reconstruye si cambió; sin fila (recién migrada) también se reconstruye.
+ */
+@Entity(tableName = "sales_rollup_meta")
+data class SalesRollupMetaEntity(
+    @PrimaryKey
+    val id: Int = SINGLETON_ID,
+    val zoneId: String
+) {
+    companion object {
+        const val SINGLETON_ID = 0
+    }
+}
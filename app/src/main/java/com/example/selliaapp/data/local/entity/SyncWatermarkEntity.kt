@@ -0,0 +1,21 @@
+package com.example.selliaapp.data.local.entity
+
+import androidx.room.Entity
+
+/**
+ * High-water mark del último pull incremental por tenant y tipo de entidad.
+ * Guarda el `serverUpdatedAt` (segundos + nanos del Timestamp de Firestore) y el docId
+ * del último documento aplicado, que actúa como desempate entre documentos con el mismo timestamp.
+ */
+@Entity(
+    tableName = "sync_watermarks",
+    primaryKeys = ["tenantId", "entityType"]
+)
+data class SyncWatermarkEntity(
+    val tenantId: String,
+    val entityType: String,
+    val updatedAtSeconds: Long,
+    val updatedAtNanos: Int,
+    val lastDocId: String,
+    val pulledAtEpochMs: Long
+)
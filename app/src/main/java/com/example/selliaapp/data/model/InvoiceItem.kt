@@ -14,6 +14,7 @@ import androidx.room.PrimaryKey
  * quantity: cantidad vendida.
  * unitPrice: precio unitario al momento de la venta.
  * lineTotal: unitPrice * quantity (guardado para facilitar reportes).
+ * unitCost: precio de compra al momento de la venta (null si no se conocía).
  */
 @Entity(
     tableName = "invoice_items",
@@ -34,6 +35,6 @@ data class InvoiceItem(
     val productName: String,
     val quantity: Int,
     val unitPrice: Double,
-    val lineTotal: Double
-
+    val lineTotal: Double,
+    val unitCost: Double? = null
 )
@@ -0,0 +1,18 @@
+package com.example.selliaapp.data.model.dashboard
+
+/**
+ * Agregados de ventas de un rango (el día actual en el tablero), calculados en SQL.
+ * margin usa el precio de compra vigente de cada producto (0 si no tiene).
+ */
+data class DailyKpiTotals(
+    val sales: Double,
+    val tickets: Int,
+    val margin: Double
+) {
+    val averageTicket: Double
+        get() = if (tickets == 0) 0.0 else sales / tickets
+
+    companion object {
+        val EMPTY = DailyKpiTotals(sales = 0.0, tickets = 0, margin = 0.0)
+    }
+}
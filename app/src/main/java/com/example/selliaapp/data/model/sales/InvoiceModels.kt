@@ -10,7 +10,9 @@ data class InvoiceSummary(
     val customerName: String,
     val date: LocalDate,
     val total: Double,
-    val syncStatus: SyncStatus = SyncStatus.SYNCED
+    val syncStatus: SyncStatus = SyncStatus.SYNCED,
+    val status: InvoiceStatus = InvoiceStatus.EMITIDA,
+    val itemCount: Int = 0
 )
 
 // [NUEVO] Item del detalle
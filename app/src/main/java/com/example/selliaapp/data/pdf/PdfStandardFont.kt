@@ -0,0 +1,82 @@
+package com.example.selliaapp.data.pdf
+
+import java.text.Normalizer
+
+/**
+ * Fuentes estándar de PDF (no se embeben) con WinAnsiEncoding y sus anchos AFM, para
+ * medir texto sin `Paint`. Los caracteres fuera de WinAnsi se escriben como `?`.
+ */
+enum class PdfStandardFont(
+    internal val resourceName: String,
+    internal val baseFont: String,
+    private val asciiWidths: IntArray
+) {
+    HELVETICA(
+        resourceName = "F1",
+        baseFont = "Helvetica",
+        asciiWidths = intArrayOf(
+            278, 278, 355, 556, 556, 889, 667, 191, 333, 333, 389, 584, 278, 333, 278, 278,
+            556, 556, 556, 556, 556, 556, 556, 556, 556, 556, 278, 278, 584, 584, 584, 556,
+            1015, 667, 667, 722, 722, 667, 611, 778, 722, 278, 500, 667, 556, 833, 722, 778,
+            667, 778, 722, 667, 611, 722, 667, 944, 667, 667, 611, 278, 278, 278, 469, 556,
+            333, 556, 556, 500, 556, 556, 278, 556, 556, 222, 222, 500, 222, 833, 556, 556,
+            556, 556, 333, 500, 278, 556, 500, 722, 500, 500, 500, 334, 260, 334, 584
+        )
+    ),
+    HELVETICA_BOLD(
+        resourceName = "F2",
+        baseFont = "Helvetica-Bold",
+        asciiWidths = intArrayOf(
+            278, 333, 474, 556, 556, 889, 722, 238, 333, 333, 389, 584, 278, 333, 278, 278,
+            556, 556, 556, 556, 556, 556, 556, 556, 556, 556, 333, 333, 584, 584, 584, 611,
+            975, 722, 722, 722, 722, 667, 611, 778, 722, 278, 556, 722, 611, 833, 722, 778,
+            667, 778, 722, 667, 611, 722, 667, 944, 667, 667, 611, 333, 278, 333, 584, 556,
+            333, 556, 611, 556, 611, 556, 333, 611, 611, 278, 278, 556, 278, 889, 611, 611,
+            611, 611, 389, 556, 333, 611, 556, 778, 556, 556, 500, 389, 280, 389, 584
+        )
+    );
+
+    /** Ancho en puntos de [text] a [size] puntos. */
+    fun measure(text: String, size: Float): Float {
+        var units = 0
+        text.forEach { units += widthOf(it) }
+        return units * size / 1000f
+    }
+
+    /** Recorta [text] con "…" hasta que entre en [maxWidth] (mismo criterio que la versión con `Paint`). */
+    fun ellipsize(text: String, size: Float, maxWidth: Float): String {
+        if (text.isBlank() || measure(text, size) <= maxWidth) return text
+        var candidate = text
+        while (candidate.isNotEmpty() && measure(candidate + ELLIPSIS, size) > maxWidth) {
+            candidate = candidate.dropLast(1)
+        }
+        return candidate + ELLIPSIS
+    }
+
+    private fun widthOf(c: Char): Int {
+        if (c.code in 32..126) return asciiWidths[c.code - 32]
+        return when (c) {
+            ELLIPSIS -> 1000
+            ' ' -> asciiWidths[0]
+            else -> {
+                // Letras acentuadas: el ancho de la letra base es el del AFM o muy cercano.
+                val base = Normalizer.normalize(c.toString(), Normalizer.Form.NFD).firstOrNull() ?: c
+                if (base.code in 32..126) asciiWidths[base.code - 32] else DEFAULT_WIDTH
+            }
+        }
+    }
+
+    companion object {
+        const val ASCENT = 718
+        const val DESCENT = -207
+        private const val DEFAULT_WIDTH = 556
+        private const val ELLIPSIS = '…'
+
+        /** Byte WinAnsi de [c]: ASCII y Latin-1 son directos; "…" es 0x85. */
+        internal fun winAnsi(c: Char): Int = when {
+            c.code in 32..126 || c.code in 0xA0..0xFF -> c.code
+            c == ELLIPSIS -> 0x85
+            else -> '?'.code
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.selliaapp.data.pdf
+
+import com.google.zxing.BarcodeFormat
+import com.google.zxing.EncodeHintType
+import com.google.zxing.WriterException
+import com.google.zxing.common.BitMatrix
+import com.google.zxing.qrcode.QRCodeWriter
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
+import java.io.OutputStream
+
+/** Una etiqueta: SKU en negrita, líneas de precio opcionales y el QR a la derecha. */
+data class QrLabel(
+    val sku: String,
+    val qrValue: String,
+    val prices: List<QrLabelPrice> = emptyList()
+)
+
+/** Precio ya formateado; si "Lista $ 1.000" no entra se usa [shortLabel] o solo el valor. */
+data class QrLabelPrice(val fullLabel: String, val shortLabel: String, val value: String)
+
+/** Medidas en milímetros de la etiqueta térmica (30 x 15 mm por defecto). */
+data class QrLabelLayout(
+    val widthMm: Float = 30f,
+    val heightMm: Float = 15f,
+    val qrMaxMm: Float = 11f,
+    val qrRightMarginMm: Float = 0.6f,
+    val qrVerticalMarginMm: Float = 1.0f,
+    val qrTextGapMm: Float = 0.8f,
+    val paddingMm: Float = 0.8f,
+    val skuTextMm: Float = 2.8f,
+    val priceTextMm: Float = 2.0f,
+    val lineSpacingMm: Float = 0.6f
+)
+
+/**
+ * Genera el PDF de etiquetas QR en streaming: los QR se codifican en paralelo en hasta
+ * [workers] hilos, cada uno arma el contenido de su página (el QR se dibuja como
+ * rectángulos desde el [BitMatrix], sin bitmaps) y las páginas se escriben en orden
+ * apenas están listas. Nunca hay más de [window] etiquetas en vuelo, así que la memoria
+ * no depende de cuántas se impriman.
+ *
+ * Las etiquetas con QR vacío o que no se puede codificar se omiten y se cuentan.
+ */
+class QrLabelPdfExporter(
+    private val layout: QrLabelLayout = QrLabelLayout(),
+    private val workers: Int = defaultWorkers(),
+    private val window: Int = workers * 4,
+    encodeDispatcher: CoroutineDispatcher? = null
+) {
+
+    data class Result(val written: Int, val skipped: Int, val bytesWritten: Long)
+
+    class NoValidLabelsException : IllegalStateException("No hay QRs válidos para exportar")
+
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private val dispatcher = encodeDispatcher ?: Dispatchers.Default.limitedParallelism(workers.coerceAtLeast(1))
+
+    private val width = mmToPoints(layout.widthMm)
+    private val height = mmToPoints(layout.heightMm)
+    private val qrSize = minOf(mmToPoints(layout.qrMaxMm), height - mmToPoints(layout.qrVerticalMarginMm) * 2)
+    private val qrLeft = width - mmToPoints(layout.qrRightMarginMm) - qrSize
+    private val textBlockWidth = maxOf(qrLeft - mmToPoints(layout.qrTextGapMm), mmToPoints(layout.qrMaxMm))
+    private val textMaxWidth = (textBlockWidth - mmToPoints(layout.paddingMm) * 2).toFloat()
+    private val skuSize = mmToPoints(layout.skuTextMm).toFloat()
+    private val priceSize = mmToPoints(layout.priceTextMm).toFloat()
+    private val spacing = mmToPoints(layout.lineSpacingMm).toFloat()
+
+    /**
+     * Escribe una página por etiqueta en [output] (no lo cierra). Si ninguna etiqueta es
+     * válida lanza [NoValidLabelsException] sin terminar el archivo.
+     */
+    suspend fun export(
+        output: OutputStream,
+        labels: Sequence<QrLabel>,
+        onProgress: (written: Int) -> Unit = {}
+    ): Result {
+        val writer = StreamingPdfWriter(output)
+        var skipped = 0
+        coroutineScope {
+            val inFlight = ArrayDeque<Deferred<PdfStream?>>(window)
+            suspend fun drainOne() {
+                val page = inFlight.removeFirst().await()
+                if (page == null) {
+                    skipped++
+                } else {
+                    writer.addPage(width.toFloat(), height.toFloat(), page)
+                    onProgress(writer.pageCount)
+                }
+            }
+            labels.forEach { label ->
+                if (inFlight.size >= window.coerceAtLeast(1)) drainOne()
+                inFlight.addLast(async(dispatcher) { renderOrNull(label) })
+            }
+            while (inFlight.isNotEmpty()) drainOne()
+        }
+        if (writer.pageCount == 0) throw NoValidLabelsException()
+        writer.finish()
+        return Result(writer.pageCount, skipped, writer.bytesWritten)
+    }
+
+    private fun renderOrNull(label: QrLabel): PdfStream? = try {
+        render(label)
+    } catch (c: CancellationException) {
+        throw c
+    } catch (_: WriterException) {
+        null
+    } catch (_: IllegalArgumentException) {
+        null
+    }
+
+    internal fun render(label: QrLabel): PdfStream {
+        val matrix = encode(label.qrValue)
+        val content = PdfContent()
+        drawText(content, label)
+        drawQr(content, matrix)
+        return content.toStream()
+    }
+
+    private class TextLine(val font: PdfStandardFont, val size: Float, val text: String) {
+        val height: Float get() = (PdfStandardFont.ASCENT - PdfStandardFont.DESCENT) * size / 1000f
+    }
+
+    private fun drawText(content: PdfContent, label: QrLabel) {
+        val bold = PdfStandardFont.HELVETICA_BOLD
+        val lines = buildList {
+            add(TextLine(bold, skuSize, bold.ellipsize(label.sku, skuSize, textMaxWidth)))
+            label.prices.forEach { add(TextLine(PdfStandardFont.HELVETICA, priceSize, priceLine(it))) }
+        }
+        val totalTextHeight = lines.sumOf { it.height.toDouble() }.toFloat() + spacing * (lines.size - 1)
+        // Se ubica desde arriba, como en el canvas de Android, y se invierte al escribir.
+        var top = (height - totalTextHeight) / 2f
+        lines.forEach { line ->
+            val x = textBlockWidth / 2f - line.font.measure(line.text, line.size) / 2f
+            val baselineFromTop = top + PdfStandardFont.ASCENT * line.size / 1000f
+            content.text(line.font, line.size, x, height - baselineFromTop, line.text)
+            top += line.height + spacing
+        }
+    }
+
+    private fun priceLine(price: QrLabelPrice): String {
+        val font = PdfStandardFont.HELVETICA
+        val short = "${price.shortLabel} ${price.value}"
+        if (font.measure(short, priceSize) > textMaxWidth) return font.ellipsize(price.value, priceSize, textMaxWidth)
+        val full = "${price.fullLabel} ${price.value}"
+        return if (font.measure(full, priceSize) <= textMaxWidth) full else short
+    }
+
+    /** Una corrida horizontal de módulos oscuros por rectángulo, todo en un único relleno. */
+    private fun drawQr(content: PdfContent, matrix: BitMatrix) {
+        val modules = matrix.width
+        val module = qrSize.toFloat() / modules
+        val top = (height - qrSize) / 2f
+        content.fillGray(0f)
+        for (y in 0 until modules) {
+            var x = 0
+            while (x < modules) {
+                if (!matrix.get(x, y)) {
+                    x++
+                    continue
+                }
+                val start = x
+                while (x < modules && matrix.get(x, y)) x++
+                content.rect(
+                    x = qrLeft + start * module,
+                    y = height - top - (y + 1) * module,
+                    width = (x - start) * module,
+                    height = module
+                )
+            }
+        }
+        content.fill()
+    }
+
+    companion object {
+        private val HINTS = mapOf(EncodeHintType.MARGIN to 0)
+
+        /** Matriz de un punto por módulo: el escalado lo hace el PDF. */
+        fun encode(content: String): BitMatrix {
+            if (content.isBlank()) throw WriterException("QR content is blank")
+            return QRCodeWriter().encode(content, BarcodeFormat.QR_CODE, 0, 0, HINTS)
+        }
+
+        fun mmToPoints(mm: Float): Int = Math.round(mm * 72f / 25.4f)
+
+        private fun defaultWorkers() = (Runtime.getRuntime().availableProcessors() - 1).coerceIn(1, 4)
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.selliaapp.data.pdf
+
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.FilterOutputStream
+import java.io.OutputStream
+import java.util.Locale
+import java.util.zip.Deflater
+
+/**
+ * Contenido de una página: operadores PDF en un buffer propio. Se arma fuera del hilo
+ * que escribe el archivo (por ejemplo en un worker) y se entrega con [toStream].
+ * Coordenadas en puntos con origen abajo a la izquierda.
+ */
+class PdfContent(initialCapacity: Int = 1024) {
+    private val ops = StringBuilder(initialCapacity)
+
+    fun fillGray(gray: Float) = apply { ops.append(num(gray)).append(" g\n") }
+
+    fun rect(x: Float, y: Float, width: Float, height: Float) = apply {
+        ops.append(num(x)).append(' ').append(num(y)).append(' ')
+            .append(num(width)).append(' ').append(num(height)).append(" re\n")
+    }
+
+    fun fill() = apply { ops.append("f\n") }
+
+    fun text(font: PdfStandardFont, size: Float, x: Float, baseline: Float, value: String) = apply {
+        ops.append("BT /").append(font.resourceName).append(' ').append(num(size)).append(" Tf ")
+            .append(num(x)).append(' ').append(num(baseline)).append(" Td (")
+        value.forEach { c ->
+            when (val code = PdfStandardFont.winAnsi(c)) {
+                '('.code, ')'.code, '\\'.code -> ops.append('\\').append(code.toChar())
+                in 0x80..0xFF -> ops.append('\\').append(Integer.toOctalString(code))
+                else -> ops.append(code.toChar())
+            }
+        }
+        ops.append(") Tj ET\n")
+    }
+
+    /** Stream comprimido con Flate, listo para [StreamingPdfWriter.addPage]. */
+    fun toStream(): PdfStream {
+        val raw = ops.toString().toByteArray(Charsets.ISO_8859_1)
+        val deflater = Deflater(Deflater.BEST_SPEED)
+        try {
+            deflater.setInput(raw)
+            deflater.finish()
+            val out = ByteArrayOutputStream(raw.size / 2 + 64)
+            val chunk = ByteArray(1024)
+            while (!deflater.finished()) {
+                val n = deflater.deflate(chunk)
+                out.write(chunk, 0, n)
+            }
+            return PdfStream(out.toByteArray(), flate = true)
+        } finally {
+            deflater.end()
+        }
+    }
+
+    private fun num(value: Float): String {
+        val rounded = Math.round(value * 100f) / 100f
+        return if (rounded == rounded.toInt().toFloat()) rounded.toInt().toString()
+        else String.format(Locale.US, "%.2f", rounded).trimEnd('0')
+    }
+}
+
+class PdfStream(val bytes: ByteArray, val flate: Boolean)
+
+/**
+ * Escritor de PDF en streaming: cada página se escribe al [OutputStream] apenas llega y
+ * no se retiene. Solo se guardan los offsets de los objetos para la tabla xref (8 bytes
+ * por objeto). El árbol de páginas va al final, cuando ya se conoce la cantidad.
+ *
+ * Numeración fija: 1 catálogo, 2 páginas, 3..(2 + fuentes) fuentes, y después un par
+ * (página, contenido) por página.
+ */
+class StreamingPdfWriter(output: OutputStream) : Closeable {
+
+    private val out = CountingStream(output.buffered(BUFFER_SIZE))
+    private val fonts = PdfStandardFont.entries
+    private val firstPageObject = 3 + fonts.size
+    private val fontResources = fonts.mapIndexed { index, font -> "/${font.resourceName} ${3 + index} 0 R" }
+        .joinToString(" ")
+    private var offsets = LongArray(64)
+    private var finished = false
+
+    var pageCount = 0
+        private set
+
+    val bytesWritten: Long get() = out.count
+
+    init {
+        out.writeAscii("%PDF-1.4\n%âãÏÓ\n")
+        writeObject(1, "<< /Type /Catalog /Pages 2 0 R >>")
+        fonts.forEachIndexed { index, font ->
+            writeObject(
+                3 + index,
+                "<< /Type /Font /Subtype /Type1 /BaseFont /${font.baseFont} /Encoding /WinAnsiEncoding >>"
+            )
+        }
+    }
+
+    fun addPage(width: Float, height: Float, content: PdfStream) {
+        check(!finished) { "El PDF ya se cerró" }
+        val pageObject = firstPageObject + pageCount * 2
+        writeObject(
+            pageObject,
+            "<< /Type /Page /Parent 2 0 R /MediaBox [0 0 ${width.pdf()} ${height.pdf()}] " +
+                "/Resources << /Font << $fontResources >> >> /Contents ${pageObject + 1} 0 R >>"
+        )
+        markObject(pageObject + 1)
+        val filter = if (content.flate) " /Filter /FlateDecode" else ""
+        out.writeAscii("${pageObject + 1} 0 obj\n<< /Length ${content.bytes.size}$filter >>\nstream\n")
+        out.write(content.bytes)
+        out.writeAscii("\nendstream\nendobj\n")
+        pageCount++
+    }
+
+    /** Escribe el árbol de páginas, la xref y el trailer. No cierra el stream destino. */
+    fun finish() {
+        if (finished) return
+        check(pageCount > 0) { "Un PDF necesita al menos una página" }
+        finished = true
+        markObject(2)
+        out.writeAscii("2 0 obj\n<< /Type /Pages /Count $pageCount /Kids [")
+        for (page in 0 until pageCount) {
+            out.writeAscii("${firstPageObject + page * 2} 0 R ")
+        }
+        out.writeAscii("] >>\nendobj\n")
+
+        val objectCount = firstPageObject + pageCount * 2
+        val xrefOffset = out.count
+        out.writeAscii("xref\n0 $objectCount\n0000000000 65535 f \n")
+        for (number in 1 until objectCount) {
+            out.writeAscii(String.format(Locale.US, "%010d 00000 n \n", offsets[number]))
+        }
+        out.writeAscii("trailer\n<< /Size $objectCount /Root 1 0 R >>\nstartxref\n$xrefOffset\n%%EOF\n")
+        out.flush()
+    }
+
+    override fun close() {
+        out.flush()
+    }
+
+    private fun writeObject(number: Int, body: String) {
+        markObject(number)
+        out.writeAscii("$number 0 obj\n$body\nendobj\n")
+    }
+
+    private fun markObject(number: Int) {
+        if (number >= offsets.size) offsets = offsets.copyOf(maxOf(number + 1, offsets.size * 2))
+        offsets[number] = out.count
+    }
+
+    private fun Float.pdf(): String = if (this == toInt().toFloat()) toInt().toString() else toString()
+
+    private class CountingStream(out: OutputStream) : FilterOutputStream(out) {
+        var count = 0L
+            private set
+
+        override fun write(b: Int) {
+            out.write(b)
+            count++
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            out.write(b, off, len)
+            count += len
+        }
+
+        fun writeAscii(value: String) = write(value.toByteArray(Charsets.ISO_8859_1))
+
+        // El destino lo cierra quien lo abrió.
+        override fun close() = flush()
+    }
+
+    private companion object {
+        const val BUFFER_SIZE = 64 * 1024
+    }
+}
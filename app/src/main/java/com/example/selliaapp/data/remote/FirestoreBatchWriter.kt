@@ -0,0 +1,193 @@
+package com.example.selliaapp.data.remote
+
+import com.google.firebase.Timestamp
+import com.google.firebase.firestore.DocumentReference
+import com.google.firebase.firestore.FirebaseFirestore
+import com.google.firebase.firestore.SetOptions
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.tasks.await
+
+/**
+ * Escritor de batches de Firestore que respeta los límites de un commit
+ * (500 operaciones / 10 MiB) partiendo la escritura en chunks.
+ *
+ * Cada [Entry] agrupa las operaciones de una misma fila de outbox (clave [Entry.key]) y
+ * nunca se parte entre chunks. Los chunks se commitean en paralelo hasta
+ * [maxConcurrentCommits]; el [Result] informa qué claves quedaron commiteadas para que el
+ * caller borre solo esas filas del outbox y un chunk fallido no pierda el progreso del resto.
+ */
+class FirestoreBatchWriter internal constructor(
+    private val maxOpsPerBatch: Int,
+    private val maxBytesPerBatch: Long,
+    private val maxConcurrentCommits: Int,
+    private val commitChunk: suspend (List<Op>) -> Unit
+) {
+
+    constructor(
+        firestore: FirebaseFirestore,
+        maxOpsPerBatch: Int = DEFAULT_MAX_OPS,
+        maxBytesPerBatch: Long = DEFAULT_MAX_BYTES,
+        maxConcurrentCommits: Int = DEFAULT_MAX_CONCURRENT_COMMITS
+    ) : this(
+        maxOpsPerBatch = maxOpsPerBatch,
+        maxBytesPerBatch = maxBytesPerBatch,
+        maxConcurrentCommits = maxConcurrentCommits,
+        commitChunk = { ops -> commitWithFirestore(firestore, ops) }
+    )
+
+    sealed class Op {
+        abstract val path: String
+
+        data class Put(
+            val ref: DocumentReference?,
+            override val path: String,
+            val data: Map<String, Any?>,
+            val merge: Boolean = true
+        ) : Op()
+
+        data class Delete(
+            val ref: DocumentReference?,
+            override val path: String
+        ) : Op()
+
+        companion object {
+            fun set(ref: DocumentReference, data: Map<String, Any?>, merge: Boolean = true): Op =
+                Put(ref, ref.path, data, merge)
+
+            fun delete(ref: DocumentReference): Op = Delete(ref, ref.path)
+        }
+    }
+
+    data class Entry<K>(val key: K, val ops: List<Op>) {
+        constructor(key: K, op: Op) : this(key, listOf(op))
+    }
+
+    data class Result<K>(
+        val committedKeys: List<K>,
+        val failedKeys: List<K>,
+        val firstError: Throwable?,
+        val chunks: Int
+    ) {
+        val isSuccess: Boolean get() = failedKeys.isEmpty()
+
+        fun throwIfFailed() {
+            firstError?.let { throw it }
+        }
+    }
+
+    suspend fun <K> write(entries: List<Entry<K>>): Result<K> {
+        if (entries.isEmpty()) return Result(emptyList(), emptyList(), null, 0)
+        val chunks = planChunks(entries, maxOpsPerBatch, maxBytesPerBatch)
+        val semaphore = Semaphore(maxConcurrentCommits.coerceAtLeast(1))
+        val outcomes = coroutineScope {
+            chunks.map { chunk ->
+                async {
+                    semaphore.withPermit {
+                        try {
+                            commitChunk(chunk.flatMap { it.ops })
+                            null
+                        } catch (c: CancellationException) {
+                            throw c
+                        } catch (t: Throwable) {
+                            t
+                        }
+                    }
+                }
+            }.awaitAll()
+        }
+
+        val committed = mutableListOf<K>()
+        val failed = mutableListOf<K>()
+        var firstError: Throwable? = null
+        chunks.forEachIndexed { index, chunk ->
+            val error = outcomes[index]
+            if (error == null) {
+                chunk.mapTo(committed) { it.key }
+            } else {
+                chunk.mapTo(failed) { it.key }
+                if (firstError == null) firstError = error
+            }
+        }
+        return Result(committed, failed, firstError, chunks.size)
+    }
+
+    companion object {
+        /** Margen debajo del límite de 500 ops por commit. */
+        const val DEFAULT_MAX_OPS = 450
+        /** Margen debajo del límite de 10 MiB por commit. */
+        const val DEFAULT_MAX_BYTES = 9L * 1024 * 1024
+        const val DEFAULT_MAX_CONCURRENT_COMMITS = 3
+
+        internal fun <K> planChunks(
+            entries: List<Entry<K>>,
+            maxOps: Int,
+            maxBytes: Long
+        ): List<List<Entry<K>>> {
+            val chunks = mutableListOf<List<Entry<K>>>()
+            var current = mutableListOf<Entry<K>>()
+            var currentOps = 0
+            var currentBytes = 0L
+            entries.forEach { entry ->
+                val ops = entry.ops.size
+                val bytes = entry.ops.sumOf { estimateBytes(it) }
+                val overflow = currentOps + ops > maxOps || currentBytes + bytes > maxBytes
+                if (current.isNotEmpty() && overflow) {
+                    chunks += current
+                    current = mutableListOf()
+                    currentOps = 0
+                    currentBytes = 0L
+                }
+                current += entry
+                currentOps += ops
+                currentBytes += bytes
+            }
+            if (current.isNotEmpty()) chunks += current
+            return chunks
+        }
+
+        /**
+         * Estimación del tamaño de la operación según las reglas de tamaño de documento
+         * de Firestore (strings en UTF-8 + 1, números y timestamps 8, bool/null 1).
+         */
+        internal fun estimateBytes(op: Op): Long {
+            val nameBytes = op.path.toByteArray(Charsets.UTF_8).size + 16L
+            return when (op) {
+                is Op.Delete -> nameBytes
+                is Op.Put -> nameBytes + estimateValue(op.data)
+            }
+        }
+
+        private fun estimateValue(value: Any?): Long = when (value) {
+            null -> 1L
+            is Boolean -> 1L
+            is Number -> 8L
+            is Timestamp -> 8L
+            is String -> value.toByteArray(Charsets.UTF_8).size + 1L
+            is ByteArray -> value.size.toLong()
+            is Map<*, *> -> value.entries.sumOf { (k, v) ->
+                k.toString().toByteArray(Charsets.UTF_8).size + 1L + estimateValue(v)
+            }
+            is Collection<*> -> value.sumOf { estimateValue(it) }
+            else -> 16L
+        }
+
+        private suspend fun commitWithFirestore(firestore: FirebaseFirestore, ops: List<Op>) {
+            val batch = firestore.batch()
+            ops.forEach { op ->
+                when (op) {
+                    is Op.Put -> {
+                        val ref = requireNotNull(op.ref) { "DocumentReference requerido (${op.path})" }
+                        if (op.merge) batch.set(ref, op.data, SetOptions.merge()) else batch.set(ref, op.data)
+                    }
+                    is Op.Delete -> batch.delete(requireNotNull(op.ref) { "DocumentReference requerido (${op.path})" })
+                }
+            }
+            batch.commit().await()
+        }
+    }
+}
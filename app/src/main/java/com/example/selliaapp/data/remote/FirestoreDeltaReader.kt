@@ -0,0 +1,73 @@
+package com.example.selliaapp.data.remote
+
+import com.google.firebase.Timestamp
+import com.google.firebase.firestore.CollectionReference
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.FieldPath
+import com.google.firebase.firestore.FieldValue
+import com.google.firebase.firestore.Query
+import kotlinx.coroutines.tasks.await
+
+/**
+ * Lectura paginada de documentos cambiados desde un high-water mark.
+ *
+ * Ordena por [orderField] (timestamp de servidor) y por docId como desempate, así
+ * dos documentos con el mismo timestamp nunca se saltean entre páginas.
+ * Los documentos sin [orderField] (legacy) no aparecen en estas consultas: para
+ * esos está el pull completo.
+ */
+object FirestoreDeltaReader {
+
+    /** Campo de timestamp de servidor que escriben todos los mappers de sync. */
+    const val SERVER_UPDATED_AT = "serverUpdatedAt"
+
+    const val DEFAULT_PAGE_SIZE = 300L
+
+    data class Cursor(
+        val updatedAt: Timestamp,
+        val docId: String
+    )
+
+    fun serverUpdatedAtField(): Pair<String, Any> = SERVER_UPDATED_AT to FieldValue.serverTimestamp()
+
+    /**
+     * Recorre las páginas posteriores a [since] y llama [onPage] por cada una.
+     * Devuelve el cursor del último documento leído (o [since] si no hubo cambios).
+     * [onPage] recibe el cursor de fin de página para que el caller lo persista
+     * junto con la aplicación local y el pull sea reanudable.
+     */
+    suspend fun readChangedSince(
+        collection: CollectionReference,
+        since: Cursor?,
+        orderField: String = SERVER_UPDATED_AT,
+        pageSize: Long = DEFAULT_PAGE_SIZE,
+        onPage: suspend (docs: List<DocumentSnapshot>, pageEnd: Cursor) -> Unit
+    ): Cursor? {
+        var cursor = since
+        while (true) {
+            var query: Query = collection
+                .orderBy(orderField, Query.Direction.ASCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.ASCENDING)
+            cursor?.let { query = query.startAfter(it.updatedAt, it.docId) }
+            val docs = query.limit(pageSize).get().await().documents
+            if (docs.isEmpty()) return cursor
+
+            val last = docs.last()
+            val lastUpdatedAt = last.getTimestamp(orderField) ?: return cursor
+            val pageEnd = Cursor(lastUpdatedAt, last.id)
+            onPage(docs, pageEnd)
+            cursor = pageEnd
+            if (docs.size < pageSize) return cursor
+        }
+    }
+
+    /** Máximo cursor entre documentos leídos por un pull completo (ignora legacy sin timestamp). */
+    fun maxCursor(docs: List<DocumentSnapshot>, orderField: String = SERVER_UPDATED_AT): Cursor? =
+        latest(docs.mapNotNull { doc -> doc.getTimestamp(orderField)?.let { Cursor(it, doc.id) } })
+
+    /** El más avanzado de [cursors] (timestamp y docId), o null si no hay ninguno. */
+    fun latest(cursors: List<Cursor?>): Cursor? =
+        cursors.filterNotNull().maxWithOrNull(CURSOR_ORDER)
+
+    private val CURSOR_ORDER = compareBy<Cursor> { it.updatedAt }.thenBy { it.docId }
+}
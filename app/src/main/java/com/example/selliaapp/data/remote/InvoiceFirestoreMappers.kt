@@ -33,6 +33,7 @@ object InvoiceFirestoreMappers {
         "status" to invoice.status.name,
         "canceledAt" to invoice.canceledAt,
         "canceledReason" to invoice.canceledReason,
+        FirestoreDeltaReader.serverUpdatedAtField(),
         "items" to items.map { item ->
             mapOf(
                 "id" to item.id,
@@ -40,7 +41,8 @@ object InvoiceFirestoreMappers {
                 "productName" to item.productName,
                 "quantity" to item.quantity,
                 "unitPrice" to item.unitPrice,
-                "lineTotal" to item.lineTotal
+                "lineTotal" to item.lineTotal,
+                "unitCost" to item.unitCost
             )
         }
     )
@@ -91,7 +93,8 @@ object InvoiceFirestoreMappers {
                     productName = (map["productName"] as? String).orEmpty(),
                     quantity = quantity,
                     unitPrice = unitPrice,
-                    lineTotal = (map["lineTotal"] as? Number)?.toDouble() ?: unitPrice * quantity
+                    lineTotal = (map["lineTotal"] as? Number)?.toDouble() ?: unitPrice * quantity,
+                    unitCost = (map["unitCost"] as? Number)?.toDouble()
                 )
             }
             ?: emptyList()
@@ -14,13 +14,23 @@ object ProductFirestoreMappers {
 
     data class RemoteProduct(
         val entity: ProductEntity,
-        val imageUrls: List<String>
+        val imageUrls: List<String>,
+        /** Instalación que escribió el documento (null en documentos previos al sello). */
+        val writerId: String? = null,
+        val writeStamp: Long? = null
+    )
+
+    /** Quién escribe y con qué sello; ver `ProductWriteStamps`. */
+    data class WriteStamp(
+        val writerId: String,
+        val stamp: Long
     )
 
     fun toMap(
         product: ProductEntity,
         imageUrls: List<String> = emptyList(),
-        tenantId: String
+        tenantId: String,
+        write: WriteStamp? = null
     ): Map<String, Any?> {
         val normalizedUrls = imageUrls.ifEmpty { product.imageUrls }
         return mapOf(
@@ -54,7 +64,11 @@ object ProductFirestoreMappers {
             "minStock"     to product.minStock,
             "publicStatus" to product.publicStatus,
             "isPublic"     to (product.publicStatus == "published"),
-            "updatedAt"    to product.updatedAt.format(ISO_DATE)
+            "updatedAt"    to product.updatedAt.format(ISO_DATE),
+            "writerId"     to write?.writerId,
+            "writeStamp"   to write?.stamp,
+            // Timestamp de servidor: watermark del pull incremental (updatedAt es solo fecha)
+            FirestoreDeltaReader.serverUpdatedAtField()
         )
     }
 
@@ -99,6 +113,11 @@ object ProductFirestoreMappers {
             publicStatus = publicStatus,
             updatedAt    = updatedAt
         )
-        return RemoteProduct(entity = entity, imageUrls = combinedUrls)
+        return RemoteProduct(
+            entity = entity,
+            imageUrls = combinedUrls,
+            writerId = data["writerId"] as? String,
+            writeStamp = (data["writeStamp"] as? Number)?.toLong()
+        )
     }
 }
@@ -2,6 +2,8 @@ package com.example.selliaapp.data.remote
 
 import com.example.selliaapp.auth.TenantProvider
 import com.example.selliaapp.data.local.entity.ProductEntity
+import com.example.selliaapp.sync.ProductWriteStamps
+import com.google.firebase.firestore.DocumentSnapshot
 import com.google.firebase.firestore.FieldValue
 import com.google.firebase.firestore.FirebaseFirestore
 import com.google.firebase.firestore.SetOptions
@@ -9,8 +11,11 @@ import kotlinx.coroutines.tasks.await
 
 class ProductRemoteDataSource(
     private val firestore: FirebaseFirestore,
-    private val tenantProvider: TenantProvider
+    private val tenantProvider: TenantProvider,
+    private val writeStamps: ProductWriteStamps
 ) {
+    private val batchWriter = FirestoreBatchWriter(firestore)
+
     private suspend fun deletionsCollection() =
         firestore.collection("tenants")
             .document(tenantProvider.requireTenantId())
@@ -29,7 +34,8 @@ class ProductRemoteDataSource(
         val map = ProductFirestoreMappers.toMap(
             product = product,
             imageUrls = imageUrls,
-            tenantId = tenantId
+            tenantId = tenantId,
+            write = writeStamps.stamp(listOf(product.id))
         ).toMutableMap()
         map["id"] = docRef.id.toIntOrNull() ?: product.id
         if (product.id != 0) {
@@ -42,31 +48,40 @@ class ProductRemoteDataSource(
         }
     }
 
+    /**
+     * Sube los productos en chunks vía [FirestoreBatchWriter]; cada producto (set + borrado
+     * del tombstone) va en el mismo commit. El resultado indica qué ids quedaron confirmados.
+     */
     suspend fun upsertAll(
         products: List<ProductEntity>,
         imageUrlsByProductId: Map<Int, List<String>> = emptyMap()
-    ) {
-        if (products.isEmpty()) return
+    ): FirestoreBatchWriter.Result<Int> {
         val tenantId = tenantProvider.requireTenantId()
         val col = firestore.collection("tenants").document(tenantId).collection("products")
         val deletionsCol = firestore.collection("tenants").document(tenantId).collection("product_deletions")
-        val batch = firestore.batch()
-        products.forEach { product ->
-            if (product.id == 0) return@forEach
-            val doc = col.document(product.id.toString())
-            val imageUrls = imageUrlsByProductId[product.id].orEmpty()
-            batch.set(
-                doc,
-                ProductFirestoreMappers.toMap(
-                    product = product,
-                    imageUrls = imageUrls,
-                    tenantId = tenantId
-                ),
-                SetOptions.merge()
-            )
-            batch.delete(deletionsCol.document(product.id.toString()))
-        }
-        batch.commit().await()
+        val pushed = products.filter { it.id != 0 }
+        if (pushed.isEmpty()) return batchWriter.write(emptyList())
+        val write = writeStamps.stamp(pushed.map { it.id })
+        val entries = pushed
+            .map { product ->
+                val imageUrls = imageUrlsByProductId[product.id].orEmpty()
+                FirestoreBatchWriter.Entry(
+                    key = product.id,
+                    ops = listOf(
+                        FirestoreBatchWriter.Op.set(
+                            col.document(product.id.toString()),
+                            ProductFirestoreMappers.toMap(
+                                product = product,
+                                imageUrls = imageUrls,
+                                tenantId = tenantId,
+                                write = write
+                            )
+                        ),
+                        FirestoreBatchWriter.Op.delete(deletionsCol.document(product.id.toString()))
+                    )
+                )
+            }
+        return batchWriter.write(entries)
     }
 
     suspend fun deleteById(id: Int) {
@@ -90,16 +105,76 @@ class ProductRemoteDataSource(
         batch.commit().await()
     }
 
-    suspend fun listAll(): List<ProductFirestoreMappers.RemoteProduct> {
+    data class FullPull(
+        val products: List<ProductFirestoreMappers.RemoteProduct>,
+        val deletedIds: Set<Int>,
+        val productsCursor: FirestoreDeltaReader.Cursor?,
+        val deletionsCursor: FirestoreDeltaReader.Cursor?
+    )
+
+    suspend fun listAll(): List<ProductFirestoreMappers.RemoteProduct> = pullAll().products
+
+    /** Pull completo: todos los productos y tombstones, más los cursores para el próximo delta. */
+    suspend fun pullAll(): FullPull {
         val snap = collection().get().await()
-        val deletedIds = deletionsCollection().get().await().documents.mapNotNull { it.id.toIntOrNull() }.toSet()
-        return snap.documents.mapNotNull { doc ->
+        val deletionDocs = deletionsCollection().get().await().documents
+        val deletedIds = deletionDocs.mapNotNull { it.id.toIntOrNull() }.toSet()
+        val products = snap.documents.mapNotNull { doc ->
             if (doc.id.toIntOrNull() in deletedIds) {
                 return@mapNotNull null
             }
-            @Suppress("UNCHECKED_CAST")
-            val data = doc.data as? Map<String, Any?> ?: return@mapNotNull null
-            ProductFirestoreMappers.fromMap(doc.id, data)
+            doc.toRemoteProductOrNull()
         }
+        return FullPull(
+            products = products,
+            deletedIds = deletedIds,
+            productsCursor = FirestoreDeltaReader.maxCursor(snap.documents),
+            deletionsCursor = FirestoreDeltaReader.maxCursor(deletionDocs, DELETED_AT)
+        )
+    }
+
+    /**
+     * Ids con tombstone creado después de [since], más el cursor del último leído. El pull
+     * incremental pasa el mismo cursor que a [forEachChangedPage]: `deletedAt` y
+     * `serverUpdatedAt` son timestamps de servidor comparables.
+     */
+    suspend fun listDeletedIdsSince(
+        since: FirestoreDeltaReader.Cursor?
+    ): Pair<Set<Int>, FirestoreDeltaReader.Cursor?> {
+        val deletedIds = mutableSetOf<Int>()
+        val cursor = FirestoreDeltaReader.readChangedSince(
+            collection = deletionsCollection(),
+            since = since,
+            orderField = DELETED_AT
+        ) { docs, _ ->
+            docs.mapNotNullTo(deletedIds) { it.id.toIntOrNull() }
+        }
+        return deletedIds to cursor
+    }
+
+    /**
+     * Recorre por páginas los productos con `serverUpdatedAt` posterior a [since],
+     * descartando los ids en [excludedIds] (tombstones).
+     */
+    suspend fun forEachChangedPage(
+        since: FirestoreDeltaReader.Cursor?,
+        excludedIds: Set<Int>,
+        onPage: suspend (List<ProductFirestoreMappers.RemoteProduct>, FirestoreDeltaReader.Cursor) -> Unit
+    ): FirestoreDeltaReader.Cursor? =
+        FirestoreDeltaReader.readChangedSince(collection(), since) { docs, pageEnd ->
+            val page = docs.mapNotNull { doc ->
+                if (doc.id.toIntOrNull() in excludedIds) null else doc.toRemoteProductOrNull()
+            }
+            onPage(page, pageEnd)
+        }
+
+    private fun DocumentSnapshot.toRemoteProductOrNull(): ProductFirestoreMappers.RemoteProduct? {
+        @Suppress("UNCHECKED_CAST")
+        val data = data as? Map<String, Any?> ?: return null
+        return ProductFirestoreMappers.fromMap(id, data)
+    }
+
+    private companion object {
+        const val DELETED_AT = "deletedAt"
     }
 }
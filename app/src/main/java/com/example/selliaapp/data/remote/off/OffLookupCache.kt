@@ -0,0 +1,179 @@
+package com.example.selliaapp.data.remote.off
+
+import com.example.selliaapp.data.dao.OffLookupCacheDao
+import com.example.selliaapp.data.local.entity.OffLookupCacheEntity
+import com.example.selliaapp.di.AppModule.IoDispatcher
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/** Respuesta de OFF ya resuelta: el producto o NOT_FOUND (null). */
+data class OffLookup(val product: OffProduct?, val fetchedAt: Long)
+
+data class OffCacheStats(
+    val memoryHits: Long,
+    val diskHits: Long,
+    /** Pedidos que esperaron una consulta ya en curso para el mismo barcode. */
+    val coalesced: Long,
+    val fetches: Long,
+    val negativeHits: Long
+) {
+    val lookups: Long get() = memoryHits + diskHits + coalesced + fetches
+    /** Fracción de consultas resueltas sin una llamada propia a la red. */
+    val hitRate: Double get() = if (lookups == 0L) 0.0 else (lookups - fetches).toDouble() / lookups
+}
+
+/**
+ * Caché de consultas a Open Food Facts en dos niveles:
+ * - LRU en memoria (pocos cientos de barcodes: los de la sesión de carga de stock).
+ * - Tabla `off_lookup_cache` en Room, con vencimiento: [foundTtlMillis] para productos
+ *   encontrados y [notFoundTtlMillis], más corto, para NOT_FOUND.
+ *
+ * Si llegan varios pedidos por el mismo barcode mientras hay uno en la red, esperan esa
+ * misma llamada. La llamada corre en [scope], así cancelar a quien la inició no la corta
+ * para los demás. Los errores no se cachean: se propagan a todos los que esperaban.
+ */
+@Singleton
+class OffLookupCache internal constructor(
+    private val store: Store,
+    private val fetch: suspend (String) -> OffProductResponse,
+    private val scope: CoroutineScope,
+    private val clock: () -> Long = System::currentTimeMillis,
+    private val memoryCapacity: Int = DEFAULT_MEMORY_CAPACITY,
+    private val foundTtlMillis: Long = DEFAULT_FOUND_TTL_MILLIS,
+    private val notFoundTtlMillis: Long = DEFAULT_NOT_FOUND_TTL_MILLIS
+) {
+
+    /** Nivel persistente (la tabla de Room en la app). */
+    interface Store {
+        suspend fun get(barcode: String): OffLookupCacheEntity?
+        suspend fun put(entry: OffLookupCacheEntity)
+        suspend fun deleteExpired(nowMillis: Long)
+    }
+
+    @Inject constructor(
+        dao: OffLookupCacheDao,
+        remote: OffRemoteDataSource,
+        @IoDispatcher io: CoroutineDispatcher
+    ) : this(
+        store = object : Store {
+            override suspend fun get(barcode: String) = dao.get(barcode)
+            override suspend fun put(entry: OffLookupCacheEntity) = dao.upsert(entry)
+            override suspend fun deleteExpired(nowMillis: Long) {
+                dao.deleteExpired(nowMillis)
+            }
+        },
+        fetch = remote::fetch,
+        scope = CoroutineScope(SupervisorJob() + io)
+    )
+
+    private val memory = object : LinkedHashMap<String, OffLookupCacheEntity>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, OffLookupCacheEntity>) =
+            size > memoryCapacity
+    }
+    private val inFlight = HashMap<String, Deferred<OffLookupCacheEntity>>()
+    private val pruned = AtomicBoolean(false)
+
+    private val memoryHits = AtomicLong()
+    private val diskHits = AtomicLong()
+    private val coalesced = AtomicLong()
+    private val fetches = AtomicLong()
+    private val negativeHits = AtomicLong()
+
+    /**
+     * Resultado para un barcode ya normalizado. Lanza la excepción de la red (HTTP, IO)
+     * si hubo que consultarla y falló.
+     */
+    suspend fun lookup(barcode: String): OffLookup {
+        val now = clock()
+        memoryGet(barcode, now)?.let { return it.countHit(memoryHits) }
+
+        var shared = true
+        // LAZY: arranca recién con el await, ya registrada y fuera del lock.
+        val call = synchronized(inFlight) {
+            inFlight.getOrPut(barcode) {
+                shared = false
+                scope.async(start = CoroutineStart.LAZY) { load(barcode) }
+            }
+        }
+        if (shared) coalesced.incrementAndGet()
+        return call.await().toLookup()
+    }
+
+    fun stats() = OffCacheStats(
+        memoryHits = memoryHits.get(),
+        diskHits = diskHits.get(),
+        coalesced = coalesced.get(),
+        fetches = fetches.get(),
+        negativeHits = negativeHits.get()
+    )
+
+    /** Una sola vez por barcode en vuelo: disco y, si no está o venció, la red. */
+    private suspend fun load(barcode: String): OffLookupCacheEntity {
+        try {
+            val now = clock()
+            if (pruned.compareAndSet(false, true)) store.deleteExpired(now)
+            store.get(barcode)?.takeIf { it.expiresAt > now }?.let { stored ->
+                memoryPut(stored)
+                diskHits.incrementAndGet()
+                if (!stored.found) negativeHits.incrementAndGet()
+                return stored
+            }
+            fetches.incrementAndGet()
+            val response = fetch(barcode)
+            val fetchedAt = clock()
+            val product = response.product.takeIf { response.status == 1 }
+            val entry = OffLookupCacheEntity(
+                barcode = barcode,
+                found = product != null,
+                productName = product?.productName,
+                brands = product?.brands,
+                imageUrl = product?.imageUrl,
+                fetchedAt = fetchedAt,
+                expiresAt = fetchedAt + if (product != null) foundTtlMillis else notFoundTtlMillis
+            )
+            store.put(entry)
+            memoryPut(entry)
+            return entry
+        } finally {
+            synchronized(inFlight) { inFlight.remove(barcode) }
+        }
+    }
+
+    private fun memoryGet(barcode: String, now: Long): OffLookupCacheEntity? {
+        synchronized(memory) {
+            val entry = memory[barcode] ?: return null
+            if (entry.expiresAt > now) return entry
+            memory.remove(barcode)
+            return null
+        }
+    }
+
+    private fun memoryPut(entry: OffLookupCacheEntity) = synchronized(memory) { memory[entry.barcode] = entry }
+
+    private fun OffLookupCacheEntity.countHit(counter: AtomicLong): OffLookup {
+        counter.incrementAndGet()
+        if (!found) negativeHits.incrementAndGet()
+        return toLookup()
+    }
+
+    private fun OffLookupCacheEntity.toLookup() = OffLookup(
+        product = if (found) OffProduct(productName = productName, brands = brands, imageUrl = imageUrl) else null,
+        fetchedAt = fetchedAt
+    )
+
+    companion object {
+        const val DEFAULT_MEMORY_CAPACITY = 256
+        val DEFAULT_FOUND_TTL_MILLIS = TimeUnit.DAYS.toMillis(30)
+        /** Un NOT_FOUND puede dejar de serlo cuando alguien carga el producto en OFF. */
+        val DEFAULT_NOT_FOUND_TTL_MILLIS = TimeUnit.DAYS.toMillis(1)
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.selliaapp.data.remote.off
 
 import com.example.selliaapp.repository.OffRepository
+import kotlinx.coroutines.CancellationException
 import retrofit2.HttpException
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -8,10 +9,13 @@ import javax.inject.Singleton
 /**
  * [NUEVO] Implementación concreta. Hilt puede construirla (tiene @Inject constructor).
  * Implementa la interfaz que tus ViewModels consumen.
+ *
+ * Las dos consultas pasan por [OffLookupCache]: escanear el mismo código varias veces, o
+ * pedir resultado y sugerencia para el mismo código, hace una sola llamada a OFF.
  */
 @Singleton
 class OpenFoodFactsRepository @Inject constructor(
-    private val remote: OffRemoteDataSource
+    private val cache: OffLookupCache
 ) : OffRepository {
 
     private fun normalize(barcode: String): String? {
@@ -27,17 +31,18 @@ class OpenFoodFactsRepository @Inject constructor(
             ?: return OffResult.NetworkError("Código inválido (longitud).")
 
         return try {
-            val resp = remote.fetch(normalized)
-            if (resp.status == 1) {
-                val p = resp.product
+            val p = cache.lookup(normalized).product
+            if (p != null) {
                 OffResult.Success(
-                    name = p?.productName,
-                    brand = p?.brands?.split(",")?.firstOrNull()?.trim(),
-                    imageUrl = p?.imageUrl
+                    name = p.productName,
+                    brand = p.brands?.split(",")?.firstOrNull()?.trim(),
+                    imageUrl = p.imageUrl
                 )
             } else {
                 OffResult.NotFound
             }
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: HttpException) {
             OffResult.HttpError(e.code())
         } catch (e: Exception) {
@@ -45,11 +50,15 @@ class OpenFoodFactsRepository @Inject constructor(
         }
     }
 
+    /** Aciertos de la caché (memoria, disco, pedidos coalescidos) frente a llamadas a OFF. */
+    fun cacheStats(): OffCacheStats = cache.stats()
+
     override suspend fun getProductSuggestion(barcode: String): OffProduct? {
         val normalized = normalize(barcode) ?: return null
         return try {
-            val resp = remote.fetch(normalized)
-            if (resp.status == 1) resp.product else null
+            cache.lookup(normalized).product
+        } catch (e: CancellationException) {
+            throw e
         } catch (_: Exception) {
             null
         }
@@ -33,6 +33,7 @@ import com.example.selliaapp.data.dao.InvoiceItemDao
 import com.example.selliaapp.data.dao.ProductDao
 import com.example.selliaapp.data.dao.ProductPriceAuditDao
 import com.example.selliaapp.data.dao.ProductImageDao
+import com.example.selliaapp.data.dao.ProductImageUploadDao
 import com.example.selliaapp.data.dao.ProviderDao
 import com.example.selliaapp.data.dao.ProviderInvoiceDao
 import com.example.selliaapp.data.dao.PricingAuditDao
@@ -43,7 +44,13 @@ import com.example.selliaapp.data.dao.PricingSettingsDao
 import com.example.selliaapp.auth.FirebaseSessionCoordinator
 import com.example.selliaapp.auth.TenantProvider
 import com.example.selliaapp.data.dao.ReportDataDao
+import com.example.selliaapp.data.dao.ProductPushMarkDao
+import com.example.selliaapp.data.dao.SalesRollupDao
+import com.example.selliaapp.data.dao.BackupChangeDao
+import com.example.selliaapp.data.dao.OffLookupCacheDao
+import com.example.selliaapp.data.dao.PublicCatalogDao
 import com.example.selliaapp.data.dao.SyncOutboxDao
+import com.example.selliaapp.data.dao.SyncWatermarkDao
 import com.example.selliaapp.data.dao.TenantSkuConfigDao
 import com.example.selliaapp.data.dao.UserDao
 import com.example.selliaapp.data.dao.VariantDao
@@ -51,13 +58,16 @@ import com.example.selliaapp.repository.CloudServiceConfigRepository
 import com.example.selliaapp.repository.CustomerRepository
 import com.example.selliaapp.repository.AccessControlRepository
 import com.example.selliaapp.repository.AccountRequestsRepository
+import com.example.selliaapp.pricing.PricingRecalcStateStore
 import com.example.selliaapp.repository.AuthOnboardingRepository
 import com.example.selliaapp.repository.CashRepository
 import com.example.selliaapp.repository.DevelopmentOptionsRepository
 import com.example.selliaapp.repository.ExpenseRepository
 import com.example.selliaapp.repository.MarketingConfigRepository
 import com.example.selliaapp.repository.PricingConfigRepository
+import com.example.selliaapp.repository.ProductCatalogCache
 import com.example.selliaapp.repository.ProductRepository
+import com.example.selliaapp.repository.PublicCatalogSync
 import com.example.selliaapp.repository.ReportsRepository
 import com.example.selliaapp.repository.SecurityConfigRepository
 import com.example.selliaapp.repository.StorageRepository
@@ -77,6 +87,9 @@ import com.example.selliaapp.repository.impl.TenantOwnershipRepositoryImpl
 import com.example.selliaapp.repository.impl.StorageRepositoryImpl
 import com.example.selliaapp.repository.impl.UsageRepositoryImpl
 import com.example.selliaapp.repository.impl.ViewerStoreRepositoryImpl
+import com.example.selliaapp.sync.BackupChangeTracker
+import com.example.selliaapp.sync.ProductWriteStamps
+import com.example.selliaapp.sync.SyncWatermarkStore
 import com.google.firebase.firestore.FirebaseFirestore
 import com.google.firebase.auth.FirebaseAuth
 import com.google.firebase.storage.FirebaseStorage
@@ -131,7 +144,19 @@ object AppModule {
                 AppDatabase.MIGRATION_39_40,
                 AppDatabase.MIGRATION_40_41,
                 AppDatabase.MIGRATION_41_42,
-                AppDatabase.MIGRATION_42_43
+                AppDatabase.MIGRATION_42_43,
+                AppDatabase.MIGRATION_43_44,
+                AppDatabase.MIGRATION_44_45,
+                AppDatabase.MIGRATION_45_46,
+                AppDatabase.MIGRATION_46_47,
+                AppDatabase.MIGRATION_47_48,
+                AppDatabase.MIGRATION_48_49,
+                AppDatabase.MIGRATION_49_50,
+                AppDatabase.MIGRATION_50_51,
+                AppDatabase.MIGRATION_51_52,
+                AppDatabase.MIGRATION_52_53,
+                AppDatabase.MIGRATION_53_54,
+                AppDatabase.MIGRATION_54_55
             )
             .addCallback(object : RoomDatabase.Callback() {
                 /**
@@ -141,6 +166,8 @@ object AppModule {
                 override fun onOpen(db: SupportSQLiteDatabase) {
                     super.onOpen(db)
                     db.execSQL("PRAGMA foreign_keys=ON;")
+                    // Triggers del respaldo incremental (también para tablas nuevas de una migración).
+                    BackupChangeTracker.install(db)
                 }
             })
             .build()
@@ -151,6 +178,7 @@ object AppModule {
     @Provides @Singleton fun provideProductDao(db: AppDatabase): ProductDao = db.productDao()
     @Provides @Singleton fun provideProductPriceAuditDao(db: AppDatabase): ProductPriceAuditDao = db.productPriceAuditDao()
     @Provides @Singleton fun provideProductImageDao(db: AppDatabase): ProductImageDao = db.productImageDao()
+    @Provides @Singleton fun provideProductImageUploadDao(db: AppDatabase): ProductImageUploadDao = db.productImageUploadDao()
     @Provides @Singleton fun provideCategoryDao(db: AppDatabase): CategoryDao = db.categoryDao()
     @Provides @Singleton fun provideVariantDao(db: AppDatabase): VariantDao = db.variantDao()
     @Provides @Singleton fun provideCustomerDao(db: AppDatabase): CustomerDao = db.customerDao()
@@ -160,7 +188,13 @@ object AppModule {
     @Provides @Singleton fun provideInvoiceDao(db: AppDatabase): InvoiceDao = db.invoiceDao()
     @Provides @Singleton fun provideInvoiceItemDao(db: AppDatabase): InvoiceItemDao = db.invoiceItemDao()
     @Provides @Singleton fun provideSyncOutboxDao(db: AppDatabase): SyncOutboxDao = db.syncOutboxDao()
+    @Provides @Singleton fun provideSyncWatermarkDao(db: AppDatabase): SyncWatermarkDao = db.syncWatermarkDao()
     @Provides @Singleton fun provideReportDataDao(db: AppDatabase): ReportDataDao = db.reportDataDao()
+    @Provides @Singleton fun provideSalesRollupDao(db: AppDatabase): SalesRollupDao = db.salesRollupDao()
+    @Provides @Singleton fun provideProductPushMarkDao(db: AppDatabase): ProductPushMarkDao = db.productPushMarkDao()
+    @Provides @Singleton fun provideBackupChangeDao(db: AppDatabase): BackupChangeDao = db.backupChangeDao()
+    @Provides @Singleton fun provideOffLookupCacheDao(db: AppDatabase): OffLookupCacheDao = db.offLookupCacheDao()
+    @Provides @Singleton fun providePublicCatalogDao(db: AppDatabase): PublicCatalogDao = db.publicCatalogDao()
 
     // Gastos
     @Provides @Singleton fun provideExpenseBudgetDao(db: AppDatabase): ExpenseBudgetDao = db.expenseBudgetDao()
@@ -203,6 +237,10 @@ object AppModule {
         firestore: FirebaseFirestore,
         tenantProvider: TenantProvider,
         tenantSkuConfigDao: TenantSkuConfigDao,
+        catalogCache: ProductCatalogCache,
+        pricingRecalcState: PricingRecalcStateStore,
+        watermarks: SyncWatermarkStore,
+        writeStamps: ProductWriteStamps,
         // [NUEVO] Qualifier global (CoroutinesModule)
         @IoDispatcher io: CoroutineDispatcher
     ): ProductRepository = ProductRepository(
@@ -216,6 +254,10 @@ object AppModule {
         firestore = firestore,
         tenantProvider = tenantProvider,
         tenantSkuConfigDao = tenantSkuConfigDao,
+        catalogCache = catalogCache,
+        pricingRecalcState = pricingRecalcState,
+        watermarks = watermarks,
+        writeStamps = writeStamps,
         io = io
     )
 
@@ -333,10 +375,14 @@ object AppModule {
     fun provideViewerStoreRepository(
         auth: FirebaseAuth,
         firestore: FirebaseFirestore,
+        catalogDao: PublicCatalogDao,
+        catalogSync: PublicCatalogSync,
         @IoDispatcher io: CoroutineDispatcher
     ): ViewerStoreRepository = ViewerStoreRepositoryImpl(
         auth = auth,
         firestore = firestore,
+        catalogDao = catalogDao,
+        catalogSync = catalogSync,
         io = io
     )
 
@@ -382,10 +428,12 @@ object AppModule {
     @Provides @Singleton
     fun provideReportsRepository(
         invoiceDao: InvoiceDao,
-        productDao: ProductDao
+        productDao: ProductDao,
+        salesRollupDao: SalesRollupDao
     ): ReportsRepository = ReportsRepository(
         invoiceDao = invoiceDao,
-        productDao = productDao
+        productDao = productDao,
+        salesRollupDao = salesRollupDao
     )
 
     @Provides
@@ -56,7 +56,7 @@ private fun matchesText(product: ProductEntity, query: String): Boolean {
     return product.searchableText().contains(query)
 }
 
-private fun ProductEntity.searchableText(): String = buildList {
+internal fun ProductEntity.searchableText(): String = buildList {
     add(name)
     add(code)
     add(barcode)
@@ -96,10 +96,10 @@ private fun matchesPriceRange(product: ProductEntity, min: Double?, max: Double?
     return passMin && passMax
 }
 
-private fun ProductEntity.referencePrice(): Double? =
+internal fun ProductEntity.referencePrice(): Double? =
     listPrice ?: cashPrice ?: transferPrice ?: purchasePrice
 
-private fun productComparator(sort: ProductSortOption): Comparator<ProductEntity> {
+internal fun productComparator(sort: ProductSortOption): Comparator<ProductEntity> {
     val compareByName = compareBy<ProductEntity> { it.name.lowercase(Locale.getDefault()) }
     return when (sort) {
         ProductSortOption.UPDATED_DESC -> compareByDescending<ProductEntity> { it.updatedAt }.then(compareByName)
@@ -0,0 +1,58 @@
+package com.example.selliaapp.domain.product
+
+import com.example.selliaapp.data.dao.ProductScanKey
+import com.example.selliaapp.data.local.entity.ProductEntity
+
+/**
+ * Índice hash de escaneo: barcode, código interno e id (para `PRODUCT-<id>` y QR) -> id.
+ *
+ * Es inmutable; se arma entero desde `products` y se reemplaza cuando la tabla cambia.
+ * [generation] identifica la versión de la tabla con la que se armó.
+ */
+class ProductScanIndex private constructor(
+    private val byBarcode: Map<String, Int>,
+    private val byCode: Map<String, Int>,
+    private val ids: Set<Int>,
+    val generation: Long
+) {
+
+    enum class Kind { BARCODE, CODE, ID }
+
+    data class Match(val id: Int, val kind: Kind, val key: String) {
+        /** El producto leído sigue teniendo la clave que lo encontró (el índice puede estar atrasado). */
+        fun matches(product: ProductEntity): Boolean = product.id == id && when (kind) {
+            Kind.BARCODE -> product.barcode == key
+            Kind.CODE -> product.code?.trim() == key
+            Kind.ID -> true
+        }
+    }
+
+    val size: Int get() = ids.size
+
+    /** Mismo orden que la búsqueda secuencial: por candidato, barcode, código y después id. */
+    fun resolve(candidates: List<String>): Match? {
+        candidates.forEach { candidate ->
+            byBarcode[candidate]?.let { return Match(it, Kind.BARCODE, candidate) }
+            val code = candidate.trim()
+            byCode[code]?.let { return Match(it, Kind.CODE, code) }
+            ScanValueParser.parseProductId(candidate)
+                ?.takeIf { it in ids }
+                ?.let { return Match(it, Kind.ID, candidate) }
+        }
+        return null
+    }
+
+    companion object {
+        fun build(keys: List<ProductScanKey>, generation: Long): ProductScanIndex {
+            val byBarcode = HashMap<String, Int>(keys.size * 2)
+            val byCode = HashMap<String, Int>(keys.size * 2)
+            val ids = HashSet<Int>(keys.size * 2)
+            keys.forEach { key ->
+                ids += key.id
+                key.barcode?.takeIf { it.isNotBlank() }?.let { byBarcode[it] = key.id }
+                key.code?.trim()?.takeIf { it.isNotBlank() }?.let { byCode[it] = key.id }
+            }
+            return ProductScanIndex(byBarcode, byCode, ids, generation)
+        }
+    }
+}
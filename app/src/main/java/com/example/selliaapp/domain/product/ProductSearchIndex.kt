@@ -0,0 +1,345 @@
+package com.example.selliaapp.domain.product
+
+import com.example.selliaapp.data.local.entity.ProductEntity
+import java.util.BitSet
+import java.util.Locale
+
+/**
+ * Índice en memoria para [filterAndSortProducts] sobre catálogos grandes.
+ *
+ * - El texto buscable de cada producto se arma una sola vez y se indexa por trigramas;
+ *   una búsqueda toma la lista de postings más corta del query y verifica con `contains`,
+ *   así el resultado es idéntico al escaneo lineal.
+ * - Los filtros de rubro/categoría/color/talle y los flags (stock bajo, sin imagen, sin
+ *   código de barras) son bitsets precalculados.
+ * - Cada orden de [ProductSortOption] se calcula una vez y se reutiliza entre búsquedas.
+ *
+ * Cada producto ocupa un slot fijo. [update] compara el catálogo nuevo contra el indexado
+ * y solo toca los slots de altas, bajas y cambios: arma el texto de esos productos y
+ * corrige sus postings y bitsets, compartiendo el resto con el índice anterior. Las bajas
+ * dejan slots libres que reusan las altas siguientes.
+ */
+class ProductSearchIndex private constructor(
+    /** Documento de cada slot; null si el slot quedó libre por una baja. */
+    private val docs: Array<Doc?>,
+    /** Slots vivos en el orden del catálogo: desempata los órdenes igual que el filtro lineal. */
+    private val order: IntArray,
+    private val postings: Map<Long, IntArray>,
+    private val facets: Facets,
+    /** Documentos que se armaron de cero para este índice (el resto se heredó). */
+    internal val builtDocs: Int
+) {
+
+    private class Doc(
+        val product: ProductEntity,
+        val text: String,
+        val trigrams: LongArray,
+        val referencePrice: Double?
+    )
+
+    /**
+     * Bitsets por slot. Se comparten entre índices: [update] trabaja sobre una [copy] y
+     * nunca modifica los de un índice ya publicado.
+     */
+    private class Facets(
+        val live: BitSet = BitSet(),
+        val parentCategory: HashMap<String, BitSet> = HashMap(),
+        val category: HashMap<String, BitSet> = HashMap(),
+        val color: HashMap<String, BitSet> = HashMap(),
+        val size: HashMap<String, BitSet> = HashMap(),
+        val lowStock: BitSet = BitSet(),
+        val noImage: BitSet = BitSet(),
+        val noBarcode: BitSet = BitSet()
+    ) {
+        fun copy() = Facets(
+            live = live.copy(),
+            parentCategory = parentCategory.deepCopy(),
+            category = category.deepCopy(),
+            color = color.deepCopy(),
+            size = size.deepCopy(),
+            lowStock = lowStock.copy(),
+            noImage = noImage.copy(),
+            noBarcode = noBarcode.copy()
+        )
+
+        fun set(slot: Int, product: ProductEntity, present: Boolean) {
+            live.set(slot, present)
+            product.parentCategory?.let { parentCategory.mark(it, slot, present) }
+            product.category?.let { category.mark(it, slot, present) }
+            product.color?.let { color.mark(it, slot, present) }
+            product.sizes.forEach { size.mark(it, slot, present) }
+            val minStock = product.minStock ?: 0
+            lowStock.set(slot, present && minStock > 0 && product.quantity < minStock)
+            noImage.set(slot, present && product.imageUrls.isEmpty())
+            noBarcode.set(slot, present && product.barcode.isNullOrBlank())
+        }
+
+        private fun HashMap<String, BitSet>.mark(value: String, slot: Int, present: Boolean) {
+            if (value.isBlank()) return
+            if (present) {
+                getOrPut(value) { BitSet() }.set(slot)
+            } else {
+                val bits = get(value) ?: return
+                bits.clear(slot)
+                if (bits.isEmpty) remove(value)
+            }
+        }
+
+        private fun BitSet.copy() = clone() as BitSet
+
+        private fun HashMap<String, BitSet>.deepCopy() =
+            HashMap<String, BitSet>(this.size * 2).also { copy -> forEach { (value, bits) -> copy[value] = bits.copy() } }
+    }
+
+    private val sortedOrders = arrayOfNulls<IntArray>(ProductSortOption.values().size)
+
+    val products: List<ProductEntity> get() = order.map { slot -> docs[slot]!!.product }
+
+    fun query(params: ProductFilterParams): List<ProductEntity> {
+        val candidates = facets.live.clone() as BitSet
+
+        val text = params.query.trim().lowercase(Locale.getDefault())
+        if (text.isNotBlank()) candidates.and(textMatches(text))
+        params.parentCategory.applyFacet(facets.parentCategory, candidates)
+        params.category.applyFacet(facets.category, candidates)
+        params.color.applyFacet(facets.color, candidates)
+        params.size.applyFacet(facets.size, candidates)
+        if (params.onlyLowStock) candidates.and(facets.lowStock)
+        if (params.onlyNoImage) candidates.and(facets.noImage)
+        if (params.onlyNoBarcode) candidates.and(facets.noBarcode)
+        if (candidates.isEmpty) return emptyList()
+
+        val min = params.minPrice
+        val max = params.maxPrice
+        val result = ArrayList<ProductEntity>(candidates.cardinality())
+        for (slot in sortedOrder(params.sort)) {
+            if (!candidates.get(slot)) continue
+            val doc = docs[slot]!!
+            if (min != null || max != null) {
+                val price = doc.referencePrice ?: continue
+                if (min != null && price < min) continue
+                if (max != null && price > max) continue
+            }
+            result += doc.product
+        }
+        return result
+    }
+
+    /**
+     * Índice para [products] que solo reindexa lo que cambió respecto de este. Si cambió
+     * más de la mitad del catálogo, o quedaron más slots libres que ocupados, se reconstruye
+     * compacto (reutilizando igual el texto de los productos que no cambiaron).
+     */
+    fun update(products: List<ProductEntity>): ProductSearchIndex {
+        val slotById = HashMap<Int, Int>(order.size * 2)
+        order.forEach { slot -> slotById[docs[slot]!!.product.id] = slot }
+        val ids = products.mapTo(HashSet(products.size * 2)) { it.id }
+        // Ids repetidos (p. ej. productos sin guardar, con id 0) no tienen slot propio.
+        if (slotById.size != order.size || ids.size != products.size) return rebuild(products)
+
+        val newOrder = IntArray(products.size)
+        val changed = ArrayList<Int>()
+        val added = ArrayList<Int>()
+        products.forEachIndexed { i, product ->
+            val slot = slotById.remove(product.id)
+            when {
+                slot == null -> added += i
+                docs[slot]!!.product != product -> changed += i
+            }
+            newOrder[i] = slot ?: -1
+        }
+        // Lo que quedó en slotById no está en el catálogo nuevo: son bajas.
+        val removedSlots = slotById.values
+
+        val touched = added.size + changed.size + removedSlots.size
+        if (touched == 0) {
+            return if (newOrder.contentEquals(order)) this
+            else ProductSearchIndex(docs, newOrder, postings, facets, builtDocs = 0)
+        }
+        val capacity = maxOf(docs.size, products.size)
+        if (touched * 2 > products.size || capacity - products.size > products.size) return rebuild(products)
+
+        val newDocs = docs.copyOf(capacity)
+        val newFacets = facets.copy()
+        val gone = ArrayList<Pair<Int, Doc>>(changed.size + removedSlots.size)
+        val fresh = ArrayList<Pair<Int, Doc>>(changed.size + added.size)
+
+        removedSlots.forEach { slot ->
+            val doc = docs[slot]!!
+            gone += slot to doc
+            newFacets.set(slot, doc.product, present = false)
+            newDocs[slot] = null
+        }
+        changed.forEach { i ->
+            val slot = newOrder[i]
+            val old = docs[slot]!!
+            val doc = newDoc(products[i])
+            gone += slot to old
+            fresh += slot to doc
+            newFacets.set(slot, old.product, present = false)
+            newFacets.set(slot, doc.product, present = true)
+            newDocs[slot] = doc
+        }
+        var free = 0
+        added.forEach { i ->
+            while (newDocs[free] != null) free++
+            val doc = newDoc(products[i])
+            fresh += free to doc
+            newFacets.set(free, doc.product, present = true)
+            newDocs[free] = doc
+            newOrder[i] = free
+        }
+
+        return ProductSearchIndex(
+            docs = newDocs,
+            order = newOrder,
+            postings = patchPostings(postings, gone, fresh),
+            facets = newFacets,
+            builtDocs = fresh.size
+        )
+    }
+
+    /** Cuántos textos verifica una búsqueda de [text] (ya normalizado); el escaneo lineal verifica todos. */
+    internal fun textCandidates(text: String): Int =
+        if (text.length < GRAM) order.size else shortestPosting(text).size
+
+    private fun rebuild(products: List<ProductEntity>): ProductSearchIndex {
+        val previous = HashMap<Int, Doc>(order.size * 2)
+        order.forEach { slot -> docs[slot]!!.let { previous[it.product.id] = it } }
+        var built = 0
+        val rebuilt = Array<Doc?>(products.size) { i ->
+            val product = products[i]
+            previous[product.id]?.takeIf { it.product == product } ?: newDoc(product).also { built++ }
+        }
+        return of(rebuilt, built)
+    }
+
+    private fun textMatches(text: String): BitSet {
+        val matches = BitSet(docs.size)
+        if (text.length < GRAM) {
+            // Queries de 1-2 letras matchean casi todo: el escaneo sobre texto ya armado alcanza.
+            order.forEach { slot -> if (docs[slot]!!.text.contains(text)) matches.set(slot) }
+            return matches
+        }
+        shortestPosting(text).forEach { slot -> if (docs[slot]!!.text.contains(text)) matches.set(slot) }
+        return matches
+    }
+
+    private fun shortestPosting(text: String): IntArray {
+        var shortest: IntArray? = null
+        for (gram in trigramsOf(text)) {
+            val posting = postings[gram] ?: return NO_SLOTS
+            if (shortest == null || posting.size < shortest.size) shortest = posting
+        }
+        return shortest ?: NO_SLOTS
+    }
+
+    private fun String?.applyFacet(facet: Map<String, BitSet>, candidates: BitSet) {
+        val filter = this?.trim()?.takeIf { it.isNotEmpty() } ?: return
+        val union = BitSet(docs.size)
+        facet.forEach { (value, bits) ->
+            if (value.contains(filter, ignoreCase = true)) union.or(bits)
+        }
+        candidates.and(union)
+    }
+
+    private fun sortedOrder(sort: ProductSortOption): IntArray {
+        sortedOrders[sort.ordinal]?.let { return it }
+        val comparator = productComparator(sort)
+        // sortedWith es estable: los empates quedan en el orden del catálogo.
+        val sorted = order.toList()
+            .sortedWith(Comparator { a, b -> comparator.compare(docs[a]!!.product, docs[b]!!.product) })
+            .toIntArray()
+        sortedOrders[sort.ordinal] = sorted
+        return sorted
+    }
+
+    companion object {
+        private const val GRAM = 3
+        private val NO_SLOTS = IntArray(0)
+
+        val EMPTY = of(emptyArray(), built = 0)
+
+        fun build(products: List<ProductEntity>): ProductSearchIndex =
+            of(Array<Doc?>(products.size) { newDoc(products[it]) }, built = products.size)
+
+        /** Índice compacto: el slot de cada producto es su posición en [docs]. */
+        private fun of(docs: Array<Doc?>, built: Int): ProductSearchIndex {
+            val facets = Facets()
+            docs.forEachIndexed { slot, doc -> facets.set(slot, doc!!.product, present = true) }
+            return ProductSearchIndex(
+                docs = docs,
+                order = IntArray(docs.size) { it },
+                postings = buildPostings(docs),
+                facets = facets,
+                builtDocs = built
+            )
+        }
+
+        private fun newDoc(product: ProductEntity): Doc {
+            val text = product.searchableText()
+            return Doc(
+                product = product,
+                text = text,
+                trigrams = trigramsOf(text),
+                referencePrice = product.referencePrice()
+            )
+        }
+
+        /** Trigramas distintos de [text], empaquetados en un Long (3 chars de 16 bits). */
+        private fun trigramsOf(text: String): LongArray {
+            if (text.length < GRAM) return LongArray(0)
+            val grams = LongArray(text.length - GRAM + 1) { i ->
+                (text[i].code.toLong() shl 32) or (text[i + 1].code.toLong() shl 16) or text[i + 2].code.toLong()
+            }
+            grams.sort()
+            var distinct = 0
+            for (i in grams.indices) {
+                if (i == 0 || grams[i] != grams[i - 1]) grams[distinct++] = grams[i]
+            }
+            return grams.copyOf(distinct)
+        }
+
+        private fun buildPostings(docs: Array<Doc?>): Map<Long, IntArray> {
+            val counts = HashMap<Long, IntArray>()
+            docs.forEach { doc -> doc?.trigrams?.forEach { gram -> counts.getOrPut(gram) { IntArray(1) }[0]++ } }
+            val postings = HashMap<Long, IntArray>(counts.size * 2)
+            val fill = HashMap<Long, IntArray>(counts.size * 2)
+            counts.forEach { (gram, count) ->
+                postings[gram] = IntArray(count[0])
+                fill[gram] = IntArray(1)
+            }
+            docs.forEachIndexed { slot, doc ->
+                doc?.trigrams?.forEach { gram ->
+                    val cursor = fill.getValue(gram)
+                    postings.getValue(gram)[cursor[0]++] = slot
+                }
+            }
+            return postings
+        }
+
+        /**
+         * Copia de [postings] en la que solo se rearman las listas de los trigramas de
+         * [gone] (se quita su slot) y de [fresh] (se agrega); las demás se comparten.
+         */
+        private fun patchPostings(
+            postings: Map<Long, IntArray>,
+            gone: List<Pair<Int, Doc>>,
+            fresh: List<Pair<Int, Doc>>
+        ): Map<Long, IntArray> {
+            val removals = HashMap<Long, HashSet<Int>>()
+            val additions = HashMap<Long, ArrayList<Int>>()
+            gone.forEach { (slot, doc) -> doc.trigrams.forEach { removals.getOrPut(it) { HashSet() } += slot } }
+            fresh.forEach { (slot, doc) -> doc.trigrams.forEach { additions.getOrPut(it) { ArrayList() } += slot } }
+
+            val patched = HashMap(postings)
+            (removals.keys + additions.keys).forEach { gram ->
+                val drop = removals[gram].orEmpty()
+                val kept = postings[gram]?.filter { it !in drop }.orEmpty()
+                val merged = (kept + additions[gram].orEmpty()).toIntArray()
+                if (merged.isEmpty()) patched.remove(gram) else patched[gram] = merged
+            }
+            return patched
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.selliaapp.domain.product
+
+import java.net.URLDecoder
+
+/**
+ * Interpretación de lo que entrega el escáner: barcode plano, código interno,
+ * `PRODUCT-<id>` o un QR con URL (`sellia://product?q=...`, la URL pública de la tienda).
+ *
+ * Reemplaza a `Uri.parse` en el camino de escaneo: Kotlin puro, sin objetos por
+ * candidato, y con la misma lectura de query (`q`, `qr`, `barcode`, ...) y del último
+ * segmento del path.
+ */
+object ScanValueParser {
+
+    private val QUERY_KEYS = listOf("q", "qr", "barcode", "code", "productId", "product_id", "id")
+    private const val PRODUCT_ID_PREFIX = "PRODUCT-"
+
+    /** Valor principal para precargar un alta: el parámetro de la query, el último segmento o el texto. */
+    fun normalize(rawValue: String): String {
+        val value = rawValue.trim()
+        if (value.isBlank()) return value
+        val query = queryOf(value)
+        val fromQuery = if (query == null) null else QUERY_KEYS.firstNotNullOfOrNull { key ->
+            queryParameter(query, key)?.takeIf { it.isNotBlank() }
+        }
+        return fromQuery?.trim() ?: lastPathSegment(value) ?: value
+    }
+
+    /**
+     * Claves a probar en orden: normalizado, texto crudo y el último segmento de ambos.
+     * Sin repetidos ni vacíos.
+     */
+    fun candidates(rawValue: String): List<String> {
+        val normalized = normalize(rawValue)
+        return linkedSetOf<String>().apply {
+            add(normalized)
+            add(rawValue.trim())
+            lastPathSegment(normalized)?.let(::add)
+            lastPathSegment(rawValue)?.let(::add)
+        }.filter { it.isNotBlank() }
+    }
+
+    /** Id de producto para `PRODUCT-<id>` o un valor solo de dígitos. */
+    fun parseProductId(value: String): Int? {
+        val normalized = value.trim()
+        if (normalized.isBlank()) return null
+        if (normalized.all(Char::isDigit)) return normalized.toIntOrNull()
+        if (normalized.startsWith(PRODUCT_ID_PREFIX, ignoreCase = true)) {
+            return normalized.substring(PRODUCT_ID_PREFIX.length).toIntOrNull()
+        }
+        return null
+    }
+
+    /** Último segmento no vacío del path, como `Uri.lastPathSegment` (sin esquema ni host). */
+    fun lastPathSegment(rawValue: String): String? {
+        val value = rawValue.trim()
+        if (value.isEmpty()) return null
+        var path = value.substringBefore('#').substringBefore('?')
+        val schemeEnd = path.indexOf("://")
+        if (schemeEnd > 0 && path.substring(0, schemeEnd).all { it.isLetterOrDigit() || it in "+.-" }) {
+            // El host no es segmento: `sellia://product` no tiene path.
+            path = path.substring(schemeEnd + 3).substringAfter('/', missingDelimiterValue = "")
+        }
+        val segment = path.split('/').lastOrNull { it.isNotEmpty() } ?: return null
+        return decode(segment, plusAsSpace = false).trim().takeIf { it.isNotBlank() }
+    }
+
+    private fun queryOf(value: String): String? {
+        val start = value.indexOf('?')
+        if (start < 0) return null
+        return value.substring(start + 1).substringBefore('#')
+    }
+
+    private fun queryParameter(query: String, key: String): String? {
+        query.split('&').forEach { pair ->
+            val name = pair.substringBefore('=')
+            if (decode(name, plusAsSpace = true) == key) {
+                return decode(pair.substringAfter('=', missingDelimiterValue = ""), plusAsSpace = true)
+            }
+        }
+        return null
+    }
+
+    private fun decode(value: String, plusAsSpace: Boolean): String {
+        if ('%' !in value && (!plusAsSpace || '+' !in value)) return value
+        val escaped = if (plusAsSpace) value else value.replace("+", "%2B")
+        return runCatching { URLDecoder.decode(escaped, Charsets.UTF_8.name()) }.getOrDefault(value)
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.selliaapp.pricing
+
+import com.example.selliaapp.data.local.entity.PricingFixedCostEntity
+import com.example.selliaapp.data.local.entity.PricingMlFixedCostTierEntity
+import com.example.selliaapp.data.local.entity.PricingMlShippingTierEntity
+import com.example.selliaapp.data.local.entity.PricingSettingsEntity
+import com.example.selliaapp.data.local.entity.ProductEntity
+
+/**
+ * Configuración de pricing cargada una sola vez (settings + costos fijos + tiers de ML),
+ * para que los procesos masivos no relean las cuatro tablas por producto.
+ */
+data class PricingInputs(
+    val settings: PricingSettingsEntity,
+    val fixedCosts: List<PricingFixedCostEntity>,
+    val mlFixedCostTiers: List<PricingMlFixedCostTierEntity>,
+    val mlShippingTiers: List<PricingMlShippingTierEntity>
+) {
+    /** Tiers de ML ordenados una vez y compartidos por todos los productos del lote. */
+    internal val mlTiers: MlTierTable by lazy { MlTierTable(mlFixedCostTiers, mlShippingTiers) }
+}
+
+/**
+ * Reglas de auto pricing de productos, sin acceso a DB.
+ */
+object AutoPricing {
+
+    /**
+     * Decide si corresponde recalcular precios: no se pisan precios cargados a mano,
+     * salvo que [force] lo pida.
+     */
+    fun shouldApply(incoming: ProductEntity, existing: ProductEntity?, force: Boolean): Boolean {
+        val hasManualPrices = when {
+            existing == null -> listOf(
+                incoming.listPrice,
+                incoming.cashPrice,
+                incoming.transferPrice,
+            ).any { it != null }
+
+            existing.autoPricing -> {
+                val listChangedManually = incoming.listPrice != null && incoming.listPrice != existing.listPrice
+                val cashChangedManually = incoming.cashPrice != null && incoming.cashPrice != existing.cashPrice
+                val transferChangedManually = incoming.transferPrice != null && incoming.transferPrice != existing.transferPrice
+                listChangedManually || cashChangedManually || transferChangedManually
+            }
+
+            else -> listOf(
+                incoming.listPrice,
+                incoming.cashPrice,
+                incoming.transferPrice,
+            ).any { it != null }
+        }
+        return when {
+            force -> true
+            hasManualPrices -> false
+            incoming.autoPricing -> true
+            existing != null -> existing.autoPricing
+            else -> true
+        }
+    }
+
+    /**
+     * Aplica el auto pricing con [inputs] ya cargados. Sin precio de compra no hay cálculo.
+     */
+    fun apply(
+        incoming: ProductEntity,
+        existing: ProductEntity?,
+        inputs: PricingInputs,
+        force: Boolean = false
+    ): ProductEntity {
+        val purchasePrice = incoming.purchasePrice ?: existing?.purchasePrice ?: return incoming
+        if (!shouldApply(incoming, existing, force)) {
+            return incoming.copy(autoPricing = false)
+        }
+        return withCalculatedPrices(incoming, purchasePrice, inputs)
+    }
+
+    fun withCalculatedPrices(
+        incoming: ProductEntity,
+        purchasePrice: Double,
+        inputs: PricingInputs
+    ): ProductEntity {
+        val result = PricingCalculator.calculate(
+            purchasePrice = purchasePrice,
+            settings = inputs.settings,
+            fixedCosts = inputs.fixedCosts,
+            mlTiers = inputs.mlTiers
+        )
+        return incoming.copy(
+            listPrice = result.listPrice,
+            cashPrice = result.cashPrice,
+            transferPrice = result.transferPrice,
+            transferNetPrice = result.transferNetPrice,
+            mlPrice = result.mlPrice,
+            ml3cPrice = result.ml3cPrice,
+            ml6cPrice = result.ml6cPrice,
+            autoPricing = true
+        )
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.selliaapp.pricing
+
+import com.example.selliaapp.data.local.entity.PricingMlFixedCostTierEntity
+import com.example.selliaapp.data.local.entity.PricingMlShippingTierEntity
+
+/**
+ * Tiers de costo fijo y de envío de Mercado Libre ordenados una sola vez en arrays
+ * primitivos. Resuelve el mismo tier que el `sortedBy { ... }.firstOrNull { ... }`
+ * original (orden estable: ante empates gana el primero de la lista), pero por
+ * búsqueda binaria.
+ */
+internal class MlTierTable(
+    fixedCostTiers: List<PricingMlFixedCostTierEntity>,
+    shippingTiers: List<PricingMlShippingTierEntity>
+) {
+    // Un tier con maxPrice NaN nunca cumple `price <= maxPrice`; se descarta para que el
+    // array quede monótono respecto del predicado.
+    private val fixedMaxPrices: DoubleArray
+    private val fixedCosts: DoubleArray
+    private val shippingMaxWeights: DoubleArray
+    private val shippingCosts: DoubleArray
+    private val shippingFallback: Double =
+        shippingTiers.maxByOrNull { it.maxWeightKg }?.cost ?: 0.0
+
+    init {
+        val fixed = fixedCostTiers.filterNot { it.maxPrice.isNaN() }.sortedBy { it.maxPrice }
+        fixedMaxPrices = DoubleArray(fixed.size) { fixed[it].maxPrice }
+        fixedCosts = DoubleArray(fixed.size) { fixed[it].cost }
+        val shipping = shippingTiers.sortedBy { it.maxWeightKg }
+        shippingMaxWeights = DoubleArray(shipping.size) { shipping[it].maxWeightKg }
+        shippingCosts = DoubleArray(shipping.size) { shipping[it].cost }
+    }
+
+    /** Índice del primer tier con `price <= maxPrice`; [NO_TIER] si ninguno aplica. */
+    fun fixedCostIndex(price: Double): Int {
+        var low = 0
+        var high = fixedMaxPrices.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (price <= fixedMaxPrices[mid]) high = mid else low = mid + 1
+        }
+        return if (low < fixedMaxPrices.size) low else NO_TIER
+    }
+
+    fun fixedCostAt(index: Int): Double = if (index == NO_TIER) 0.0 else fixedCosts[index]
+
+    fun fixedCostFor(price: Double): Double = fixedCostAt(fixedCostIndex(price))
+
+    fun shippingCostFor(weightKg: Double): Double {
+        for (i in shippingMaxWeights.indices) {
+            if (weightKg <= shippingMaxWeights[i]) return shippingCosts[i]
+        }
+        return shippingFallback
+    }
+
+    companion object {
+        const val NO_TIER = -1
+    }
+}
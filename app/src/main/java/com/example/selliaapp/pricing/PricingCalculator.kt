@@ -1,9 +1,12 @@
 package com.example.selliaapp.pricing
 
+import androidx.annotation.VisibleForTesting
 import com.example.selliaapp.data.local.entity.PricingFixedCostEntity
 import com.example.selliaapp.data.local.entity.PricingMlFixedCostTierEntity
 import com.example.selliaapp.data.local.entity.PricingMlShippingTierEntity
 import com.example.selliaapp.data.local.entity.PricingSettingsEntity
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.math.abs
 import kotlin.math.ceil
 
 data class PricingResult(
@@ -25,12 +28,43 @@ data class MlPricingResult(
 )
 
 object PricingCalculator {
+    /** Paso de precio de Mercado Libre: los precios publicados son múltiplos de 500. */
+    private const val ML_PRICE_STEP = 500.0
+    /** Cantidad de pasos de [ML_PRICE_STEP] que se prueban antes de desistir. */
+    private const val ML_MAX_STEPS = 200
+    /**
+     * Por encima de este valor el redondeo de Double ya no garantiza que la ganancia crezca
+     * paso a paso dentro de un tramo; se recorre linealmente como siempre.
+     */
+    private const val ML_MAX_SOLVER_PRICE = 1e9
+    /** Pendiente mínima de la ganancia (por peso de precio) para tratarla como creciente en cada tramo. */
+    private const val ML_MIN_MONOTONIC_SLOPE = 1e-6
+    /** Pasos que se prueban uno por uno antes de saltar: casi siempre acierta el primero. */
+    private const val ML_LINEAR_PROBES = 4
+
+    /** Precios candidatos de Mercado Libre evaluados desde que arrancó el proceso. */
+    @VisibleForTesting
+    internal val mlGainEvaluations = AtomicLong()
+
     fun calculate(
         purchasePrice: Double,
         settings: PricingSettingsEntity,
         fixedCosts: List<PricingFixedCostEntity>,
         mlFixedCostTiers: List<PricingMlFixedCostTierEntity>,
         mlShippingTiers: List<PricingMlShippingTierEntity>
+    ): PricingResult = calculate(
+        purchasePrice = purchasePrice,
+        settings = settings,
+        fixedCosts = fixedCosts,
+        mlTiers = MlTierTable(mlFixedCostTiers, mlShippingTiers)
+    )
+
+    /** Variante para procesos masivos: [mlTiers] se ordena una sola vez para todo el catálogo. */
+    internal fun calculate(
+        purchasePrice: Double,
+        settings: PricingSettingsEntity,
+        fixedCosts: List<PricingFixedCostEntity>,
+        mlTiers: MlTierTable
     ): PricingResult {
         val iva = settings.ivaTerminalPercent / 100.0
         val costTotal = fixedCosts.sumOf { item ->
@@ -56,12 +90,16 @@ object PricingCalculator {
         val transferPrice = roundUpByTier(transferPriceRaw)
         val transferNetPrice = transferPrice * (1 - transferenciaRetencion)
         val costBase = purchasePrice + fixedCostImputed + (purchasePrice * operativosLocal)
-        val mlPricing = calculateMercadoPagoPrices(
+        val mlPricing = calculateMercadoLibrePrices(
             priceLowerBound = listPrice,
             costBase = costBase,
-            settings = settings,
-            fixedCostTiers = mlFixedCostTiers,
-            shippingTiers = mlShippingTiers
+            gainMinimum = settings.mlGainMinimum,
+            commissionPercent = settings.mlCommissionPercent,
+            cuotas3Percent = settings.mlCuotas3Percent,
+            cuotas6Percent = settings.mlCuotas6Percent,
+            shippingThreshold = settings.mlShippingThreshold,
+            weightKg = settings.mlDefaultWeightKg,
+            tiers = mlTiers
         )
 
         return PricingResult(
@@ -88,6 +126,28 @@ object PricingCalculator {
         weightKg: Double,
         fixedCostTiers: List<PricingMlFixedCostTierEntity>,
         shippingTiers: List<PricingMlShippingTierEntity>
+    ): MlPricingResult? = calculateMercadoLibrePrices(
+        priceLowerBound = priceLowerBound,
+        costBase = costBase,
+        gainMinimum = gainMinimum,
+        commissionPercent = commissionPercent,
+        cuotas3Percent = cuotas3Percent,
+        cuotas6Percent = cuotas6Percent,
+        shippingThreshold = shippingThreshold,
+        weightKg = weightKg,
+        tiers = MlTierTable(fixedCostTiers, shippingTiers)
+    )
+
+    private fun calculateMercadoLibrePrices(
+        priceLowerBound: Double,
+        costBase: Double,
+        gainMinimum: Double,
+        commissionPercent: Double,
+        cuotas3Percent: Double,
+        cuotas6Percent: Double,
+        shippingThreshold: Double,
+        weightKg: Double,
+        tiers: MlTierTable
     ): MlPricingResult? {
         val start = roundUp500(maxOf(priceLowerBound, 1000.0))
         val ml0 = findMlPrice(
@@ -98,8 +158,7 @@ object PricingCalculator {
             cuotaPercent = 0.0,
             shippingThreshold = shippingThreshold,
             weightKg = weightKg,
-            fixedCostTiers = fixedCostTiers,
-            shippingTiers = shippingTiers
+            tiers = tiers
         ) ?: return null
 
         val ml3 = findMlPrice(
@@ -110,8 +169,7 @@ object PricingCalculator {
             cuotaPercent = cuotas3Percent,
             shippingThreshold = shippingThreshold,
             weightKg = weightKg,
-            fixedCostTiers = fixedCostTiers,
-            shippingTiers = shippingTiers
+            tiers = tiers
         ) ?: return null
 
         val ml6 = findMlPrice(
@@ -122,8 +180,7 @@ object PricingCalculator {
             cuotaPercent = cuotas6Percent,
             shippingThreshold = shippingThreshold,
             weightKg = weightKg,
-            fixedCostTiers = fixedCostTiers,
-            shippingTiers = shippingTiers
+            tiers = tiers
         ) ?: return null
 
         return MlPricingResult(ml0 = ml0, ml3 = ml3, ml6 = ml6)
@@ -193,6 +250,16 @@ object PricingCalculator {
     private fun roundUp500(value: Double): Double =
         ceil(value / 500.0) * 500.0
 
+    /**
+     * Menor precio `roundUp500(startPrice) + 500 * k` (k < [ML_MAX_STEPS]) cuya ganancia
+     * alcanza [gainMinimum].
+     *
+     * Entre cortes de tier de costo fijo y el umbral de envío gratis la ganancia es lineal
+     * en el precio, así que el rango se parte en tramos y, si la pendiente es positiva, se
+     * busca dentro de cada tramo con [firstHit]. Devuelve lo mismo que recorrer los
+     * [ML_MAX_STEPS] pasos uno por uno, que sigue siendo el camino para pendientes
+     * no positivas o precios fuera de rango.
+     */
     private fun findMlPrice(
         startPrice: Double,
         costBase: Double,
@@ -201,56 +268,110 @@ object PricingCalculator {
         cuotaPercent: Double,
         shippingThreshold: Double,
         weightKg: Double,
-        fixedCostTiers: List<PricingMlFixedCostTierEntity>,
-        shippingTiers: List<PricingMlShippingTierEntity>
+        tiers: MlTierTable
+    ): Double? {
+        val first = roundUp500(startPrice)
+        val shippingCost = tiers.shippingCostFor(weightKg)
+        val slope = 1.0 - commissionPercent / 100.0 - cuotaPercent / 100.0
+        if (!first.isFinite() || abs(first) > ML_MAX_SOLVER_PRICE || !(slope > ML_MIN_MONOTONIC_SLOPE)) {
+            return scanMlPrice(first, costBase, gainMinimum, commissionPercent, cuotaPercent, shippingThreshold, shippingCost, tiers)
+        }
+
+        fun priceAt(step: Int): Double = first + ML_PRICE_STEP * step
+
+        var step = 0
+        while (step < ML_MAX_STEPS) {
+            val segmentPrice = priceAt(step)
+            val tierIndex = tiers.fixedCostIndex(segmentPrice)
+            val belowThreshold = segmentPrice < shippingThreshold
+            val segmentEnd = firstStep(step + 1, ML_MAX_STEPS) { s ->
+                val price = priceAt(s)
+                tiers.fixedCostIndex(price) != tierIndex || (price < shippingThreshold) != belowThreshold
+            }
+            val fixedCost = tiers.fixedCostAt(tierIndex)
+            val shipping = if (belowThreshold) 0.0 else shippingCost
+            val hit = firstHit(step, segmentEnd) { s ->
+                calculateMlGain(priceAt(s), costBase, commissionPercent, cuotaPercent, fixedCost, shipping) >= gainMinimum
+            }
+            if (hit < segmentEnd) return priceAt(hit)
+            step = segmentEnd
+        }
+        return null
+    }
+
+    private fun scanMlPrice(
+        first: Double,
+        costBase: Double,
+        gainMinimum: Double,
+        commissionPercent: Double,
+        cuotaPercent: Double,
+        shippingThreshold: Double,
+        shippingCost: Double,
+        tiers: MlTierTable
     ): Double? {
-        var candidate = startPrice
-        repeat(200) {
+        var candidate = first
+        repeat(ML_MAX_STEPS) {
             val rounded = roundUp500(candidate)
             val gain = calculateMlGain(
                 price = rounded,
                 costBase = costBase,
-                gainMinimum = gainMinimum,
                 commissionPercent = commissionPercent,
                 cuotaPercent = cuotaPercent,
-                shippingThreshold = shippingThreshold,
-                weightKg = weightKg,
-                fixedCostTiers = fixedCostTiers,
-                shippingTiers = shippingTiers
+                fixedCost = tiers.fixedCostFor(rounded),
+                shipping = if (rounded < shippingThreshold) 0.0 else shippingCost
             )
             if (gain >= gainMinimum) return rounded
-            candidate = rounded + 500.0
+            candidate = rounded + ML_PRICE_STEP
         }
         return null
     }
 
+    /**
+     * Como [firstStep], pero prueba primero [ML_LINEAR_PROBES] pasos de a uno y después
+     * salta duplicando la distancia antes de bisecar: un acierto temprano (lo común en un
+     * catálogo real) cuesta lo mismo que recorrer, y uno lejano, del orden de log2.
+     */
+    private inline fun firstHit(from: Int, to: Int, predicate: (Int) -> Boolean): Int {
+        var miss = from - 1
+        val linearEnd = minOf(to, from + ML_LINEAR_PROBES)
+        while (miss + 1 < linearEnd) {
+            if (predicate(miss + 1)) return miss + 1
+            miss++
+        }
+        var jump = 1
+        while (true) {
+            val probe = miss + jump
+            if (probe >= to) return firstStep(miss + 1, to, predicate)
+            if (predicate(probe)) return firstStep(miss + 1, probe, predicate)
+            miss = probe
+            jump *= 2
+        }
+    }
+
+    /** Primer paso en [from, to) que cumple [predicate] (monótono); [to] si ninguno. */
+    private inline fun firstStep(from: Int, to: Int, predicate: (Int) -> Boolean): Int {
+        var low = from
+        var high = to
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (predicate(mid)) high = mid else low = mid + 1
+        }
+        return low
+    }
+
     private fun calculateMlGain(
         price: Double,
         costBase: Double,
-        gainMinimum: Double,
         commissionPercent: Double,
         cuotaPercent: Double,
-        shippingThreshold: Double,
-        weightKg: Double,
-        fixedCostTiers: List<PricingMlFixedCostTierEntity>,
-        shippingTiers: List<PricingMlShippingTierEntity>
+        fixedCost: Double,
+        shipping: Double
     ): Double {
+        mlGainEvaluations.incrementAndGet()
         val commission = price * (commissionPercent / 100.0)
         val cuotas = price * (cuotaPercent / 100.0)
-        val fixedCost = fixedCostFor(price, fixedCostTiers)
-        val shipping = if (price < shippingThreshold) 0.0 else shippingCostFor(weightKg, shippingTiers)
         val total = commission + cuotas + fixedCost + shipping
         val neto = price - total
         return neto - costBase
     }
-
-    private fun fixedCostFor(price: Double, tiers: List<PricingMlFixedCostTierEntity>): Double {
-        val tier = tiers.sortedBy { it.maxPrice }.firstOrNull { price <= it.maxPrice }
-        return tier?.cost ?: 0.0
-    }
-
-    private fun shippingCostFor(weightKg: Double, tiers: List<PricingMlShippingTierEntity>): Double {
-        val tier = tiers.sortedBy { it.maxWeightKg }.firstOrNull { weightKg <= it.maxWeightKg }
-        return tier?.cost ?: (tiers.maxByOrNull { it.maxWeightKg }?.cost ?: 0.0)
-    }
 }
@@ -0,0 +1,55 @@
+package com.example.selliaapp.pricing
+
+import java.security.MessageDigest
+
+/**
+ * Huella de la configuración de pricing: cambia solo si cambia algún dato que entra en
+ * [PricingCalculator]. Auditoría (updatedAt/updatedBy) y el intervalo de recálculo
+ * quedan afuera, y costos/tiers se ordenan para que el orden de lectura no influya.
+ */
+object PricingFingerprint {
+
+    fun of(inputs: PricingInputs): String {
+        val s = inputs.settings
+        val canonical = buildString {
+            append("settings:")
+            listOf(
+                s.ivaTerminalPercent,
+                s.monthlySalesEstimate,
+                s.operativosLocalPercent,
+                s.posnet3CuotasPercent,
+                s.transferenciaRetencionPercent,
+                s.gainTargetPercent,
+                s.mlCommissionPercent,
+                s.mlCuotas3Percent,
+                s.mlCuotas6Percent,
+                s.mlGainMinimum,
+                s.mlShippingThreshold,
+                s.mlDefaultWeightKg,
+                s.coefficient0To1500Percent,
+                s.coefficient1501To3000Percent,
+                s.coefficient3001To5000Percent,
+                s.coefficient5001To7500Percent,
+                s.coefficient7501To10000Percent,
+                s.coefficient10001PlusPercent,
+                s.fixedCostImputationMode
+            ).joinTo(this, "|")
+            append(";fixed:")
+            inputs.fixedCosts
+                .map { "${it.amount}/${it.applyIva}" }
+                .sorted()
+                .joinTo(this, "|")
+            append(";mlFixed:")
+            inputs.mlFixedCostTiers
+                .sortedWith(compareBy({ it.maxPrice }, { it.cost }))
+                .joinTo(this, "|") { "${it.maxPrice}/${it.cost}" }
+            append(";mlShipping:")
+            inputs.mlShippingTiers
+                .sortedWith(compareBy({ it.maxWeightKg }, { it.cost }))
+                .joinTo(this, "|") { "${it.maxWeightKg}/${it.cost}" }
+        }
+        return MessageDigest.getInstance("SHA-256")
+            .digest(canonical.toByteArray(Charsets.UTF_8))
+            .joinToString("") { "%02x".format(it) }
+    }
+}
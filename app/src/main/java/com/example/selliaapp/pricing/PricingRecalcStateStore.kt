@@ -0,0 +1,62 @@
+package com.example.selliaapp.pricing
+
+import android.content.Context
+import dagger.hilt.android.qualifiers.ApplicationContext
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Resultado de una corrida de recálculo de precios.
+ * [skipped] = la configuración no cambió desde la última corrida y no se tocó el catálogo.
+ */
+data class PricingRecalcReport(
+    val skipped: Boolean,
+    val scanned: Int,
+    val updated: Int,
+    val elapsedMs: Long,
+    val skippedRuns: Int
+) {
+    val productsPerSecond: Double
+        get() = if (elapsedMs <= 0L) scanned.toDouble() else scanned * 1_000.0 / elapsedMs
+}
+
+/**
+ * Estado persistido del recálculo periódico: huella de la última configuración aplicada
+ * y contador de corridas salteadas, para que el worker sobreviva reinicios del proceso.
+ */
+@Singleton
+class PricingRecalcStateStore @Inject constructor(
+    @ApplicationContext private val context: Context
+) {
+
+    private val prefs by lazy {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    }
+
+    fun lastFingerprint(): String? = prefs.getString(KEY_FINGERPRINT, null)
+
+    fun skippedRuns(): Int = prefs.getInt(KEY_SKIPPED_RUNS, 0)
+
+    /** Suma una corrida salteada y devuelve el total acumulado. */
+    fun recordSkippedRun(): Int {
+        val total = skippedRuns() + 1
+        prefs.edit().putInt(KEY_SKIPPED_RUNS, total).apply()
+        return total
+    }
+
+    fun recordRun(fingerprint: String, report: PricingRecalcReport) {
+        prefs.edit()
+            .putString(KEY_FINGERPRINT, fingerprint)
+            .putInt(KEY_LAST_UPDATED, report.updated)
+            .putFloat(KEY_LAST_PRODUCTS_PER_SECOND, report.productsPerSecond.toFloat())
+            .apply()
+    }
+
+    private companion object {
+        const val PREFS_NAME = "pricing_recalc_state"
+        const val KEY_FINGERPRINT = "config_fingerprint"
+        const val KEY_SKIPPED_RUNS = "skipped_runs"
+        const val KEY_LAST_UPDATED = "last_updated"
+        const val KEY_LAST_PRODUCTS_PER_SECOND = "last_products_per_second"
+    }
+}
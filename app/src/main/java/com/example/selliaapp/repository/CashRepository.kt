@@ -1,8 +1,10 @@
 package com.example.selliaapp.repository
 
+import androidx.paging.PagingData
 import com.example.selliaapp.data.local.entity.CashAuditEntity
 import com.example.selliaapp.data.local.entity.CashMovementEntity
 import com.example.selliaapp.data.local.entity.CashSessionEntity
+import com.example.selliaapp.data.local.entity.CashSessionTotalEntity
 import kotlinx.coroutines.flow.Flow
 
 interface CashRepository {
@@ -10,6 +12,12 @@ interface CashRepository {
 
     fun observeOpenSessionSummary(): Flow<CashSessionSummary?>
 
+    /** Los últimos [limit] movimientos de la sesión, más nuevos primero. */
+    fun observeRecentMovements(sessionId: String, limit: Int): Flow<List<CashMovementEntity>>
+
+    /** Todos los movimientos de la sesión, paginados, más nuevos primero. */
+    fun pagedMovements(sessionId: String): Flow<PagingData<CashMovementEntity>>
+
     suspend fun getOpenSession(): CashSessionEntity?
 
     suspend fun openSession(openingAmount: Double, note: String? = null, openedBy: String? = null): CashSessionEntity
@@ -35,16 +43,31 @@ interface CashRepository {
     )
 }
 
+/**
+ * Resumen de la sesión abierta a partir de los acumulados de `cash_session_totals`: su
+ * tamaño no depende de cuántos movimientos haya. El detalle se lee aparte con
+ * [CashRepository.observeRecentMovements] o [CashRepository.pagedMovements].
+ */
 data class CashSessionSummary(
     val session: CashSessionEntity,
-    val movements: List<CashMovementEntity>,
+    /** Cantidad y suma de movimientos por tipo (`CashMovementType`). */
+    val totalsByType: Map<String, CashSessionTotalEntity>,
     val audits: List<CashAuditEntity>,
     val expectedAmount: Double,
     val cashSalesTotal: Double
-)
+) {
+    val movementCount: Int
+        get() = totalsByType.values.sumOf { it.movements }
+
+    fun countOf(type: String): Int = totalsByType[type]?.movements ?: 0
+}
 
 object CashCalculations {
     fun expectedAmount(openingAmount: Double, movements: List<CashMovementEntity>): Double {
         return openingAmount + movements.sumOf { it.amount }
     }
+
+    fun expectedAmountFromTotals(openingAmount: Double, totals: Collection<CashSessionTotalEntity>): Double {
+        return openingAmount + totals.sumOf { it.total }
+    }
 }
@@ -4,6 +4,9 @@ import android.content.Context
 import android.net.Uri
 import com.example.selliaapp.auth.TenantProvider
 import com.example.selliaapp.data.csv.CustomerCsvImporter
+import com.example.selliaapp.data.csv.RowSource
+import com.example.selliaapp.data.csv.TabularFileReader
+import com.example.selliaapp.data.csv.forEachChunk
 import com.example.selliaapp.data.dao.CustomerDao
 import com.example.selliaapp.data.dao.SyncOutboxDao
 import com.example.selliaapp.data.local.entity.CustomerEntity
@@ -37,6 +40,10 @@ class CustomerRepository @Inject constructor(
 
     suspend fun getAllOnce(): List<CustomerEntity> = customerDao.getAllOnce()
 
+    /** Siguiente página de la exportación (mismo orden que [getAllOnce]). */
+    suspend fun getExportPage(after: CustomerEntity?, limit: Int): List<CustomerEntity> =
+        customerDao.getPageByName(after?.name.orEmpty(), after?.id ?: 0, limit)
+
     suspend fun findByNameIgnoreCase(name: String): CustomerEntity? {
         val normalized = name.trim()
         if (normalized.isBlank()) return null
@@ -73,70 +80,85 @@ class CustomerRepository @Inject constructor(
     fun search(q: String): Flow<List<CustomerEntity>> = customerDao.search(q)
 
     suspend fun importCustomersFromFile(context: Context, uri: Uri): ImportResult = withContext(Dispatchers.IO) {
-        val rows = CustomerCsvImporter.parseFile(context.contentResolver, uri)
-        importCustomers(rows)
+        importCustomers(TabularFileReader.rowSource(context.contentResolver, uri))
     }
 
-    suspend fun importCustomersFromTable(table: List<List<String>>): ImportResult =
+    suspend fun importCustomersFromRows(source: RowSource): ImportResult =
         withContext(Dispatchers.IO) {
-            val rows = CustomerCsvImporter.parseTable(table)
-            importCustomers(rows)
-        }
-
-    private suspend fun importCustomers(rows: List<CustomerCsvImporter.Row>): ImportResult {
-        if (rows.isEmpty()) {
-            return ImportResult(0, 0, listOf("El archivo no contiene filas válidas."))
+            importCustomers(source)
         }
 
+    /** Recorre [source] de a [IMPORT_CHUNK] filas sin armar la tabla completa. */
+    private suspend fun importCustomers(source: RowSource): ImportResult {
         var inserted = 0
         var updated = 0
+        var seen = 0
         val errors = mutableListOf<String>()
 
-        rows.forEachIndexed { idx, row ->
-            val name = row.name.trim()
-            if (name.isBlank()) {
-                errors += "L${idx + 2}: nombre requerido."
-                return@forEachIndexed
-            }
-
-            try {
-                val existing = customerDao.getByName(name)
-                if (existing == null) {
-                    val id = upsert(
-                        CustomerEntity(
-                            name = name,
-                            phone = row.phone,
-                            email = row.email,
-                            address = row.address,
-                            nickname = row.nickname,
-                            rubrosCsv = row.rubrosCsv,
-                            paymentTerm = row.paymentTerm,
-                            paymentMethod = row.paymentMethod,
-                            createdAt = LocalDateTime.now()
-                        )
-                    )
-                    if (id > 0) inserted++
-                } else {
-                    val merged = existing.copy(
-                        phone = row.phone ?: existing.phone,
-                        email = row.email ?: existing.email,
-                        address = row.address ?: existing.address,
-                        nickname = row.nickname ?: existing.nickname,
-                        rubrosCsv = row.rubrosCsv ?: existing.rubrosCsv,
-                        paymentTerm = row.paymentTerm ?: existing.paymentTerm,
-                        paymentMethod = row.paymentMethod ?: existing.paymentMethod
-                    )
-                    val id = upsert(merged)
-                    if (id > 0) updated++
+        forEachChunk<CustomerCsvImporter.Row>(
+            chunkSize = IMPORT_CHUNK,
+            read = { onRow -> CustomerCsvImporter.forEachRow(source, onRow) }
+        ) { rows ->
+            rows.forEach { row ->
+                when (importCustomer(seen++, row, errors)) {
+                    true -> inserted++
+                    false -> updated++
+                    null -> Unit
                 }
-            } catch (t: Throwable) {
-                errors += "L${idx + 2}: ${t.message ?: t::class.java.simpleName}"
             }
+            true
+        }
+        if (seen == 0) {
+            return ImportResult(0, 0, listOf("El archivo no contiene filas válidas."))
         }
 
         return ImportResult(inserted, updated, errors)
     }
 
+    /** Devuelve true si insertó, false si actualizó y null si la fila no se importó. */
+    private suspend fun importCustomer(idx: Int, row: CustomerCsvImporter.Row, errors: MutableList<String>): Boolean? {
+        val name = row.name.trim()
+        if (name.isBlank()) {
+            errors += "L${idx + 2}: nombre requerido."
+            return null
+        }
+
+        return try {
+            val existing = customerDao.getByName(name)
+            if (existing == null) {
+                val id = upsert(
+                    CustomerEntity(
+                        name = name,
+                        phone = row.phone,
+                        email = row.email,
+                        address = row.address,
+                        nickname = row.nickname,
+                        rubrosCsv = row.rubrosCsv,
+                        paymentTerm = row.paymentTerm,
+                        paymentMethod = row.paymentMethod,
+                        createdAt = LocalDateTime.now()
+                    )
+                )
+                if (id > 0) true else null
+            } else {
+                val merged = existing.copy(
+                    phone = row.phone ?: existing.phone,
+                    email = row.email ?: existing.email,
+                    address = row.address ?: existing.address,
+                    nickname = row.nickname ?: existing.nickname,
+                    rubrosCsv = row.rubrosCsv ?: existing.rubrosCsv,
+                    paymentTerm = row.paymentTerm ?: existing.paymentTerm,
+                    paymentMethod = row.paymentMethod ?: existing.paymentMethod
+                )
+                val id = upsert(merged)
+                if (id > 0) false else null
+            }
+        } catch (t: Throwable) {
+            errors += "L${idx + 2}: ${t.message ?: t::class.java.simpleName}"
+            null
+        }
+    }
+
     /** Borrado de cliente. */
     suspend fun delete(c: CustomerEntity) {
         val deletedRows = customerDao.delete(c)
@@ -196,4 +218,8 @@ class CustomerRepository @Inject constructor(
         val start = LocalDate.of(now.year, 1, 1).atStartOfDay()
         return countBetween(start, now)
     }
+
+    private companion object {
+        const val IMPORT_CHUNK = 500
+    }
 }
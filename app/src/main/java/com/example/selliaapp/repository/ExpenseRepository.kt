@@ -6,6 +6,8 @@ import com.example.selliaapp.data.dao.ExpenseTemplateDao
 import com.example.selliaapp.data.dao.InvoiceDao
 import com.example.selliaapp.data.dao.ProviderInvoiceDao
 import com.example.selliaapp.data.csv.ExpenseCsvImporter
+import com.example.selliaapp.data.csv.RowSource
+import com.example.selliaapp.data.csv.forEachChunk
 import com.example.selliaapp.data.model.CashflowMonth
 import com.example.selliaapp.data.model.ExpenseCategoryBudget
 import com.example.selliaapp.data.model.ExpenseCategoryComparison
@@ -43,21 +45,37 @@ class ExpenseRepository @Inject constructor(
 
     suspend fun getAllRecordsOnce(): List<ExpenseRecord> = rDao.getAllOnce()
 
-    suspend fun importRecordsFromTable(table: List<List<String>>): com.example.selliaapp.data.model.ImportResult {
-        val rows = ExpenseCsvImporter.parseTable(table)
-        if (rows.isEmpty()) {
-            return com.example.selliaapp.data.model.ImportResult(0, 0, listOf("El archivo no contiene filas válidas."))
-        }
+    /** Siguiente página de la exportación (mismo orden que [getAllRecordsOnce]). */
+    suspend fun getExportPage(after: ExpenseRecord?, limit: Int): List<ExpenseRecord> =
+        rDao.getPageBefore(
+            beforeYear = after?.year ?: Int.MAX_VALUE,
+            beforeMonth = after?.month ?: Int.MAX_VALUE,
+            beforeId = after?.id ?: Int.MAX_VALUE,
+            limit = limit
+        )
+
+    /** Importa los gastos de [source] de a [IMPORT_CHUNK] filas, sin armar la tabla completa. */
+    suspend fun importRecordsFromRows(source: RowSource): com.example.selliaapp.data.model.ImportResult {
         var inserted = 0
+        var idx = 0
         val errors = mutableListOf<String>()
-        val records = ExpenseCsvImporter.toRecords(rows)
-        records.forEachIndexed { idx, record ->
-            try {
-                rDao.upsert(record)
-                inserted++
-            } catch (t: Throwable) {
-                errors += "L${idx + 2}: ${t.message ?: t::class.java.simpleName}"
+        forEachChunk<ExpenseCsvImporter.Row>(
+            chunkSize = IMPORT_CHUNK,
+            read = { onRow -> ExpenseCsvImporter.forEachRow(source, onRow) }
+        ) { rows ->
+            ExpenseCsvImporter.toRecords(rows).forEach { record ->
+                val line = idx++ + 2
+                try {
+                    rDao.upsert(record)
+                    inserted++
+                } catch (t: Throwable) {
+                    errors += "L$line: ${t.message ?: t::class.java.simpleName}"
+                }
             }
+            true
+        }
+        if (idx == 0) {
+            return com.example.selliaapp.data.model.ImportResult(0, 0, listOf("El archivo no contiene filas válidas."))
         }
         return com.example.selliaapp.data.model.ImportResult(inserted, 0, errors)
     }
@@ -113,4 +131,8 @@ class ExpenseRepository @Inject constructor(
             )
         }
     }
+
+    private companion object {
+        const val IMPORT_CHUNK = 500
+    }
 }
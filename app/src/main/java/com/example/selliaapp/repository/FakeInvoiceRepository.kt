@@ -4,11 +4,13 @@ import com.example.selliaapp.data.dao.InvoiceWithItems
 import com.example.selliaapp.data.model.Invoice
 import com.example.selliaapp.data.model.InvoiceItem
 import com.example.selliaapp.data.model.OrderStatus
+import com.example.selliaapp.data.model.dashboard.DailyKpiTotals
 import com.example.selliaapp.data.model.dashboard.DailySalesPoint
 import com.example.selliaapp.data.model.sales.InvoiceDetail
 import com.example.selliaapp.data.model.sales.InvoiceDraft
 import com.example.selliaapp.data.model.sales.InvoiceResult
 import com.example.selliaapp.data.model.sales.InvoiceSummary
+import androidx.paging.PagingData
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.flowOf
 
@@ -29,6 +31,9 @@ class FakeInvoiceRepository : InvoiceRepository {
 
     override fun observeAll(): Flow<List<InvoiceSummary>> = flowOf(emptyList())
 
+    override fun pagedSummaries(customerQuery: String?): Flow<PagingData<InvoiceSummary>> =
+        flowOf(PagingData.empty())
+
     override suspend fun getInvoiceDetail(id: Long): InvoiceDetail? = null
 
     override suspend fun addInvoiceAndAdjustStock(invoice: Invoice, items: List<InvoiceItem>) = Unit
@@ -41,5 +46,7 @@ class FakeInvoiceRepository : InvoiceRepository {
 
     override suspend fun salesLastDays(dias: Int): List<DailySalesPoint> = emptyList()
 
+    override fun observeTodayKpis(): Flow<DailyKpiTotals> = flowOf(DailyKpiTotals.EMPTY)
+
     override suspend fun refreshOrderStatus(orderId: String): OrderStatus? = null
 }
@@ -1,10 +1,12 @@
 package com.example.selliaapp.repository
 
+import androidx.paging.PagingData
 import com.example.selliaapp.data.dao.InvoiceWithItems
 import com.example.selliaapp.data.model.Invoice
 import com.example.selliaapp.data.model.InvoiceItem
 import com.example.selliaapp.data.model.OrderStatus
 import com.example.selliaapp.data.model.sales.InvoiceDetail
+import com.example.selliaapp.data.model.dashboard.DailyKpiTotals
 import com.example.selliaapp.data.model.dashboard.DailySalesPoint
 import com.example.selliaapp.data.model.sales.InvoiceDraft
 import com.example.selliaapp.data.model.sales.InvoiceResult
@@ -17,9 +19,10 @@ import kotlinx.coroutines.flow.Flow
  *  - observeInvoicesWithItems() [lectura simple para pantallas existentes]
  *  - observeInvoicesByCustomerQuery(q) [lectura por cliente]
  *  - observeAll() [resúmenes]
+ *  - pagedSummaries(customerQuery) [historial paginado, sin ítems]
  *  - getInvoiceDetail(id) [detalle]
  *  - addInvoiceAndAdjustStock(invoice, items) [compat con VMs viejos]
- *  - sumThisMonth() [home]
+ *  - sumThisMonth() / observeTodayKpis() [home]
  *
  * En próximas iteraciones podemos separar definitivamente lectura
  * en SalesInvoiceReadRepository, pero agregamos estas firmas para
@@ -36,6 +39,9 @@ interface InvoiceRepository {
 
     fun observeAll(): Flow<List<InvoiceSummary>>
 
+    /** Historial paginado (keyset por fecha) filtrado opcionalmente por nombre de cliente. */
+    fun pagedSummaries(customerQuery: String?): Flow<PagingData<InvoiceSummary>>
+
     suspend fun getInvoiceDetail(id: Long): InvoiceDetail?
 
     // Escritura (compatibilidad con VM antiguos)
@@ -46,6 +52,9 @@ interface InvoiceRepository {
 
     suspend fun salesLastDays(dias: Int): List<DailySalesPoint>
 
+    /** KPIs del día; se recalcula solo cuando cambian `invoices` o `invoice_items`. */
+    fun observeTodayKpis(): Flow<DailyKpiTotals>
+
     // Cancelación de ventas
     suspend fun cancelInvoice(id: Long, reason: String)
 
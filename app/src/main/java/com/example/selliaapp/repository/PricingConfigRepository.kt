@@ -16,6 +16,7 @@ import com.example.selliaapp.data.local.entity.SyncOutboxEntity
 import com.example.selliaapp.data.remote.TenantConfigContract
 import com.example.selliaapp.di.AppModule
 import com.example.selliaapp.auth.TenantProvider
+import com.example.selliaapp.sync.OutboxSnapshot
 import com.google.firebase.firestore.FieldValue
 import com.google.firebase.firestore.FirebaseFirestore
 import kotlinx.coroutines.CoroutineDispatcher
@@ -394,17 +395,13 @@ class PricingConfigRepository(
             )
         )
 
+        val pending = OutboxSnapshot.take(syncOutboxDao, entityType, listOf(entityId))
         runCatching {
             pushPricingConfigToCloud()
         }.onSuccess {
-            syncOutboxDao.deleteByTypeAndIds(entityType, listOf(entityId))
+            pending.acknowledgeAll()
         }.onFailure { error ->
-            syncOutboxDao.markAttempt(
-                entityType = entityType,
-                entityIds = listOf(entityId),
-                timestamp = System.currentTimeMillis(),
-                error = error.message
-            )
+            pending.markAttemptAll(timestamp = System.currentTimeMillis(), error = error.message)
         }
     }
 
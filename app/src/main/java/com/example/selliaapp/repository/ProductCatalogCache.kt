@@ -0,0 +1,185 @@
+package com.example.selliaapp.repository
+
+import com.example.selliaapp.data.local.entity.ProductEntity
+import java.util.concurrent.atomic.AtomicLong
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Cache en memoria del catálogo de productos (con imágenes ya adjuntas), indexado por
+ * id, código de barras y código interno.
+ *
+ * - [replaceAll] carga el catálogo completo; las escrituras puntuales lo parchean con
+ *   [put] / [remove] en vez de releer toda la tabla.
+ * - Acotado a [maxEntries]: si el catálogo no entra, se comporta como LRU de lookups y
+ *   deja de servir el listado completo ([snapshot] devuelve null).
+ * - Quien modifica `products` sin pasar por [ProductRepository] (ventas, anulaciones)
+ *   marca los ids con [markStale]; esas entradas no se sirven hasta releerlas.
+ * - [invalidate] descarta todo (restauraciones, importaciones de terceros).
+ * - Las lecturas de Room que completan el cache (read-through) usan [fill] / [fillAll]
+ *   con la [version] tomada antes de consultar: si hubo una escritura en el medio, lo
+ *   leído puede ser más viejo que lo cacheado y se descarta.
+ */
+@Singleton
+class ProductCatalogCache internal constructor(
+    private val maxEntries: Int
+) {
+
+    @Inject constructor() : this(DEFAULT_MAX_ENTRIES)
+
+    data class Stats(
+        val hits: Long,
+        val misses: Long,
+        val size: Int,
+        val complete: Boolean
+    ) {
+        val hitRate: Double get() = if (hits + misses == 0L) 0.0 else hits.toDouble() / (hits + misses)
+    }
+
+    private val byId = object : LinkedHashMap<Int, ProductEntity>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Int, ProductEntity>): Boolean {
+            if (size <= maxEntries) return false
+            unindex(eldest.value)
+            complete = false
+            return true
+        }
+    }
+    private val byBarcode = HashMap<String, Int>()
+    private val byCode = HashMap<String, Int>()
+    private val stale = HashSet<Int>()
+    private var complete = false
+    private var sorted: List<ProductEntity>? = null
+    /** Se incrementa con cada escritura; [fill] y [fillAll] no la mueven. */
+    private var version = 0L
+
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+
+    /** Catálogo completo ordenado por nombre, o null si no está cargado o hay entradas vencidas. */
+    @Synchronized
+    fun snapshot(): List<ProductEntity>? {
+        if (!complete || stale.isNotEmpty()) {
+            misses.incrementAndGet()
+            return null
+        }
+        hits.incrementAndGet()
+        return sorted ?: byId.values
+            .sortedWith(compareBy(String.CASE_INSENSITIVE_ORDER) { it.name })
+            .also { sorted = it }
+    }
+
+    @Synchronized
+    fun getById(id: Int): ProductEntity? = count(byId[id]?.takeIf { id !in stale })
+
+    @Synchronized
+    fun getByBarcode(barcode: String): ProductEntity? =
+        count(byBarcode[barcode]?.let { id -> byId[id]?.takeIf { id !in stale } })
+
+    @Synchronized
+    fun getByCode(code: String): ProductEntity? =
+        count(byCode[code.trim()]?.let { id -> byId[id]?.takeIf { id !in stale } })
+
+    @Synchronized
+    fun replaceAll(products: List<ProductEntity>) {
+        version++
+        loadAll(products)
+    }
+
+    /** Agrega o reemplaza productos recién leídos de la DB después de escribirlos. */
+    @Synchronized
+    fun put(products: Collection<ProductEntity>) {
+        if (products.isEmpty()) return
+        version++
+        products.forEach(::putInternal)
+        sorted = null
+    }
+
+    /** Versión de escritura actual; tomarla antes de leer de Room para [fill] / [fillAll]. */
+    @Synchronized
+    fun version(): Long = version
+
+    /** Cachea productos leídos de Room solo si nadie escribió el cache desde [readVersion]. */
+    @Synchronized
+    fun fill(products: Collection<ProductEntity>, readVersion: Long): Boolean {
+        if (version != readVersion) return false
+        products.forEach(::putInternal)
+        sorted = null
+        return true
+    }
+
+    /** Como [fill], pero con el catálogo completo (equivale a [replaceAll]). */
+    @Synchronized
+    fun fillAll(products: List<ProductEntity>, readVersion: Long): Boolean {
+        if (version != readVersion) return false
+        loadAll(products)
+        return true
+    }
+
+    @Synchronized
+    fun remove(ids: Collection<Int>) {
+        if (ids.isEmpty()) return
+        version++
+        ids.forEach { id ->
+            byId.remove(id)?.let(::unindex)
+            stale.remove(id)
+        }
+        sorted = null
+    }
+
+    /** Marca entradas modificadas por fuera del repositorio; se releen en la próxima consulta. */
+    @Synchronized
+    fun markStale(ids: Collection<Int>) {
+        version++
+        ids.filterTo(stale) { byId.containsKey(it) }
+    }
+
+    @Synchronized
+    fun staleIds(): Set<Int> = stale.toSet()
+
+    @Synchronized
+    fun invalidate() {
+        version++
+        clear()
+    }
+
+    @Synchronized
+    fun stats(): Stats = Stats(hits.get(), misses.get(), byId.size, complete)
+
+    private fun loadAll(products: List<ProductEntity>) {
+        clear()
+        products.forEach(::putInternal)
+        complete = products.size <= maxEntries
+    }
+
+    private fun count(entity: ProductEntity?): ProductEntity? {
+        if (entity != null) hits.incrementAndGet() else misses.incrementAndGet()
+        return entity
+    }
+
+    private fun putInternal(product: ProductEntity) {
+        byId.remove(product.id)?.let(::unindex)
+        stale.remove(product.id)
+        product.barcode?.takeIf { it.isNotBlank() }?.let { byBarcode[it] = product.id }
+        product.code?.trim()?.takeIf { it.isNotBlank() }?.let { byCode[it] = product.id }
+        byId[product.id] = product
+    }
+
+    private fun unindex(product: ProductEntity) {
+        product.barcode?.let { if (byBarcode[it] == product.id) byBarcode.remove(it) }
+        product.code?.trim()?.let { if (byCode[it] == product.id) byCode.remove(it) }
+    }
+
+    private fun clear() {
+        byId.clear()
+        byBarcode.clear()
+        byCode.clear()
+        stale.clear()
+        complete = false
+        sorted = null
+    }
+
+    companion object {
+        /** ~20k productos con imágenes entran holgados en el heap de un dispositivo de gama media. */
+        const val DEFAULT_MAX_ENTRIES = 20_000
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.selliaapp.repository
+
+import com.example.selliaapp.data.dao.ProductCodeSequenceDao
+import com.example.selliaapp.data.dao.SQL_IN_CHUNK
+
+/** Entrega códigos automáticos de producto de a uno. */
+fun interface ProductCodeSource {
+    fun next(): String
+
+    companion object {
+        const val SEQUENCE_DIGITS = 6
+
+        fun format(prefix: String, value: Long): String =
+            prefix + value.toString().padStart(SEQUENCE_DIGITS, '0')
+
+        /** Secuencia en memoria sin reservar nada en la DB (planificación en seco, tests). */
+        fun sequential(prefix: String, from: Long): ProductCodeSource {
+            var next = from
+            return ProductCodeSource { format(prefix, next++) }
+        }
+    }
+}
+
+/**
+ * Asigna códigos automáticos (`VLK000123`) sobre `product_code_sequences`.
+ *
+ * Cada reserva es un UPDATE en transacción, así que la importación en background y un alta
+ * desde la UI obtienen rangos disjuntos aunque corran a la vez. Los números reservados que
+ * ya existan en `products` (sincronizados desde otro dispositivo o cargados a mano) se
+ * saltean. Como el DAO, es bloqueante: llamarlo desde IO o dentro de una transacción.
+ */
+class ProductCodeAllocator(private val dao: ProductCodeSequenceDao) {
+
+    /** Reserva [count] códigos libres en `products`. */
+    fun allocate(prefix: String, count: Int = 1): List<String> {
+        val codes = ArrayList<String>(count)
+        while (codes.size < count) {
+            val missing = count - codes.size
+            val first = dao.reserve(prefix, missing)
+            val candidates = (first until first + missing).map { ProductCodeSource.format(prefix, it) }
+            val taken = candidates.chunked(SQL_IN_CHUNK).flatMapTo(HashSet()) { dao.existingCodes(it) }
+            if (taken.isNotEmpty()) dao.skipPastExisting(prefix)
+            candidates.filterTo(codes) { it !in taken }
+        }
+        return codes
+    }
+
+    /**
+     * Bloque de [expected] números para una importación. El planificador ya descarta los
+     * códigos presentes en su índice en memoria; si el bloque no alcanza se reserva otro.
+     * Al terminar, [Block.releaseUnused] devuelve el sobrante.
+     */
+    fun block(prefix: String, expected: Int): Block = Block(prefix, expected.coerceAtLeast(1))
+
+    inner class Block internal constructor(
+        private val prefix: String,
+        private val size: Int
+    ) : ProductCodeSource {
+        private var next = 0L
+        private var end = 0L
+
+        override fun next(): String {
+            if (next >= end) {
+                next = dao.reserve(prefix, size)
+                end = next + size
+            }
+            return ProductCodeSource.format(prefix, next++)
+        }
+
+        fun releaseUnused() {
+            if (next < end) dao.release(prefix, from = next, to = end)
+            end = next
+        }
+    }
+}
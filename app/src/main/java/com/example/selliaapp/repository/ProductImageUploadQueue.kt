@@ -0,0 +1,275 @@
+package com.example.selliaapp.repository
+
+import android.content.Context
+import android.net.Uri
+import com.example.selliaapp.data.dao.ProductImageUploadDao
+import com.example.selliaapp.data.image.AndroidImageCodec
+import com.example.selliaapp.data.image.ImageProcessingConfig
+import com.example.selliaapp.data.image.ProcessedImage
+import com.example.selliaapp.data.image.ProductImageProcessor
+import com.example.selliaapp.data.local.entity.ProductImageUploadEntity
+import com.example.selliaapp.data.local.entity.ProductImageUploadStatus
+import com.example.selliaapp.di.AppModule.IoDispatcher
+import com.example.selliaapp.sync.ProductImageUploadScheduler
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.filterNotNull
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.sync.withPermit
+import java.io.File
+import java.util.UUID
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Cola persistente de fotos de producto.
+ *
+ * [enqueue] procesa la foto en el momento (ver [ProductImageProcessor]), deja la versión
+ * final y la miniatura en `filesDir/image_uploads` y registra la subida en Room. [drain]
+ * sube lo pendiente de a [parallelism] a la vez; cada foto subida se agrega a las
+ * imágenes del producto. Si falla se reintenta con espera exponencial hasta
+ * [maxAttempts]; lo que quedó a medias porque murió el proceso vuelve a la cola en el
+ * siguiente [drain] (lo dispara `ProductImageUploadWorker` al haber conexión).
+ *
+ * Una subida que agota los intentos queda FAILED con sus archivos: se lista con
+ * [observeFailed] y el usuario decide si la reintenta ([retry]) o la descarta ([discard]).
+ */
+@Singleton
+class ProductImageUploadQueue internal constructor(
+    private val dao: ProductImageUploadDao,
+    private val uploader: Uploader,
+    private val directory: File,
+    private val scope: CoroutineScope,
+    private val prepare: (Uri) -> ProcessedImage = { error("Sin procesador de imágenes") },
+    private val schedule: () -> Unit = {},
+    private val clock: () -> Long = System::currentTimeMillis,
+    private val parallelism: Int = DEFAULT_PARALLELISM,
+    private val maxAttempts: Int = DEFAULT_MAX_ATTEMPTS,
+    private val retryBaseMillis: Long = DEFAULT_RETRY_BASE_MILLIS
+) {
+
+    /** Lado remoto: Storage y el producto en la app, fakes en tests. */
+    interface Uploader {
+        /** Sube la foto y su miniatura; devuelve las URLs en ese orden. */
+        suspend fun upload(upload: ProductImageUploadEntity): Pair<String, String>
+
+        /** Agrega [url] a las imágenes del producto si no estaba (no falla si el producto ya no existe). */
+        suspend fun attach(productId: Int, url: String)
+    }
+
+    data class DrainReport(
+        val uploaded: Int,
+        val retrying: Int,
+        val failed: Int,
+        /** Hay subidas pendientes (esperando un reintento). */
+        val pending: Boolean
+    )
+
+    @Inject constructor(
+        @ApplicationContext context: Context,
+        dao: ProductImageUploadDao,
+        storageRepository: StorageRepository,
+        productRepository: IProductRepository,
+        @IoDispatcher io: CoroutineDispatcher
+    ) : this(
+        dao = dao,
+        uploader = object : Uploader {
+            override suspend fun upload(upload: ProductImageUploadEntity): Pair<String, String> {
+                val urls = storageRepository.uploadProductImageFiles(
+                    tenantId = upload.tenantId,
+                    productId = upload.productId,
+                    files = listOf(File(upload.mainPath), File(upload.thumbnailPath)),
+                    contentType = upload.mimeType
+                )
+                return urls[0] to urls[1]
+            }
+
+            override suspend fun attach(productId: Int, url: String) {
+                val current = productRepository.getById(productId) ?: return
+                if (url in current.imageUrls) return
+                val merged = current.imageUrls + url
+                productRepository.update(current.copy(imageUrls = merged, imageUrl = merged.firstOrNull()))
+            }
+        },
+        directory = File(context.filesDir, DIRECTORY_NAME),
+        scope = CoroutineScope(SupervisorJob() + io),
+        prepare = { uri ->
+            val resolver = context.contentResolver
+            val originalBytes = runCatching {
+                resolver.openAssetFileDescriptor(uri, "r")?.use { it.length }
+            }.getOrNull()?.coerceAtLeast(0L) ?: 0L
+            ProductImageProcessor(AndroidImageCodec(resolver), ImageProcessingConfig()).process(uri, originalBytes)
+        },
+        schedule = { ProductImageUploadScheduler.enqueueNow(context) }
+    )
+
+    private val drainMutex = Mutex()
+    // Agregar URLs al producto es leer-modificar-escribir: de a una para no pisarse.
+    private val attachMutex = Mutex()
+
+    /**
+     * Procesa [source] y lo deja en cola para [productId]. Bloquea mientras decodifica y
+     * recodifica: llamar fuera del hilo principal. Devuelve el id de la subida.
+     */
+    suspend fun enqueue(tenantId: String, productId: Int, source: Uri): Long =
+        enqueue(tenantId, productId, prepare(source))
+
+    internal suspend fun enqueue(tenantId: String, productId: Int, image: ProcessedImage): Long {
+        directory.mkdirs()
+        val name = UUID.randomUUID().toString()
+        val main = File(directory, "$name.${image.main.format.extension}")
+        val thumbnail = File(directory, "${name}_thumb.${image.thumbnail.format.extension}")
+        main.writeBytes(image.main.bytes)
+        thumbnail.writeBytes(image.thumbnail.bytes)
+        val id = dao.insert(
+            ProductImageUploadEntity(
+                tenantId = tenantId,
+                productId = productId,
+                mainPath = main.path,
+                thumbnailPath = thumbnail.path,
+                mimeType = image.main.format.mimeType,
+                originalBytes = image.originalBytes,
+                processedBytes = image.processedBytes,
+                createdAt = clock()
+            )
+        )
+        startDraining()
+        return id
+    }
+
+    /** Subidas FAILED, para ofrecer reintentar o descartar. */
+    fun observeFailed(): Flow<List<ProductImageUploadEntity>> = dao.observeFailed()
+
+    /**
+     * Vuelve a poner en cola la subida FAILED [id], con los intentos en cero. Devuelve
+     * false si ya no está FAILED o si sus archivos no existen (solo queda descartarla).
+     */
+    suspend fun retry(id: Long): Boolean {
+        val upload = dao.get(id)?.takeIf { it.status == ProductImageUploadStatus.FAILED } ?: return false
+        if (!File(upload.mainPath).exists() || !File(upload.thumbnailPath).exists()) return false
+        dao.update(
+            upload.copy(
+                status = ProductImageUploadStatus.PENDING,
+                attempts = 0,
+                nextAttemptAt = clock(),
+                lastError = null
+            )
+        )
+        startDraining()
+        return true
+    }
+
+    /** Descarta la subida FAILED [id]: borra sus archivos y la fila. */
+    suspend fun discard(id: Long): Boolean {
+        val upload = dao.get(id)?.takeIf { it.status == ProductImageUploadStatus.FAILED } ?: return false
+        deleteFiles(upload)
+        dao.delete(id)
+        return true
+    }
+
+    private fun startDraining() {
+        // El worker cubre el caso sin red o si el proceso muere antes de terminar.
+        schedule()
+        scope.launch { runCatching { drain() } }
+    }
+
+    /** Espera a que la subida [id] termine; devuelve la fila en DONE o FAILED. */
+    suspend fun awaitResult(id: Long): ProductImageUploadEntity =
+        dao.observe(id).filterNotNull().first {
+            it.status == ProductImageUploadStatus.DONE || it.status == ProductImageUploadStatus.FAILED
+        }
+
+    /** Sube todo lo que ya tocaba subir. Llamadas concurrentes se ejecutan una detrás de otra. */
+    suspend fun drain(): DrainReport = drainMutex.withLock {
+        // Con el mutex tomado nadie está subiendo: lo que figure UPLOADING quedó colgado.
+        dao.requeueInterrupted()
+        val semaphore = Semaphore(parallelism)
+        var uploaded = 0
+        var retrying = 0
+        var failed = 0
+        while (true) {
+            val batch = dao.due(clock(), parallelism * BATCH_FACTOR)
+            if (batch.isEmpty()) break
+            val outcomes = coroutineScope {
+                batch.map { upload ->
+                    async { semaphore.withPermit { uploadOne(upload) } }
+                }.awaitAll()
+            }
+            uploaded += outcomes.count { it == ProductImageUploadStatus.DONE }
+            failed += outcomes.count { it == ProductImageUploadStatus.FAILED }
+            retrying += outcomes.count { it == ProductImageUploadStatus.PENDING }
+        }
+        dao.deleteFinishedBefore(clock() - FINISHED_RETENTION_MILLIS)
+        DrainReport(
+            uploaded = uploaded,
+            retrying = retrying,
+            failed = failed,
+            pending = dao.nextAttemptAt() != null
+        )
+    }
+
+    /** Devuelve el estado en que quedó la subida. */
+    private suspend fun uploadOne(upload: ProductImageUploadEntity): String {
+        val attempt = upload.copy(status = ProductImageUploadStatus.UPLOADING, attempts = upload.attempts + 1)
+        dao.update(attempt)
+        return try {
+            val (mainUrl, thumbnailUrl) = uploader.upload(attempt)
+            attachMutex.withLock { uploader.attach(attempt.productId, mainUrl) }
+            dao.update(
+                attempt.copy(
+                    status = ProductImageUploadStatus.DONE,
+                    lastError = null,
+                    remoteUrl = mainUrl,
+                    thumbnailUrl = thumbnailUrl
+                )
+            )
+            deleteFiles(attempt)
+            ProductImageUploadStatus.DONE
+        } catch (cancelled: CancellationException) {
+            throw cancelled
+        } catch (error: Throwable) {
+            val message = error.message ?: error::class.java.simpleName
+            if (attempt.attempts >= maxAttempts) {
+                // Los archivos quedan para poder reintentar desde la app.
+                dao.update(attempt.copy(status = ProductImageUploadStatus.FAILED, lastError = message))
+                ProductImageUploadStatus.FAILED
+            } else {
+                val backoff = retryBaseMillis shl (attempt.attempts - 1).coerceAtMost(MAX_BACKOFF_SHIFT)
+                dao.update(
+                    attempt.copy(
+                        status = ProductImageUploadStatus.PENDING,
+                        lastError = message,
+                        nextAttemptAt = clock() + backoff
+                    )
+                )
+                ProductImageUploadStatus.PENDING
+            }
+        }
+    }
+
+    private fun deleteFiles(upload: ProductImageUploadEntity) {
+        File(upload.mainPath).delete()
+        File(upload.thumbnailPath).delete()
+    }
+
+    companion object {
+        const val DEFAULT_PARALLELISM = 3
+        const val DEFAULT_MAX_ATTEMPTS = 5
+        const val DEFAULT_RETRY_BASE_MILLIS = 30_000L
+        private const val BATCH_FACTOR = 4
+        private const val MAX_BACKOFF_SHIFT = 6
+        private const val FINISHED_RETENTION_MILLIS = 7L * 24 * 60 * 60 * 1000
+        private const val DIRECTORY_NAME = "image_uploads"
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.selliaapp.repository
+
+import com.example.selliaapp.data.csv.ProductCsvImporter
+import com.example.selliaapp.data.dao.mergeByKeys
+import com.example.selliaapp.data.local.entity.ProductEntity
+import com.example.selliaapp.pricing.AutoPricing
+import com.example.selliaapp.pricing.PricingInputs
+import java.time.LocalDate
+import kotlin.math.max
+
+/**
+ * Planificador en memoria de importaciones masivas de productos.
+ *
+ * Resuelve cada fila contra índices precargados (barcode, code, nombre en minúsculas)
+ * en lugar de consultar la DB fila por fila, y usa la configuración de pricing cargada
+ * una sola vez. Varias filas que apuntan al mismo producto se consolidan en un único
+ * [Slot], de modo que el repositorio escribe una fila por producto en lotes.
+ *
+ * Un mismo planificador puede recibir el archivo por partes: cada llamada a [planAppend]
+ * devuelve solo lo que tocaron esas filas, y [settle] registra lo que quedó escrito para
+ * que las partes siguientes lo vean como existente.
+ */
+internal class ProductImportPlanner(
+    existing: List<ProductEntity>,
+    /** Códigos para altas sin código; los que ya están en el catálogo se saltean. */
+    private val codes: ProductCodeSource,
+    private val pricing: PricingInputs,
+    private val today: () -> LocalDate = LocalDate::now
+) {
+
+    /** Estado final de un producto tocado por la importación. */
+    class Slot internal constructor(
+        /** Versión en DB antes de importar; null si es alta. */
+        val original: ProductEntity?,
+        entity: ProductEntity
+    ) {
+        var entity: ProductEntity = entity
+            internal set
+        /** URLs a reemplazar en `product_images`; null si ninguna fila trajo imágenes. */
+        var imageUrls: List<String>? = null
+            internal set
+        var note: String = NOTE_NEW
+            internal set
+
+        val isInsert: Boolean get() = original == null
+        val delta: Int get() = entity.quantity - (original?.quantity ?: 0)
+
+        /**
+         * [entity] sobre la fila vigente en DB: el stock se aplica como [delta] sobre
+         * `current.quantity`, así una venta hecha mientras se planificaba no se pisa.
+         */
+        fun rebasedOn(current: ProductEntity): ProductEntity =
+            entity.copy(id = current.id, quantity = max(0, current.quantity + delta))
+    }
+
+    data class Plan(
+        val slots: List<Slot>,
+        val inserted: Int,
+        val updated: Int,
+        val errors: List<String>
+    )
+
+    private val byBarcode = HashMap<String, Slot>()
+    private val byCode = HashMap<String, Slot>()
+    private val byName = HashMap<String, Slot>()
+    private val touched = LinkedHashSet<Slot>()
+    // Duplicados dentro del archivo: se arrastra entre partes.
+    private val seenCodes = HashSet<String>()
+
+    init {
+        existing.forEach { product -> index(Slot(product, product)) }
+    }
+
+    /**
+     * Semántica de `bulkUpsert`: busca por barcode o nombre, fusiona con [mergeByKeys]
+     * y la cantidad del archivo reemplaza al stock. Un conflicto de código o barcode
+     * aborta toda la importación, igual que el UNIQUE de la tabla.
+     */
+    fun planMerge(rows: List<ProductCsvImporter.Row>): Plan {
+        touched.clear()
+        var inserted = 0
+        var updated = 0
+        rows.forEach { r ->
+            val slot = when {
+                !r.barcode.isNullOrBlank() -> byBarcode[r.barcode]
+                r.name.isNotBlank() -> byName[r.name.nameKey()]
+                else -> null
+            }
+            val current = slot?.entity
+            val incoming = ProductEntity(
+                code = r.code,
+                barcode = r.barcode,
+                name = r.name,
+                purchasePrice = r.purchasePrice,
+                listPrice = r.listPrice,
+                cashPrice = r.cashPrice,
+                transferPrice = r.transferPrice,
+                transferNetPrice = r.transferNetPrice,
+                mlPrice = r.mlPrice,
+                ml3cPrice = r.ml3cPrice,
+                ml6cPrice = r.ml6cPrice,
+                autoPricing = false,
+                quantity = max(0, r.quantity),
+                description = r.description,
+                imageUrl = r.imageUrl,
+                imageUrls = r.imageUrls,
+                categoryId = current?.categoryId,
+                providerId = current?.providerId,
+                providerName = current?.providerName,
+                providerSku = current?.providerSku,
+                brand = r.brand ?: current?.brand,
+                parentCategory = r.parentCategory ?: current?.parentCategory,
+                category = r.category ?: current?.category,
+                color = r.color ?: current?.color,
+                sizes = if (r.sizes.isNotEmpty()) r.sizes else current?.sizes.orEmpty(),
+                minStock = r.minStock?.let { max(0, it) } ?: current?.minStock,
+                updatedAt = r.updatedAt ?: today()
+            )
+            val priced = AutoPricing.apply(incoming, current, pricing)
+            if (slot == null) {
+                val prepared = withAutoCodes(priced)
+                requireKeysAvailable(prepared, owner = null)?.let { throw IllegalArgumentException(it) }
+                record(Slot(null, prepared), r.imageUrls, NOTE_NEW)
+                inserted++
+            } else {
+                val merged = mergeByKeys(slot.entity, priced)
+                requireKeysAvailable(merged, owner = slot)?.let { throw IllegalArgumentException(it) }
+                update(slot, merged, r.imageUrls, if (slot.isInsert) NOTE_NEW else NOTE_UPDATE)
+                updated++
+            }
+        }
+        return Plan(touched.toList(), inserted, updated, emptyList())
+    }
+
+    /**
+     * Semántica de `importProducts`: la cantidad del archivo se suma al stock y los
+     * errores por fila se informan sin cortar la importación. [firstLine] es la línea del
+     * archivo de la primera fila de [rows] (2 si es la primera parte, después del encabezado).
+     */
+    fun planAppend(rows: List<ProductCsvImporter.Row>, firstLine: Int = 2): Plan {
+        touched.clear()
+        var inserted = 0
+        var updated = 0
+        val errors = mutableListOf<String>()
+        rows.forEachIndexed { idx, r ->
+            val lineNumber = firstLine + idx
+            val normalizedCode = r.code?.trim()?.takeIf { it.isNotBlank() }
+            if (normalizedCode != null && !seenCodes.add(normalizedCode)) {
+                errors += "Línea $lineNumber: el código \"$normalizedCode\" está duplicado en el archivo."
+                return@forEachIndexed
+            }
+            val slot = when {
+                !r.barcode.isNullOrBlank() -> byBarcode[r.barcode]
+                else -> byName[r.name.nameKey()]
+            }
+            if (normalizedCode != null) {
+                val codeOwner = byCode[normalizedCode]
+                if (codeOwner != null && codeOwner !== slot) {
+                    errors += "Línea $lineNumber: el código \"$normalizedCode\" ya existe."
+                    return@forEachIndexed
+                }
+            }
+
+            if (slot == null) {
+                val p = ProductEntity(
+                    code = normalizedCode,
+                    barcode = r.barcode,
+                    name = r.name,
+                    purchasePrice = r.purchasePrice,
+                    listPrice = r.listPrice,
+                    cashPrice = r.cashPrice,
+                    transferPrice = r.transferPrice,
+                    transferNetPrice = r.transferNetPrice,
+                    mlPrice = r.mlPrice,
+                    ml3cPrice = r.ml3cPrice,
+                    ml6cPrice = r.ml6cPrice,
+                    autoPricing = false,
+                    quantity = max(0, r.quantity),
+                    description = r.description,
+                    imageUrl = r.imageUrl,
+                    imageUrls = r.imageUrls,
+                    providerName = r.providerName,
+                    providerSku = r.providerSku,
+                    brand = r.brand,
+                    parentCategory = r.parentCategory,
+                    category = r.category,
+                    color = r.color,
+                    sizes = r.sizes,
+                    minStock = r.minStock?.let { max(0, it) },
+                    updatedAt = r.updatedAt ?: today()
+                )
+                val prepared = withAutoCodes(AutoPricing.apply(p, null, pricing))
+                val conflict = requireKeysAvailable(prepared, owner = null)
+                if (conflict != null) {
+                    errors += "Línea $lineNumber: $conflict"
+                    return@forEachIndexed
+                }
+                record(Slot(null, prepared), r.imageUrls, NOTE_NEW)
+                inserted++
+            } else {
+                val current = slot.entity
+                val merged = current.copy(
+                    code        = normalizedCode ?: current.code,
+                    barcode     = r.barcode ?: current.barcode,
+                    name        = r.name.ifBlank { current.name },
+                    purchasePrice = r.purchasePrice ?: current.purchasePrice,
+                    listPrice   = r.listPrice ?: current.listPrice,
+                    cashPrice   = r.cashPrice ?: current.cashPrice,
+                    transferPrice = r.transferPrice ?: current.transferPrice,
+                    transferNetPrice = r.transferNetPrice ?: current.transferNetPrice,
+                    mlPrice     = r.mlPrice ?: current.mlPrice,
+                    ml3cPrice   = r.ml3cPrice ?: current.ml3cPrice,
+                    ml6cPrice   = r.ml6cPrice ?: current.ml6cPrice,
+                    autoPricing = current.autoPricing,
+                    quantity    = current.quantity + max(0, r.quantity),
+                    description = r.description ?: current.description,
+                    imageUrl    = r.imageUrl ?: current.imageUrl,
+                    imageUrls   = if (r.imageUrls.isEmpty()) current.imageUrls else r.imageUrls,
+                    parentCategory = r.parentCategory ?: current.parentCategory,
+                    category    = r.category ?: current.category,
+                    providerName = r.providerName ?: current.providerName,
+                    providerSku  = r.providerSku ?: current.providerSku,
+                    brand       = r.brand ?: current.brand,
+                    color       = r.color ?: current.color,
+                    sizes       = if (r.sizes.isEmpty()) current.sizes else r.sizes,
+                    minStock    = r.minStock ?: current.minStock,
+                    updatedAt   = r.updatedAt ?: today()
+                )
+                val priced = AutoPricing.apply(merged, current, pricing)
+                val conflict = requireKeysAvailable(priced, owner = slot)
+                if (conflict != null) {
+                    errors += "Línea $lineNumber: $conflict"
+                    return@forEachIndexed
+                }
+                val note = when {
+                    slot.isInsert -> NOTE_NEW
+                    r.markedAsUpdate -> NOTE_MARKED_UPDATE
+                    else -> NOTE_AUTO_UPDATE
+                }
+                update(slot, priced, r.imageUrls, note)
+                updated++
+            }
+        }
+        return Plan(touched.toList(), inserted, updated, errors)
+    }
+
+    /**
+     * Registra cómo quedó [slot] en DB después de escribirlo: [written] pasa a ser la versión
+     * existente para las partes siguientes. Null si no se escribió (el producto ya no existe).
+     */
+    fun settle(slot: Slot, written: ProductEntity?) {
+        unindex(slot)
+        if (written != null) index(Slot(written, written))
+    }
+
+    /** Equivalente en memoria de `ensureAutoCodes`: asigna el siguiente código libre del prefijo. */
+    private fun withAutoCodes(entity: ProductEntity): ProductEntity {
+        val existingCode = entity.code?.trim()?.takeIf { it.isNotBlank() }
+        val existingBarcode = entity.barcode?.trim()?.takeIf { it.isNotBlank() }
+        var code = existingCode
+        while (code == null) {
+            val candidate = codes.next()
+            if (!byCode.containsKey(candidate)) code = candidate
+        }
+        return entity.copy(code = code, barcode = existingBarcode ?: code)
+    }
+
+    /** Devuelve el mensaje de error si el código o el barcode pertenecen a otro producto. */
+    private fun requireKeysAvailable(entity: ProductEntity, owner: Slot?): String? {
+        entity.code?.trim()?.takeIf { it.isNotBlank() }?.let { code ->
+            val current = byCode[code]
+            if (current != null && current !== owner) return "El código \"$code\" ya existe."
+        }
+        entity.barcode?.takeIf { it.isNotBlank() }?.let { barcode ->
+            val current = byBarcode[barcode]
+            if (current != null && current !== owner) return "El código de barras \"$barcode\" ya existe."
+        }
+        return null
+    }
+
+    private fun record(slot: Slot, imageUrls: List<String>, note: String) {
+        if (imageUrls.isNotEmpty()) slot.imageUrls = imageUrls
+        slot.note = note
+        index(slot)
+        touched += slot
+    }
+
+    private fun update(slot: Slot, entity: ProductEntity, imageUrls: List<String>, note: String) {
+        unindex(slot)
+        slot.entity = entity
+        record(slot, imageUrls, note)
+    }
+
+    private fun index(slot: Slot) {
+        val entity = slot.entity
+        entity.barcode?.takeIf { it.isNotBlank() }?.let { byBarcode[it] = slot }
+        entity.code?.trim()?.takeIf { it.isNotBlank() }?.let { byCode[it] = slot }
+        // Como `getByNameOnce` con LIMIT 1: se queda el primero cargado para cada nombre.
+        entity.name.takeIf { it.isNotBlank() }?.let { byName.putIfAbsent(it.nameKey(), slot) }
+    }
+
+    private fun unindex(slot: Slot) {
+        val entity = slot.entity
+        entity.barcode?.let { if (byBarcode[it] === slot) byBarcode.remove(it) }
+        entity.code?.trim()?.let { if (byCode[it] === slot) byCode.remove(it) }
+        entity.name.nameKey().let { if (byName[it] === slot) byName.remove(it) }
+    }
+
+    private fun String.nameKey(): String = trim().lowercase()
+
+    companion object {
+        const val NOTE_NEW = "Importación CSV (nuevo)"
+        const val NOTE_UPDATE = "Importación CSV (actualización)"
+        const val NOTE_MARKED_UPDATE = "Importación CSV (actualización marcada)"
+        const val NOTE_AUTO_UPDATE = "Importación CSV (actualización automática)"
+    }
+}
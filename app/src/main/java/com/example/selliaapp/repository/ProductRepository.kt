@@ -14,11 +14,16 @@ import androidx.work.OneTimeWorkRequestBuilder
 import androidx.work.WorkManager
 import com.example.selliaapp.data.AppDatabase
 import com.example.selliaapp.data.csv.ProductCsvImporter
+import com.example.selliaapp.data.csv.RowSource
+import com.example.selliaapp.data.csv.TabularFileReader
+import com.example.selliaapp.data.csv.forEachChunk
 import com.example.selliaapp.data.dao.CategoryDao
 import com.example.selliaapp.data.dao.ProductDao
 import com.example.selliaapp.data.dao.ProductImageDao
 import com.example.selliaapp.data.dao.ProductPriceAuditDao
+import com.example.selliaapp.data.dao.ProductWithImages
 import com.example.selliaapp.data.dao.ProviderDao
+import com.example.selliaapp.data.dao.SQL_IN_CHUNK
 import com.example.selliaapp.data.dao.TenantSkuConfigDao
 import com.example.selliaapp.data.local.entity.ProductEntity
 import com.example.selliaapp.data.local.entity.ProductImageEntity
@@ -37,24 +42,35 @@ import com.example.selliaapp.data.model.stock.StockMovementWithProduct
 import com.example.selliaapp.auth.TenantProvider
 import com.example.selliaapp.data.remote.CrossCatalogAuditContext
 import com.example.selliaapp.data.remote.CrossCatalogRemoteDataSource
+import com.example.selliaapp.data.remote.FirestoreDeltaReader
 import com.example.selliaapp.data.remote.InvalidCrossCatalogDataException
 import com.example.selliaapp.data.remote.ProductRemoteDataSource
 import com.example.selliaapp.data.remote.StockInteractionEvent
 import com.example.selliaapp.data.remote.StockInteractionRemoteDataSource
 import com.example.selliaapp.di.IoDispatcher
-import com.example.selliaapp.pricing.PricingCalculator
+import com.example.selliaapp.pricing.AutoPricing
+import com.example.selliaapp.pricing.PricingFingerprint
+import com.example.selliaapp.pricing.PricingInputs
+import com.example.selliaapp.pricing.PricingRecalcReport
+import com.example.selliaapp.pricing.PricingRecalcStateStore
 import com.example.selliaapp.sync.CsvImportWorker
+import com.example.selliaapp.sync.OutboxSnapshot
+import com.example.selliaapp.sync.ProductWriteStamps
+import com.example.selliaapp.sync.SyncWatermarkStore
 import com.google.firebase.auth.FirebaseAuth
 import com.google.firebase.firestore.FirebaseFirestore
 import com.google.firebase.firestore.SetOptions
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.withContext
 import kotlinx.coroutines.tasks.await
 import java.time.Instant
 import java.time.LocalDate
-import kotlin.math.max
 
 
 /**
@@ -74,17 +90,22 @@ class ProductRepository(
     private val firestore: FirebaseFirestore,
     private val tenantProvider: TenantProvider,
     private val tenantSkuConfigDao: TenantSkuConfigDao,
+    private val catalogCache: ProductCatalogCache,
+    private val pricingRecalcState: PricingRecalcStateStore,
+    private val watermarks: SyncWatermarkStore,
+    private val writeStamps: ProductWriteStamps,
     @IoDispatcher private val io: CoroutineDispatcher   // <-- igual que en el VM
 ) {
 
-    // ---------- Cache simple en memoria ----------
-    @Volatile private var lastCache: List<ProductEntity> = emptyList()
+    // ---------- Cache en memoria ----------
     @Volatile private var cachedSkuPrefix: String? = null
     @Volatile private var crossCatalogWriteAccessCache: Pair<Long, Boolean>? = null
+    @Volatile private var syncDownStats = ProductSyncDownStats()
 
     private val stockMovementDao = db.stockMovementDao()
     private val syncOutboxDao = db.syncOutboxDao()
-    private val remote = ProductRemoteDataSource(firestore, tenantProvider)
+    private val codeAllocator = ProductCodeAllocator(db.productCodeSequenceDao())
+    private val remote = ProductRemoteDataSource(firestore, tenantProvider, writeStamps)
     private val crossCatalogRemote = CrossCatalogRemoteDataSource(firestore)
     private val stockInteractionRemote = StockInteractionRemoteDataSource(firestore, tenantProvider)
 
@@ -99,10 +120,9 @@ class ProductRepository(
 
     /** Devuelve el producto mapeado a modelo de dominio (para la pantalla de edición). */
     suspend fun getByIdModel(id: Int): Product? = withContext(io) {
-        val entity = productDao.getById(id) ?: return@withContext null
-        val images = loadProductImages(id)
+        val entity = getById(id) ?: return@withContext null
         entity.toModel().copy(
-            imageUrls = images
+            imageUrls = entity.imageUrls
         )
     }
 
@@ -117,13 +137,31 @@ class ProductRepository(
             .map { it.filter { name -> name.isNotBlank() }.distinct().sorted() }
 
 
-    suspend fun cachedOrEmpty(): List<ProductEntity> =
-        if (lastCache.isNotEmpty()) lastCache else attachImages(productDao.getAllOnce())
+    /** Catálogo completo servido desde [ProductCatalogCache]; lo carga de Room si hace falta. */
+    suspend fun cachedOrEmpty(): List<ProductEntity> = withContext(io) {
+        refreshStaleCacheEntries()
+        catalogCache.snapshot() ?: run {
+            val version = catalogCache.version()
+            productDao.getAllWithImagesOnce().map { it.toEntity() }
+                .also { catalogCache.fillAll(it, version) }
+        }
+    }
+
+    /** Contadores de hit/miss del cache de catálogo (diagnóstico). */
+    fun catalogCacheStats(): ProductCatalogCache.Stats = catalogCache.stats()
+
+    /** Descarta el cache de catálogo; la próxima lectura vuelve a Room. */
+    fun invalidateCatalogCache() = catalogCache.invalidate()
 
     suspend fun getAllForExport(): List<ProductEntity> = withContext(io) {
         productDao.getAllOnce()
     }
 
+    /** Siguiente página de la exportación (mismo orden que [getAllForExport]). */
+    suspend fun getExportPage(after: ProductEntity?, limit: Int): List<ProductEntity> = withContext(io) {
+        productDao.getPageByName(after?.name.orEmpty(), after?.id ?: 0, limit)
+    }
+
     // ---------- E1: Normalización de ids por nombre ----------
     suspend fun ensureCategoryId(name: String?): Int? {
         val n = name?.trim()?.takeIf { it.isNotEmpty() } ?: return null
@@ -147,161 +185,196 @@ class ProductRepository(
         force: Boolean = false
     ): ProductEntity {
         val purchasePrice = incoming.purchasePrice ?: existing?.purchasePrice ?: return incoming
-        val hasManualPrices = when {
-            existing == null -> listOf(
-                incoming.listPrice,
-                incoming.cashPrice,
-                incoming.transferPrice,
-            ).any { it != null }
-
-            existing.autoPricing -> {
-                val listChangedManually = incoming.listPrice != null && incoming.listPrice != existing.listPrice
-                val cashChangedManually = incoming.cashPrice != null && incoming.cashPrice != existing.cashPrice
-                val transferChangedManually = incoming.transferPrice != null && incoming.transferPrice != existing.transferPrice
-                listChangedManually || cashChangedManually || transferChangedManually
-            }
-
-            else -> listOf(
-                incoming.listPrice,
-                incoming.cashPrice,
-                incoming.transferPrice,
-            ).any { it != null }
-        }
-        val shouldAuto = when {
-            force -> true
-            hasManualPrices -> false
-            incoming.autoPricing -> true
-            existing != null -> existing.autoPricing
-            else -> true
-        }
-        if (!shouldAuto) {
+        if (!AutoPricing.shouldApply(incoming, existing, force)) {
             return incoming.copy(autoPricing = false)
         }
-        val settings = pricingConfigRepository.getSettings()
-        val fixedCosts = pricingConfigRepository.getFixedCosts()
-        val mlFixedCostTiers = pricingConfigRepository.getMlFixedCostTiers()
-        val mlShippingTiers = pricingConfigRepository.getMlShippingTiers()
-        val result = PricingCalculator.calculate(
-            purchasePrice = purchasePrice,
-            settings = settings,
-            fixedCosts = fixedCosts,
-            mlFixedCostTiers = mlFixedCostTiers,
-            mlShippingTiers = mlShippingTiers
-        )
-        return incoming.copy(
-            listPrice = result.listPrice,
-            cashPrice = result.cashPrice,
-            transferPrice = result.transferPrice,
-            transferNetPrice = result.transferNetPrice,
-            mlPrice = result.mlPrice,
-            ml3cPrice = result.ml3cPrice,
-            ml6cPrice = result.ml6cPrice,
-            autoPricing = true
-        )
+        return AutoPricing.withCalculatedPrices(incoming, purchasePrice, loadPricingInputs())
     }
 
+    private suspend fun loadPricingInputs(): PricingInputs = PricingInputs(
+        settings = pricingConfigRepository.getSettings(),
+        fixedCosts = pricingConfigRepository.getFixedCosts(),
+        mlFixedCostTiers = pricingConfigRepository.getMlFixedCostTiers(),
+        mlShippingTiers = pricingConfigRepository.getMlShippingTiers()
+    )
+
     // ---------- Importación tabular: bulkUpsert desde filas parseadas ----------
     suspend fun bulkUpsert(rows: List<ProductCsvImporter.Row>) = withContext(io) {
         if (rows.isEmpty()) return@withContext
         val now = System.currentTimeMillis()
-        val skuPrefix = resolveSkuPrefix()
-        val touchedIds = mutableSetOf<Int>()
-        val interactionEvents = mutableListOf<StockInteractionEvent>()
-        val crossCatalogCandidates = mutableMapOf<String, Pair<String, String?>>()
+        val plan = planImport(rows) { planMerge(rows) }
+        val written = writeImportPlan(plan, now)
+
+        trySyncProductsNow(written.products.map { it.id }, now)
+        saveStockInteractions(written.products.map { it.toInteractionEvent(now) })
+        written.failure?.let { failure ->
+            throw IllegalStateException(
+                "Importación parcial: se guardaron ${written.products.size} de ${plan.slots.size} " +
+                    "productos; el resto no se importó (${failure.describe()}).",
+                failure
+            )
+        }
+    }
 
-        db.withTransaction {
-            rows.forEach { r ->
-                val updated = r.updatedAt ?: LocalDate.now()
-                val existing = when {
-                    !r.barcode.isNullOrBlank() -> productDao.getByBarcodeOnce(r.barcode!!)
-                    !r.name.isNullOrBlank() -> productDao.getByNameOnce(r.name)
-                    else -> null
-                }
-                val beforeQty = existing?.quantity ?: 0
-                val incoming = ProductEntity(
-                    code = r.code,
-                    barcode = r.barcode,
-                    name = r.name,
-                    purchasePrice = r.purchasePrice,
-                    listPrice = r.listPrice,
-                    cashPrice = r.cashPrice,
-                    transferPrice = r.transferPrice,
-                    transferNetPrice = r.transferNetPrice,
-                    mlPrice = r.mlPrice,
-                    ml3cPrice = r.ml3cPrice,
-                    ml6cPrice = r.ml6cPrice,
-                    autoPricing = false,
-                    quantity = max(0, r.quantity),
-                    description = r.description,
-                    imageUrl = r.imageUrl,
-                    imageUrls = r.imageUrls,
-                    categoryId = existing?.categoryId,
-                    providerId = existing?.providerId,
-                    providerName = existing?.providerName,
-                    providerSku = existing?.providerSku,
-                    brand = r.brand ?: existing?.brand,
-                    parentCategory = r.parentCategory ?: existing?.parentCategory,
-                    category = r.category ?: existing?.category,
-                    color = r.color ?: existing?.color,
-                    sizes = if (r.sizes.isNotEmpty()) r.sizes else existing?.sizes.orEmpty(),
-                    minStock = r.minStock?.let { max(0, it) } ?: existing?.minStock,
-                    updatedAt = updated
-                )
+    /**
+     * Precarga en una sola pasada los índices de claves y la configuración de pricing
+     * para planificar la importación sin consultas por fila.
+     *
+     * Los códigos automáticos salen de un bloque de la secuencia del prefijo dimensionado
+     * por las filas sin código (cota superior de las altas que los necesitan). Los números
+     * usados ya quedan consumidos en la secuencia; el sobrante se devuelve al terminar el plan.
+     */
+    private suspend fun planImport(
+        rows: List<ProductCsvImporter.Row>,
+        plan: ProductImportPlanner.() -> ProductImportPlanner.Plan
+    ): ProductImportPlanner.Plan {
+        val codes = codeAllocator.block(
+            prefix = resolveSkuPrefix(),
+            expected = rows.count { it.code.isNullOrBlank() }
+        )
+        val planner = ProductImportPlanner(
+            existing = productDao.getAllOnce(),
+            codes = codes,
+            pricing = loadPricingInputs()
+        )
+        return try {
+            planner.plan()
+        } finally {
+            codes.releaseUnused()
+        }
+    }
 
-                val priced = applyAutoPricing(incoming, existing)
-                val prepared = if (existing == null) ensureAutoCodes(priced, prefix = skuPrefix) else priced
-                val id = productDao.upsertByKeys(prepared)
-                touchedIds += id
-                if (r.imageUrls.isNotEmpty()) {
-                    replaceProductImages(id, r.imageUrls)
-                }
-                val current = productDao.getById(id) ?: return@forEach
-                val delta = current.quantity - beforeQty
-                if (delta != 0) {
-                    stockMovementDao.insert(
-                        StockMovementEntity(
-                            productId = id,
-                            delta = delta,
-                            reason = StockMovementReasons.CSV_IMPORT,
-                            ts = Instant.ofEpochMilli(now),
-                            note = if (existing == null) "Importación CSV (nuevo)" else "Importación CSV (actualización)"
-                        )
-                    )
-                }
-                syncOutboxDao.upsert(
-                    SyncOutboxEntity(
-                        entityType = SyncEntityType.PRODUCT.storageKey,
-                        entityId = id.toLong(),
-                        createdAt = now
-                    )
-                )
-                interactionEvents += StockInteractionEvent(
-                    action = if (existing == null) "PRODUCT_CREATED" else "PRODUCT_UPDATED",
-                    productId = id,
-                    productName = current.name,
-                    delta = delta,
-                    reason = StockMovementReasons.CSV_IMPORT,
-                    note = if (existing == null) "Importación CSV (nuevo)" else "Importación CSV (actualización)",
-                    source = "CSV_IMPORT",
-                    occurredAtEpochMs = now
-                )
+    /**
+     * Producto que quedó escrito por la importación: [entity] es la fila tal como quedó en DB
+     * y [delta] el cambio de stock efectivamente aplicado.
+     */
+    private class ImportedProduct(
+        val slot: ProductImportPlanner.Slot,
+        val entity: ProductEntity,
+        val delta: Int
+    ) {
+        val id: Int get() = entity.id
+    }
+
+    /**
+     * Resultado de [writeImportPlan]: lo escrito, los avisos por producto y, si un lote
+     * falló, la causa (los lotes siguientes no se escriben; el caller informa el corte).
+     */
+    private class ImportWrite(
+        val products: List<ImportedProduct>,
+        val errors: List<String>,
+        val failure: Throwable?
+    )
+
+    /**
+     * Escribe el plan en lotes de [IMPORT_WRITE_CHUNK] productos, cada lote en su propia
+     * transacción: productos, imágenes, movimientos de stock y outbox van como inserts
+     * multi-fila y la transacción de escritura no queda tomada durante toda la importación.
+     *
+     * El plan se arma sobre una foto del catálogo tomada fuera de la transacción: cada lote
+     * vuelve a leer sus productos y aplica el stock como delta sobre la fila vigente
+     * ([ProductImportPlanner.Slot.rebasedOn]), de modo que las ventas concurrentes no se
+     * pisan. Un producto borrado mientras tanto se saltea con aviso. Si un lote falla se
+     * corta ahí: los lotes anteriores quedan confirmados y se devuelve la causa.
+     */
+    private suspend fun writeImportPlan(
+        plan: ProductImportPlanner.Plan,
+        now: Long
+    ): ImportWrite {
+        val written = ArrayList<ImportedProduct>(plan.slots.size)
+        val errors = mutableListOf<String>()
+        var failure: Throwable? = null
+        for (chunk in plan.slots.chunked(IMPORT_WRITE_CHUNK)) {
+            val skipped = mutableListOf<String>()
+            try {
+                written += db.withTransaction { writeImportChunk(chunk, now, skipped) }
+                errors += skipped
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                Log.e("ProductRepository", "Importación cortada tras ${written.size} productos", e)
+                failure = e
+                break
             }
-            lastCache = productDao.getAllOnce()
         }
+        refreshCache(written.map { it.id })
+        return ImportWrite(written, errors, failure)
+    }
 
-        trySyncProductsNow(touchedIds, now)
-        saveStockInteractions(interactionEvents)
+    /** Un lote de [writeImportPlan]; corre dentro de la transacción. */
+    private suspend fun writeImportChunk(
+        chunk: List<ProductImportPlanner.Slot>,
+        now: Long,
+        skipped: MutableList<String>
+    ): List<ImportedProduct> {
+        val inserts = chunk.filter { it.isInsert }
+        val current = productDao.getByIds(chunk.mapNotNull { it.original?.id }).associateBy { it.id }
+        val updates = chunk.filterNot { it.isInsert }.mapNotNull { slot ->
+            val fresh = current[slot.original!!.id]
+            if (fresh == null) {
+                skipped += "El producto \"${slot.entity.name}\" se eliminó durante la importación; no se actualizó."
+                null
+            } else {
+                val rebased = slot.rebasedOn(fresh)
+                ImportedProduct(slot, rebased, rebased.quantity - fresh.quantity)
+            }
+        }
+        val newIds = productDao.insertAll(inserts.map { it.entity })
+        if (updates.isNotEmpty()) productDao.updateAll(updates.map { it.entity })
+
+        val imported = inserts.mapIndexed { index, slot ->
+            ImportedProduct(slot, slot.entity.copy(id = newIds[index].toInt()), slot.delta)
+        } + updates
+
+        val withImages = imported.filter { it.slot.imageUrls != null }
+        if (withImages.isNotEmpty()) {
+            productImageDao.deleteByProductIds(withImages.map { it.id })
+            productImageDao.insertAll(
+                withImages.flatMap { it.slot.imageUrls.orEmpty().toImageEntities(it.id) }
+            )
+        }
+        val movements = imported.filter { it.delta != 0 }.map {
+            StockMovementEntity(
+                productId = it.id,
+                delta = it.delta,
+                reason = StockMovementReasons.CSV_IMPORT,
+                ts = Instant.ofEpochMilli(now),
+                note = it.slot.note
+            )
+        }
+        if (movements.isNotEmpty()) stockMovementDao.insertAll(movements)
+        syncOutboxDao.upsertAll(
+            imported.map {
+                SyncOutboxEntity(
+                    entityType = SyncEntityType.PRODUCT.storageKey,
+                    entityId = it.id.toLong(),
+                    createdAt = now
+                )
+            }
+        )
+        return imported
     }
 
+    private fun ImportedProduct.toInteractionEvent(now: Long) = StockInteractionEvent(
+        action = if (slot.isInsert) "PRODUCT_CREATED" else "PRODUCT_UPDATED",
+        productId = id,
+        productName = slot.entity.name,
+        delta = delta,
+        reason = StockMovementReasons.CSV_IMPORT,
+        note = slot.note,
+        source = "CSV_IMPORT",
+        occurredAtEpochMs = now
+    )
+
+    private fun Throwable.describe(): String = message ?: this::class.java.simpleName
+
     // ---------- Flujo/consultas básicas ----------
-    fun observeAll(): Flow<List<ProductEntity>> = productDao.observeAll()
-        .map { products -> attachImages(products) }
+    fun observeAll(): Flow<List<ProductEntity>> = productDao.observeAllWithImages()
+        .map { rows -> rows.map { it.toEntity() } }
 
 
     suspend fun getById(id: Int): ProductEntity? = withContext(io) {
-        val product = productDao.getById(id) ?: return@withContext null
-        val images = loadProductImages(product.id)
-        product.copy(imageUrls = images)
+        catalogCache.getById(id) ?: readThrough { productDao.getByIdWithImages(id) }
     }
 
     fun pagingSearch(query: String): Flow<PagingData<ProductEntity>> =
@@ -311,28 +384,24 @@ class ProductRepository(
     enum class ImportStrategy { Append, Replace }
 
     /**
-     * Importa SIN escribir en DB: útil para dry-run.
+     * Importa SIN escribir en DB: útil para dry-run. Recorre el archivo fila por fila.
      */
     suspend fun simulateImport(context: Context, fileUri: Uri): ImportResult = withContext(io) {
-        val rows = ProductCsvImporter.parseFile(context.contentResolver, fileUri)
         var inserted = 0
         var updated = 0
-        val errors = mutableListOf<String>()
 
         // Simulación simple: contamos por barcode/nombre sin tocar DB
         val already = cachedOrEmpty()
-        for ((idx, r) in rows.withIndex()) {
-            try {
-                val exists = when {
-                    !r.barcode.isNullOrBlank() -> already.any { it.barcode == r.barcode }
-                    else                       -> already.any { it.name.equals(r.name, ignoreCase = true) }
-                }
-                if (exists) updated++ else inserted++
-            } catch (e: Exception) {
-                errors += "Línea ${idx + 2}: ${e.message}"
+        val barcodes = already.mapNotNullTo(HashSet()) { it.barcode }
+        val names = already.mapTo(HashSet()) { it.name.lowercase() }
+        ProductCsvImporter.forEachRow(TabularFileReader.rowSource(context.contentResolver, fileUri)) { r ->
+            val exists = when {
+                !r.barcode.isNullOrBlank() -> r.barcode in barcodes
+                else                       -> r.name.lowercase() in names
             }
+            if (exists) updated++ else inserted++
         }
-        ImportResult(inserted, updated, errors)
+        ImportResult(inserted, updated)
     }
 
     /**
@@ -343,7 +412,6 @@ class ProductRepository(
         fileUri: Uri,
         strategy: ImportStrategy
     ): ImportResult = withContext(io) {
-        val rows = ProductCsvImporter.parseFile(context.contentResolver, fileUri)
         val allowMasterCatalogSync = isCsvOrXlsxImport(context, fileUri)
         if (!allowMasterCatalogSync) {
             Log.i(
@@ -351,241 +419,136 @@ class ProductRepository(
                 "Importación sin sync CROSS: solo se permite carga maestra vía CSV/XLSX"
             )
         }
-        importProducts(rows, strategy, allowMasterCatalogSync = allowMasterCatalogSync)
+        importProducts(
+            TabularFileReader.rowSource(context.contentResolver, fileUri),
+            strategy,
+            allowMasterCatalogSync = allowMasterCatalogSync
+        )
     }
 
-    suspend fun importProductsFromTable(
-        table: List<List<String>>,
+    /** Igual que [importProductsFromFile] sobre una sección ya abierta (p. ej. de la exportación total). */
+    suspend fun importProductsFromRows(
+        source: RowSource,
         strategy: ImportStrategy
     ): ImportResult = withContext(io) {
-        val rows = ProductCsvImporter.parseTable(table)
-        importProducts(rows, strategy, allowMasterCatalogSync = false)
+        importProducts(source, strategy, allowMasterCatalogSync = false)
     }
 
     suspend fun importCrossCatalogFromFile(
         context: Context,
         fileUri: Uri
     ): ImportResult = withContext(io) {
-        val rows = ProductCsvImporter.parseFile(context.contentResolver, fileUri)
         var synced = 0
         val errors = mutableListOf<String>()
-
-        rows.forEachIndexed { index, row ->
-            val barcode = row.barcode?.trim().orEmpty()
-            val name = row.name.trim()
-            val brand = row.brand?.trim()?.takeIf { it.isNotBlank() }
-            when {
-                barcode.isBlank() -> errors += "Línea ${index + 2}: falta código de barras"
-                name.isBlank() -> errors += "Línea ${index + 2}: falta nombre"
-                else -> {
-                    runCatching {
-                        syncToCrossCatalog(barcode = barcode, name = name, brand = brand)
-                    }.onSuccess { syncedOk ->
-                        if (syncedOk) {
-                            synced += 1
-                        } else {
-                            errors += "Línea ${index + 2}: no se pudo sincronizar CROSS (revisá permisos admin)"
+        var lineNumber = 1
+
+        forEachChunk<ProductCsvImporter.Row>(
+            chunkSize = IMPORT_WRITE_CHUNK,
+            read = { onRow -> ProductCsvImporter.forEachRow(TabularFileReader.rowSource(context.contentResolver, fileUri), onRow) },
+            dispatcher = io
+        ) { rows ->
+            rows.forEach { row ->
+                lineNumber++
+                val barcode = row.barcode?.trim().orEmpty()
+                val name = row.name.trim()
+                val brand = row.brand?.trim()?.takeIf { it.isNotBlank() }
+                when {
+                    barcode.isBlank() -> errors += "Línea $lineNumber: falta código de barras"
+                    name.isBlank() -> errors += "Línea $lineNumber: falta nombre"
+                    else -> {
+                        runCatching {
+                            syncToCrossCatalog(barcode = barcode, name = name, brand = brand)
+                        }.onSuccess { syncedOk ->
+                            if (syncedOk) {
+                                synced += 1
+                            } else {
+                                errors += "Línea $lineNumber: no se pudo sincronizar CROSS (revisá permisos admin)"
+                            }
+                        }.onFailure { error ->
+                            errors += "Línea $lineNumber: ${error.message ?: "error al sincronizar CROSS"}"
                         }
-                    }.onFailure { error ->
-                        errors += "Línea ${index + 2}: ${error.message ?: "error al sincronizar CROSS"}"
                     }
                 }
             }
+            true
         }
 
         ImportResult(inserted = synced, updated = 0, errors = errors)
     }
 
+    /**
+     * Importa [source] de a [IMPORT_WRITE_CHUNK] filas: cada parte se planifica contra el
+     * catálogo precargado (más lo que escribieron las partes anteriores), se escribe en una
+     * transacción y se sube, sin tener el archivo completo en memoria. Si una parte falla se
+     * deja de leer y se informa desde qué línea no se importó.
+     */
     private suspend fun importProducts(
-        rows: List<ProductCsvImporter.Row>,
+        source: RowSource,
         strategy: ImportStrategy,
         allowMasterCatalogSync: Boolean
     ): ImportResult {
+        val now = System.currentTimeMillis()
+        val codes = codeAllocator.block(prefix = resolveSkuPrefix(), expected = IMPORT_WRITE_CHUNK)
+        val planner = ProductImportPlanner(
+            existing = productDao.getAllOnce(),
+            codes = codes,
+            pricing = loadPricingInputs()
+        )
         var inserted = 0
         var updated = 0
+        var saved = 0
         val errors = mutableListOf<String>()
-        val touchedIds = mutableSetOf<Int>()
-        val now = System.currentTimeMillis()
-        val skuPrefix = resolveSkuPrefix()
-        val seenCodes = mutableSetOf<String>()
-        val interactionEvents = mutableListOf<StockInteractionEvent>()
-        val crossCatalogCandidates = mutableMapOf<String, Pair<String, String?>>()
+        var firstLine = 2
 
-        db.withTransaction {
-            rows.forEachIndexed { idx, r ->
-                try {
-                    val lineNumber = idx + 2
-                    val normalizedCode = r.code?.trim()?.takeIf { it.isNotBlank() }
-                    if (normalizedCode != null && !seenCodes.add(normalizedCode)) {
-                        errors += "Línea $lineNumber: el código \"$normalizedCode\" está duplicado en el archivo."
-                        return@forEachIndexed
-                    }
-                    val existing = when {
-                        !r.barcode.isNullOrBlank() -> productDao.getByBarcodeOnce(r.barcode!!)
-                        else                       -> productDao.getByNameOnce(r.name)
-                    }
-                    if (normalizedCode != null) {
-                        val codeOwner = productDao.getByCodeOnce(normalizedCode)
-                        if (codeOwner != null && (existing == null || codeOwner.id != existing.id)) {
-                            errors += "Línea $lineNumber: el código \"$normalizedCode\" ya existe."
-                            return@forEachIndexed
-                        }
-                    }
-
-                    if (existing == null) {
-                        val p = ProductEntity(
-                            code = normalizedCode,
-                            barcode = r.barcode,
-                            name = r.name,
-                            purchasePrice = r.purchasePrice,
-                            listPrice = r.listPrice,
-                            cashPrice = r.cashPrice,
-                            transferPrice = r.transferPrice,
-                            transferNetPrice = r.transferNetPrice,
-                            mlPrice = r.mlPrice,
-                            ml3cPrice = r.ml3cPrice,
-                            ml6cPrice = r.ml6cPrice,
-                            autoPricing = false,
-                            quantity = max(0, r.quantity),
-                            description = r.description,
-                            imageUrl = r.imageUrl,
-                            imageUrls = r.imageUrls,
-                            categoryId = null,                      // si querés, usar ensureCategoryId(r.category)
-                            providerId = null,                      // si en el futuro sumamos CSV con proveedor
-                            providerName = r.providerName,
-                            providerSku = r.providerSku,
-                            brand = r.brand,
-                            parentCategory = r.parentCategory,
-                            category = r.category,
-                            color = r.color,
-                            sizes = r.sizes,
-                            minStock = r.minStock?.let { max(0, it) },
-                            updatedAt = r.updatedAt ?: LocalDate.now()
-                        )
-                        val priced = applyAutoPricing(p, existing)
-                        val prepared = ensureAutoCodes(priced, prefix = skuPrefix)
-                        assertCodeAvailable(prepared.code, currentId = null)
-                        val id = productDao.insert(prepared).toInt()
-                        touchedIds += id
-                        if (r.imageUrls.isNotEmpty()) {
-                            replaceProductImages(id, r.imageUrls)
-                        }
-                        if (prepared.quantity != 0) {
-                            stockMovementDao.insert(
-                                StockMovementEntity(
-                                    productId = id,
-                                    delta = prepared.quantity,
-                                    reason = StockMovementReasons.CSV_IMPORT,
-                                    ts = Instant.ofEpochMilli(now),
-                                    note = "Importación CSV (nuevo)"
-                                )
-                            )
-                        }
-                        syncOutboxDao.upsert(
-                            SyncOutboxEntity(
-                                entityType = SyncEntityType.PRODUCT.storageKey,
-                                entityId = id.toLong(),
-                                createdAt = now
-                            )
-                        )
-                        inserted++
-                        interactionEvents += StockInteractionEvent(
-                            action = "PRODUCT_CREATED",
-                            productId = id,
-                            productName = prepared.name,
-                            delta = prepared.quantity,
-                            reason = StockMovementReasons.CSV_IMPORT,
-                            note = "Importación CSV (nuevo)",
-                            source = "CSV_IMPORT",
-                            occurredAtEpochMs = now
-                        )
-                        prepared.barcode?.trim()?.takeIf { it.isNotBlank() }?.let { barcode ->
-                            crossCatalogCandidates[barcode] = prepared.name to prepared.brand
-                        }
-                    } else {
-                        val newQty = existing.quantity + max(0, r.quantity)
-                        val merged = existing.copy(
-                            code        = normalizedCode ?: existing.code,
-                            barcode     = r.barcode ?: existing.barcode,
-                            name        = r.name.ifBlank { existing.name },
-                            purchasePrice = r.purchasePrice ?: existing.purchasePrice,
-                            listPrice   = r.listPrice ?: existing.listPrice,
-                            cashPrice   = r.cashPrice ?: existing.cashPrice,
-                            transferPrice = r.transferPrice ?: existing.transferPrice,
-                            transferNetPrice = r.transferNetPrice ?: existing.transferNetPrice,
-                            mlPrice     = r.mlPrice ?: existing.mlPrice,
-                            ml3cPrice   = r.ml3cPrice ?: existing.ml3cPrice,
-                            ml6cPrice   = r.ml6cPrice ?: existing.ml6cPrice,
-                            autoPricing = existing.autoPricing,
-                            quantity    = newQty,
-                            description = r.description ?: existing.description,
-                            imageUrl    = r.imageUrl ?: existing.imageUrl,
-                            imageUrls   = if (r.imageUrls.isEmpty()) existing.imageUrls else r.imageUrls,
-                            parentCategory = r.parentCategory ?: existing.parentCategory,
-                            category    = r.category ?: existing.category,
-                            providerName = r.providerName ?: existing.providerName,
-                            providerSku  = r.providerSku ?: existing.providerSku,
-                            brand       = r.brand ?: existing.brand,
-                            color       = r.color ?: existing.color,
-                            sizes       = if (r.sizes.isEmpty()) existing.sizes else r.sizes,
-                            minStock    = r.minStock ?: existing.minStock,
-                            updatedAt   = r.updatedAt ?: LocalDate.now()
-                        )
-                        val priced = applyAutoPricing(merged, existing)
-                        assertCodeAvailable(priced.code, currentId = existing.id)
-                        productDao.update(priced)
-                        touchedIds += existing.id
-                        if (r.imageUrls.isNotEmpty()) {
-                            replaceProductImages(existing.id, r.imageUrls)
-                        }
-                        val delta = newQty - existing.quantity
-                        if (delta != 0) {
-                            stockMovementDao.insert(
-                                StockMovementEntity(
-                                    productId = existing.id,
-                                    delta = delta,
-                                    reason = StockMovementReasons.CSV_IMPORT,
-                                    ts = Instant.ofEpochMilli(now),
-                                    note = if (r.markedAsUpdate) "Importación CSV (actualización marcada)" else "Importación CSV (actualización automática)"
-                                )
-                            )
-                        }
-                        syncOutboxDao.upsert(
-                            SyncOutboxEntity(
-                                entityType = SyncEntityType.PRODUCT.storageKey,
-                                entityId = existing.id.toLong(),
-                                createdAt = now
-                            )
-                        )
-                        updated++
-                        interactionEvents += StockInteractionEvent(
-                            action = "PRODUCT_UPDATED",
-                            productId = existing.id,
-                            productName = priced.name,
-                            delta = newQty - existing.quantity,
-                            reason = StockMovementReasons.CSV_IMPORT,
-                            note = if (r.markedAsUpdate) "Importación CSV (actualización marcada)" else "Importación CSV (actualización automática)",
-                            source = "CSV_IMPORT",
-                            occurredAtEpochMs = now
-                        )
-                        priced.barcode?.trim()?.takeIf { it.isNotBlank() }?.let { barcode ->
-                            crossCatalogCandidates[barcode] = priced.name to priced.brand
-                        }
-                    }
-                } catch (e: Exception) {
-                    errors += "Línea ${idx + 2}: ${e.message}"
+        try {
+            forEachChunk<ProductCsvImporter.Row>(
+                chunkSize = IMPORT_WRITE_CHUNK,
+                read = { onRow -> ProductCsvImporter.forEachRow(source, onRow) },
+                dispatcher = io
+            ) { rows ->
+                val plan = planner.planAppend(rows, firstLine)
+                val written = writeImportPlan(plan, now)
+                val bySlot = written.products.associateBy { it.slot }
+                plan.slots.forEach { slot -> planner.settle(slot, bySlot[slot]?.entity) }
+
+                trySyncProductsNow(written.products.map { it.id }, now)
+                saveStockInteractions(written.products.map { it.toInteractionEvent(now) })
+                if (allowMasterCatalogSync) syncImportedToCrossCatalog(written.products)
+
+                errors += plan.errors
+                errors += written.errors
+                saved += written.products.size
+                val failure = written.failure
+                if (failure == null) {
+                    inserted += plan.inserted
+                    updated += plan.updated
+                } else {
+                    // Importación parcial: de esta parte se informa lo que quedó guardado.
+                    inserted += written.products.count { it.slot.isInsert }
+                    updated += written.products.count { !it.slot.isInsert }
+                    errors += "Importación parcial: se guardaron $saved productos; desde la línea " +
+                        "$firstLine no se importó (${failure.describe()})."
                 }
+                firstLine += rows.size
+                failure == null
             }
-            lastCache = productDao.getAllOnce()
+        } finally {
+            codes.releaseUnused()
         }
-        trySyncProductsNow(touchedIds, now)
-        saveStockInteractions(interactionEvents)
-        if (allowMasterCatalogSync) {
-            crossCatalogCandidates.forEach { (barcode, data) ->
-                syncToCrossCatalog(barcode = barcode, name = data.first, brand = data.second)
+        return ImportResult(inserted, updated, errors)
+    }
+
+    private suspend fun syncImportedToCrossCatalog(products: List<ImportedProduct>) {
+        val candidates = mutableMapOf<String, Pair<String, String?>>()
+        products.forEach { product ->
+            val entity = product.entity
+            entity.barcode?.trim()?.takeIf { it.isNotBlank() }?.let { barcode ->
+                candidates[barcode] = entity.name to entity.brand
             }
         }
-        return ImportResult(inserted, updated, errors)
+        candidates.forEach { (barcode, data) ->
+            syncToCrossCatalog(barcode = barcode, name = data.first, brand = data.second)
+        }
     }
 
     /**
@@ -600,6 +563,7 @@ class ProductRepository(
         val importer = ProductCsvImporter(productDao, productImageDao)
         return when (strategy) {
             ImportStrategy.Append -> importer.importAppend(resolver, uri)
+                .also { catalogCache.invalidate() }
             // Si realmente querés "UpsertByBarcode", agregalo al enum:
             // ImportStrategy.UpsertByBarcode -> importer.importUpsertByBarcode(resolver, uri)
             ImportStrategy.Replace -> {
@@ -634,8 +598,8 @@ class ProductRepository(
                 SyncEntityType.PRODUCT.storageKey,
                 listOf(id.toLong())
             )
-            lastCache = productDao.getAllOnce()
         }
+        catalogCache.remove(listOf(id))
         try {
             remote.deleteById(id)
             saveStockInteractions(
@@ -660,100 +624,192 @@ class ProductRepository(
 
     // ---------- Sync manual (pull) ----------
     /**
-     * Descarga todos los productos desde Firestore y actualiza Room.
+     * Descarga desde Firestore los productos cambiados desde el último pull y actualiza Room.
      * Estrategia simple: last-write-wins por updatedAt (LocalDate).
      * Si el remoto no tiene id numérico, se inserta local con id autogenerado.
+     *
+     * Sin watermark previo (o con [fullResync]) baja la colección completa y registra el
+     * cursor; después solo lee por páginas los documentos con `serverUpdatedAt` posterior.
+     *
+     * Productos y tombstones avanzan con un único cursor: los tombstones posteriores al
+     * watermark se aplican (borrado local) y sus ids se excluyen de las páginas, y el
+     * watermark final es el más avanzado de los dos recorridos. Los ecos de pushes de este
+     * dispositivo se descartan (ver [ProductWriteStamps]).
      */
-    suspend fun syncDown(): Int = withContext(io) {
-        val remoteList = remote.listAll()
-        if (remoteList.isEmpty()) {
-            return@withContext 0
-        }
-        try {
-            syncDownIncremental(remoteList)
+    suspend fun syncDown(fullResync: Boolean = false): Int = withContext(io) {
+        val tenantId = tenantProvider.requireTenantId()
+        val productsMark = (if (fullResync) null else watermarks.get(tenantId, SyncEntityType.PRODUCT.storageKey))
+            ?: return@withContext syncDownFull(tenantId)
+
+        val (deletedIds, deletionsEnd) = remote.listDeletedIdsSince(productsMark)
+        var applied = applyRemoteDeletions(deletedIds)
+        val productsEnd = try {
+            remote.forEachChangedPage(productsMark, deletedIds) { page, pageEnd ->
+                if (page.isNotEmpty()) {
+                    applied += syncDownIncremental(page)
+                }
+                watermarks.save(tenantId, SyncEntityType.PRODUCT.storageKey, pageEnd)
+            }
         } catch (t: Throwable) {
-            val mustRestoreFromBackup = t is SQLiteConstraintException ||
-                t.message?.contains("SQLITE_CONSTRAINT", ignoreCase = true) == true
-            if (!mustRestoreFromBackup) {
+            if (!t.isUniqueConstraintViolation()) {
                 throw t
             }
-            Log.e("ProductRepository", "Conflicto de unicidad detectado en syncDown. Se ejecuta restauración completa de stock.", t)
-            restoreStockFromBackup(remoteList)
+            Log.e("ProductRepository", "Conflicto de unicidad en pull incremental. Se reintenta con pull completo.", t)
+            return@withContext syncDownFull(tenantId)
+        }
+        watermarks.save(
+            tenantId,
+            SyncEntityType.PRODUCT.storageKey,
+            FirestoreDeltaReader.latest(listOf(productsMark, productsEnd, deletionsEnd))
+        )
+        applied
+    }
+
+    private suspend fun syncDownFull(tenantId: String): Int {
+        val full = remote.pullAll()
+        val remoteList = full.products
+        val deleted = applyRemoteDeletions(full.deletedIds)
+        val applied = deleted + if (remoteList.isEmpty()) {
+            0
+        } else {
+            try {
+                syncDownIncremental(remoteList)
+            } catch (t: Throwable) {
+                if (!t.isUniqueConstraintViolation()) {
+                    throw t
+                }
+                Log.e("ProductRepository", "Conflicto de unicidad detectado en syncDown. Se ejecuta restauración completa de stock.", t)
+                restoreStockFromBackup(remoteList)
+            }
+        }
+        watermarks.save(
+            tenantId,
+            SyncEntityType.PRODUCT.storageKey,
+            FirestoreDeltaReader.latest(listOf(full.productsCursor, full.deletionsCursor))
+        )
+        return applied
+    }
+
+    /**
+     * Borra en Room los productos con tombstone remoto. Los que tienen cambios locales en
+     * el outbox se conservan: su push vuelve a publicarlos y borra el tombstone.
+     */
+    private suspend fun applyRemoteDeletions(ids: Set<Int>): Int {
+        if (ids.isEmpty()) return 0
+        val deleted = db.withTransaction {
+            val pending = ids.map(Int::toLong).chunked(SQL_IN_CHUNK)
+                .flatMap { chunk -> syncOutboxDao.getByTypeAndIds(SyncEntityType.PRODUCT.storageKey, chunk) }
+                .mapTo(HashSet()) { it.entityId.toInt() }
+            ids.filter { it !in pending && productDao.deleteById(it) > 0 }
         }
+        catalogCache.remove(deleted)
+        return deleted.size
     }
 
+    private fun Throwable.isUniqueConstraintViolation(): Boolean =
+        this is SQLiteConstraintException ||
+            message?.contains("SQLITE_CONSTRAINT", ignoreCase = true) == true
+
+    /**
+     * Aplica una página del pull en tres fases: reconciliación en memoria
+     * ([ProductSyncDownPlanner]), escritura local en una sola transacción corta y, fuera de
+     * la transacción, un único push en lote de los productos que Firestore tiene que
+     * recibir (altas con id remapeado y locales más nuevos). Esos ids quedan en el outbox
+     * dentro de la transacción, así que un push fallido lo reintenta [SyncWorker][com.example.selliaapp.sync.SyncWorker].
+     * Antes de planificar se descartan los ecos de pushes propios.
+     */
     private suspend fun syncDownIncremental(
-        remoteList: List<com.example.selliaapp.data.remote.ProductFirestoreMappers.RemoteProduct>
+        page: List<com.example.selliaapp.data.remote.ProductFirestoreMappers.RemoteProduct>
     ): Int {
-        var applied = 0
+        val now = System.currentTimeMillis()
+        val echoes = writeStamps.ownEchoes(page)
+        val remoteList = if (echoes.isEmpty()) page else page.filterNot { it.entity.id in echoes }
+        syncDownStats = syncDownStats.copy(echoesSkipped = syncDownStats.echoesSkipped + echoes.size)
+        if (remoteList.isEmpty()) return 0
+        var plan = ProductSyncDownPlanner(productDao.getAllOnce()).plan(remoteList)
+        var replanned = false
+        val holdStart = System.nanoTime()
         db.withTransaction {
-            val localById = productDao.getAllOnce().associateByTo(mutableMapOf()) { it.id }
-            val localByBarcode = localById.values
-                .mapNotNull { product -> product.barcode?.takeIf { it.isNotBlank() }?.let { it to product } }
-                .toMap(mutableMapOf())
-            val localByCode = localById.values
-                .mapNotNull { product -> product.code?.takeIf { it.isNotBlank() }?.let { it to product } }
-                .toMap(mutableMapOf())
-
-            for (remoteProduct in remoteList) {
-                val r = remoteProduct.entity.copy(
-                    code = remoteProduct.entity.code?.trim()?.ifBlank { null },
-                    barcode = remoteProduct.entity.barcode?.trim()?.ifBlank { null }
-                )
-                val remoteImages = remoteProduct.imageUrls
-                val local = localById[r.id]
-                    ?: r.barcode?.let { localByBarcode[it] }
-                    ?: r.code?.let { localByCode[it] }
-                if (local == null) {
-                    val newId = productDao.upsert(r.copy(id = 0))
-                    if (remoteImages.isNotEmpty()) {
-                        replaceProductImages(newId, remoteImages)
-                    }
-                    applied++
-                    if (r.id != newId) remote.upsert(r.copy(id = newId), remoteImages)
-
-                    productDao.getById(newId)?.also { saved ->
-                        localById[saved.id] = saved
-                        saved.barcode?.let { localByBarcode[it] = saved }
-                        saved.code?.let { localByCode[it] = saved }
-                    }
-                } else {
-                    if (r.updatedAt >= local.updatedAt) {
-                        val conflictingCode = r.code
-                            ?.let { remoteCode -> localByCode[remoteCode] }
-                            ?.takeIf { candidate -> candidate.id != local.id }
-                        val conflictingBarcode = r.barcode
-                            ?.let { remoteBarcode -> localByBarcode[remoteBarcode] }
-                            ?.takeIf { candidate -> candidate.id != local.id }
-
-                        val merged = r.copy(
-                            id = local.id,
-                            code = if (conflictingCode != null) local.code else r.code,
-                            barcode = if (conflictingBarcode != null) local.barcode else r.barcode
+            // Si algo (una venta, una edición) tocó los productos entre la lectura y el lock,
+            // se vuelve a planificar con el estado actual, ya dentro de la transacción.
+            if (!isUnchanged(plan.originals)) {
+                plan = ProductSyncDownPlanner(productDao.getAllOnce()).plan(remoteList)
+                replanned = true
+            }
+            if (plan.updates.isNotEmpty()) {
+                productDao.updateAll(plan.updates.map { it.entity })
+            }
+            if (plan.inserts.isNotEmpty()) {
+                val ids = productDao.insertAll(plan.inserts.map { it.entity })
+                plan.inserts.forEachIndexed { index, slot -> slot.assignId(ids[index].toInt()) }
+            }
+            replaceProductImages(
+                (plan.updates + plan.inserts)
+                    .mapNotNull { slot -> slot.imageUrls?.let { slot.entity.id to it } }
+                    .toMap()
+            )
+            val pushIds = syncDownPushIds(plan)
+            if (pushIds.isNotEmpty()) {
+                syncOutboxDao.upsertAll(
+                    pushIds.map { id ->
+                        SyncOutboxEntity(
+                            entityType = SyncEntityType.PRODUCT.storageKey,
+                            entityId = id.toLong(),
+                            createdAt = now
                         )
-
-                        productDao.update(merged)
-                        if (remoteImages.isNotEmpty()) {
-                            replaceProductImages(local.id, remoteImages)
-                        }
-                        applied++
-
-                        productDao.getById(local.id)?.also { saved ->
-                            localById[saved.id] = saved
-                            localByBarcode.entries.removeAll { (_, value) -> value.id == saved.id }
-                            localByCode.entries.removeAll { (_, value) -> value.id == saved.id }
-                            saved.barcode?.let { localByBarcode[it] = saved }
-                            saved.code?.let { localByCode[it] = saved }
-                        }
-                    } else {
-                        remote.upsert(local, loadProductImages(local.id))
                     }
-                }
+                )
             }
         }
-        return applied
+        val holdMs = (System.nanoTime() - holdStart) / 1_000_000
+        val pushIds = syncDownPushIds(plan)
+        recordSyncDownPage(plan, pushIds.size, holdMs, replanned)
+
+        refreshCache((plan.updates + plan.inserts).map { it.entity.id })
+        trySyncProductsNow(pushIds, now)
+        return plan.applied
     }
 
+    private fun syncDownPushIds(plan: ProductSyncDownPlanner.Plan): List<Int> =
+        (plan.inserts.filter { it.needsRemoteRemap } + plan.writeBacks)
+            .map { it.entity.id }
+            .filter { it > 0 }
+            .distinct()
+
+    private suspend fun isUnchanged(originals: List<ProductEntity>): Boolean {
+        if (originals.isEmpty()) return true
+        val current = originals.map { it.id }.chunked(SQL_IN_CHUNK)
+            .flatMap { chunk -> productDao.getByIds(chunk) }
+            .associateBy { it.id }
+        return originals.all { current[it.id] == it }
+    }
+
+    private fun recordSyncDownPage(
+        plan: ProductSyncDownPlanner.Plan,
+        pushed: Int,
+        holdMs: Long,
+        replanned: Boolean
+    ) {
+        val previous = syncDownStats
+        syncDownStats = previous.copy(
+            pages = previous.pages + 1,
+            applied = previous.applied + plan.applied,
+            writeBacks = previous.writeBacks + pushed,
+            replans = previous.replans + if (replanned) 1 else 0,
+            lastHoldMs = holdMs,
+            maxHoldMs = maxOf(previous.maxHoldMs, holdMs),
+            totalHoldMs = previous.totalHoldMs + holdMs
+        )
+        Log.d(
+            "ProductRepository",
+            "syncDown página: ${plan.applied} aplicados (${plan.inserts.size} altas), " +
+                "$pushed a Firestore, lock ${holdMs}ms${if (replanned) " (replanificado)" else ""}"
+        )
+    }
+
+    /** Métricas del pull incremental desde que arrancó el proceso. */
+    fun syncDownStats(): ProductSyncDownStats = syncDownStats
+
     private suspend fun restoreStockFromBackup(
         remoteList: List<com.example.selliaapp.data.remote.ProductFirestoreMappers.RemoteProduct>
     ): Int {
@@ -783,18 +839,19 @@ class ProductRepository(
 
         db.withTransaction {
             productDao.deleteAll()
-            syncOutboxDao.deleteByTypeAndIds(
-                SyncEntityType.PRODUCT.storageKey,
-                syncOutboxDao.getByType(SyncEntityType.PRODUCT.storageKey).map { it.entityId }
-            )
+            syncOutboxDao.deleteByType(SyncEntityType.PRODUCT.storageKey)
+            // Ids nuevos: las marcas de push ya no corresponden a estos productos.
+            writeStamps.clear()
+            val restoredImages = LinkedHashMap<Int, List<String>>()
             uniqueBackup.forEach { remoteProduct ->
                 val restoredId = productDao.insert(remoteProduct.entity.copy(id = 0)).toInt()
                 if (remoteProduct.imageUrls.isNotEmpty()) {
-                    replaceProductImages(restoredId, remoteProduct.imageUrls)
+                    restoredImages[restoredId] = remoteProduct.imageUrls
                 }
             }
-            lastCache = productDao.getAllOnce()
+            replaceProductImages(restoredImages)
         }
+        catalogCache.invalidate()
         return uniqueBackup.size
     }
     // ---------- WRAPPERS que espera la UI / ViewModel ----------
@@ -820,12 +877,15 @@ class ProductRepository(
 
     /** Obtener producto por código de barras. */
     suspend fun getByBarcodeOrNull(barcode: String): ProductEntity? = withContext(io) {
-        val product = productDao.getByBarcodeOnce(barcode) ?: return@withContext null
-        product.copy(imageUrls = loadProductImages(product.id))
+        catalogCache.getByBarcode(barcode)
+            ?: readThrough { productDao.getByBarcodeWithImages(barcode) }
     }
 
     /** Obtener producto por código interno. */
-    suspend fun getByCodeOrNull(code: String): ProductEntity? = productDao.getByCodeOnce(code)
+    suspend fun getByCodeOrNull(code: String): ProductEntity? = withContext(io) {
+        catalogCache.getByCode(code)
+            ?: readThrough { productDao.getByCodeWithImages(code) }
+    }
 
     suspend fun getGlobalBarcodeMatch(barcode: String): IProductRepository.GlobalBarcodeMatch? = withContext(io) {
         runCatching { crossCatalogRemote.findByBarcode(barcode) }
@@ -847,19 +907,14 @@ class ProductRepository(
 
     /** (Opcional) Obtener por nombre, por compatibilidad con flujos antiguos. */
     suspend fun getByNameOrNull(name: String): ProductEntity? = withContext(io) {
-        val product = productDao.getByNameOnce(name) ?: return@withContext null
-        product.copy(imageUrls = loadProductImages(product.id))
+        productDao.getByNameWithImages(name)?.toEntity()
     }
 
     // ---------- Paging (expuesto para pantallas que lo necesiten) ----------
     fun pagingSearchFlow(query: String): Flow<PagingData<ProductEntity>> = pagingSearch(query)
 
-    fun getProducts(): Flow<List<ProductEntity>> =
-        observeAll()
-            .map { list ->
-                lastCache = list
-                list
-            }
+    /** El cache se completa desde [cachedOrEmpty]; cada emisión de Room no lo reemplaza. */
+    fun getProducts(): Flow<List<ProductEntity>> = observeAll()
 
     fun observeStockMovements(productId: Int, limit: Int = 20): Flow<List<StockMovementWithProduct>> =
         stockMovementDao.observeByProductDetailed(productId, limit)
@@ -872,71 +927,184 @@ class ProductRepository(
         changedBy: String = "System",
         source: String = "PRICING_CONFIG"
     ): Int = withContext(io) {
+        recalculateAutoPricing(reason, changedBy, source, skipIfUnchanged = false).updated
+    }
+
+    /**
+     * Recálculo periódico ([com.example.selliaapp.sync.PricingRecalcWorker]): si la huella
+     * de la configuración coincide con la última aplicada, no lee el catálogo.
+     */
+    suspend fun recalculateAutoPricingIfConfigChanged(): PricingRecalcReport = withContext(io) {
+        recalculateAutoPricing(
+            reason = "Pricing config updated",
+            changedBy = "System",
+            source = "PRICING_CONFIG",
+            skipIfUnchanged = true
+        )
+    }
+
+    /**
+     * Carga la configuración una vez, calcula los precios en paralelo fuera de la
+     * transacción y escribe en transacciones de [PRICING_WRITE_CHUNK] productos. Antes de
+     * escribir relee cada lote y aplica los precios nuevos sobre la fila vigente, así una
+     * venta que solo tocó el stock no se pisa ni se saltea. Si lo que cambió fueron los datos
+     * de pricing (compra, auto pricing o precios), el producto se deja como está y la corrida
+     * no se registra como hecha: la próxima vuelve a evaluarlo aunque la configuración no cambie.
+     */
+    private suspend fun recalculateAutoPricing(
+        reason: String,
+        changedBy: String,
+        source: String,
+        skipIfUnchanged: Boolean
+    ): PricingRecalcReport {
+        val startedAt = System.nanoTime()
+        val inputs = loadPricingInputs()
+        val fingerprint = PricingFingerprint.of(inputs)
+        if (skipIfUnchanged && fingerprint == pricingRecalcState.lastFingerprint()) {
+            return PricingRecalcReport(
+                skipped = true,
+                scanned = 0,
+                updated = 0,
+                elapsedMs = (System.nanoTime() - startedAt) / 1_000_000,
+                skippedRuns = pricingRecalcState.recordSkippedRun()
+            )
+        }
+
+        val candidates = productDao.getAutoPricedOnce()
+        val repriced = withContext(Dispatchers.Default) {
+            candidates.chunked(PRICING_CALC_CHUNK).map { chunk ->
+                async {
+                    chunk.mapNotNull { product ->
+                        val purchasePrice = product.purchasePrice ?: return@mapNotNull null
+                        val priced = AutoPricing.withCalculatedPrices(product, purchasePrice, inputs)
+                        if (priced == product) null else product to priced
+                    }
+                }
+            }.awaitAll().flatten()
+        }
+
         val now = System.currentTimeMillis()
+        val today = LocalDate.now()
         val updatedIds = mutableListOf<Int>()
-        val priceAudits = mutableListOf<ProductPriceAuditEntity>()
         val interactionEvents = mutableListOf<StockInteractionEvent>()
-        db.withTransaction {
-            val all = productDao.getAllOnce()
-            all.forEach { product ->
-                if (!product.autoPricing || product.purchasePrice == null) return@forEach
-                val priced = applyAutoPricing(product, product, force = true)
-                if (priced != product) {
-                    val listChanged = priced.listPrice != product.listPrice
-                    val cashChanged = priced.cashPrice != product.cashPrice
-                    val transferChanged = priced.transferPrice != product.transferPrice
-                    val mlChanged = priced.mlPrice != product.mlPrice
-                    val ml3Changed = priced.ml3cPrice != product.ml3cPrice
-                    val ml6Changed = priced.ml6cPrice != product.ml6cPrice
-                    if (listChanged || cashChanged || transferChanged || mlChanged || ml3Changed || ml6Changed) {
-                        priceAudits += ProductPriceAuditEntity(
-                            productId = product.id,
-                            productName = product.name,
-                            purchasePrice = product.purchasePrice,
-                            oldListPrice = product.listPrice,
-                            newListPrice = priced.listPrice,
-                            oldCashPrice = product.cashPrice,
-                            newCashPrice = priced.cashPrice,
-                            oldTransferPrice = product.transferPrice,
-                            newTransferPrice = priced.transferPrice,
-                            oldMlPrice = product.mlPrice,
-                            newMlPrice = priced.mlPrice,
-                            oldMl3cPrice = product.ml3cPrice,
-                            newMl3cPrice = priced.ml3cPrice,
-                            oldMl6cPrice = product.ml6cPrice,
-                            newMl6cPrice = priced.ml6cPrice,
-                            reason = reason,
-                            changedBy = changedBy,
-                            source = source,
-                            changedAt = Instant.ofEpochMilli(now)
-                        )
-                        interactionEvents += StockInteractionEvent(
-                            action = "PRODUCT_PRICE_RECALCULATED",
-                            productId = product.id,
-                            productName = product.name,
-                            delta = 0,
-                            reason = StockMovementReasons.PRICING_RECALC,
-                            note = "Lista ${product.listPrice}→${priced.listPrice}, Efectivo ${product.cashPrice}→${priced.cashPrice}",
-                            source = source,
-                            occurredAtEpochMs = now
+        var conflicts = 0
+        repriced.chunked(PRICING_WRITE_CHUNK).forEach { chunk ->
+            db.withTransaction {
+                val current = productDao.getByIds(chunk.map { it.first.id }).associateBy { it.id }
+                val applicable = chunk.mapNotNull { (before, priced) ->
+                    val fresh = current[before.id]?.takeIf { it.samePricingAs(before) }
+                    fresh?.let { it to it.withPricesOf(priced) }
+                }
+                conflicts += chunk.size - applicable.size
+                if (applicable.isEmpty()) return@withTransaction
+                productDao.updateAll(applicable.map { (_, priced) -> priced.copy(updatedAt = today) })
+                val priceChanges = applicable.filter { (before, priced) -> pricesChanged(before, priced) }
+                if (priceChanges.isNotEmpty()) {
+                    productPriceAuditDao.insertAll(
+                        priceChanges.map { (before, priced) -> priceAudit(before, priced, reason, changedBy, source, now) }
+                    )
+                }
+                syncOutboxDao.upsertAll(
+                    applicable.map { (before, _) ->
+                        SyncOutboxEntity(
+                            entityType = SyncEntityType.PRODUCT.storageKey,
+                            entityId = before.id.toLong(),
+                            createdAt = now
                         )
                     }
-                    productDao.update(priced.copy(updatedAt = LocalDate.now()))
-                    updatedIds += product.id
+                )
+                applicable.mapTo(updatedIds) { (before, _) -> before.id }
+                priceChanges.mapTo(interactionEvents) { (before, priced) ->
+                    StockInteractionEvent(
+                        action = "PRODUCT_PRICE_RECALCULATED",
+                        productId = before.id,
+                        productName = before.name,
+                        delta = 0,
+                        reason = StockMovementReasons.PRICING_RECALC,
+                        note = "Lista ${before.listPrice}→${priced.listPrice}, Efectivo ${before.cashPrice}→${priced.cashPrice}",
+                        source = source,
+                        occurredAtEpochMs = now
+                    )
                 }
             }
-            if (priceAudits.isNotEmpty()) {
-                productPriceAuditDao.insertAll(priceAudits)
-            }
-            lastCache = productDao.getAllOnce()
         }
+        refreshCache(updatedIds)
         if (updatedIds.isNotEmpty()) {
             trySyncProductsNow(updatedIds, now)
             saveStockInteractions(interactionEvents)
         }
-        updatedIds.size
+
+        val report = PricingRecalcReport(
+            skipped = false,
+            scanned = candidates.size,
+            updated = updatedIds.size,
+            elapsedMs = (System.nanoTime() - startedAt) / 1_000_000,
+            skippedRuns = pricingRecalcState.skippedRuns()
+        )
+        if (conflicts == 0) {
+            pricingRecalcState.recordRun(fingerprint, report)
+        } else {
+            Log.w("ProductRepository", "Recalculo de precios: $conflicts productos cambiaron durante la corrida")
+        }
+        return report
     }
 
+    /** Mismos datos de pricing que [other]: precio de compra, auto pricing y precios calculados. */
+    private fun ProductEntity.samePricingAs(other: ProductEntity): Boolean =
+        purchasePrice == other.purchasePrice &&
+            autoPricing == other.autoPricing &&
+            transferNetPrice == other.transferNetPrice &&
+            !pricesChanged(other, this)
+
+    /** Esta fila con los precios calculados en [priced] (el resto, p. ej. el stock, queda como está). */
+    private fun ProductEntity.withPricesOf(priced: ProductEntity): ProductEntity = copy(
+        listPrice = priced.listPrice,
+        cashPrice = priced.cashPrice,
+        transferPrice = priced.transferPrice,
+        transferNetPrice = priced.transferNetPrice,
+        mlPrice = priced.mlPrice,
+        ml3cPrice = priced.ml3cPrice,
+        ml6cPrice = priced.ml6cPrice,
+        autoPricing = priced.autoPricing
+    )
+
+    private fun pricesChanged(before: ProductEntity, after: ProductEntity): Boolean =
+        after.listPrice != before.listPrice ||
+            after.cashPrice != before.cashPrice ||
+            after.transferPrice != before.transferPrice ||
+            after.mlPrice != before.mlPrice ||
+            after.ml3cPrice != before.ml3cPrice ||
+            after.ml6cPrice != before.ml6cPrice
+
+    private fun priceAudit(
+        before: ProductEntity,
+        after: ProductEntity,
+        reason: String,
+        changedBy: String,
+        source: String,
+        now: Long
+    ): ProductPriceAuditEntity = ProductPriceAuditEntity(
+        productId = before.id,
+        productName = before.name,
+        purchasePrice = before.purchasePrice,
+        oldListPrice = before.listPrice,
+        newListPrice = after.listPrice,
+        oldCashPrice = before.cashPrice,
+        newCashPrice = after.cashPrice,
+        oldTransferPrice = before.transferPrice,
+        newTransferPrice = after.transferPrice,
+        oldMlPrice = before.mlPrice,
+        newMlPrice = after.mlPrice,
+        oldMl3cPrice = before.ml3cPrice,
+        newMl3cPrice = after.ml3cPrice,
+        oldMl6cPrice = before.ml6cPrice,
+        newMl6cPrice = after.ml6cPrice,
+        reason = reason,
+        changedBy = changedBy,
+        source = source,
+        changedAt = Instant.ofEpochMilli(now)
+    )
+
     /**
      * Aumenta (o disminuye si delta < 0) el stock de un producto identificado por su barcode.
      *
@@ -999,8 +1167,8 @@ class ProductRepository(
                     createdAt = now
                 )
             )
-            lastCache = productDao.getAllOnce()
         }
+        refreshCache(listOf(newId))
         trySyncProductsNow(listOf(newId), now)
         saveStockInteractions(
             listOf(
@@ -1022,19 +1190,8 @@ class ProductRepository(
     private suspend fun ensureAutoCodes(entity: ProductEntity, prefix: String): ProductEntity {
         val existingCode = entity.code?.trim()?.takeIf { it.isNotBlank() }
         val existingBarcode = entity.barcode?.trim()?.takeIf { it.isNotBlank() }
-        var code = existingCode
-        if (code == null) {
-            val offset = prefix.length + 1
-            var next = (productDao.getMaxSequenceForCode(prefix, offset) ?: 0) + 1
-            while (true) {
-                val candidate = "$prefix${next.toString().padStart(6, '0')}"
-                if (productDao.getByCodeOnce(candidate) == null) {
-                    code = candidate
-                    break
-                }
-                next += 1
-            }
-        }
+        // Corre dentro de la transacción del alta: si se revierte, el número vuelve a la secuencia.
+        val code = existingCode ?: codeAllocator.allocate(prefix).single()
         val barcode = existingBarcode ?: code
         return entity.copy(code = code, barcode = barcode)
     }
@@ -1123,10 +1280,10 @@ class ProductRepository(
                         createdAt = now
                     )
                 )
-                lastCache = productDao.getAllOnce()
             }
         }
         if (rows > 0) {
+            refreshCache(listOf(entity.id))
             trySyncProductsNow(listOf(entity.id), now)
             saveStockInteractions(
                 listOf(
@@ -1189,12 +1346,12 @@ class ProductRepository(
                     createdAt = now
                 )
             )
-            lastCache = productDao.getAllOnce()
             success = true
         }
         if (success) {
+            refreshCache(listOf(productId))
             trySyncProductsNow(listOf(productId), now)
-            val productName = productDao.getById(productId)?.name
+            val productName = catalogCache.getById(productId)?.name
             saveStockInteractions(
                 listOf(
                     StockInteractionEvent(
@@ -1216,23 +1373,23 @@ class ProductRepository(
     private suspend fun trySyncProductsNow(ids: Collection<Int>, now: Long) {
         val uniqueIds = ids.mapNotNull { id -> id.takeIf { it > 0 } }.distinct()
         if (uniqueIds.isEmpty()) return
-        val entities = productDao.getByIds(uniqueIds)
-        if (entities.isEmpty()) return
+        // Antes de leer los productos: un cambio posterior deja otra fila y no se confirma acá.
+        val pending = OutboxSnapshot.take(
+            syncOutboxDao,
+            SyncEntityType.PRODUCT.storageKey,
+            uniqueIds.map(Int::toLong)
+        )
+        val rows = uniqueIds.chunked(SQL_IN_CHUNK).flatMap { chunk -> productDao.getByIdsWithImages(chunk) }
+        if (rows.isEmpty()) return
+        val entities = rows.map { it.product }
         try {
-            val imageUrlsByProductId = loadProductImagesByProductId(uniqueIds)
-            remote.upsertAll(entities, imageUrlsByProductId)
-            syncOutboxDao.deleteByTypeAndIds(
-                SyncEntityType.PRODUCT.storageKey,
-                uniqueIds.map(Int::toLong)
-            )
+            val imageUrlsByProductId = rows.associate { row -> row.product.id to row.toEntity().imageUrls }
+            val result = remote.upsertAll(entities, imageUrlsByProductId)
+            pending.acknowledge(result.committedKeys.map(Int::toLong))
+            result.throwIfFailed()
         } catch (t: Throwable) {
             val error = t.message?.take(512) ?: t::class.java.simpleName
-            syncOutboxDao.markAttempt(
-                SyncEntityType.PRODUCT.storageKey,
-                uniqueIds.map(Int::toLong),
-                now,
-                error
-            )
+            pending.markAttempt(uniqueIds.map(Int::toLong), now, error)
             Log.w(
                 "ProductRepository",
                 "Fallo al sincronizar ${uniqueIds.joinToString()} con Firestore",
@@ -1372,40 +1529,66 @@ class ProductRepository(
             }
     }
 
-    private suspend fun loadProductImages(productId: Int): List<String> {
-        val images = productImageDao.getByProductId(productId)
-            .sortedBy { it.position }
-            .map { it.url }
-        return images
+    private suspend fun replaceProductImages(productId: Int, urls: List<String>) {
+        productImageDao.deleteByProductId(productId)
+        val entities = urls.toImageEntities(productId)
+        if (entities.isEmpty()) return
+        productImageDao.insertAll(entities)
     }
 
-    private suspend fun loadProductImagesByProductId(productIds: List<Int>): Map<Int, List<String>> {
-        if (productIds.isEmpty()) return emptyMap()
-        val images = productImageDao.getByProductIds(productIds)
-        return images.groupBy { it.productId }
-            .mapValues { (_, items) -> items.sortedBy { it.position }.map { it.url } }
+    /** Reemplazo en lote: un DELETE ... IN y un INSERT multi-fila por cada [SQL_IN_CHUNK] productos. */
+    private suspend fun replaceProductImages(urlsByProductId: Map<Int, List<String>>) {
+        urlsByProductId.entries.chunked(SQL_IN_CHUNK).forEach { chunk ->
+            productImageDao.deleteByProductIds(chunk.map { it.key })
+            val entities = chunk.flatMap { (productId, urls) -> urls.toImageEntities(productId) }
+            if (entities.isNotEmpty()) productImageDao.insertAll(entities)
+        }
     }
 
-    private suspend fun replaceProductImages(productId: Int, urls: List<String>) {
-        val normalized = urls.map { it.trim() }.filter { it.isNotBlank() }.distinct()
-        productImageDao.deleteByProductId(productId)
-        if (normalized.isEmpty()) return
-        val entities = normalized.mapIndexed { index, url ->
+    private fun List<String>.toImageEntities(productId: Int): List<ProductImageEntity> =
+        map { it.trim() }.filter { it.isNotBlank() }.distinct().mapIndexed { index, url ->
             ProductImageEntity(
                 productId = productId,
                 url = url,
                 position = index
             )
         }
-        productImageDao.insertAll(entities)
+
+    /**
+     * Lee de Room y cachea el resultado con [ProductCatalogCache.fill]: si una escritura
+     * parcheó el cache mientras tanto, la fila leída puede ser anterior y no se guarda.
+     */
+    private suspend inline fun readThrough(read: () -> ProductWithImages?): ProductEntity? {
+        val version = catalogCache.version()
+        return read()?.toEntity()?.also { catalogCache.fill(listOf(it), version) }
     }
 
-    private suspend fun attachImages(products: List<ProductEntity>): List<ProductEntity> {
-        if (products.isEmpty()) return products
-        val imagesById = loadProductImagesByProductId(products.map { it.id })
-        return products.map { product ->
-            product.copy(imageUrls = imagesById[product.id].orEmpty())
-        }
+    /**
+     * Relee de Room solo los productos recién escritos y parchea el cache; los ids que ya
+     * no existen se quitan. Se llama después de la transacción para no cachear un rollback.
+     */
+    private suspend fun refreshCache(ids: Collection<Int>) {
+        val uniqueIds = ids.filter { it > 0 }.distinct()
+        if (uniqueIds.isEmpty()) return
+        val products = uniqueIds.chunked(SQL_IN_CHUNK)
+            .flatMap { chunk -> productDao.getByIdsWithImages(chunk) }
+            .map { it.toEntity() }
+        catalogCache.put(products)
+        val found = products.mapTo(HashSet()) { it.id }
+        catalogCache.remove(uniqueIds.filterNot { it in found })
     }
 
+    private suspend fun refreshStaleCacheEntries() {
+        val stale = catalogCache.staleIds()
+        if (stale.isNotEmpty()) refreshCache(stale)
+    }
+
+    companion object {
+        /** Productos por transacción al escribir una importación. */
+        private const val IMPORT_WRITE_CHUNK = 500
+        /** Productos por tarea de cálculo en [Dispatchers.Default]. */
+        private const val PRICING_CALC_CHUNK = 1_000
+        /** Productos por transacción del recálculo: acota el tiempo que se bloquea la DB. */
+        private const val PRICING_WRITE_CHUNK = 200
+    }
 }
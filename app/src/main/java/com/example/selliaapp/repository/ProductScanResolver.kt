@@ -0,0 +1,192 @@
+package com.example.selliaapp.repository
+
+import androidx.room.InvalidationTracker
+import com.example.selliaapp.data.AppDatabase
+import com.example.selliaapp.data.dao.ProductDao
+import com.example.selliaapp.data.dao.ProductScanKey
+import com.example.selliaapp.data.local.entity.ProductEntity
+import com.example.selliaapp.di.AppModule.IoDispatcher
+import com.example.selliaapp.domain.product.ProductScanIndex
+import com.example.selliaapp.domain.product.ScanValueParser
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Resolución de escaneos para la venta con un [ProductScanIndex] en memoria: un lookup
+ * hash y una lectura del producto (servida por [ProductCatalogCache] casi siempre), en
+ * lugar de hasta tres consultas por cada candidato.
+ *
+ * - El índice se arma la primera vez con una sola consulta de claves (`id, barcode, code`).
+ * - El [InvalidationTracker] de Room avisa de cualquier escritura en `products` y el
+ *   índice se rearma en background; mientras tanto se sigue usando el anterior.
+ * - Con el índice atrasado, un acierto se verifica contra el producto leído y un fallo
+ *   cae a la búsqueda secuencial contra la DB. Con el índice al día, un fallo es
+ *   definitivo y no toca la DB.
+ * - [latencyStats] da p50/p99 de los últimos escaneos.
+ */
+@Singleton
+class ProductScanResolver internal constructor(
+    private val source: Source,
+    private val scope: CoroutineScope,
+    private val nanoTime: () -> Long = System::nanoTime
+) {
+
+    /** Acceso a datos que necesita el resolver (la DB en la app, un fake en tests). */
+    interface Source {
+        suspend fun scanKeys(): List<ProductScanKey>
+        suspend fun byId(id: Int): ProductEntity?
+        suspend fun byBarcode(barcode: String): ProductEntity?
+        suspend fun byCode(code: String): ProductEntity?
+    }
+
+    @Inject constructor(
+        db: AppDatabase,
+        productDao: ProductDao,
+        products: IProductRepository,
+        @IoDispatcher io: CoroutineDispatcher
+    ) : this(
+        source = object : Source {
+            override suspend fun scanKeys() = withContext(io) { productDao.getScanKeys() }
+            override suspend fun byId(id: Int) = products.getById(id)
+            override suspend fun byBarcode(barcode: String) = products.getByBarcodeOrNull(barcode)
+            override suspend fun byCode(code: String) = products.getByCodeOrNull(code)
+        },
+        scope = CoroutineScope(SupervisorJob() + io)
+    ) {
+        invalidationTracker = db.invalidationTracker
+    }
+
+    private var invalidationTracker: InvalidationTracker? = null
+    private val observing = AtomicBoolean(false)
+    private val observer = object : InvalidationTracker.Observer(arrayOf("products")) {
+        override fun onInvalidated(tables: Set<String>) = onProductsChanged()
+    }
+
+    @Volatile private var index: ProductScanIndex? = null
+    private val generation = AtomicLong()
+    private val buildMutex = Mutex()
+    private val rebuildScheduled = AtomicBoolean(false)
+    private val latencies = ScanLatencyRecorder()
+
+    /** Producto para el valor escaneado, o null si no existe. */
+    suspend fun resolve(rawValue: String): ProductEntity? {
+        val start = nanoTime()
+        try {
+            val candidates = ScanValueParser.candidates(rawValue)
+            if (candidates.isEmpty()) return null
+            val current = currentIndex()
+            val upToDate = current.generation == generation.get()
+            val match = current.resolve(candidates)
+            if (match != null) {
+                val product = source.byId(match.id)
+                if (product != null && match.matches(product)) return product
+            } else if (upToDate) {
+                return null
+            }
+            scheduleRebuild()
+            return sequentialLookup(candidates)
+        } finally {
+            latencies.record(nanoTime() - start)
+        }
+    }
+
+    fun latencyStats(): ScanLatencyStats = latencies.snapshot()
+
+    /** Cambió `products`: el índice actual queda atrasado y se rearma en background. */
+    internal fun onProductsChanged() {
+        generation.incrementAndGet()
+        scheduleRebuild()
+    }
+
+    private suspend fun currentIndex(): ProductScanIndex {
+        index?.let { return it }
+        startObserving()
+        return buildMutex.withLock { index ?: rebuild() }
+    }
+
+    private fun startObserving() {
+        val tracker = invalidationTracker ?: return
+        if (observing.compareAndSet(false, true)) tracker.addObserver(observer)
+    }
+
+    /** Se lee la generación antes que las claves: un cambio durante la lectura deja el índice atrasado. */
+    private suspend fun rebuild(): ProductScanIndex {
+        val target = generation.get()
+        return ProductScanIndex.build(source.scanKeys(), target).also { index = it }
+    }
+
+    private fun scheduleRebuild() {
+        if (index == null || !rebuildScheduled.compareAndSet(false, true)) return
+        scope.launch {
+            try {
+                buildMutex.withLock {
+                    while (index?.generation != generation.get()) rebuild()
+                }
+            } catch (c: CancellationException) {
+                throw c
+            } catch (_: Throwable) {
+                // Se reintenta con el próximo escaneo que encuentre el índice atrasado.
+            } finally {
+                rebuildScheduled.set(false)
+            }
+            if (index?.generation != generation.get()) scheduleRebuild()
+        }
+    }
+
+    /** Búsqueda anterior al índice: por candidato, barcode, código e id contra la DB. */
+    private suspend fun sequentialLookup(candidates: List<String>): ProductEntity? {
+        candidates.forEach { candidate ->
+            source.byBarcode(candidate)?.let { return it }
+            source.byCode(candidate)?.let { return it }
+            ScanValueParser.parseProductId(candidate)?.let { id -> source.byId(id)?.let { return it } }
+        }
+        return null
+    }
+}
+
+data class ScanLatencyStats(
+    val count: Int,
+    val p50Ms: Double,
+    val p99Ms: Double
+)
+
+/** Últimas [capacity] latencias de escaneo en un buffer circular. */
+internal class ScanLatencyRecorder(private val capacity: Int = DEFAULT_CAPACITY) {
+    private val samples = LongArray(capacity)
+    private var next = 0
+    private var filled = 0
+
+    @Synchronized
+    fun record(nanos: Long) {
+        samples[next] = nanos
+        next = (next + 1) % capacity
+        if (filled < capacity) filled++
+    }
+
+    @Synchronized
+    fun snapshot(): ScanLatencyStats {
+        if (filled == 0) return ScanLatencyStats(0, 0.0, 0.0)
+        val sorted = samples.copyOf(filled).also { it.sort() }
+        return ScanLatencyStats(
+            count = filled,
+            p50Ms = sorted.percentile(0.50) / 1_000_000.0,
+            p99Ms = sorted.percentile(0.99) / 1_000_000.0
+        )
+    }
+
+    private fun LongArray.percentile(p: Double): Long = this[((size - 1) * p).toInt()]
+
+    companion object {
+        const val DEFAULT_CAPACITY = 512
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.selliaapp.repository
+
+import com.example.selliaapp.data.local.entity.ProductEntity
+import com.example.selliaapp.data.remote.ProductFirestoreMappers
+
+/**
+ * Reconciliación en memoria de una página del pull incremental de productos.
+ *
+ * Aplica last-write-wins por `updatedAt` contra índices precargados (id, barcode, code),
+ * sin tocar Room ni Firestore: el repositorio escribe el [Plan] en una sola transacción
+ * corta y después devuelve a Firestore los productos que lo necesitan.
+ *
+ * Las altas todavía no tienen id local; se indexan por barcode/code, así que un segundo
+ * documento remoto del mismo producto en la página se fusiona sobre el mismo [Slot].
+ */
+internal class ProductSyncDownPlanner(existing: List<ProductEntity>) {
+
+    class Slot internal constructor(
+        /** Versión en DB al planificar; null si es alta. */
+        val original: ProductEntity?,
+        entity: ProductEntity
+    ) {
+        var entity: ProductEntity = entity
+            internal set
+        /** URLs a reemplazar en `product_images`; null si el remoto no trajo imágenes. */
+        var imageUrls: List<String>? = null
+            internal set
+        /** Id del documento remoto que originó el alta (0 si no tenía id numérico). */
+        var remoteId: Int = 0
+            internal set
+
+        val isInsert: Boolean get() = original == null
+
+        /** Fija el id autogenerado por Room después del INSERT. */
+        fun assignId(id: Int) {
+            entity = entity.copy(id = id)
+        }
+
+        /** Un alta cuyo id local no coincide con el del documento remoto se republica con el id nuevo. */
+        val needsRemoteRemap: Boolean get() = isInsert && entity.id != 0 && remoteId != entity.id
+    }
+
+    data class Plan(
+        /** Productos existentes a actualizar, en el orden en que se tocaron. */
+        val updates: List<Slot>,
+        /** Altas, en el orden de la página remota. */
+        val inserts: List<Slot>,
+        /** Productos locales más nuevos que su documento remoto. */
+        val writeBacks: List<Slot>,
+        val applied: Int
+    ) {
+        /** Versiones leídas al planificar; si alguna cambió antes de escribir, el plan está vencido. */
+        val originals: List<ProductEntity>
+            get() = (updates + writeBacks).mapNotNull { it.original }.distinctBy { it.id }
+    }
+
+    private val byId = HashMap<Int, Slot>()
+    private val byBarcode = HashMap<String, Slot>()
+    private val byCode = HashMap<String, Slot>()
+
+    init {
+        existing.forEach { product ->
+            val slot = Slot(product, product)
+            byId[product.id] = slot
+            index(slot)
+        }
+    }
+
+    fun plan(remoteList: List<ProductFirestoreMappers.RemoteProduct>): Plan {
+        val updates = LinkedHashSet<Slot>()
+        val inserts = mutableListOf<Slot>()
+        val writeBacks = LinkedHashSet<Slot>()
+        var applied = 0
+
+        for (remoteProduct in remoteList) {
+            val r = remoteProduct.entity.copy(
+                code = remoteProduct.entity.code?.trim()?.ifBlank { null },
+                barcode = remoteProduct.entity.barcode?.trim()?.ifBlank { null }
+            )
+            val remoteImages = remoteProduct.imageUrls
+            val slot = byId[r.id]
+                ?: r.barcode?.let { byBarcode[it] }
+                ?: r.code?.let { byCode[it] }
+
+            if (slot == null) {
+                val inserted = Slot(null, r.copy(id = 0)).apply {
+                    remoteId = r.id
+                    if (remoteImages.isNotEmpty()) imageUrls = remoteImages
+                }
+                index(inserted)
+                inserts += inserted
+                applied++
+            } else if (r.updatedAt >= slot.entity.updatedAt) {
+                val conflictingCode = r.code?.let { byCode[it] }?.takeIf { it !== slot }
+                val conflictingBarcode = r.barcode?.let { byBarcode[it] }?.takeIf { it !== slot }
+                val merged = r.copy(
+                    id = slot.entity.id,
+                    code = if (conflictingCode != null) slot.entity.code else r.code,
+                    barcode = if (conflictingBarcode != null) slot.entity.barcode else r.barcode
+                )
+                unindex(slot)
+                slot.entity = merged
+                if (remoteImages.isNotEmpty()) slot.imageUrls = remoteImages
+                index(slot)
+                if (!slot.isInsert) updates += slot
+                applied++
+            } else {
+                writeBacks += slot
+            }
+        }
+        return Plan(updates.toList(), inserts, writeBacks.toList(), applied)
+    }
+
+    private fun index(slot: Slot) {
+        slot.entity.barcode?.let { byBarcode[it] = slot }
+        slot.entity.code?.let { byCode[it] = slot }
+    }
+
+    private fun unindex(slot: Slot) {
+        slot.entity.barcode?.let { if (byBarcode[it] === slot) byBarcode.remove(it) }
+        slot.entity.code?.let { if (byCode[it] === slot) byCode.remove(it) }
+    }
+}
+
+/** Métricas acumuladas del pull incremental: cuánto tiempo se retuvo el lock de escritura. */
+data class ProductSyncDownStats(
+    val pages: Int = 0,
+    val applied: Int = 0,
+    val writeBacks: Int = 0,
+    val replans: Int = 0,
+    val lastHoldMs: Long = 0,
+    val maxHoldMs: Long = 0,
+    val totalHoldMs: Long = 0,
+    /** Documentos descartados por ser eco de un push de este dispositivo. */
+    val echoesSkipped: Int = 0
+) {
+    val averageHoldMs: Double get() = if (pages == 0) 0.0 else totalHoldMs.toDouble() / pages
+}
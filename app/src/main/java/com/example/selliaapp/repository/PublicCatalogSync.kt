@@ -0,0 +1,160 @@
+package com.example.selliaapp.repository
+
+import com.example.selliaapp.data.dao.PublicCatalogDao
+import com.example.selliaapp.data.local.entity.PublicCatalogProductEntity
+import com.example.selliaapp.data.remote.FirestoreDeltaReader
+import com.example.selliaapp.sync.SyncWatermarkStore
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.FieldPath
+import com.google.firebase.firestore.FirebaseFirestore
+import com.google.firebase.firestore.Query
+import kotlinx.coroutines.tasks.await
+import java.util.concurrent.TimeUnit
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Copia local (`public_catalog_products`) de `tenants/{storeId}/public_products`.
+ *
+ * - Sin watermark se recorre toda la colección por documentId y se borra lo que ya no está.
+ * - Después solo se leen los documentos con `publicUpdatedAt` posterior al watermark. Las
+ *   bajas llegan por esa misma consulta: la función de publicación deja una lápida
+ *   (`publicStatus: "deleted"`) en lugar de borrar el documento.
+ * - Las lápidas se purgan en el servidor a los [PUBLIC_TOMBSTONE_RETENTION_MILLIS]; si el
+ *   último pull es más viejo que eso se vuelve al recorrido completo.
+ */
+@Singleton
+class PublicCatalogSync internal constructor(
+    private val source: Source,
+    private val catalogDao: PublicCatalogDao,
+    private val watermarks: SyncWatermarkStore,
+    private val nowMillis: () -> Long = System::currentTimeMillis
+) {
+
+    /** Documento de `public_products` ya mapeado; [deleted] marca una lápida. */
+    data class RemoteDoc(
+        val row: PublicCatalogProductEntity,
+        val deleted: Boolean,
+        val cursor: FirestoreDeltaReader.Cursor?
+    )
+
+    /** Lectura de `public_products` (Firestore en la app, un fake en tests). */
+    interface Source {
+        /** Páginas con `publicUpdatedAt` posterior a [since]; devuelve el último cursor leído. */
+        suspend fun readChangedSince(
+            storeId: String,
+            since: FirestoreDeltaReader.Cursor,
+            onPage: suspend (docs: List<RemoteDoc>, pageEnd: FirestoreDeltaReader.Cursor) -> Unit
+        ): FirestoreDeltaReader.Cursor
+
+        /** Toda la colección por documentId, página por página. */
+        suspend fun readAll(storeId: String, onPage: suspend (docs: List<RemoteDoc>) -> Unit)
+    }
+
+    @Inject constructor(
+        firestore: FirebaseFirestore,
+        catalogDao: PublicCatalogDao,
+        watermarks: SyncWatermarkStore
+    ) : this(
+        source = FirestoreSource(firestore),
+        catalogDao = catalogDao,
+        watermarks = watermarks
+    )
+
+    suspend fun refresh(storeId: String) {
+        val since = watermarks.get(storeId, PUBLIC_CATALOG_WATERMARK)
+        val pulledAt = watermarks.pulledAtMillis(storeId, PUBLIC_CATALOG_WATERMARK)
+        if (since == null || pulledAt == null || nowMillis() - pulledAt >= PUBLIC_TOMBSTONE_RETENTION_MILLIS) {
+            reload(storeId)
+            return
+        }
+        val end = source.readChangedSince(storeId, since) { docs, pageEnd ->
+            val (removed, live) = docs.partition { it.deleted }
+            catalogDao.applyPage(storeId, live.map { it.row }, removed.map { it.row.docId })
+            watermarks.save(storeId, PUBLIC_CATALOG_WATERMARK, pageEnd)
+        }
+        // Aun sin cambios se registra el pull: la antigüedad cuenta desde acá.
+        watermarks.save(storeId, PUBLIC_CATALOG_WATERMARK, end)
+    }
+
+    /**
+     * Recorre toda la colección y borra las filas locales que no existen o son lápidas.
+     * El watermark queda en el `publicUpdatedAt` más alto leído, lápidas incluidas.
+     */
+    private suspend fun reload(storeId: String) {
+        val seen = HashSet<String>()
+        var maxCursor: FirestoreDeltaReader.Cursor? = null
+        source.readAll(storeId) { docs ->
+            val (removed, live) = docs.partition { it.deleted }
+            catalogDao.applyPage(storeId, live.map { it.row }, removed.map { it.row.docId })
+            live.mapTo(seen) { it.row.docId }
+            maxCursor = (listOfNotNull(maxCursor) + docs.mapNotNull { it.cursor })
+                .maxWithOrNull(CURSOR_ORDER)
+        }
+        val removed = catalogDao.docIds(storeId).filterNot { it in seen }
+        catalogDao.applyPage(storeId, emptyList(), removed)
+        watermarks.save(storeId, PUBLIC_CATALOG_WATERMARK, maxCursor)
+    }
+
+    private class FirestoreSource(private val firestore: FirebaseFirestore) : Source {
+
+        override suspend fun readChangedSince(
+            storeId: String,
+            since: FirestoreDeltaReader.Cursor,
+            onPage: suspend (docs: List<RemoteDoc>, pageEnd: FirestoreDeltaReader.Cursor) -> Unit
+        ): FirestoreDeltaReader.Cursor =
+            FirestoreDeltaReader.readChangedSince(publicProducts(storeId), since, orderField = PUBLIC_UPDATED_AT) { docs, pageEnd ->
+                onPage(docs.map { it.toRemoteDoc(storeId) }, pageEnd)
+            } ?: since
+
+        override suspend fun readAll(storeId: String, onPage: suspend (docs: List<RemoteDoc>) -> Unit) {
+            var last: DocumentSnapshot? = null
+            while (true) {
+                var query: Query = publicProducts(storeId).orderBy(FieldPath.documentId()).limit(CATALOG_PAGE_SIZE)
+                last?.let { query = query.startAfter(it) }
+                val docs = query.get().await().documents
+                if (docs.isEmpty()) return
+                onPage(docs.map { it.toRemoteDoc(storeId) })
+                last = docs.last()
+                if (docs.size < CATALOG_PAGE_SIZE) return
+            }
+        }
+
+        private fun publicProducts(storeId: String) =
+            firestore.collection("tenants").document(storeId).collection("public_products")
+
+        private fun DocumentSnapshot.toRemoteDoc(storeId: String) = RemoteDoc(
+            row = PublicCatalogProductEntity(
+                storeId = storeId,
+                docId = id,
+                // La función de publicación guarda `id` como string; versiones previas, como número.
+                productId = when (val rawId = get("id")) {
+                    is Number -> rawId.toInt()
+                    is String -> rawId.toIntOrNull()
+                    else -> null
+                } ?: id.toIntOrNull(),
+                name = getString("name")?.trim().orEmpty(),
+                imageUrl = getString("imageUrl") ?: (get("imageUrls") as? List<*>)?.firstOrNull() as? String,
+                listPrice = getDouble("listPrice"),
+                cashPrice = getDouble("cashPrice"),
+                transferPrice = getDouble("transferPrice"),
+                category = getString("parentCategory"),
+                subcategory = getString("category")
+            ),
+            deleted = getString("publicStatus") == PUBLIC_TOMBSTONE_STATUS,
+            cursor = getTimestamp(PUBLIC_UPDATED_AT)?.let { FirestoreDeltaReader.Cursor(it, id) }
+        )
+    }
+
+    companion object {
+        const val PUBLIC_CATALOG_WATERMARK = "public_catalog"
+        /** Debe coincidir con `PUBLIC_TOMBSTONE_RETENTION_MS` de functions. */
+        val PUBLIC_TOMBSTONE_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(30)
+        private const val CATALOG_PAGE_SIZE = 300L
+        /** Timestamp de servidor que escribe la función que publica `public_products`. */
+        private const val PUBLIC_UPDATED_AT = "publicUpdatedAt"
+        private const val PUBLIC_TOMBSTONE_STATUS = "deleted"
+        private val CURSOR_ORDER =
+            compareBy<FirestoreDeltaReader.Cursor> { it.updatedAt }.thenBy { it.docId }
+    }
+}
@@ -3,13 +3,12 @@ package com.example.selliaapp.repository
 import com.example.selliaapp.data.dao.InvoiceDao
 import com.example.selliaapp.data.dao.ProductDao
 import com.example.selliaapp.data.dao.ReportDataDao
+import com.example.selliaapp.data.dao.SalesRollupDao
 import com.example.selliaapp.data.local.entity.ProductEntity
 import com.example.selliaapp.data.model.ReportPoint
 import com.example.selliaapp.viewmodel.ReportsFilter
-import java.time.Instant
 import java.time.LocalDate
-import java.time.LocalTime
-import java.time.ZoneId
+import java.time.YearMonth
 import java.time.format.DateTimeFormatter
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -44,36 +43,49 @@ data class StockValuationReport(
 class ReportsRepository @Inject constructor(
     private val invoiceDao: InvoiceDao,
     private val productDao: ProductDao,
+    private val salesRollupDao: SalesRollupDao,
     private val reportDataDao: ReportDataDao? = null
 ) {
 
+    /**
+     * Serie de ventas emitidas leída de `sales_rollup`: una fila por día (o por hora con
+     * ventas, o por mes) del rango, sin importar cuántas facturas haya en el historial.
+     * Los buckets son días/horas locales de la tienda.
+     */
     suspend fun getSalesSeries(
         from: LocalDate,
         to: LocalDate,
         bucket: String
     ): List<ReportPoint> {
-        val zone = ZoneId.systemDefault()
-        val startMillis = from.atStartOfDay(zone).toInstant().toEpochMilli()
-        val endMillis = to.atTime(LocalTime.MAX).atZone(zone).toInstant().toEpochMilli()
-
-        return if (bucket == "HOUR") {
-            val rows = invoiceDao.salesGroupedByHour(startMillis, endMillis)
-            val hourFmt = DateTimeFormatter.ofPattern("HH:mm")
-            rows.map { row ->
-                val ldt = Instant.ofEpochMilli(row.hour).atZone(zone).toLocalDateTime()
+        val fromDay = from.toEpochDay()
+        val toDay = to.toEpochDay()
+        salesRollupDao.rebuildIfZoneChanged()
+
+        return when (bucket) {
+            "HOUR" -> {
+                val hourFmt = DateTimeFormatter.ofPattern("HH:mm")
+                salesRollupDao.hourly(fromDay, toDay).map { row ->
+                    val ldt = LocalDate.ofEpochDay(row.epochDay).atTime(row.hour, 0)
+                    ReportPoint(
+                        label = ldt.format(hourFmt),
+                        amount = row.salesTotal,
+                        dateTime = ldt
+                    )
+                }
+            }
+            "MONTH" -> salesRollupDao.monthly(fromDay, toDay).map { row ->
+                val date = LocalDate.of(row.year, row.month, 1)
                 ReportPoint(
-                    label = ldt.format(hourFmt),
-                    amount = row.total,
-                    dateTime = ldt
+                    label = YearMonth.of(row.year, row.month).toString(),
+                    amount = row.salesTotal,
+                    date = date
                 )
             }
-        } else {
-            val rows = invoiceDao.salesGroupedByDay(startMillis, endMillis)
-            rows.map { row ->
-                val date = Instant.ofEpochMilli(row.day).atZone(zone).toLocalDate()
+            else -> salesRollupDao.daily(fromDay, toDay).map { row ->
+                val date = LocalDate.ofEpochDay(row.epochDay)
                 ReportPoint(
                     label = date.toString(),
-                    amount = row.total,
+                    amount = row.salesTotal,
                     date = date
                 )
             }
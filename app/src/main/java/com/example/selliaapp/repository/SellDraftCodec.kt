@@ -0,0 +1,126 @@
+package com.example.selliaapp.repository
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+
+/** Todo lo que se persiste de la venta: la preventa activa y las estacionadas. */
+data class SellDraftBook(
+    val active: SellDraft? = null,
+    val parked: List<ParkedSellDraft> = emptyList()
+)
+
+/** Preventa estacionada para atender a otro cliente y retomarla después. */
+data class ParkedSellDraft(
+    val id: Long,
+    val label: String,
+    val parkedAt: Long,
+    val draft: SellDraft
+)
+
+/**
+ * Formato binario de [SellDraftBook]: cabecera `SD` + versión y campos en orden fijo con
+ * [DataOutputStream]. Los textos van en UTF modificado y los opcionales con un byte de
+ * presencia. Si cambia el layout se sube [VERSION] y se mantiene la lectura de la anterior.
+ */
+internal object SellDraftCodec {
+    private const val MAGIC = 0x5344 // "SD"
+    const val VERSION = 1
+
+    fun encode(book: SellDraftBook): ByteArray {
+        val bytes = ByteArrayOutputStream(256)
+        DataOutputStream(bytes).use { out ->
+            out.writeShort(MAGIC)
+            out.writeByte(VERSION)
+            out.writeBoolean(book.active != null)
+            book.active?.let { writeDraft(out, it) }
+            out.writeShort(book.parked.size)
+            book.parked.forEach { parked ->
+                out.writeLong(parked.id)
+                out.writeUTF(parked.label)
+                out.writeLong(parked.parkedAt)
+                writeDraft(out, parked.draft)
+            }
+        }
+        return bytes.toByteArray()
+    }
+
+    /** @throws IOException si los bytes no son un [SellDraftBook] válido. */
+    fun decode(bytes: ByteArray): SellDraftBook {
+        val input = DataInputStream(ByteArrayInputStream(bytes))
+        if (input.readUnsignedShort() != MAGIC) throw IOException("No es un archivo de preventas")
+        val version = input.readUnsignedByte()
+        if (version != VERSION) throw IOException("Versión de preventas no soportada: $version")
+        val active = if (input.readBoolean()) readDraft(input) else null
+        val parked = List(input.readUnsignedShort()) {
+            ParkedSellDraft(
+                id = input.readLong(),
+                label = input.readUTF(),
+                parkedAt = input.readLong(),
+                draft = readDraft(input)
+            )
+        }
+        return SellDraftBook(active, parked)
+    }
+
+    private fun writeDraft(out: DataOutputStream, draft: SellDraft) {
+        out.writeShort(draft.items.size)
+        draft.items.forEach { item ->
+            out.writeInt(item.productId)
+            out.writeUTF(item.name)
+            writeNullableString(out, item.barcode)
+            out.writeDouble(item.unitPrice)
+            out.writeDouble(item.listPrice)
+            out.writeDouble(item.cashPrice)
+            out.writeDouble(item.transferPrice)
+            out.writeInt(item.qty)
+            out.writeInt(item.maxStock)
+        }
+        out.writeByte(draft.discountPercent.coerceIn(0, 100))
+        out.writeByte(draft.customerDiscountPercent.coerceIn(0, 100))
+        out.writeByte(draft.surchargePercent.coerceIn(0, 100))
+        out.writeUTF(draft.paymentMethod)
+        out.writeUTF(draft.paymentNotes)
+        out.writeUTF(draft.orderType)
+        out.writeBoolean(draft.selectedCustomerId != null)
+        draft.selectedCustomerId?.let { out.writeInt(it) }
+        writeNullableString(out, draft.selectedCustomerName)
+    }
+
+    private fun readDraft(input: DataInputStream): SellDraft {
+        val items = List(input.readUnsignedShort()) {
+            SellDraftItem(
+                productId = input.readInt(),
+                name = input.readUTF(),
+                barcode = readNullableString(input),
+                unitPrice = input.readDouble(),
+                listPrice = input.readDouble(),
+                cashPrice = input.readDouble(),
+                transferPrice = input.readDouble(),
+                qty = input.readInt(),
+                maxStock = input.readInt()
+            )
+        }
+        return SellDraft(
+            items = items,
+            discountPercent = input.readUnsignedByte(),
+            customerDiscountPercent = input.readUnsignedByte(),
+            surchargePercent = input.readUnsignedByte(),
+            paymentMethod = input.readUTF(),
+            paymentNotes = input.readUTF(),
+            orderType = input.readUTF(),
+            selectedCustomerId = if (input.readBoolean()) input.readInt() else null,
+            selectedCustomerName = readNullableString(input)
+        )
+    }
+
+    private fun writeNullableString(out: DataOutputStream, value: String?) {
+        out.writeBoolean(value != null)
+        value?.let { out.writeUTF(it) }
+    }
+
+    private fun readNullableString(input: DataInputStream): String? =
+        if (input.readBoolean()) input.readUTF() else null
+}
@@ -1,109 +1,294 @@
 package com.example.selliaapp.repository
 
+import android.content.ComponentCallbacks2
 import android.content.Context
+import android.content.SharedPreferences
+import android.content.res.Configuration
+import com.example.selliaapp.di.AppModule.IoDispatcher
 import dagger.hilt.android.qualifiers.ApplicationContext
 import org.json.JSONArray
 import org.json.JSONObject
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
 import javax.inject.Inject
 import javax.inject.Singleton
 
 /**
- * Persiste localmente la preventa activa para que no se pierda al salir de la pantalla.
+ * Persiste localmente la preventa activa (y las estacionadas) para que no se pierdan al
+ * salir de la pantalla o si el proceso muere.
+ *
+ * Escritura diferida: cada cambio actualiza la copia en memoria al instante y programa
+ * una escritura del [SellDraftBook] completo en formato [SellDraftCodec]. Una ráfaga de
+ * cambios (escaneos, +/- de cantidad) se junta en una sola escritura:
+ * - se escribe [debounceMillis] después del último cambio,
+ * - pero nunca más de [maxDelayMillis] después del primero sin escribir, así que ante un
+ *   crash se pierde como mucho esa ventana.
+ * - [flush] adelanta la escritura; se llama al pasar la app a segundo plano y al
+ *   destruirse la pantalla de venta.
+ * Estacionar, retomar o descartar una preventa se escribe en el momento.
  */
 @Singleton
-class SellDraftRepository @Inject constructor(
-    @ApplicationContext context: Context
+class SellDraftRepository internal constructor(
+    private val store: Store,
+    private val scope: CoroutineScope,
+    private val clock: () -> Long = System::currentTimeMillis,
+    private val debounceMillis: Long = DEFAULT_DEBOUNCE_MILLIS,
+    private val maxDelayMillis: Long = DEFAULT_MAX_DELAY_MILLIS
 ) {
-    private val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
-    private val _hasActiveDraft = MutableStateFlow(prefs.getString(KEY_DRAFT, null) != null)
+
+    /** Bytes de [SellDraftCodec] en disco (un archivo en la app, memoria en tests). */
+    interface Store {
+        /** null si todavía no se guardó nada. */
+        fun read(): ByteArray?
+        fun write(bytes: ByteArray)
+    }
+
+    @Inject constructor(
+        @ApplicationContext context: Context,
+        @IoDispatcher io: CoroutineDispatcher
+    ) : this(
+        store = FileStore(
+            file = File(context.filesDir, FILE_NAME),
+            legacyPrefs = context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE)
+        ),
+        scope = CoroutineScope(SupervisorJob() + io)
+    ) {
+        context.registerComponentCallbacks(object : ComponentCallbacks2 {
+            override fun onTrimMemory(level: Int) {
+                // UI_HIDDEN llega cuando la última Activity deja de verse (equivale a ON_STOP del proceso).
+                if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) flush()
+            }
+
+            override fun onConfigurationChanged(newConfig: Configuration) = Unit
+
+            @Deprecated("Deprecated in Java")
+            override fun onLowMemory() {
+                flush()
+            }
+        })
+    }
+
+    private val lock = Any()
+    private val writeMutex = Mutex()
+    private var book: SellDraftBook = readBook()
+    private var version = 0L
+    private var writtenVersion = 0L
+    private var dirtySince = NOT_DIRTY
+    private var pendingWrite: Job? = null
+    private var writes = 0L
+
+    private val _hasActiveDraft = MutableStateFlow(book.active != null)
     val hasActiveDraft: StateFlow<Boolean> = _hasActiveDraft
 
+    private val _parkedDrafts = MutableStateFlow(book.parked)
+    val parkedDrafts: StateFlow<List<ParkedSellDraft>> = _parkedDrafts
+
+    /** Escrituras a disco hechas hasta ahora (para medir cuánto se coalesce). */
+    internal val writeCount: Long get() = synchronized(lock) { writes }
+
     fun save(draft: SellDraft) {
-        prefs.edit().putString(KEY_DRAFT, encode(draft)).apply()
-        _hasActiveDraft.value = true
+        mutate(immediate = false) { it.copy(active = draft) }
     }
 
-    fun load(): SellDraft? {
-        val raw = prefs.getString(KEY_DRAFT, null) ?: return null
-        return runCatching { decode(raw) }.getOrNull()
-    }
+    fun load(): SellDraft? = synchronized(lock) { book.active }
 
+    /**
+     * Vacía la preventa activa y lo escribe ya: se llama al confirmar la venta, y un cierre
+     * dentro del debounce no debe devolver al carrito lo que ya se cobró.
+     */
     fun clear() {
-        prefs.edit().remove(KEY_DRAFT).apply()
-        _hasActiveDraft.value = false
+        mutate(immediate = true) { it.copy(active = null) }
+    }
+
+    /**
+     * Estaciona la preventa activa con [label] y deja el carrito libre.
+     * Devuelve null si no había preventa activa.
+     */
+    fun park(label: String): ParkedSellDraft? {
+        var parked: ParkedSellDraft? = null
+        mutate(immediate = true) { current ->
+            val active = current.active ?: return@mutate current
+            check(current.parked.size < MAX_PARKED) { "Ya hay $MAX_PARKED ventas estacionadas" }
+            val entry = ParkedSellDraft(
+                id = (current.parked.maxOfOrNull { it.id } ?: 0L) + 1,
+                label = label,
+                parkedAt = clock(),
+                draft = active
+            )
+            parked = entry
+            SellDraftBook(active = null, parked = current.parked + entry)
+        }
+        return parked
     }
 
-    private fun encode(draft: SellDraft): String {
-        val items = JSONArray().apply {
-            draft.items.forEach { item ->
-                put(
-                    JSONObject()
-                        .put("productId", item.productId)
-                        .put("name", item.name)
-                        .put("barcode", item.barcode)
-                        .put("unitPrice", item.unitPrice)
-                        .put("listPrice", item.listPrice)
-                        .put("cashPrice", item.cashPrice)
-                        .put("transferPrice", item.transferPrice)
-                        .put("qty", item.qty)
-                        .put("maxStock", item.maxStock)
+    /**
+     * Pasa la preventa estacionada [id] a activa. Si ya había una activa, se estaciona
+     * en su lugar con [labelForActive]. Devuelve null si [id] no existe.
+     */
+    fun resume(id: Long, labelForActive: String): SellDraft? {
+        var resumed: SellDraft? = null
+        mutate(immediate = true) { current ->
+            val target = current.parked.firstOrNull { it.id == id } ?: return@mutate current
+            resumed = target.draft
+            val remaining = current.parked - target
+            val swapped = current.active?.let { active ->
+                ParkedSellDraft(
+                    id = (current.parked.maxOfOrNull { it.id } ?: 0L) + 1,
+                    label = labelForActive,
+                    parkedAt = clock(),
+                    draft = active
                 )
             }
+            SellDraftBook(active = target.draft, parked = remaining + listOfNotNull(swapped))
         }
+        return resumed
+    }
 
-        return JSONObject()
-            .put("items", items)
-            .put("discountPercent", draft.discountPercent)
-            .put("customerDiscountPercent", draft.customerDiscountPercent)
-            .put("surchargePercent", draft.surchargePercent)
-            .put("paymentMethod", draft.paymentMethod)
-            .put("paymentNotes", draft.paymentNotes)
-            .put("orderType", draft.orderType)
-            .put("selectedCustomerId", draft.selectedCustomerId)
-            .put("selectedCustomerName", draft.selectedCustomerName)
-            .toString()
+    fun discardParked(id: Long) {
+        mutate(immediate = true) { current ->
+            current.copy(parked = current.parked.filterNot { it.id == id })
+        }
     }
 
-    private fun decode(raw: String): SellDraft {
-        val json = JSONObject(raw)
-        val itemsArray = json.optJSONArray("items") ?: JSONArray()
-        val items = buildList {
-            repeat(itemsArray.length()) { index ->
-                val item = itemsArray.optJSONObject(index) ?: return@repeat
-                add(
-                    SellDraftItem(
-                        productId = item.optInt("productId", 0),
-                        name = item.optString("name", ""),
-                        barcode = item.optString("barcode").takeIf { it.isNotBlank() },
-                        unitPrice = item.optDouble("unitPrice", 0.0),
-                        listPrice = item.optDouble("listPrice", 0.0),
-                        cashPrice = item.optDouble("cashPrice", 0.0),
-                        transferPrice = item.optDouble("transferPrice", 0.0),
-                        qty = item.optInt("qty", 1),
-                        maxStock = item.optInt("maxStock", 0)
-                    )
-                )
+    /** Escribe ya lo pendiente, sin esperar al debounce. */
+    fun flush(): Job = synchronized(lock) {
+        pendingWrite?.cancel()
+        pendingWrite = null
+        scope.launch { writeIfDirty() }
+    }
+
+    private inline fun mutate(immediate: Boolean, transform: (SellDraftBook) -> SellDraftBook) {
+        synchronized(lock) {
+            val next = transform(book)
+            if (next == book) return
+            book = next
+            version++
+            _hasActiveDraft.value = next.active != null
+            _parkedDrafts.value = next.parked
+
+            val now = clock()
+            if (dirtySince == NOT_DIRTY) dirtySince = now
+            val wait = if (immediate) 0L else minOf(debounceMillis, dirtySince + maxDelayMillis - now)
+            pendingWrite?.cancel()
+            pendingWrite = scope.launch {
+                delay(wait.coerceAtLeast(0L))
+                writeIfDirty()
+            }
+        }
+    }
+
+    private suspend fun writeIfDirty() {
+        writeMutex.withLock {
+            // Entre tomar la foto y escribirla no hay puntos de suspensión: cancelar
+            // el job no deja una escritura a medias.
+            val (snapshot, snapshotVersion) = synchronized(lock) {
+                if (version == writtenVersion) return
+                dirtySince = NOT_DIRTY
+                book to version
+            }
+            val ok = runCatching { store.write(SellDraftCodec.encode(snapshot)) }.isSuccess
+            synchronized(lock) {
+                if (ok) {
+                    writtenVersion = snapshotVersion
+                    writes++
+                } else if (dirtySince == NOT_DIRTY) {
+                    // Sigue pendiente: se reintenta con el próximo cambio o flush.
+                    dirtySince = clock()
+                }
             }
         }
+    }
+
+    private fun readBook(): SellDraftBook {
+        val bytes = runCatching { store.read() }.getOrNull() ?: return SellDraftBook()
+        return runCatching { SellDraftCodec.decode(bytes) }.getOrDefault(SellDraftBook())
+    }
+
+    /**
+     * Archivo en `filesDir`, reemplazado de forma atómica (temporal + rename) para que un
+     * crash durante la escritura deje la versión anterior entera. La primera lectura migra
+     * el borrador JSON que guardaban las versiones anteriores en SharedPreferences.
+     */
+    private class FileStore(
+        private val file: File,
+        private val legacyPrefs: SharedPreferences
+    ) : Store {
+
+        override fun read(): ByteArray? {
+            if (file.exists()) return file.readBytes()
+            val legacy = legacyPrefs.getString(LEGACY_KEY_DRAFT, null) ?: return null
+            val draft = runCatching { decodeLegacy(legacy) }.getOrNull()
+            val bytes = SellDraftCodec.encode(SellDraftBook(active = draft))
+            write(bytes)
+            legacyPrefs.edit().remove(LEGACY_KEY_DRAFT).apply()
+            return bytes
+        }
 
-        return SellDraft(
-            items = items,
-            discountPercent = json.optInt("discountPercent", 0),
-            customerDiscountPercent = json.optInt("customerDiscountPercent", 0),
-            surchargePercent = json.optInt("surchargePercent", 0),
-            paymentMethod = json.optString("paymentMethod", "LISTA"),
-            paymentNotes = json.optString("paymentNotes", ""),
-            orderType = json.optString("orderType", "INMEDIATA"),
-            selectedCustomerId = if (json.has("selectedCustomerId")) json.optInt("selectedCustomerId") else null,
-            selectedCustomerName = json.optString("selectedCustomerName").takeIf { it.isNotBlank() }
-        )
+        override fun write(bytes: ByteArray) {
+            val tmp = File(file.parentFile, "${file.name}.tmp")
+            FileOutputStream(tmp).use { out ->
+                out.write(bytes)
+                out.fd.sync()
+            }
+            if (!tmp.renameTo(file)) throw IOException("No se pudo reemplazar ${file.name}")
+        }
     }
 
     companion object {
-        private const val PREFS_NAME = "sell_draft"
-        private const val KEY_DRAFT = "active_draft"
+        const val DEFAULT_DEBOUNCE_MILLIS = 300L
+        const val DEFAULT_MAX_DELAY_MILLIS = 1_000L
+        const val MAX_PARKED = 20
+        private const val NOT_DIRTY = -1L
+        private const val FILE_NAME = "sell_drafts.bin"
+        private const val LEGACY_PREFS_NAME = "sell_draft"
+        private const val LEGACY_KEY_DRAFT = "active_draft"
+
+        /** Formato JSON anterior, solo para migrar el borrador que hubiera quedado guardado. */
+        private fun decodeLegacy(raw: String): SellDraft {
+            val json = JSONObject(raw)
+            val itemsArray = json.optJSONArray("items") ?: JSONArray()
+            val items = buildList {
+                repeat(itemsArray.length()) { index ->
+                    val item = itemsArray.optJSONObject(index) ?: return@repeat
+                    add(
+                        SellDraftItem(
+                            productId = item.optInt("productId", 0),
+                            name = item.optString("name", ""),
+                            barcode = item.optString("barcode").takeIf { it.isNotBlank() },
+                            unitPrice = item.optDouble("unitPrice", 0.0),
+                            listPrice = item.optDouble("listPrice", 0.0),
+                            cashPrice = item.optDouble("cashPrice", 0.0),
+                            transferPrice = item.optDouble("transferPrice", 0.0),
+                            qty = item.optInt("qty", 1),
+                            maxStock = item.optInt("maxStock", 0)
+                        )
+                    )
+                }
+            }
+
+            return SellDraft(
+                items = items,
+                discountPercent = json.optInt("discountPercent", 0),
+                customerDiscountPercent = json.optInt("customerDiscountPercent", 0),
+                surchargePercent = json.optInt("surchargePercent", 0),
+                paymentMethod = json.optString("paymentMethod", "LISTA"),
+                paymentNotes = json.optString("paymentNotes", ""),
+                orderType = json.optString("orderType", "INMEDIATA"),
+                selectedCustomerId = if (json.has("selectedCustomerId")) json.optInt("selectedCustomerId") else null,
+                selectedCustomerName = json.optString("selectedCustomerName").takeIf { it.isNotBlank() }
+            )
+        }
     }
 }
 
@@ -1,6 +1,7 @@
 package com.example.selliaapp.repository
 
 import android.net.Uri
+import java.io.File
 
 data class CloudCatalogImage(
     val fullPath: String,
@@ -15,5 +16,16 @@ interface StorageRepository {
         contentType: String? = null
     ): String
 
+    /**
+     * Sube archivos ya procesados (ver `ProductImageProcessor`) a la carpeta de imágenes del
+     * producto, en paralelo, y devuelve sus URLs de descarga en el mismo orden.
+     */
+    suspend fun uploadProductImageFiles(
+        tenantId: String,
+        productId: Int,
+        files: List<File>,
+        contentType: String
+    ): List<String>
+
     suspend fun listPublicCatalogImages(limit: Int = 60): List<CloudCatalogImage>
 }
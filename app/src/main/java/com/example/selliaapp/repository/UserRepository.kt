@@ -5,7 +5,9 @@ import android.content.Context
 import android.net.Uri
 import com.example.selliaapp.auth.FirebaseSessionCoordinator
 import com.example.selliaapp.auth.TenantProvider
+import com.example.selliaapp.data.csv.TabularFileReader
 import com.example.selliaapp.data.csv.UserCsvImporter
+import com.example.selliaapp.data.csv.forEachChunk
 import com.example.selliaapp.data.dao.UserDao
 import com.example.selliaapp.data.model.User
 import com.example.selliaapp.data.model.ImportResult
@@ -115,39 +117,48 @@ class UserRepository(
     }
 
     suspend fun importUsersFromFile(context: Context, uri: Uri): ImportResult = withContext(io) {
-        val rows = UserCsvImporter.parseFile(context.contentResolver, uri)
-        if (rows.isEmpty()) {
-            return@withContext ImportResult(0, 0, listOf("El archivo no contiene filas válidas."))
-        }
-
         var inserted = 0
         var updated = 0
+        var idx = 0
         val errors = mutableListOf<String>()
 
-        rows.forEachIndexed { idx, row ->
-            val name = row.name.trim()
-            val email = row.email.trim()
-            val role = row.role.trim()
-            if (name.isBlank() || email.isBlank() || role.isBlank()) {
-                errors += "L${idx + 2}: name, email y role son obligatorios."
-                return@forEachIndexed
-            }
+        forEachChunk<UserCsvImporter.Row>(
+            chunkSize = IMPORT_CHUNK,
+            read = { onRow ->
+                UserCsvImporter.forEachRow(TabularFileReader.rowSource(context.contentResolver, uri), onRow)
+            },
+            dispatcher = io
+        ) { rows ->
+            rows.forEach { row ->
+                val line = idx++ + 2
+                val name = row.name.trim()
+                val email = row.email.trim()
+                val role = row.role.trim()
+                if (name.isBlank() || email.isBlank() || role.isBlank()) {
+                    errors += "L$line: name, email y role son obligatorios."
+                    return@forEach
+                }
 
-            try {
-                val normalizedEmail = email.lowercase()
-                val existing = userDao.getByEmail(normalizedEmail)
-                val cloudUser = User(name = name, email = normalizedEmail, role = role, isActive = true)
-                upsertCloudUser(cloudUser)
-                if (existing == null) {
-                    userDao.insert(cloudUser)
-                    inserted++
-                } else {
-                    userDao.update(existing.copy(name = name, role = role, isActive = true))
-                    updated++
+                try {
+                    val normalizedEmail = email.lowercase()
+                    val existing = userDao.getByEmail(normalizedEmail)
+                    val cloudUser = User(name = name, email = normalizedEmail, role = role, isActive = true)
+                    upsertCloudUser(cloudUser)
+                    if (existing == null) {
+                        userDao.insert(cloudUser)
+                        inserted++
+                    } else {
+                        userDao.update(existing.copy(name = name, role = role, isActive = true))
+                        updated++
+                    }
+                } catch (t: Throwable) {
+                    errors += "L$line: ${t.message ?: t::class.java.simpleName}"
                 }
-            } catch (t: Throwable) {
-                errors += "L${idx + 2}: ${t.message ?: t::class.java.simpleName}"
             }
+            true
+        }
+        if (idx == 0) {
+            return@withContext ImportResult(0, 0, listOf("El archivo no contiene filas válidas."))
         }
 
         ImportResult(inserted, updated, errors)
@@ -187,4 +198,8 @@ class UserRepository(
             .delete()
             .await()
     }
+
+    private companion object {
+        const val IMPORT_CHUNK = 500
+    }
 }
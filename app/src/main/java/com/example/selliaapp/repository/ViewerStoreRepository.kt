@@ -1,5 +1,7 @@
 package com.example.selliaapp.repository
 
+import kotlinx.coroutines.flow.Flow
+
 data class ViewerStoreSelection(
     val followedStores: List<TenantSummary> = emptyList(),
     val selectedStoreId: String? = null
@@ -20,5 +22,10 @@ interface ViewerStoreRepository {
     suspend fun fetchViewerStoreSelection(): Result<ViewerStoreSelection>
     suspend fun followStore(store: TenantSummary): Result<Unit>
     suspend fun selectStore(storeId: String): Result<Unit>
-    suspend fun fetchPublicCatalog(storeId: String): Result<List<PublicCatalogProduct>>
+
+    /** Copia local del catálogo de la tienda; emite de nuevo con cada página que llega. */
+    fun observePublicCatalog(storeId: String): Flow<List<PublicCatalogProduct>>
+
+    /** Trae del servidor solo lo cambiado desde la última vez (todo, la primera). */
+    suspend fun refreshPublicCatalog(storeId: String): Result<Unit>
 }
@@ -1,5 +1,8 @@
 package com.example.selliaapp.repository.impl
 
+import androidx.paging.Pager
+import androidx.paging.PagingConfig
+import androidx.paging.PagingData
 import com.example.selliaapp.data.dao.CashAuditDao
 import com.example.selliaapp.data.dao.CashMovementDao
 import com.example.selliaapp.data.dao.CashSessionDao
@@ -34,26 +37,33 @@ class CashRepositoryImpl @Inject constructor(
             if (session == null) {
                 flowOf(null)
             } else {
+                // Los totales son una fila por tipo: cada venta en efectivo re-emite
+                // unas pocas filas, no la lista completa de movimientos.
                 combine(
-                    cashMovementDao.observeBySession(session.id),
+                    cashMovementDao.observeTotals(session.id),
                     cashAuditDao.observeBySession(session.id)
-                ) { movements, audits ->
-                    val expected = CashCalculations.expectedAmount(session.openingAmount, movements)
-                    val cashSales = movements
-                        .filter { it.type == CashMovementType.SALE_CASH }
-                        .sumOf { it.amount }
+                ) { totals, audits ->
                     CashSessionSummary(
                         session = session,
-                        movements = movements,
+                        totalsByType = totals.associateBy { it.type },
                         audits = audits,
-                        expectedAmount = expected,
-                        cashSalesTotal = cashSales
+                        expectedAmount = CashCalculations.expectedAmountFromTotals(session.openingAmount, totals),
+                        cashSalesTotal = totals.firstOrNull { it.type == CashMovementType.SALE_CASH }?.total ?: 0.0
                     )
                 }
             }
         }
     }
 
+    override fun observeRecentMovements(sessionId: String, limit: Int): Flow<List<CashMovementEntity>> =
+        cashMovementDao.observeRecent(sessionId, limit)
+
+    override fun pagedMovements(sessionId: String): Flow<PagingData<CashMovementEntity>> =
+        Pager(
+            config = PagingConfig(pageSize = MOVEMENTS_PAGE_SIZE, enablePlaceholders = false),
+            pagingSourceFactory = { cashMovementDao.pagingBySession(sessionId) }
+        ).flow
+
     override suspend fun getOpenSession(): CashSessionEntity? = cashSessionDao.getOpenSession()
 
     override suspend fun openSession(
@@ -99,10 +109,7 @@ class CashRepositoryImpl @Inject constructor(
         countedAmount: Double,
         note: String?
     ): CashAuditEntity {
-        val movements = cashMovementDao.listBySession(sessionId)
-        val session = cashSessionDao.getOpenSession()
-        val openingAmount = session?.openingAmount ?: 0.0
-        val expected = CashCalculations.expectedAmount(openingAmount, movements)
+        val expected = expectedAmount(sessionId)
         val audit = CashAuditEntity(
             id = UUID.randomUUID().toString(),
             sessionId = sessionId,
@@ -120,10 +127,7 @@ class CashRepositoryImpl @Inject constructor(
         closingAmount: Double?,
         note: String?
     ) {
-        val movements = cashMovementDao.listBySession(sessionId)
-        val session = cashSessionDao.getOpenSession()
-        val openingAmount = session?.openingAmount ?: 0.0
-        val expected = CashCalculations.expectedAmount(openingAmount, movements)
+        val expected = expectedAmount(sessionId)
         cashSessionDao.closeSession(
             sessionId = sessionId,
             closedAt = Instant.now().toEpochMilli(),
@@ -133,4 +137,13 @@ class CashRepositoryImpl @Inject constructor(
             closingNote = note
         )
     }
+
+    private suspend fun expectedAmount(sessionId: String): Double {
+        val openingAmount = cashSessionDao.getSession(sessionId)?.openingAmount ?: 0.0
+        return CashCalculations.expectedAmountFromTotals(openingAmount, cashMovementDao.getTotals(sessionId))
+    }
+
+    private companion object {
+        const val MOVEMENTS_PAGE_SIZE = 50
+    }
 }
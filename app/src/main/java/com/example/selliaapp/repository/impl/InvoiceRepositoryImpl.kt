@@ -1,12 +1,19 @@
 package com.example.selliaapp.repository.impl
 
+import androidx.paging.Pager
+import androidx.paging.PagingConfig
+import androidx.paging.PagingData
+import androidx.paging.map
 import androidx.room.withTransaction // <-- IMPORTANTE: withTransaction suspend de Room KTX
+import com.example.selliaapp.BuildConfig
 import com.example.selliaapp.data.AppDatabase
 import com.example.selliaapp.data.dao.CustomerDao
 import com.example.selliaapp.data.dao.InvoiceDao
 import com.example.selliaapp.data.dao.InvoiceWithItems
 import com.example.selliaapp.data.dao.ProductDao
 import com.example.selliaapp.data.dao.ProductImageDao
+import com.example.selliaapp.data.dao.SQL_IN_CHUNK
+import com.example.selliaapp.data.dao.ftsPrefixMatchQuery
 import com.example.selliaapp.auth.TenantProvider
 import com.example.selliaapp.data.local.entity.ProductEntity
 import com.example.selliaapp.data.local.entity.StockMovementEntity
@@ -17,6 +24,7 @@ import com.example.selliaapp.data.model.Invoice
 import com.example.selliaapp.data.model.InvoiceItem
 import com.example.selliaapp.data.model.InvoiceStatus
 import com.example.selliaapp.data.model.OrderStatus
+import com.example.selliaapp.data.model.dashboard.DailyKpiTotals
 import com.example.selliaapp.data.model.dashboard.DailySalesPoint
 import com.example.selliaapp.data.model.sales.InvoiceDetail
 import com.example.selliaapp.data.model.sales.InvoiceDraft
@@ -28,10 +36,17 @@ import com.example.selliaapp.data.remote.InvoiceFirestoreMappers
 import com.example.selliaapp.data.remote.ProductFirestoreMappers
 import com.example.selliaapp.di.IoDispatcher
 import com.example.selliaapp.repository.InvoiceRepository
+import com.example.selliaapp.repository.ProductCatalogCache
+import com.example.selliaapp.repository.sales.InvoiceSummaryPagingSource
+import com.example.selliaapp.repository.sales.toInvoiceSummary
+import com.example.selliaapp.sync.OutboxPushPipeline
+import com.example.selliaapp.sync.OutboxSnapshot
+import com.example.selliaapp.sync.ProductWriteStamps
 import com.google.firebase.firestore.FirebaseFirestore
 import com.google.firebase.firestore.SetOptions
 import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.conflate
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.tasks.await
@@ -51,10 +66,14 @@ class InvoiceRepositoryImpl @Inject constructor(
     private val customerDao: CustomerDao,
     private val firestore: FirebaseFirestore,
     private val tenantProvider: TenantProvider,
+    private val pushPipeline: OutboxPushPipeline,
+    private val catalogCache: ProductCatalogCache,
+    private val writeStamps: ProductWriteStamps,
     @IoDispatcher private val io: CoroutineDispatcher
 ) : InvoiceRepository {
 
     private val syncOutboxDao = db.syncOutboxDao()
+    private val salesRollupDao = db.salesRollupDao()
 
      // ----------------------------
      // Escritura principal
@@ -85,6 +104,7 @@ class InvoiceRepositoryImpl @Inject constructor(
                 paymentNotes = draft.paymentNotes
             )
             val invId = invoiceDao.insertInvoice(baseInvoice)
+            val unitCosts = purchasePricesOf(draft.items.map { it.productId.toInt() })
 
             persistedItems = draft.items.map { li ->
                 InvoiceItem(
@@ -94,7 +114,8 @@ class InvoiceRepositoryImpl @Inject constructor(
                     productName = li.name,
                     quantity = li.quantity,
                     unitPrice = li.unitPrice,
-                    lineTotal = li.quantity * li.unitPrice
+                    lineTotal = li.quantity * li.unitPrice,
+                    unitCost = unitCosts[li.productId.toInt()]
                 )
             }
             invoiceDao.insertItems(persistedItems)
@@ -119,6 +140,7 @@ class InvoiceRepositoryImpl @Inject constructor(
                 touchedProducts += item.productId
             }
 
+            salesRollupDao.addInvoices(listOf(invId))
             persistedInvoice = baseInvoice.copy(id = invId)
             syncOutboxDao.upsert(
                 SyncOutboxEntity(
@@ -141,44 +163,7 @@ class InvoiceRepositoryImpl @Inject constructor(
 
         val invoice = requireNotNull(persistedInvoice) { "No se pudo persistir la venta" }
         val invoiceNumber = formatNumber(invoice.id)
-        val productsToSync: List<ProductEntity> = if (touchedProducts.isEmpty()) {
-            emptyList()
-        } else {
-            productDao.getByIds(touchedProducts.toList())
-        }
-
-        val productIdsForOutbox = touchedProducts.map(Int::toLong)
-        try {
-            syncInvoiceWithFirestore(invoice, invoiceNumber, persistedItems, productsToSync)
-            syncOutboxDao.deleteByTypeAndIds(
-                SyncEntityType.INVOICE.storageKey,
-                listOf(invoice.id)
-            )
-            if (productIdsForOutbox.isNotEmpty()) {
-                syncOutboxDao.deleteByTypeAndIds(
-                    SyncEntityType.PRODUCT.storageKey,
-                    productIdsForOutbox
-                )
-            }
-        } catch (t: Throwable) {
-            val errorMsg = extractErrorMessage(t)
-            val timestamp = System.currentTimeMillis()
-            syncOutboxDao.markAttempt(
-                SyncEntityType.INVOICE.storageKey,
-                listOf(invoice.id),
-                timestamp,
-                errorMsg
-            )
-            if (productIdsForOutbox.isNotEmpty()) {
-                syncOutboxDao.markAttempt(
-                    SyncEntityType.PRODUCT.storageKey,
-                    productIdsForOutbox,
-                    timestamp,
-                    errorMsg
-                )
-            }
-            throw t
-        }
+        publishAfterCommit(invoice, invoiceNumber, persistedItems, touchedProducts)
 
         InvoiceResult(invoiceId = invoice.id, invoiceNumber = invoiceNumber)
     }
@@ -192,7 +177,10 @@ class InvoiceRepositoryImpl @Inject constructor(
 
         db.withTransaction {
             val invId = invoiceDao.insertInvoice(invoice.copy(id = 0L))
-            itemsWithFk = items.map { it.copy(id = 0L, invoiceId = invId) }
+            val unitCosts = purchasePricesOf(items.filter { it.unitCost == null }.map { it.productId })
+            itemsWithFk = items.map {
+                it.copy(id = 0L, invoiceId = invId, unitCost = it.unitCost ?: unitCosts[it.productId])
+            }
             invoiceDao.insertItems(itemsWithFk)
 
             val movementDao = db.stockMovementDao()
@@ -211,6 +199,7 @@ class InvoiceRepositoryImpl @Inject constructor(
                 touchedProducts += item.productId
             }
 
+            salesRollupDao.addInvoices(listOf(invId))
             persistedInvoice = invoice.copy(id = invId)
             syncOutboxDao.upsert(
                 SyncOutboxEntity(
@@ -232,45 +221,7 @@ class InvoiceRepositoryImpl @Inject constructor(
         }
 
         val savedInvoice = requireNotNull(persistedInvoice)
-        val invoiceNumber = formatNumber(savedInvoice.id)
-        val productsToSync: List<ProductEntity> = if (touchedProducts.isEmpty()) {
-            emptyList()
-        } else {
-            productDao.getByIds(touchedProducts.toList())
-        }
-
-        val productIdsForOutbox = touchedProducts.map(Int::toLong)
-        try {
-            syncInvoiceWithFirestore(savedInvoice, invoiceNumber, itemsWithFk, productsToSync)
-            syncOutboxDao.deleteByTypeAndIds(
-                SyncEntityType.INVOICE.storageKey,
-                listOf(savedInvoice.id)
-            )
-            if (productIdsForOutbox.isNotEmpty()) {
-                syncOutboxDao.deleteByTypeAndIds(
-                    SyncEntityType.PRODUCT.storageKey,
-                    productIdsForOutbox
-                )
-            }
-        } catch (t: Throwable) {
-            val errorMsg = extractErrorMessage(t)
-            val timestamp = System.currentTimeMillis()
-            syncOutboxDao.markAttempt(
-                SyncEntityType.INVOICE.storageKey,
-                listOf(savedInvoice.id),
-                timestamp,
-                errorMsg
-            )
-            if (productIdsForOutbox.isNotEmpty()) {
-                syncOutboxDao.markAttempt(
-                    SyncEntityType.PRODUCT.storageKey,
-                    productIdsForOutbox,
-                    timestamp,
-                    errorMsg
-                )
-            }
-            throw t
-        }
+        publishAfterCommit(savedInvoice, formatNumber(savedInvoice.id), itemsWithFk, touchedProducts)
     }
 
     override suspend fun cancelInvoice(id: Long, reason: String) = withContext(io) {
@@ -288,6 +239,7 @@ class InvoiceRepositoryImpl @Inject constructor(
                 return@withTransaction
             }
 
+            salesRollupDao.removeInvoices(listOf(id))
             val updatedRows = invoiceDao.updateStatus(
                 id = id,
                 status = InvoiceStatus.ANULADA,
@@ -343,48 +295,12 @@ class InvoiceRepositoryImpl @Inject constructor(
         if (!didUpdate) return@withContext
         val relation = updatedRelation ?: return@withContext
 
-        val productsToSync: List<ProductEntity> = if (touchedProducts.isEmpty()) {
-            emptyList()
-        } else {
-            productDao.getByIds(touchedProducts.toList())
-        }
-        val productIdsForOutbox = touchedProducts.map(Int::toLong)
-        try {
-            syncInvoiceWithFirestore(
-                relation.invoice,
-                formatNumber(relation.invoice.id),
-                relation.items,
-                productsToSync
-            )
-            syncOutboxDao.deleteByTypeAndIds(
-                SyncEntityType.INVOICE.storageKey,
-                listOf(relation.invoice.id)
-            )
-            if (productIdsForOutbox.isNotEmpty()) {
-                syncOutboxDao.deleteByTypeAndIds(
-                    SyncEntityType.PRODUCT.storageKey,
-                    productIdsForOutbox
-                )
-            }
-        } catch (t: Throwable) {
-            val errorMsg = extractErrorMessage(t)
-            val timestamp = System.currentTimeMillis()
-            syncOutboxDao.markAttempt(
-                SyncEntityType.INVOICE.storageKey,
-                listOf(relation.invoice.id),
-                timestamp,
-                errorMsg
-            )
-            if (productIdsForOutbox.isNotEmpty()) {
-                syncOutboxDao.markAttempt(
-                    SyncEntityType.PRODUCT.storageKey,
-                    productIdsForOutbox,
-                    timestamp,
-                    errorMsg
-                )
-            }
-            throw t
-        }
+        publishAfterCommit(
+            relation.invoice,
+            formatNumber(relation.invoice.id),
+            relation.items,
+            touchedProducts
+        )
     }
 
     override suspend fun refreshOrderStatus(orderId: String): OrderStatus? = withContext(io) {
@@ -447,47 +363,35 @@ class InvoiceRepositoryImpl @Inject constructor(
         val hoy = LocalDate.now(zona)
         val inicioSerie = hoy.minusDays((dias - 1).toLong())
 
-        val inicioMillis = inicioSerie
-            .atStartOfDay(zona)
-            .toInstant()
-            .toEpochMilli()
-
-        val finMillis = hoy
-            .plusDays(1)
-            .atStartOfDay(zona)
-            .toInstant()
-            .toEpochMilli() - 1
-
-        val registros = invoiceDao.salesGroupedByDay(inicioMillis, finMillis)
-        val totalesPorDia = registros.associateBy(
-            keySelector = { row ->
-                Instant.ofEpochMilli(row.day).atZone(zona).toLocalDate()
-            }
-        )
+        salesRollupDao.rebuildIfZoneChanged(zona)
+        val totalesPorDia = salesRollupDao.daily(inicioSerie.toEpochDay(), hoy.toEpochDay())
+            .associate { row -> LocalDate.ofEpochDay(row.epochDay) to row.salesTotal }
 
         (0 until dias).map { offset ->
             val fecha = inicioSerie.plusDays(offset.toLong())
-            val total = totalesPorDia[fecha]?.total ?: 0.0
+            val total = totalesPorDia[fecha] ?: 0.0
             DailySalesPoint(fecha = fecha, total = total)
         }
     }
 
+    override fun observeTodayKpis(): Flow<DailyKpiTotals> =
+        // Solo invoices/invoice_items invalidan: un cambio de precio de compra no dispara
+        // el recálculo y se refleja en la próxima venta.
+        db.invalidationTracker.createFlow("invoices", "invoice_items")
+            .conflate()
+            .map {
+                val zona = ZoneId.systemDefault()
+                val hoy = LocalDate.now(zona)
+                invoiceDao.kpiTotalsBetween(
+                    from = hoy.atStartOfDay(zona).toInstant().toEpochMilli(),
+                    to = hoy.plusDays(1).atStartOfDay(zona).toInstant().toEpochMilli()
+                )
+            }
+            .flowOn(io)
+
      // ----------------------------
      // Mappers
      // ----------------------------
-     private fun mapToSummary(rel: InvoiceWithItems, outbox: SyncOutboxEntity?): InvoiceSummary {
-         val inv = rel.invoice
-         val ld = Instant.ofEpochMilli(inv.dateMillis).atZone(ZoneId.systemDefault()).toLocalDate()
-         return InvoiceSummary(
-             id = inv.id,
-             number = formatNumber(inv.id),
-             customerName = inv.customerName ?: "Consumidor Final",
-             date = ld,
-             total = inv.total,
-             syncStatus = syncStatusFor(outbox)
-         )
-     }
-
     private fun mapToDetail(rel: InvoiceWithItems, outbox: SyncOutboxEntity?): InvoiceDetail {
         val inv = rel.invoice
         val itemsUi = rel.items.map {
@@ -527,6 +431,59 @@ class InvoiceRepositoryImpl @Inject constructor(
     private fun extractErrorMessage(t: Throwable): String =
         t.message?.take(512) ?: t::class.java.simpleName
 
+    /** Precio de compra vigente por producto; queda fijado en cada ítem como `unitCost`. */
+    private suspend fun purchasePricesOf(productIds: List<Int>): Map<Int, Double> =
+        productIds.distinct()
+            .chunked(SQL_IN_CHUNK)
+            .flatMap { chunk -> productDao.getByIds(chunk) }
+            .mapNotNull { product -> product.purchasePrice?.let { product.id to it } }
+            .toMap()
+
+    /**
+     * Publica en Firestore una venta ya commiteada en Room.
+     * Por defecto solo agenda el drenado del outbox en [OutboxPushPipeline] y vuelve
+     * enseguida, así el checkout no espera la red. Con CHECKOUT_BLOCKING_SYNC se
+     * mantiene el comportamiento anterior (subida inline y propagación del error).
+     * El stock cambió por fuera de ProductRepository: se vencen esas entradas del cache.
+     */
+    private suspend fun publishAfterCommit(
+        invoice: Invoice,
+        number: String,
+        items: List<InvoiceItem>,
+        touchedProducts: Set<Int>
+    ) {
+        catalogCache.markStale(touchedProducts)
+        if (!BuildConfig.CHECKOUT_BLOCKING_SYNC) {
+            pushPipeline.requestPush()
+            return
+        }
+
+        // Snapshot del outbox antes de leer los productos: si otra venta los toca mientras
+        // se sube, su fila nueva no se confirma acá.
+        val pendingInvoice = OutboxSnapshot.take(syncOutboxDao, SyncEntityType.INVOICE.storageKey, listOf(invoice.id))
+        val pendingProducts = OutboxSnapshot.take(
+            syncOutboxDao,
+            SyncEntityType.PRODUCT.storageKey,
+            touchedProducts.map(Int::toLong)
+        )
+        val productsToSync: List<ProductEntity> = if (touchedProducts.isEmpty()) {
+            emptyList()
+        } else {
+            productDao.getByIds(touchedProducts.toList())
+        }
+        try {
+            syncInvoiceWithFirestore(invoice, number, items, productsToSync)
+            pendingInvoice.acknowledgeAll()
+            pendingProducts.acknowledgeAll()
+        } catch (t: Throwable) {
+            val errorMsg = extractErrorMessage(t)
+            val timestamp = System.currentTimeMillis()
+            pendingInvoice.markAttemptAll(timestamp, errorMsg)
+            pendingProducts.markAttemptAll(timestamp, errorMsg)
+            throw t
+        }
+    }
+
     private suspend fun syncInvoiceWithFirestore(
         invoice: Invoice,
         number: String,
@@ -550,33 +507,43 @@ class InvoiceRepositoryImpl @Inject constructor(
         val productsCollection = firestore.collection("tenants")
             .document(tenantId)
             .collection("products")
+        val deletionsCollection = firestore.collection("tenants")
+            .document(tenantId)
+            .collection("product_deletions")
+        val pushed = products.filter { it.id != 0 }
+        if (pushed.isEmpty()) return
+        val write = writeStamps.stamp(pushed.map { it.id })
         val batch = firestore.batch()
-        products.forEach { product ->
-            if (product.id == 0) return@forEach
-            val doc = productsCollection.document(product.id.toString())
+        pushed.forEach { product ->
             val imageUrls = imageUrlsByProductId[product.id].orEmpty()
             batch.set(
-                doc,
-                ProductFirestoreMappers.toMap(product, imageUrls, tenantId),
+                productsCollection.document(product.id.toString()),
+                ProductFirestoreMappers.toMap(product, imageUrls, tenantId, write),
                 SetOptions.merge()
             )
+            batch.delete(deletionsCollection.document(product.id.toString()))
         }
         batch.commit().await()
     }
 
 
      override fun observeAll(): Flow<List<InvoiceSummary>> =
-         invoiceDao.observeInvoicesWithItems()
-             .map { list ->
-                 val outboxById = syncOutboxDao.getByType(SyncEntityType.INVOICE.storageKey)
-                     .associateBy { it.entityId }
-                 list.map { mapToSummary(it, outboxById[it.invoice.id]) }
-             }
+         invoiceDao.observeSummaries()
+             .map { rows -> rows.map { it.toInvoiceSummary() } }
              .flowOn(io)
 
-     // Búsqueda por cliente
-     override fun observeInvoicesByCustomerQuery(q: String) =
-         invoiceDao.observeInvoicesWithItemsByCustomerQuery(q)
+     override fun pagedSummaries(customerQuery: String?): Flow<PagingData<InvoiceSummary>> {
+         val match = ftsPrefixMatchQuery(customerQuery)
+         return Pager(
+             config = PagingConfig(pageSize = HISTORY_PAGE_SIZE, enablePlaceholders = false),
+             pagingSourceFactory = { InvoiceSummaryPagingSource(invoiceDao, db.invalidationTracker, match) }
+         ).flow
+             .map { page -> page.map { it.toInvoiceSummary() } }
+     }
+
+     // Búsqueda por cliente (índice FTS sobre customerName)
+     override fun observeInvoicesByCustomerQuery(q: String): Flow<List<InvoiceWithItems>> =
+         invoiceDao.searchInvoicesWithItemsByCustomer(q)
 
     private fun syncStatusFor(outbox: SyncOutboxEntity?): SyncStatus =
         when {
@@ -585,7 +552,8 @@ class InvoiceRepositoryImpl @Inject constructor(
             else -> SyncStatus.PENDING
         }
 
-
-
-
- }
+    private companion object {
+        /** Facturas por página del historial; el primer refresh carga 3 páginas. */
+        const val HISTORY_PAGE_SIZE = 50
+    }
+}
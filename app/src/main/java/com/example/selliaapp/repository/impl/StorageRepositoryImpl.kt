@@ -10,7 +10,12 @@ import com.google.firebase.storage.FirebaseStorage
 import com.google.firebase.firestore.FirebaseFirestore
 import com.google.firebase.storage.StorageException
 import com.google.firebase.storage.StorageMetadata
+import com.google.firebase.storage.StorageReference
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.tasks.await
+import java.io.File
 import java.util.UUID
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -29,11 +34,6 @@ class StorageRepositoryImpl @Inject constructor(
         localUri: Uri,
         contentType: String?
     ): String {
-        val currentUser = auth.currentUser
-            ?: throw IllegalStateException(
-                "Necesitás iniciar sesión para subir imágenes del producto."
-            )
-
         val extension = contentType?.substringAfter('/')?.ifBlank { null }
         val fileName = if (extension != null) {
             "${UUID.randomUUID()}.$extension"
@@ -41,14 +41,49 @@ class StorageRepositoryImpl @Inject constructor(
             UUID.randomUUID().toString()
         }
 
-        val reference = storage.reference
-            .child("tenants/$tenantId/public_products/$productId/images/$fileName")
+        val reference = productImagesFolder(tenantId, productId).child(fileName)
         val metadata = contentType?.let {
             StorageMetadata.Builder()
                 .setContentType(it)
                 .build()
         }
 
+        return uploadWithAccessCheck(tenantId, productId) {
+            uploadAndResolveDownloadUrl(
+                reference = reference,
+                localUri = localUri,
+                metadata = metadata
+            )
+        }
+    }
+
+    override suspend fun uploadProductImageFiles(
+        tenantId: String,
+        productId: Int,
+        files: List<File>,
+        contentType: String
+    ): List<String> = uploadWithAccessCheck(tenantId, productId) {
+        coroutineScope {
+            files.map { file ->
+                async { uploadWithDownloadToken(productImagesFolder(tenantId, productId).child(file.name), file, contentType) }
+            }.awaitAll()
+        }
+    }
+
+    /**
+     * Valida sesión, perfil y App Check antes de [upload]; si Storage igual rechaza por
+     * autenticación, refresca tokens y reintenta una vez.
+     */
+    private suspend fun <T> uploadWithAccessCheck(
+        tenantId: String,
+        productId: Int,
+        upload: suspend () -> T
+    ): T {
+        val currentUser = auth.currentUser
+            ?: throw IllegalStateException(
+                "Necesitás iniciar sesión para subir imágenes del producto."
+            )
+
         var accessValidatedByFirestoreProfile = false
 
         return runCatching {
@@ -56,11 +91,7 @@ class StorageRepositoryImpl @Inject constructor(
                 validateUploadAccessOrThrow(tenantId = tenantId, currentUser = currentUser)
                 accessValidatedByFirestoreProfile = true
                 ensureAppCheckToken(forceRefresh = false)
-                uploadAndResolveDownloadUrl(
-                    reference = reference,
-                    localUri = localUri,
-                    metadata = metadata
-                )
+                upload()
             }
         }.recoverCatching { initialError ->
             val storageError = initialError as? StorageException
@@ -71,11 +102,7 @@ class StorageRepositoryImpl @Inject constructor(
                 // Reintento único con refresh explícito de sesión + App Check.
                 currentUser.getIdToken(true).await()
                 ensureAppCheckToken(forceRefresh = true)
-                uploadAndResolveDownloadUrl(
-                    reference = reference,
-                    localUri = localUri,
-                    metadata = metadata
-                )
+                upload()
             } else {
                 throw initialError
             }
@@ -89,7 +116,8 @@ class StorageRepositoryImpl @Inject constructor(
         }
     }
 
-
+    private fun productImagesFolder(tenantId: String, productId: Int): StorageReference =
+        storage.reference.child("tenants/$tenantId/public_products/$productId/images")
 
     override suspend fun listPublicCatalogImages(limit: Int): List<CloudCatalogImage> {
         val safeLimit = limit.coerceIn(1, 200)
@@ -124,8 +152,29 @@ class StorageRepositoryImpl @Inject constructor(
         }
     }
 
+    /**
+     * Sube con un token de descarga propio en la metadata y arma la URL pública con él,
+     * sin la segunda ida a Storage de `downloadUrl`. El nombre es único, así que la URL
+     * se puede cachear sin vencimiento.
+     */
+    private suspend fun uploadWithDownloadToken(
+        reference: StorageReference,
+        file: File,
+        contentType: String
+    ): String {
+        val token = UUID.randomUUID().toString()
+        val metadata = StorageMetadata.Builder()
+            .setContentType(contentType)
+            .setCacheControl(IMMUTABLE_CACHE_CONTROL)
+            .setCustomMetadata(DOWNLOAD_TOKENS_METADATA, token)
+            .build()
+        reference.putFile(Uri.fromFile(file), metadata).await()
+        val encodedPath = Uri.encode(reference.path.removePrefix("/"))
+        return "https://firebasestorage.googleapis.com/v0/b/${reference.bucket}/o/$encodedPath?alt=media&token=$token"
+    }
+
     private suspend fun uploadAndResolveDownloadUrl(
-        reference: com.google.firebase.storage.StorageReference,
+        reference: StorageReference,
         localUri: Uri,
         metadata: StorageMetadata?
     ): String {
@@ -242,6 +291,8 @@ class StorageRepositoryImpl @Inject constructor(
 
     private companion object {
         private const val PUBLIC_CATALOG_PATH = "Images/public/catalog"
+        private const val DOWNLOAD_TOKENS_METADATA = "firebaseStorageDownloadTokens"
+        private const val IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable"
         private val STORAGE_WRITE_ROLES = setOf("owner", "admin", "manager", "cashier")
         private val LEGACY_WRITE_ROLE_ALIASES = setOf("super_admin", "superadmin", "seller", "employee")
     }
@@ -1,24 +1,43 @@
 package com.example.selliaapp.repository.impl
 
+import com.example.selliaapp.data.dao.PublicCatalogDao
+import com.example.selliaapp.data.local.entity.PublicCatalogProductEntity
 import com.example.selliaapp.di.AppModule
 import com.example.selliaapp.repository.PublicCatalogProduct
+import com.example.selliaapp.repository.PublicCatalogSync
 import com.example.selliaapp.repository.TenantSummary
 import com.example.selliaapp.repository.ViewerStoreRepository
 import com.example.selliaapp.repository.ViewerStoreSelection
 import com.google.firebase.auth.FirebaseAuth
+import com.google.firebase.firestore.FieldPath
 import com.google.firebase.firestore.FieldValue
 import com.google.firebase.firestore.FirebaseFirestore
 import com.google.firebase.firestore.SetOptions
 import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.tasks.await
 import kotlinx.coroutines.withContext
 import javax.inject.Inject
 import javax.inject.Singleton
 
+/**
+ * Tiendas seguidas por el visor y su catálogo público.
+ *
+ * - El directorio de las tiendas seguidas se lee con `whereIn` por documentId en tandas
+ *   de [DIRECTORY_CHUNK], todas en paralelo, en lugar de un `get()` por tienda.
+ * - El catálogo se sirve desde `public_catalog_products` (Room) y lo mantiene al día
+ *   [PublicCatalogSync] con pulls incrementales por `publicUpdatedAt`.
+ */
 @Singleton
 class ViewerStoreRepositoryImpl @Inject constructor(
     private val auth: FirebaseAuth,
     private val firestore: FirebaseFirestore,
+    private val catalogDao: PublicCatalogDao,
+    private val catalogSync: PublicCatalogSync,
     @AppModule.IoDispatcher private val io: CoroutineDispatcher
 ) : ViewerStoreRepository {
 
@@ -32,15 +51,8 @@ class ViewerStoreRepositoryImpl @Inject constructor(
                 .mapNotNull { (it as? String)?.takeIf(String::isNotBlank) }
                 .distinct()
 
-            val followedStores = followedStoreIds.mapNotNull { storeId ->
-                val snapshot = firestore.collection("public_tenant_directory").document(storeId).get().await()
-                if (!snapshot.exists()) {
-                    return@mapNotNull null
-                }
-                val name = snapshot.getString("name")?.trim().orEmpty()
-                if (name.isBlank()) return@mapNotNull null
-                TenantSummary(id = storeId, name = name)
-            }.sortedBy { it.name.lowercase() }
+            val followedStores = fetchDirectoryEntries(followedStoreIds)
+                .sortedBy { it.name.lowercase() }
 
             ViewerStoreSelection(
                 followedStores = followedStores,
@@ -82,34 +94,50 @@ class ViewerStoreRepositoryImpl @Inject constructor(
         }
     }
 
-    override suspend fun fetchPublicCatalog(storeId: String): Result<List<PublicCatalogProduct>> = withContext(io) {
-        runCatching {
-            val snapshot = firestore.collection("tenants")
-                .document(storeId)
-                .collection("public_products")
-                .get()
-                .await()
+    override fun observePublicCatalog(storeId: String): Flow<List<PublicCatalogProduct>> =
+        catalogDao.observeStore(storeId).map { rows -> rows.mapNotNull { it.toPublicProduct() } }
 
-            snapshot.documents.mapNotNull { doc ->
-                val id = doc.getLong("id")?.toInt() ?: doc.id.toIntOrNull() ?: return@mapNotNull null
-                val name = doc.getString("name")?.trim().orEmpty()
-                if (name.isBlank()) return@mapNotNull null
-                PublicCatalogProduct(
-                    id = id,
-                    name = name,
-                    imageUrl = doc.getString("imageUrl")
-                        ?: (doc.get("imageUrls") as? List<*>)?.firstOrNull() as? String,
-                    listPrice = doc.getDouble("listPrice"),
-                    cashPrice = doc.getDouble("cashPrice"),
-                    transferPrice = doc.getDouble("transferPrice"),
-                    category = doc.getString("parentCategory"),
-                    subcategory = doc.getString("category")
-                )
-            }.sortedBy { it.name.lowercase() }
-        }
+    override suspend fun refreshPublicCatalog(storeId: String): Result<Unit> = withContext(io) {
+        runCatching { catalogSync.refresh(storeId) }
+    }
+
+    /** Tandas de `whereIn` (máximo [DIRECTORY_CHUNK] ids) en paralelo; ignora tiendas sin nombre. */
+    private suspend fun fetchDirectoryEntries(storeIds: List<String>): List<TenantSummary> = coroutineScope {
+        storeIds.chunked(DIRECTORY_CHUNK).map { chunk ->
+            async {
+                firestore.collection("public_tenant_directory")
+                    .whereIn(FieldPath.documentId(), chunk)
+                    .get()
+                    .await()
+                    .documents
+                    .mapNotNull { snapshot ->
+                        val name = snapshot.getString("name")?.trim().orEmpty()
+                        if (name.isBlank()) null else TenantSummary(id = snapshot.id, name = name)
+                    }
+            }
+        }.awaitAll().flatten()
+    }
+
+    private fun PublicCatalogProductEntity.toPublicProduct(): PublicCatalogProduct? {
+        val id = productId ?: return null
+        return PublicCatalogProduct(
+            id = id,
+            name = name,
+            imageUrl = imageUrl,
+            listPrice = listPrice,
+            cashPrice = cashPrice,
+            transferPrice = transferPrice,
+            category = category,
+            subcategory = subcategory
+        )
     }
 
     private fun requireUid(): String {
         return auth.currentUser?.uid ?: throw IllegalStateException("Sesión no disponible")
     }
+
+    private companion object {
+        /** Límite de `whereIn` que usamos para el directorio de tiendas. */
+        const val DIRECTORY_CHUNK = 10
+    }
 }
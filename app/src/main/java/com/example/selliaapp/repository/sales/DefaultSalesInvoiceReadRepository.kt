@@ -32,12 +32,8 @@ class DefaultSalesInvoiceReadRepository @Inject constructor(
 ) : SalesInvoiceReadRepository {
 
     override fun observeSummaries(): Flow<List<InvoiceSummary>> =
-        invoiceDao.observeInvoicesWithItems() // Flow<List<InvoiceWithItems>>
-            .map { list ->
-                val outboxById = syncOutboxDao.getByType(SyncEntityType.INVOICE.storageKey)
-                    .associateBy { it.entityId }
-                list.map { it.toSummary(outboxById[it.invoice.id]) }
-            }
+        invoiceDao.observeSummaries() // sin ítems: cantidad y estado de outbox vienen en la fila
+            .map { rows -> rows.map { it.toInvoiceSummary() } }
             .flowOn(io)
 
     override suspend fun getDetail(id: Long): InvoiceDetail? =
@@ -48,18 +44,6 @@ class DefaultSalesInvoiceReadRepository @Inject constructor(
 
     // ---- Mappers ----
 
-    private fun InvoiceWithItems.toSummary(outbox: SyncOutboxEntity?): InvoiceSummary {
-        val number = formatNumber(invoice.id) // si no tenés número, generamos uno legible
-        return InvoiceSummary(
-            id = invoice.id,
-            number = number,
-            customerName = invoice.customerName ?: "Consumidor Final",
-            date = millisToLocalDate(invoice.dateMillis),
-            total = invoice.total,
-            syncStatus = syncStatusFor(outbox)
-        )
-    }
-
     private fun InvoiceWithItems.toDetail(outbox: SyncOutboxEntity?): InvoiceDetail {
         val number = formatNumber(invoice.id)
         val itemsUi = items.map { entityItem ->
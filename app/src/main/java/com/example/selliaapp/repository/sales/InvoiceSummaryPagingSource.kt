@@ -0,0 +1,131 @@
+package com.example.selliaapp.repository.sales
+
+import androidx.paging.PagingSource
+import androidx.paging.PagingState
+import androidx.room.InvalidationTracker
+import com.example.selliaapp.data.dao.InvoiceDao
+import com.example.selliaapp.data.dao.InvoiceSummaryRow
+import com.example.selliaapp.data.model.sales.InvoiceSummary
+import com.example.selliaapp.data.model.sales.SyncStatus
+import kotlinx.coroutines.CancellationException
+import java.time.Instant
+import java.time.ZoneId
+
+/** Posición en el historial: orden (dateMillis DESC, id DESC). */
+data class InvoiceCursor(val dateMillis: Long, val id: Long)
+
+/**
+ * Historial de ventas paginado por keyset sobre (dateMillis, id) en lugar de OFFSET: cada
+ * página es un rango del índice de `dateMillis`, sin importar qué tan atrás esté.
+ *
+ * - Refresh: desde el tope o anclado en la factura visible ([getRefreshKey]).
+ * - Append/Prepend: facturas más viejas/más nuevas que el borde cargado.
+ * - Con [match] (expresión FTS) filtra por nombre de cliente vía `invoices_fts`.
+ * - Se invalida ante cambios en `invoices`, `invoice_items` o `sync_outbox`.
+ */
+class InvoiceSummaryPagingSource(
+    private val invoiceDao: InvoiceDao,
+    private val invalidationTracker: InvalidationTracker,
+    private val match: String?
+) : PagingSource<InvoiceCursor, InvoiceSummaryRow>() {
+
+    private val observer = object : InvalidationTracker.Observer(
+        arrayOf("invoices", "invoice_items", "sync_outbox")
+    ) {
+        override fun onInvalidated(tables: Set<String>) {
+            invalidate()
+        }
+    }
+
+    init {
+        invalidationTracker.addObserver(observer)
+        registerInvalidatedCallback { invalidationTracker.removeObserver(observer) }
+    }
+
+    override suspend fun load(params: LoadParams<InvoiceCursor>): LoadResult<InvoiceCursor, InvoiceSummaryRow> {
+        return try {
+            val limit = params.loadSize
+            val key = params.key
+            when (params) {
+                is LoadParams.Refresh -> {
+                    val anchor = key ?: TOP
+                    val rows = from(anchor, limit)
+                    LoadResult.Page(
+                        data = rows,
+                        prevKey = if (key == null) null else rows.firstOrNull()?.cursor(),
+                        nextKey = rows.takeIf { it.size >= limit }?.last()?.cursor()
+                    )
+                }
+                is LoadParams.Append -> {
+                    val rows = before(requireNotNull(key), limit)
+                    LoadResult.Page(
+                        data = rows,
+                        prevKey = null,
+                        nextKey = rows.takeIf { it.size >= limit }?.last()?.cursor()
+                    )
+                }
+                is LoadParams.Prepend -> {
+                    val rows = after(requireNotNull(key), limit).asReversed()
+                    LoadResult.Page(
+                        data = rows,
+                        prevKey = rows.takeIf { it.size >= limit }?.first()?.cursor(),
+                        nextKey = null
+                    )
+                }
+            }
+        } catch (c: CancellationException) {
+            throw c
+        } catch (t: Throwable) {
+            LoadResult.Error(t)
+        }
+    }
+
+    override fun getRefreshKey(state: PagingState<InvoiceCursor, InvoiceSummaryRow>): InvoiceCursor? =
+        state.anchorPosition
+            ?.let { state.closestItemToPosition(it) }
+            ?.cursor()
+
+    private suspend fun from(cursor: InvoiceCursor, limit: Int): List<InvoiceSummaryRow> =
+        if (match == null) {
+            invoiceDao.summariesFrom(cursor.dateMillis, cursor.id, limit)
+        } else {
+            invoiceDao.summariesMatchingFrom(match, cursor.dateMillis, cursor.id, limit)
+        }
+
+    private suspend fun before(cursor: InvoiceCursor, limit: Int): List<InvoiceSummaryRow> =
+        if (match == null) {
+            invoiceDao.summariesBefore(cursor.dateMillis, cursor.id, limit)
+        } else {
+            invoiceDao.summariesMatchingBefore(match, cursor.dateMillis, cursor.id, limit)
+        }
+
+    private suspend fun after(cursor: InvoiceCursor, limit: Int): List<InvoiceSummaryRow> =
+        if (match == null) {
+            invoiceDao.summariesAfter(cursor.dateMillis, cursor.id, limit)
+        } else {
+            invoiceDao.summariesMatchingAfter(match, cursor.dateMillis, cursor.id, limit)
+        }
+
+    private fun InvoiceSummaryRow.cursor() = InvoiceCursor(dateMillis, id)
+
+    private companion object {
+        val TOP = InvoiceCursor(Long.MAX_VALUE, Long.MAX_VALUE)
+    }
+}
+
+/** Mismo formato de número y estado de sync que el detalle de la factura. */
+fun InvoiceSummaryRow.toInvoiceSummary(zone: ZoneId = ZoneId.systemDefault()): InvoiceSummary =
+    InvoiceSummary(
+        id = id,
+        number = "F-${id.toString().padStart(8, '0')}",
+        customerName = customerName ?: "Consumidor Final",
+        date = Instant.ofEpochMilli(dateMillis).atZone(zone).toLocalDate(),
+        total = total,
+        syncStatus = when {
+            !outboxPending -> SyncStatus.SYNCED
+            outboxError != null -> SyncStatus.ERROR
+            else -> SyncStatus.PENDING
+        },
+        status = status,
+        itemCount = itemCount
+    )
@@ -0,0 +1,173 @@
+package com.example.selliaapp.sync
+
+import android.database.Cursor
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+/**
+ * Registro de cambios para el respaldo incremental de las tablas locales.
+ *
+ * Cada tabla respaldada lleva tres triggers (alta, cambio y baja) que anotan la clave de la
+ * fila en `backup_changes`. Los triggers se crean al abrir la DB, así cubren también las
+ * tablas que agregue una migración futura. La primera vez que se instalan en una tabla
+ * (o si una migración la recreó y se perdieron) se anotan todas sus filas, de modo que el
+ * próximo respaldo la sube completa y a partir de ahí solo lo que cambió.
+ */
+object BackupChangeTracker {
+
+    const val CHANGES_TABLE = "backup_changes"
+
+    /** Tablas que no se respaldan: metadatos de Room/SQLite, colas locales y datos derivados. */
+    private val EXCLUDED_TABLES = setOf(
+        "android_metadata",
+        "room_master_table",
+        "sqlite_sequence",
+        "sync_outbox",
+        CHANGES_TABLE,
+        // Se recalcula con SalesRollupDao.rebuild() después de restaurar.
+        "sales_rollup",
+        "sales_rollup_meta",
+        // Se recalcula con CashMovementDao.rebuildTotals() después de restaurar.
+        "cash_session_totals",
+        // Marcas de push de este dispositivo: se borran al restaurar.
+        "product_push_marks",
+        // Cachés de datos remotos: se vuelven a pedir si faltan.
+        "off_lookup_cache",
+        "public_catalog_products",
+        // Cola local de subidas: los archivos que referencia no viajan en el backup.
+        "product_image_uploads"
+    )
+
+    private const val NOW_MILLIS_SQL = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)"
+
+    /**
+     * Tabla respaldada. [keyColumns] es su PK (vacía si no tiene, y entonces se usa el rowid);
+     * la clave armada es el id del documento en `sync_data/{tabla}/rows`.
+     */
+    data class TrackedTable(val name: String, val keyColumns: List<String>) {
+
+        /** Expresión SQL de la clave; [alias] es `NEW`, `OLD` o vacío para consultar la tabla. */
+        fun keyExpression(alias: String = ""): String {
+            val prefix = if (alias.isEmpty()) "" else "$alias."
+            val rowId = "CAST(${prefix}rowid AS TEXT)"
+            if (keyColumns.isEmpty()) return rowId
+            val key = keyColumns.joinToString(" || '|' || ") { "CAST($prefix`$it` AS TEXT)" }
+            return "COALESCE($key, $rowId)"
+        }
+
+        /**
+         * Filtro `IN` por clave con [count] parámetros. Con PK simple compara la columna
+         * directo: SQLite aplica la afinidad de la columna a los parámetros y usa el índice.
+         */
+        fun keyFilter(count: Int): String {
+            val placeholders = List(count) { "?" }.joinToString(", ")
+            val target = keyColumns.singleOrNull()?.let { "`$it`" } ?: keyExpression()
+            return "$target IN ($placeholders)"
+        }
+    }
+
+    fun trackedTables(db: SupportSQLiteDatabase): List<TrackedTable> {
+        val tables = mutableListOf<String>()
+        val virtualTables = mutableListOf<String>()
+        db.query("SELECT name, sql FROM sqlite_master WHERE type = 'table'").use { cursor ->
+            while (cursor.moveToNext()) {
+                val name = cursor.getString(0)
+                val sql = cursor.getString(1).orEmpty()
+                if (sql.trimStart().startsWith("CREATE VIRTUAL TABLE", ignoreCase = true)) {
+                    virtualTables += name
+                } else {
+                    tables += name
+                }
+            }
+        }
+        // Las tablas FTS (y sus tablas sombra) se reconstruyen solas desde el contenido.
+        return tables
+            .filter { name -> isBackedUp(name) && virtualTables.none { name.startsWith("${it}_") } }
+            .map { name -> TrackedTable(name, primaryKeyColumns(db, name)) }
+    }
+
+    fun isBackedUp(table: String): Boolean = table !in EXCLUDED_TABLES && !table.startsWith("sqlite_")
+
+    /** Crea los triggers que falten. Idempotente: pensado para `RoomDatabase.Callback.onOpen`. */
+    fun install(db: SupportSQLiteDatabase) {
+        val existingTriggers = mutableSetOf<String>()
+        db.query("SELECT name FROM sqlite_master WHERE type = 'trigger' AND name LIKE '${CHANGES_TABLE}_%'").use { cursor ->
+            while (cursor.moveToNext()) existingTriggers += cursor.getString(0)
+        }
+        val missing = trackedTables(db).filterNot { table -> triggerNames(table.name).all { it in existingTriggers } }
+        if (missing.isEmpty()) return
+
+        db.beginTransaction()
+        try {
+            missing.forEach { table ->
+                triggerNames(table.name).forEach { db.execSQL("DROP TRIGGER IF EXISTS `$it`") }
+                createTriggers(db, table)
+                markAllRows(db, table)
+            }
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
+        }
+    }
+
+    /** Valor de la columna [index] con su tipo SQLite (BLOB como `ByteArray`). */
+    fun Cursor.sqliteValue(index: Int): Any? = when (getType(index)) {
+        Cursor.FIELD_TYPE_INTEGER -> getLong(index)
+        Cursor.FIELD_TYPE_FLOAT -> getDouble(index)
+        Cursor.FIELD_TYPE_STRING -> getString(index)
+        Cursor.FIELD_TYPE_BLOB -> getBlob(index)
+        else -> null
+    }
+
+    private fun triggerNames(table: String): List<String> =
+        listOf("insert", "update", "delete").map { "${CHANGES_TABLE}_${table}_$it" }
+
+    private fun createTriggers(db: SupportSQLiteDatabase, table: TrackedTable) {
+        val (insertTrigger, updateTrigger, deleteTrigger) = triggerNames(table.name)
+        db.execSQL(
+            "CREATE TRIGGER IF NOT EXISTS `$insertTrigger` AFTER INSERT ON `${table.name}` " +
+                "BEGIN ${recordChange(table, "NEW")} END"
+        )
+        // Si el cambio tocó la PK, el documento viejo también tiene que enterarse (queda como baja).
+        db.execSQL(
+            "CREATE TRIGGER IF NOT EXISTS `$updateTrigger` AFTER UPDATE ON `${table.name}` " +
+                "BEGIN ${recordChange(table, "OLD")} ${recordChange(table, "NEW")} END"
+        )
+        db.execSQL(
+            "CREATE TRIGGER IF NOT EXISTS `$deleteTrigger` AFTER DELETE ON `${table.name}` " +
+                "BEGIN ${recordChange(table, "OLD")} END"
+        )
+    }
+
+    /**
+     * Borrar y volver a insertar (en lugar de `INSERT OR REPLACE`) evita que un
+     * `INSERT OR IGNORE` externo cambie el conflicto del trigger y deje un `seq` viejo.
+     */
+    private fun recordChange(table: TrackedTable, alias: String): String {
+        val name = table.name.replace("'", "''")
+        val key = table.keyExpression(alias)
+        return "DELETE FROM `$CHANGES_TABLE` WHERE `tableName` = '$name' AND `rowKey` = $key; " +
+            "INSERT INTO `$CHANGES_TABLE` (`tableName`, `rowKey`, `changedAt`) VALUES ('$name', $key, $NOW_MILLIS_SQL);"
+    }
+
+    private fun markAllRows(db: SupportSQLiteDatabase, table: TrackedTable) {
+        db.execSQL("DELETE FROM `$CHANGES_TABLE` WHERE `tableName` = ?", arrayOf(table.name))
+        db.execSQL(
+            "INSERT INTO `$CHANGES_TABLE` (`tableName`, `rowKey`, `changedAt`) " +
+                "SELECT ?, ${table.keyExpression()}, $NOW_MILLIS_SQL FROM `${table.name}`",
+            arrayOf(table.name)
+        )
+    }
+
+    private fun primaryKeyColumns(db: SupportSQLiteDatabase, table: String): List<String> {
+        val columns = mutableListOf<Pair<Int, String>>()
+        db.query("PRAGMA table_info(`$table`)").use { cursor ->
+            val nameIndex = cursor.getColumnIndex("name")
+            val pkIndex = cursor.getColumnIndex("pk")
+            while (cursor.moveToNext()) {
+                val position = cursor.getInt(pkIndex)
+                if (position > 0) columns += position to cursor.getString(nameIndex)
+            }
+        }
+        return columns.sortedBy { it.first }.map { it.second }
+    }
+}
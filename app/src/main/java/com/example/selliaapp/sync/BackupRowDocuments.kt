@@ -0,0 +1,45 @@
+package com.example.selliaapp.sync
+
+import com.google.firebase.firestore.Blob
+import com.google.firebase.firestore.CollectionReference
+import com.google.firebase.firestore.DocumentReference
+import com.google.firebase.firestore.FirebaseFirestore
+
+/**
+ * Formato de las filas respaldadas en `tenants/{tenantId}/sync_data/{tabla}/rows/{clave}`.
+ *
+ * Cada documento es la fila completa más los campos `__*`; una baja deja un documento con
+ * `__deleted = true` para que la restauración la aplique. Todos llevan el timestamp de
+ * servidor de [com.example.selliaapp.data.remote.FirestoreDeltaReader] para poder leer
+ * solo lo respaldado después de un snapshot.
+ */
+internal object BackupRowDocuments {
+    const val FIELD_TABLE = "__table"
+    const val FIELD_ROW_ID = "__rowId"
+    const val FIELD_ROW_KEY = "__rowKey"
+    const val FIELD_DELETED = "__deleted"
+
+    fun rows(firestore: FirebaseFirestore, tenantId: String, table: String): CollectionReference =
+        firestore.collection("tenants")
+            .document(tenantId)
+            .collection("sync_data")
+            .document(table)
+            .collection("rows")
+
+    /** La clave de una PK compuesta o de texto puede traer `/`, que Firestore toma como ruta. */
+    fun document(firestore: FirebaseFirestore, tenantId: String, table: String, rowKey: String): DocumentReference =
+        rows(firestore, tenantId, table).document(rowKey.replace("/", "%2F"))
+
+    fun isMetadataField(field: String): Boolean = field.startsWith("__")
+
+    /** BLOB como [Blob] nativo de Firestore (antes se subía en Base64). */
+    fun toFirestoreValue(value: Any?): Any? = if (value is ByteArray) Blob.fromBytes(value) else value
+
+    /** Inverso de [toFirestoreValue], con los tipos que acepta [ColumnarSnapshotWriter]. */
+    fun fromFirestoreValue(value: Any?): Any? = when (value) {
+        is Blob -> value.toBytes()
+        is Boolean -> if (value) 1L else 0L
+        is Int -> value.toLong()
+        else -> value
+    }
+}
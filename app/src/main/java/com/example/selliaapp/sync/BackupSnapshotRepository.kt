@@ -0,0 +1,340 @@
+package com.example.selliaapp.sync
+
+import android.content.ContentValues
+import android.content.Context
+import android.database.sqlite.SQLiteDatabase
+import android.net.Uri
+import android.util.Log
+import androidx.room.withTransaction
+import androidx.sqlite.db.SupportSQLiteDatabase
+import com.example.selliaapp.auth.FirebaseSessionCoordinator
+import com.example.selliaapp.auth.TenantProvider
+import com.example.selliaapp.data.AppDatabase
+import com.example.selliaapp.data.dao.BackupChangeDao
+import com.example.selliaapp.data.dao.CashMovementDao
+import com.example.selliaapp.data.dao.ProductPushMarkDao
+import com.example.selliaapp.data.dao.SalesRollupDao
+import com.example.selliaapp.data.remote.FirestoreDeltaReader
+import com.example.selliaapp.di.AppModule.IoDispatcher
+import com.example.selliaapp.repository.ProductRepository
+import com.example.selliaapp.sync.BackupChangeTracker.sqliteValue
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.FieldValue
+import com.google.firebase.firestore.FirebaseFirestore
+import com.google.firebase.firestore.Query
+import com.google.firebase.firestore.SetOptions
+import com.google.firebase.firestore.Source
+import com.google.firebase.storage.FirebaseStorage
+import com.google.firebase.storage.StorageMetadata
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.tasks.await
+import kotlinx.coroutines.withContext
+import java.io.File
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Respaldo completo en Storage y restauración de la DB local.
+ *
+ * - [uploadSnapshot] vuelca todas las tablas respaldadas a un archivo columnar comprimido
+ *   ([ColumnarSnapshotWriter]) y lo sube a `tenants/{tenantId}/backups/`. El documento
+ *   `backups/{id}` guarda `startedAt` (timestamp de servidor tomado antes de leer la DB).
+ * - [restoreLatest] reconstruye la DB con el último snapshot listo más las filas de
+ *   `sync_data` respaldadas desde su `startedAt`. Sin snapshot, usa todas esas filas.
+ *
+ * Lo que cambie mientras se arma el snapshot queda anotado en `backup_changes` y sube en el
+ * próximo respaldo incremental con un timestamp posterior, así que snapshot + deltas nunca
+ * pierde cambios aunque la lectura no sea una foto transaccional.
+ */
+@Singleton
+class BackupSnapshotRepository @Inject constructor(
+    @ApplicationContext private val context: Context,
+    private val db: AppDatabase,
+    private val backupChangeDao: BackupChangeDao,
+    private val salesRollupDao: SalesRollupDao,
+    private val cashMovementDao: CashMovementDao,
+    private val productPushMarkDao: ProductPushMarkDao,
+    private val productRepository: ProductRepository,
+    private val firestore: FirebaseFirestore,
+    private val storage: FirebaseStorage,
+    private val tenantProvider: TenantProvider,
+    private val sessionCoordinator: FirebaseSessionCoordinator,
+    @IoDispatcher private val io: CoroutineDispatcher
+) {
+
+    data class SnapshotInfo(
+        val id: String,
+        val storagePath: String,
+        val tables: Int,
+        val rows: Long,
+        val sizeBytes: Long
+    )
+
+    data class RestoreReport(
+        /** null si no había snapshot y se restauró solo desde `sync_data`. */
+        val snapshotId: String?,
+        val snapshotRows: Long,
+        val deltaRows: Long,
+        val deletedRows: Long
+    )
+
+    suspend fun uploadSnapshot(): SnapshotInfo = withContext(io) {
+        sessionCoordinator.runWithFreshSession(notifyPermissionDenied = false) {
+            val tenantId = tenantProvider.requireTenantId()
+            val schemaVersion = db.openHelper.readableDatabase.version
+            val backupDoc = backups(tenantId).document()
+            backupDoc.set(
+                mapOf(
+                    FIELD_STATUS to STATUS_PENDING,
+                    FIELD_STARTED_AT to FieldValue.serverTimestamp(),
+                    FIELD_SCHEMA_VERSION to schemaVersion
+                )
+            ).await()
+
+            val file = File(context.cacheDir, backupDoc.id + ColumnarSnapshot.FILE_EXTENSION)
+            try {
+                var tables = 0
+                val rows = ColumnarSnapshotWriter(file.outputStream()).use { writer ->
+                    val readableDb = db.openHelper.readableDatabase
+                    BackupChangeTracker.trackedTables(readableDb).forEach { table ->
+                        writeTable(readableDb, table.name, writer)
+                        tables++
+                    }
+                    writer.rowsWritten
+                }
+                val reference = storage.reference
+                    .child("tenants/$tenantId/backups/${backupDoc.id}${ColumnarSnapshot.FILE_EXTENSION}")
+                val metadata = StorageMetadata.Builder()
+                    .setContentType(ColumnarSnapshot.MIME_TYPE)
+                    .build()
+                reference.putFile(Uri.fromFile(file), metadata).await()
+
+                val info = SnapshotInfo(backupDoc.id, reference.path, tables, rows, file.length())
+                backupDoc.set(
+                    mapOf(
+                        FIELD_STATUS to STATUS_READY,
+                        FIELD_PATH to info.storagePath,
+                        FIELD_TABLES to info.tables,
+                        FIELD_ROWS to info.rows,
+                        FIELD_SIZE_BYTES to info.sizeBytes,
+                        FIELD_FINISHED_AT to FieldValue.serverTimestamp()
+                    ),
+                    SetOptions.merge()
+                ).await()
+                Log.i(TAG, "Snapshot ${info.id}: ${info.rows} filas de ${info.tables} tablas, ${info.sizeBytes} bytes")
+                info
+            } finally {
+                file.delete()
+            }
+        }
+    }
+
+    /**
+     * Reemplaza el contenido de todas las tablas respaldadas. La descarga completa ocurre
+     * antes de abrir la transacción; si algo falla, la DB queda como estaba.
+     */
+    suspend fun restoreLatest(): RestoreReport = withContext(io) {
+        sessionCoordinator.runWithFreshSession(notifyPermissionDenied = false) {
+            val tenantId = tenantProvider.requireTenantId()
+            val localVersion = db.openHelper.readableDatabase.version
+            val snapshot = latestReadySnapshot(tenantId)
+            snapshot?.getLong(FIELD_SCHEMA_VERSION)?.let { version ->
+                check(version <= localVersion) {
+                    "El respaldo es de una versión más nueva de la app (DB $version > $localVersion)"
+                }
+            }
+
+            val snapshotFile = File(context.cacheDir, "restore" + ColumnarSnapshot.FILE_EXTENSION)
+            val deltasFile = File(context.cacheDir, "restore_deltas" + ColumnarSnapshot.FILE_EXTENSION)
+            try {
+                snapshot?.let { doc ->
+                    val path = doc.getString(FIELD_PATH) ?: error("Snapshot ${doc.id} sin ruta en Storage")
+                    storage.reference.child(path).getFile(snapshotFile).await()
+                }
+                val since = snapshot?.getTimestamp(FIELD_STARTED_AT)?.let { FirestoreDeltaReader.Cursor(it, "") }
+                val tableNames = BackupChangeTracker.trackedTables(db.openHelper.readableDatabase).map { it.name }
+                stageDeltas(tenantId, tableNames, since, deltasFile)
+
+                val applier = db.withTransaction {
+                    val writableDb = db.openHelper.writableDatabase
+                    // Las FK se validan al commit: padres e hijos llegan en cualquier orden.
+                    writableDb.execSQL("PRAGMA defer_foreign_keys = ON")
+                    val tables = BackupChangeTracker.trackedTables(writableDb)
+                    tables.forEach { writableDb.execSQL("DELETE FROM `${it.name}`") }
+                    val applier = RestoreApplier(writableDb, tables.associateBy { it.name })
+                    if (snapshot != null) readSnapshot(snapshotFile, applier)
+                    readSnapshot(deltasFile, applier)
+                    // La DB quedó igual al respaldo: nada pendiente de subir.
+                    backupChangeDao.clearAll()
+                    // Las marcas de push describen el catálogo anterior, no el restaurado.
+                    productPushMarkDao.clearAll()
+                    salesRollupDao.rebuild()
+                    cashMovementDao.rebuildTotals()
+                    applier
+                }
+                productRepository.invalidateCatalogCache()
+                RestoreReport(snapshot?.id, applier.snapshotRows, applier.deltaRows, applier.deletedRows)
+                    .also { Log.i(TAG, "Restauración completada: $it") }
+            } finally {
+                snapshotFile.delete()
+                deltasFile.delete()
+            }
+        }
+    }
+
+    private fun backups(tenantId: String) = firestore.collection("tenants")
+        .document(tenantId)
+        .collection("backups")
+
+    /** Sin índice compuesto: se traen los últimos y se filtra el estado en el cliente. */
+    private suspend fun latestReadySnapshot(tenantId: String): DocumentSnapshot? =
+        backups(tenantId)
+            .orderBy(FIELD_STARTED_AT, Query.Direction.DESCENDING)
+            .limit(LATEST_SNAPSHOT_CANDIDATES)
+            .get(Source.SERVER)
+            .await()
+            .documents
+            .firstOrNull { it.getString(FIELD_STATUS) == STATUS_READY }
+
+    private fun writeTable(readableDb: SupportSQLiteDatabase, table: String, writer: ColumnarSnapshotWriter) {
+        readableDb.query("SELECT * FROM `$table`").use { cursor ->
+            writer.beginTable(table, cursor.columnNames.toList())
+            while (cursor.moveToNext()) {
+                writer.writeRow(Array(cursor.columnCount) { cursor.sqliteValue(it) })
+            }
+            writer.endTable()
+        }
+    }
+
+    /**
+     * Baja a [file] las filas de `sync_data` respaldadas desde [since], en el mismo formato
+     * columnar con `__rowKey` y `__deleted` adelante. Cada documento aparece una sola vez
+     * (con su último estado), así que el orden de aplicación entre páginas no importa.
+     */
+    private suspend fun stageDeltas(
+        tenantId: String,
+        tables: List<String>,
+        since: FirestoreDeltaReader.Cursor?,
+        file: File
+    ) {
+        ColumnarSnapshotWriter(file.outputStream()).use { writer ->
+            tables.forEach { table ->
+                FirestoreDeltaReader.readChangedSince(BackupRowDocuments.rows(firestore, tenantId, table), since) { docs, _ ->
+                    docs.groupBy { doc -> doc.data.orEmpty().keys.filterNot(::isNonColumnField).sorted() }
+                        .forEach { (columns, group) ->
+                            writer.beginTable(table, DELTA_COLUMNS + columns)
+                            group.forEach { doc ->
+                                val data = doc.data.orEmpty()
+                                val row = arrayOfNulls<Any?>(DELTA_COLUMNS.size + columns.size)
+                                row[0] = doc.getString(BackupRowDocuments.FIELD_ROW_KEY) ?: doc.id
+                                row[1] = if (doc.getBoolean(BackupRowDocuments.FIELD_DELETED) == true) 1L else 0L
+                                columns.forEachIndexed { index, column ->
+                                    row[DELTA_COLUMNS.size + index] = BackupRowDocuments.fromFirestoreValue(data[column])
+                                }
+                                writer.writeRow(row)
+                            }
+                            writer.endTable()
+                        }
+                }
+            }
+        }
+    }
+
+    private fun isNonColumnField(field: String): Boolean =
+        BackupRowDocuments.isMetadataField(field) || field == FirestoreDeltaReader.SERVER_UPDATED_AT
+
+    private fun readSnapshot(file: File, visitor: ColumnarSnapshotReader.Visitor) {
+        ColumnarSnapshotReader(file.inputStream()).use { it.read(visitor) }
+    }
+
+    /**
+     * Aplica snapshot y deltas sobre la DB abierta en transacción. Ignora tablas y columnas
+     * que ya no existen localmente (respaldos de una versión anterior del esquema).
+     */
+    private class RestoreApplier(
+        private val db: SupportSQLiteDatabase,
+        private val tables: Map<String, BackupChangeTracker.TrackedTable>
+    ) : ColumnarSnapshotReader.Visitor {
+        var snapshotRows = 0L
+        var deltaRows = 0L
+        var deletedRows = 0L
+
+        private var table: BackupChangeTracker.TrackedTable? = null
+        private var columns: List<String> = emptyList()
+        private var localColumns: Set<String> = emptySet()
+        private var isDelta = false
+
+        override fun beginTable(name: String, columns: List<String>) {
+            table = tables[name]
+            this.columns = columns
+            isDelta = columns.take(DELTA_COLUMNS.size) == DELTA_COLUMNS
+            localColumns = if (table == null) emptySet() else columnsOf(name)
+        }
+
+        override fun row(values: Array<Any?>) {
+            val target = table ?: return
+            if (!isDelta) {
+                db.insert(target.name, SQLiteDatabase.CONFLICT_REPLACE, contentValues(values, 0))
+                snapshotRows++
+                return
+            }
+            val rowKey = values[0] as String
+            val where = target.keyFilter(1)
+            if (values[1] == 1L) {
+                deletedRows += db.delete(target.name, where, arrayOf(rowKey))
+                return
+            }
+            val content = contentValues(values, DELTA_COLUMNS.size)
+            // UPDATE antes que REPLACE: reemplazar borra la fila y dispararía los ON DELETE CASCADE.
+            val updated = db.update(target.name, SQLiteDatabase.CONFLICT_ABORT, content, where, arrayOf(rowKey))
+            if (updated == 0) db.insert(target.name, SQLiteDatabase.CONFLICT_ABORT, content)
+            deltaRows++
+        }
+
+        override fun endTable(name: String) {
+            table = null
+        }
+
+        private fun contentValues(values: Array<Any?>, from: Int) = ContentValues().apply {
+            for (index in from until values.size) {
+                val column = columns[index]
+                if (column !in localColumns) continue
+                when (val value = values[index]) {
+                    null -> putNull(column)
+                    is Long -> put(column, value)
+                    is Double -> put(column, value)
+                    is String -> put(column, value)
+                    is ByteArray -> put(column, value)
+                }
+            }
+        }
+
+        private fun columnsOf(table: String): Set<String> {
+            val names = mutableSetOf<String>()
+            db.query("PRAGMA table_info(`$table`)").use { cursor ->
+                val nameIndex = cursor.getColumnIndex("name")
+                while (cursor.moveToNext()) names += cursor.getString(nameIndex)
+            }
+            return names
+        }
+    }
+
+    private companion object {
+        const val TAG = "BackupSnapshot"
+        const val LATEST_SNAPSHOT_CANDIDATES = 10L
+
+        const val FIELD_STATUS = "status"
+        const val FIELD_STARTED_AT = "startedAt"
+        const val FIELD_FINISHED_AT = "finishedAt"
+        const val FIELD_SCHEMA_VERSION = "schemaVersion"
+        const val FIELD_PATH = "path"
+        const val FIELD_TABLES = "tables"
+        const val FIELD_ROWS = "rows"
+        const val FIELD_SIZE_BYTES = "sizeBytes"
+        const val STATUS_PENDING = "pending"
+        const val STATUS_READY = "ready"
+
+        val DELTA_COLUMNS = listOf(BackupRowDocuments.FIELD_ROW_KEY, BackupRowDocuments.FIELD_DELETED)
+    }
+}
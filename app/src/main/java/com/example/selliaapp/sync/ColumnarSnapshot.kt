@@ -0,0 +1,195 @@
+package com.example.selliaapp.sync
+
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Formato del snapshot completo que se sube a Storage: gzip de tablas partidas en grupos
+ * de filas, y dentro de cada grupo los valores van por columna (todos los `id`, después
+ * todos los `name`, ...). Valores parecidos quedan juntos y gzip comprime bastante más que
+ * con la misma data fila por fila; los BLOB van crudos, sin Base64.
+ *
+ * ```
+ * MAGIC, VERSION
+ * (TABLE nombre nColumnas columnas... (GROUP nFilas valores-por-columna...)* END_TABLE)*
+ * END
+ * ```
+ */
+internal object ColumnarSnapshot {
+    const val MAGIC = "SELLIA-SNAPSHOT"
+    const val VERSION = 1
+    const val DEFAULT_ROW_GROUP = 4_096
+
+    const val FILE_EXTENSION = ".snapshot.gz"
+    const val MIME_TYPE = "application/gzip"
+
+    internal const val BLOCK_END: Byte = 0
+    internal const val BLOCK_TABLE: Byte = 1
+    internal const val BLOCK_GROUP: Byte = 2
+    internal const val BLOCK_END_TABLE: Byte = 3
+
+    internal const val TYPE_NULL: Byte = 0
+    internal const val TYPE_LONG: Byte = 1
+    internal const val TYPE_DOUBLE: Byte = 2
+    internal const val TYPE_STRING: Byte = 3
+    internal const val TYPE_BLOB: Byte = 4
+}
+
+/**
+ * Escribe un snapshot tabla por tabla. Solo retiene en memoria el grupo de filas en curso
+ * ([rowGroupSize] filas). [close] cierra también [output].
+ */
+internal class ColumnarSnapshotWriter(
+    output: OutputStream,
+    private val rowGroupSize: Int = ColumnarSnapshot.DEFAULT_ROW_GROUP
+) : Closeable {
+
+    private val out = DataOutputStream(BufferedOutputStream(GZIPOutputStream(output, BUFFER_SIZE), BUFFER_SIZE))
+    private var columns: Int = -1
+    private val pending = ArrayList<Array<Any?>>(rowGroupSize)
+
+    var rowsWritten: Long = 0
+        private set
+
+    init {
+        out.writeUTF(ColumnarSnapshot.MAGIC)
+        out.writeInt(ColumnarSnapshot.VERSION)
+    }
+
+    fun beginTable(name: String, columnNames: List<String>) {
+        check(columns < 0) { "La tabla anterior no se cerró" }
+        out.writeByte(ColumnarSnapshot.BLOCK_TABLE.toInt())
+        out.writeUTF(name)
+        out.writeInt(columnNames.size)
+        columnNames.forEach(out::writeUTF)
+        columns = columnNames.size
+    }
+
+    /** [values] admite `null`, `Long`/`Int`, `Double`/`Float`, `String` y `ByteArray`. */
+    fun writeRow(values: Array<Any?>) {
+        check(columns >= 0) { "writeRow fuera de una tabla" }
+        require(values.size == columns) { "Se esperaban $columns valores y llegaron ${values.size}" }
+        pending += values
+        rowsWritten++
+        if (pending.size >= rowGroupSize) flushGroup()
+    }
+
+    fun endTable() {
+        check(columns >= 0) { "endTable sin beginTable" }
+        flushGroup()
+        out.writeByte(ColumnarSnapshot.BLOCK_END_TABLE.toInt())
+        columns = -1
+    }
+
+    override fun close() {
+        if (columns >= 0) endTable()
+        out.writeByte(ColumnarSnapshot.BLOCK_END.toInt())
+        out.close()
+    }
+
+    private fun flushGroup() {
+        if (pending.isEmpty()) return
+        out.writeByte(ColumnarSnapshot.BLOCK_GROUP.toInt())
+        out.writeInt(pending.size)
+        for (column in 0 until columns) {
+            pending.forEach { row -> writeValue(row[column]) }
+        }
+        pending.clear()
+    }
+
+    private fun writeValue(value: Any?) {
+        when (value) {
+            null -> out.writeByte(ColumnarSnapshot.TYPE_NULL.toInt())
+            is Long, is Int, is Short, is Byte -> {
+                out.writeByte(ColumnarSnapshot.TYPE_LONG.toInt())
+                out.writeLong((value as Number).toLong())
+            }
+            is Double, is Float -> {
+                out.writeByte(ColumnarSnapshot.TYPE_DOUBLE.toInt())
+                out.writeDouble((value as Number).toDouble())
+            }
+            is String -> {
+                // writeUTF corta en 64 KiB: los textos van como bytes con largo explícito.
+                val bytes = value.toByteArray(Charsets.UTF_8)
+                out.writeByte(ColumnarSnapshot.TYPE_STRING.toInt())
+                out.writeInt(bytes.size)
+                out.write(bytes)
+            }
+            is ByteArray -> {
+                out.writeByte(ColumnarSnapshot.TYPE_BLOB.toInt())
+                out.writeInt(value.size)
+                out.write(value)
+            }
+            else -> throw IllegalArgumentException("Tipo no soportado en snapshot: ${value::class.java.name}")
+        }
+    }
+
+    private companion object {
+        const val BUFFER_SIZE = 64 * 1024
+    }
+}
+
+/** Recorre un snapshot sin cargarlo entero: se entrega de a una fila por vez. */
+internal class ColumnarSnapshotReader(input: InputStream) : Closeable {
+
+    interface Visitor {
+        fun beginTable(name: String, columns: List<String>)
+        fun row(values: Array<Any?>)
+        fun endTable(name: String)
+    }
+
+    private val input = DataInputStream(BufferedInputStream(GZIPInputStream(input)))
+
+    fun read(visitor: Visitor) {
+        if (input.readUTF() != ColumnarSnapshot.MAGIC) throw IOException("No es un snapshot de Sellia")
+        val version = input.readInt()
+        if (version > ColumnarSnapshot.VERSION) throw IOException("Versión de snapshot no soportada: $version")
+
+        while (true) {
+            when (val block = input.readByte()) {
+                ColumnarSnapshot.BLOCK_END -> return
+                ColumnarSnapshot.BLOCK_TABLE -> readTable(visitor)
+                else -> throw IOException("Bloque inesperado en snapshot: $block")
+            }
+        }
+    }
+
+    override fun close() = input.close()
+
+    private fun readTable(visitor: Visitor) {
+        val name = input.readUTF()
+        val columns = List(input.readInt()) { input.readUTF() }
+        visitor.beginTable(name, columns)
+        while (true) {
+            when (val block = input.readByte()) {
+                ColumnarSnapshot.BLOCK_END_TABLE -> break
+                ColumnarSnapshot.BLOCK_GROUP -> {
+                    val rows = Array(input.readInt()) { arrayOfNulls<Any?>(columns.size) }
+                    for (column in columns.indices) {
+                        rows.forEach { row -> row[column] = readValue() }
+                    }
+                    rows.forEach(visitor::row)
+                }
+                else -> throw IOException("Bloque inesperado en la tabla $name: $block")
+            }
+        }
+        visitor.endTable(name)
+    }
+
+    private fun readValue(): Any? = when (val type = input.readByte()) {
+        ColumnarSnapshot.TYPE_NULL -> null
+        ColumnarSnapshot.TYPE_LONG -> input.readLong()
+        ColumnarSnapshot.TYPE_DOUBLE -> input.readDouble()
+        ColumnarSnapshot.TYPE_STRING -> String(ByteArray(input.readInt()).also(input::readFully), Charsets.UTF_8)
+        ColumnarSnapshot.TYPE_BLOB -> ByteArray(input.readInt()).also(input::readFully)
+        else -> throw IOException("Tipo de valor desconocido en snapshot: $type")
+    }
+}
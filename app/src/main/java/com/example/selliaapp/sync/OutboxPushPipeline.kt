@@ -0,0 +1,100 @@
+package com.example.selliaapp.sync
+
+import com.example.selliaapp.di.IoDispatcher
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.launch
+import javax.inject.Inject
+import javax.inject.Provider
+import javax.inject.Singleton
+
+/**
+ * Pipeline de subida en background que drena las filas de `sync_outbox`.
+ *
+ * El checkout solo persiste en Room (venta + outbox) y llama a [requestPush]; la subida
+ * a Firestore corre fuera del camino crítico. Las solicitudes se coalescen: si llegan
+ * varias ventas mientras hay un push en curso, se hace un único drenado adicional.
+ * Si todos los reintentos fallan, las filas quedan en el outbox (con lastError) y las
+ * levanta el [SyncWorker] periódico.
+ */
+@Singleton
+class OutboxPushPipeline internal constructor(
+    private val pushPending: suspend () -> Unit,
+    private val scope: CoroutineScope,
+    private val retryDelaysMs: List<Long> = DEFAULT_RETRY_DELAYS_MS
+) {
+
+    @Inject
+    constructor(
+        syncRepository: Provider<SyncRepository>,
+        @IoDispatcher io: CoroutineDispatcher
+    ) : this(
+        pushPending = { syncRepository.get().pushPending() },
+        scope = CoroutineScope(SupervisorJob() + io)
+    )
+
+    data class Stats(
+        val requested: Long = 0,
+        val drained: Long = 0,
+        val failedAttempts: Long = 0,
+        val lastError: String? = null,
+        val lastSuccessAtMillis: Long? = null
+    )
+
+    private val requests = Channel<Unit>(Channel.CONFLATED)
+    private val _stats = MutableStateFlow(Stats())
+    val stats: StateFlow<Stats> = _stats.asStateFlow()
+
+    init {
+        scope.launch {
+            for (signal in requests) {
+                drain()
+            }
+        }
+    }
+
+    /** No suspende ni toca la red: solo agenda un drenado del outbox. */
+    fun requestPush() {
+        _stats.update { it.copy(requested = it.requested + 1) }
+        requests.trySend(Unit)
+    }
+
+    private suspend fun drain() {
+        for (attempt in 0..retryDelaysMs.size) {
+            try {
+                pushPending()
+                _stats.update {
+                    it.copy(
+                        drained = it.drained + 1,
+                        lastError = null,
+                        lastSuccessAtMillis = System.currentTimeMillis()
+                    )
+                }
+                return
+            } catch (c: CancellationException) {
+                throw c
+            } catch (t: Throwable) {
+                _stats.update {
+                    it.copy(
+                        failedAttempts = it.failedAttempts + 1,
+                        lastError = t.message?.take(512) ?: t::class.java.simpleName
+                    )
+                }
+                val backoff = retryDelaysMs.getOrNull(attempt) ?: return
+                delay(backoff)
+            }
+        }
+    }
+
+    companion object {
+        private val DEFAULT_RETRY_DELAYS_MS = listOf(2_000L, 10_000L, 30_000L)
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.selliaapp.sync
+
+import com.example.selliaapp.data.dao.SQL_IN_CHUNK
+import com.example.selliaapp.data.dao.SyncOutboxDao
+import com.example.selliaapp.data.local.entity.SyncOutboxEntity
+
+/**
+ * Filas de `sync_outbox` tomadas al empezar un push.
+ *
+ * Se confirman por id de fila y no por (entityType, entityId): si la entidad vuelve a
+ * cambiar mientras se sube (otra venta del mismo producto), el upsert REPLACE del outbox
+ * deja una fila nueva con otro id que sobrevive a la confirmación y sale en el próximo
+ * drenado. Tomar el snapshot antes de leer las entidades: así lo que se sube es igual o
+ * más nuevo que lo que se confirma.
+ */
+class OutboxSnapshot private constructor(
+    private val dao: SyncOutboxDao,
+    val rows: List<SyncOutboxEntity>
+) {
+
+    val entityIds: List<Long> get() = rows.map { it.entityId }
+
+    fun isEmpty(): Boolean = rows.isEmpty()
+
+    /** Borra las filas tomadas para [entityIds]; las que no estaban en el snapshot se ignoran. */
+    suspend fun acknowledge(entityIds: Collection<Long>) {
+        rowIdsOf(entityIds).chunked(SQL_IN_CHUNK).forEach { chunk -> dao.deleteByIds(chunk) }
+    }
+
+    suspend fun acknowledgeAll() = acknowledge(entityIds)
+
+    suspend fun markAttempt(entityIds: Collection<Long>, timestamp: Long, error: String?) {
+        rowIdsOf(entityIds).chunked(SQL_IN_CHUNK).forEach { chunk ->
+            dao.markAttemptByIds(chunk, timestamp, error)
+        }
+    }
+
+    suspend fun markAttemptAll(timestamp: Long, error: String?) = markAttempt(entityIds, timestamp, error)
+
+    private fun rowIdsOf(entityIds: Collection<Long>): List<Long> {
+        if (entityIds.isEmpty()) return emptyList()
+        val wanted = entityIds.toSet()
+        return rows.filter { it.entityId in wanted }.map { it.id }
+    }
+
+    companion object {
+        suspend fun take(dao: SyncOutboxDao, entityType: String): OutboxSnapshot =
+            OutboxSnapshot(dao, dao.getByType(entityType))
+
+        suspend fun take(dao: SyncOutboxDao, entityType: String, entityIds: Collection<Long>): OutboxSnapshot =
+            OutboxSnapshot(
+                dao,
+                entityIds.distinct().chunked(SQL_IN_CHUNK).flatMap { chunk -> dao.getByTypeAndIds(entityType, chunk) }
+            )
+    }
+}
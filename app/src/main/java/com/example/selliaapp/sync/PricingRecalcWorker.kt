@@ -18,8 +18,18 @@ class PricingRecalcWorker @AssistedInject constructor(
 
     override suspend fun doWork(): Result {
         return try {
-            val updated = productRepository.recalculateAutoPricingForAll()
-            Log.i(TAG, "Recalculo de pricing completado. Productos actualizados: $updated")
+            val report = productRepository.recalculateAutoPricingIfConfigChanged()
+            if (report.skipped) {
+                Log.i(TAG, "Configuración de pricing sin cambios; recalculo omitido (${report.skippedRuns} omitidos)")
+            } else {
+                Log.i(
+                    TAG,
+                    "Recalculo de pricing completado. Revisados: ${report.scanned}, " +
+                        "actualizados: ${report.updated}, " +
+                        "${"%.0f".format(report.productsPerSecond)} productos/s, " +
+                        "omitidos previos: ${report.skippedRuns}"
+                )
+            }
             Result.success()
         } catch (t: Throwable) {
             Log.e(TAG, "Error al recalcular pricing", t)
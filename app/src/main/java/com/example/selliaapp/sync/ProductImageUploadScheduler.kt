@@ -0,0 +1,33 @@
+package com.example.selliaapp.sync
+
+import android.content.Context
+import androidx.work.BackoffPolicy
+import androidx.work.Constraints
+import androidx.work.ExistingWorkPolicy
+import androidx.work.NetworkType
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
+import java.util.concurrent.TimeUnit
+
+object ProductImageUploadScheduler {
+    private const val BACKOFF_SECONDS = 30L
+
+    /** Programa el vaciado de la cola para cuando haya red. Si ya está programado, lo deja. */
+    fun enqueueNow(context: Context) {
+        val constraints = Constraints.Builder()
+            .setRequiredNetworkType(NetworkType.CONNECTED)
+            .build()
+
+        val request = OneTimeWorkRequestBuilder<ProductImageUploadWorker>()
+            .setConstraints(constraints)
+            .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_SECONDS, TimeUnit.SECONDS)
+            .addTag(ProductImageUploadWorker.TAG)
+            .build()
+
+        WorkManager.getInstance(context).enqueueUniqueWork(
+            ProductImageUploadWorker.UNIQUE_NAME,
+            ExistingWorkPolicy.KEEP,
+            request
+        )
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.selliaapp.sync
+
+import android.content.Context
+import android.util.Log
+import androidx.hilt.work.HiltWorker
+import androidx.work.CoroutineWorker
+import androidx.work.WorkerParameters
+import com.example.selliaapp.repository.ProductImageUploadQueue
+import dagger.assisted.Assisted
+import dagger.assisted.AssistedInject
+
+/**
+ * Vacía la cola de fotos de producto. Mientras queden subidas esperando un reintento
+ * devuelve `retry`, así WorkManager lo vuelve a correr aunque la app se haya cerrado.
+ */
+@HiltWorker
+class ProductImageUploadWorker @AssistedInject constructor(
+    @Assisted appContext: Context,
+    @Assisted params: WorkerParameters,
+    private val uploadQueue: ProductImageUploadQueue
+) : CoroutineWorker(appContext, params) {
+
+    override suspend fun doWork(): Result {
+        return try {
+            val report = uploadQueue.drain()
+            Log.i(
+                TAG,
+                "Fotos subidas: ${report.uploaded}, a reintentar: ${report.retrying}, descartadas: ${report.failed}"
+            )
+            if (report.pending) Result.retry() else Result.success()
+        } catch (t: Throwable) {
+            Log.e(TAG, "Error al subir fotos de producto", t)
+            Result.retry()
+        }
+    }
+
+    companion object {
+        const val UNIQUE_NAME = "product_image_uploads"
+        const val TAG = "ProductImageUploadWorker"
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.selliaapp.sync
+
+import android.content.Context
+import com.example.selliaapp.data.dao.ProductPushMarkDao
+import com.example.selliaapp.data.dao.SQL_IN_CHUNK
+import com.example.selliaapp.data.local.entity.ProductPushMarkEntity
+import com.example.selliaapp.data.remote.ProductFirestoreMappers
+import dagger.hilt.android.qualifiers.ApplicationContext
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicLong
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Firma de los pushes de productos: cada documento que sube este dispositivo lleva su
+ * `writerId` (uno por instalación) y un `writeStamp` creciente, y el sello queda anotado
+ * por producto en `product_push_marks`.
+ *
+ * Un documento que vuelve por el pull con nuestro `writerId` y un sello ya anotado es el
+ * eco de un push propio: Room ya tiene ese estado o uno más nuevo (una edición posterior
+ * espera en el outbox), así que se descarta en lugar de pisar lo local.
+ */
+@Singleton
+class ProductWriteStamps internal constructor(
+    private val dao: ProductPushMarkDao,
+    val writerId: String,
+    private val nowMillis: () -> Long = System::currentTimeMillis
+) {
+
+    @Inject constructor(
+        @ApplicationContext context: Context,
+        dao: ProductPushMarkDao
+    ) : this(dao, installationWriterId(context))
+
+    private val lastStamp = AtomicLong()
+
+    /**
+     * Sello para un push de [productIds]. Se anota antes de escribir: si el commit falla,
+     * la marca queda adelantada y el próximo push la reemplaza.
+     */
+    suspend fun stamp(productIds: Collection<Int>): ProductFirestoreMappers.WriteStamp {
+        val stamp = lastStamp.updateAndGet { maxOf(it + 1, nowMillis()) }
+        productIds.filter { it > 0 }.distinct()
+            .map { ProductPushMarkEntity(productId = it, writeStamp = stamp) }
+            .chunked(SQL_IN_CHUNK)
+            .forEach { dao.upsertAll(it) }
+        return ProductFirestoreMappers.WriteStamp(writerId, stamp)
+    }
+
+    /** Ids de [docs] que son eco de un push propio (sello igual o anterior a la marca). */
+    suspend fun ownEchoes(docs: List<ProductFirestoreMappers.RemoteProduct>): Set<Int> {
+        val stamped = docs
+            .filter { it.writerId == writerId && it.writeStamp != null && it.entity.id > 0 }
+            .associate { it.entity.id to it.writeStamp!! }
+        if (stamped.isEmpty()) return emptySet()
+        val marks = stamped.keys.toList().chunked(SQL_IN_CHUNK)
+            .flatMap { dao.getByIds(it) }
+            .associate { it.productId to it.writeStamp }
+        return stamped.filter { (id, stamp) -> marks[id]?.let { stamp <= it } == true }.keys
+    }
+
+    /** Olvida las marcas: después de restaurar o reemplazar el catálogo local. */
+    suspend fun clear() = dao.clearAll()
+
+    private companion object {
+        const val PREFS_NAME = "sync_writer"
+        const val KEY_WRITER_ID = "writer_id"
+
+        fun installationWriterId(context: Context): String {
+            val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+            prefs.getString(KEY_WRITER_ID, null)?.takeIf { it.isNotBlank() }?.let { return it }
+            return UUID.randomUUID().toString().also { prefs.edit().putString(KEY_WRITER_ID, it).apply() }
+        }
+    }
+}
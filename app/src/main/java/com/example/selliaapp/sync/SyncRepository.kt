@@ -7,6 +7,19 @@ package com.example.selliaapp.sync
 /* [NUEVO] Interfaz mínima para compilar. Adaptá las funciones a tu caso real. */
 interface SyncRepository {
     suspend fun pushPending()
-    suspend fun pullRemote()
-    suspend fun runSync(includeBackup: Boolean)
+
+    /**
+     * Baja los cambios remotos desde el último watermark de cada entidad.
+     * Con [fullResync] ignora los watermarks y vuelve a leer las colecciones completas.
+     */
+    suspend fun pullRemote(fullResync: Boolean = false)
+
+    /**
+     * Con [includeBackup] sube además las filas locales cambiadas desde el último respaldo;
+     * con [fullSnapshot] también deja un snapshot completo comprimido en Storage.
+     */
+    suspend fun runSync(includeBackup: Boolean, fullResync: Boolean = false, fullSnapshot: Boolean = false)
+
+    /** Reconstruye la DB local desde el último snapshot más las filas respaldadas después. */
+    suspend fun restoreFromBackup(): BackupSnapshotRepository.RestoreReport
 }
@@ -1,27 +1,31 @@
 package com.example.selliaapp.sync
 
-import android.util.Base64
 import android.util.Log
 import androidx.room.withTransaction
+import androidx.sqlite.db.SupportSQLiteDatabase
 import com.example.selliaapp.data.AppDatabase
+import com.example.selliaapp.data.dao.BackupChangeDao
 import com.example.selliaapp.data.dao.InvoiceDao
 import com.example.selliaapp.data.dao.InvoiceItemDao
 import com.example.selliaapp.data.dao.CustomerDao
 import com.example.selliaapp.data.dao.ProductDao
 import com.example.selliaapp.data.dao.ProductImageDao
+import com.example.selliaapp.data.dao.SQL_IN_CHUNK
 import com.example.selliaapp.data.dao.SyncOutboxDao
 import com.example.selliaapp.data.local.entity.SyncEntityType
 import com.example.selliaapp.auth.FirebaseSessionCoordinator
 import com.example.selliaapp.auth.TenantProvider
 import com.example.selliaapp.data.remote.InvoiceFirestoreMappers
 import com.example.selliaapp.data.remote.CustomerFirestoreMappers
+import com.example.selliaapp.data.remote.FirestoreBatchWriter
+import com.example.selliaapp.data.remote.FirestoreDeltaReader
 import com.example.selliaapp.data.remote.ProductFirestoreMappers
 import com.example.selliaapp.di.AppModule.IoDispatcher // [NUEVO] El qualifier real del ZIP está dentro de AppModule
 import com.example.selliaapp.repository.ProductRepository
 import com.example.selliaapp.repository.PricingConfigRepository
+import com.example.selliaapp.sync.BackupChangeTracker.sqliteValue
 import com.google.firebase.firestore.FirebaseFirestore
 import com.google.firebase.firestore.DocumentSnapshot
-import com.google.firebase.firestore.SetOptions
 import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.tasks.await
 import kotlinx.coroutines.withContext
@@ -40,11 +44,15 @@ class SyncRepositoryImpl @Inject constructor(
     private val invoiceItemDao: InvoiceItemDao,
     private val customerDao: CustomerDao,
     private val syncOutboxDao: SyncOutboxDao,
+    private val backupChangeDao: BackupChangeDao,
+    private val backupSnapshots: BackupSnapshotRepository,
     private val productRepository: ProductRepository,
     private val pricingConfigRepository: PricingConfigRepository,
     private val firestore: FirebaseFirestore,
     private val tenantProvider: TenantProvider,
     private val sessionCoordinator: FirebaseSessionCoordinator,
+    private val watermarks: SyncWatermarkStore,
+    private val writeStamps: ProductWriteStamps,
     /* [ANTERIOR]
     import com.example.selliaapp.di.IoDispatcher
     @IoDispatcher private val io: CoroutineDispatcher
@@ -52,6 +60,8 @@ class SyncRepositoryImpl @Inject constructor(
     @IoDispatcher private val io: CoroutineDispatcher
 ) : SyncRepository {
 
+    private val batchWriter = FirestoreBatchWriter(firestore)
+
     override suspend fun pushPending() = withContext(io) {
         sessionCoordinator.runWithFreshSession(notifyPermissionDenied = false) {
             val now = System.currentTimeMillis()
@@ -62,176 +72,171 @@ class SyncRepositoryImpl @Inject constructor(
         }
     }
 
-    override suspend fun pullRemote() = withContext(io) {
+    override suspend fun pullRemote(fullResync: Boolean) = withContext(io) {
         sessionCoordinator.runWithFreshSession(notifyPermissionDenied = false) {
-            productRepository.syncDown()
-
-        val invoicesCollection = firestore.collection("tenants")
-            .document(tenantProvider.requireTenantId())
-            .collection("invoices")
-        val snapshot = invoicesCollection.get().await()
-        if (!snapshot.isEmpty) {
-            val remoteInvoices = snapshot.documents.mapNotNull { doc ->
-                InvoiceFirestoreMappers.fromDocument(doc)
-            }
+            productRepository.syncDown(fullResync)
+            syncInvoicesFromRemote(fullResync)
+            syncCustomersFromRemote(fullResync)
+            pricingConfigRepository.pullPricingConfigFromCloud()
+        }
+    }
 
-            if (remoteInvoices.isNotEmpty()) {
-                db.withTransaction {
-                    remoteInvoices.forEach { remote ->
-                        val invoice = remote.invoice
-                        invoiceDao.insertInvoice(invoice)
-                        invoiceItemDao.deleteByInvoiceId(invoice.id)
-                        if (remote.items.isNotEmpty()) {
-                            invoiceItemDao.insertAll(remote.items)
-                        }
-                    }
-                }
+    override suspend fun runSync(includeBackup: Boolean, fullResync: Boolean, fullSnapshot: Boolean) = withContext(io) {
+        pushPending()
+        pullRemote(fullResync)
+        if (includeBackup) {
+            pushChangedRows()
+            if (fullSnapshot) {
+                backupSnapshots.uploadSnapshot()
             }
         }
+    }
 
-            syncCustomersFromRemote()
-            pricingConfigRepository.pullPricingConfigFromCloud()
+    override suspend fun restoreFromBackup(): BackupSnapshotRepository.RestoreReport =
+        backupSnapshots.restoreLatest()
+
+    private suspend fun syncInvoicesFromRemote(fullResync: Boolean) {
+        val tenantId = tenantProvider.requireTenantId()
+        val entityType = SyncEntityType.INVOICE.storageKey
+        val invoicesCollection = firestore.collection("tenants")
+            .document(tenantId)
+            .collection("invoices")
+        val since = if (fullResync) null else watermarks.get(tenantId, entityType)
+        if (since == null) {
+            val snapshot = invoicesCollection.get().await()
+            applyRemoteInvoices(snapshot.documents)
+            watermarks.save(tenantId, entityType, FirestoreDeltaReader.maxCursor(snapshot.documents))
+            return
+        }
+        FirestoreDeltaReader.readChangedSince(invoicesCollection, since) { docs, pageEnd ->
+            applyRemoteInvoices(docs)
+            watermarks.save(tenantId, entityType, pageEnd)
         }
     }
 
-    override suspend fun runSync(includeBackup: Boolean) = withContext(io) {
-        pushPending()
-        pullRemote()
-        if (includeBackup) {
-            pushAllLocalTables()
+    private suspend fun applyRemoteInvoices(docs: List<DocumentSnapshot>) {
+        val remoteInvoices = docs.mapNotNull { doc ->
+            InvoiceFirestoreMappers.fromDocument(doc)
+        }
+        if (remoteInvoices.isEmpty()) return
+
+        val invoiceIds = remoteInvoices.map { it.invoice.id }
+        val salesRollupDao = db.salesRollupDao()
+        db.withTransaction {
+            // Una factura remota puede reemplazar a la local (p. ej. anulada en otro dispositivo).
+            salesRollupDao.removeInvoices(invoiceIds)
+            remoteInvoices.forEach { remote ->
+                val invoice = remote.invoice
+                invoiceDao.insertInvoice(invoice)
+                invoiceItemDao.deleteByInvoiceId(invoice.id)
+                if (remote.items.isNotEmpty()) {
+                    invoiceItemDao.insertAll(remote.items)
+                }
+            }
+            salesRollupDao.addInvoices(invoiceIds)
         }
     }
 
 
     private suspend fun pushPendingPricingConfig(now: Long) {
-        val entityType = SyncEntityType.PRICING_CONFIG.storageKey
-        val pending = syncOutboxDao.getByType(entityType)
+        val pending = OutboxSnapshot.take(syncOutboxDao, SyncEntityType.PRICING_CONFIG.storageKey)
         if (pending.isEmpty()) return
 
-        val entityIds = pending.map { it.entityId }
         try {
             pricingConfigRepository.pushPricingConfigToCloud()
-            syncOutboxDao.deleteByTypeAndIds(entityType, entityIds)
+            pending.acknowledgeAll()
         } catch (t: Throwable) {
-            val error = extractErrorMessage(t)
-            syncOutboxDao.markAttempt(
-                entityType = entityType,
-                entityIds = entityIds,
-                timestamp = now,
-                error = error
-            )
+            pending.markAttemptAll(timestamp = now, error = extractErrorMessage(t))
             throw t
         }
     }
 
     private suspend fun pushPendingProducts(now: Long) {
-        val pending = syncOutboxDao.getByType(SyncEntityType.PRODUCT.storageKey)
+        val entityType = SyncEntityType.PRODUCT.storageKey
+        val pending = OutboxSnapshot.take(syncOutboxDao, entityType)
         if (pending.isEmpty()) return
 
-        val ids = pending.map { it.entityId.toInt() }
-        val entities = productDao.getByIds(ids)
+        val ids = pending.entityIds.map { it.toInt() }
+        val entities = ids.chunked(SQL_IN_CHUNK).flatMap { chunk -> productDao.getByIds(chunk) }
         val foundIds = entities.map { it.id.toLong() }.toSet()
-        val missing = pending.map { it.entityId }.filterNot { it in foundIds }
-        if (missing.isNotEmpty()) {
-            syncOutboxDao.deleteByTypeAndIds(SyncEntityType.PRODUCT.storageKey, missing)
-        }
+        pending.acknowledge(pending.entityIds.filterNot { it in foundIds })
         if (entities.isEmpty()) return
 
-        val imageUrlsByProductId = productImageDao.getByProductIds(ids)
+        val imageUrlsByProductId = ids.chunked(SQL_IN_CHUNK)
+            .flatMap { chunk -> productImageDao.getByProductIds(chunk) }
             .groupBy { it.productId }
             .mapValues { (_, items) -> items.sortedBy { it.position }.map { it.url } }
         val tenantId = tenantProvider.requireTenantId()
         val productsCollection = firestore.collection("tenants")
             .document(tenantId)
             .collection("products")
-        val batch = firestore.batch()
-        entities.forEach { product ->
-            if (product.id == 0) return@forEach
-            val doc = productsCollection.document(product.id.toString())
+        val deletionsCollection = firestore.collection("tenants")
+            .document(tenantId)
+            .collection("product_deletions")
+        val pushed = entities.filter { it.id != 0 }
+        val write = writeStamps.stamp(pushed.map { it.id })
+        // El set y el borrado del tombstone van juntos: un documento vigente nunca queda
+        // detrás de un tombstone que el pull aplicaría con el mismo cursor.
+        val entries = pushed.map { product ->
             val imageUrls = imageUrlsByProductId[product.id].orEmpty()
-            batch.set(
-                doc,
-                ProductFirestoreMappers.toMap(product, imageUrls, tenantId),
-                SetOptions.merge()
+            FirestoreBatchWriter.Entry(
+                key = product.id.toLong(),
+                ops = listOf(
+                    FirestoreBatchWriter.Op.set(
+                        productsCollection.document(product.id.toString()),
+                        ProductFirestoreMappers.toMap(product, imageUrls, tenantId, write)
+                    ),
+                    FirestoreBatchWriter.Op.delete(deletionsCollection.document(product.id.toString()))
+                )
             )
         }
 
-        try {
-            batch.commit().await()
-            syncOutboxDao.deleteByTypeAndIds(
-                SyncEntityType.PRODUCT.storageKey,
-                entities.map { it.id.toLong() }
-            )
-        } catch (t: Throwable) {
-            val error = extractErrorMessage(t)
-            syncOutboxDao.markAttempt(
-                SyncEntityType.PRODUCT.storageKey,
-                entities.map { it.id.toLong() },
-                now,
-                error
-            )
-            throw t
-        }
+        writeAndAcknowledge(entityType, pending, entries, now)
     }
 
     private suspend fun pushPendingInvoices(now: Long) {
-        val pending = syncOutboxDao.getByType(SyncEntityType.INVOICE.storageKey)
+        val entityType = SyncEntityType.INVOICE.storageKey
+        val pending = OutboxSnapshot.take(syncOutboxDao, entityType)
         if (pending.isEmpty()) return
 
-        val ids = pending.map { it.entityId }
-        val relations = invoiceDao.getInvoicesWithItemsByIds(ids)
+        val ids = pending.entityIds
+        val relations = ids.chunked(SQL_IN_CHUNK).flatMap { chunk -> invoiceDao.getInvoicesWithItemsByIds(chunk) }
         val foundIds = relations.map { it.invoice.id }.toSet()
-        val missing = ids.filterNot { it in foundIds }
-        if (missing.isNotEmpty()) {
-            syncOutboxDao.deleteByTypeAndIds(SyncEntityType.INVOICE.storageKey, missing)
-        }
+        pending.acknowledge(ids.filterNot { it in foundIds })
         if (relations.isEmpty()) return
 
         val tenantId = tenantProvider.requireTenantId()
         val invoicesCollection = firestore.collection("tenants")
             .document(tenantId)
             .collection("invoices")
-        val batch = firestore.batch()
-        relations.forEach { relation ->
+        val entries = relations.map { relation ->
             val invoice = relation.invoice
             val doc = invoicesCollection.document(invoice.id.toString())
 
             // [NUEVO] toMap requiere (invoice, number:String, items:List<InvoiceItem>, tenantId:String)
-            batch.set(
-                doc,
-                InvoiceFirestoreMappers.toMap(
-                    invoice = invoice,
-                    number = formatInvoiceNumber(invoice.id),
-                    items = relation.items,
-                    tenantId = tenantId
-                ),
-                SetOptions.merge()
+            FirestoreBatchWriter.Entry(
+                key = invoice.id,
+                op = FirestoreBatchWriter.Op.set(
+                    doc,
+                    InvoiceFirestoreMappers.toMap(
+                        invoice = invoice,
+                        number = formatInvoiceNumber(invoice.id),
+                        items = relation.items,
+                        tenantId = tenantId
+                    )
+                )
             )
         }
 
-        try {
-            batch.commit().await()
-            syncOutboxDao.deleteByTypeAndIds(
-                SyncEntityType.INVOICE.storageKey,
-                relations.map { it.invoice.id }
-            )
-        } catch (t: Throwable) {
-            val error = extractErrorMessage(t)
-            syncOutboxDao.markAttempt(
-                SyncEntityType.INVOICE.storageKey,
-                relations.map { it.invoice.id },
-                now,
-                error
-            )
-            throw t
-        }
+        writeAndAcknowledge(entityType, pending, entries, now)
     }
 
     private suspend fun pushPendingCustomers(now: Long) {
-        val pending = syncOutboxDao.getByType(SyncEntityType.CUSTOMER.storageKey)
+        val entityType = SyncEntityType.CUSTOMER.storageKey
+        val pending = OutboxSnapshot.take(syncOutboxDao, entityType)
         if (pending.isEmpty()) return
 
-        val ids = pending.map { it.entityId.toInt() }
+        val ids = pending.entityIds.map { it.toInt() }
         val tenantId = tenantProvider.requireTenantId()
         val customersCollection = firestore.collection("tenants")
             .document(tenantId)
@@ -239,102 +244,118 @@ class SyncRepositoryImpl @Inject constructor(
 
         val existingCustomers = ids.mapNotNull { id -> customerDao.getById(id) }
         val foundIds = existingCustomers.map { it.id.toLong() }.toSet()
-        val deletedIds = pending.map { it.entityId }.filterNot { it in foundIds }
+        val deletedIds = pending.entityIds.filterNot { it in foundIds }
 
-        val batch = firestore.batch()
-        existingCustomers.forEach { customer ->
+        val entries = existingCustomers.map { customer ->
             val docRef = customersCollection.document(customer.id.toString())
-            batch.set(docRef, CustomerFirestoreMappers.toMap(customer, tenantId), SetOptions.merge())
-        }
-        deletedIds.forEach { customerId ->
+            FirestoreBatchWriter.Entry(
+                key = customer.id.toLong(),
+                op = FirestoreBatchWriter.Op.set(docRef, CustomerFirestoreMappers.toMap(customer, tenantId))
+            )
+        } + deletedIds.map { customerId ->
             val docRef = customersCollection.document(customerId.toString())
-            batch.delete(docRef)
+            FirestoreBatchWriter.Entry(key = customerId, op = FirestoreBatchWriter.Op.delete(docRef))
         }
 
-        if (existingCustomers.isEmpty() && deletedIds.isEmpty()) return
+        writeAndAcknowledge(entityType, pending, entries, now)
+    }
 
-        try {
-            batch.commit().await()
-            syncOutboxDao.deleteByTypeAndIds(
-                SyncEntityType.CUSTOMER.storageKey,
-                pending.map { it.entityId }
-            )
-        } catch (t: Throwable) {
-            val error = extractErrorMessage(t)
-            syncOutboxDao.markAttempt(
-                SyncEntityType.CUSTOMER.storageKey,
-                pending.map { it.entityId },
-                now,
-                error
-            )
-            throw t
-        }
+    /**
+     * Escribe [entries] en chunks y confirma en el outbox solo las filas de [pending]
+     * commiteadas. Las de chunks fallidos quedan con markAttempt y se relanza el primer error.
+     */
+    private suspend fun writeAndAcknowledge(
+        entityType: String,
+        pending: OutboxSnapshot,
+        entries: List<FirestoreBatchWriter.Entry<Long>>,
+        now: Long
+    ) {
+        if (entries.isEmpty()) return
+        val result = batchWriter.write(entries)
+        pending.acknowledge(result.committedKeys)
+        val error = result.firstError ?: return
+        Log.w(
+            TAG,
+            "Push de $entityType parcial: ${result.committedKeys.size} ok, ${result.failedKeys.size} con error",
+            error
+        )
+        pending.markAttempt(result.failedKeys, now, extractErrorMessage(error))
+        throw error
     }
 
-    private suspend fun pushAllLocalTables() {
+    /**
+     * Respaldo incremental de las tablas locales: sube solo las filas anotadas en
+     * `backup_changes` (ver [BackupChangeTracker]); las bajas quedan como documento
+     * `__deleted`. Cada entrada se borra cuando su batch se commiteó, así un corte a mitad
+     * de camino retoma desde lo que faltaba.
+     */
+    private suspend fun pushChangedRows() {
         val tenantId = tenantProvider.requireTenantId()
         val readableDb = db.openHelper.readableDatabase
-        val tables = mutableListOf<String>()
-        readableDb.query("SELECT name FROM sqlite_master WHERE type='table'").use { cursor ->
-            while (cursor.moveToNext()) {
-                val name = cursor.getString(0)
-                if (shouldSyncTable(name)) {
-                    tables.add(name)
+        val tables = BackupChangeTracker.trackedTables(readableDb).associateBy { it.name }
+        var afterSeq = 0L
+        while (true) {
+            val page = backupChangeDao.pageAfter(afterSeq, BACKUP_WINDOW_ROWS)
+            if (page.isEmpty()) return
+            val entries = mutableListOf<FirestoreBatchWriter.Entry<Long>>()
+            // Cambios de tablas que ya no se respaldan (o que una migración eliminó).
+            val orphaned = mutableListOf<Long>()
+            page.groupBy { it.tableName }.forEach { (tableName, changes) ->
+                val table = tables[tableName]
+                if (table == null) {
+                    orphaned += changes.map { it.seq }
+                    return@forEach
+                }
+                val rows = readBackupRows(readableDb, table, changes.map { it.rowKey })
+                changes.forEach { change ->
+                    val data = rows[change.rowKey] ?: mapOf(
+                        BackupRowDocuments.FIELD_TABLE to tableName,
+                        BackupRowDocuments.FIELD_ROW_KEY to change.rowKey,
+                        BackupRowDocuments.FIELD_DELETED to true,
+                        FirestoreDeltaReader.serverUpdatedAtField()
+                    )
+                    val docRef = BackupRowDocuments.document(firestore, tenantId, tableName, change.rowKey)
+                    entries += FirestoreBatchWriter.Entry(change.seq, FirestoreBatchWriter.Op.set(docRef, data, merge = false))
                 }
             }
+            val result = if (entries.isEmpty()) null else batchWriter.write(entries)
+            (orphaned + result?.committedKeys.orEmpty()).chunked(SQL_IN_CHUNK).forEach { chunk ->
+                backupChangeDao.deleteSeqs(chunk)
+            }
+            result?.throwIfFailed()
+            if (page.size < BACKUP_WINDOW_ROWS) return
+            afterSeq = page.last().seq
         }
+    }
 
-        tables.forEach { table ->
-            var batch = firestore.batch()
-            var ops = 0
-            readableDb.query("SELECT rowid, * FROM $table").use { cursor ->
-                val rowIdIndex = cursor.getColumnIndex("rowid")
+    /** Filas actuales de [table] por clave de respaldo; las claves ausentes son bajas. */
+    private fun readBackupRows(
+        readableDb: SupportSQLiteDatabase,
+        table: BackupChangeTracker.TrackedTable,
+        rowKeys: List<String>
+    ): Map<String, Map<String, Any?>> {
+        val rows = HashMap<String, Map<String, Any?>>(rowKeys.size)
+        rowKeys.chunked(SQL_IN_CHUNK).forEach { chunk ->
+            val sql = "SELECT ${table.keyExpression()} AS __key, rowid AS __rid, * FROM `${table.name}` " +
+                "WHERE ${table.keyFilter(chunk.size)}"
+            readableDb.query(sql, chunk.toTypedArray()).use { cursor ->
                 while (cursor.moveToNext()) {
+                    val rowKey = cursor.getString(0)
                     val data = mutableMapOf<String, Any?>(
-                        "__table" to table
+                        BackupRowDocuments.FIELD_TABLE to table.name,
+                        BackupRowDocuments.FIELD_ROW_ID to cursor.getLong(1),
+                        BackupRowDocuments.FIELD_ROW_KEY to rowKey,
+                        BackupRowDocuments.FIELD_DELETED to false,
+                        FirestoreDeltaReader.serverUpdatedAtField()
                     )
-                    val columnCount = cursor.columnCount
-                    for (i in 0 until columnCount) {
-                        val columnName = cursor.getColumnName(i)
-                        if (columnName == "rowid") continue
-                        val value = when (cursor.getType(i)) {
-                            android.database.Cursor.FIELD_TYPE_INTEGER -> cursor.getLong(i)
-                            android.database.Cursor.FIELD_TYPE_FLOAT -> cursor.getDouble(i)
-                            android.database.Cursor.FIELD_TYPE_STRING -> cursor.getString(i)
-                            android.database.Cursor.FIELD_TYPE_BLOB -> {
-                                val blob = cursor.getBlob(i)
-                                if (blob == null) null else Base64.encodeToString(blob, Base64.NO_WRAP)
-                            }
-                            else -> null
-                        }
-                        data[columnName] = value
-                    }
-                    val rowId = if (rowIdIndex >= 0) cursor.getLong(rowIdIndex) else 0L
-                    val docId = when {
-                        data["id"] != null -> data["id"].toString()
-                        data["uuid"] != null -> data["uuid"].toString()
-                        else -> rowId.toString()
-                    }
-                    data["__rowId"] = rowId
-                    val docRef = firestore.collection("tenants")
-                        .document(tenantId)
-                        .collection("sync_data")
-                        .document(table)
-                        .collection("rows")
-                        .document(docId)
-                    batch.set(docRef, data, SetOptions.merge())
-                    ops++
-                    if (ops >= MAX_BATCH_OPS) {
-                        batch.commit().await()
-                        batch = firestore.batch()
-                        ops = 0
+                    for (i in 2 until cursor.columnCount) {
+                        data[cursor.getColumnName(i)] = BackupRowDocuments.toFirestoreValue(cursor.sqliteValue(i))
                     }
+                    rows[rowKey] = data
                 }
             }
-            if (ops > 0) {
-                batch.commit().await()
-            }
         }
+        return rows
     }
 
     // [NUEVO] Mismo formato que el ZIP (y evita inventar un campo "number" en Room)
@@ -344,15 +365,27 @@ class SyncRepositoryImpl @Inject constructor(
     private fun extractErrorMessage(t: Throwable): String =
         t.message?.take(512) ?: t::class.java.simpleName
 
-    private suspend fun syncCustomersFromRemote() {
+    private suspend fun syncCustomersFromRemote(fullResync: Boolean) {
         val tenantId = tenantProvider.requireTenantId()
+        val entityType = SyncEntityType.CUSTOMER.storageKey
         val customersCollection = firestore.collection("tenants")
             .document(tenantId)
             .collection("customers")
-        val snapshot = customersCollection.get().await()
-        if (snapshot.isEmpty) return
+        val since = if (fullResync) null else watermarks.get(tenantId, entityType)
+        if (since == null) {
+            val snapshot = customersCollection.get().await()
+            applyRemoteCustomers(snapshot.documents)
+            watermarks.save(tenantId, entityType, FirestoreDeltaReader.maxCursor(snapshot.documents))
+            return
+        }
+        FirestoreDeltaReader.readChangedSince(customersCollection, since) { docs, pageEnd ->
+            applyRemoteCustomers(docs)
+            watermarks.save(tenantId, entityType, pageEnd)
+        }
+    }
 
-        snapshot.documents
+    private suspend fun applyRemoteCustomers(docs: List<DocumentSnapshot>) {
+        docs
             .mapNotNull { doc -> doc.toCustomerEntityOrNull() }
             .forEach { customer ->
                 customerDao.upsert(customer)
@@ -388,17 +421,9 @@ class SyncRepositoryImpl @Inject constructor(
         )
     }.getOrNull()
 
-    private fun shouldSyncTable(name: String): Boolean = name !in EXCLUDED_SYNC_TABLES &&
-        !name.startsWith("sqlite_")
-
     companion object {
-        private const val MAX_BATCH_OPS = 450
+        /** Filas que se acumulan en memoria del respaldo antes de pasarlas al batch writer. */
+        private const val BACKUP_WINDOW_ROWS = 2_000
         private const val TAG = "SyncRepository"
-        private val EXCLUDED_SYNC_TABLES = setOf(
-            "android_metadata",
-            "room_master_table",
-            "sqlite_sequence",
-            "sync_outbox"
-        )
     }
 }
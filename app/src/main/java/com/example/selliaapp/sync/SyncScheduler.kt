@@ -17,7 +17,16 @@ object SyncScheduler {
     private const val DEFAULT_INTERVAL_MINUTES = 60
     const val PERIODIC_UNIQUE_NAME: String = "sync_periodic_work"
 
-    fun enqueueNow(context: Context, includeBackup: Boolean) {
+    /**
+     * @param fullResync ignora los watermarks del pull incremental y vuelve a bajar todo.
+     * @param fullSnapshot con [includeBackup], sube también un snapshot completo a Storage.
+     */
+    fun enqueueNow(
+        context: Context,
+        includeBackup: Boolean,
+        fullResync: Boolean = false,
+        fullSnapshot: Boolean = false
+    ) {
         val constraints = Constraints.Builder()
             .setRequiredNetworkType(NetworkType.CONNECTED)
             .build()
@@ -25,7 +34,7 @@ object SyncScheduler {
         val req = OneTimeWorkRequestBuilder<SyncWorker>()
             .setConstraints(constraints)
             .addTag(SyncWorker.TAG)
-            .setInputData(SyncWorker.inputData(includeBackup))
+            .setInputData(SyncWorker.inputData(includeBackup, fullResync, fullSnapshot))
             .build()
 
         WorkManager.getInstance(context)
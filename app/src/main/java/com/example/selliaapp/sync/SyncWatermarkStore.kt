@@ -0,0 +1,57 @@
+package com.example.selliaapp.sync
+
+import com.example.selliaapp.data.dao.SyncWatermarkDao
+import com.example.selliaapp.data.local.entity.SyncWatermarkEntity
+import com.example.selliaapp.data.remote.FirestoreDeltaReader
+import com.google.firebase.Timestamp
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Persistencia de los high-water marks del pull incremental (tabla `sync_watermarks`).
+ * Sin watermark guardado, el caller hace un pull completo y registra el cursor resultante.
+ */
+@Singleton
+class SyncWatermarkStore internal constructor(
+    private val dao: SyncWatermarkDao,
+    private val nowMillis: () -> Long
+) {
+
+    @Inject constructor(dao: SyncWatermarkDao) : this(dao, System::currentTimeMillis)
+
+    suspend fun get(tenantId: String, entityType: String): FirestoreDeltaReader.Cursor? =
+        dao.get(tenantId, entityType)?.let { entity ->
+            FirestoreDeltaReader.Cursor(
+                updatedAt = Timestamp(entity.updatedAtSeconds, entity.updatedAtNanos),
+                docId = entity.lastDocId
+            )
+        }
+
+    /** Momento (epoch ms) del último [save] para ese tenant y entidad, o null si nunca hubo pull. */
+    suspend fun pulledAtMillis(tenantId: String, entityType: String): Long? =
+        dao.get(tenantId, entityType)?.pulledAtEpochMs
+
+    /**
+     * Guarda [cursor]; si es null (pull completo sin documentos con timestamp de servidor)
+     * se registra el origen para que los próximos pulls ya sean incrementales.
+     */
+    suspend fun save(tenantId: String, entityType: String, cursor: FirestoreDeltaReader.Cursor?) {
+        val effective = cursor ?: ORIGIN
+        dao.upsert(
+            SyncWatermarkEntity(
+                tenantId = tenantId,
+                entityType = entityType,
+                updatedAtSeconds = effective.updatedAt.seconds,
+                updatedAtNanos = effective.updatedAt.nanoseconds,
+                lastDocId = effective.docId,
+                pulledAtEpochMs = nowMillis()
+            )
+        )
+    }
+
+    suspend fun clear(tenantId: String) = dao.clearForTenant(tenantId)
+
+    private companion object {
+        val ORIGIN = FirestoreDeltaReader.Cursor(Timestamp(0L, 0), "")
+    }
+}
@@ -45,7 +45,9 @@ class SyncWorker @AssistedInject constructor(
         Log.i(TAG, "Iniciando sincronización manual (workId=$id)")
         return try {
             val includeBackup = inputData.getBoolean(INPUT_BACKUP, false)
-            syncRepository.runSync(includeBackup)
+            val fullResync = inputData.getBoolean(INPUT_FULL_RESYNC, false)
+            val fullSnapshot = inputData.getBoolean(INPUT_FULL_SNAPSHOT, false)
+            syncRepository.runSync(includeBackup, fullResync, fullSnapshot)
             Log.i(TAG, "Sincronización completada con éxito")
             Result.success(
                 workDataOf(
@@ -80,8 +82,14 @@ class SyncWorker @AssistedInject constructor(
         const val OUTPUT_STATUS: String = "status"
         const val OUTPUT_MESSAGE: String = "message"
         const val INPUT_BACKUP: String = "include_backup"
+        const val INPUT_FULL_RESYNC: String = "full_resync"
+        const val INPUT_FULL_SNAPSHOT: String = "full_snapshot"
 
-        fun inputData(includeBackup: Boolean) = workDataOf(INPUT_BACKUP to includeBackup)
+        fun inputData(includeBackup: Boolean, fullResync: Boolean = false, fullSnapshot: Boolean = false) = workDataOf(
+            INPUT_BACKUP to includeBackup,
+            INPUT_FULL_RESYNC to fullResync,
+            INPUT_FULL_SNAPSHOT to fullSnapshot
+        )
     }
 }
 @EntryPoint
@@ -289,7 +289,7 @@ fun HomeScreen(
                 KpiSection(
                     isCompactWidth = isCompactWidth,
                     dailySales = currency.format(state.dailySales),
-                    tickets = state.cashSummary?.movements?.count { it.type == "SALE_CASH" }?.toString() ?: "0",
+                    tickets = state.cashSummary?.countOf("SALE_CASH")?.toString() ?: "0",
                     averageTicket = currency.format(state.averageTicket)
                 )
             }
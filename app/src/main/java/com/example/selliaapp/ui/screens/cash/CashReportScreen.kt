@@ -3,12 +3,11 @@ package com.example.selliaapp.ui.screens.cash
 import androidx.compose.foundation.layout.Arrangement
 import androidx.compose.foundation.layout.Column
 import androidx.compose.foundation.layout.Spacer
-import androidx.compose.foundation.layout.fillMaxWidth
 import androidx.compose.foundation.layout.height
 import androidx.compose.foundation.layout.navigationBarsPadding
+import androidx.compose.foundation.layout.PaddingValues
 import androidx.compose.foundation.layout.padding
-import androidx.compose.foundation.rememberScrollState
-import androidx.compose.foundation.verticalScroll
+import androidx.compose.foundation.lazy.LazyColumn
 import androidx.compose.material.icons.Icons
 import androidx.compose.material.icons.automirrored.filled.ArrowBack
 import androidx.compose.material3.ExperimentalMaterial3Api
@@ -24,6 +23,8 @@ import androidx.compose.runtime.remember
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.unit.dp
 import androidx.lifecycle.compose.collectAsStateWithLifecycle
+import androidx.paging.compose.collectAsLazyPagingItems
+import androidx.paging.compose.itemKey
 import com.example.selliaapp.data.local.entity.CashMovementType
 import com.example.selliaapp.viewmodel.cash.CashViewModel
 import java.text.NumberFormat
@@ -39,6 +40,7 @@ fun CashReportScreen(
 ) {
     val state by vm.state.collectAsStateWithLifecycle()
     val summary = state.summary
+    val movements = vm.pagedMovements.collectAsLazyPagingItems()
     val currency = remember { NumberFormat.getCurrencyInstance(Locale("es", "AR")) }
     val dateFormatter = remember { DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm") }
 
@@ -54,70 +56,83 @@ fun CashReportScreen(
             )
         }
     ) { padding ->
-        Column(
+        LazyColumn(
             modifier = Modifier
                 .padding(padding)
-                .navigationBarsPadding()
-                .verticalScroll(rememberScrollState())
-                .padding(16.dp),
+                .navigationBarsPadding(),
+            contentPadding = PaddingValues(16.dp),
             verticalArrangement = Arrangement.spacedBy(12.dp)
         ) {
             if (summary == null) {
-                Text(
-                    "No hay una caja abierta para reportar.",
-                    style = MaterialTheme.typography.bodyMedium
-                )
-                return@Column
+                item {
+                    Text(
+                        "No hay una caja abierta para reportar.",
+                        style = MaterialTheme.typography.bodyMedium
+                    )
+                }
+                return@LazyColumn
             }
 
-            val session = summary.session
-            val openedAt = session.openedAt.atZone(ZoneId.systemDefault()).format(dateFormatter)
-            Text("Apertura: $openedAt", style = MaterialTheme.typography.titleMedium)
-            session.openedBy?.takeIf { it.isNotBlank() }?.let { openedBy ->
-                Text("Abierta por: $openedBy", style = MaterialTheme.typography.bodySmall)
-            }
-            session.note?.takeIf { it.isNotBlank() }?.let { note ->
-                Text("Nota apertura: $note", style = MaterialTheme.typography.bodySmall)
-            }
+            item {
+                Column(verticalArrangement = Arrangement.spacedBy(12.dp)) {
+                    val session = summary.session
+                    val openedAt = session.openedAt.atZone(ZoneId.systemDefault()).format(dateFormatter)
+                    Text("Apertura: $openedAt", style = MaterialTheme.typography.titleMedium)
+                    session.openedBy?.takeIf { it.isNotBlank() }?.let { openedBy ->
+                        Text("Abierta por: $openedBy", style = MaterialTheme.typography.bodySmall)
+                    }
+                    session.note?.takeIf { it.isNotBlank() }?.let { note ->
+                        Text("Nota apertura: $note", style = MaterialTheme.typography.bodySmall)
+                    }
 
-            Spacer(Modifier.height(8.dp))
-            Text("Resumen monetario", style = MaterialTheme.typography.titleSmall)
-            Text("Monto inicial: ${currency.format(session.openingAmount)}")
-            Text("Ventas en efectivo: ${currency.format(summary.cashSalesTotal)}")
+                    Spacer(Modifier.height(8.dp))
+                    Text("Resumen monetario", style = MaterialTheme.typography.titleSmall)
+                    Text("Monto inicial: ${currency.format(session.openingAmount)}")
+                    Text("Ventas en efectivo: ${currency.format(summary.cashSalesTotal)}")
 
-            val groupedMovements = summary.movements
-                .groupBy { it.type }
-                .mapValues { (_, list) -> list.sumOf { it.amount } }
+                    if (summary.totalsByType.isNotEmpty()) {
+                        Spacer(Modifier.height(4.dp))
+                        Text("Movimientos", style = MaterialTheme.typography.titleSmall)
+                        summary.totalsByType.values.forEach { total ->
+                            Text(
+                                "${movementLabel(total.type)} (${total.movements}): ${currency.format(total.total)}",
+                                style = MaterialTheme.typography.bodySmall
+                            )
+                        }
+                    }
 
-            if (groupedMovements.isNotEmpty()) {
-                Spacer(Modifier.height(4.dp))
-                Text("Movimientos", style = MaterialTheme.typography.titleSmall)
-                groupedMovements.forEach { (type, total) ->
-                    val label = when (type) {
-                        CashMovementType.INCOME -> "Ingresos"
-                        CashMovementType.EXPENSE -> "Egresos"
-                        CashMovementType.ADJUSTMENT -> "Ajustes"
-                        CashMovementType.SALE_CASH -> "Ventas efectivo"
-                        else -> type
+                    Spacer(Modifier.height(8.dp))
+                    Text(
+                        "Saldo teórico actual: ${currency.format(summary.expectedAmount)}",
+                        style = MaterialTheme.typography.titleMedium
+                    )
+
+                    if (summary.audits.isNotEmpty()) {
+                        Spacer(Modifier.height(8.dp))
+                        Text("Arqueos registrados", style = MaterialTheme.typography.titleSmall)
+                        summary.audits.forEach { audit ->
+                            val auditTime = audit.createdAt.atZone(ZoneId.systemDefault()).format(dateFormatter)
+                            Text(
+                                "• $auditTime: contado ${currency.format(audit.countedAmount)} " +
+                                    "(${currency.format(audit.difference)})",
+                                style = MaterialTheme.typography.bodySmall
+                            )
+                        }
+                    }
+
+                    if (summary.movementCount > 0) {
+                        Spacer(Modifier.height(8.dp))
+                        Text("Detalle de movimientos", style = MaterialTheme.typography.titleSmall)
                     }
-                    Text("$label: ${currency.format(total)}", style = MaterialTheme.typography.bodySmall)
                 }
             }
 
-            Spacer(Modifier.height(8.dp))
-            Text(
-                "Saldo teórico actual: ${currency.format(summary.expectedAmount)}",
-                style = MaterialTheme.typography.titleMedium
-            )
-
-            if (summary.audits.isNotEmpty()) {
-                Spacer(Modifier.height(8.dp))
-                Text("Arqueos registrados", style = MaterialTheme.typography.titleSmall)
-                summary.audits.forEach { audit ->
-                    val auditTime = audit.createdAt.atZone(ZoneId.systemDefault()).format(dateFormatter)
+            items(count = movements.itemCount, key = movements.itemKey { it.id }) { index ->
+                movements[index]?.let { movement ->
+                    val time = movement.createdAt.atZone(ZoneId.systemDefault()).format(dateFormatter)
                     Text(
-                        "• $auditTime: contado ${currency.format(audit.countedAmount)} " +
-                            "(${currency.format(audit.difference)})",
+                        "• $time ${movementLabel(movement.type)}: ${currency.format(movement.amount)}" +
+                            (movement.note?.takeIf { it.isNotBlank() }?.let { " — $it" } ?: ""),
                         style = MaterialTheme.typography.bodySmall
                     )
                 }
@@ -125,3 +140,11 @@ fun CashReportScreen(
         }
     }
 }
+
+private fun movementLabel(type: String): String = when (type) {
+    CashMovementType.INCOME -> "Ingresos"
+    CashMovementType.EXPENSE -> "Egresos"
+    CashMovementType.ADJUSTMENT -> "Ajustes"
+    CashMovementType.SALE_CASH -> "Ventas efectivo"
+    else -> type
+}
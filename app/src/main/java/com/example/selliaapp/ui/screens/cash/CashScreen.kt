@@ -163,14 +163,14 @@ fun CashScreen(
         Card(modifier = Modifier.fillMaxWidth()) {
             Column(modifier = Modifier.padding(16.dp), verticalArrangement = Arrangement.spacedBy(4.dp)) {
                 Text("Últimos movimientos", style = MaterialTheme.typography.titleMedium)
-                if (summary?.movements.isNullOrEmpty()) {
+                if (state.movements.isEmpty()) {
                     Text(
                         "Sin movimientos registrados.",
                         style = MaterialTheme.typography.bodyMedium,
                         color = MaterialTheme.colorScheme.onSurfaceVariant
                     )
                 } else {
-                    summary?.movements?.take(5)?.forEach { movement ->
+                    state.movements.forEach { movement ->
                         Text(
                             "• ${movement.type}: ${currency.format(movement.amount)}",
                             style = MaterialTheme.typography.bodySmall
@@ -23,10 +23,12 @@ import androidx.compose.material.icons.filled.FileDownload
 import androidx.compose.material.icons.filled.UploadFile
 import androidx.compose.material3.Card
 import androidx.compose.material3.CardDefaults
+import androidx.compose.material3.Checkbox
 import androidx.compose.material3.ExperimentalMaterial3Api
 import androidx.compose.material3.FilledTonalButton
 import androidx.compose.material3.Icon
 import androidx.compose.material3.IconButton
+import androidx.compose.material3.LinearProgressIndicator
 import androidx.compose.material3.MaterialTheme
 import androidx.compose.material3.Scaffold
 import androidx.compose.material3.SnackbarHost
@@ -34,8 +36,14 @@ import androidx.compose.material3.SnackbarHostState
 import androidx.compose.material3.Text
 import androidx.compose.material3.TopAppBar
 import androidx.compose.runtime.Composable
+import androidx.compose.runtime.collectAsState
+import androidx.compose.runtime.getValue
+import androidx.compose.runtime.mutableStateOf
 import androidx.compose.runtime.remember
 import androidx.compose.runtime.rememberCoroutineScope
+import androidx.compose.runtime.saveable.rememberSaveable
+import androidx.compose.runtime.setValue
+import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.platform.LocalContext
 import androidx.compose.ui.text.style.TextOverflow
@@ -70,6 +78,8 @@ fun BulkDataScreen(
     val scope = rememberCoroutineScope()
     val stockImportViewModel: StockImportViewModel = hiltViewModel()
     val bulkViewModel: BulkDataViewModel = hiltViewModel()
+    val exportProgress by bulkViewModel.exportProgress.collectAsState()
+    var compressTotalExport by rememberSaveable { mutableStateOf(false) }
 
     fun showMessage(text: String) {
         scope.launch {
@@ -113,28 +123,18 @@ fun BulkDataScreen(
     }
 
     fun handleExport(
-        result: Result<BulkDataViewModel.ExportPayload>,
+        result: Result<BulkDataViewModel.ExportedFile>,
         successLabel: String
     ) {
         result.fold(
-            onSuccess = { payload ->
-                val uri = exportContentToDownloads(
+            onSuccess = { file ->
+                shareExportedFile(
                     context = context,
-                    fileName = payload.fileName,
-                    mimeType = payload.mimeType,
-                    content = payload.content
+                    uri = file.uri,
+                    mimeType = file.mimeType,
+                    title = "Compartir $successLabel"
                 )
-                if (uri != null) {
-                    shareExportedFile(
-                        context = context,
-                        uri = uri,
-                        mimeType = payload.mimeType,
-                        title = "Compartir $successLabel"
-                    )
-                    showMessage("$successLabel exportados en Descargas.")
-                } else {
-                    showMessage("No se pudo exportar $successLabel.")
-                }
+                showMessage("$successLabel exportados en Descargas.")
             },
             onFailure = {
                 showMessage("No se pudo exportar $successLabel.")
@@ -208,6 +208,16 @@ fun BulkDataScreen(
                 .padding(16.dp),
             verticalArrangement = Arrangement.spacedBy(16.dp)
         ) {
+            exportProgress?.let { progress ->
+                Column(verticalArrangement = Arrangement.spacedBy(4.dp)) {
+                    LinearProgressIndicator(modifier = Modifier.fillMaxWidth())
+                    Text(
+                        text = "Exportando ${progress.section}: ${progress.totalRows} filas",
+                        style = MaterialTheme.typography.bodySmall
+                    )
+                }
+            }
+
             BulkSectionCard(
                 title = "Stock",
                 description = "Abrí el panel principal de stock con todas las opciones de gestión.",
@@ -231,7 +241,7 @@ fun BulkDataScreen(
                     )
                 },
                 onExport = {
-                    bulkViewModel.exportProducts { result ->
+                    bulkViewModel.exportProducts(context) { result ->
                         handleExport(result, "productos")
                     }
                 },
@@ -265,7 +275,7 @@ fun BulkDataScreen(
                     )
                 },
                 onExport = {
-                    bulkViewModel.exportCustomers { result ->
+                    bulkViewModel.exportCustomers(context) { result ->
                         handleExport(result, "clientes")
                     }
                 },
@@ -317,7 +327,7 @@ fun BulkDataScreen(
                 title = "Ventas",
                 description = "Exportá tus ventas con detalle de productos.",
                 onExport = {
-                    bulkViewModel.exportSales { result ->
+                    bulkViewModel.exportSales(context) { result ->
                         handleExport(result, "ventas")
                     }
                 }
@@ -327,7 +337,7 @@ fun BulkDataScreen(
                 title = "Gastos",
                 description = "Exportá los gastos registrados para análisis externo.",
                 onExport = {
-                    bulkViewModel.exportExpenses { result ->
+                    bulkViewModel.exportExpenses(context) { result ->
                         handleExport(result, "gastos")
                     }
                 }
@@ -337,7 +347,7 @@ fun BulkDataScreen(
                 title = "Exportación total",
                 description = "Generá un CSV único con productos, clientes, ventas y gastos.",
                 onExport = {
-                    bulkViewModel.exportAll { result ->
+                    bulkViewModel.exportAll(context, compress = compressTotalExport) { result ->
                         handleExport(result, "exportación total")
                     }
                 },
@@ -349,7 +359,16 @@ fun BulkDataScreen(
                         )
                     )
                 },
-                onViewErrors = { downloadErrorReport(ImportErrorReportStore.Scope.TOTAL) }
+                onViewErrors = { downloadErrorReport(ImportErrorReportStore.Scope.TOTAL) },
+                extraContent = {
+                    Row(verticalAlignment = Alignment.CenterVertically) {
+                        Checkbox(
+                            checked = compressTotalExport,
+                            onCheckedChange = { compressTotalExport = it }
+                        )
+                        Text("Comprimir (.csv.gz)", style = MaterialTheme.typography.bodyMedium)
+                    }
+                }
             )
         }
     }
@@ -365,7 +384,8 @@ private fun BulkSectionCard(
     onExport: (() -> Unit)? = null,
     onViewErrors: (() -> Unit)? = null,
     enabled: Boolean = true,
-    disabledMessage: String? = null
+    disabledMessage: String? = null,
+    extraContent: (@Composable () -> Unit)? = null
 ) {
     Card(
         modifier = Modifier.fillMaxWidth(),
@@ -377,6 +397,7 @@ private fun BulkSectionCard(
         ) {
             Text(title, style = MaterialTheme.typography.titleMedium, fontWeight = FontWeight.Bold)
             Text(description, style = MaterialTheme.typography.bodyMedium)
+            extraContent?.invoke()
             Spacer(modifier = Modifier.height(4.dp))
             val actions = buildList {
                 onDownloadTemplate?.let { action ->
@@ -93,15 +93,17 @@ fun ManageProductsScreen(
     }
 
     fun downloadProductQrFromDetail(product: ProductEntity) {
-        exportQrPdf(
-            context = context,
-            items = listOf(product),
-            fileName = "qr_${product.id}_detalle",
-            includePrices = true,
-            currencyFormatter = currencyFormatter,
-            resolveQrValue = ::resolveSkuValue,
-            resolveSkuValue = ::resolveSkuValue
-        )
+        scope.launch {
+            exportQrPdf(
+                context = context,
+                items = listOf(product),
+                fileName = "qr_${product.id}_detalle",
+                includePrices = true,
+                currencyFormatter = currencyFormatter,
+                resolveQrValue = ::resolveSkuValue,
+                resolveSkuValue = ::resolveSkuValue
+            )
+        }
     }
 
     Scaffold(
@@ -107,7 +107,7 @@ fun ProductQrScreen(
 
 
 
-    fun exportProducts(items: List<ProductEntity>, fileName: String) {
+    suspend fun exportProducts(items: List<ProductEntity>, fileName: String) {
         exportQrPdf(
             context = context,
             items = items,
@@ -64,6 +64,7 @@ fun SyncScreen(
     val scope = rememberCoroutineScope()
     var lastState by remember { mutableStateOf<WorkInfo.State?>(null) }
     var includeBackup by remember { mutableStateOf(false) }
+    var fullSnapshot by remember { mutableStateOf(false) }
     var intervalExpanded by remember { mutableStateOf(false) }
 
     val canUseOperationalBackup = accessState.permissions.contains(Permission.MANAGE_CLOUD_SERVICES)
@@ -156,7 +157,7 @@ fun SyncScreen(
                         style = MaterialTheme.typography.titleSmall
                     )
                     Text(
-                        "Guarda todas las tablas locales en Firestore para recuperación y auditoría.",
+                        "Sube a Firestore las filas locales que cambiaron desde el último respaldo.",
                         style = MaterialTheme.typography.bodySmall
                     )
                 }
@@ -165,6 +166,7 @@ fun SyncScreen(
                     onCheckedChange = {
                         if (canUseOperationalBackup) {
                             includeBackup = it
+                            if (!it) fullSnapshot = false
                         } else {
                             includeBackup = false
                             scope.launch {
@@ -178,6 +180,30 @@ fun SyncScreen(
                 )
             }
 
+            if (includeBackup) {
+                Row(
+                    modifier = Modifier.fillMaxWidth(),
+                    verticalAlignment = Alignment.CenterVertically,
+                    horizontalArrangement = Arrangement.SpaceBetween
+                ) {
+                    Column(modifier = Modifier.weight(1f)) {
+                        Text(
+                            "Snapshot completo en Storage",
+                            style = MaterialTheme.typography.titleSmall
+                        )
+                        Text(
+                            "Además guarda una copia comprimida de toda la base para restaurarla de una vez.",
+                            style = MaterialTheme.typography.bodySmall
+                        )
+                    }
+                    Switch(
+                        checked = fullSnapshot,
+                        onCheckedChange = { fullSnapshot = it },
+                        enabled = !syncing
+                    )
+                }
+            }
+
             if (!canUseOperationalBackup) {
                 Text(
                     "Tu rol actual permite sincronización estándar, pero no respaldo completo operativo.",
@@ -188,7 +214,7 @@ fun SyncScreen(
             Button(
                 enabled = !syncing,
                 onClick = {
-                    SyncScheduler.enqueueNow(context, includeBackup)
+                    SyncScheduler.enqueueNow(context, includeBackup, fullSnapshot = fullSnapshot)
                     scope.launch { snackbarHostState.showSnackbar("Sincronización encolada.") }
                 }
             ) {
@@ -203,6 +229,21 @@ fun SyncScreen(
                 Text(if (syncing) "Sincronizando..." else "Sincronizar ahora")
             }
 
+            OutlinedButton(
+                enabled = !syncing,
+                onClick = {
+                    SyncScheduler.enqueueNow(context, includeBackup, fullResync = true, fullSnapshot = fullSnapshot)
+                    scope.launch { snackbarHostState.showSnackbar("Resincronización completa encolada.") }
+                }
+            ) {
+                Text("Resincronizar todo")
+            }
+            Text(
+                "La sincronización normal solo baja los cambios desde la última vez. " +
+                    "Usá la resincronización completa si notás datos desactualizados.",
+                style = MaterialTheme.typography.bodySmall
+            )
+
             if (syncing) {
                 OutlinedButton(
                     onClick = { workManager.cancelUniqueWork(SyncWorker.UNIQUE_NAME) }
@@ -51,7 +51,6 @@ import com.example.selliaapp.R
 import com.example.selliaapp.data.local.entity.ProductEntity
 import com.example.selliaapp.domain.product.ProductFilterParams
 import com.example.selliaapp.domain.product.ProductSortOption
-import com.example.selliaapp.domain.product.filterAndSortProducts
 import com.example.selliaapp.ui.components.BackTopAppBar
 import com.example.selliaapp.viewmodel.ProductViewModel
 import java.text.NumberFormat
@@ -65,7 +64,8 @@ fun PublicProductCatalogScreen(
     onProductSelected: (Int) -> Unit,
     vm: ProductViewModel = hiltViewModel()
 ) {
-    val products by vm.products.collectAsStateWithLifecycle(emptyList())
+    // El índice se arma y actualiza en el ViewModel, fuera del hilo principal.
+    val searchIndex by vm.searchIndex.collectAsStateWithLifecycle()
     val currency = remember { NumberFormat.getCurrencyInstance(Locale("es", "AR")) }
 
     var query by remember { mutableStateOf("") }
@@ -81,7 +81,7 @@ fun PublicProductCatalogScreen(
     val coroutineScope = rememberCoroutineScope()
 
     val filteredProducts = remember(
-        products,
+        searchIndex,
         query,
         parentCategory,
         category,
@@ -91,8 +91,7 @@ fun PublicProductCatalogScreen(
         maxPrice,
         sort
     ) {
-        filterAndSortProducts(
-            products,
+        searchIndex.query(
             ProductFilterParams(
                 query = query,
                 parentCategory = parentCategory.ifBlank { null },
@@ -12,7 +12,6 @@ import androidx.compose.foundation.layout.height
 import androidx.compose.foundation.layout.padding
 import androidx.compose.foundation.layout.width
 import androidx.compose.foundation.lazy.LazyColumn
-import androidx.compose.foundation.lazy.items
 import androidx.compose.material.icons.Icons
 import androidx.compose.material.icons.automirrored.filled.ArrowBack
 import androidx.compose.material3.Card
@@ -21,6 +20,7 @@ import androidx.compose.material3.ExperimentalMaterial3Api
 import androidx.compose.material3.Icon
 import androidx.compose.material3.IconButton
 import androidx.compose.material3.MaterialTheme
+import androidx.compose.material3.OutlinedTextField
 import androidx.compose.material3.Scaffold
 import androidx.compose.material3.Surface
 import androidx.compose.material3.Text
@@ -32,6 +32,9 @@ import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.text.style.TextOverflow
 import androidx.compose.ui.unit.dp
+import androidx.paging.compose.collectAsLazyPagingItems
+import androidx.paging.compose.itemKey
+import com.example.selliaapp.data.model.InvoiceStatus
 import com.example.selliaapp.data.model.sales.InvoiceSummary
 import com.example.selliaapp.data.model.sales.SyncStatus
 import com.example.selliaapp.viewmodel.sales.SalesInvoicesViewModel
@@ -46,7 +49,8 @@ fun SalesInvoicesScreen(
     onOpenDetail: (Long) -> Unit,
     onBack: () -> Unit
 ) {
-    val list by vm.invoices.collectAsState(initial = emptyList())
+    val invoices = vm.invoices.collectAsLazyPagingItems()
+    val query by vm.query.collectAsState()
     val currency = NumberFormat.getCurrencyInstance(Locale("es", "AR"))
     val dateFmt = DateTimeFormatter.ofPattern("dd/MM/yyyy")
 
@@ -69,16 +73,27 @@ fun SalesInvoicesScreen(
             contentPadding = PaddingValues(16.dp),
             verticalArrangement = Arrangement.spacedBy(12.dp)
         ) {
-            if (list.isEmpty()) {
+            item {
+                OutlinedTextField(
+                    value = query,
+                    onValueChange = vm::setQuery,
+                    label = { Text("Buscar por cliente") },
+                    singleLine = true,
+                    modifier = Modifier.fillMaxWidth()
+                )
+            }
+            if (invoices.itemCount == 0) {
                 item {
                     Text(
-                        "No hay facturas emitidas.",
+                        if (query.isBlank()) "No hay facturas emitidas." else "Sin facturas para \"$query\".",
                         style = MaterialTheme.typography.bodyMedium
                     )
                 }
             } else {
-                items(list, key = { it.id }) { inv ->
-                    InvoiceCard(inv, currency, dateFmt, onOpenDetail)
+                items(count = invoices.itemCount, key = invoices.itemKey { it.id }) { index ->
+                    invoices[index]?.let { inv ->
+                        InvoiceCard(inv, currency, dateFmt, onOpenDetail)
+                    }
                 }
             }
         }
@@ -123,6 +138,15 @@ private fun InvoiceCard(
                 Column(Modifier.weight(1f)) {
                     Text("Cliente: ${inv.customerName}", style = MaterialTheme.typography.bodyMedium)
                     Text("Fecha: ${inv.date.format(dateFmt)}", style = MaterialTheme.typography.bodySmall)
+                    val statusLabel = when (inv.status) {
+                        InvoiceStatus.EMITIDA -> ""
+                        InvoiceStatus.ANULADA -> " · Anulada"
+                        InvoiceStatus.DEVUELTA -> " · Devuelta"
+                    }
+                    Text(
+                        "${inv.itemCount} ítems$statusLabel",
+                        style = MaterialTheme.typography.bodySmall
+                    )
                 }
                 Text(currency.format(inv.total), style = MaterialTheme.typography.titleSmall)
             }
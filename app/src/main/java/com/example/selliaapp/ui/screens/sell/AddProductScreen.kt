@@ -58,6 +58,7 @@ import com.example.selliaapp.ui.viewmodel.OffLookupViewModel
 import com.example.selliaapp.ui.viewmodel.OffLookupViewModel.UiState
 import com.example.selliaapp.viewmodel.PrefillData
 import com.example.selliaapp.viewmodel.ProductViewModel
+import java.io.File
 
 private const val INDUMENTARIA_PARENT_CATEGORY = "Indumentaria"
 
@@ -85,6 +86,7 @@ fun AddProductScreen(
     offVm: OffLookupViewModel = hiltViewModel()
 ) {
     val imageUploadState by viewModel.imageUploadState.collectAsState()
+    val failedImageUploads by viewModel.failedImageUploads.collectAsState()
     val context = LocalContext.current
 
     // --- Estado de campos (con prefill si existe) ---
@@ -187,11 +189,9 @@ fun AddProductScreen(
 
     fun handlePickedUri(uri: Uri) {
         if (editId != null) {
-            val contentType = context.contentResolver.getType(uri)
             viewModel.uploadProductImage(
                 productId = editId,
-                localUri = uri,
-                contentType = contentType
+                localUri = uri
             ) { result ->
                 result.onSuccess { imageUrls.add(it) }
                 result.onFailure { infoMessage = it.message ?: "Error subiendo imagen" }
@@ -490,6 +490,34 @@ fun AddProductScreen(
                     Text("Error: ${imageUploadState.message}")
                 }
 
+                val failedForProduct = failedImageUploads.filter { editId != null && it.productId == editId }
+                if (failedForProduct.isNotEmpty()) {
+                    Text("Imágenes que no se pudieron subir")
+                    failedForProduct.forEach { upload ->
+                        Row(
+                            modifier = Modifier.fillMaxWidth(),
+                            horizontalArrangement = Arrangement.spacedBy(8.dp),
+                            verticalAlignment = Alignment.CenterVertically
+                        ) {
+                            AsyncImage(
+                                model = File(upload.thumbnailPath),
+                                contentDescription = "Imagen no subida",
+                                modifier = Modifier.size(64.dp)
+                            )
+                            Text(
+                                text = upload.lastError ?: "Error al subir",
+                                modifier = Modifier.weight(1f)
+                            )
+                            TextButton(onClick = { viewModel.retryImageUpload(upload.id) }) {
+                                Text("Reintentar")
+                            }
+                            IconButton(onClick = { viewModel.discardImageUpload(upload.id) }) {
+                                Icon(Icons.Default.Delete, contentDescription = "Descartar imagen")
+                            }
+                        }
+                    }
+                }
+
                 if (pendingImageUris.isNotEmpty()) {
                     Text("Imágenes pendientes (se suben al guardar)")
                     pendingImageUris.forEachIndexed { index, uri ->
@@ -17,6 +17,7 @@ import androidx.compose.material.icons.Icons
 import androidx.compose.material.icons.automirrored.filled.ArrowBack
 import androidx.compose.material.icons.filled.Add
 import androidx.compose.material.icons.filled.Delete
+import androidx.compose.material.icons.filled.PauseCircle
 import androidx.compose.material.icons.filled.PointOfSale
 import androidx.compose.material.icons.filled.Remove
 import androidx.compose.material3.AlertDialog
@@ -112,6 +113,8 @@ fun SellScreen(
     var detailFor by remember { mutableStateOf<ProductEntity?>(null) }
     var showCustomerPicker by remember { mutableStateOf(false) }
     var showCancelPreSaleDialog by remember { mutableStateOf(false) }
+    var showParkedDialog by remember { mutableStateOf(false) }
+    val parkedSales by sellVm.parkedSales.collectAsState()
 
     val currentEntry = navController.currentBackStackEntry
     val pendingProductId by currentEntry
@@ -218,6 +221,50 @@ fun SellScreen(
         )
     }
 
+    if (showParkedDialog) {
+        AlertDialog(
+            onDismissRequest = { showParkedDialog = false },
+            title = { Text("Ventas estacionadas") },
+            text = {
+                if (parkedSales.isEmpty()) {
+                    Text("No hay ventas estacionadas.")
+                } else {
+                    LazyColumn(verticalArrangement = Arrangement.spacedBy(8.dp)) {
+                        items(parkedSales, key = { it.id }) { parked ->
+                            Row(verticalAlignment = Alignment.CenterVertically) {
+                                Column(Modifier.weight(1f)) {
+                                    Text(parked.label, maxLines = 1, overflow = TextOverflow.Ellipsis)
+                                    Text(
+                                        text = "${parked.draft.items.sumOf { it.qty }} u. · " +
+                                            currency.format(parked.draft.items.sumOf { it.unitPrice * it.qty }),
+                                        style = MaterialTheme.typography.bodySmall
+                                    )
+                                }
+                                TextButton(
+                                    onClick = {
+                                        sellVm.resumeParkedSale(parked.id)
+                                        showParkedDialog = false
+                                    }
+                                ) {
+                                    Text("Retomar")
+                                }
+                                IconButton(onClick = { sellVm.discardParkedSale(parked.id) }) {
+                                    Icon(Icons.Default.Delete, contentDescription = "Descartar")
+                                }
+                            }
+                        }
+                    }
+                }
+            },
+            confirmButton = {},
+            dismissButton = {
+                TextButton(onClick = { showParkedDialog = false }) {
+                    Text("Cerrar")
+                }
+            }
+        )
+    }
+
     detailFor?.let { product ->
         val remaining = remainingById[product.id] ?: product.quantity
         val maxQty = remaining.coerceAtLeast(0)
@@ -273,6 +320,25 @@ fun SellScreen(
                     IconButton(onClick = { onBack() }) {
                         Icon(Icons.AutoMirrored.Filled.ArrowBack, contentDescription = "Atrás")
                     }
+                },
+                actions = {
+                    IconButton(
+                        onClick = {
+                            sellVm.parkCurrentSale { error ->
+                                scope.launch {
+                                    snackbarHostState.showSnackbar(error.message ?: "No se pudo estacionar la venta.")
+                                }
+                            }
+                        },
+                        enabled = ui.items.isNotEmpty()
+                    ) {
+                        Icon(Icons.Default.PauseCircle, contentDescription = "Estacionar venta")
+                    }
+                    if (parkedSales.isNotEmpty()) {
+                        TextButton(onClick = { showParkedDialog = true }) {
+                            Text("Estacionadas (${parkedSales.size})")
+                        }
+                    }
                 }
             )
         },
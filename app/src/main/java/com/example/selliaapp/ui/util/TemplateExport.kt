@@ -6,6 +6,7 @@ import android.content.Intent
 import android.net.Uri
 import android.os.Environment
 import android.provider.MediaStore
+import java.io.OutputStream
 
 fun exportContentToDownloads(
     context: Context,
@@ -36,6 +37,42 @@ fun exportContentToDownloads(
     return uri
 }
 
+/**
+ * Crea el archivo en Descargas y deja que [write] lo llene en streaming, sin armar el
+ * contenido en memoria. Queda oculto (IS_PENDING) hasta terminar; si [write] falla se
+ * borra el archivo a medio escribir y se relanza el error.
+ */
+suspend fun exportStreamToDownloads(
+    context: Context,
+    fileName: String,
+    mimeType: String,
+    relativePath: String = Environment.DIRECTORY_DOWNLOADS,
+    write: suspend (OutputStream) -> Unit
+): Uri? {
+    val resolver = context.contentResolver
+    val values = ContentValues().apply {
+        put(MediaStore.Downloads.DISPLAY_NAME, fileName)
+        put(MediaStore.Downloads.MIME_TYPE, mimeType)
+        put(MediaStore.Downloads.RELATIVE_PATH, relativePath)
+        put(MediaStore.Downloads.IS_PENDING, 1)
+    }
+
+    val uri = resolver.insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, values) ?: return null
+    try {
+        val stream = resolver.openOutputStream(uri)
+        if (stream == null) {
+            resolver.delete(uri, null, null)
+            return null
+        }
+        stream.use { write(it) }
+    } catch (t: Throwable) {
+        resolver.delete(uri, null, null)
+        throw t
+    }
+    resolver.update(uri, ContentValues().apply { put(MediaStore.Downloads.IS_PENDING, 0) }, null, null)
+    return uri
+}
+
 fun exportTemplateToDownloads(
     context: Context,
     fileName: String,
@@ -4,6 +4,8 @@ import android.content.Context
 import android.net.Uri
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
+import com.example.selliaapp.data.csv.CsvExportPipeline
+import com.example.selliaapp.data.csv.CsvExportSection
 import com.example.selliaapp.data.csv.CsvUtils
 import com.example.selliaapp.data.csv.CustomerCsvExporter
 import com.example.selliaapp.data.csv.ExpenseCsvExporter
@@ -11,19 +13,29 @@ import com.example.selliaapp.data.csv.ProductCsvExporter
 import com.example.selliaapp.data.csv.SalesCsvExporter
 import com.example.selliaapp.data.csv.SalesCsvImporter
 import com.example.selliaapp.data.csv.TotalCsvBundle
+import com.example.selliaapp.data.csv.asRowSource
+import com.example.selliaapp.data.csv.forEachChunk
 import com.example.selliaapp.data.dao.InvoiceDao
+import com.example.selliaapp.data.dao.InvoiceWithItems
+import com.example.selliaapp.data.dao.SalesRollupDao
+import com.example.selliaapp.data.local.entity.CustomerEntity
+import com.example.selliaapp.data.local.entity.ProductEntity
+import com.example.selliaapp.data.model.ExpenseRecord
 import com.example.selliaapp.data.model.ImportResult
 import com.example.selliaapp.di.IoDispatcher
 import com.example.selliaapp.repository.CustomerRepository
 import com.example.selliaapp.repository.ExpenseRepository
 import com.example.selliaapp.repository.ProductRepository
 import com.example.selliaapp.repository.UserRepository
+import com.example.selliaapp.ui.util.exportStreamToDownloads
 import dagger.hilt.android.lifecycle.HiltViewModel
 import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
-import java.io.ByteArrayInputStream
 import java.time.LocalDateTime
 import java.time.format.DateTimeFormatter
 import javax.inject.Inject
@@ -34,16 +46,23 @@ class BulkDataViewModel @Inject constructor(
     private val productRepository: ProductRepository,
     private val userRepository: UserRepository,
     private val invoiceDao: InvoiceDao,
+    private val salesRollupDao: SalesRollupDao,
     private val expenseRepository: ExpenseRepository,
     @IoDispatcher private val io: CoroutineDispatcher
 ) : ViewModel() {
 
-    data class ExportPayload(
+    data class ExportedFile(
+        val uri: Uri,
         val fileName: String,
-        val mimeType: String,
-        val content: String
+        val mimeType: String
     )
 
+    private val exportPipeline = CsvExportPipeline()
+    private val _exportProgress = MutableStateFlow<CsvExportPipeline.Progress?>(null)
+
+    /** Avance de la exportación en curso (null si no hay ninguna). */
+    val exportProgress: StateFlow<CsvExportPipeline.Progress?> = _exportProgress.asStateFlow()
+
     data class TotalImportSummary(
         val message: String,
         val errors: List<String>
@@ -75,95 +94,127 @@ class BulkDataViewModel @Inject constructor(
         }
     }
 
-    fun exportProducts(onCompleted: (Result<ExportPayload>) -> Unit) {
-        viewModelScope.launch(io) {
-            val result = runCatching {
-                val products = productRepository.getAllForExport()
-                ExportPayload(
-                    fileName = ProductCsvExporter.exportFileName(timestamp()),
-                    mimeType = ProductCsvExporter.mimeType(),
-                    content = ProductCsvExporter.export(products)
-                )
-            }
-            withContext(Dispatchers.Main) {
-                onCompleted(result)
-            }
-        }
+    fun exportProducts(context: Context, onCompleted: (Result<ExportedFile>) -> Unit) {
+        exportToDownloads(
+            context = context,
+            fileName = ProductCsvExporter.exportFileName(timestamp()),
+            mimeType = ProductCsvExporter.mimeType(),
+            sections = listOf(productsSection(marker = null)),
+            onCompleted = onCompleted
+        )
     }
 
-    fun exportCustomers(onCompleted: (Result<ExportPayload>) -> Unit) {
-        viewModelScope.launch(io) {
-            val result = runCatching {
-                val customers = customerRepository.getAllOnce()
-                ExportPayload(
-                    fileName = CustomerCsvExporter.exportFileName(timestamp()),
-                    mimeType = CustomerCsvExporter.mimeType(),
-                    content = CustomerCsvExporter.export(customers)
-                )
-            }
-            withContext(Dispatchers.Main) {
-                onCompleted(result)
-            }
-        }
+    fun exportCustomers(context: Context, onCompleted: (Result<ExportedFile>) -> Unit) {
+        exportToDownloads(
+            context = context,
+            fileName = CustomerCsvExporter.exportFileName(timestamp()),
+            mimeType = CustomerCsvExporter.mimeType(),
+            sections = listOf(customersSection(marker = null)),
+            onCompleted = onCompleted
+        )
     }
 
-    fun exportSales(onCompleted: (Result<ExportPayload>) -> Unit) {
-        viewModelScope.launch(io) {
-            val result = runCatching {
-                val invoices = invoiceDao.getAllInvoicesOnce()
-                ExportPayload(
-                    fileName = SalesCsvExporter.exportFileName(timestamp()),
-                    mimeType = SalesCsvExporter.mimeType(),
-                    content = SalesCsvExporter.export(invoices)
-                )
-            }
-            withContext(Dispatchers.Main) {
-                onCompleted(result)
-            }
-        }
+    fun exportSales(context: Context, onCompleted: (Result<ExportedFile>) -> Unit) {
+        exportToDownloads(
+            context = context,
+            fileName = SalesCsvExporter.exportFileName(timestamp()),
+            mimeType = SalesCsvExporter.mimeType(),
+            sections = listOf(salesSection(marker = null)),
+            onCompleted = onCompleted
+        )
     }
 
-    fun exportExpenses(onCompleted: (Result<ExportPayload>) -> Unit) {
-        viewModelScope.launch(io) {
-            val result = runCatching {
-                val records = expenseRepository.getAllRecordsOnce()
-                ExportPayload(
-                    fileName = ExpenseCsvExporter.exportFileName(timestamp()),
-                    mimeType = ExpenseCsvExporter.mimeType(),
-                    content = ExpenseCsvExporter.export(records)
-                )
-            }
-            withContext(Dispatchers.Main) {
-                onCompleted(result)
-            }
-        }
+    fun exportExpenses(context: Context, onCompleted: (Result<ExportedFile>) -> Unit) {
+        exportToDownloads(
+            context = context,
+            fileName = ExpenseCsvExporter.exportFileName(timestamp()),
+            mimeType = ExpenseCsvExporter.mimeType(),
+            sections = listOf(expensesSection(marker = null)),
+            onCompleted = onCompleted
+        )
     }
 
-    fun exportAll(onCompleted: (Result<ExportPayload>) -> Unit) {
+    /** Mismo formato que [TotalCsvBundle.bundle]; con [compress] se guarda como `.csv.gz`. */
+    fun exportAll(context: Context, compress: Boolean, onCompleted: (Result<ExportedFile>) -> Unit) {
+        exportToDownloads(
+            context = context,
+            fileName = "exportacion_total_${timestamp()}.csv",
+            mimeType = "text/csv",
+            sections = listOf(
+                productsSection(TotalCsvBundle.PRODUCTS),
+                customersSection(TotalCsvBundle.CUSTOMERS),
+                salesSection(TotalCsvBundle.SALES),
+                expensesSection(TotalCsvBundle.EXPENSES)
+            ),
+            compress = compress,
+            onCompleted = onCompleted
+        )
+    }
+
+    private fun exportToDownloads(
+        context: Context,
+        fileName: String,
+        mimeType: String,
+        sections: List<CsvExportSection<*>>,
+        compress: Boolean = false,
+        onCompleted: (Result<ExportedFile>) -> Unit
+    ) {
         viewModelScope.launch(io) {
+            val finalName = if (compress) fileName + CsvExportPipeline.GZIP_EXTENSION else fileName
+            val finalMime = if (compress) CsvExportPipeline.GZIP_MIME_TYPE else mimeType
             val result = runCatching {
-                val products = productRepository.getAllForExport()
-                val customers = customerRepository.getAllOnce()
-                val invoices = invoiceDao.getAllInvoicesOnce()
-                val expenses = expenseRepository.getAllRecordsOnce()
-                val bundled = TotalCsvBundle.bundle(
-                    productsCsv = ProductCsvExporter.export(products),
-                    customersCsv = CustomerCsvExporter.export(customers),
-                    salesCsv = SalesCsvExporter.export(invoices),
-                    expensesCsv = ExpenseCsvExporter.export(expenses)
-                )
-                ExportPayload(
-                    fileName = "exportacion_total_${timestamp()}.csv",
-                    mimeType = "text/csv",
-                    content = bundled
-                )
+                val uri = exportStreamToDownloads(context.applicationContext, finalName, finalMime) { output ->
+                    exportPipeline.export(output, sections, gzip = compress) { progress ->
+                        _exportProgress.value = progress
+                    }
+                } ?: error("No se pudo crear $finalName en Descargas")
+                ExportedFile(uri = uri, fileName = finalName, mimeType = finalMime)
             }
+            _exportProgress.value = null
             withContext(Dispatchers.Main) {
                 onCompleted(result)
             }
         }
     }
 
+    private fun productsSection(marker: String?) = CsvExportSection<ProductEntity>(
+        name = "productos",
+        marker = marker,
+        writeHeader = ProductCsvExporter::writeHeader,
+        nextPage = { last, limit -> productRepository.getExportPage(last, limit) },
+        writeRow = { out, product -> ProductCsvExporter.writeRow(out, product); 1 }
+    )
+
+    private fun customersSection(marker: String?) = CsvExportSection<CustomerEntity>(
+        name = "clientes",
+        marker = marker,
+        writeHeader = CustomerCsvExporter::writeHeader,
+        nextPage = { last, limit -> customerRepository.getExportPage(last, limit) },
+        writeRow = { out, customer -> CustomerCsvExporter.writeRow(out, customer); 1 }
+    )
+
+    private fun salesSection(marker: String?) = CsvExportSection<InvoiceWithItems>(
+        name = "ventas",
+        marker = marker,
+        writeHeader = SalesCsvExporter::writeHeader,
+        nextPage = { last, limit ->
+            invoiceDao.invoicesWithItemsBefore(
+                dateMillis = last?.invoice?.dateMillis ?: Long.MAX_VALUE,
+                id = last?.invoice?.id ?: Long.MAX_VALUE,
+                limit = limit
+            )
+        },
+        writeRow = { out, invoice -> SalesCsvExporter.writeRows(out, invoice) }
+    )
+
+    private fun expensesSection(marker: String?) = CsvExportSection<ExpenseRecord>(
+        name = "gastos",
+        marker = marker,
+        writeHeader = ExpenseCsvExporter::writeHeader,
+        nextPage = { last, limit -> expenseRepository.getExportPage(last, limit) },
+        writeRow = { out, record -> ExpenseCsvExporter.writeRow(out, record); 1 }
+    )
+
     fun importAll(
         context: Context,
         uri: Uri,
@@ -171,46 +222,63 @@ class BulkDataViewModel @Inject constructor(
     ) {
         viewModelScope.launch(io) {
             val result = runCatching {
-                val content = context.contentResolver.openInputStream(uri)?.use { stream ->
-                    String(stream.readBytes())
-                } ?: ""
-                val sections = TotalCsvBundle.splitSections(content)
+                // Cada sección va a un archivo temporal y se importa fila por fila desde ahí.
+                val sections = context.contentResolver.openInputStream(uri)?.use { stream ->
+                    TotalCsvBundle.splitToFiles(TotalCsvBundle.decodedInput(stream), context.cacheDir)
+                }.orEmpty()
                 val errors = mutableListOf<String>()
                 var productsResult: ImportResult? = null
                 var customersResult: ImportResult? = null
                 var expensesResult: ImportResult? = null
                 var salesInserted = 0
 
-                sections[TotalCsvBundle.PRODUCTS]?.takeIf { it.isNotBlank() }?.let { csv ->
-                    val table = CsvUtils.readAll(ByteArrayInputStream(csv.toByteArray()))
-                    productsResult = productRepository.importProductsFromTable(
-                        table,
-                        ProductRepository.ImportStrategy.Append
-                    )
-                    errors += productsResult?.errors.orEmpty()
-                }
+                try {
+                    sections[TotalCsvBundle.PRODUCTS]?.let { file ->
+                        productsResult = file.inputStream().use { input ->
+                            productRepository.importProductsFromRows(
+                                CsvUtils.rows(input).asRowSource(),
+                                ProductRepository.ImportStrategy.Append
+                            )
+                        }
+                        errors += productsResult?.errors.orEmpty()
+                    }
 
-                sections[TotalCsvBundle.CUSTOMERS]?.takeIf { it.isNotBlank() }?.let { csv ->
-                    val table = CsvUtils.readAll(ByteArrayInputStream(csv.toByteArray()))
-                    customersResult = customerRepository.importCustomersFromTable(table)
-                    errors += customersResult?.errors.orEmpty()
-                }
+                    sections[TotalCsvBundle.CUSTOMERS]?.let { file ->
+                        customersResult = file.inputStream().use { input ->
+                            customerRepository.importCustomersFromRows(CsvUtils.rows(input).asRowSource())
+                        }
+                        errors += customersResult?.errors.orEmpty()
+                    }
 
-                sections[TotalCsvBundle.EXPENSES]?.takeIf { it.isNotBlank() }?.let { csv ->
-                    val table = CsvUtils.readAll(ByteArrayInputStream(csv.toByteArray()))
-                    expensesResult = expenseRepository.importRecordsFromTable(table)
-                    errors += expensesResult?.errors.orEmpty()
-                }
+                    sections[TotalCsvBundle.EXPENSES]?.let { file ->
+                        expensesResult = file.inputStream().use { input ->
+                            expenseRepository.importRecordsFromRows(CsvUtils.rows(input).asRowSource())
+                        }
+                        errors += expensesResult?.errors.orEmpty()
+                    }
 
-                sections[TotalCsvBundle.SALES]?.takeIf { it.isNotBlank() }?.let { csv ->
-                    val table = CsvUtils.readAll(ByteArrayInputStream(csv.toByteArray()))
-                    val rows = SalesCsvImporter.parseTable(table)
-                    val (parsedSales, salesErrors) = SalesCsvImporter.groupRows(rows)
-                    errors += salesErrors
-                    parsedSales.forEach { parsed ->
-                        invoiceDao.insertInvoiceWithItems(parsed.invoice, parsed.items)
-                        salesInserted++
+                    sections[TotalCsvBundle.SALES]?.let { file ->
+                        file.inputStream().use { input ->
+                            val source = CsvUtils.rows(input).asRowSource()
+                            var salesErrors = emptyList<String>()
+                            forEachChunk<SalesCsvImporter.ParsedSale>(
+                                chunkSize = SALES_IMPORT_CHUNK,
+                                read = { onSale -> salesErrors = SalesCsvImporter.forEachSale(source, onSale) },
+                                dispatcher = io
+                            ) { sales ->
+                                sales.forEach { parsed ->
+                                    invoiceDao.insertInvoiceWithItems(parsed.invoice, parsed.items)
+                                    salesInserted++
+                                }
+                                true
+                            }
+                            errors += salesErrors
+                        }
+                        // Las ventas importadas pueden pisar facturas existentes: se recalcula todo.
+                        if (salesInserted > 0) salesRollupDao.rebuild()
                     }
+                } finally {
+                    sections.values.forEach { it.delete() }
                 }
 
                 val message = buildString {
@@ -234,4 +302,8 @@ class BulkDataViewModel @Inject constructor(
         val formatter = DateTimeFormatter.ofPattern("yyyyMMdd_HHmm")
         return LocalDateTime.now().format(formatter)
     }
+
+    private companion object {
+        const val SALES_IMPORT_CHUNK = 200
+    }
 }
@@ -5,8 +5,6 @@ import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
 import com.example.selliaapp.data.model.dashboard.DailySalesPoint
 import com.example.selliaapp.data.model.dashboard.LowStockProduct
-import com.example.selliaapp.data.dao.InvoiceWithItems
-import com.example.selliaapp.data.local.entity.ProductEntity
 import com.example.selliaapp.repository.CashRepository
 import com.example.selliaapp.repository.CashSessionSummary
 import com.example.selliaapp.repository.InvoiceRepository
@@ -16,13 +14,10 @@ import dagger.hilt.android.lifecycle.HiltViewModel
 import kotlinx.coroutines.async
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
-import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.collectLatest
 import kotlinx.coroutines.flow.catch
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
-import java.time.LocalDate
-import java.time.ZoneId
 import java.time.Duration
 import javax.inject.Inject
 
@@ -142,23 +137,18 @@ class HomeViewModel @Inject constructor(
 
     private fun observeKpiMetrics() {
         viewModelScope.launch {
-            combine(
-                invoiceRepo.observeInvoicesWithItems(),
-                productRepo.observeAll()
-            ) { invoices, products ->
-                computeKpiSnapshot(invoices, products)
-            }
+            invoiceRepo.observeTodayKpis()
                 .catch { error ->
                     _state.update {
                         it.copy(errorMessage = error.localizedMessage ?: "No fue posible cargar KPIs")
                     }
                 }
-                .collectLatest { snapshot ->
+                .collectLatest { kpis ->
                     _state.update {
                         it.copy(
-                            dailySales = snapshot.dailySales,
-                            dailyMargin = snapshot.dailyMargin,
-                            averageTicket = snapshot.averageTicket
+                            dailySales = kpis.sales,
+                            dailyMargin = kpis.margin,
+                            averageTicket = kpis.averageTicket
                         )
                     }
                 }
@@ -178,43 +168,4 @@ class HomeViewModel @Inject constructor(
                 }
         }
     }
-
-    private fun computeKpiSnapshot(
-        invoices: List<InvoiceWithItems>,
-        products: List<ProductEntity>
-    ): KpiSnapshot {
-        val zone = ZoneId.systemDefault()
-        val today = LocalDate.now(zone)
-        val startMillis = today.atStartOfDay(zone).toInstant().toEpochMilli()
-        val endMillis = today.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli()
-        val todayInvoices = invoices.filter { it.invoice.dateMillis in startMillis until endMillis }
-
-        val dailySales = todayInvoices.sumOf { it.invoice.total }
-        val averageTicket = if (todayInvoices.isEmpty()) {
-            0.0
-        } else {
-            dailySales / todayInvoices.size
-        }
-
-        val productMap = products.associateBy { it.id }
-        val dailyMargin = todayInvoices.sumOf { invoice ->
-            invoice.items.sumOf { item ->
-                val product = productMap[item.productId]
-                val cost = product?.purchasePrice ?: 0.0
-                (item.unitPrice - cost) * item.quantity
-            }
-        }
-
-        return KpiSnapshot(
-            dailySales = dailySales,
-            dailyMargin = dailyMargin,
-            averageTicket = averageTicket
-        )
-    }
-
-    private data class KpiSnapshot(
-        val dailySales: Double,
-        val dailyMargin: Double,
-        val averageTicket: Double
-    )
 }
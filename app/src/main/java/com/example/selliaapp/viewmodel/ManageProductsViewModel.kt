@@ -6,15 +6,19 @@ import com.example.selliaapp.data.dao.VariantDao
 import com.example.selliaapp.data.local.entity.ProductEntity
 import com.example.selliaapp.data.local.entity.VariantEntity
 import com.example.selliaapp.domain.product.ProductFilterParams
+import com.example.selliaapp.domain.product.ProductSearchIndex
 import com.example.selliaapp.domain.product.ProductSortOption
-import com.example.selliaapp.domain.product.filterAndSortProducts
 import com.example.selliaapp.repository.IProductRepository
 import dagger.hilt.android.lifecycle.HiltViewModel
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.drop
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.scan
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
 import javax.inject.Inject
@@ -47,9 +51,18 @@ class ManageProductsViewModel @Inject constructor(
 
     val productsAll: Flow<List<ProductEntity>> = repo.observeAll()
 
-    val filteredProducts: Flow<List<ProductEntity>> = combine(productsAll, state) { products, uiState ->
-        filterAndSortProducts(products, uiState.toFilterParams())
-    }
+    /**
+     * Índice de búsqueda mantenido en forma incremental: cada emisión del catálogo reutiliza
+     * lo indexado de los productos que no cambiaron, y cada tecla solo consulta el índice.
+     */
+    private val searchIndex: Flow<ProductSearchIndex> = productsAll
+        .scan(ProductSearchIndex.EMPTY) { index, products -> index.update(products) }
+        .drop(1)
+        .flowOn(Dispatchers.Default)
+
+    val filteredProducts: Flow<List<ProductEntity>> = combine(searchIndex, state) { index, uiState ->
+        index.query(uiState.toFilterParams())
+    }.flowOn(Dispatchers.Default)
 
     fun setQuery(value: String) = _state.update { it.copy(query = value) }
     fun setParentCategory(value: String) = _state.update { it.copy(parentCategory = value) }
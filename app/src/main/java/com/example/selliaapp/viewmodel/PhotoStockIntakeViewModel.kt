@@ -7,7 +7,7 @@ import com.example.selliaapp.auth.TenantProvider
 import com.example.selliaapp.data.local.entity.ProductEntity
 import com.example.selliaapp.domain.product.ProductPhotoRecognitionService
 import com.example.selliaapp.repository.IProductRepository
-import com.example.selliaapp.repository.StorageRepository
+import com.example.selliaapp.repository.ProductImageUploadQueue
 import dagger.hilt.android.lifecycle.HiltViewModel
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.MutableStateFlow
@@ -41,7 +41,7 @@ data class PhotoStockIntakeUiState(
 class PhotoStockIntakeViewModel @Inject constructor(
     private val recognitionService: ProductPhotoRecognitionService,
     private val productRepository: IProductRepository,
-    private val storageRepository: StorageRepository,
+    private val imageUploadQueue: ProductImageUploadQueue,
     private val tenantProvider: TenantProvider
 ) : ViewModel() {
 
@@ -128,20 +128,9 @@ class PhotoStockIntakeViewModel @Inject constructor(
         if (imagePath.isBlank() || productId <= 0) return false
         return runCatching {
             val tenantId = tenantProvider.requireTenantId()
-            val uploadedUrl = storageRepository.uploadProductImage(
-                tenantId = tenantId,
-                productId = productId,
-                localUri = Uri.parse(imagePath),
-                contentType = null
-            )
-            val current = productRepository.getById(productId) ?: return false
-            val merged = (current.imageUrls + uploadedUrl).distinct()
-            productRepository.update(
-                current.copy(
-                    imageUrl = merged.firstOrNull(),
-                    imageUrls = merged
-                )
-            ) > 0
+            // Se procesa acá y se sube en segundo plano, en paralelo con las demás fotos.
+            imageUploadQueue.enqueue(tenantId = tenantId, productId = productId, source = Uri.parse(imagePath))
+            true
         }.getOrElse { false }
     }
 
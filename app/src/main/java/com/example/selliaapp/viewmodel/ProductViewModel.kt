@@ -8,18 +8,28 @@ import com.example.selliaapp.data.local.entity.ProductEntity
 import com.example.selliaapp.data.model.ImportResult
 import com.example.selliaapp.data.remote.off.OffResult
 import com.example.selliaapp.data.remote.off.OpenFoodFactsRepository
+import com.example.selliaapp.domain.product.ProductSearchIndex
 import com.example.selliaapp.auth.TenantProvider
+import com.example.selliaapp.data.local.entity.ProductImageUploadEntity
+import com.example.selliaapp.data.local.entity.ProductImageUploadStatus
 import com.example.selliaapp.repository.IProductRepository
 import com.example.selliaapp.repository.CloudCatalogImage
+import com.example.selliaapp.repository.ProductImageUploadQueue
 import com.example.selliaapp.repository.ProductRepository
 import com.example.selliaapp.repository.StorageRepository
 import dagger.hilt.android.lifecycle.HiltViewModel
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.scan
+import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
 import java.time.LocalDate
 import javax.inject.Inject
 
@@ -46,6 +56,7 @@ class ProductViewModel @Inject constructor(
     private val repo: IProductRepository,
     private val offRepo: OpenFoodFactsRepository,
     private val storageRepository: StorageRepository,
+    private val imageUploadQueue: ProductImageUploadQueue,
     private val tenantProvider: TenantProvider
 
 ) : ViewModel() {
@@ -59,6 +70,10 @@ class ProductViewModel @Inject constructor(
     private val _cloudCatalogState = MutableStateFlow(CloudCatalogUiState())
     val cloudCatalogState = _cloudCatalogState.asStateFlow()
 
+    /** Fotos que agotaron los reintentos; la pantalla del producto ofrece reintentar o descartar. */
+    val failedImageUploads: StateFlow<List<ProductImageUploadEntity>> = imageUploadQueue.observeFailed()
+        .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5_000), emptyList())
+
     // Campos de tu formulario (simplificado)
     var name: String? = null
     var brand: String? = null
@@ -79,6 +94,15 @@ class ProductViewModel @Inject constructor(
     // 👇 Alias para compatibilidad con pantallas que usan `productVm.products`
     val products: Flow<List<ProductEntity>> get() = allProducts
 
+    /**
+     * Índice de búsqueda del catálogo público: se arma en [Dispatchers.Default] y cada
+     * emisión del catálogo lo actualiza en forma incremental en lugar de reconstruirlo.
+     */
+    val searchIndex: StateFlow<ProductSearchIndex> = allProducts
+        .scan(ProductSearchIndex.EMPTY) { index, products -> index.update(products) }
+        .flowOn(Dispatchers.Default)
+        .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5_000), ProductSearchIndex.EMPTY)
+
     fun search(q: String?): Flow<List<ProductEntity>> = repo.search(q)
 
 
@@ -215,17 +239,8 @@ class ProductViewModel @Inject constructor(
             )
             runCatching {
                 val newId = repo.insert(entity)
-                val uploadedUrls = uploadPendingImagesIfAny(newId, pendingImageUris)
-                if (uploadedUrls.isNotEmpty()) {
-                    val merged = (normalizedImages + uploadedUrls).distinct()
-                    repo.update(
-                        entity.copy(
-                            id = newId,
-                            imageUrls = merged,
-                            imageUrl = merged.firstOrNull()
-                        )
-                    )
-                }
+                // La cola agrega cada URL al producto a medida que termina de subir.
+                enqueuePendingImagesIfAny(newId, pendingImageUris)
                 newId
             }.onSuccess { newId ->
                 withContext(Dispatchers.Main) {
@@ -330,29 +345,26 @@ class ProductViewModel @Inject constructor(
     fun uploadProductImage(
         productId: Int,
         localUri: Uri,
-        contentType: String?,
         onDone: (Result<String>) -> Unit = {}
     ) {
         viewModelScope.launch(Dispatchers.IO) {
             runCatching {
                 _imageUploadState.value = ImageUploadUiState(uploading = true, message = null)
                 val tenantId = tenantProvider.requireTenantId()
-                val downloadUrl = storageRepository.uploadProductImage(
-                    tenantId = tenantId,
-                    productId = productId,
-                    localUri = localUri,
-                    contentType = contentType
-                )
-                val current = repo.getById(productId)
-                    ?: throw IllegalStateException("Producto no encontrado.")
-                val merged = (current.imageUrls + downloadUrl).distinct()
-                repo.update(
-                    current.copy(
-                        imageUrls = merged,
-                        imageUrl = merged.firstOrNull()
-                    )
-                )
-                downloadUrl
+                // La cola también agrega la URL al producto; acá solo se espera el resultado.
+                val uploadId = imageUploadQueue.enqueue(tenantId, productId, localUri)
+                val upload = withTimeoutOrNull(UPLOAD_WAIT_MILLIS) { imageUploadQueue.awaitResult(uploadId) }
+                    ?: run {
+                        // Sin red la cola sigue con sus reintentos: se libera la pantalla y la
+                        // URL llega cuando termine (o la subida aparece en las fallidas).
+                        _imageUploadState.value = ImageUploadUiState(
+                            uploading = false,
+                            message = "La imagen quedó en cola; se agrega al producto cuando se suba."
+                        )
+                        imageUploadQueue.awaitResult(uploadId)
+                    }
+                upload.remoteUrl?.takeIf { upload.status == ProductImageUploadStatus.DONE }
+                    ?: throw IllegalStateException(upload.lastError ?: "No se pudo subir la imagen.")
             }.onSuccess { url ->
                 _imageUploadState.value = ImageUploadUiState(uploading = false, message = null)
                 withContext(Dispatchers.Main) {
@@ -371,6 +383,23 @@ class ProductViewModel @Inject constructor(
     }
 
 
+    fun retryImageUpload(uploadId: Long) {
+        viewModelScope.launch(Dispatchers.IO) {
+            if (!imageUploadQueue.retry(uploadId)) {
+                _imageUploadState.value = ImageUploadUiState(
+                    uploading = false,
+                    message = "No se puede reintentar: la imagen ya no está en el dispositivo. Descartala y volvé a cargarla."
+                )
+            }
+        }
+    }
+
+    fun discardImageUpload(uploadId: Long) {
+        viewModelScope.launch(Dispatchers.IO) {
+            imageUploadQueue.discard(uploadId)
+        }
+    }
+
     fun loadPublicCatalogImages(limit: Int = 60) {
         viewModelScope.launch(Dispatchers.IO) {
             _cloudCatalogState.value = CloudCatalogUiState(loading = true)
@@ -546,33 +575,28 @@ class ProductViewModel @Inject constructor(
         return if (publishRequested) "published" else "draft"
     }
 
-    private suspend fun uploadPendingImagesIfAny(
+    private suspend fun enqueuePendingImagesIfAny(
         productId: Int,
         pendingImageUris: List<Uri>
-    ): List<String> {
-        if (pendingImageUris.isEmpty()) return emptyList()
+    ) {
+        if (pendingImageUris.isEmpty()) return
         _imageUploadState.value = ImageUploadUiState(uploading = true, message = null)
         val tenantId = tenantProvider.requireTenantId()
-        val uploaded = mutableListOf<String>()
         pendingImageUris.forEach { uri ->
             runCatching {
-                storageRepository.uploadProductImage(
-                    tenantId = tenantId,
-                    productId = productId,
-                    localUri = uri,
-                    contentType = null
-                )
-            }.onSuccess { url ->
-                uploaded.add(url)
+                imageUploadQueue.enqueue(tenantId = tenantId, productId = productId, source = uri)
             }.onFailure { error ->
                 _imageUploadState.value = ImageUploadUiState(
                     uploading = false,
-                    message = error.message ?: "No se pudieron subir todas las imágenes."
+                    message = error.message ?: "No se pudieron procesar todas las imágenes."
                 )
             }
         }
         _imageUploadState.value = ImageUploadUiState(uploading = false, message = _imageUploadState.value.message)
-        return uploaded
     }
 
+    private companion object {
+        /** Cuánto se muestra "Subiendo..." antes de dejar la foto en cola en segundo plano. */
+        const val UPLOAD_WAIT_MILLIS = 20_000L
+    }
 }
@@ -1,19 +1,22 @@
 package com.example.selliaapp.viewmodel
 
-import android.net.Uri
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
 import com.example.selliaapp.BuildConfig
 import com.example.selliaapp.data.local.entity.ProductEntity
 import com.example.selliaapp.data.model.sales.CartItem
 import com.example.selliaapp.data.model.sales.InvoiceDraft
+import com.example.selliaapp.domain.product.ScanValueParser
 import com.example.selliaapp.data.local.entity.CashMovementType
 import com.example.selliaapp.repository.CashRepository
 import com.example.selliaapp.repository.IProductRepository
 import com.example.selliaapp.repository.InvoiceRepository
+import com.example.selliaapp.repository.ProductScanResolver
+import com.example.selliaapp.repository.ScanLatencyStats
 import com.example.selliaapp.repository.CustomerRepository
 import com.example.selliaapp.repository.SellDraft
 import com.example.selliaapp.repository.SellDraftItem
+import com.example.selliaapp.repository.ParkedSellDraft
 import com.example.selliaapp.repository.SellDraftRepository
 import com.example.selliaapp.ui.state.CartItemUi
 import com.example.selliaapp.ui.state.CustomerSummaryUi
@@ -38,7 +41,8 @@ class SellViewModel @Inject constructor(
     private val invoiceRepo: InvoiceRepository,
     private val cashRepository: CashRepository,
     private val sellDraftRepository: SellDraftRepository,
-    private val customerRepository: CustomerRepository
+    private val customerRepository: CustomerRepository,
+    private val scanResolver: ProductScanResolver
 ) : ViewModel() {
 
     private val _state = MutableStateFlow(SellUiState())
@@ -58,8 +62,8 @@ class SellViewModel @Inject constructor(
      * Si no existe -> devolvemos el valor normalizado para precargar en alta.
      */
     suspend fun onScanBarcode(rawScanValue: String): ScanResult = withContext(Dispatchers.IO) {
-        val normalizedValue = normalizeScanValue(rawScanValue)
-        val product = resolveProductByScan(rawScanValue)
+        val normalizedValue = ScanValueParser.normalize(rawScanValue)
+        val product = scanResolver.resolve(rawScanValue)
         if (product != null) ScanResult(foundId = product.id, prefillBarcode = normalizedValue)
         else ScanResult(foundId = null, prefillBarcode = normalizedValue)
     }
@@ -81,7 +85,7 @@ class SellViewModel @Inject constructor(
     ) {
         viewModelScope.launch {
             try {
-                val p = withContext(Dispatchers.IO) { resolveProductByScan(barcode) }
+                val p = withContext(Dispatchers.IO) { scanResolver.resolve(barcode) }
                 if (p == null) {
                     onNotFound()
                 } else {
@@ -94,53 +98,8 @@ class SellViewModel @Inject constructor(
         }
     }
 
-    private suspend fun resolveProductByScan(rawValue: String): ProductEntity? {
-        val normalizedValue = normalizeScanValue(rawValue)
-        val candidates = linkedSetOf<String>().apply {
-            add(normalizedValue)
-            add(rawValue.trim())
-            extractPathLastSegment(normalizedValue)?.let(::add)
-            extractPathLastSegment(rawValue)?.let(::add)
-        }.filter { it.isNotBlank() }
-
-        candidates.forEach { candidate ->
-            repo.getByBarcodeOrNull(candidate)?.let { return it }
-            repo.getByCodeOrNull(candidate)?.let { return it }
-            parseProductId(candidate)?.let { id ->
-                repo.getById(id)?.let { return it }
-            }
-        }
-
-        return null
-    }
-
-    private fun normalizeScanValue(rawValue: String): String {
-        val value = rawValue.trim()
-        if (value.isBlank()) return value
-        val parsed = runCatching { Uri.parse(value) }.getOrNull() ?: return value
-
-        val queryCandidate = listOf("q", "qr", "barcode", "code", "productId", "product_id", "id")
-            .firstNotNullOfOrNull { key -> parsed.getQueryParameter(key)?.takeIf { it.isNotBlank() } }
-
-        return queryCandidate?.trim()
-            ?: extractPathLastSegment(value)
-            ?: value
-    }
-
-    private fun extractPathLastSegment(rawValue: String): String? {
-        val parsed = runCatching { Uri.parse(rawValue) }.getOrNull() ?: return null
-        return parsed.lastPathSegment?.trim()?.takeIf { it.isNotBlank() }
-    }
-
-    private fun parseProductId(value: String): Int? {
-        val normalized = value.trim()
-        if (normalized.isBlank()) return null
-        if (normalized.all(Char::isDigit)) return normalized.toIntOrNull()
-        if (normalized.startsWith("PRODUCT-", ignoreCase = true)) {
-            return normalized.removePrefix("PRODUCT-").toIntOrNull()
-        }
-        return null
-    }
+    /** Latencia de los últimos escaneos resueltos (p50/p99). */
+    fun scanLatencyStats(): ScanLatencyStats = scanResolver.latencyStats()
 
     /** Agrega un producto acumulando, respetando stock (clamp 1..max). */
     fun addToCart(product: ProductEntity, qty: Int = 1) {
@@ -455,8 +414,45 @@ class SellViewModel @Inject constructor(
         }
     }
 
+    /** Preventas estacionadas, para retomarlas desde la pantalla de venta. */
+    val parkedSales: StateFlow<List<ParkedSellDraft>> = sellDraftRepository.parkedDrafts
+
+    /**
+     * Estaciona el carrito actual (p. ej. el cliente fue a buscar algo) y deja la venta
+     * libre para atender a otro. Sin ítems no hace nada.
+     */
+    fun parkCurrentSale(onError: (Throwable) -> Unit = {}) {
+        if (_state.value.items.isEmpty()) return
+        runCatching { sellDraftRepository.park(parkedLabel(_state.value)) }
+            .onSuccess { _state.value = SellUiState() }
+            .onFailure(onError)
+    }
+
+    /** Retoma una preventa estacionada; si el carrito actual tenía ítems, queda estacionado. */
+    fun resumeParkedSale(id: Long) {
+        val draft = sellDraftRepository.resume(id, parkedLabel(_state.value)) ?: return
+        applyDraft(draft)
+    }
+
+    fun discardParkedSale(id: Long) {
+        sellDraftRepository.discardParked(id)
+    }
+
+    private fun parkedLabel(state: SellUiState): String =
+        state.selectedCustomerName?.takeIf { it.isNotBlank() }
+            ?: "Venta ${sellDraftRepository.parkedDrafts.value.size + 1}"
+
+    override fun onCleared() {
+        sellDraftRepository.flush()
+        super.onCleared()
+    }
+
     private fun restoreDraft() {
         val draft = sellDraftRepository.load() ?: return
+        applyDraft(draft)
+    }
+
+    private fun applyDraft(draft: SellDraft) {
         val restoredState = SellUiState(
             items = draft.items.map { item ->
                 CartItemUi(
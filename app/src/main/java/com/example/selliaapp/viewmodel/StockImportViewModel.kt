@@ -58,7 +58,7 @@ class StockImportViewModel @Inject constructor(
         currentUri = uri
         viewModelScope.launch {
             runCatching {
-                TabularFileReader.readAll(appContext.contentResolver, uri).take(20)
+                TabularFileReader.readPreview(appContext.contentResolver, uri, limit = 20)
             }.onSuccess { table ->
                 _preview.value = table
             }.onFailure {
@@ -7,6 +7,7 @@ import com.example.selliaapp.repository.TenantDirectoryRepository
 import com.example.selliaapp.repository.TenantSummary
 import com.example.selliaapp.repository.ViewerStoreRepository
 import dagger.hilt.android.lifecycle.HiltViewModel
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.update
@@ -35,6 +36,7 @@ class ViewerCatalogViewModel @Inject constructor(
 
     private val _uiState = MutableStateFlow(ViewerCatalogUiState())
     val uiState: StateFlow<ViewerCatalogUiState> = _uiState
+    private var catalogJob: Job? = null
 
     init {
         refresh()
@@ -65,9 +67,10 @@ class ViewerCatalogViewModel @Inject constructor(
 
     fun selectStore(storeId: String) {
         _uiState.update { it.copy(selectedStoreId = storeId, errorMessage = null) }
+        // El catálogo local se muestra ya; guardar la selección no lo bloquea.
+        loadPublicCatalog(storeId)
         viewModelScope.launch {
             viewerStoreRepository.selectStore(storeId)
-                .onSuccess { loadPublicCatalog(storeId) }
                 .onFailure { error ->
                     _uiState.update {
                         it.copy(errorMessage = error.message ?: "No se pudo seleccionar la tienda")
@@ -115,6 +118,7 @@ class ViewerCatalogViewModel @Inject constructor(
                     if (selection.selectedStoreId != null) {
                         loadPublicCatalog(selection.selectedStoreId)
                     } else {
+                        catalogJob?.cancel()
                         _uiState.update { it.copy(products = emptyList()) }
                     }
                 }
@@ -131,18 +135,24 @@ class ViewerCatalogViewModel @Inject constructor(
     }
 
     private fun loadPublicCatalog(storeId: String) {
+        catalogJob?.cancel()
         _uiState.update { it.copy(isLoading = true) }
-        viewModelScope.launch {
-            viewerStoreRepository.fetchPublicCatalog(storeId)
-                .onSuccess { products ->
-                    _uiState.update { it.copy(isLoading = false, products = products) }
+        catalogJob = viewModelScope.launch {
+            launch {
+                viewerStoreRepository.observePublicCatalog(storeId).collect { products ->
+                    _uiState.update { it.copy(products = products) }
+                }
+            }
+            viewerStoreRepository.refreshPublicCatalog(storeId)
+                .onSuccess {
+                    _uiState.update { it.copy(isLoading = false) }
                 }
                 .onFailure { error ->
+                    // Queda visible la última copia local de la tienda.
                     _uiState.update {
                         it.copy(
                             isLoading = false,
-                            products = emptyList(),
-                            errorMessage = error.message ?: "No se pudo cargar el catálogo"
+                            errorMessage = error.message ?: "No se pudo actualizar el catálogo"
                         )
                     }
                 }
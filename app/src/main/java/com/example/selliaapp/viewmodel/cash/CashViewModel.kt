@@ -2,6 +2,8 @@ package com.example.selliaapp.viewmodel.cash
 
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
+import androidx.paging.PagingData
+import androidx.paging.cachedIn
 import com.example.selliaapp.data.local.entity.CashMovementEntity
 import com.example.selliaapp.data.local.entity.CashMovementType
 import com.example.selliaapp.domain.security.Permission
@@ -10,13 +12,20 @@ import com.example.selliaapp.repository.AccessControlRepository
 import com.example.selliaapp.repository.CashRepository
 import com.example.selliaapp.repository.CashSessionSummary
 import dagger.hilt.android.lifecycle.HiltViewModel
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
 import javax.inject.Inject
 
+@OptIn(ExperimentalCoroutinesApi::class)
 @HiltViewModel
 class CashViewModel @Inject constructor(
     private val cashRepository: CashRepository,
@@ -26,8 +35,20 @@ class CashViewModel @Inject constructor(
     private val _state = MutableStateFlow(CashUiState())
     val state: StateFlow<CashUiState> = _state.asStateFlow()
 
+    private val openSessionId = _state
+        .map { it.summary?.session?.id }
+        .distinctUntilChanged()
+
+    /** Detalle completo de movimientos de la sesión abierta, para el reporte. */
+    val pagedMovements: Flow<PagingData<CashMovementEntity>> = openSessionId
+        .flatMapLatest { sessionId ->
+            if (sessionId == null) flowOf(PagingData.empty()) else cashRepository.pagedMovements(sessionId)
+        }
+        .cachedIn(viewModelScope)
+
     init {
         observeCashSession()
+        observeRecentMovements()
         observeAccessControl()
     }
 
@@ -39,6 +60,22 @@ class CashViewModel @Inject constructor(
         }
     }
 
+    private fun observeRecentMovements() {
+        viewModelScope.launch {
+            openSessionId
+                .flatMapLatest { sessionId ->
+                    if (sessionId == null) {
+                        flowOf(emptyList())
+                    } else {
+                        cashRepository.observeRecentMovements(sessionId, RECENT_MOVEMENTS)
+                    }
+                }
+                .collect { movements ->
+                    _state.update { it.copy(movements = movements) }
+                }
+        }
+    }
+
     private fun observeAccessControl() {
         viewModelScope.launch {
             accessControlRepository.observeAccessState().collect { access ->
@@ -99,18 +136,21 @@ class CashViewModel @Inject constructor(
     fun registerAdjustment(amount: Double, note: String?) {
         addMovement(CashMovementType.ADJUSTMENT, amount, note)
     }
+
+    private companion object {
+        const val RECENT_MOVEMENTS = 5
+    }
 }
 
 data class CashUiState(
     val summary: CashSessionSummary? = null,
+    /** Últimos movimientos de la sesión abierta (el resto se pagina en el reporte). */
+    val movements: List<CashMovementEntity> = emptyList(),
     val accessState: UserAccessState = UserAccessState.guest()
 ) {
     val hasOpenSession: Boolean
         get() = summary != null
 
-    val movements: List<CashMovementEntity>
-        get() = summary?.movements.orEmpty()
-
     val permissions: Set<Permission>
         get() = accessState.permissions
 
@@ -1,15 +1,40 @@
 package com.example.selliaapp.viewmodel.sales
 
 import androidx.lifecycle.ViewModel
+import androidx.lifecycle.viewModelScope
+import androidx.paging.PagingData
+import androidx.paging.cachedIn
 import com.example.selliaapp.data.model.sales.InvoiceSummary
 import com.example.selliaapp.repository.InvoiceRepository
 import dagger.hilt.android.lifecycle.HiltViewModel
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.FlowPreview
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.debounce
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.map
 import javax.inject.Inject
 
 @HiltViewModel
 class SalesInvoicesViewModel @Inject constructor(
     private val repo: InvoiceRepository
 ) : ViewModel() {
-    val invoices: Flow<List<InvoiceSummary>> = repo.observeAll()
+
+    private val _query = MutableStateFlow("")
+    val query: StateFlow<String> = _query.asStateFlow()
+
+    /** Historial paginado: los ítems se cargan recién al abrir el detalle. */
+    @OptIn(ExperimentalCoroutinesApi::class, FlowPreview::class)
+    val invoices: Flow<PagingData<InvoiceSummary>> = _query
+        .debounce(250)
+        .map { it.trim() }
+        .distinctUntilChanged()
+        .flatMapLatest { q -> repo.pagedSummaries(q.ifBlank { null }) }
+        .cachedIn(viewModelScope)
+
+    fun setQuery(q: String) { _query.value = q }
 }
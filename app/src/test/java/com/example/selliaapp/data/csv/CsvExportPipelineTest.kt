@@ -0,0 +1,182 @@
+package com.example.selliaapp.data.csv
+
+import com.example.selliaapp.data.dao.InvoiceWithItems
+import com.example.selliaapp.data.local.entity.CustomerEntity
+import com.example.selliaapp.data.local.entity.ProductEntity
+import com.example.selliaapp.data.model.ExpenseRecord
+import com.example.selliaapp.data.model.Invoice
+import com.example.selliaapp.data.model.InvoiceItem
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.runBlocking
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.time.ZoneOffset
+
+class CsvExportPipelineTest {
+
+    /** Descarta lo escrito pero cuenta bytes y líneas. */
+    private class CountingSink : OutputStream() {
+        var bytes = 0L
+        var lines = 0L
+
+        override fun write(b: Int) {
+            bytes++
+            if (b == '\n'.code) lines++
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            bytes += len
+            for (i in off until off + len) if (b[i] == '\n'.code.toByte()) lines++
+        }
+    }
+
+    private fun invoice(id: Long, itemsPerInvoice: Int): InvoiceWithItems {
+        val invoice = Invoice(
+            id = id,
+            dateMillis = 1_700_000_000_000L - id * 60_000L,
+            customerId = (id % 500).toInt(),
+            customerName = "Cliente número $id",
+            subtotal = 1_000.0 + id,
+            taxes = 210.0,
+            discountPercent = 0,
+            discountAmount = 0.0,
+            surchargePercent = 0,
+            surchargeAmount = 0.0,
+            total = 1_210.0 + id,
+            paymentMethod = "EFECTIVO",
+            paymentNotes = "Pago en mostrador, sin cambio"
+        )
+        val items = List(itemsPerInvoice) { index ->
+            InvoiceItem(
+                id = id * itemsPerInvoice + index,
+                invoiceId = id,
+                productId = index + 1,
+                productName = "Producto de prueba con nombre largo #$index",
+                quantity = index + 1,
+                unitPrice = 250.5,
+                lineTotal = 250.5 * (index + 1)
+            )
+        }
+        return InvoiceWithItems(invoice, items)
+    }
+
+    /** Historial sintético de [invoiceCount] facturas, generado por página y nunca retenido. */
+    private fun syntheticSales(invoiceCount: Long, itemsPerInvoice: Int, requestedLimits: MutableList<Int>) =
+        CsvExportSection<InvoiceWithItems>(
+            name = "ventas",
+            marker = null,
+            writeHeader = SalesCsvExporter::writeHeader,
+            nextPage = { last, limit ->
+                requestedLimits += limit
+                val from = (last?.invoice?.id ?: 0L) + 1
+                val to = minOf(invoiceCount, from + limit - 1)
+                (from..to).map { invoice(it, itemsPerInvoice) }
+            },
+            writeRow = { out, invoice -> SalesCsvExporter.writeRows(out, invoice, ZoneOffset.UTC) }
+        )
+
+    private fun <T : Any> listSection(
+        name: String,
+        marker: String?,
+        items: List<T>,
+        writeHeader: (Appendable) -> Unit,
+        writeRow: (Appendable, T) -> Unit
+    ) = CsvExportSection<T>(
+        name = name,
+        marker = marker,
+        writeHeader = writeHeader,
+        nextPage = { last, limit ->
+            val from = if (last == null) 0 else items.indexOf(last) + 1
+            items.drop(from).take(limit)
+        },
+        writeRow = { out, item -> writeRow(out, item); 1 }
+    )
+
+    private fun usedHeapAfterGc(): Long {
+        repeat(2) { System.gc() }
+        val runtime = Runtime.getRuntime()
+        return runtime.totalMemory() - runtime.freeMemory()
+    }
+
+    @Test
+    fun `exporta 200k lineas de venta con heap acotado`() = runBlocking {
+        val invoices = 50_000L
+        val itemsPerInvoice = 4
+        val heapBudget = 16L * 1024 * 1024
+        val requestedLimits = mutableListOf<Int>()
+        val sink = CountingSink()
+        val baseline = usedHeapAfterGc()
+        var peak = baseline
+        var pages = 0
+
+        val result = CsvExportPipeline(pageSize = 500).export(
+            output = sink,
+            sections = listOf(syntheticSales(invoices, itemsPerInvoice, requestedLimits))
+        ) { progress ->
+            if (!progress.done && ++pages % 10 == 0) peak = maxOf(peak, usedHeapAfterGc())
+        }
+
+        assertThat(result.done).isTrue()
+        assertThat(result.totalRows).isEqualTo(200_000L)
+        assertThat(sink.lines).isEqualTo(200_001L) // + encabezado
+        assertThat(result.bytesWritten).isEqualTo(sink.bytes)
+        assertThat(requestedLimits.toSet()).containsExactly(500)
+        // La salida (~30 MB) supera el presupuesto: armarla como String no entraría.
+        assertThat(sink.bytes).isGreaterThan(heapBudget)
+        assertThat(peak - baseline).isLessThan(heapBudget)
+    }
+
+    @Test
+    fun `la exportacion total conserva el formato de TotalCsvBundle`() = runBlocking {
+        val products = listOf(
+            ProductEntity(id = 1, code = "A1", name = "Azúcar, 1kg", quantity = 3),
+            ProductEntity(id = 2, code = "Y1", name = "Yerba \"suave\"", quantity = 0)
+        )
+        val customers = listOf(CustomerEntity(id = 1, name = "Juan Pérez"))
+        val sales = listOf(invoice(1, 2), invoice(2, 0))
+        val expenses = listOf(
+            ExpenseRecord(id = 1, templateId = 1, nameSnapshot = "Luz", amount = 100.0, month = 5, year = 2025)
+        )
+        val output = ByteArrayOutputStream()
+
+        CsvExportPipeline(pageSize = 1).export(
+            output,
+            listOf(
+                listSection("productos", TotalCsvBundle.PRODUCTS, products, ProductCsvExporter::writeHeader, ProductCsvExporter::writeRow),
+                listSection("clientes", TotalCsvBundle.CUSTOMERS, customers, CustomerCsvExporter::writeHeader, CustomerCsvExporter::writeRow),
+                listSection("ventas", TotalCsvBundle.SALES, sales, SalesCsvExporter::writeHeader) { out, sale ->
+                    SalesCsvExporter.writeRows(out, sale)
+                },
+                listSection("gastos", TotalCsvBundle.EXPENSES, expenses, ExpenseCsvExporter::writeHeader, ExpenseCsvExporter::writeRow)
+            )
+        )
+
+        val expected = TotalCsvBundle.bundle(
+            productsCsv = ProductCsvExporter.export(products),
+            customersCsv = CustomerCsvExporter.export(customers),
+            salesCsv = SalesCsvExporter.export(sales),
+            expensesCsv = ExpenseCsvExporter.export(expenses)
+        )
+        assertThat(output.toString(Charsets.UTF_8.name())).isEqualTo(expected)
+    }
+
+    @Test
+    fun `gzip se lee de vuelta con decodedInput`() = runBlocking {
+        val requestedLimits = mutableListOf<Int>()
+        val plain = ByteArrayOutputStream()
+        val compressed = ByteArrayOutputStream()
+        val section = { syntheticSales(invoiceCount = 2_000, itemsPerInvoice = 3, requestedLimits) }
+
+        CsvExportPipeline(pageSize = 250).export(plain, listOf(section()))
+        val result = CsvExportPipeline(pageSize = 250).export(compressed, listOf(section()), gzip = true)
+
+        assertThat(result.bytesWritten).isEqualTo(compressed.size().toLong())
+        assertThat(compressed.size()).isLessThan(plain.size() / 4)
+        val decoded = TotalCsvBundle.decodedInput(ByteArrayInputStream(compressed.toByteArray())).readBytes()
+        assertThat(decoded).isEqualTo(plain.toByteArray())
+        val passthrough = TotalCsvBundle.decodedInput(ByteArrayInputStream(plain.toByteArray())).readBytes()
+        assertThat(passthrough).isEqualTo(plain.toByteArray())
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.selliaapp.data.csv
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+
+class CsvUtilsStreamingTest {
+
+    private fun rowsOf(text: String): List<List<String>> =
+        CsvUtils.readAll(ByteArrayInputStream(text.toByteArray()))
+
+    @Test
+    fun rows_parsesQuotesEscapesBomAndCrlf() {
+        val table = rowsOf("﻿name,desc\r\n\"Jabón, blanco\",\"dice \"\"hola\"\"\"\r\n\r\n  \nYerba,  suave  \r\n")
+
+        assertThat(table).containsExactly(
+            listOf("name", "desc"),
+            listOf("Jabón, blanco", "dice \"hola\""),
+            listOf("Yerba", "suave")
+        ).inOrder()
+    }
+
+    @Test
+    fun rows_keepsLineBreaksInsideQuotedFields() {
+        val table = rowsOf("name,desc\nCafé,\"línea 1\nlínea 2\"\nTé,x")
+
+        assertThat(table).hasSize(3)
+        assertThat(table[1]).containsExactly("Café", "línea 1\nlínea 2").inOrder()
+        assertThat(table[2]).containsExactly("Té", "x").inOrder()
+    }
+
+    @Test
+    fun rows_handlesEscapedQuoteSplitAcrossBufferBoundary() {
+        // El "" escapado cae justo en el borde del buffer de 8 KiB.
+        val padding = "a".repeat(8 * 1024 - 2)
+        val table = rowsOf("\"$padding\"\"b\"\n")
+
+        assertThat(table.single().single()).isEqualTo("$padding\"b")
+    }
+
+    @Test
+    fun forEachDataRow_streamsLargeFileAndStopsAtFirstBlankRow() {
+        val rowCount = 200_000
+        val input = GeneratedCsv(rowCount)
+        var seen = 0
+        var lastName: String? = null
+
+        val hasHeader = CsvUtils.forEachDataRow(CsvUtils.rows(input).asRowSource()) { idx, row ->
+            seen++
+            lastName = idx.get(row, "name")
+        }
+
+        assertThat(hasHeader).isTrue()
+        assertThat(seen).isEqualTo(rowCount)
+        assertThat(lastName).isEqualTo("Producto ${rowCount - 1}")
+        assertThat(input.linesServed).isEqualTo(rowCount + 1)
+    }
+
+    @Test
+    fun productImporter_parsesRowsFromSource() {
+        val source = CsvUtils.rows(
+            ByteArrayInputStream("nombre,cantidad,precio_lista\nMate,3,\"1.500,50\"\n,,\nOtro,1,1".toByteArray())
+        ).asRowSource()
+
+        val rows = ProductCsvImporter.parseRows(source)
+
+        assertThat(rows).hasSize(1)
+        assertThat(rows.single().quantity).isEqualTo(3)
+        assertThat(rows.single().listPrice).isEqualTo(1500.5)
+    }
+
+    /** CSV generado al vuelo: nunca existe completo en memoria. */
+    private class GeneratedCsv(private val rows: Int) : InputStream() {
+        var linesServed = 0
+            private set
+        private var current: ByteArray = "name,quantity\n".toByteArray()
+        private var pos = 0
+
+        init {
+            linesServed = 1
+        }
+
+        override fun read(): Int {
+            if (pos >= current.size) {
+                val dataIndex = linesServed - 1
+                if (dataIndex >= rows) return -1
+                current = "Producto $dataIndex,$dataIndex\n".toByteArray()
+                pos = 0
+                linesServed++
+            }
+            return current[pos++].toInt() and 0xFF
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.selliaapp.data.csv
+
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.runBlocking
+import org.apache.poi.xssf.streaming.SXSSFWorkbook
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class XlsxStreamReaderTest {
+
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    /** Planilla de productos escrita con SXSSF: tampoco se arma entera en memoria al generarla. */
+    private fun productSheet(rows: Int): File {
+        val file = tmp.newFile("productos.xlsx")
+        val workbook = SXSSFWorkbook(100)
+        try {
+            val sheet = workbook.createSheet("Productos")
+            sheet.createRow(0).apply {
+                createCell(0).setCellValue("nombre")
+                createCell(1).setCellValue("codigo")
+                createCell(2).setCellValue("cantidad")
+                createCell(3).setCellValue("marca")
+            }
+            for (i in 1..rows) {
+                sheet.createRow(i).apply {
+                    createCell(0).setCellValue("Producto $i")
+                    createCell(1).setCellValue("779$i")
+                    createCell(2).setCellValue((i % 7).toDouble())
+                    // La marca solo en filas pares: las impares no traen la celda.
+                    if (i % 2 == 0) createCell(3).setCellValue("Marca $i")
+                }
+            }
+            file.outputStream().use { workbook.write(it) }
+        } finally {
+            workbook.dispose()
+            workbook.close()
+        }
+        return file
+    }
+
+    private fun File.rowSource() = RowSource { onRow ->
+        inputStream().use { XlsxStreamReader.forEachRow(it, onRow) }
+    }
+
+    @Test
+    fun `recorre la hoja fila por fila y completa las celdas faltantes`() {
+        val rows = mutableListOf<List<String>>()
+
+        productSheet(rows = 3).inputStream().use { input ->
+            XlsxStreamReader.forEachRow(input) { row ->
+                rows += row
+                true
+            }
+        }
+
+        assertThat(rows).containsExactly(
+            listOf("nombre", "codigo", "cantidad", "marca"),
+            listOf("Producto 1", "7791", "1"),
+            listOf("Producto 2", "7792", "2", "Marca 2"),
+            listOf("Producto 3", "7793", "3")
+        ).inOrder()
+    }
+
+    @Test
+    fun `una importacion recibe el xlsx en lotes sin materializar la tabla`() = runBlocking {
+        val sheet = productSheet(rows = 1_200)
+        val chunkSizes = mutableListOf<Int>()
+        var lastName: String? = null
+
+        forEachChunk<ProductCsvImporter.Row>(
+            chunkSize = 500,
+            read = { onRow -> ProductCsvImporter.forEachRow(sheet.rowSource(), onRow) }
+        ) { rows ->
+            chunkSizes += rows.size
+            lastName = rows.last().name
+            true
+        }
+
+        assertThat(chunkSizes).containsExactly(500, 500, 200).inOrder()
+        assertThat(lastName).isEqualTo("Producto 1200")
+    }
+
+    @Test
+    fun `si el consumidor corta se deja de leer la hoja`() = runBlocking {
+        val sheet = productSheet(rows = 5_000)
+        var rowsRead = 0
+        var chunks = 0
+
+        forEachChunk<List<String>>(
+            chunkSize = 100,
+            read = { onRow ->
+                sheet.rowSource().forEach { row ->
+                    rowsRead++
+                    onRow(row)
+                    true
+                }
+            }
+        ) {
+            chunks++
+            false
+        }
+
+        assertThat(chunks).isEqualTo(1)
+        // Un lote procesado, como mucho otro en el canal y uno a medio armar.
+        assertThat(rowsRead).isAtMost(300)
+    }
+}
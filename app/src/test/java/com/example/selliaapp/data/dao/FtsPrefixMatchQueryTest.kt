@@ -0,0 +1,32 @@
+package com.example.selliaapp.data.dao
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+class FtsPrefixMatchQueryTest {
+
+    @Test
+    fun `sin termino no filtra`() {
+        assertThat(ftsPrefixMatchQuery(null)).isNull()
+        assertThat(ftsPrefixMatchQuery("   ")).isNull()
+        assertThat(ftsPrefixMatchQuery("\"*-()")).isNull()
+    }
+
+    @Test
+    fun `cada palabra se convierte en prefijo`() {
+        assertThat(ftsPrefixMatchQuery("Coca 500")).isEqualTo("coca* 500*")
+        assertThat(ftsPrefixMatchQuery("  remera   roja ")).isEqualTo("remera* roja*")
+    }
+
+    @Test
+    fun `separa igual que unicode61 y conserva acentos`() {
+        assertThat(ftsPrefixMatchQuery("SKU-000123")).isEqualTo("sku* 000123*")
+        assertThat(ftsPrefixMatchQuery("Café")).isEqualTo("café*")
+    }
+
+    @Test
+    fun `neutraliza operadores y comillas de FTS`() {
+        assertThat(ftsPrefixMatchQuery("azul OR \"rojo\" NOT -verde")).isEqualTo("azul* or* rojo* not* verde*")
+        assertThat(ftsPrefixMatchQuery("a b c d e f g h i j")).isEqualTo("a* b* c* d* e* f* g* h*")
+    }
+}
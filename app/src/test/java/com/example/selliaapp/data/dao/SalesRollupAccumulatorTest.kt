@@ -0,0 +1,91 @@
+package com.example.selliaapp.data.dao
+
+import com.example.selliaapp.data.local.entity.SalesRollupEntity
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.time.ZoneId
+
+class SalesRollupAccumulatorTest {
+
+    private val zone = ZoneId.of("America/Argentina/Buenos_Aires")
+
+    private fun sale(id: Long, at: LocalDateTime, total: Double, units: Int = 1, cost: Double = 0.0) =
+        InvoiceRollupContribution(
+            invoiceId = id,
+            dateMillis = at.atZone(zone).toInstant().toEpochMilli(),
+            total = total,
+            units = units,
+            cost = cost
+        )
+
+    @Test
+    fun `agrupa por dia y hora local, no UTC`() {
+        // 22:30 en Buenos Aires ya es el día siguiente en UTC.
+        val accumulator = SalesRollupAccumulator(zone)
+        accumulator.add(sale(1, LocalDateTime.of(2025, 3, 10, 22, 30), total = 100.0, units = 2, cost = 60.0))
+        accumulator.add(sale(2, LocalDateTime.of(2025, 3, 10, 22, 45), total = 50.0, units = 1, cost = 20.0))
+
+        val rows = accumulator.mergeInto(emptyList()).upserts
+        val day = LocalDate.of(2025, 3, 10).toEpochDay()
+
+        assertThat(rows).containsExactly(
+            SalesRollupEntity(day, 22, salesTotal = 150.0, tickets = 2, units = 3, cost = 80.0),
+            SalesRollupEntity(day, SalesRollupEntity.DAY_TOTAL, salesTotal = 150.0, tickets = 2, units = 3, cost = 80.0)
+        )
+    }
+
+    @Test
+    fun `suma sobre las filas existentes`() {
+        val day = LocalDate.of(2025, 3, 10).toEpochDay()
+        val existing = listOf(
+            SalesRollupEntity(day, 9, salesTotal = 10.0, tickets = 1, units = 1, cost = 4.0),
+            SalesRollupEntity(day, SalesRollupEntity.DAY_TOTAL, salesTotal = 10.0, tickets = 1, units = 1, cost = 4.0)
+        )
+        val accumulator = SalesRollupAccumulator(zone)
+        accumulator.add(sale(2, LocalDateTime.of(2025, 3, 10, 9, 15), total = 5.0, units = 3, cost = 1.5))
+
+        val rows = accumulator.mergeInto(existing).upserts.associateBy { it.hour }
+
+        assertThat(rows.getValue(9).tickets).isEqualTo(2)
+        assertThat(rows.getValue(9).units).isEqualTo(4)
+        assertThat(rows.getValue(SalesRollupEntity.DAY_TOTAL).salesTotal).isEqualTo(15.0)
+        assertThat(rows.getValue(SalesRollupEntity.DAY_TOTAL).cost).isEqualTo(5.5)
+    }
+
+    @Test
+    fun `restar la unica venta de un bucket lo borra`() {
+        val at = LocalDateTime.of(2025, 3, 10, 18, 0)
+        val added = SalesRollupAccumulator(zone).apply { add(sale(1, at, total = 80.0)) }
+            .mergeInto(emptyList()).upserts
+
+        val result = SalesRollupAccumulator(zone).apply { add(sale(1, at, total = 80.0), sign = -1) }
+            .mergeInto(added)
+
+        assertThat(result.upserts).isEmpty()
+        assertThat(result.deletes).containsExactly(
+            SalesRollupAccumulator.Key(at.toLocalDate().toEpochDay(), 18),
+            SalesRollupAccumulator.Key(at.toLocalDate().toEpochDay(), SalesRollupEntity.DAY_TOTAL)
+        )
+    }
+
+    @Test
+    fun `un anio de historial queda en una fila diaria por dia`() {
+        val accumulator = SalesRollupAccumulator(zone)
+        val start = LocalDateTime.of(2024, 1, 1, 9, 0)
+        var id = 0L
+        repeat(366) { dayOffset ->
+            repeat(40) { ticket ->
+                accumulator.add(sale(++id, start.plusDays(dayOffset.toLong()).plusMinutes(ticket * 15L), total = 1.0))
+            }
+        }
+
+        val rows = accumulator.mergeInto(emptyList()).upserts
+        val daily = rows.filter { it.hour == SalesRollupEntity.DAY_TOTAL }
+
+        assertThat(daily).hasSize(366)
+        assertThat(daily.sumOf { it.tickets }).isEqualTo(366 * 40)
+        assertThat(rows.filter { it.hour >= 0 }.sumOf { it.tickets }).isEqualTo(366 * 40)
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.selliaapp.data.image
+
+import com.google.common.truth.Truth.assertThat
+import com.google.common.truth.Truth.assertWithMessage
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+
+/**
+ * Benchmark de bytes ahorrados por foto. En la JVM no hay `Bitmap` ni codificador WebP, así
+ * que se usa un codec de referencia: píxeles RGB cuantizados según la calidad y comprimidos
+ * con deflate. Mide lo que aporta bajar la resolución y la calidad; el tamaño absoluto en
+ * WebP se mide en el dispositivo.
+ */
+class ProductImageProcessorBenchmarkTest {
+
+    /** Foto sintética: degradé con ruido de sensor, se genera por píxel sin guardarla entera. */
+    private class SyntheticPhoto(val width: Int, val height: Int) {
+        fun pixel(x: Int, y: Int): Int {
+            var h = x * 73_856_093 xor y * 19_349_663
+            h = h xor (h ushr 13)
+            h *= 0x5bd1e995
+            h = h xor (h ushr 15)
+            val noise = h and 0x1F
+            val r = (x * 200 / width + noise).coerceAtMost(255)
+            val g = (y * 200 / height + (noise ushr 1)).coerceAtMost(255)
+            val b = ((x + y) * 120 / (width + height) + noise).coerceAtMost(255)
+            return (r shl 16) or (g shl 8) or b
+        }
+    }
+
+    private class PixelImage(
+        override val width: Int,
+        override val height: Int,
+        private val pixels: IntArray
+    ) : DecodedImage {
+        var released = false
+
+        override fun scaled(width: Int, height: Int): DecodedImage {
+            val out = IntArray(width * height)
+            for (y in 0 until height) {
+                val sy = y * this.height / height
+                for (x in 0 until width) out[y * width + x] = pixels[sy * this.width + x * this.width / width]
+            }
+            return PixelImage(width, height, out)
+        }
+
+        override fun encode(format: ImageOutputFormat, quality: Int, out: OutputStream) =
+            encodeRows(width, height, quality, out) { x, y -> pixels[y * width + x] }
+
+        override fun release() {
+            released = true
+        }
+    }
+
+    private class SyntheticCodec : ImageCodec<SyntheticPhoto> {
+        val decoded = mutableListOf<PixelImage>()
+
+        override fun readSize(source: SyntheticPhoto) = ImageSize(source.width, source.height)
+
+        override fun decode(source: SyntheticPhoto, sampleSize: Int): DecodedImage {
+            val width = source.width / sampleSize
+            val height = source.height / sampleSize
+            val pixels = IntArray(width * height) { index ->
+                source.pixel((index % width) * sampleSize, (index / width) * sampleSize)
+            }
+            return PixelImage(width, height, pixels).also { decoded += it }
+        }
+    }
+
+    private val config = ImageProcessingConfig(format = ImageOutputFormat.JPEG)
+
+    @Test
+    fun `una foto de camara baja a la medida maxima con submuestreo y miniatura`() {
+        val photo = SyntheticPhoto(4_000, 3_000)
+        // Lo que subía antes: el original a calidad de cámara.
+        val originalBytes = ByteArrayOutputStream().also { out ->
+            encodeRows(photo.width, photo.height, CAMERA_QUALITY, out) { x, y -> photo.pixel(x, y) }
+        }.size().toLong()
+        val codec = SyntheticCodec()
+
+        val result = ProductImageProcessor(codec, config).process(photo, originalBytes)
+
+        assertThat(result.sampleSize).isEqualTo(2)
+        assertThat(codec.decoded.single().width).isEqualTo(2_000)
+        assertThat(result.main.width to result.main.height).isEqualTo(1_600 to 1_200)
+        assertThat(result.thumbnail.width to result.thumbnail.height).isEqualTo(320 to 240)
+        assertWithMessage("procesada=${result.processedBytes} B, original=$originalBytes B")
+            .that(result.processedBytes * 4)
+            .isLessThan(originalBytes)
+        assertThat(codec.decoded.all { it.released }).isTrue()
+    }
+
+    @Test
+    fun `una imagen chica no se agranda ni se submuestrea`() {
+        val photo = SyntheticPhoto(900, 1_200)
+
+        val result = ProductImageProcessor(SyntheticCodec(), config).process(photo, originalBytes = 0)
+
+        assertThat(result.sampleSize).isEqualTo(1)
+        assertThat(result.main.width to result.main.height).isEqualTo(900 to 1_200)
+        assertThat(result.thumbnail.width to result.thumbnail.height).isEqualTo(240 to 320)
+    }
+
+    @Test
+    fun `el submuestreo nunca deja la imagen por debajo de la medida final`() {
+        assertThat(ImageSizing.sampleSize(ImageSize(4_032, 3_024), 1_600)).isEqualTo(2)
+        assertThat(ImageSizing.sampleSize(ImageSize(8_000, 6_000), 1_600)).isEqualTo(4)
+        assertThat(ImageSizing.sampleSize(ImageSize(3_199, 2_000), 1_600)).isEqualTo(1)
+        assertThat(ImageSizing.targetSize(ImageSize(3_024, 4_032), 1_600)).isEqualTo(ImageSize(1_200, 1_600))
+    }
+
+    private companion object {
+        const val CAMERA_QUALITY = 95
+
+        /** Codec de referencia: a menor calidad se descartan más bits bajos de cada canal. */
+        fun encodeRows(width: Int, height: Int, quality: Int, out: OutputStream, pixel: (Int, Int) -> Int) {
+            val dropBits = ((100 - quality) / 10).coerceIn(0, 7)
+            val mask = (0xFF shl dropBits) and 0xFF
+            val row = ByteArray(width * 3)
+            DeflaterOutputStream(out, Deflater(Deflater.BEST_SPEED)).use { deflated ->
+                for (y in 0 until height) {
+                    for (x in 0 until width) {
+                        val rgb = pixel(x, y)
+                        row[x * 3] = ((rgb ushr 16) and mask).toByte()
+                        row[x * 3 + 1] = ((rgb ushr 8) and mask).toByte()
+                        row[x * 3 + 2] = (rgb and mask).toByte()
+                    }
+                    deflated.write(row)
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.selliaapp.data.pdf
+
+import com.google.common.truth.Truth.assertThat
+import com.google.common.truth.Truth.assertWithMessage
+import kotlinx.coroutines.runBlocking
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.util.zip.InflaterInputStream
+
+class QrLabelPdfExporterTest {
+
+    /** Descarta lo escrito pero cuenta bytes. */
+    private class CountingSink : OutputStream() {
+        var bytes = 0L
+
+        override fun write(b: Int) {
+            bytes++
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            bytes += len
+        }
+    }
+
+    private fun label(index: Int) = QrLabel(
+        sku = "VLK%06d".format(index),
+        qrValue = "https://sellia1993.web.app/product?q=VLK%06d".format(index),
+        prices = listOf(
+            QrLabelPrice("Lista", "Lista", "$\u00A0${12_000 + index}"),
+            QrLabelPrice("Efectivo", "Efect", "$\u00A0${10_500 + index}")
+        )
+    )
+
+    private fun usedHeapAfterGc(): Long {
+        repeat(2) { System.gc() }
+        val runtime = Runtime.getRuntime()
+        return runtime.totalMemory() - runtime.freeMemory()
+    }
+
+    @Test
+    fun `5k etiquetas con memoria constante`() = runBlocking {
+        val count = 5_000
+        val heapBudget = 8L * 1024 * 1024
+        val sink = CountingSink()
+        val baseline = usedHeapAfterGc()
+        var peak = baseline
+        val labels = generateSequence(1) { it + 1 }.take(count).map(::label)
+        var gcNanos = 0L
+
+        val start = System.nanoTime()
+        val result = QrLabelPdfExporter().export(sink, labels) { written ->
+            if (written % 500 == 0) {
+                val gcStart = System.nanoTime()
+                peak = maxOf(peak, usedHeapAfterGc())
+                gcNanos += System.nanoTime() - gcStart
+            }
+        }
+        val exportNanos = System.nanoTime() - start - gcNanos
+
+        // Informativo: no se compara contra un umbral de tiempo, depende de la máquina.
+        val report = "%d etiquetas: %.0f etiquetas/s, %d bytes/etiqueta, heap +%d KiB".format(
+            count,
+            count * 1e9 / exportNanos,
+            sink.bytes / count,
+            (peak - baseline) / 1024
+        )
+        assertWithMessage(report).that(result.written).isEqualTo(count)
+        assertWithMessage(report).that(result.skipped).isEqualTo(0)
+        assertWithMessage(report).that(result.bytesWritten).isEqualTo(sink.bytes)
+        assertWithMessage(report).that(peak - baseline).isLessThan(heapBudget)
+    }
+
+    @Test
+    fun `omite QR vacios y la xref apunta a cada objeto`() = runBlocking {
+        val output = ByteArrayOutputStream()
+        val labels = sequenceOf(label(1), label(2).copy(qrValue = " "), label(3), label(4))
+
+        val result = QrLabelPdfExporter(workers = 2, window = 2).export(output, labels)
+
+        assertThat(result.written).isEqualTo(3)
+        assertThat(result.skipped).isEqualTo(1)
+        val pdf = output.toByteArray()
+        val text = String(pdf, Charsets.ISO_8859_1)
+        assertThat(text).startsWith("%PDF-1.4")
+        assertThat(text).endsWith("%%EOF\n")
+        assertThat(text).contains("/Type /Pages /Count 3 ")
+
+        val startXref = text.substringAfterLast("startxref\n").substringBefore('\n').toInt()
+        assertThat(text.substring(startXref)).startsWith("xref\n")
+        val entries = text.substring(startXref).lines().drop(3).takeWhile { it.endsWith(" n ") }
+        assertThat(entries).hasSize(4 + 3 * 2) // catálogo, páginas, 2 fuentes y (página, contenido) x 3
+        entries.forEachIndexed { index, entry ->
+            val offset = entry.substring(0, 10).toInt()
+            assertThat(text.substring(offset)).startsWith("${index + 1} 0 obj")
+        }
+    }
+
+    @Test
+    fun `la pagina lleva el texto y el QR como rectangulos`() {
+        val exporter = QrLabelPdfExporter()
+        val value = "sellia://product?q=VLK000042"
+        val stream = exporter.render(label(42).copy(qrValue = value, sku = "Te (1) \\ x"))
+        val content = InflaterInputStream(stream.bytes.inputStream()).readBytes().toString(Charsets.ISO_8859_1)
+
+        val matrix = QrLabelPdfExporter.encode(value)
+        var darkRuns = 0
+        for (y in 0 until matrix.height) {
+            for (x in 0 until matrix.width) {
+                if (matrix.get(x, y) && (x == 0 || !matrix.get(x - 1, y))) darkRuns++
+            }
+        }
+        assertThat(stream.flate).isTrue()
+        assertThat(content.lines().count { it.endsWith(" re") }).isEqualTo(darkRuns)
+        assertThat(content).contains("/F2 8 Tf")
+        assertThat(content).contains("(Te \\(1\\) \\\\ x) Tj")
+        assertThat(content).contains("\\240")
+        assertThat(PdfStandardFont.HELVETICA.ellipsize("Efectivo $ 1.000.000", 6f, 30f)).endsWith("…")
+    }
+}
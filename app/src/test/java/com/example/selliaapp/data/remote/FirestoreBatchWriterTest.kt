@@ -0,0 +1,105 @@
+package com.example.selliaapp.data.remote
+
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.Test
+import java.io.IOException
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+
+class FirestoreBatchWriterTest {
+
+    private fun put(id: Long, payload: String = "x"): FirestoreBatchWriter.Op =
+        FirestoreBatchWriter.Op.Put(ref = null, path = "tenants/t/products/$id", data = mapOf("name" to payload))
+
+    private fun delete(id: Long): FirestoreBatchWriter.Op =
+        FirestoreBatchWriter.Op.Delete(ref = null, path = "tenants/t/product_deletions/$id")
+
+    @Test
+    fun `parte por cantidad de operaciones sin separar una entrada`() = runBlocking {
+        val commits = ConcurrentLinkedQueue<List<FirestoreBatchWriter.Op>>()
+        val writer = FirestoreBatchWriter(
+            maxOpsPerBatch = 450,
+            maxBytesPerBatch = Long.MAX_VALUE,
+            maxConcurrentCommits = 3,
+            commitChunk = { ops -> commits += ops }
+        )
+        val entries = (1L..1_000L).map { id ->
+            FirestoreBatchWriter.Entry(id, listOf(put(id), delete(id)))
+        }
+
+        val result = writer.write(entries)
+
+        assertThat(result.isSuccess).isTrue()
+        assertThat(result.committedKeys).hasSize(1_000)
+        assertThat(result.chunks).isEqualTo(5)
+        commits.forEach { ops ->
+            assertThat(ops.size).isAtMost(450)
+            assertThat(ops.size % 2).isEqualTo(0)
+        }
+    }
+
+    @Test
+    fun `parte por tamano estimado`() {
+        val bigPayload = "a".repeat(1_000_000)
+        val entries = (1L..30L).map { id -> FirestoreBatchWriter.Entry(id, put(id, bigPayload)) }
+
+        val chunks = FirestoreBatchWriter.planChunks(
+            entries,
+            maxOps = FirestoreBatchWriter.DEFAULT_MAX_OPS,
+            maxBytes = FirestoreBatchWriter.DEFAULT_MAX_BYTES
+        )
+
+        assertThat(chunks.size).isGreaterThan(1)
+        chunks.forEach { chunk ->
+            val bytes = chunk.sumOf { entry -> entry.ops.sumOf(FirestoreBatchWriter::estimateBytes) }
+            assertThat(bytes).isAtMost(FirestoreBatchWriter.DEFAULT_MAX_BYTES)
+        }
+        assertThat(chunks.flatten().map { it.key }).isEqualTo(entries.map { it.key })
+    }
+
+    @Test
+    fun `un chunk fallido no afecta a los demas`() = runBlocking {
+        val writer = FirestoreBatchWriter(
+            maxOpsPerBatch = 10,
+            maxBytesPerBatch = Long.MAX_VALUE,
+            maxConcurrentCommits = 2,
+            commitChunk = { ops ->
+                if (ops.any { it.path.endsWith("/15") }) throw IOException("Sin conexión")
+            }
+        )
+        val entries = (1L..30L).map { id -> FirestoreBatchWriter.Entry(id, put(id)) }
+
+        val result = writer.write(entries)
+
+        assertThat(result.isSuccess).isFalse()
+        assertThat(result.failedKeys).containsExactlyElementsIn(11L..20L)
+        assertThat(result.committedKeys).containsExactlyElementsIn((1L..10L) + (21L..30L))
+        assertThat(result.firstError).hasMessageThat().isEqualTo("Sin conexión")
+    }
+
+    @Test
+    fun `respeta el limite de commits concurrentes`() = runBlocking {
+        val inFlight = AtomicInteger()
+        val maxInFlight = AtomicInteger()
+        val writer = FirestoreBatchWriter(
+            maxOpsPerBatch = 5,
+            maxBytesPerBatch = Long.MAX_VALUE,
+            maxConcurrentCommits = 3,
+            commitChunk = {
+                val current = inFlight.incrementAndGet()
+                maxInFlight.accumulateAndGet(current, ::maxOf)
+                delay(20)
+                inFlight.decrementAndGet()
+            }
+        )
+        val entries = (1L..100L).map { id -> FirestoreBatchWriter.Entry(id, put(id)) }
+
+        val result = writer.write(entries)
+
+        assertThat(result.chunks).isEqualTo(20)
+        assertThat(maxInFlight.get()).isAtMost(3)
+        assertThat(maxInFlight.get()).isGreaterThan(1)
+    }
+}
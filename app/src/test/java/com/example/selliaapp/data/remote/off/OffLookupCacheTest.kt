@@ -0,0 +1,174 @@
+package com.example.selliaapp.data.remote.off
+
+import com.example.selliaapp.data.local.entity.OffLookupCacheEntity
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import okhttp3.ResponseBody.Companion.toResponseBody
+import org.junit.After
+import org.junit.Test
+import retrofit2.HttpException
+import retrofit2.Response
+import java.io.IOException
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+class OffLookupCacheTest {
+
+    /**
+     * Reemplazo de MockWebServer: responde según el catálogo, con latencia, registra cada
+     * request y permite encolar fallas para el próximo pedido de un barcode.
+     */
+    private class FakeOffServer(private val latencyMillis: Long = 50) {
+        val catalog = ConcurrentHashMap<String, OffProduct>()
+        val requests: MutableList<String> = Collections.synchronizedList(mutableListOf())
+        private val failures = ConcurrentHashMap<String, Exception>()
+
+        fun failNext(barcode: String, error: Exception) {
+            failures[barcode] = error
+        }
+
+        suspend fun fetch(barcode: String): OffProductResponse {
+            requests += barcode
+            delay(latencyMillis)
+            failures.remove(barcode)?.let { throw it }
+            val product = catalog[barcode]
+            return OffProductResponse(
+                status = if (product != null) 1 else 0,
+                statusVerbose = if (product != null) "product found" else "product not found",
+                code = barcode,
+                product = product
+            )
+        }
+
+        fun requestsFor(barcode: String) = requests.count { it == barcode }
+    }
+
+    /** Nivel persistente en memoria, con la misma semántica que la tabla. */
+    private class MapStore : OffLookupCache.Store {
+        val rows = ConcurrentHashMap<String, OffLookupCacheEntity>()
+        override suspend fun get(barcode: String) = rows[barcode]
+        override suspend fun put(entry: OffLookupCacheEntity) {
+            rows[entry.barcode] = entry
+        }
+        override suspend fun deleteExpired(nowMillis: Long) {
+            rows.values.removeIf { it.expiresAt <= nowMillis }
+        }
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+    private val server = FakeOffServer().apply {
+        catalog["7790070410116"] = OffProduct(productName = "Yerba Mate Suave", brands = "Playadito, Liebig", imageUrl = "https://img/1.jpg")
+        catalog["7790895000997"] = OffProduct(productName = "Gaseosa Cola 1.5L", brands = "Coca-Cola")
+    }
+    private val store = MapStore()
+    private var now = 1_700_000_000_000L
+
+    private fun cache(memoryCapacity: Int = OffLookupCache.DEFAULT_MEMORY_CAPACITY) = OffLookupCache(
+        store = store,
+        fetch = server::fetch,
+        scope = scope,
+        clock = { now },
+        memoryCapacity = memoryCapacity
+    )
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+    }
+
+    @Test
+    fun `pedidos concurrentes del mismo barcode hacen una sola llamada`() = runBlocking {
+        val cache = cache()
+
+        val results = List(20) { async(Dispatchers.Default) { cache.lookup("7790070410116") } }.awaitAll()
+
+        assertThat(server.requestsFor("7790070410116")).isEqualTo(1)
+        assertThat(results.map { it.product?.productName }.toSet()).containsExactly("Yerba Mate Suave")
+        val stats = cache.stats()
+        assertThat(stats.fetches).isEqualTo(1)
+        assertThat(stats.coalesced + stats.memoryHits).isEqualTo(19)
+    }
+
+    @Test
+    fun `resultado y sugerencia del formulario comparten la consulta`() = runBlocking {
+        val repository = OpenFoodFactsRepository(cache())
+
+        val result = async { repository.getByBarcode(" 7790070410116 ") }
+        val suggestion = async { repository.getProductSuggestion("7790070410116") }
+
+        assertThat((result.await() as OffResult.Success).brand).isEqualTo("Playadito")
+        assertThat(suggestion.await()?.productName).isEqualTo("Yerba Mate Suave")
+        assertThat(server.requests).containsExactly("7790070410116")
+    }
+
+    @Test
+    fun `la capa persistente sobrevive a un reinicio y vence por TTL`() = runBlocking {
+        cache().lookup("7790895000997")
+
+        val restarted = cache()
+        assertThat(restarted.lookup("7790895000997").product?.brands).isEqualTo("Coca-Cola")
+        assertThat(restarted.stats().diskHits).isEqualTo(1)
+        assertThat(server.requestsFor("7790895000997")).isEqualTo(1)
+
+        now += OffLookupCache.DEFAULT_FOUND_TTL_MILLIS
+        restarted.lookup("7790895000997")
+        assertThat(server.requestsFor("7790895000997")).isEqualTo(2)
+    }
+
+    @Test
+    fun `NOT_FOUND se cachea con TTL corto`() = runBlocking {
+        val cache = cache()
+
+        repeat(5) { assertThat(cache.lookup("7790000000001").product).isNull() }
+        assertThat(server.requestsFor("7790000000001")).isEqualTo(1)
+        assertThat(cache.stats().negativeHits).isEqualTo(4)
+
+        server.catalog["7790000000001"] = OffProduct(productName = "Alfajor Triple")
+        now += TimeUnit.HOURS.toMillis(23)
+        assertThat(cache.lookup("7790000000001").product).isNull()
+        now += TimeUnit.HOURS.toMillis(1)
+        assertThat(cache.lookup("7790000000001").product?.productName).isEqualTo("Alfajor Triple")
+        assertThat(server.requestsFor("7790000000001")).isEqualTo(2)
+    }
+
+    @Test
+    fun `los errores no se cachean y llegan a todos los que esperaban`() = runBlocking {
+        val repository = OpenFoodFactsRepository(cache())
+        server.failNext("7790070410116", HttpException(Response.error<Any>(503, "".toResponseBody())))
+
+        val failed = List(3) { async { repository.getByBarcode("7790070410116") } }.awaitAll()
+        assertThat(failed.toSet()).containsExactly(OffResult.HttpError(503))
+
+        server.failNext("7790070410116", IOException("timeout"))
+        assertThat(repository.getByBarcode("7790070410116")).isEqualTo(OffResult.NetworkError("timeout"))
+        assertThat(repository.getByBarcode("7790070410116")).isInstanceOf(OffResult.Success::class.java)
+        assertThat(server.requestsFor("7790070410116")).isEqualTo(3)
+    }
+
+    @Test
+    fun `rafaga de carga de stock mide el hit rate`() = runBlocking {
+        val cache = cache(memoryCapacity = 8)
+        val codes = List(12) { "77900000%05d".format(it) }
+        codes.take(6).forEach { server.catalog[it] = OffProduct(productName = "Producto $it") }
+
+        // Cada código se escanea varias veces seguidas (cajas del mismo producto).
+        codes.forEach { code -> repeat(4) { cache.lookup(code) } }
+        // Repaso en orden inverso: los últimos 8 siguen en la LRU, los primeros se leen de disco.
+        codes.reversed().forEach { code -> cache.lookup(code) }
+
+        val stats = cache.stats()
+        assertThat(stats.fetches).isEqualTo(12)
+        assertThat(stats.diskHits).isEqualTo(4)
+        assertThat(stats.memoryHits).isEqualTo(12 * 3 + 8)
+        assertThat(stats.lookups).isEqualTo(60)
+        assertThat(stats.hitRate).isWithin(1e-9).of(48.0 / 60)
+    }
+}
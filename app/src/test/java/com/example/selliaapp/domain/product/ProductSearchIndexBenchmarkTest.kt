@@ -0,0 +1,168 @@
+package com.example.selliaapp.domain.product
+
+import com.example.selliaapp.data.local.entity.ProductEntity
+import com.google.common.truth.Truth.assertThat
+import com.google.common.truth.Truth.assertWithMessage
+import org.junit.Test
+import java.time.LocalDate
+import kotlin.random.Random
+
+/**
+ * Compara el índice contra el filtro lineal [filterAndSortProducts] (mismo resultado y
+ * mismo orden) y cuenta cuánto trabajo evita: textos verificados por búsqueda y documentos
+ * rearmados por [ProductSearchIndex.update].
+ */
+class ProductSearchIndexBenchmarkTest {
+
+    private val parents = listOf("Indumentaria", "Calzado", "Accesorios", "Hogar")
+    private val categories = listOf("Remeras", "Pantalones", "Zapatillas", "Bolsos", "Tazas", "Buzos")
+    private val colors = listOf("Rojo", "Azul", "Negro", "Blanco", "Verde")
+    private val sizeValues = listOf("S", "M", "L", "XL", "38", "40", "42")
+
+    @Test
+    fun `resultados identicos al filtro lineal`() {
+        val random = Random(7)
+        val products = catalog(3_000, random)
+        val index = ProductSearchIndex.build(products)
+
+        repeat(400) {
+            val params = randomParams(random)
+            assertThat(index.query(params)).containsExactlyElementsIn(filterAndSortProducts(products, params)).inOrder()
+        }
+    }
+
+    @Test
+    fun `update reindexa solo altas y cambios y refleja las bajas`() {
+        val random = Random(11)
+        val products = catalog(2_000, random)
+        val index = ProductSearchIndex.build(products)
+
+        val changed = products
+            .drop(10)
+            .map { if (it.id % 7 == 0) it.copy(name = "${it.name} Edición Limitada", quantity = it.quantity + 5) else it } +
+            product(id = 99_999, name = "Mate imperial", category = "Hogar", color = "Negro", random = random)
+        val updated = index.update(changed)
+
+        repeat(200) {
+            val params = randomParams(random)
+            assertThat(updated.query(params)).containsExactlyElementsIn(filterAndSortProducts(changed, params)).inOrder()
+        }
+        assertThat(updated.query(ProductFilterParams(query = "edición limitada"))).isNotEmpty()
+        assertThat(updated.query(ProductFilterParams(query = "mate imperial")).map { it.id }).containsExactly(99_999)
+        // Solo se arma el texto de los productos editados y del alta; las bajas no arman nada.
+        assertThat(updated.builtDocs).isEqualTo((11..2_000).count { it % 7 == 0 } + 1)
+        assertThat(updated.products).containsExactlyElementsIn(changed).inOrder()
+    }
+
+    @Test
+    fun `las altas reusan los slots que dejan las bajas`() {
+        val random = Random(5)
+        val products = catalog(1_000, random)
+        val withoutFirst = ProductSearchIndex.build(products).update(products.drop(100))
+        val refilled = withoutFirst.update(
+            products.drop(100) + (1..100).map { i ->
+                product(id = 50_000 + i, name = "Reposición $i", category = "Tazas", color = "Azul", random = random)
+            }
+        )
+
+        assertThat(withoutFirst.builtDocs).isEqualTo(0)
+        assertThat(refilled.builtDocs).isEqualTo(100)
+        repeat(100) {
+            val params = randomParams(random)
+            assertThat(refilled.query(params))
+                .containsExactlyElementsIn(filterAndSortProducts(refilled.products, params))
+                .inOrder()
+        }
+        assertThat(refilled.query(ProductFilterParams(query = "reposición"))).hasSize(100)
+    }
+
+    @Test
+    fun `update sin cambios no reindexa y respeta el nuevo orden en los empates`() {
+        val random = Random(3)
+        val products = catalog(1_500, random)
+        val index = ProductSearchIndex.build(products)
+
+        assertThat(index.update(products)).isSameInstanceAs(index)
+
+        val reversed = products.reversed()
+        val reordered = index.update(reversed)
+        assertThat(reordered.builtDocs).isEqualTo(0)
+        repeat(100) {
+            val params = randomParams(random)
+            assertThat(reordered.query(params)).containsExactlyElementsIn(filterAndSortProducts(reversed, params)).inOrder()
+        }
+    }
+
+    @Test
+    fun `busqueda sobre 15k productos verifica una fraccion del catalogo`() {
+        val random = Random(42)
+        val products = catalog(15_000, random)
+        val index = ProductSearchIndex.build(products)
+
+        // Simula tipeo: prefijos crecientes de un término (desde 3 letras, donde entran los trigramas).
+        val queries = listOf("zapa", "zapatilla", "remera roja", "buzo", "779000123", "negro", "tazas")
+            .flatMap { term -> (3..term.length).map { term.take(it) } }
+
+        var verified = 0L
+        queries.forEach { text ->
+            val params = ProductFilterParams(query = text, sort = ProductSortOption.NAME_ASC)
+            assertThat(index.query(params)).containsExactlyElementsIn(filterAndSortProducts(products, params)).inOrder()
+            val candidates = index.textCandidates(text)
+            assertWithMessage("candidatos[$text]").that(candidates).isAtMost(products.size)
+            verified += candidates
+        }
+
+        // El escaneo lineal arma y verifica el texto de los 15k productos en cada tecla.
+        val linear = queries.size.toLong() * products.size
+        assertWithMessage("textos verificados (lineal=$linear)").that(verified).isLessThan(linear / 2)
+    }
+
+    private fun randomParams(random: Random): ProductFilterParams {
+        fun <T> maybe(value: () -> T): T? = if (random.nextInt(4) == 0) value() else null
+        val terms = listOf("", "", "zap", "re", "rojo", "producto 1", "779", "a", "buzo l", "tazas", "sin match xyz")
+        val min = maybe { random.nextInt(0, 5_000).toDouble() }
+        return ProductFilterParams(
+            query = terms.random(random),
+            parentCategory = maybe { parents.random(random).take(4) },
+            category = maybe { categories.random(random) },
+            color = maybe { colors.random(random).lowercase() },
+            size = maybe { sizeValues.random(random) },
+            minPrice = min,
+            maxPrice = maybe { (min ?: 0.0) + random.nextInt(1_000, 20_000) },
+            onlyLowStock = random.nextInt(6) == 0,
+            onlyNoImage = random.nextInt(6) == 0,
+            onlyNoBarcode = random.nextInt(8) == 0,
+            sort = ProductSortOption.values().random(random)
+        )
+    }
+
+    private fun catalog(count: Int, random: Random): List<ProductEntity> =
+        (1..count).map { i ->
+            val category = categories.random(random)
+            product(
+                id = i,
+                name = "Producto $i ${category.dropLast(1)} ${colors.random(random)}",
+                category = category,
+                color = colors.random(random),
+                random = random
+            )
+        }
+
+    private fun product(id: Int, name: String, category: String, color: String, random: Random) = ProductEntity(
+        id = id,
+        code = "SKU${id.toString().padStart(6, '0')}",
+        barcode = if (random.nextInt(10) == 0) null else "779${id.toString().padStart(6, '0')}",
+        name = name,
+        purchasePrice = random.nextInt(100, 10_000).toDouble(),
+        listPrice = if (random.nextInt(5) == 0) null else random.nextInt(200, 20_000).toDouble(),
+        quantity = random.nextInt(0, 50),
+        minStock = if (random.nextBoolean()) random.nextInt(0, 10) else null,
+        imageUrls = if (random.nextInt(3) == 0) emptyList() else listOf("https://img/$id.jpg"),
+        brand = listOf("Acme", "Sellia", null).random(random),
+        parentCategory = parents.random(random),
+        category = category,
+        color = color,
+        sizes = sizeValues.shuffled(random).take(random.nextInt(0, 3)),
+        updatedAt = LocalDate.of(2026, 1, 1).plusDays(random.nextLong(0, 300))
+    )
+}
@@ -0,0 +1,216 @@
+package com.example.selliaapp.pricing
+
+import com.example.selliaapp.data.local.entity.PricingMlFixedCostTierEntity
+import com.example.selliaapp.data.local.entity.PricingMlShippingTierEntity
+import com.google.common.truth.Truth.assertThat
+import com.google.common.truth.Truth.assertWithMessage
+import org.junit.Test
+import kotlin.math.ceil
+import kotlin.random.Random
+
+/**
+ * Contrasta el solver por tramos de [PricingCalculator.calculateMercadoLibrePrices] contra
+ * la búsqueda lineal original (copiada en [ReferenceMlPricing]) con configuraciones al
+ * azar y sobre un catálogo de 20k precios: mismos resultados y evaluaciones de ganancia
+ * contadas en los dos lados.
+ */
+class MlPriceSolverBenchmarkTest {
+
+    private data class Case(
+        val priceLowerBound: Double,
+        val costBase: Double,
+        val gainMinimum: Double,
+        val commissionPercent: Double,
+        val cuotas3Percent: Double,
+        val cuotas6Percent: Double,
+        val shippingThreshold: Double,
+        val weightKg: Double,
+        val fixedCostTiers: List<PricingMlFixedCostTierEntity>,
+        val shippingTiers: List<PricingMlShippingTierEntity>
+    )
+
+    @Test
+    fun `mismo resultado que la busqueda lineal en configuraciones aleatorias`() {
+        val random = Random(2024)
+        val cases = List(20_000) { randomCase(random) }
+
+        val (expected, linear) = countingReference { cases.map(::reference) }
+        val (actual, solved) = countingSolver { cases.map(::solver) }
+
+        assertThat(actual).isEqualTo(expected)
+        // Configuraciones con márgenes bajos obligan a la búsqueda lineal a avanzar muchos
+        // escalones; el solver salta y biseca dentro de cada tramo.
+        assertWithMessage("evaluaciones: lineal=$linear solver=$solved (x${"%.2f".format(linear.toDouble() / solved)})")
+            .that(solved * 2)
+            .isAtMost(linear)
+    }
+
+    @Test
+    fun `mismo resultado en bordes de tiers, comisiones altas y sin solucion`() {
+        val tiers = listOf(
+            PricingMlFixedCostTierEntity(id = 1, maxPrice = 15_000.0, cost = 1_500.0),
+            PricingMlFixedCostTierEntity(id = 2, maxPrice = 15_000.0, cost = 900.0),
+            PricingMlFixedCostTierEntity(id = 3, maxPrice = 30_000.0, cost = 4_000.0),
+            PricingMlFixedCostTierEntity(id = 4, maxPrice = Double.NaN, cost = 50.0)
+        )
+        val shipping = listOf(PricingMlShippingTierEntity(id = 1, maxWeightKg = 1.0, cost = 6_000.0))
+        val base = Case(
+            priceLowerBound = 14_000.0,
+            costBase = 8_000.0,
+            gainMinimum = 2_000.0,
+            commissionPercent = 15.5,
+            cuotas3Percent = 8.2,
+            cuotas6Percent = 12.7,
+            shippingThreshold = 30_000.0,
+            weightKg = 0.3,
+            fixedCostTiers = tiers,
+            shippingTiers = shipping
+        )
+        val cases = listOf(
+            base,
+            base.copy(costBase = 20_000.0),
+            base.copy(commissionPercent = 95.0),
+            base.copy(commissionPercent = 100.0, cuotas3Percent = 0.0),
+            base.copy(commissionPercent = 130.0),
+            base.copy(costBase = 1e9),
+            base.copy(priceLowerBound = 2e9),
+            base.copy(priceLowerBound = Double.NaN),
+            base.copy(priceLowerBound = Double.POSITIVE_INFINITY),
+            base.copy(gainMinimum = Double.NaN),
+            base.copy(shippingThreshold = Double.NaN),
+            base.copy(fixedCostTiers = emptyList(), shippingTiers = emptyList())
+        )
+        cases.forEach { case -> assertThat(solver(case)).isEqualTo(reference(case)) }
+    }
+
+    @Test
+    fun `resolver 20k precios da lo mismo que la busqueda lineal de a 500`() {
+        val random = Random(42)
+        val config = randomCase(random).copy(
+            commissionPercent = 15.5,
+            cuotas3Percent = 8.2,
+            cuotas6Percent = 12.7,
+            gainMinimum = 1_500.0
+        )
+        val cases = List(20_000) {
+            val cost = random.nextDouble(500.0, 80_000.0)
+            config.copy(priceLowerBound = cost * 1.8, costBase = cost * 1.2)
+        }
+
+        val (expected, linear) = countingReference { cases.map(::reference) }
+        val (actual, solved) = countingSolver { cases.map(::solver) }
+
+        assertThat(actual).isEqualTo(expected)
+        // En un catálogo real casi todos los precios aciertan en el primer o segundo escalón:
+        // el solver no puede costar más que recorrer (salvo algún salto de más).
+        assertWithMessage("evaluaciones: lineal=$linear solver=$solved (x${"%.2f".format(linear.toDouble() / solved)})")
+            .that(solved.toDouble())
+            .isAtMost(linear * 1.05)
+    }
+
+    private fun <T> countingReference(block: () -> T): Pair<T, Long> {
+        ReferenceMlPricing.gainEvaluations = 0
+        val result = block()
+        return result to ReferenceMlPricing.gainEvaluations
+    }
+
+    private fun <T> countingSolver(block: () -> T): Pair<T, Long> {
+        val before = PricingCalculator.mlGainEvaluations.get()
+        val result = block()
+        return result to PricingCalculator.mlGainEvaluations.get() - before
+    }
+
+    private fun solver(case: Case): MlPricingResult? = PricingCalculator.calculateMercadoLibrePrices(
+        priceLowerBound = case.priceLowerBound,
+        costBase = case.costBase,
+        gainMinimum = case.gainMinimum,
+        commissionPercent = case.commissionPercent,
+        cuotas3Percent = case.cuotas3Percent,
+        cuotas6Percent = case.cuotas6Percent,
+        shippingThreshold = case.shippingThreshold,
+        weightKg = case.weightKg,
+        fixedCostTiers = case.fixedCostTiers,
+        shippingTiers = case.shippingTiers
+    )
+
+    private fun reference(case: Case): MlPricingResult? = ReferenceMlPricing.calculate(case)
+
+    private fun randomCase(random: Random): Case {
+        val fixedTiers = List(random.nextInt(0, 6)) { i ->
+            PricingMlFixedCostTierEntity(
+                id = i + 1,
+                // Múltiplos de 500 para que los cortes caigan justo sobre precios candidatos.
+                maxPrice = if (random.nextBoolean()) random.nextInt(1, 120) * 500.0 else random.nextDouble(1_000.0, 60_000.0),
+                cost = random.nextDouble(0.0, 5_000.0)
+            )
+        }
+        val shippingTiers = List(random.nextInt(0, 4)) { i ->
+            PricingMlShippingTierEntity(
+                id = i + 1,
+                maxWeightKg = random.nextDouble(0.1, 5.0),
+                cost = random.nextDouble(0.0, 15_000.0)
+            )
+        }
+        return Case(
+            priceLowerBound = random.nextDouble(0.0, 90_000.0),
+            costBase = random.nextDouble(0.0, 70_000.0),
+            gainMinimum = random.nextDouble(-1_000.0, 10_000.0),
+            commissionPercent = random.nextDouble(0.0, 110.0),
+            cuotas3Percent = random.nextDouble(0.0, 20.0),
+            cuotas6Percent = random.nextDouble(0.0, 30.0),
+            shippingThreshold = if (random.nextBoolean()) random.nextInt(0, 120) * 500.0 else random.nextDouble(0.0, 60_000.0),
+            weightKg = random.nextDouble(0.0, 6.0),
+            fixedCostTiers = fixedTiers,
+            shippingTiers = shippingTiers
+        )
+    }
+
+    /** Implementación previa al solver (solo se le agregó el contador): recorre de a 500 hasta 200 veces. */
+    private object ReferenceMlPricing {
+
+        /** Cantidad de precios candidatos evaluados por la búsqueda lineal. */
+        var gainEvaluations = 0L
+
+        fun calculate(case: Case): MlPricingResult? {
+            val start = roundUp500(maxOf(case.priceLowerBound, 1000.0))
+            val ml0 = findMlPrice(start, case, 0.0) ?: return null
+            val ml3 = findMlPrice(maxOf(start, ml0 + 500.0), case, case.cuotas3Percent) ?: return null
+            val ml6 = findMlPrice(maxOf(start, ml3 + 500.0), case, case.cuotas6Percent) ?: return null
+            return MlPricingResult(ml0 = ml0, ml3 = ml3, ml6 = ml6)
+        }
+
+        private fun findMlPrice(startPrice: Double, case: Case, cuotaPercent: Double): Double? {
+            var candidate = startPrice
+            repeat(200) {
+                val rounded = roundUp500(candidate)
+                val gain = calculateMlGain(rounded, case, cuotaPercent)
+                if (gain >= case.gainMinimum) return rounded
+                candidate = rounded + 500.0
+            }
+            return null
+        }
+
+        private fun calculateMlGain(price: Double, case: Case, cuotaPercent: Double): Double {
+            gainEvaluations++
+            val commission = price * (case.commissionPercent / 100.0)
+            val cuotas = price * (cuotaPercent / 100.0)
+            val fixedCost = fixedCostFor(price, case.fixedCostTiers)
+            val shipping = if (price < case.shippingThreshold) 0.0 else shippingCostFor(case.weightKg, case.shippingTiers)
+            val total = commission + cuotas + fixedCost + shipping
+            val neto = price - total
+            return neto - case.costBase
+        }
+
+        private fun fixedCostFor(price: Double, tiers: List<PricingMlFixedCostTierEntity>): Double {
+            val tier = tiers.sortedBy { it.maxPrice }.firstOrNull { price <= it.maxPrice }
+            return tier?.cost ?: 0.0
+        }
+
+        private fun shippingCostFor(weightKg: Double, tiers: List<PricingMlShippingTierEntity>): Double {
+            val tier = tiers.sortedBy { it.maxWeightKg }.firstOrNull { weightKg <= it.maxWeightKg }
+            return tier?.cost ?: (tiers.maxByOrNull { it.maxWeightKg }?.cost ?: 0.0)
+        }
+
+        private fun roundUp500(value: Double): Double = ceil(value / 500.0) * 500.0
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.selliaapp.pricing
+
+import com.example.selliaapp.data.local.entity.PricingFixedCostEntity
+import com.example.selliaapp.data.local.entity.PricingMlShippingTierEntity
+import com.example.selliaapp.data.local.entity.PricingSettingsEntity
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.time.Instant
+
+class PricingFingerprintTest {
+
+    @Test
+    fun `misma configuracion en otro orden produce la misma huella`() {
+        val a = inputs()
+        val b = a.copy(
+            fixedCosts = a.fixedCosts.reversed(),
+            mlShippingTiers = a.mlShippingTiers.reversed()
+        )
+
+        assertThat(PricingFingerprint.of(b)).isEqualTo(PricingFingerprint.of(a))
+    }
+
+    @Test
+    fun `datos de auditoria e intervalo no cambian la huella`() {
+        val a = inputs()
+        val b = a.copy(
+            settings = a.settings.copy(
+                updatedAt = Instant.EPOCH,
+                updatedBy = "otro",
+                recalcIntervalMinutes = 120
+            )
+        )
+
+        assertThat(PricingFingerprint.of(b)).isEqualTo(PricingFingerprint.of(a))
+    }
+
+    @Test
+    fun `cambiar un costo fijo o un porcentaje cambia la huella`() {
+        val a = inputs()
+        val costChanged = a.copy(
+            fixedCosts = a.fixedCosts.map { if (it.id == 1) it.copy(amount = it.amount + 1) else it }
+        )
+        val settingsChanged = a.copy(settings = a.settings.copy(gainTargetPercent = 51.0))
+
+        assertThat(PricingFingerprint.of(costChanged)).isNotEqualTo(PricingFingerprint.of(a))
+        assertThat(PricingFingerprint.of(settingsChanged)).isNotEqualTo(PricingFingerprint.of(a))
+    }
+
+    private fun inputs(): PricingInputs = PricingInputs(
+        settings = PricingSettingsEntity(
+            id = 1,
+            ivaTerminalPercent = 21.0,
+            monthlySalesEstimate = 500,
+            operativosLocalPercent = 3.0,
+            posnet3CuotasPercent = 12.22,
+            transferenciaRetencionPercent = 5.0,
+            gainTargetPercent = 50.0,
+            mlCommissionPercent = 15.5,
+            mlCuotas3Percent = 8.2,
+            mlCuotas6Percent = 12.7,
+            mlGainMinimum = 15.0,
+            mlShippingThreshold = 10000.0,
+            mlDefaultWeightKg = 0.3,
+            coefficient0To1500Percent = 15.0,
+            coefficient1501To3000Percent = 25.0,
+            coefficient3001To5000Percent = 40.0,
+            coefficient5001To7500Percent = 60.0,
+            coefficient7501To10000Percent = 80.0,
+            coefficient10001PlusPercent = 100.0,
+            recalcIntervalMinutes = 30,
+            updatedAt = Instant.parse("2024-01-01T00:00:00Z"),
+            updatedBy = "test"
+        ),
+        fixedCosts = listOf(
+            PricingFixedCostEntity(id = 1, name = "Alquiler", amount = 350000.0),
+            PricingFixedCostEntity(id = 2, name = "Sueldos", amount = 1000000.0, applyIva = true)
+        ),
+        mlFixedCostTiers = emptyList(),
+        mlShippingTiers = listOf(
+            PricingMlShippingTierEntity(id = 1, maxWeightKg = 0.5, cost = 3000.0),
+            PricingMlShippingTierEntity(id = 2, maxWeightKg = 1.0, cost = 4500.0)
+        )
+    )
+}
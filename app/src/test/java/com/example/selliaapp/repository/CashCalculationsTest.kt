@@ -1,6 +1,7 @@
 package com.example.selliaapp.repository
 
 import com.example.selliaapp.data.local.entity.CashMovementEntity
+import com.example.selliaapp.data.local.entity.CashSessionTotalEntity
 import org.junit.Assert.assertEquals
 import org.junit.Test
 import java.time.Instant
@@ -33,4 +34,30 @@ class CashCalculationsTest {
 
         assertEquals(2300.0, expected, 0.01)
     }
+
+    @Test
+    fun expectedAmountFromTotalsMatchesMovements() {
+        val types = listOf("SALE_CASH", "EXPENSE", "INCOME", "ADJUSTMENT")
+        val movements = List(2_000) { index ->
+            val type = types[index % types.size]
+            CashMovementEntity(
+                id = index.toString(),
+                sessionId = "S1",
+                type = type,
+                amount = if (type == "EXPENSE") -(index % 37).toDouble() else (index % 91) * 10.5,
+                createdAt = Instant.ofEpochMilli(index.toLong())
+            )
+        }
+        // Lo que mantiene CashMovementDao.insert: una fila por tipo.
+        val totals = movements.groupBy { it.type }.map { (type, list) ->
+            CashSessionTotalEntity(sessionId = "S1", type = type, movements = list.size, total = list.sumOf { it.amount })
+        }
+
+        assertEquals(
+            CashCalculations.expectedAmount(1000.0, movements),
+            CashCalculations.expectedAmountFromTotals(1000.0, totals),
+            0.001
+        )
+        assertEquals(4, totals.size)
+    }
 }
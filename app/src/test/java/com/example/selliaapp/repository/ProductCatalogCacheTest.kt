@@ -0,0 +1,126 @@
+package com.example.selliaapp.repository
+
+import com.example.selliaapp.data.local.entity.ProductEntity
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+class ProductCatalogCacheTest {
+
+    private fun product(id: Int, name: String, barcode: String? = "779$id", code: String? = "SKU$id") =
+        ProductEntity(id = id, name = name, barcode = barcode, code = code)
+
+    @Test
+    fun `snapshot vacio es miss y despues de cargar es hit`() {
+        val cache = ProductCatalogCache()
+
+        assertThat(cache.snapshot()).isNull()
+        cache.replaceAll(listOf(product(2, "banana"), product(1, "Anana")))
+
+        assertThat(cache.snapshot()!!.map { it.name }).containsExactly("Anana", "banana").inOrder()
+        assertThat(cache.stats().hits).isEqualTo(1)
+        assertThat(cache.stats().misses).isEqualTo(1)
+    }
+
+    @Test
+    fun `put parchea indices sin recargar`() {
+        val cache = ProductCatalogCache()
+        cache.replaceAll(listOf(product(1, "Anana"), product(2, "Banana")))
+
+        cache.put(listOf(product(2, "Banana", barcode = "NUEVO"), product(3, "Cereza")))
+
+        assertThat(cache.getByBarcode("7792")).isNull()
+        assertThat(cache.getByBarcode("NUEVO")?.id).isEqualTo(2)
+        assertThat(cache.getByCode("SKU3")?.name).isEqualTo("Cereza")
+        assertThat(cache.snapshot()!!.map { it.id }).containsExactly(1, 2, 3).inOrder()
+
+        cache.remove(listOf(1))
+        assertThat(cache.getById(1)).isNull()
+        assertThat(cache.getByCode("SKU1")).isNull()
+        assertThat(cache.snapshot()!!.map { it.id }).containsExactly(2, 3).inOrder()
+    }
+
+    @Test
+    fun `entradas vencidas no se sirven hasta releerlas`() {
+        val cache = ProductCatalogCache()
+        cache.replaceAll(listOf(product(1, "Anana").copy(quantity = 5)))
+
+        cache.markStale(listOf(1, 99))
+
+        assertThat(cache.staleIds()).containsExactly(1)
+        assertThat(cache.getById(1)).isNull()
+        assertThat(cache.snapshot()).isNull()
+
+        cache.put(listOf(product(1, "Anana").copy(quantity = 4)))
+        assertThat(cache.getById(1)?.quantity).isEqualTo(4)
+        assertThat(cache.snapshot()).isNotNull()
+    }
+
+    @Test
+    fun `respeta el limite y deja de servir el catalogo completo`() {
+        val cache = ProductCatalogCache(maxEntries = 2)
+        cache.replaceAll(listOf(product(1, "A"), product(2, "B")))
+        assertThat(cache.snapshot()).isNotNull()
+
+        cache.getById(1)
+        cache.put(listOf(product(3, "C")))
+
+        assertThat(cache.stats().size).isEqualTo(2)
+        assertThat(cache.stats().complete).isFalse()
+        assertThat(cache.snapshot()).isNull()
+        // LRU: se descartó el menos usado (2) y su barcode.
+        assertThat(cache.getById(1)).isNotNull()
+        assertThat(cache.getByBarcode("7792")).isNull()
+    }
+
+    @Test
+    fun `invalidate descarta todo`() {
+        val cache = ProductCatalogCache()
+        cache.replaceAll(listOf(product(1, "A")))
+
+        cache.invalidate()
+
+        assertThat(cache.getById(1)).isNull()
+        assertThat(cache.snapshot()).isNull()
+        assertThat(cache.stats().size).isEqualTo(0)
+    }
+
+    @Test
+    fun `una lectura anterior a una escritura no pisa el cache`() {
+        val cache = ProductCatalogCache()
+        cache.replaceAll(listOf(product(1, "Anana").copy(quantity = 5)))
+
+        // Read-through lento: toma la versión y lee la fila vieja de Room...
+        val readVersion = cache.version()
+        val staleRow = product(2, "Banana").copy(quantity = 10)
+        // ...mientras una escritura parchea el cache con la fila nueva.
+        cache.put(listOf(product(2, "Banana").copy(quantity = 7)))
+
+        assertThat(cache.fill(listOf(staleRow), readVersion)).isFalse()
+        assertThat(cache.getById(2)?.quantity).isEqualTo(7)
+    }
+
+    @Test
+    fun `un borrado en el medio no resucita el producto`() {
+        val cache = ProductCatalogCache()
+        cache.replaceAll(listOf(product(1, "Anana")))
+        val readVersion = cache.version()
+
+        cache.remove(listOf(1))
+
+        assertThat(cache.fill(listOf(product(1, "Anana")), readVersion)).isFalse()
+        assertThat(cache.fillAll(listOf(product(1, "Anana")), readVersion)).isFalse()
+        assertThat(cache.getById(1)).isNull()
+    }
+
+    @Test
+    fun `sin escrituras en el medio la lectura se cachea`() {
+        val cache = ProductCatalogCache()
+        val readVersion = cache.version()
+
+        assertThat(cache.fillAll(listOf(product(1, "A"), product(2, "B")), readVersion)).isTrue()
+        assertThat(cache.fill(listOf(product(3, "C")), readVersion)).isTrue()
+
+        assertThat(cache.version()).isEqualTo(readVersion)
+        assertThat(cache.snapshot()!!.map { it.id }).containsExactly(1, 2, 3).inOrder()
+    }
+}
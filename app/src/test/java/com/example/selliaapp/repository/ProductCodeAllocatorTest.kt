@@ -0,0 +1,124 @@
+package com.example.selliaapp.repository
+
+import com.example.selliaapp.data.dao.ProductCodeSequenceDao
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Reglas de asignación sobre un DAO en memoria: rangos disjuntos entre hilos, devolución
+ * del sobrante y salto de códigos existentes. Las sentencias SQL reales se cuentan en
+ * `ProductCodeSequenceDaoTest` (androidTest).
+ */
+class ProductCodeAllocatorTest {
+
+    /** `product_code_sequences` + los códigos de `products`; el lock hace de transacción de escritura. */
+    private class FakeSequenceDao(existingCodes: Collection<String> = emptyList()) : ProductCodeSequenceDao {
+        val codes: MutableSet<String> = Collections.synchronizedSet(HashSet(existingCodes))
+        private val sequences = HashMap<String, Long>()
+        private val lock = Any()
+
+        private fun maxPlusOne(prefix: String): Long = codes.toList()
+            .filter { it.startsWith(prefix) }
+            .maxOfOrNull { it.substring(prefix.length).toLongOrNull() ?: 0L }
+            ?.plus(1) ?: 1L
+
+        override fun nextValue(prefix: String): Long? = synchronized(lock) { sequences[prefix] }
+
+        override fun seedFromProducts(prefix: String) = synchronized(lock) {
+            sequences.putIfAbsent(prefix, maxPlusOne(prefix))
+            Unit
+        }
+
+        override fun advance(prefix: String, count: Int): Int = synchronized(lock) {
+            val current = sequences[prefix] ?: return 0
+            sequences[prefix] = current + count
+            1
+        }
+
+        override fun release(prefix: String, from: Long, to: Long): Int = synchronized(lock) {
+            if (sequences[prefix] != to) return 0
+            sequences[prefix] = from
+            1
+        }
+
+        override fun skipPastExisting(prefix: String) = synchronized(lock) {
+            sequences[prefix] = maxOf(sequences.getValue(prefix), maxPlusOne(prefix))
+        }
+
+        override fun existingCodes(codes: List<String>): List<String> = codes.filter { it in this.codes }
+
+        override fun reserve(prefix: String, count: Int): Long =
+            synchronized(lock) { super.reserve(prefix, count) }
+    }
+
+    private fun catalog(size: Int) = (1..size).map { ProductCodeSource.format("VLK", it.toLong()) }
+
+    @Test
+    fun `bloque y reserva en lote entregan los mismos 10k codigos`() {
+        val count = 10_000
+        val block = ProductCodeAllocator(FakeSequenceDao(catalog(5_000))).block("VLK", expected = count)
+        val blockCodes = List(count) { block.next() }
+        block.releaseUnused()
+
+        val batchCodes = ProductCodeAllocator(FakeSequenceDao(catalog(5_000))).allocate("VLK", count)
+
+        val expected = (5_001L..15_000L).map { ProductCodeSource.format("VLK", it) }
+        assertThat(blockCodes).isEqualTo(expected)
+        assertThat(batchCodes).isEqualTo(expected)
+    }
+
+    @Test
+    fun `importacion y altas concurrentes nunca comparten codigo`() {
+        val dao = FakeSequenceDao(catalog(100))
+        val allocator = ProductCodeAllocator(dao)
+        val allocated = Collections.synchronizedList(ArrayList<String>())
+        val pool = Executors.newFixedThreadPool(5)
+
+        pool.execute {
+            val block = allocator.block("VLK", expected = 5_000)
+            repeat(5_000) { allocated += block.next() }
+            block.releaseUnused()
+        }
+        repeat(4) {
+            pool.execute { repeat(500) { allocated += allocator.allocate("VLK").single() } }
+        }
+        pool.shutdown()
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue()
+
+        assertThat(allocated).hasSize(7_000)
+        assertThat(allocated.toSet()).hasSize(7_000)
+        assertThat(allocated.intersect(catalog(100).toSet())).isEmpty()
+    }
+
+    @Test
+    fun `el sobrante del bloque vuelve solo si nadie reservo despues`() {
+        val dao = FakeSequenceDao()
+        val allocator = ProductCodeAllocator(dao)
+
+        val first = allocator.block("VLK", expected = 100)
+        repeat(3) { first.next() }
+        first.releaseUnused()
+        assertThat(allocator.allocate("VLK").single()).isEqualTo("VLK000004")
+
+        val second = allocator.block("VLK", expected = 100)
+        second.next()
+        allocator.allocate("VLK")
+        second.releaseUnused()
+        // La reserva intermedia quedó después del bloque: el sobrante ya no se devuelve.
+        assertThat(allocator.allocate("VLK").single()).isEqualTo("VLK000106")
+    }
+
+    @Test
+    fun `saltea codigos que llegaron por sync despues de inicializar la secuencia`() {
+        val dao = FakeSequenceDao(catalog(10))
+        val allocator = ProductCodeAllocator(dao)
+        assertThat(allocator.allocate("VLK").single()).isEqualTo("VLK000011")
+        dao.codes += listOf("VLK000012", "VLK000013", "VLK000400")
+
+        assertThat(allocator.allocate("VLK", 2)).containsExactly("VLK000401", "VLK000402").inOrder()
+        assertThat(allocator.allocate("OTRO").single()).isEqualTo("OTRO000001")
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.selliaapp.repository
+
+import com.example.selliaapp.data.dao.ProductImageUploadDao
+import com.example.selliaapp.data.image.EncodedImage
+import com.example.selliaapp.data.image.ImageOutputFormat
+import com.example.selliaapp.data.image.ProcessedImage
+import com.example.selliaapp.data.local.entity.ProductImageUploadEntity
+import com.example.selliaapp.data.local.entity.ProductImageUploadStatus
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.yield
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.IOException
+
+class ProductImageUploadQueueTest {
+
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private class FakeUploadDao : ProductImageUploadDao {
+        val rows = MutableStateFlow<Map<Long, ProductImageUploadEntity>>(emptyMap())
+        private var nextId = 1L
+
+        override suspend fun insert(upload: ProductImageUploadEntity): Long {
+            val id = nextId++
+            rows.update { it + (id to upload.copy(id = id)) }
+            return id
+        }
+
+        override suspend fun update(upload: ProductImageUploadEntity) {
+            rows.update { it + (upload.id to upload) }
+        }
+
+        override suspend fun get(id: Long): ProductImageUploadEntity? = rows.value[id]
+
+        override fun observe(id: Long): Flow<ProductImageUploadEntity?> = rows.map { it[id] }
+
+        override fun observeFailed(): Flow<List<ProductImageUploadEntity>> = rows.map { all ->
+            all.values.filter { it.status == ProductImageUploadStatus.FAILED }.sortedBy { it.id }
+        }
+
+        override suspend fun due(nowMillis: Long, limit: Int): List<ProductImageUploadEntity> =
+            pending().filter { it.nextAttemptAt <= nowMillis }.sortedBy { it.id }.take(limit)
+
+        override suspend fun nextAttemptAt(): Long? = pending().minOfOrNull { it.nextAttemptAt }
+
+        override suspend fun requeueInterrupted(): Int {
+            val interrupted = rows.value.values.filter { it.status == ProductImageUploadStatus.UPLOADING }
+            interrupted.forEach { update(it.copy(status = ProductImageUploadStatus.PENDING)) }
+            return interrupted.size
+        }
+
+        override suspend fun deleteFinishedBefore(beforeMillis: Long): Int = 0
+
+        override suspend fun delete(id: Long): Int {
+            val existed = id in rows.value
+            rows.update { it - id }
+            return if (existed) 1 else 0
+        }
+
+        private fun pending() = rows.value.values.filter { it.status == ProductImageUploadStatus.PENDING }
+    }
+
+    /** Storage falso: cada subida tarda 100 ms; el producto se actualiza leyendo y escribiendo. */
+    private class FakeUploader : ProductImageUploadQueue.Uploader {
+        val productImages = mutableMapOf<Int, List<String>>()
+        val failuresLeft = mutableMapOf<Long, Int>()
+        var failAlways = false
+        var inFlight = 0
+        var maxInFlight = 0
+
+        override suspend fun upload(upload: ProductImageUploadEntity): Pair<String, String> {
+            inFlight++
+            maxInFlight = maxOf(maxInFlight, inFlight)
+            try {
+                delay(100)
+                val failures = failuresLeft[upload.id] ?: 0
+                if (failAlways || failures > 0) {
+                    failuresLeft[upload.id] = failures - 1
+                    throw IOException("sin red")
+                }
+                return "https://cdn.test/${upload.id}.webp" to "https://cdn.test/${upload.id}_thumb.webp"
+            } finally {
+                inFlight--
+            }
+        }
+
+        override suspend fun attach(productId: Int, url: String) {
+            val current = productImages[productId].orEmpty()
+            yield()
+            productImages[productId] = current + url
+        }
+    }
+
+    private var now = 0L
+
+    /**
+     * Por defecto el drain que lanza `enqueue` va a un scope que nunca avanza: así cada
+     * test decide cuándo se vacía la cola.
+     */
+    private fun queue(
+        dao: FakeUploadDao,
+        uploader: FakeUploader,
+        directory: File,
+        maxAttempts: Int = 5,
+        scope: CoroutineScope = TestScope()
+    ) = ProductImageUploadQueue(
+        dao = dao,
+        uploader = uploader,
+        directory = directory,
+        scope = scope,
+        clock = { now },
+        parallelism = 3,
+        maxAttempts = maxAttempts,
+        retryBaseMillis = 1_000
+    )
+
+    private fun image() = ProcessedImage(
+        main = EncodedImage(ByteArray(2_048) { it.toByte() }, 1_600, 1_200, ImageOutputFormat.WEBP),
+        thumbnail = EncodedImage(ByteArray(256), 320, 240, ImageOutputFormat.WEBP),
+        originalBytes = 4_000_000,
+        sampleSize = 2
+    )
+
+    @Test
+    fun `sube en paralelo sin pasar el limite y agrega todas las URLs`() = runTest {
+        val dao = FakeUploadDao()
+        val uploader = FakeUploader()
+        val directory = tmp.newFolder()
+        val queue = queue(dao, uploader, directory)
+        repeat(10) { queue.enqueue("tenant-1", productId = 7, image = image()) }
+        assertThat(directory.listFiles()).hasLength(20)
+
+        val report = queue.drain()
+
+        assertThat(report).isEqualTo(ProductImageUploadQueue.DrainReport(uploaded = 10, retrying = 0, failed = 0, pending = false))
+        assertThat(uploader.maxInFlight).isEqualTo(3)
+        // 10 subidas de 100 ms, de a 3: cuatro tandas.
+        assertThat(testScheduler.currentTime).isEqualTo(400)
+        assertThat(uploader.productImages[7]).hasSize(10)
+        assertThat(dao.rows.value.values.map { it.status }.toSet()).containsExactly(ProductImageUploadStatus.DONE)
+        assertThat(dao.rows.value.getValue(1).thumbnailUrl).isEqualTo("https://cdn.test/1_thumb.webp")
+        assertThat(directory.listFiles()).isEmpty()
+    }
+
+    @Test
+    fun `encolar dispara la subida sin esperar al worker`() = runTest {
+        val dao = FakeUploadDao()
+        val uploader = FakeUploader()
+        val queue = queue(dao, uploader, tmp.newFolder(), scope = backgroundScope)
+
+        val id = queue.enqueue("tenant-1", productId = 7, image = image())
+        val result = queue.awaitResult(id)
+
+        assertThat(result.status).isEqualTo(ProductImageUploadStatus.DONE)
+        assertThat(result.processedBytes).isEqualTo(2_048L + 256L)
+        assertThat(uploader.productImages[7]).containsExactly(result.remoteUrl)
+    }
+
+    @Test
+    fun `un error se reintenta con espera exponencial`() = runTest {
+        val dao = FakeUploadDao()
+        val uploader = FakeUploader()
+        val queue = queue(dao, uploader, tmp.newFolder())
+        val id = queue.enqueue("tenant-1", productId = 7, image = image())
+        uploader.failuresLeft[id] = 2
+
+        assertThat(queue.drain().retrying).isEqualTo(1)
+        assertThat(dao.rows.value.getValue(id).nextAttemptAt).isEqualTo(1_000)
+        assertThat(dao.rows.value.getValue(id).lastError).isEqualTo("sin red")
+
+        now = 500
+        assertThat(queue.drain()).isEqualTo(ProductImageUploadQueue.DrainReport(0, 0, 0, pending = true))
+
+        now = 1_000
+        queue.drain()
+        assertThat(dao.rows.value.getValue(id).nextAttemptAt).isEqualTo(3_000)
+
+        now = 3_000
+        val report = queue.drain()
+        val result = queue.awaitResult(id)
+
+        assertThat(report.uploaded).isEqualTo(1)
+        assertThat(report.pending).isFalse()
+        assertThat(result.status).isEqualTo(ProductImageUploadStatus.DONE)
+        assertThat(result.attempts).isEqualTo(3)
+        assertThat(result.lastError).isNull()
+        assertThat(uploader.productImages[7]).containsExactly(result.remoteUrl)
+    }
+
+    @Test
+    fun `despues del maximo de intentos queda FAILED con sus archivos`() = runTest {
+        val dao = FakeUploadDao()
+        val uploader = FakeUploader().apply { failAlways = true }
+        val directory = tmp.newFolder()
+        val queue = queue(dao, uploader, directory, maxAttempts = 2)
+        val id = queue.enqueue("tenant-1", productId = 7, image = image())
+
+        queue.drain()
+        now = 60_000
+        val report = queue.drain()
+
+        assertThat(report.failed).isEqualTo(1)
+        assertThat(report.pending).isFalse()
+        assertThat(queue.awaitResult(id).status).isEqualTo(ProductImageUploadStatus.FAILED)
+        assertThat(queue.observeFailed().first().map { it.id }).containsExactly(id)
+        assertThat(uploader.productImages).isEmpty()
+        assertThat(directory.listFiles()).hasLength(2)
+    }
+
+    @Test
+    fun `reintentar una FAILED la vuelve a subir desde cero`() = runTest {
+        val dao = FakeUploadDao()
+        val uploader = FakeUploader().apply { failAlways = true }
+        val directory = tmp.newFolder()
+        val queue = queue(dao, uploader, directory, maxAttempts = 1)
+        val id = queue.enqueue("tenant-1", productId = 7, image = image())
+        queue.drain()
+        assertThat(dao.rows.value.getValue(id).status).isEqualTo(ProductImageUploadStatus.FAILED)
+
+        uploader.failAlways = false
+        now = 5_000
+        assertThat(queue.retry(id)).isTrue()
+        assertThat(dao.rows.value.getValue(id).attempts).isEqualTo(0)
+        val report = queue.drain()
+
+        assertThat(report.uploaded).isEqualTo(1)
+        val result = queue.awaitResult(id)
+        assertThat(result.status).isEqualTo(ProductImageUploadStatus.DONE)
+        assertThat(result.attempts).isEqualTo(1)
+        assertThat(uploader.productImages[7]).containsExactly(result.remoteUrl)
+        assertThat(queue.observeFailed().first()).isEmpty()
+        assertThat(directory.listFiles()).isEmpty()
+        // Solo se reintenta lo que está FAILED.
+        assertThat(queue.retry(id)).isFalse()
+    }
+
+    @Test
+    fun `descartar una FAILED borra la fila y los archivos`() = runTest {
+        val dao = FakeUploadDao()
+        val uploader = FakeUploader().apply { failAlways = true }
+        val directory = tmp.newFolder()
+        val queue = queue(dao, uploader, directory, maxAttempts = 1)
+        val failed = queue.enqueue("tenant-1", productId = 7, image = image())
+        queue.drain()
+        val pending = queue.enqueue("tenant-1", productId = 7, image = image())
+
+        assertThat(queue.discard(pending)).isFalse()
+        assertThat(queue.discard(failed)).isTrue()
+
+        assertThat(dao.rows.value.keys).containsExactly(pending)
+        assertThat(directory.listFiles()).hasLength(2)
+        assertThat(queue.retry(failed)).isFalse()
+    }
+
+    @Test
+    fun `sin los archivos no se puede reintentar`() = runTest {
+        val dao = FakeUploadDao()
+        val uploader = FakeUploader().apply { failAlways = true }
+        val directory = tmp.newFolder()
+        val queue = queue(dao, uploader, directory, maxAttempts = 1)
+        val id = queue.enqueue("tenant-1", productId = 7, image = image())
+        queue.drain()
+
+        directory.listFiles()!!.forEach { it.delete() }
+
+        assertThat(queue.retry(id)).isFalse()
+        assertThat(dao.rows.value.getValue(id).status).isEqualTo(ProductImageUploadStatus.FAILED)
+    }
+
+    @Test
+    fun `lo que quedo subiendo al morir el proceso se retoma`() = runTest {
+        val dao = FakeUploadDao()
+        val directory = tmp.newFolder()
+        val main = File(directory, "a.webp").apply { writeBytes(ByteArray(10)) }
+        val thumbnail = File(directory, "a_thumb.webp").apply { writeBytes(ByteArray(5)) }
+        val id = dao.insert(
+            ProductImageUploadEntity(
+                tenantId = "tenant-1",
+                productId = 3,
+                mainPath = main.path,
+                thumbnailPath = thumbnail.path,
+                mimeType = ImageOutputFormat.WEBP.mimeType,
+                originalBytes = 100,
+                processedBytes = 15,
+                status = ProductImageUploadStatus.UPLOADING,
+                attempts = 1,
+                createdAt = 0
+            )
+        )
+        val uploader = FakeUploader()
+
+        // Proceso nuevo: otra instancia de la cola sobre la misma tabla.
+        val report = queue(dao, uploader, directory).drain()
+
+        assertThat(report.uploaded).isEqualTo(1)
+        assertThat(dao.rows.value.getValue(id).status).isEqualTo(ProductImageUploadStatus.DONE)
+        assertThat(dao.rows.value.getValue(id).attempts).isEqualTo(2)
+        assertThat(uploader.productImages[3]).containsExactly("https://cdn.test/$id.webp")
+        assertThat(main.exists()).isFalse()
+    }
+}
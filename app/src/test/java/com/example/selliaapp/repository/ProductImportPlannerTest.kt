@@ -0,0 +1,232 @@
+package com.example.selliaapp.repository
+
+import com.example.selliaapp.data.csv.ProductCsvImporter
+import com.example.selliaapp.data.local.entity.PricingFixedCostEntity
+import com.example.selliaapp.data.local.entity.PricingSettingsEntity
+import com.example.selliaapp.data.local.entity.ProductEntity
+import com.example.selliaapp.pricing.PricingInputs
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.time.Instant
+import java.time.LocalDate
+
+/**
+ * Planificador de importación masiva: archivos grandes contra un catálogo existente y
+ * la semántica fila a fila que reemplaza.
+ */
+class ProductImportPlannerTest {
+
+    private val today = LocalDate.of(2026, 1, 15)
+
+    @Test
+    fun `planifica 10k y 50k filas contra el catalogo precargado`() {
+        listOf(10_000, 50_000).forEach { rowCount ->
+            val existing = catalog(rowCount / 2)
+            val rows = (0 until rowCount).map { i ->
+                // Mitad actualiza productos existentes por barcode, mitad son altas.
+                row(barcode = "779$i", name = "Producto $i", quantity = 3, purchasePrice = 100.0 + i % 50)
+            }
+
+            val plan = planner(existing).planAppend(rows)
+
+            assertThat(plan.errors).isEmpty()
+            assertThat(plan.inserted).isEqualTo(rowCount / 2)
+            assertThat(plan.updated).isEqualTo(rowCount / 2)
+            val updates = plan.slots.filterNot { it.isInsert }
+            assertThat(updates.map { it.original?.id }).containsExactlyElementsIn(existing.map { it.id })
+            assertThat(updates.map { it.entity.quantity }.distinct()).containsExactly(4)
+            // Las altas toman códigos correlativos a continuación del catálogo, sin repetir.
+            val newCodes = plan.slots.filter { it.isInsert }.map { it.entity.code }
+            assertThat(newCodes.toSet()).hasSize(rowCount / 2)
+            assertThat(newCodes.first()).isEqualTo("VLK${(rowCount / 2 + 1).toString().padStart(6, '0')}")
+        }
+    }
+
+    @Test
+    fun `append suma stock y consolida filas repetidas en un solo producto`() {
+        val existing = listOf(ProductEntity(id = 7, code = "VLK000001", barcode = "111", name = "Yerba", quantity = 10))
+        val plan = planner(existing).planAppend(
+            listOf(
+                row(barcode = "111", name = "Yerba", quantity = 5),
+                row(barcode = null, name = "Azúcar", quantity = 2),
+                row(barcode = null, name = "azúcar ", quantity = 4)
+            )
+        )
+
+        assertThat(plan.inserted).isEqualTo(1)
+        assertThat(plan.updated).isEqualTo(2)
+        val yerba = plan.slots.single { !it.isInsert }
+        assertThat(yerba.entity.quantity).isEqualTo(15)
+        assertThat(yerba.delta).isEqualTo(5)
+        val azucar = plan.slots.single { it.isInsert }
+        assertThat(azucar.entity.quantity).isEqualTo(6)
+        assertThat(azucar.entity.code).isEqualTo("VLK000002")
+        assertThat(azucar.note).isEqualTo(ProductImportPlanner.NOTE_NEW)
+    }
+
+    @Test
+    fun `append informa codigos duplicados o tomados sin cortar la importacion`() {
+        val existing = listOf(ProductEntity(id = 1, code = "A1", barcode = "111", name = "Uno"))
+        val plan = planner(existing).planAppend(
+            listOf(
+                row(code = "A1", barcode = "222", name = "Dos"),
+                row(code = "B1", barcode = "333", name = "Tres"),
+                row(code = "B1", barcode = "444", name = "Cuatro")
+            )
+        )
+
+        assertThat(plan.inserted).isEqualTo(1)
+        assertThat(plan.errors).containsExactly(
+            "Línea 2: el código \"A1\" ya existe.",
+            "Línea 4: el código \"B1\" está duplicado en el archivo."
+        )
+    }
+
+    @Test
+    fun `merge reemplaza stock y aplica auto pricing con la config precargada`() {
+        val existing = listOf(
+            ProductEntity(id = 3, code = "X1", barcode = "555", name = "Café", quantity = 9, autoPricing = true)
+        )
+        val plan = planner(existing).planMerge(
+            listOf(row(barcode = "555", name = "Café", quantity = 4, purchasePrice = 200.0))
+        )
+
+        val slot = plan.slots.single()
+        assertThat(slot.entity.quantity).isEqualTo(4)
+        assertThat(slot.delta).isEqualTo(-5)
+        assertThat(slot.entity.autoPricing).isTrue()
+        assertThat(slot.entity.listPrice).isNotNull()
+        assertThat(slot.note).isEqualTo(ProductImportPlanner.NOTE_UPDATE)
+    }
+
+    @Test
+    fun `el stock planificado se aplica como delta sobre la fila vigente`() {
+        val existing = listOf(ProductEntity(id = 7, code = "A1", barcode = "111", name = "Yerba", quantity = 10))
+        val yerba = planner(existing).planAppend(listOf(row(barcode = "111", name = "Yerba 1kg", quantity = 5))).slots.single()
+
+        // Mientras se planificaba se vendieron 3 unidades.
+        val rebased = yerba.rebasedOn(existing.single().copy(quantity = 7))
+
+        assertThat(rebased.quantity).isEqualTo(12)
+        assertThat(rebased.name).isEqualTo("Yerba 1kg")
+    }
+
+    @Test
+    fun `merge que baja stock nunca deja la fila vigente en negativo`() {
+        val existing = listOf(ProductEntity(id = 3, code = "X1", barcode = "555", name = "Café", quantity = 9))
+        val cafe = planner(existing).planMerge(listOf(row(barcode = "555", name = "Café", quantity = 4))).slots.single()
+
+        assertThat(cafe.rebasedOn(existing.single().copy(quantity = 8)).quantity).isEqualTo(3)
+        assertThat(cafe.rebasedOn(existing.single().copy(quantity = 2)).quantity).isEqualTo(0)
+    }
+
+    @Test
+    fun `un archivo planificado por partes ve lo que escribieron las anteriores`() {
+        val planner = planner(emptyList())
+        val first = planner.planAppend(listOf(row(barcode = "111", name = "Yerba", quantity = 5)))
+        // Lo que haría el repositorio al escribir la primera parte.
+        first.slots.forEach { planner.settle(it, it.entity.copy(id = 41)) }
+
+        val second = planner.planAppend(
+            listOf(
+                row(barcode = "111", name = "Yerba", quantity = 2),
+                row(code = "Z9", barcode = "222", name = "Mate"),
+                row(code = "Z9", barcode = "333", name = "Termo")
+            ),
+            firstLine = 3
+        )
+
+        assertThat(second.inserted).isEqualTo(1)
+        assertThat(second.updated).isEqualTo(1)
+        val yerba = second.slots.single { !it.isInsert }
+        assertThat(yerba.original?.id).isEqualTo(41)
+        assertThat(yerba.entity.quantity).isEqualTo(7)
+        assertThat(yerba.delta).isEqualTo(2)
+        // Solo vuelven las filas de esta parte, con la línea real del archivo.
+        assertThat(second.slots).hasSize(2)
+        assertThat(second.errors).containsExactly("Línea 5: el código \"Z9\" está duplicado en el archivo.")
+    }
+
+    private fun planner(existing: List<ProductEntity>) = ProductImportPlanner(
+        existing = existing,
+        codes = ProductCodeSource.sequential("VLK", from = existing.size + 1L),
+        pricing = pricingInputs(),
+        today = { today }
+    )
+
+    private fun catalog(size: Int): List<ProductEntity> = (0 until size).map { i ->
+        ProductEntity(
+            id = i + 1,
+            code = "VLK${(i + 1).toString().padStart(6, '0')}",
+            barcode = "779$i",
+            name = "Producto $i",
+            purchasePrice = 100.0,
+            quantity = 1,
+            autoPricing = true
+        )
+    }
+
+    private fun row(
+        code: String? = null,
+        barcode: String?,
+        name: String,
+        quantity: Int = 0,
+        purchasePrice: Double? = null
+    ) = ProductCsvImporter.Row(
+        code = code,
+        barcode = barcode,
+        name = name,
+        quantity = quantity,
+        purchasePrice = purchasePrice,
+        listPrice = null,
+        cashPrice = null,
+        transferPrice = null,
+        transferNetPrice = null,
+        mlPrice = null,
+        ml3cPrice = null,
+        ml6cPrice = null,
+        description = null,
+        imageUrl = null,
+        imageUrls = emptyList(),
+        parentCategory = null,
+        category = null,
+        providerName = null,
+        providerSku = null,
+        brand = null,
+        color = null,
+        sizes = emptyList(),
+        minStock = null,
+        markedAsUpdate = false,
+        updatedAt = null
+    )
+
+    private fun pricingInputs() = PricingInputs(
+        settings = PricingSettingsEntity(
+            id = 1,
+            ivaTerminalPercent = 21.0,
+            monthlySalesEstimate = 500,
+            operativosLocalPercent = 3.0,
+            posnet3CuotasPercent = 12.22,
+            transferenciaRetencionPercent = 5.0,
+            gainTargetPercent = 50.0,
+            mlCommissionPercent = 15.5,
+            mlCuotas3Percent = 8.2,
+            mlCuotas6Percent = 12.7,
+            mlGainMinimum = 15.0,
+            mlShippingThreshold = 10000.0,
+            mlDefaultWeightKg = 0.3,
+            coefficient0To1500Percent = 15.0,
+            coefficient1501To3000Percent = 25.0,
+            coefficient3001To5000Percent = 40.0,
+            coefficient5001To7500Percent = 60.0,
+            coefficient7501To10000Percent = 80.0,
+            coefficient10001PlusPercent = 100.0,
+            recalcIntervalMinutes = 30,
+            updatedAt = Instant.now(),
+            updatedBy = "test"
+        ),
+        fixedCosts = listOf(PricingFixedCostEntity(id = 1, name = "Alquiler", amount = 350000.0)),
+        mlFixedCostTiers = emptyList(),
+        mlShippingTiers = emptyList()
+    )
+}
@@ -0,0 +1,192 @@
+package com.example.selliaapp.repository
+
+import com.example.selliaapp.data.dao.ProductScanKey
+import com.example.selliaapp.data.local.entity.ProductEntity
+import com.example.selliaapp.domain.product.ScanValueParser
+import com.google.common.truth.Truth.assertThat
+import com.google.common.truth.Truth.assertWithMessage
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.TestScope
+import org.junit.Test
+
+/**
+ * Reproduce una ráfaga de escaneos grabada (`scans/counter_burst.tsv`) contra el
+ * resolver con índice y contra la búsqueda secuencial anterior, con un reloj virtual
+ * que cobra cada consulta a la DB; el p50/p99 de [ProductScanResolver.latencyStats] se
+ * compara con el de la búsqueda secuencial sobre el mismo reloj. El trabajo en background
+ * solo corre en las pausas (`W`), así las ediciones seguidas de escaneos pasan por el
+ * índice atrasado.
+ */
+@OptIn(ExperimentalCoroutinesApi::class)
+class ProductScanResolverReplayTest {
+
+    private sealed interface Event {
+        data class Scan(val value: String) : Event
+        data class Upsert(val id: Int, val barcode: String, val code: String) : Event
+        data object Idle : Event
+    }
+
+    /** Tabla `products` en memoria; cada lectura adelanta el reloj como lo haría la DB. */
+    private class FakeSource(private val clock: LongArray) : ProductScanResolver.Source {
+        val products = LinkedHashMap<Int, ProductEntity>()
+        var lookups = 0
+        var keyReads = 0
+
+        private fun charge(nanos: Long) {
+            clock[0] += nanos
+        }
+
+        private fun lookup(): Unit = run { lookups++; charge(QUERY_NANOS) }
+
+        override suspend fun scanKeys(): List<ProductScanKey> {
+            keyReads++
+            charge(KEYS_NANOS)
+            return products.values.map { ProductScanKey(it.id, it.barcode, it.code) }
+        }
+
+        override suspend fun byId(id: Int): ProductEntity? {
+            lookup()
+            return products[id]
+        }
+
+        override suspend fun byBarcode(barcode: String): ProductEntity? {
+            lookup()
+            return products.values.firstOrNull { it.barcode == barcode }
+        }
+
+        override suspend fun byCode(code: String): ProductEntity? {
+            lookup()
+            return products.values.firstOrNull { it.code?.trim() == code.trim() }
+        }
+    }
+
+    private fun product(id: Int, barcode: String = "779%010d".format(id), code: String = "VLK%06d".format(id)) =
+        ProductEntity(id = id, barcode = barcode, code = code, name = "Producto $id", quantity = 10)
+
+    private fun recordedBurst(): List<Event> {
+        val stream = requireNotNull(javaClass.classLoader?.getResourceAsStream("scans/counter_burst.tsv"))
+        return stream.bufferedReader().useLines { lines ->
+            lines.filter { it.isNotEmpty() && !it.startsWith("#") }.map { line ->
+                val fields = line.split('\t')
+                when (fields[0]) {
+                    "S" -> Event.Scan(fields[1])
+                    "U" -> Event.Upsert(fields[1].toInt(), fields[2], fields[3])
+                    "W" -> Event.Idle
+                    else -> error("Evento desconocido: $line")
+                }
+            }.toList()
+        }
+    }
+
+    /** La búsqueda que hacía `SellViewModel` antes del índice. */
+    private suspend fun legacyResolve(source: FakeSource, rawValue: String): ProductEntity? {
+        ScanValueParser.candidates(rawValue).forEach { candidate ->
+            source.byBarcode(candidate)?.let { return it }
+            source.byCode(candidate)?.let { return it }
+            ScanValueParser.parseProductId(candidate)?.let { id -> source.byId(id)?.let { return it } }
+        }
+        return null
+    }
+
+    /** Mismo criterio que `ScanLatencyRecorder`, en milisegundos. */
+    private fun percentileMs(nanos: List<Long>, p: Double): Double =
+        nanos.sorted()[((nanos.size - 1) * p).toInt()] / 1_000_000.0
+
+    @Test
+    fun `la rafaga grabada resuelve igual que la busqueda secuencial con menos consultas`() = runBlocking {
+        val events = recordedBurst()
+        val clock = LongArray(1)
+        val legacyClock = LongArray(1)
+        val indexed = FakeSource(clock)
+        val legacy = FakeSource(legacyClock)
+        (1..CATALOG_SIZE).forEach { id ->
+            indexed.products[id] = product(id)
+            legacy.products[id] = product(id)
+        }
+        val background = TestScope(StandardTestDispatcher())
+        val resolver = ProductScanResolver(indexed, background) { clock[0] }
+        val legacyLatencies = mutableListOf<Long>()
+        var scans = 0
+        var found = 0
+
+        events.forEach { event ->
+            when (event) {
+                is Event.Scan -> {
+                    val legacyStart = legacyClock[0]
+                    val expected = legacyResolve(legacy, event.value)
+                    legacyLatencies += legacyClock[0] - legacyStart
+                    val actual = resolver.resolve(event.value)
+                    assertWithMessage(event.value).that(actual?.id).isEqualTo(expected?.id)
+                    scans++
+                    if (actual != null) found++
+                }
+                is Event.Upsert -> {
+                    val updated = product(event.id, event.barcode, event.code)
+                    indexed.products[event.id] = updated
+                    legacy.products[event.id] = updated
+                    resolver.onProductsChanged()
+                }
+                Event.Idle -> background.testScheduler.advanceUntilIdle()
+            }
+        }
+
+        val stats = resolver.latencyStats()
+        assertThat(stats.count).isEqualTo(scans)
+        assertThat(found).isLessThan(scans) // la ráfaga incluye códigos desconocidos
+        // Un acierto es una sola lectura por id; solo el índice atrasado vuelve a la DB.
+        assertThat(indexed.lookups).isLessThan(found + scans / 10)
+        assertThat(indexed.lookups).isLessThan(legacy.lookups * 3 / 4)
+        assertThat(indexed.keyReads).isAtMost(1 + events.count { it is Event.Upsert })
+        // Latencia por escaneo: la mediana es una sola lectura y la cola queda por debajo de
+        // la secuencial (barcode, código e id por cada candidato del QR).
+        val legacyP99Ms = percentileMs(legacyLatencies, 0.99)
+        val summary = "p50=%s p99=%s ms, secuencial p50=%s p99=%s ms".format(
+            stats.p50Ms, stats.p99Ms, percentileMs(legacyLatencies, 0.50), legacyP99Ms
+        )
+        assertWithMessage(summary).that(stats.p50Ms).isAtMost(QUERY_NANOS / 1_000_000.0)
+        assertWithMessage(summary).that(stats.p99Ms).isLessThan(legacyP99Ms)
+    }
+
+    @Test
+    fun `con el indice atrasado no devuelve la clave vieja`() = runBlocking {
+        val clock = LongArray(1)
+        val source = FakeSource(clock).apply { products[1] = product(1, barcode = "111") }
+        val background = TestScope(StandardTestDispatcher())
+        val resolver = ProductScanResolver(source, background) { clock[0] }
+
+        assertThat(resolver.resolve("111")?.id).isEqualTo(1)
+
+        source.products[1] = product(1, barcode = "222")
+        source.products[2] = product(2, barcode = "111")
+        resolver.onProductsChanged()
+
+        // Antes del rearmado: el índice dice 111 -> 1, pero la lectura lo desmiente.
+        assertThat(resolver.resolve("111")?.id).isEqualTo(2)
+        assertThat(resolver.resolve("222")?.id).isEqualTo(1)
+
+        background.testScheduler.advanceUntilIdle()
+        val before = source.lookups
+        assertThat(resolver.resolve("sellia://product?q=VLK000002")?.id).isEqualTo(2)
+        assertThat(resolver.resolve("999")).isNull()
+        assertThat(source.lookups - before).isEqualTo(1)
+    }
+
+    @Test
+    fun `parser lee las formas de QR sin android Uri`() {
+        assertThat(ScanValueParser.normalize(" 7791234567890 ")).isEqualTo("7791234567890")
+        assertThat(ScanValueParser.normalize("sellia://product?q=VLK000010")).isEqualTo("VLK000010")
+        assertThat(ScanValueParser.normalize("https://sellia1993.web.app/product?q=VLK%20A%2B1")).isEqualTo("VLK A+1")
+        assertThat(ScanValueParser.normalize("https://sellia1993.web.app/p/VLK000010")).isEqualTo("VLK000010")
+        assertThat(ScanValueParser.normalize("sellia://product")).isEqualTo("sellia://product")
+        assertThat(ScanValueParser.parseProductId("product-42")).isEqualTo(42)
+        assertThat(ScanValueParser.parseProductId("7791234567890")).isNull()
+    }
+
+    private companion object {
+        const val CATALOG_SIZE = 2_000
+        const val QUERY_NANOS = 400_000L
+        const val KEYS_NANOS = 8_000_000L
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.selliaapp.repository
+
+import com.example.selliaapp.data.local.entity.ProductEntity
+import com.example.selliaapp.data.remote.ProductFirestoreMappers.RemoteProduct
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.time.LocalDate
+
+class ProductSyncDownPlannerTest {
+
+    private val day1 = LocalDate.of(2026, 1, 1)
+    private val day2 = LocalDate.of(2026, 1, 2)
+
+    @Test
+    fun `remoto mas nuevo actualiza y conserva el codigo si pertenece a otro producto`() {
+        val local = listOf(
+            ProductEntity(id = 1, code = "A1", barcode = "111", name = "Yerba", updatedAt = day1),
+            ProductEntity(id = 2, code = "B2", barcode = "222", name = "Azúcar", updatedAt = day1)
+        )
+        val plan = ProductSyncDownPlanner(local).plan(
+            listOf(remote(ProductEntity(id = 1, code = "B2", barcode = " 111 ", name = "Yerba 1kg", updatedAt = day2), "https://img/1"))
+        )
+
+        assertThat(plan.applied).isEqualTo(1)
+        assertThat(plan.inserts).isEmpty()
+        assertThat(plan.writeBacks).isEmpty()
+        val updated = plan.updates.single()
+        assertThat(updated.entity.name).isEqualTo("Yerba 1kg")
+        assertThat(updated.entity.code).isEqualTo("A1")
+        assertThat(updated.entity.barcode).isEqualTo("111")
+        assertThat(updated.imageUrls).containsExactly("https://img/1")
+        assertThat(plan.originals.map { it.id }).containsExactly(1)
+    }
+
+    @Test
+    fun `local mas nuevo se devuelve a firestore sin escribir en room`() {
+        val local = listOf(ProductEntity(id = 5, code = "C5", name = "Mate", updatedAt = day2))
+        val plan = ProductSyncDownPlanner(local).plan(
+            listOf(remote(ProductEntity(id = 5, code = "C5", name = "Mate viejo", updatedAt = day1)))
+        )
+
+        assertThat(plan.applied).isEqualTo(0)
+        assertThat(plan.updates).isEmpty()
+        assertThat(plan.writeBacks.map { it.entity.id }).containsExactly(5)
+    }
+
+    @Test
+    fun `dos documentos del mismo producto nuevo se fusionan en una sola alta`() {
+        val plan = ProductSyncDownPlanner(emptyList()).plan(
+            listOf(
+                remote(ProductEntity(id = 40, barcode = "999", name = "Termo", updatedAt = day1)),
+                remote(ProductEntity(id = 41, barcode = "999", name = "Termo acero", updatedAt = day2))
+            )
+        )
+
+        assertThat(plan.applied).isEqualTo(2)
+        assertThat(plan.updates).isEmpty()
+        val insert = plan.inserts.single()
+        assertThat(insert.entity.id).isEqualTo(0)
+        assertThat(insert.entity.name).isEqualTo("Termo acero")
+
+        insert.assignId(12)
+        assertThat(insert.needsRemoteRemap).isTrue()
+        insert.assignId(40)
+        assertThat(insert.needsRemoteRemap).isFalse()
+    }
+
+    private fun remote(entity: ProductEntity, vararg images: String) = RemoteProduct(entity, images.toList())
+}
@@ -0,0 +1,208 @@
+package com.example.selliaapp.repository
+
+import com.example.selliaapp.data.dao.PublicCatalogDao
+import com.example.selliaapp.data.dao.SyncWatermarkDao
+import com.example.selliaapp.data.local.entity.PublicCatalogProductEntity
+import com.example.selliaapp.data.local.entity.SyncWatermarkEntity
+import com.example.selliaapp.data.remote.FirestoreDeltaReader.Cursor
+import com.example.selliaapp.sync.SyncWatermarkStore
+import com.google.common.truth.Truth.assertThat
+import com.google.firebase.Timestamp
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.emptyFlow
+import kotlinx.coroutines.test.runTest
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class PublicCatalogSyncTest {
+
+    /** `public_products` de una tienda: cada escritura mueve `publicUpdatedAt` como el servidor. */
+    private class FakeCollection(private val pageSize: Int = 2) : PublicCatalogSync.Source {
+        val docs = sortedMapOf<String, PublicCatalogSync.RemoteDoc>()
+        var fullReads = 0
+        var deltaReads = 0
+        private var clock = 1_000L
+
+        fun publish(docId: String, name: String) = write(docId, name, deleted = false)
+
+        fun tombstone(docId: String) = write(docId, "", deleted = true)
+
+        /** Lo que hace la purga de lápidas vencidas en la función programada. */
+        fun purge(docId: String) {
+            docs.remove(docId)
+        }
+
+        private fun write(docId: String, name: String, deleted: Boolean) {
+            docs[docId] = PublicCatalogSync.RemoteDoc(
+                row = row(docId, name),
+                deleted = deleted,
+                cursor = Cursor(Timestamp(clock++, 0), docId)
+            )
+        }
+
+        override suspend fun readChangedSince(
+            storeId: String,
+            since: Cursor,
+            onPage: suspend (docs: List<PublicCatalogSync.RemoteDoc>, pageEnd: Cursor) -> Unit
+        ): Cursor {
+            deltaReads++
+            val changed = docs.values
+                .filter { CURSOR_ORDER.compare(it.cursor!!, since) > 0 }
+                .sortedWith(compareBy(CURSOR_ORDER) { it.cursor!! })
+            var end = since
+            changed.chunked(pageSize).forEach { page ->
+                end = page.last().cursor!!
+                onPage(page, end)
+            }
+            return end
+        }
+
+        override suspend fun readAll(storeId: String, onPage: suspend (docs: List<PublicCatalogSync.RemoteDoc>) -> Unit) {
+            fullReads++
+            docs.values.toList().chunked(pageSize).forEach { onPage(it) }
+        }
+    }
+
+    private class FakeCatalogDao : PublicCatalogDao {
+        val rows = sortedMapOf<String, PublicCatalogProductEntity>()
+
+        override fun observeStore(storeId: String): Flow<List<PublicCatalogProductEntity>> = emptyFlow()
+
+        override suspend fun docIds(storeId: String) = rows.keys.toList()
+
+        override suspend fun upsertAll(rows: List<PublicCatalogProductEntity>) {
+            rows.forEach { this.rows[it.docId] = it }
+        }
+
+        override suspend fun deleteDocs(storeId: String, docIds: List<String>) {
+            docIds.forEach { rows.remove(it) }
+        }
+    }
+
+    private class FakeWatermarkDao : SyncWatermarkDao {
+        val rows = mutableMapOf<Pair<String, String>, SyncWatermarkEntity>()
+
+        override suspend fun get(tenantId: String, entityType: String) = rows[tenantId to entityType]
+
+        override suspend fun upsert(watermark: SyncWatermarkEntity) {
+            rows[watermark.tenantId to watermark.entityType] = watermark
+        }
+
+        override suspend fun clearForTenant(tenantId: String) {
+            rows.keys.removeAll { it.first == tenantId }
+        }
+    }
+
+    private val collection = FakeCollection()
+    private val catalogDao = FakeCatalogDao()
+    private var elapsedMillis = 0L
+    private val clock = { NOW + elapsedMillis }
+    private val sync = PublicCatalogSync(
+        source = collection,
+        catalogDao = catalogDao,
+        watermarks = SyncWatermarkStore(FakeWatermarkDao(), clock),
+        nowMillis = clock
+    )
+
+    @Test
+    fun `una baja llega por el pull incremental como lapida`() = runTest {
+        listOf("1", "2", "3").forEach { collection.publish(it, "producto $it") }
+        sync.refresh(STORE)
+
+        collection.tombstone("2")
+        collection.publish("3", "producto 3 editado")
+        sync.refresh(STORE)
+
+        assertThat(catalogDao.rows.keys).containsExactly("1", "3").inOrder()
+        assertThat(catalogDao.rows.getValue("3").name).isEqualTo("producto 3 editado")
+        assertThat(collection.fullReads).isEqualTo(1)
+        assertThat(collection.deltaReads).isEqualTo(1)
+    }
+
+    @Test
+    fun `una baja con el mismo conteo no se pierde`() = runTest {
+        listOf("1", "2").forEach { collection.publish(it, "producto $it") }
+        sync.refresh(STORE)
+
+        // Una baja y un alta entre pulls: el conteo del servidor sigue igual al local.
+        collection.tombstone("1")
+        collection.publish("4", "producto 4")
+        sync.refresh(STORE)
+
+        assertThat(catalogDao.rows.keys).containsExactly("2", "4").inOrder()
+    }
+
+    @Test
+    fun `un producto republicado despues de la lapida vuelve a aparecer`() = runTest {
+        collection.publish("1", "producto 1")
+        sync.refresh(STORE)
+        collection.tombstone("1")
+        sync.refresh(STORE)
+        assertThat(catalogDao.rows).isEmpty()
+
+        collection.publish("1", "producto 1")
+        sync.refresh(STORE)
+
+        assertThat(catalogDao.rows.keys).containsExactly("1")
+    }
+
+    @Test
+    fun `el pull completo no guarda lapidas y borra lo que ya no esta`() = runTest {
+        catalogDao.upsertAll(listOf(row("viejo", "sin documento")))
+        collection.publish("1", "producto 1")
+        collection.tombstone("2")
+
+        sync.refresh(STORE)
+
+        assertThat(catalogDao.rows.keys).containsExactly("1")
+    }
+
+    @Test
+    fun `si el ultimo pull es mas viejo que la retencion de lapidas se recorre todo`() = runTest {
+        listOf("1", "2").forEach { collection.publish(it, "producto $it") }
+        sync.refresh(STORE)
+
+        collection.tombstone("1")
+        collection.purge("1")
+        elapsedMillis = TimeUnit.DAYS.toMillis(31)
+        sync.refresh(STORE)
+
+        assertThat(catalogDao.rows.keys).containsExactly("2")
+        assertThat(collection.fullReads).isEqualTo(2)
+        assertThat(collection.deltaReads).isEqualTo(0)
+    }
+
+    @Test
+    fun `un pull sin cambios renueva la antiguedad del watermark`() = runTest {
+        collection.publish("1", "producto 1")
+        sync.refresh(STORE)
+
+        elapsedMillis = TimeUnit.DAYS.toMillis(20)
+        sync.refresh(STORE)
+        elapsedMillis = TimeUnit.DAYS.toMillis(40)
+        sync.refresh(STORE)
+
+        // Los pulls quedan a 20 días entre sí: nunca se supera la retención.
+        assertThat(collection.fullReads).isEqualTo(1)
+        assertThat(collection.deltaReads).isEqualTo(2)
+    }
+
+    private companion object {
+        const val STORE = "store-1"
+        const val NOW = 1_700_000_000_000L
+        val CURSOR_ORDER = compareBy<Cursor> { it.updatedAt }.thenBy { it.docId }
+
+        fun row(docId: String, name: String) = PublicCatalogProductEntity(
+            storeId = STORE,
+            docId = docId,
+            productId = docId.toIntOrNull(),
+            name = name,
+            imageUrl = null,
+            listPrice = null,
+            cashPrice = null,
+            transferPrice = null,
+            category = null,
+            subcategory = null
+        )
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.selliaapp.repository
+
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.TestScope
+import org.junit.Test
+import java.io.IOException
+
+class SellDraftRepositoryTest {
+
+    /** Store en memoria que registra cuándo se escribió cada versión. */
+    private class FakeStore(private val now: () -> Long) : SellDraftRepository.Store {
+        var bytes: ByteArray? = null
+        val writes = mutableListOf<Pair<Long, SellDraftBook>>()
+        var failNext = false
+
+        override fun read(): ByteArray? = bytes
+
+        override fun write(bytes: ByteArray) {
+            if (failNext) {
+                failNext = false
+                throw IOException("disco lleno")
+            }
+            this.bytes = bytes
+            writes += now() to SellDraftCodec.decode(bytes)
+        }
+    }
+
+    private fun item(id: Int, qty: Int = 1) = SellDraftItem(
+        productId = id,
+        name = "Producto ñandú #$id",
+        barcode = if (id % 2 == 0) "77900$id" else null,
+        unitPrice = 1_250.5,
+        listPrice = 1_300.0,
+        cashPrice = 1_250.5,
+        transferPrice = 1_280.0,
+        qty = qty,
+        maxStock = 40
+    )
+
+    private fun draft(vararg items: SellDraftItem, customer: String? = null) = SellDraft(
+        items = items.toList(),
+        discountPercent = 5,
+        customerDiscountPercent = 0,
+        surchargePercent = 10,
+        paymentMethod = "EFECTIVO",
+        paymentNotes = "Paga con \$10.000",
+        orderType = "INMEDIATA",
+        selectedCustomerId = customer?.let { 7 },
+        selectedCustomerName = customer
+    )
+
+    private fun repository(scope: TestScope, store: FakeStore) = SellDraftRepository(
+        store = store,
+        scope = scope,
+        clock = { scope.testScheduler.currentTime },
+        debounceMillis = 300,
+        maxDelayMillis = 1_000
+    )
+
+    @Test
+    fun `el formato binario ida y vuelta conserva todo`() {
+        val book = SellDraftBook(
+            active = draft(item(1), item(2, qty = 3), customer = "María José"),
+            parked = listOf(ParkedSellDraft(4, "Venta 1", 1_700_000_000_000, draft(item(9))))
+        )
+
+        val bytes = SellDraftCodec.encode(book)
+
+        assertThat(SellDraftCodec.decode(bytes)).isEqualTo(book)
+        assertThat(SellDraftCodec.decode(SellDraftCodec.encode(SellDraftBook()))).isEqualTo(SellDraftBook())
+    }
+
+    @Test
+    fun `una rafaga de escaneos se junta y nunca espera mas que el maximo`() {
+        val scope = TestScope(StandardTestDispatcher())
+        val store = FakeStore { scope.testScheduler.currentTime }
+        val repo = repository(scope, store)
+        val mutations = mutableListOf<Pair<Long, SellDraft>>()
+
+        // 100 cambios cada 50 ms: el debounce solo nunca escribiría hasta el final.
+        val items = mutableListOf<SellDraftItem>()
+        repeat(100) { index ->
+            items += item(index)
+            val next = draft(*items.toTypedArray())
+            repo.save(next)
+            mutations += scope.testScheduler.currentTime to next
+            scope.testScheduler.advanceTimeBy(50)
+            scope.testScheduler.runCurrent()
+        }
+        scope.testScheduler.advanceUntilIdle()
+
+        assertThat(store.writes.size).isAtMost(6)
+        assertThat(repo.writeCount).isEqualTo(store.writes.size.toLong())
+        assertThat(store.writes.last().second.active).isEqualTo(mutations.last().second)
+        // Cada cambio quedó en disco a lo sumo 1 s después de hacerse.
+        mutations.forEach { (at, saved) ->
+            val persisted = store.writes.first { (writtenAt, book) ->
+                writtenAt >= at && book.active!!.items.size >= saved.items.size
+            }
+            assertThat(persisted.first - at).isAtMost(1_000L)
+        }
+    }
+
+    @Test
+    fun `flush escribe sin esperar el debounce`() {
+        val scope = TestScope(StandardTestDispatcher())
+        val store = FakeStore { scope.testScheduler.currentTime }
+        val repo = repository(scope, store)
+
+        repo.save(draft(item(1)))
+        repo.flush()
+        scope.testScheduler.runCurrent()
+
+        assertThat(store.writes).hasSize(1)
+        assertThat(store.writes.single().first).isEqualTo(0L)
+        scope.testScheduler.advanceUntilIdle()
+        assertThat(store.writes).hasSize(1)
+    }
+
+    @Test
+    fun `clear escribe sin esperar el debounce`() {
+        val scope = TestScope(StandardTestDispatcher())
+        val store = FakeStore { scope.testScheduler.currentTime }
+        val repo = repository(scope, store)
+        repo.save(draft(item(1)))
+        scope.testScheduler.advanceUntilIdle()
+        val written = store.writes.size
+
+        repo.save(draft(item(1), item(2)))
+        repo.clear()
+        scope.testScheduler.runCurrent()
+
+        assertThat(store.writes).hasSize(written + 1)
+        assertThat(store.writes.last().second.active).isNull()
+        assertThat(repository(scope, store).load()).isNull()
+    }
+
+    @Test
+    fun `estacionar y retomar sobreviven a reabrir el repositorio`() {
+        val scope = TestScope(StandardTestDispatcher())
+        val store = FakeStore { scope.testScheduler.currentTime }
+        val repo = repository(scope, store)
+
+        repo.save(draft(item(1), customer = "Ana"))
+        val parked = repo.park("Ana")!!
+        repo.save(draft(item(2), item(4)))
+        scope.testScheduler.advanceUntilIdle()
+
+        val reopened = repository(scope, store)
+        assertThat(reopened.load()).isEqualTo(draft(item(2), item(4)))
+        assertThat(reopened.parkedDrafts.value.map { it.label }).containsExactly("Ana")
+        assertThat(reopened.hasActiveDraft.value).isTrue()
+
+        val resumed = reopened.resume(parked.id, labelForActive = "Venta 2")
+        scope.testScheduler.runCurrent()
+
+        assertThat(resumed).isEqualTo(draft(item(1), customer = "Ana"))
+        assertThat(reopened.load()).isEqualTo(resumed)
+        assertThat(store.writes.last().second.parked.map { it.label }).containsExactly("Venta 2")
+
+        reopened.discardParked(reopened.parkedDrafts.value.single().id)
+        reopened.clear()
+        scope.testScheduler.advanceUntilIdle()
+        assertThat(repository(scope, store).parkedDrafts.value).isEmpty()
+        assertThat(repository(scope, store).load()).isNull()
+    }
+
+    @Test
+    fun `si la escritura falla queda pendiente para la siguiente`() {
+        val scope = TestScope(StandardTestDispatcher())
+        val store = FakeStore { scope.testScheduler.currentTime }
+        val repo = repository(scope, store)
+        store.failNext = true
+
+        repo.save(draft(item(1)))
+        scope.testScheduler.advanceUntilIdle()
+        assertThat(store.writes).isEmpty()
+
+        repo.flush()
+        scope.testScheduler.runCurrent()
+        assertThat(store.writes.single().second.active).isEqualTo(draft(item(1)))
+    }
+
+    @Test
+    fun `un archivo corrupto arranca vacio`() {
+        val scope = TestScope(StandardTestDispatcher())
+        val store = FakeStore { scope.testScheduler.currentTime }.apply { bytes = byteArrayOf(1, 2, 3) }
+
+        val repo = repository(scope, store)
+
+        assertThat(repo.load()).isNull()
+        assertThat(repo.hasActiveDraft.value).isFalse()
+    }
+}
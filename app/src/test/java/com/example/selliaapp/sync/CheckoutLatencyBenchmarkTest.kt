@@ -0,0 +1,99 @@
+package com.example.selliaapp.sync
+
+import com.google.common.truth.Truth.assertThat
+import com.google.common.truth.Truth.assertWithMessage
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.runTest
+import org.junit.Test
+import java.io.IOException
+
+/**
+ * Benchmark de latencia de checkout contra un remoto falso.
+ * El "commit local" es una escritura en memoria; lo que se mide es cuánto
+ * agrega la publicación a Firestore al tiempo que ve el cajero. Se cuenta en tiempo
+ * virtual del scheduler y en llamadas al remoto, no en reloj de pared.
+ */
+class CheckoutLatencyBenchmarkTest {
+
+    private class FakeRemote(
+        private val latencyMs: Long,
+        private val offline: Boolean = false
+    ) {
+        var calls = 0
+
+        suspend fun push() {
+            calls++
+            delay(latencyMs)
+            if (offline) throw IOException("Sin conexión")
+        }
+    }
+
+    private val outbox = ArrayDeque<Long>()
+
+    private fun commitLocal(invoiceId: Long) {
+        outbox += invoiceId
+    }
+
+    /** Corre [sales] checkouts seguidos; devuelve el tiempo virtual que vio el cajero. */
+    private suspend fun TestScope.runCheckouts(
+        sales: Int,
+        checkout: suspend (Long) -> Unit
+    ): Long {
+        val start = testScheduler.currentTime
+        repeat(sales) { index -> checkout(index.toLong()) }
+        return testScheduler.currentTime - start
+    }
+
+    private fun pipelineFor(remote: FakeRemote, scope: CoroutineScope) = OutboxPushPipeline(
+        pushPending = remote::push,
+        scope = scope,
+        retryDelaysMs = listOf(50L)
+    )
+
+    @Test
+    fun `checkout en background no depende de la latencia del remoto`() = runTest {
+        val scenarios = linkedMapOf(
+            "rapido" to FakeRemote(latencyMs = 5),
+            "4G lento" to FakeRemote(latencyMs = 2_000),
+            "offline" to FakeRemote(latencyMs = 500, offline = true)
+        )
+
+        scenarios.forEach { (name, remote) ->
+            val pipeline = pipelineFor(remote, backgroundScope)
+            val elapsed = runCheckouts(sales = 500) { id ->
+                commitLocal(id)
+                pipeline.requestPush()
+            }
+
+            assertWithMessage("checkout[$name]").that(elapsed).isEqualTo(0L)
+            assertWithMessage("checkout[$name]").that(remote.calls).isEqualTo(0)
+            assertWithMessage("checkout[$name]").that(pipeline.stats.value.requested).isEqualTo(500L)
+        }
+
+        testScheduler.advanceUntilIdle()
+
+        // Las 500 ventas de cada escenario se coalescen en un solo drenado (más su reintento offline).
+        assertThat(scenarios.mapValues { it.value.calls })
+            .containsExactly("rapido", 1, "4G lento", 1, "offline", 2)
+            .inOrder()
+        assertThat(outbox).hasSize(1_500)
+    }
+
+    @Test
+    fun `drenado fallido deja estadisticas y reintenta`() = runTest {
+        val remote = FakeRemote(latencyMs = 1, offline = true)
+        val pipeline = pipelineFor(remote, backgroundScope)
+
+        pipeline.requestPush()
+        testScheduler.advanceUntilIdle()
+
+        val stats = pipeline.stats.value
+        assertThat(stats.requested).isEqualTo(1)
+        assertThat(stats.failedAttempts).isEqualTo(2)
+        assertThat(stats.drained).isEqualTo(0)
+        assertThat(stats.lastError).isEqualTo("Sin conexión")
+        assertThat(remote.calls).isEqualTo(2)
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.selliaapp.sync
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Assert.assertThrows
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+
+class ColumnarSnapshotTest {
+
+    private data class Table(val name: String, val columns: List<String>, val rows: MutableList<List<Any?>> = mutableListOf())
+
+    private class Collector : ColumnarSnapshotReader.Visitor {
+        val tables = mutableListOf<Table>()
+
+        override fun beginTable(name: String, columns: List<String>) {
+            tables += Table(name, columns)
+        }
+
+        // ByteArray no compara por contenido: se pasa a lista para las aserciones.
+        override fun row(values: Array<Any?>) {
+            tables.last().rows += values.map { if (it is ByteArray) it.toList() else it }
+        }
+
+        override fun endTable(name: String) = Unit
+    }
+
+    private fun read(bytes: ByteArray): List<Table> =
+        Collector().also { ColumnarSnapshotReader(ByteArrayInputStream(bytes)).use { reader -> reader.read(it) } }.tables
+
+    @Test
+    fun `ida y vuelta conserva tipos, nulos y blobs a traves de varios grupos`() {
+        val output = ByteArrayOutputStream()
+        val products = (1..10L).map { id ->
+            arrayOf<Any?>(id, "Producto $id", if (id % 3 == 0L) null else id * 1.5, byteArrayOf(id.toByte(), 0, -1))
+        }
+
+        val written = ColumnarSnapshotWriter(output, rowGroupSize = 4).use { writer ->
+            writer.beginTable("products", listOf("id", "name", "price", "image"))
+            products.forEach(writer::writeRow)
+            writer.endTable()
+            writer.beginTable("customers", listOf("id", "name"))
+            writer.endTable()
+            writer.rowsWritten
+        }
+
+        val tables = read(output.toByteArray())
+
+        assertThat(written).isEqualTo(10)
+        assertThat(tables.map { it.name }).containsExactly("products", "customers").inOrder()
+        assertThat(tables[0].columns).containsExactly("id", "name", "price", "image").inOrder()
+        assertThat(tables[0].rows).containsExactlyElementsIn(
+            products.map { row -> row.map { if (it is ByteArray) it.toList() else it } }
+        ).inOrder()
+        assertThat(tables[1].rows).isEmpty()
+    }
+
+    @Test
+    fun `textos de mas de 64 KiB y enteros se leen como Long`() {
+        val longText = "ñ".repeat(70_000)
+        val output = ByteArrayOutputStream()
+
+        ColumnarSnapshotWriter(output).use { writer ->
+            writer.beginTable("notes", listOf("id", "body"))
+            writer.writeRow(arrayOf<Any?>(7, longText))
+        }
+
+        val row = read(output.toByteArray()).single().rows.single()
+        assertThat(row).containsExactly(7L, longText).inOrder()
+    }
+
+    @Test
+    fun `la misma tabla puede aparecer en varios bloques`() {
+        val output = ByteArrayOutputStream()
+        ColumnarSnapshotWriter(output).use { writer ->
+            writer.beginTable("invoices", listOf("__rowKey", "__deleted", "total"))
+            writer.writeRow(arrayOf<Any?>("1", 0L, 10.0))
+            writer.endTable()
+            writer.beginTable("invoices", listOf("__rowKey", "__deleted"))
+            writer.writeRow(arrayOf<Any?>("2", 1L))
+            writer.endTable()
+        }
+
+        val tables = read(output.toByteArray())
+
+        assertThat(tables.map { it.name }).containsExactly("invoices", "invoices")
+        assertThat(tables[1].rows.single()).containsExactly("2", 1L).inOrder()
+    }
+
+    @Test
+    fun `rechaza archivos que no son snapshots`() {
+        val output = ByteArrayOutputStream()
+        java.util.zip.GZIPOutputStream(output).use { it.write("id,name\n1,Azúcar\n".toByteArray()) }
+
+        assertThrows(IOException::class.java) { read(output.toByteArray()) }
+    }
+
+    @Test
+    fun `valida la cantidad de columnas por fila`() {
+        val writer = ColumnarSnapshotWriter(ByteArrayOutputStream())
+        writer.beginTable("products", listOf("id", "name"))
+
+        assertThrows(IllegalArgumentException::class.java) { writer.writeRow(arrayOf<Any?>(1L)) }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.selliaapp.sync
+
+import com.example.selliaapp.data.dao.SyncOutboxDao
+import com.example.selliaapp.data.local.entity.SyncEntityType
+import com.example.selliaapp.data.local.entity.SyncOutboxEntity
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.test.runTest
+import org.junit.Test
+
+class OutboxSnapshotTest {
+
+    /** Outbox en memoria con la semántica de Room: índice único (tipo, id) y upsert REPLACE con id nuevo. */
+    private class FakeOutboxDao : SyncOutboxDao {
+        val rows = mutableListOf<SyncOutboxEntity>()
+        private var nextId = 1L
+
+        override suspend fun upsert(entry: SyncOutboxEntity) {
+            rows.removeAll { it.entityType == entry.entityType && it.entityId == entry.entityId }
+            rows += entry.copy(id = nextId++)
+        }
+
+        override suspend fun upsertAll(entries: List<SyncOutboxEntity>) = entries.forEach { upsert(it) }
+
+        override suspend fun getAll(): List<SyncOutboxEntity> = rows.sortedBy { it.createdAt }
+
+        override suspend fun getByType(entityType: String) = rows.filter { it.entityType == entityType }
+
+        override suspend fun getByTypeAndId(entityType: String, entityId: Long) =
+            rows.firstOrNull { it.entityType == entityType && it.entityId == entityId }
+
+        override suspend fun getByTypeAndIds(entityType: String, entityIds: List<Long>) =
+            rows.filter { it.entityType == entityType && it.entityId in entityIds }
+
+        override suspend fun deleteByTypeAndIds(entityType: String, entityIds: List<Long>) {
+            rows.removeAll { it.entityType == entityType && it.entityId in entityIds }
+        }
+
+        override suspend fun deleteByType(entityType: String) {
+            rows.removeAll { it.entityType == entityType }
+        }
+
+        override suspend fun deleteByIds(ids: List<Long>) {
+            rows.removeAll { it.id in ids }
+        }
+
+        override suspend fun markAttemptByIds(ids: List<Long>, timestamp: Long, error: String?) {
+            rows.replaceAll { row ->
+                if (row.id in ids) row.copy(attempts = row.attempts + 1, lastAttemptAt = timestamp, lastError = error) else row
+            }
+        }
+    }
+
+    private val product = SyncEntityType.PRODUCT.storageKey
+
+    private suspend fun FakeOutboxDao.enqueue(vararg productIds: Long) =
+        productIds.forEach { upsert(SyncOutboxEntity(entityType = product, entityId = it)) }
+
+    @Test
+    fun `una entidad re-encolada durante el push no se confirma`() = runTest {
+        val dao = FakeOutboxDao()
+        dao.enqueue(1, 2)
+        val pending = OutboxSnapshot.take(dao, product)
+
+        // Otra venta toca el producto 1 mientras el push está en vuelo.
+        dao.enqueue(1)
+        pending.acknowledgeAll()
+
+        assertThat(dao.rows.map { it.entityId }).containsExactly(1L)
+    }
+
+    @Test
+    fun `solo se marcan y confirman las entidades pedidas del snapshot`() = runTest {
+        val dao = FakeOutboxDao()
+        dao.enqueue(1, 2, 3)
+        val pending = OutboxSnapshot.take(dao, product, listOf(2, 3, 99))
+
+        pending.markAttempt(listOf(3), timestamp = 50, error = "sin red")
+        pending.acknowledge(listOf(2, 99))
+
+        assertThat(dao.rows.map { it.entityId }).containsExactly(1L, 3L)
+        assertThat(dao.getByTypeAndId(product, 3)!!.attempts).isEqualTo(1)
+        assertThat(dao.getByTypeAndId(product, 3)!!.lastError).isEqualTo("sin red")
+        assertThat(dao.getByTypeAndId(product, 1)!!.attempts).isEqualTo(0)
+    }
+
+    /**
+     * Checkout + drenado en background: una segunda venta del mismo producto llega mientras
+     * el primer push está subiendo el stock anterior. Confirmando por (tipo, id) esa fila se
+     * borraba y Firestore se quedaba con stock 9; confirmando el snapshot se sube 8.
+     */
+    @Test
+    fun `una venta durante el drenado llega a Firestore`() = runTest {
+        val dao = FakeOutboxDao()
+        val localStock = mutableMapOf(1L to 10)
+        val remoteStock = mutableMapOf<Long, Int>()
+        var pipeline: OutboxPushPipeline? = null
+
+        suspend fun checkout(productId: Long) {
+            localStock[productId] = localStock.getValue(productId) - 1
+            dao.enqueue(productId)
+            pipeline!!.requestPush()
+        }
+
+        var pushes = 0
+        pipeline = OutboxPushPipeline(
+            pushPending = {
+                val pending = OutboxSnapshot.take(dao, product)
+                val snapshot = pending.entityIds.associateWith { localStock.getValue(it) }
+                pushes++
+                // La segunda venta se confirma en Room con el primer push en vuelo.
+                if (pushes == 1) checkout(1)
+                remoteStock.putAll(snapshot)
+                pending.acknowledgeAll()
+            },
+            scope = backgroundScope,
+            retryDelaysMs = emptyList()
+        )
+
+        checkout(1)
+        testScheduler.advanceUntilIdle()
+
+        assertThat(pushes).isEqualTo(2)
+        assertThat(remoteStock[1]).isEqualTo(8)
+        assertThat(localStock[1]).isEqualTo(8)
+        assertThat(dao.rows).isEmpty()
+    }
+}
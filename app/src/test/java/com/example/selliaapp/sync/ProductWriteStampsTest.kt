@@ -0,0 +1,80 @@
+package com.example.selliaapp.sync
+
+import com.example.selliaapp.data.dao.ProductPushMarkDao
+import com.example.selliaapp.data.local.entity.ProductEntity
+import com.example.selliaapp.data.local.entity.ProductPushMarkEntity
+import com.example.selliaapp.data.remote.ProductFirestoreMappers.RemoteProduct
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.test.runTest
+import org.junit.Test
+
+class ProductWriteStampsTest {
+
+    private class FakePushMarkDao : ProductPushMarkDao {
+        val rows = mutableMapOf<Int, Long>()
+
+        override suspend fun upsertAll(marks: List<ProductPushMarkEntity>) {
+            marks.forEach { rows[it.productId] = it.writeStamp }
+        }
+
+        override suspend fun getByIds(productIds: List<Int>) =
+            productIds.mapNotNull { id -> rows[id]?.let { ProductPushMarkEntity(id, it) } }
+
+        override suspend fun clearAll() = rows.clear()
+    }
+
+    private val dao = FakePushMarkDao()
+    private var now = 1_000L
+    private val stamps = ProductWriteStamps(dao, writerId = "device-a", nowMillis = { now })
+
+    @Test
+    fun `los sellos crecen aunque el reloj no avance`() = runTest {
+        val first = stamps.stamp(listOf(1))
+        val second = stamps.stamp(listOf(1))
+        now = 500L
+        val third = stamps.stamp(listOf(2))
+
+        assertThat(first.stamp).isEqualTo(1_000L)
+        assertThat(second.stamp).isEqualTo(1_001L)
+        assertThat(third.stamp).isEqualTo(1_002L)
+        assertThat(dao.rows).containsExactly(1, 1_001L, 2, 1_002L)
+    }
+
+    @Test
+    fun `solo es eco el documento propio con sello ya anotado`() = runTest {
+        val write = stamps.stamp(listOf(1, 2))
+        stamps.stamp(listOf(2))
+
+        val echoes = stamps.ownEchoes(
+            listOf(
+                doc(1, "device-a", write.stamp),
+                // Sello anterior a la última marca: push propio ya superado, también es eco.
+                doc(2, "device-a", write.stamp),
+                // Otro dispositivo o un documento sin sello se aplican siempre.
+                doc(3, "device-b", write.stamp),
+                doc(4, null, null),
+                // Propio pero sin marca local (p. ej. después de restaurar).
+                doc(5, "device-a", write.stamp)
+            )
+        )
+
+        assertThat(echoes).containsExactly(1, 2)
+    }
+
+    @Test
+    fun `un sello posterior a la marca no es eco`() = runTest {
+        val write = stamps.stamp(listOf(1))
+
+        assertThat(stamps.ownEchoes(listOf(doc(1, "device-a", write.stamp + 1)))).isEmpty()
+
+        stamps.clear()
+        assertThat(stamps.ownEchoes(listOf(doc(1, "device-a", write.stamp)))).isEmpty()
+    }
+
+    private fun doc(id: Int, writerId: String?, stamp: Long?) = RemoteProduct(
+        entity = ProductEntity(id = id, code = "P$id", name = "Producto $id"),
+        imageUrls = emptyList(),
+        writerId = writerId,
+        writeStamp = stamp
+    )
+}
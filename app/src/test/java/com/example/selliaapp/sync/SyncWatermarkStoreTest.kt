@@ -0,0 +1,66 @@
+package com.example.selliaapp.sync
+
+import com.example.selliaapp.data.dao.SyncWatermarkDao
+import com.example.selliaapp.data.local.entity.SyncEntityType
+import com.example.selliaapp.data.local.entity.SyncWatermarkEntity
+import com.example.selliaapp.data.remote.FirestoreDeltaReader.Cursor
+import com.google.common.truth.Truth.assertThat
+import com.google.firebase.Timestamp
+import kotlinx.coroutines.test.runTest
+import org.junit.Test
+
+class SyncWatermarkStoreTest {
+
+    private class FakeWatermarkDao : SyncWatermarkDao {
+        val rows = mutableMapOf<Pair<String, String>, SyncWatermarkEntity>()
+
+        override suspend fun get(tenantId: String, entityType: String) = rows[tenantId to entityType]
+
+        override suspend fun upsert(watermark: SyncWatermarkEntity) {
+            rows[watermark.tenantId to watermark.entityType] = watermark
+        }
+
+        override suspend fun clearForTenant(tenantId: String) {
+            rows.keys.removeAll { it.first == tenantId }
+        }
+    }
+
+    private val dao = FakeWatermarkDao()
+    private val store = SyncWatermarkStore(dao)
+
+    @Test
+    fun `sin watermark se pide pull completo y despues avanza con cada pull`() = runTest {
+        assertThat(store.get("t1", PRODUCTS)).isNull()
+
+        store.save("t1", PRODUCTS, Cursor(Timestamp(100L, 5), "p-1"))
+        store.save("t1", PRODUCTS, Cursor(Timestamp(200L, 0), "p-9"))
+
+        assertThat(store.get("t1", PRODUCTS))
+            .isEqualTo(Cursor(Timestamp(200L, 0), "p-9"))
+        assertThat(dao.rows).hasSize(1)
+    }
+
+    @Test
+    fun `un pull completo sin documentos registra el origen`() = runTest {
+        store.save("t1", PRODUCTS, null)
+
+        assertThat(store.get("t1", PRODUCTS))
+            .isEqualTo(Cursor(Timestamp(0L, 0), ""))
+    }
+
+    @Test
+    fun `clear reinicia solo el tenant pedido`() = runTest {
+        store.save("t1", PRODUCTS, Cursor(Timestamp(100L, 0), "a"))
+        store.save("t2", PRODUCTS, Cursor(Timestamp(300L, 0), "b"))
+
+        store.clear("t1")
+
+        assertThat(store.get("t1", PRODUCTS)).isNull()
+        assertThat(store.get("t2", PRODUCTS))
+            .isEqualTo(Cursor(Timestamp(300L, 0), "b"))
+    }
+
+    private companion object {
+        val PRODUCTS = SyncEntityType.PRODUCT.storageKey
+    }
+}
@@ -422,6 +422,42 @@ const buildPublicProductPayload = (
   };
 };
 
+// Una baja de `public_products` deja una lápida con `publicUpdatedAt` nuevo: los visores
+// leen por ese watermark y un borrado físico no les llegaría nunca.
+const PUBLIC_TOMBSTONE_STATUS = "deleted";
+// Pasado este plazo las lápidas se borran; la app rehace el pull completo si su
+// watermark es más viejo (debe coincidir con PUBLIC_TOMBSTONE_RETENTION_MILLIS en la app).
+const PUBLIC_TOMBSTONE_RETENTION_MS = 30 * 24 * 60 * 60 * 1000;
+
+const buildPublicTombstone = (tenantId: string, productId: string) => ({
+  id: productId,
+  tenantId,
+  publicStatus: PUBLIC_TOMBSTONE_STATUS,
+  publicUpdatedAt: admin.firestore.FieldValue.serverTimestamp(),
+});
+
+const isPublicTombstone = (data: FirebaseFirestore.DocumentData | undefined): boolean =>
+  data?.publicStatus === PUBLIC_TOMBSTONE_STATUS;
+
+// Campos que cambian en cada escritura: no cuentan para decidir si hay que reescribir.
+const PUBLIC_PAYLOAD_VOLATILE_FIELDS = new Set(["updatedAt", "publicUpdatedAt"]);
+
+// Reescribir un producto público sin cambios movería su publicUpdatedAt y los visores
+// (que leen por ese watermark) lo volverían a bajar.
+const isSamePublicPayload = (
+  existing: FirebaseFirestore.DocumentData | undefined,
+  payload: PublicProductPayload
+): boolean => {
+  if (!existing) {
+    return false;
+  }
+  return Object.entries(payload).every(
+    ([key, value]) =>
+      PUBLIC_PAYLOAD_VOLATILE_FIELDS.has(key) ||
+      JSON.stringify(existing[key] ?? null) === JSON.stringify(value ?? null)
+  );
+};
+
 const getMpConfig = (): MpConfig => {
   const accessToken =
     process.env.MP_ACCESS_TOKEN?.trim() ??
@@ -1860,8 +1896,16 @@ export const syncPublicProductOnWrite = functions.firestore
       .collection("public_products")
       .doc(productId);
 
+    const unpublish = async () => {
+      const existing = await publicRef.get();
+      if (!existing.exists || isPublicTombstone(existing.data())) {
+        return;
+      }
+      await publicRef.set(buildPublicTombstone(tenantId, productId));
+    };
+
     if (!change.after.exists) {
-      await publicRef.delete();
+      await unpublish();
       return null;
     }
 
@@ -1871,7 +1915,7 @@ export const syncPublicProductOnWrite = functions.firestore
     }
 
     if (!isProductPublished(afterData)) {
-      await publicRef.delete();
+      await unpublish();
       return null;
     }
 
@@ -1939,6 +1983,10 @@ export const refreshPublicProducts = functions.pubsub
         .collection("public_products")
         .get();
       const publishedIds = new Set(publishedProducts.keys());
+      const publicDataById = new Map<string, FirebaseFirestore.DocumentData>();
+      for (const publicProductDoc of publicProductsSnapshot.docs) {
+        publicDataById.set(publicProductDoc.id, publicProductDoc.data());
+      }
 
       let batch = db.batch();
       let batchCount = 0;
@@ -1952,6 +2000,9 @@ export const refreshPublicProducts = functions.pubsub
           productDoc.id,
           productData
         );
+        if (isSamePublicPayload(publicDataById.get(productDoc.id), payload)) {
+          continue;
+        }
         const publicRef = db
           .collection("tenants")
           .doc(tenantId)
@@ -1970,7 +2021,16 @@ export const refreshPublicProducts = functions.pubsub
         if (publishedIds.has(publicProductDoc.id)) {
           continue;
         }
-        batch.delete(publicProductDoc.ref);
+        const publicData = publicProductDoc.data();
+        if (isPublicTombstone(publicData)) {
+          const tombstonedAt = publicData.publicUpdatedAt?.toDate?.();
+          if (!tombstonedAt || now - tombstonedAt.getTime() < PUBLIC_TOMBSTONE_RETENTION_MS) {
+            continue;
+          }
+          batch.delete(publicProductDoc.ref);
+        } else {
+          batch.set(publicProductDoc.ref, buildPublicTombstone(tenantId, publicProductDoc.id));
+        }
         batchCount += 1;
         if (batchCount === 450) {
           await batch.commit();
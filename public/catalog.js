@@ -102,6 +102,14 @@ async function fetchFirestoreProducts() {
   const body = {
     structuredQuery: {
       from: [{ collectionId: publicCollection, allDescendants: !catalogTenantId }],
+      // Los productos despublicados quedan como lápida (`publicStatus: "deleted"`).
+      where: {
+        fieldFilter: {
+          field: { fieldPath: "publicStatus" },
+          op: "EQUAL",
+          value: { stringValue: "published" }
+        }
+      },
       select: {
         fields: [
           { fieldPath: "tenantId" },
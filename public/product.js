@@ -222,6 +222,8 @@ function renderProduct(product) {
 function parseFirestoreDocument(doc) {
   if (!doc?.fields) return null;
   const fields = doc.fields;
+  // Lápida de un producto despublicado.
+  if (fields.publicStatus?.stringValue === "deleted") return null;
   const getString = (key) => fields[key]?.stringValue || "";
   const getNumber = (key) =>
     fields[key]?.doubleValue ?? fields[key]?.integerValue ?? "";
@@ -297,7 +299,8 @@ async function fetchFirestoreByField(field, value) {
           { fieldPath: "imageUrl" },
           { fieldPath: "imageUrls" },
           { fieldPath: "sizes" },
-          { fieldPath: "updatedAt" }
+          { fieldPath: "updatedAt" },
+          { fieldPath: "publicStatus" }
         ]
       },
       limit: 1
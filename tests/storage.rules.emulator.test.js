@@ -0,0 +1,112 @@
+const { readFileSync } = require('node:fs');
+const { before, beforeEach, after, describe, it } = require('node:test');
+const {
+  initializeTestEnvironment,
+  assertSucceeds,
+  assertFails,
+} = require('@firebase/rules-unit-testing');
+const { doc, setDoc } = require('firebase/firestore');
+const { ref, uploadBytes, getBytes } = require('firebase/storage');
+
+const PROJECT_ID = 'sellia-storage-rules-tests';
+const TENANT_ID = 'tenant-a';
+const OTHER_TENANT_ID = 'tenant-b';
+// Mismo path que arma BackupSnapshotRepository: tenants/{tenantId}/backups/{backupId}.snapshot.gz
+const BACKUP_PATH = `tenants/${TENANT_ID}/backups/backup-1.snapshot.gz`;
+const SNAPSHOT_BYTES = new Uint8Array([0x1f, 0x8b, 0x08, 0x00, 0x01, 0x02, 0x03]);
+
+let testEnv;
+
+function roleUserId(role, tenantId = TENANT_ID) {
+  return `${tenantId}-${role}-uid`;
+}
+
+async function seedRoleUser(role, tenantId = TENANT_ID) {
+  await testEnv.withSecurityRulesDisabled(async (context) => {
+    const db = context.firestore();
+    await setDoc(doc(db, 'users', roleUserId(role, tenantId)), {
+      email: `${role}@${tenantId}.example.com`,
+      tenantId,
+      role,
+      status: 'active',
+      accountType: 'store_owner',
+      isAdmin: false,
+      isSuperAdmin: false,
+    });
+  });
+}
+
+async function seedBackup() {
+  await testEnv.withSecurityRulesDisabled(async (context) => {
+    await uploadBytes(ref(context.storage(), BACKUP_PATH), SNAPSHOT_BYTES);
+  });
+}
+
+function roleStorage(role, tenantId = TENANT_ID) {
+  const uid = roleUserId(role, tenantId);
+  return testEnv
+    .authenticatedContext(uid, { uid, email: `${role}@${tenantId}.example.com` })
+    .storage();
+}
+
+describe('storage.rules - backups del tenant', () => {
+  before(async () => {
+    testEnv = await initializeTestEnvironment({
+      projectId: PROJECT_ID,
+      // Las reglas de Storage leen el perfil del usuario en Firestore.
+      firestore: {
+        rules: readFileSync('firestore.rules', 'utf8'),
+      },
+      storage: {
+        rules: readFileSync('storage.rules', 'utf8'),
+      },
+    });
+  });
+
+  beforeEach(async () => {
+    await testEnv.clearFirestore();
+    await testEnv.clearStorage();
+    for (const role of ['owner', 'cashier', 'viewer']) {
+      await seedRoleUser(role);
+    }
+    await seedRoleUser('owner', OTHER_TENANT_ID);
+    await seedBackup();
+  });
+
+  after(async () => {
+    await testEnv.cleanup();
+  });
+
+  for (const role of ['owner', 'cashier']) {
+    it(`${role} puede subir un snapshot y descargarlo para restaurar`, async () => {
+      const storage = roleStorage(role);
+
+      await assertSucceeds(
+        uploadBytes(ref(storage, `tenants/${TENANT_ID}/backups/${role}.snapshot.gz`), SNAPSHOT_BYTES, {
+          contentType: 'application/gzip',
+        }),
+      );
+      await assertSucceeds(getBytes(ref(storage, BACKUP_PATH)));
+    });
+  }
+
+  it('viewer no puede subir ni descargar snapshots', async () => {
+    const storage = roleStorage('viewer');
+
+    await assertFails(uploadBytes(ref(storage, `tenants/${TENANT_ID}/backups/viewer.snapshot.gz`), SNAPSHOT_BYTES));
+    await assertFails(getBytes(ref(storage, BACKUP_PATH)));
+  });
+
+  it('un usuario de otro tenant no accede a los snapshots', async () => {
+    const storage = roleStorage('owner', OTHER_TENANT_ID);
+
+    await assertFails(uploadBytes(ref(storage, `tenants/${TENANT_ID}/backups/intruso.snapshot.gz`), SNAPSHOT_BYTES));
+    await assertFails(getBytes(ref(storage, BACKUP_PATH)));
+  });
+
+  it('sin sesión no hay acceso a los snapshots', async () => {
+    const storage = testEnv.unauthenticatedContext().storage();
+
+    await assertFails(getBytes(ref(storage, BACKUP_PATH)));
+  });
+});